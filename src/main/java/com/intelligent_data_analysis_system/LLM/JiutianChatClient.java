@@ -4,13 +4,17 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -41,8 +45,10 @@ public class JiutianChatClient {
     public String chat(List<Map<String, String>> messages) {
         int retryCount = 0;
         Exception lastException = null;
+        // 请求级截止时间（/api/ai/query 分给生成阶段的预算）：有就按剩余时间限时，用完不再重试
+        Deadline deadline = DeadlineContext.get();
 
-        while (retryCount <= maxRetries) {
+        while (retryCount <= maxRetries && !deadline.isExpired()) {
             try {
                 ObjectNode body = objectMapper.createObjectNode();
                 body.put("model", model);
@@ -57,15 +63,15 @@ public class JiutianChatClient {
                     n.put("content", m.get("content"));
                 }
 
-                String resp = webClientBuilder.build()
+                Mono<String> call = webClientBuilder.build()
                         .post()
                         .uri(baseUrl + "/v1/chat/completions")
                         .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
                         .contentType(MediaType.APPLICATION_JSON)
                         .bodyValue(body)
                         .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
+                        .bodyToMono(String.class);
+                String resp = deadline.isUnbounded() ? call.block() : call.block(Duration.ofMillis(deadline.remainingMillis()));
 
                 return extractContent(resp);
 
@@ -76,7 +82,8 @@ public class JiutianChatClient {
                 // 如果不是最后一次重试，等待后继续
                 if (retryCount <= maxRetries) {
                     try {
-                        Thread.sleep(retryDelayMs * (1 << retryCount)); // 指数退避
+                        long sleepMs = (long) retryDelayMs * (1L << retryCount); // 指数退避
+                        Thread.sleep(Math.min(sleepMs, deadline.remainingMillis(sleepMs)));
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                         break;
@@ -86,6 +93,9 @@ public class JiutianChatClient {
         }
         
         // 所有重试都失败
+        if (deadline.isExpired()) {
+            throw new RuntimeException("Jiutian API call exceeded request deadline after " + retryCount + " attempts", lastException);
+        }
         throw new RuntimeException("Jiutian API call failed after " + maxRetries + " retries", lastException);
     }
 
@@ -1,6 +1,10 @@
 package com.intelligent_data_analysis_system.LLM;
 
 import com.intelligent_data_analysis_system.infrastructure.config.properties.RoutingProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
 import com.intelligent_data_analysis_system.service.SchemaTextProvider;
 import com.intelligent_data_analysis_system.service.SqlExecuteService;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGenResult;
@@ -26,6 +30,7 @@ public class JiutianSqlGenerator implements SqlGenerator {
     private final RoutingProperties routingProperties;
     private final SqlExecuteService sqlExecuteService; // ✅新增：用来查 schema（information_schema）
     private final SchemaTextProvider schemaTextProvider;
+    private final DomainRegistry domainRegistry;
 
     // ✅每个 domain 缓存一次 schema，避免每题都查库
     private final ConcurrentHashMap<String, String> schemaCache = new ConcurrentHashMap<>();
@@ -87,7 +92,7 @@ public class JiutianSqlGenerator implements SqlGenerator {
 
 【数据库Schema】
 %s
-
+%s
 【用户问题】
 %s
 
@@ -100,7 +105,7 @@ public class JiutianSqlGenerator implements SqlGenerator {
 
 【输出格式】
 仅输出SQL语句，使用```sql ... ```格式包裹，不包含任何其他解释或说明
-""".formatted(domain, schemaText, problem, dialect);
+""".formatted(domain, schemaText, domainNotes(domain), problem, dialect);
 
         int maxRetries = 3;
         String sql = null;
@@ -466,8 +471,11 @@ public class JiutianSqlGenerator implements SqlGenerator {
         String columnsSql = isMySQL ? MYSQL_COLUMNS_SQL : PG_COLUMNS_SQL;
         String fkSql = isMySQL ? MYSQL_FK_SQL : PG_FK_SQL;
 
-        List<Map<String, Object>> cols = sqlExecuteService.query(domain, columnsSql);
-        List<Map<String, Object>> fks = sqlExecuteService.query(domain, fkSql);
+        // information_schema 扫描走 METADATA 隔离舱
+        List<Map<String, Object>> cols = WorkloadContext.call(WorkloadClass.METADATA,
+                () -> sqlExecuteService.query(domain, columnsSql));
+        List<Map<String, Object>> fks = WorkloadContext.call(WorkloadClass.METADATA,
+                () -> sqlExecuteService.query(domain, fkSql));
 
         Map<String, List<ColInfo>> tableCols = new LinkedHashMap<>();
         for (Map<String, Object> r : cols) {
@@ -582,4 +590,11 @@ WHERE tc.constraint_type = 'FOREIGN KEY'
   AND tc.table_schema = 'public'
 ORDER BY kcu.table_name, kcu.column_name
 """;
+
+    /** 域配置的领域说明（app.domains.registry.*.prompt），没配为空 */
+    private String domainNotes(String domain) {
+        DataSourceDomain d = domainRegistry.resolve(domain);
+        String notes = d == null ? "" : domainRegistry.prompt(d);
+        return notes.isEmpty() ? "" : "\n【领域说明】\n" + notes + "\n";
+    }
 }
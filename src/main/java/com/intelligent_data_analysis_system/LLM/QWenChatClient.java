@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
@@ -45,10 +47,12 @@ public class QWenChatClient {
         int retryCount = 0;
         Exception lastException = null;
 
-        // ✅ 每次请求的硬超时（建议 30~90 秒）
-        Duration timeout = Duration.ofSeconds(timeoutSeconds);
+        // 请求级截止时间（/api/ai/query 分给生成阶段的预算）：单次超时不超过剩余时间，用完不再重试
+        Deadline deadline = DeadlineContext.get();
 
-        while (retryCount <= maxRetries) {
+        while (retryCount <= maxRetries && !deadline.isExpired()) {
+            // ✅ 每次请求的硬超时（建议 30~90 秒）
+            Duration timeout = Duration.ofMillis(deadline.remainingMillis(timeoutSeconds * 1000L));
             try {
                 ObjectNode body = objectMapper.createObjectNode();
                 body.put("model", model);
@@ -86,7 +90,7 @@ public class QWenChatClient {
                 if (retryCount <= maxRetries) {
                     try {
                         long sleepMs = (long) retryDelayMs * (1L << retryCount); // 指数退避
-                        Thread.sleep(sleepMs);
+                        Thread.sleep(Math.min(sleepMs, deadline.remainingMillis(sleepMs)));
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                         break;
@@ -95,6 +99,9 @@ public class QWenChatClient {
             }
         }
 
+        if (deadline.isExpired()) {
+            throw new RuntimeException("QWen API call exceeded request deadline after " + retryCount + " attempts", lastException);
+        }
         throw new RuntimeException("QWen API call failed after " + maxRetries + " retries", lastException);
     }
 
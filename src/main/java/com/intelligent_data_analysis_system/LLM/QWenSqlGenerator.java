@@ -1,12 +1,20 @@
 package com.intelligent_data_analysis_system.LLM;
 
 import com.intelligent_data_analysis_system.infrastructure.config.properties.RoutingProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
 import com.intelligent_data_analysis_system.mapping.MappingRegistry;
 import com.intelligent_data_analysis_system.service.SchemaTextProvider;
 import com.intelligent_data_analysis_system.service.SqlExecuteService;
-import com.intelligent_data_analysis_system.utils.EnumSqlRewriter;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGenResult;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGenerator;
+import com.intelligent_data_analysis_system.utils.Generator.SqlGuard;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteContext;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteEngine;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialectTranspiler;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,20 +35,23 @@ public class QWenSqlGenerator implements SqlGenerator {
     private final RoutingProperties routingProperties;
     private final SqlExecuteService sqlExecuteService; // ✅新增：用来查 schema（information_schema）
     private final SchemaTextProvider schemaTextProvider;
+    private final DomainRegistry domainRegistry;
 
     // ✅每个 domain 缓存一次 schema，避免每题都查库
     private final ConcurrentHashMap<String, String> schemaCache = new ConcurrentHashMap<>();
 
     @Override
     public SqlGenResult generate(String domain, String problem) {
-        String dialect = toDialect(routingProperties.getDbms());
+        // 目标库方言；生成方言可以单独配（app.routing.generation-dialect），两个后端共用同一套 prompt，出结果后再转译
+        SqlDialect target = SqlDialect.of(routingProperties.getDbms(), SqlDialect.POSTGRESQL);
+        SqlDialect dialect = SqlDialect.of(routingProperties.getGenerationDialect(), target);
 
         // 1) 先在当前 domain 尝试
         GenAttempt first = generateOnce(domain, problem, dialect);
 
         if (first.valid && looksLikeSql(first.sql)) {
             logger.info("Final SQL (no fallback) domain={}, problem={}, sql={}", domain, problem, first.sql);
-            return new SqlGenResult(domain, first.sql);
+            return new SqlGenResult(domain, toTarget(first.sql, dialect, target, domain));
         }
 
         // 2) fallback 到另一个 domain
@@ -50,7 +61,7 @@ public class QWenSqlGenerator implements SqlGenerator {
         // 3) fallback 成功：返回 fallbackDomain（非常重要：让后续执行路由走对库）
         if (second.valid && looksLikeSql(second.sql)) {
             logger.warn("Fallback succeeded: {} -> {}. problem={}, sql={}", domain, fallbackDomain, problem, second.sql);
-            return new SqlGenResult(fallbackDomain, second.sql);
+            return new SqlGenResult(fallbackDomain, toTarget(second.sql, dialect, target, fallbackDomain));
         }
 
         // 4) 两边都不行：择优（优先 valid；否则优先更长、且像 SQL 的）
@@ -58,11 +69,20 @@ public class QWenSqlGenerator implements SqlGenerator {
         String bestDomain = pickBestDomain(domain, fallbackDomain, first, second);
 
         logger.warn("Both domains failed. Pick best. bestDomain={}, problem={}, bestSql={}", bestDomain, problem, bestSql);
-        return new SqlGenResult(bestDomain, bestSql);
+        return new SqlGenResult(bestDomain, toTarget(bestSql, dialect, target, bestDomain));
+    }
+
+    /** 生成方言和目标库不一致时转译过去；一致时原样返回 */
+    private String toTarget(String sql, SqlDialect from, SqlDialect to, String domain) {
+        if (from == to || sql == null || sql.isBlank()) return sql;
+        String out = SqlDialectTranspiler.transpile(sql, from, to, domain);
+        logger.info("[NL2SQL][{}] transpiled {} -> {}: {}", domain, from, to, out);
+        return out;
     }
 
     /** ========== 单域生成（把你原 generate 里的主体循环搬进来） ========== */
-    private GenAttempt generateOnce(String domain, String problem, String dialect) {
+    private GenAttempt generateOnce(String domain, String problem, SqlDialect sqlDialect) {
+        String dialect = sqlDialect.displayName();
         String system = buildSystemPrompt(dialect);
 
         // 关键：每次按 domain 重新取 schemaText（不要复用别的 domain）
@@ -87,7 +107,7 @@ public class QWenSqlGenerator implements SqlGenerator {
 %s
 
 %s
-
+%s
 【用户问题】
 %s
 
@@ -102,7 +122,7 @@ public class QWenSqlGenerator implements SqlGenerator {
 
 【输出格式】
 仅输出SQL语句，使用```sql ... ```格式包裹，不包含任何其他解释或说明
-""".formatted(domain, schemaText, enumConstraint, problem, dialect);
+""".formatted(domain, schemaText, enumConstraint, domainNotes(domain), problem, dialect);
 
         int maxRetries = 3;
         String sql = null;
@@ -116,7 +136,7 @@ public class QWenSqlGenerator implements SqlGenerator {
             logger.info("[NL2SQL][{}] attempt={}, raw={}", domain, attempt, raw);
             logger.info("[NL2SQL][{}] attempt={}, extracted={}", domain, attempt, sql);
 
-            sql = EnumSqlRewriter.rewrite(sql, domain);
+            sql = SqlRewriteEngine.get().rewrite(sql, SqlRewriteContext.of(domain, sqlDialect));
 
             boolean syntaxValid = validateSql(sql);
             boolean schemaValid = validateSqlTableAndColumns(sql, domain);
@@ -132,7 +152,7 @@ public class QWenSqlGenerator implements SqlGenerator {
             logger.warn("[NL2SQL][{}] failed on attempt {}, attempting repair. syntaxValid={}, schemaValid={}",
                     domain, attempt, syntaxValid, schemaValid);
 
-            repairedSql = repairSql(sql);
+            repairedSql = repairSql(sql, sqlDialect);
             logger.debug("[NL2SQL][{}] repaired SQL={}", domain, repairedSql);
 
             boolean repairedSyntaxValid = looksLikeSql(repairedSql) && validateSql(repairedSql);
@@ -198,10 +218,17 @@ public class QWenSqlGenerator implements SqlGenerator {
 """.formatted(dialect);
     }
 
+    /** 域注册表里的下一个域（只有一个域时就是自己）；认不出的域从第一个开始 */
     private String otherDomain(String domain) {
-        if (domain == null) return "HEALTHCARE";
-        String d = domain.trim().toUpperCase(Locale.ROOT);
-        return "FINANCE".equals(d) ? "HEALTHCARE" : "FINANCE";
+        DataSourceDomain d = domainRegistry.resolve(domain);
+        return domainRegistry.next(d).name();
+    }
+
+    /** 域配置的领域说明（app.domains.registry.*.prompt），没配为空 */
+    private String domainNotes(String domain) {
+        DataSourceDomain d = domainRegistry.resolve(domain);
+        String notes = d == null ? "" : domainRegistry.prompt(d);
+        return notes.isEmpty() ? "" : "【领域说明】\n" + notes + "\n";
     }
 
     /** 选一个“最像能用”的SQL */
@@ -245,15 +272,6 @@ public class QWenSqlGenerator implements SqlGenerator {
     }
 
 
-    private String toDialect(String dbms) {
-        if (dbms == null) return "PostgreSQL";
-        dbms = dbms.trim().toLowerCase();
-        if (dbms.equals("mysql")) return "MySQL";
-        if (dbms.equals("pg") || dbms.equals("pgsql") || dbms.equals("postgres") || dbms.equals("postgresql"))
-            return "PostgreSQL";
-        return "PostgreSQL";
-    }
-
     public String buildPrompt(String problem, String domain, String dialect, String schema) {
         // domain: FINANCE / HEALTHCARE
         // dialect: mysql / pg
@@ -385,9 +403,9 @@ public class QWenSqlGenerator implements SqlGenerator {
     }
 
     private boolean looksLikeSql(String s) {
-        if (s == null) return false;
-        String t = s.trim().toLowerCase(Locale.ROOT);
-        return t.startsWith("select") || t.startsWith("with") || t.startsWith("explain");
+        // 词法级判断：模型常在 SQL 前面带一行 -- 注释
+        String type = SqlGuard.statementType(s);
+        return type.equals("SELECT") || type.equals("WITH") || type.equals("EXPLAIN");
     }
 
     private String stripTrailingSemicolon(String sql) {
@@ -437,20 +455,10 @@ public class QWenSqlGenerator implements SqlGenerator {
             List<String> tables = new ArrayList<>();
             List<String> columns = new ArrayList<>();
 
-            if (select.getSelectBody() instanceof net.sf.jsqlparser.statement.select.PlainSelect plainSelect) {
-                // 使用直接获取表的方式替代已过时的TablesNamesFinder
-                if (plainSelect.getFromItem() instanceof net.sf.jsqlparser.schema.Table) {
-                    tables.add(((net.sf.jsqlparser.schema.Table) plainSelect.getFromItem()).getName());
-                }
-                // 处理JOIN的表
-                if (plainSelect.getJoins() != null) {
-                    for (var join : plainSelect.getJoins()) {
-                        if (join.getRightItem() instanceof net.sf.jsqlparser.schema.Table) {
-                            tables.add(((net.sf.jsqlparser.schema.Table) join.getRightItem()).getName());
-                        }
-                    }
-                }
+            // 表名用词法预检取（含 JOIN、子查询、CTE 里的表）
+            tables.addAll(SqlGuard.tables(sql));
 
+            if (select.getSelectBody() instanceof net.sf.jsqlparser.statement.select.PlainSelect plainSelect) {
                 // 提取列名
                 for (var item : plainSelect.getSelectItems()) {
                     // 使用反射安全地获取表达式，避免依赖具体实现类
@@ -491,9 +499,10 @@ public class QWenSqlGenerator implements SqlGenerator {
     /**
      * 修复常见的SQL语法错误
      * @param sql 要修复的SQL语句
+     * @param dialect 生成方言，函数写法按它归一
      * @return 修复后的SQL语句
      */
-    private String repairSql(String sql) {
+    private String repairSql(String sql, SqlDialect dialect) {
         if (sql == null || sql.trim().isEmpty()) {
             return sql;
         }
@@ -504,14 +513,8 @@ public class QWenSqlGenerator implements SqlGenerator {
         // 匹配YYYY-MM-DD格式的日期，但不包括已经在引号中的
         repaired = repaired.replaceAll("(?<!['\\w])\\b(\\d{4}-\\d{2}-\\d{2})\\b(?!['\\w])", "'$1'");
 
-        // 2. 修复年份函数：将YEAR(column)转换为EXTRACT(YEAR FROM column)
-        repaired = repaired.replaceAll("(?i)YEAR\\s*\\(([^)]+)\\)", "EXTRACT(YEAR FROM $1)");
-
-        // 3. 修复月份函数：将MONTH(column)转换为EXTRACT(MONTH FROM column)
-        repaired = repaired.replaceAll("(?i)MONTH\\s*\\(([^)]+)\\)", "EXTRACT(MONTH FROM $1)");
-
-        // 4. 修复日期函数：将DATE(column)转换为EXTRACT(DAY FROM column)（如果用于日期比较）
-        repaired = repaired.replaceAll("(?i)DATE\\s*\\(([^)]+)\\)", "EXTRACT(DAY FROM $1)");
+        // 2. 方言归一（AST 转译）：YEAR/MONTH/DATE/IFNULL/DATE_FORMAT 等换成目标方言的写法，解析不了时原样保留
+        repaired = SqlDialectTranspiler.transpile(repaired, null, dialect);
 
         // 5. 修复引号问题：删除数值类型上的引号
         // 匹配'数字'模式，但不包括日期格式
@@ -571,8 +574,11 @@ public class QWenSqlGenerator implements SqlGenerator {
         String columnsSql = isMySQL ? MYSQL_COLUMNS_SQL : PG_COLUMNS_SQL;
         String fkSql = isMySQL ? MYSQL_FK_SQL : PG_FK_SQL;
 
-        List<Map<String, Object>> cols = sqlExecuteService.query(domain, columnsSql);
-        List<Map<String, Object>> fks = sqlExecuteService.query(domain, fkSql);
+        // information_schema 扫描走 METADATA 隔离舱
+        List<Map<String, Object>> cols = WorkloadContext.call(WorkloadClass.METADATA,
+                () -> sqlExecuteService.query(domain, columnsSql));
+        List<Map<String, Object>> fks = WorkloadContext.call(WorkloadClass.METADATA,
+                () -> sqlExecuteService.query(domain, fkSql));
 
         Map<String, List<QWenSqlGenerator.ColInfo>> tableCols = new LinkedHashMap<>();
         for (Map<String, Object> r : cols) {
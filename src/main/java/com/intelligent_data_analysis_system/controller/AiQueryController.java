@@ -1,68 +1,203 @@
 package com.intelligent_data_analysis_system.controller;
 
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
 import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
 import com.intelligent_data_analysis_system.infrastructure.dto.ApiResponse;
 import com.intelligent_data_analysis_system.service.AiText2SqlService;
+import com.intelligent_data_analysis_system.service.RunningQueryRegistry;
 import com.intelligent_data_analysis_system.service.SqlExecuteService;
-import lombok.RequiredArgsConstructor;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
 
 @RestController
 @RequestMapping("/api/ai")
-@RequiredArgsConstructor
 public class AiQueryController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AiQueryController.class);
+
+    /** 异步超时比截止时间多留一点：正常情况下各阶段自己先超时，返回更具体的错误 */
+    private static final long ASYNC_GRACE_MS = 5_000;
+
     private final AiText2SqlService aiText2SqlService;
     private final SqlExecuteService sqlExecuteService;
     private final QueryProperties queryProperties;
+    private final RunningQueryRegistry runningQueries;
+    /** 专用有界线程：不用默认的 applicationTaskExecutor（8 线程 + 无界队列，排队就把预算耗光了） */
+    private final ExecutorService pool;
+    private final AsyncTaskExecutor executor;
+
+    public AiQueryController(AiText2SqlService aiText2SqlService, SqlExecuteService sqlExecuteService,
+                             QueryProperties queryProperties, RunningQueryRegistry runningQueries,
+                             TaskThreads taskThreads) {
+        this.aiText2SqlService = aiText2SqlService;
+        this.sqlExecuteService = sqlExecuteService;
+        this.queryProperties = queryProperties;
+        this.runningQueries = runningQueries;
+        QueryProperties.Deadline cfg = queryProperties.getDeadline();
+        this.pool = taskThreads.bounded("ai-query", cfg.getAsyncThreads(), cfg.getAsyncQueueCapacity());
+        this.executor = new TaskExecutorAdapter(pool);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
 
     /**
      * 输入自然语言，输出：生成SQL + 执行结果
-     * body: { "question": "..." }
+     * body: { "question": "...", "domain": 可选（域名或别名，不传按问题判域），
+     *         "timeoutMs": 可选（只能比 app.query.deadline.total 小）, "queryId": 可选,
+     *         "pageSize": 可选（分页）, "cursor": 可选（上一页 result.page.nextCursor，传了就不再生成 SQL，直接翻页）,
+     *         "approximate": 可选（近似查询，只要大概数字时用）, "samplePercent": 可选,
+     *         "race": 可选（MySQL / PG 引擎竞速） }
+     *
+     * 截止时间从这里开始算：LLM 生成最多用 generation-share 的预算，剩下的全部给执行（落到 setQueryTimeout）。
+     * 异步处理：请求结束（完成 / 超时 / 客户端断开）时取消 Deadline，还在数据库上跑的语句随之 cancel。
+     * 执行线程和排队都满时直接返回 503。
+     * 执行中可用 DELETE /api/debug/queries/{queryId} 取消。
      */
     @PostMapping("/query")
-    public ApiResponse<Map<String, Object>> query(@RequestBody Map<String, Object> body) {
+    public WebAsyncTask<ApiResponse<Map<String, Object>>> query(@RequestBody Map<String, Object> body) {
+        QueryProperties.Deadline cfg = queryProperties.getDeadline();
+        long totalMs = cfg.getTotal().toMillis();
+        Object requested = body == null ? null : body.get("timeoutMs");
+        if (requested != null) {
+            try {
+                long ms = Long.parseLong(String.valueOf(requested).trim());
+                if (ms > 0 && ms < totalMs) totalMs = ms;
+            } catch (NumberFormatException ignore) {
+                // 非法值按默认预算
+            }
+        }
+        Deadline deadline = Deadline.afterMillis(totalMs);
+        Object idObj = body == null ? null : body.get("queryId");
+        String queryId = idObj == null ? RunningQueryRegistry.newId() : String.valueOf(idObj);
+
+        WebAsyncTask<ApiResponse<Map<String, Object>>> task =
+                new WebAsyncTask<>(totalMs + ASYNC_GRACE_MS, executor, () -> runQuery(body, queryId, deadline));
+        long budgetMs = totalMs;
+        task.onTimeout(() -> {
+            deadline.cancel();
+            throw new QueryTimeoutException("请求超过截止时间(" + budgetMs + "ms): " + queryId);
+        });
+        task.onError(() -> {
+            deadline.cancel();
+            throw new CancellationException("请求已中断: " + queryId);
+        });
+        // 正常结束时语句早已完成，cancel 不影响；异常结束（断开）时中止还在执行的阶段
+        task.onCompletion(deadline::cancel);
+        return task;
+    }
+
+    private ApiResponse<Map<String, Object>> runQuery(Map<String, Object> body, String queryId, Deadline deadline) {
         String question = body == null ? null : String.valueOf(body.get("question"));
 
-        // 1) NL -> {domain, dbms, sql, maxRows}
-        Map<String, Object> plan = aiText2SqlService.nl2sql(question);
+        try (RunningQueryRegistry.Handle handle = runningQueries.start(queryId, "GENERATING", deadline)) {
+            Object cursor = body == null ? null : body.get("cursor");
+            if (cursor != null && !String.valueOf(cursor).isBlank()) {
+                return ApiResponse.success(nextPage(question, String.valueOf(cursor), handle));
+            }
+            return ApiResponse.success(generateAndExecute(question, body == null ? Map.of() : body, handle));
+        }
+    }
+
+    /** 翻页：SQL 在游标里，跳过 LLM 生成，整个预算都给执行 */
+    private Map<String, Object> nextPage(String question, String cursor, RunningQueryRegistry.Handle handle) {
+        Map<String, Object> execBody = new LinkedHashMap<>();
+        execBody.put("queryId", handle.id());
+        execBody.put("cursor", cursor);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("queryId", handle.id());
+        resp.put("question", question);
+        resp.put("result", ExecutionContext.current().withDeadline(handle.deadline())
+                .call(() -> sqlExecuteService.execute(execBody)));
+        return resp;
+    }
 
-        // 2) 执行（复用已跑通的统一执行服务）
+    private Map<String, Object> generateAndExecute(String question, Map<String, Object> options,
+                                                   RunningQueryRegistry.Handle handle) {
+        Deadline deadline = handle.deadline();
+
+        // 1) NL -> {domain, dbms, sql, maxRows}；LLM 客户端从 DeadlineContext 读生成阶段的剩余预算
+        Deadline generation = deadline.slice(queryProperties.getDeadline().getGenerationShare(), null);
+        Map<String, Object> plan;
+        try {
+            Object domain = options.get("domain");
+            plan = ExecutionContext.current().withDeadline(generation)
+                    .call(() -> aiText2SqlService.nl2sql(question, domain == null ? null : String.valueOf(domain)));
+        } catch (RuntimeException e) {
+            if (deadline.isCancelled()) throw new CancellationException("查询已取消: " + handle.id());
+            if (generation.isExpired()) {
+                throw new QueryTimeoutException("SQL 生成超过截止时间: " + handle.id(), e);
+            }
+            throw e;
+        }
+        if (deadline.isExpired()) {
+            throw deadline.isCancelled()
+                    ? new CancellationException("查询已取消: " + handle.id())
+                    : new QueryTimeoutException("SQL 生成后已无执行预算: " + handle.id());
+        }
+        logger.debug("SQL generated for query: {}, remaining budget: {}ms", handle.id(), deadline.remainingMillis());
+
+        // 2) 执行（复用已跑通的统一执行服务）；剩余预算全部给执行
         Map<String, Object> execBody = new LinkedHashMap<>();
+        execBody.put("queryId", handle.id());
         execBody.put("domain", plan.get("domain"));
         execBody.put("dbms", plan.get("dbms"));
         execBody.put("sql", plan.get("sql"));
         execBody.put("maxRows", plan.getOrDefault("maxRows", queryProperties.getMaxRows()));
+        for (String k : List.of("pageSize", "approximate", "samplePercent", "race")) {
+            if (options.get(k) != null) execBody.put(k, options.get(k));
+        }
 
-        Map<String, Object> result = sqlExecuteService.execute(execBody);
+        Map<String, Object> result = ExecutionContext.current().withDeadline(deadline)
+                .call(() -> sqlExecuteService.execute(execBody));
 
         // 3) 返回：既给看“生成SQL”，也给前端用“结果”
         Map<String, Object> resp = new LinkedHashMap<>();
+        // rows 是列式结果的只读视图：有 contact_info 列时才复制成可改的行，把 JSON 字符串解析成对象
         Object rowsObj = result.get("rows");
-        if (rowsObj instanceof java.util.List<?> rows) {
+        Object colsObj = result.get("columns");
+        if (rowsObj instanceof java.util.List<?> rows
+                && colsObj instanceof java.util.List<?> cols && cols.contains("contact_info")) {
+            java.util.List<Map<String, Object>> copied = new java.util.ArrayList<>(rows.size());
             for (Object r : rows) {
-                if (r instanceof java.util.Map<?, ?> row) {
-                    Object ci = row.get("contact_info");
-                    if (ci instanceof String s && s.trim().startsWith("{") && s.trim().endsWith("}")) {
-                        try {
-                            @SuppressWarnings("unchecked")
-                            Map<String, Object> parsed = new com.fasterxml.jackson.databind.ObjectMapper()
-                                    .readValue(s, Map.class);
-                            ((Map) row).put("contact_info", parsed);
-                        } catch (Exception ignore) {
-                            // 解析失败就保持原样字符串
-                        }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> row = new LinkedHashMap<>((Map<String, Object>) r);
+                Object ci = row.get("contact_info");
+                if (ci instanceof String s && s.trim().startsWith("{") && s.trim().endsWith("}")) {
+                    try {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> parsed = new com.fasterxml.jackson.databind.ObjectMapper()
+                                .readValue(s, Map.class);
+                        row.put("contact_info", parsed);
+                    } catch (Exception ignore) {
+                        // 解析失败就保持原样字符串
                     }
                 }
+                copied.add(row);
             }
+            result.put("rows", copied);
         }
 
+        resp.put("queryId", handle.id());
         resp.put("question", question);
         resp.put("generated", plan);
         resp.put("result", result);
-        return ApiResponse.success(resp);
+        return resp;
     }
 }
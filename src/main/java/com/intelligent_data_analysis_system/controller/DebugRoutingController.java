@@ -2,12 +2,25 @@ package com.intelligent_data_analysis_system.controller;
 
 import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
 import com.intelligent_data_analysis_system.infrastructure.datasource.DomainContext;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRoutingDataSource;
+import com.intelligent_data_analysis_system.infrastructure.datasource.ReplicaMonitor;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadBulkheads;
+import com.intelligent_data_analysis_system.service.CostAdmissionGuard;
+import com.intelligent_data_analysis_system.service.EngineRacer;
+import com.intelligent_data_analysis_system.service.QueryResultCache;
+import com.intelligent_data_analysis_system.service.QueryResultStreamer;
+import com.intelligent_data_analysis_system.service.RunningQueryRegistry;
 import com.intelligent_data_analysis_system.service.SqlExecuteService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,6 +32,20 @@ public class DebugRoutingController {
 
     private final SqlExecuteService sqlExecuteService;
 
+    private final QueryResultCache queryResultCache;
+
+    private final RunningQueryRegistry runningQueries;
+
+    private final WorkloadBulkheads workloadBulkheads;
+
+    private final ReplicaMonitor replicaMonitor;
+
+    private final CostAdmissionGuard admissionGuard;
+
+    private final EngineRacer engineRacer;
+
+    private final DomainRegistry domainRegistry;
+
     /**
      * 统一 SQL 执行入口：
      * - 支持 MySQL / PostgreSQL 多数据源动态路由
@@ -30,18 +57,109 @@ public class DebugRoutingController {
         return sqlExecuteService.execute(body);
     }
 
+    /**
+     * 批量只读查询：同一个域的多条 SELECT 一次往返执行（PG 流水线 / MySQL 多结果集），results 里每条一个结果或错误。
+     * body: { "domain": ..., "statements": ["SELECT ...", {"sql": ..., "params": {...}, "maxRows": ...}], 其它同 /execute }
+     */
+    @PostMapping("/execute/batch")
+    public Map<String, Object> executeBatch(@RequestBody Map<String, Object> body) {
+        return sqlExecuteService.executeBatch(body);
+    }
+
+    /**
+     * 流式执行：入参同 /execute；format=ndjson（默认，每行一个 JSON）或 json（分块传输的单个 JSON）。
+     * 大结果集不在内存里攒，首批数据在查询读完之前就开始返回。
+     */
+    @PostMapping("/execute/stream")
+    public ResponseEntity<StreamingResponseBody> executeStream(@RequestBody Map<String, Object> body,
+                                                               @RequestParam(defaultValue = "ndjson") String format) {
+        QueryResultStreamer.Format f = QueryResultStreamer.Format.of(format);
+        return ResponseEntity.ok()
+                .contentType(f.mediaType())
+                .body(sqlExecuteService.stream(body, f));
+    }
+
+    /** 结果缓存统计：条目数、占用字节、L1/L2 命中、未命中、淘汰次数 */
+    @GetMapping("/cache")
+    public Map<String, Object> cacheStats() {
+        return queryResultCache.stats();
+    }
+
+    /**
+     * 数据变更后清结果缓存：不带参数清全部；domain 清一个域；domain + table 只清读过这张表的结果。
+     * 开了 Redis 二级缓存时同时清 Redis 并广播到其它节点。
+     */
+    @DeleteMapping("/cache")
+    public Map<String, Object> invalidateCache(@RequestParam(required = false) String domain,
+                                               @RequestParam(required = false) String table) {
+        int removed = queryResultCache.invalidate(domain, table);
+        return Map.of("invalidated", removed);
+    }
+
+    /** 正在执行的查询（含 /api/ai/query 的生成阶段）：queryId、阶段、数据源、SQL、已运行 / 剩余毫秒 */
+    @GetMapping("/queries")
+    public List<Map<String, Object>> runningQueries() {
+        return runningQueries.list();
+    }
+
+    /**
+     * 按 queryId 取消：等待中的请求立刻返回 409，数据库上的语句被 cancel（没有其它请求在共享这次执行时）。
+     */
+    @DeleteMapping("/queries/{queryId}")
+    public ResponseEntity<Map<String, Object>> cancelQuery(@PathVariable String queryId) {
+        boolean cancelled = runningQueries.cancel(queryId);
+        Map<String, Object> resp = Map.of("queryId", queryId, "cancelled", cancelled);
+        return cancelled ? ResponseEntity.ok(resp) : ResponseEntity.status(404).body(resp);
+    }
+
+    /** 各域连接隔离舱：每个负载类别（INTERACTIVE / METADATA / BATCH）的占用、排队、超时拒绝、等待时长 */
+    @GetMapping("/bulkheads")
+    public Map<String, Object> bulkheads() {
+        return workloadBulkheads.stats();
+    }
+
+    /** 域注册表：各域的别名、URL 前缀、配了哪些引擎；连接池是否开着、借出数、空闲多久、被回收过几次 */
+    @GetMapping("/domains")
+    public Map<String, Object> domains() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("registry", domainRegistry.describe());
+        if (dataSource instanceof DomainRoutingDataSource rds) m.put("pools", rds.stats());
+        return m;
+    }
+
+    /** 主从节点状态：在途请求数、平均耗时、复制延迟、是否被摘除；refresh=true 先立刻探测一遍延迟 */
+    @GetMapping("/replicas")
+    public Map<String, Object> replicas(@RequestParam(defaultValue = "false") boolean refresh) {
+        if (refresh) replicaMonitor.checkNow();
+        return replicaMonitor.stats();
+    }
+
+    /** EXPLAIN 准入：开关、缓存的计划条数、改写用的 LIMIT */
+    @GetMapping("/admission")
+    public Map<String, Object> admission() {
+        return admissionGuard.stats();
+    }
+
+    /** 建索引 / 更新统计信息后清掉缓存的计划，下次查询重新 EXPLAIN */
+    @DeleteMapping("/admission/plans")
+    public Map<String, Object> clearPlans() {
+        admissionGuard.clear();
+        return admissionGuard.stats();
+    }
+
+    /** 引擎竞速：另一个引擎的连接池、每个 域|指纹 比了几次、各引擎赢了几次 */
+    @GetMapping("/racing")
+    public Map<String, Object> racing() {
+        return engineRacer.stats();
+    }
+
     @GetMapping("/ping/{domain}")
     public Map<String, Object> ping(@PathVariable String domain) {
-        DataSourceDomain d = "healthcare".equalsIgnoreCase(domain)
-                ? DataSourceDomain.HEALTHCARE
-                : DataSourceDomain.FINANCE;
-
-        try {
-            DomainContext.set(d);
-            Integer one = new JdbcTemplate(dataSource).queryForObject("select 1", Integer.class);
-            return Map.of("domain", d.name(), "select1", one);
-        } finally {
-            DomainContext.clear();
-        }
+        DataSourceDomain d = domainRegistry.resolve(domain);
+        if (d == null) d = domainRegistry.defaultDomain();
+
+        Integer one = DomainContext.call(d,
+                () -> new JdbcTemplate(dataSource).queryForObject("select 1", Integer.class));
+        return Map.of("domain", d.name(), "select1", one);
     }
 }
@@ -0,0 +1,64 @@
+package com.intelligent_data_analysis_system.infrastructure.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内部执行线程（同键合并、分片并发、引擎竞速、候选投票、/api/ai/query 异步处理）的线程工厂，和 Servlet 容器共用一个开关：
+ * spring.threads.virtual.enabled=true 时 Tomcat 请求线程和这里的线程都是虚拟线程，
+ * 阻塞在 JDBC / LLM 调用上只是挂起一个虚拟线程，不再占住平台线程；关掉时是原来的守护平台线程。
+ *
+ * 上下文不随线程继承，提交任务时用 ExecutionContext.current().wrap(...) 带过去。
+ * 后台定时任务（副本延迟探测、连接池回收、mapping 文件监听）线程数固定且很少，仍用平台线程。
+ */
+@Component
+public class TaskThreads {
+
+    private final boolean virtual;
+
+    public TaskThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /** 线程名 prefix-1、prefix-2 ... */
+    public ThreadFactory factory(String prefix) {
+        if (virtual) return Thread.ofVirtual().name(prefix + "-", 1).factory();
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** 不限线程数的执行器：虚拟线程时每个任务一个新线程，否则是按需扩缩的缓存线程池 */
+    public ExecutorService unbounded(String prefix) {
+        return virtual
+                ? Executors.newThreadPerTaskExecutor(factory(prefix))
+                : Executors.newCachedThreadPool(factory(prefix));
+    }
+
+    /** 固定并发数 + 有界队列：队列也满了 submit 抛 RejectedExecutionException，调用方按“繁忙”处理 */
+    public ExecutorService bounded(String prefix, int threads, int queueCapacity) {
+        int n = Math.max(1, threads);
+        return new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), factory(prefix), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /** 固定并发数的执行器（并发数本身就是限流，虚拟线程时也保留） */
+    public ExecutorService fixed(String prefix, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), factory(prefix));
+    }
+}
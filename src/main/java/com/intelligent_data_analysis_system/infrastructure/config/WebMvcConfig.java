@@ -1,16 +1,21 @@
 package com.intelligent_data_analysis_system.infrastructure.config;
 
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
 import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRoutingInterceptor;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
+@RequiredArgsConstructor
 public class WebMvcConfig implements WebMvcConfigurer {
 
+    private final DomainRegistry domainRegistry;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new DomainRoutingInterceptor())
+        registry.addInterceptor(new DomainRoutingInterceptor(domainRegistry))
                 .addPathPatterns("/api/**"); // 只拦你的 API
     }
 }
@@ -0,0 +1,37 @@
+package com.intelligent_data_analysis_system.infrastructure.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.batch")
+public class BatchProperties {
+
+    /**
+     * 是否启用批量跑题（BatchRunner）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 候选 SQL 并发执行 + 结果指纹投票
+     */
+    private Vote vote = new Vote();
+
+    @Data
+    public static class Vote {
+        /**
+         * false：沿用串行重试；true：多候选并发执行后按结果投票，没有候选或候选全部失败时再走串行重试
+         */
+        private boolean enabled = false;
+
+        /**
+         * 同时执行的候选数，不要超过单域连接池大小（DataSourceConfig 里是 5）
+         */
+        private int parallelism = 4;
+
+        /**
+         * 单个候选的执行超时（毫秒）
+         */
+        private long candidateTimeoutMs = 30000;
+    }
+}
@@ -0,0 +1,59 @@
+package com.intelligent_data_analysis_system.infrastructure.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 业务域注册表（DomainRegistry）的配置。FINANCE / HEALTHCARE 不配也有，连接沿用 spring.datasource.finance-* / healthcare-*；
+ * 在 registry 里写同名的域可以覆盖其中任意一项。
+ */
+@Data
+@ConfigurationProperties(prefix = "app.domains")
+public class DomainProperties {
+
+    /** 请求没带域（DomainContext 为空）时走的域 */
+    private String defaultDomain = "FINANCE";
+
+    /** 域的连接池空闲这么久（没有借出中的连接）就关掉，下次用到再建；0 不回收 */
+    private Duration idleEvictAfter = Duration.ofMinutes(15);
+
+    /** 多久检查一次空闲连接池 */
+    private Duration evictCheckInterval = Duration.ofMinutes(1);
+
+    /** 每个域同时借出的连接数上限（所有负载类别、主引擎 / 竞速 / 多语句池合计）；0 不限，域里可以单独覆盖 */
+    private int maxConcurrent = 0;
+
+    /** 域并发满时借连接最多等多久（请求有截止时间时取较小值） */
+    private Duration acquireTimeout = Duration.ofSeconds(5);
+
+    /** 域名（大小写不敏感，- 等同 _）-> 定义 */
+    private Map<String, Definition> registry = new LinkedHashMap<>();
+
+    @Data
+    public static class Definition {
+        /** 别名：接口里 domain 参数可以传这些（域名本身总是认） */
+        private List<String> aliases = new ArrayList<>();
+        /** 按 URL 前缀设置域（DomainRoutingInterceptor），如 /api/retail/；不配为 /api/{小写域名}/ */
+        private String urlPrefix;
+
+        private MultiDataSourceProperties.DbProps mysql;
+        private MultiDataSourceProperties.DbProps pgsql;
+        private MultiDataSourceProperties.DbProps mongodb;
+
+        /** 静态 schema 文本（classpath: / file:）；配置后不再扫数据库元数据 */
+        private String schema;
+        /** 该域的枚举映射（格式同 mapping.yml 里的一个域），第一次用到该域时载入 MappingRegistry */
+        private String mapping;
+        /** 追加到 NL2SQL prompt 里的领域说明（业务口径、常用表） */
+        private String prompt;
+
+        /** 覆盖全局 maxConcurrent */
+        private Integer maxConcurrent;
+    }
+}
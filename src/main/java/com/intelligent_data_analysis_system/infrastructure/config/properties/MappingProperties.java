@@ -0,0 +1,24 @@
+package com.intelligent_data_analysis_system.infrastructure.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.mapping")
+public class MappingProperties {
+
+    /**
+     * 外部 mapping.yml 路径；为空时用 classpath:mapping.yml（classpath 里的文件不监听）
+     */
+    private String path;
+
+    /**
+     * 是否监听外部文件变化并热加载
+     */
+    private boolean watch = true;
+
+    /**
+     * 文件变化后等多久再加载（毫秒），把编辑器连续几次写盘合并成一次
+     */
+    private long debounceMs = 500;
+}
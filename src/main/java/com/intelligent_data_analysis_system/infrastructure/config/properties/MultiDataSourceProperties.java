@@ -4,6 +4,9 @@ import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "spring.datasource")
 public class MultiDataSourceProperties {
@@ -22,6 +25,8 @@ public class MultiDataSourceProperties {
         private String username;
         private String password;
         private String driverClassName;
+        /** 只读副本：url 必填，username / password / driver-class-name 不填沿用主库 */
+        private List<DbProps> replicas = new ArrayList<>();
     }
 
     @PostConstruct
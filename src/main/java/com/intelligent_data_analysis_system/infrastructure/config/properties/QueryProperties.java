@@ -1,8 +1,13 @@
 package com.intelligent_data_analysis_system.infrastructure.config.properties;
 
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClass;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @Data
 @ConfigurationProperties(prefix = "app.query")
 public class QueryProperties {
@@ -10,4 +15,324 @@ public class QueryProperties {
      * Maximum number of rows to return in query results
      */
     private int maxRows = 200;
-}
\ No newline at end of file
+
+    /**
+     * 执行前把 WHERE / HAVING / ON 里的字面量提成绑定参数（同形状 SQL 复用预编译语句和执行计划）
+     */
+    private boolean parameterizeLiterals = true;
+
+    private PreparedStatements preparedStatements = new PreparedStatements();
+
+    private Streaming streaming = new Streaming();
+
+    private Cache cache = new Cache();
+
+    private SingleFlight singleFlight = new SingleFlight();
+
+    private Deadline deadline = new Deadline();
+
+    private Workload workload = new Workload();
+
+    private Replicas replicas = new Replicas();
+
+    private Admission admission = new Admission();
+
+    private Pagination pagination = new Pagination();
+
+    private ScatterGather scatterGather = new ScatterGather();
+
+    private Approximate approximate = new Approximate();
+
+    private Racing racing = new Racing();
+
+    private Batch batch = new Batch();
+
+    private SessionProfiles sessionProfiles = new SessionProfiles();
+
+    /**
+     * 驱动端预编译语句配置（建连接池时写进 Hikari dataSourceProperties）
+     */
+    @Data
+    public static class PreparedStatements {
+        /** MySQL Connector/J：useServerPrepStmts + cachePrepStmts */
+        private boolean mysqlServerSide = true;
+        /** MySQL Connector/J：prepStmtCacheSize，每个连接缓存的语句数 */
+        private int mysqlCacheSize = 250;
+        /** MySQL Connector/J：prepStmtCacheSqlLimit，超过这个长度的 SQL 不缓存（LLM SQL 经常超过默认的 256） */
+        private int mysqlCacheSqlLimit = 4096;
+        /** PgJDBC：prepareThreshold，同一语句执行几次后切服务端命名预编译（默认 5，参数化后可以调低） */
+        private int pgPrepareThreshold = 1;
+        /** PgJDBC：preparedStatementCacheQueries，每个连接缓存的语句数 */
+        private int pgCacheQueries = 256;
+    }
+
+    /**
+     * 流式执行（/api/debug/execute/stream）：游标分批取数，边读边写 NDJSON / 分块 JSON
+     */
+    @Data
+    public static class Streaming {
+        /** 每批从数据库取的行数（Statement.setFetchSize），也是写出后 flush 的间隔 */
+        private int fetchSize = 1000;
+        /** 流式结果行数上限（Statement.setMaxRows），0 表示不限 */
+        private int maxRows = 1_000_000;
+        /** MySQL Connector/J：useCursorFetch=true，fetchSize 才会走服务端游标（否则驱动一次读完整个结果集） */
+        private boolean mysqlCursorFetch = true;
+    }
+
+    /**
+     * execute 结果缓存：键为 (数据源, dbms, 参数化后的 SQL, 绑定参数, maxRows)
+     */
+    @Data
+    public static class Cache {
+        /** 默认关：数据更新不会自动失效，要由写入方调 DELETE /api/debug/cache，确认有人调了再打开 */
+        private boolean enabled = false;
+        /** 本地一级缓存总大小上限（字节，按 ColumnarResult.estimatedBytes 计），超出按 LRU 淘汰 */
+        private long maxBytes = 64L * 1024 * 1024;
+        /** 单个结果超过这个大小不缓存，免得一个大结果挤掉一批小结果 */
+        private long maxEntryBytes = 4L * 1024 * 1024;
+        /** 默认 TTL */
+        private Duration ttl = Duration.ofMinutes(30);
+        /** 按业务域覆盖默认 TTL（finance / healthcare） */
+        private Map<String, Duration> domainTtl = new LinkedHashMap<>();
+        /** 按表覆盖 TTL；SQL 涉及多张表时取各表 TTL 的最小值，0 表示涉及这张表的查询不缓存 */
+        private Map<String, Duration> tableTtl = new LinkedHashMap<>();
+        private Redis redis = new Redis();
+    }
+
+    /**
+     * Redis 二级缓存：多节点共享结果，失效通过 pub/sub 广播到各节点的一级缓存
+     */
+    @Data
+    public static class Redis {
+        /** 需要 spring.data.redis 连接配置 */
+        private boolean enabled = false;
+        private String keyPrefix = "ida:qc:";
+    }
+
+    /**
+     * 同键查询合并：同一 (数据源, 参数化 SQL, 绑定值, maxRows) 并发到达时只执行一次，其它请求等待并共享结果
+     */
+    @Data
+    public static class SingleFlight {
+        private boolean enabled = true;
+        /** 每个请求最多等多久；所有等待者都超时离开时取消正在执行的语句 */
+        private Duration maxWait = Duration.ofSeconds(120);
+    }
+
+    /**
+     * 请求截止时间：/api/ai/query 从入口开始计时，LLM 生成和 SQL 执行共用一个预算；执行阶段落到 Statement.setQueryTimeout
+     */
+    @Data
+    public static class Deadline {
+        /** /api/ai/query 整体预算（请求体 timeoutMs 只能调小） */
+        private Duration total = Duration.ofSeconds(90);
+        /** LLM 生成最多占剩余预算的比例，其余留给执行 */
+        private double generationShare = 0.6;
+        /** 单条语句的执行上限；没有请求级截止时间（直接调 /api/debug/execute、批处理）时也按它设置 */
+        private Duration executionTimeout = Duration.ofSeconds(30);
+        /** /api/ai/query 的执行线程数和排队上限：都满了直接拒绝（503），不在队列里把预算等完 */
+        private int asyncThreads = 16;
+        private int asyncQueueCapacity = 32;
+    }
+
+    /**
+     * 负载隔离：每个域一个连接池，池前按负载类别（交互 / 元数据 / 批处理）限并发，池满时交互请求优先拿连接
+     */
+    @Data
+    public static class Workload {
+        /** 关掉时不加隔离舱，所有流量直接共用连接池 */
+        private boolean enabled = true;
+        /** 每个节点的连接池大小（Hikari maximumPoolSize）；隔离舱总许可数 = 它 * 参与读分流的节点数 */
+        private int poolSize = 10;
+        private int minIdle = 1;
+        private ClassLimit interactive = new ClassLimit(0, Duration.ofSeconds(10));
+        private ClassLimit metadata = new ClassLimit(2, Duration.ofSeconds(20));
+        private ClassLimit batch = new ClassLimit(4, Duration.ofSeconds(120));
+    }
+
+    @Data
+    public static class ClassLimit {
+        /** 本类别最多同时占用的连接数，0 表示可以用满整个池 */
+        private int maxConcurrent;
+        /** 排队等待上限（交互请求还受请求截止时间约束），0 不限 */
+        private Duration acquireTimeout;
+
+        public ClassLimit() {
+        }
+
+        public ClassLimit(int maxConcurrent, Duration acquireTimeout) {
+            this.maxConcurrent = maxConcurrent;
+            this.acquireTimeout = acquireTimeout;
+        }
+    }
+
+    /**
+     * 只读副本路由（spring.datasource.&lt;db&gt;.replicas 配了副本才生效）：按在途请求数 * 平均耗时分流，延迟超阈值的摘除
+     */
+    @Data
+    public static class Replicas {
+        /** 复制延迟超过这个值的副本摘除，回到阈值以内重新加入 */
+        private Duration lagThreshold = Duration.ofSeconds(10);
+        private Duration lagCheckInterval = Duration.ofSeconds(5);
+        /** 主库是否也参与读分流；false 时只在没有可用副本时回落到主库 */
+        private boolean includePrimary = false;
+        /** 耗时 EWMA 的平滑系数（0~1，越大越跟最近的样本） */
+        private double latencyAlpha = 0.2;
+    }
+
+    /**
+     * 执行前 EXPLAIN 准入：按估计行数 / 代价 / 全表扫描判断放行、改写（收紧 LIMIT）或拒绝。计划按 SQL 指纹缓存
+     */
+    @Data
+    public static class Admission {
+        private boolean enabled = true;
+        /** 按 (数据源, 方言, SQL 指纹) 缓存的计划条数 */
+        private int planCacheSize = 2000;
+        private Duration planCacheTtl = Duration.ofMinutes(10);
+        /**
+         * 超阈值时收紧到的 LIMIT：只对 PG、计划里没有排序 / 聚合的查询改写（有这些算子时 LIMIT 省不了扫描），
+         * 改写后再 EXPLAIN 确认；SQL 自己的 LIMIT 不超过它时直接放行，MySQL 上要收紧的拒绝
+         */
+        private int rewriteLimit = 100;
+        /**
+         * 阈值：default 为兜底，可按 方言（MYSQL / POSTGRESQL，代价单位不同）、负载类别（BATCH）、
+         * 域（FINANCE）、域.类别（FINANCE.BATCH）覆盖，越具体越优先，逐项继承
+         */
+        private Map<String, Thresholds> thresholds = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Thresholds {
+        /** 最大中间结果行数估计，超过视为过重；null 继承，0 不限 */
+        private Long maxRows;
+        /** 优化器总代价（MySQL / PG 单位不同），null 继承，0 不限 */
+        private Double maxCost;
+        /** 允许全表扫描的最大表行数估计，null 继承，0 不限 */
+        private Long maxFullScanRows;
+    }
+
+    /**
+     * execute / AI 查询的键集分页（body 传 pageSize 开启，翻页传上一页返回的 cursor）
+     */
+    @Data
+    public static class Pagination {
+        private int maxPageSize = 1000;
+        /** 游标签名密钥；多节点部署必须配成一样，留空时每个进程随机生成（重启后旧游标失效） */
+        private String tokenSecret = "";
+    }
+
+    /**
+     * 大事实表上的可分解聚合（COUNT / SUM / MIN / MAX / AVG + GROUP BY）按日期范围拆片并发执行，内存里合并
+     */
+    @Data
+    public static class ScatterGather {
+        private boolean enabled = true;
+        /** 最多拆几片（每片占一个连接，受负载隔离舱限制） */
+        private int partitions = 4;
+        /** 日期跨度不足这么多天不拆（拆了省不下时间，反而多占连接） */
+        private int minRangeDays = 62;
+        /** 查询没写分区列范围时用表的 MIN / MAX 补，结果缓存多久 */
+        private Duration boundsTtl = Duration.ofMinutes(10);
+        /** 可拆的表 -> 日期分区列 */
+        private Map<String, String> partitionColumns = new LinkedHashMap<>();
+    }
+
+    /**
+     * 近似查询（execute / AI 查询 body 传 approximate: true）：聚合在样本上算再放大；COUNT(DISTINCT) 按精确查询执行
+     */
+    @Data
+    public static class Approximate {
+        private boolean enabled = true;
+        /** 默认抽样百分比（请求体 samplePercent 可调，限制在 min ~ max 之间） */
+        private double samplePercent = 1.0;
+        private double minSamplePercent = 0.01;
+        private double maxSamplePercent = 50.0;
+        /** PG TABLESAMPLE REPEATABLE / MySQL 主键范围抽样的种子：同一查询的样本固定，结果可缓存、前后一致 */
+        private long sampleSeed = 42;
+        /** MySQL 主键范围抽样用的主键 MIN / MAX 缓存多久 */
+        private Duration keyRangeTtl = Duration.ofMinutes(10);
+    }
+
+    /**
+     * 引擎竞速（execute / AI 查询 body 传 race: true）：同一查询转译后在 MySQL 和 PG 上同时跑，先返回的赢，
+     * 输的取消；按 SQL 指纹记住谁赢得多，之后直接走那个引擎
+     */
+    @Data
+    public static class Racing {
+        private boolean enabled = true;
+        /** 另一个引擎每个域的连接池大小（第一次竞速时才建） */
+        private int poolSize = 4;
+        /** 另一个引擎借连接最多等多久，等不到这一路直接放弃 */
+        private Duration acquireTimeout = Duration.ofSeconds(2);
+        /** 同一指纹至少比几次才下结论 */
+        private int minRaces = 3;
+        /** 胜率达到多少才固定走赢家，否则继续比 */
+        private double winRatio = 0.7;
+        /** 固定之后每走多少次重新比一次（数据量 / 索引变了赢家可能换） */
+        private int reraceEvery = 200;
+        /** 结论多久过期（过期后重新比） */
+        private Duration learnedTtl = Duration.ofHours(6);
+        /** 最多记多少个指纹（LRU） */
+        private int maxFingerprints = 5000;
+    }
+
+    /**
+     * 批量只读查询（/api/debug/execute/batch）：同一个域的多条 SELECT 一次往返执行，每条一个结果
+     */
+    @Data
+    public static class Batch {
+        private boolean enabled = true;
+        /** 一批最多几条 */
+        private int maxStatements = 20;
+        /**
+         * MySQL 上另建一个 allowMultiQueries=true 的小连接池，只给批量执行用（多语句只由批量执行拼出）；
+         * 其它连接池一律不开多语句。关掉时 MySQL 上逐条执行
+         */
+        private boolean mysqlMultiQueries = false;
+        /** 上面那个多语句连接池每个域的连接数 */
+        private int multiQueryPoolSize = 2;
+    }
+
+    /**
+     * 按查询类别（QueryClass）借连接时套用的会话配置（SessionProfileDataSource）
+     */
+    @Data
+    public static class SessionProfiles {
+        private boolean enabled = true;
+        private Profile lookup = new Profile(true, Duration.ofSeconds(30), null, 0);
+        private Profile aggregate = new Profile(true, Duration.ofSeconds(120), "256MB", 0);
+        private Profile metadata = new Profile(true, Duration.ofSeconds(60), null, 0);
+        private Profile batch = new Profile(true, Duration.ofMinutes(10), "128MB", 1000);
+
+        public Profile profile(QueryClass cls) {
+            return switch (cls) {
+                case LOOKUP -> lookup;
+                case AGGREGATE -> aggregate;
+                case METADATA -> metadata;
+                case BATCH -> batch;
+            };
+        }
+    }
+
+    @Data
+    public static class Profile {
+        /** 只读事务（PG 不分配事务号、MySQL 走只读事务优化） */
+        private boolean readOnly = true;
+        /** 服务端语句超时（PG statement_timeout / MySQL max_execution_time），空表示用数据库默认值 */
+        private Duration statementTimeout;
+        /** PG work_mem（如 256MB），空表示用数据库默认值；MySQL 忽略 */
+        private String pgWorkMem;
+        /** 新建语句的默认 fetch size，0 表示不设 */
+        private int fetchSize;
+
+        public Profile() {
+        }
+
+        public Profile(boolean readOnly, Duration statementTimeout, String pgWorkMem, int fetchSize) {
+            this.readOnly = readOnly;
+            this.statementTimeout = statementTimeout;
+            this.pgWorkMem = pgWorkMem;
+            this.fetchSize = fetchSize;
+        }
+    }
+}
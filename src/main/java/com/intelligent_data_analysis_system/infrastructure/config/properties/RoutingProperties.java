@@ -11,4 +11,10 @@ public class RoutingProperties {
      * mysql / pg / mongodb
      */
     private String dbms;
+
+    /**
+     * LLM 生成 SQL 用的方言：mysql / pg；为空则与 dbms 相同。
+     * 两个后端配同一个值就能共用一套 prompt，生成结果再转译成 dbms 的方言
+     */
+    private String generationDialect;
 }
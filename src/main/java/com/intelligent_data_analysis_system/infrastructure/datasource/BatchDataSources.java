@@ -0,0 +1,29 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+
+/**
+ * 批量执行专用的数据源：MySQL 上打开 allowMultiQueries 的连接池只在这里，BatchQueryExecutor 之外没人借得到，
+ * 其它入口的连接都不能一次执行多条语句。不是 DataSource bean，免得被自动装配成默认数据源。
+ */
+public class BatchDataSources implements DisposableBean {
+
+    private final DomainRoutingDataSource multiQuery;
+
+    /** @param multiQuery 多语句连接池（按 DomainContext 路由）；不用时为 null */
+    public BatchDataSources(DomainRoutingDataSource multiQuery) {
+        this.multiQuery = multiQuery;
+    }
+
+    /** 当前域的多语句数据源；没开时 null */
+    public DataSource multiQuery() {
+        return multiQuery;
+    }
+
+    @Override
+    public void destroy() {
+        if (multiQuery != null) multiQuery.destroy();
+    }
+}
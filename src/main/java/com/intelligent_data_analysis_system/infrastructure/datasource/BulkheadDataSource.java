@@ -0,0 +1,63 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 在连接池前面加一层按负载类别（WorkloadContext）限流的隔离舱：先拿许可再向连接池借连接，连接 close 时归还许可。
+ * 交互请求排队时不超过请求剩余的截止时间（DeadlineContext）。
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+
+    private final WorkloadBulkhead bulkhead;
+
+    public BulkheadDataSource(DataSource target, WorkloadBulkhead bulkhead) {
+        super(target);
+        this.bulkhead = bulkhead;
+    }
+
+    public WorkloadBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        WorkloadClass cls = WorkloadContext.get();
+        acquire(cls);
+        try {
+            return guard(obtainTargetDataSource().getConnection(), cls);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.release(cls);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        WorkloadClass cls = WorkloadContext.get();
+        acquire(cls);
+        try {
+            return guard(obtainTargetDataSource().getConnection(username, password), cls);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.release(cls);
+            throw e;
+        }
+    }
+
+    private void acquire(WorkloadClass cls) throws SQLException {
+        Deadline deadline = DeadlineContext.get();
+        long timeoutMs = bulkhead.acquireTimeoutMs(cls);
+        if (!deadline.isUnbounded()) timeoutMs = Math.max(1, deadline.remainingMillis(timeoutMs));
+        bulkhead.acquire(cls, timeoutMs);
+    }
+
+    /** 代理 Connection：第一次 close 时归还许可（连接本身回池由连接池处理） */
+    private Connection guard(Connection target, WorkloadClass cls) {
+        return GuardedConnection.onClose(target, () -> bulkhead.release(cls));
+    }
+}
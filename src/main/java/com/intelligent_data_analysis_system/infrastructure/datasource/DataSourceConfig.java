@@ -1,67 +1,300 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
 
 import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
 import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
 import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
 import com.intelligent_data_analysis_system.infrastructure.config.properties.RoutingProperties;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.RequiredArgsConstructor;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import javax.sql.DataSource;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @Configuration
 @RequiredArgsConstructor
-@EnableConfigurationProperties({RoutingProperties.class, MultiDataSourceProperties.class, QueryProperties.class})
+@EnableConfigurationProperties({RoutingProperties.class, MultiDataSourceProperties.class, QueryProperties.class,
+        DomainProperties.class})
 @ConditionalOnExpression("!'${app.routing.dbms:mysql}'.equalsIgnoreCase('mongodb')") // ✅ mongodb 时整个类不加载
 public class DataSourceConfig {
 
     private final RoutingProperties routingProperties;
-    private final MultiDataSourceProperties multi;
+    private final QueryProperties queryProperties;
+    private final DomainProperties domainProperties;
+    private final DomainRegistry domainRegistry;
+    private final WorkloadBulkheads workloadBulkheads;
+    private final ReplicaMonitor replicaMonitor;
 
+    /**
+     * 按 DomainContext 路由到各域：域的连接池第一次借连接时才建，空闲超过 app.domains.idle-evict-after 就关掉，
+     * 域并发上限见 app.domains.max-concurrent（DomainRoutingDataSource）
+     */
     @Bean
+    @Primary
     public DataSource routingDataSource() {
-        String dbms = routingProperties.getDbms().toLowerCase(); // mysql / pg
+        SqlDialect engine = primaryEngine();
+        return new DomainRoutingDataSource(domainRegistry, domainProperties, domain -> buildDomain(domain, engine));
+    }
 
-        DataSource finance = buildDataSource(dbms.equals("pg") ? multi.getFinancePgsql() : multi.getFinanceMysql());
-        DataSource healthcare = buildDataSource(dbms.equals("pg") ? multi.getHealthcarePgsql() : multi.getHealthcareMysql());
+    /**
+     * 另一个引擎上的同一份数据（引擎竞速用），和主引擎一样按域懒建、空闲回收、套域并发上限；
+     * 连接池外同样包会话配置和负载隔离舱，只是池子小、借连接等待短，竞速的另一路拿不到连接就放弃，不拖慢主引擎那一路
+     */
+    @Bean
+    public EngineDataSources engineDataSources() {
+        SqlDialect alternate = EngineDataSources.alternateOf(primaryEngine());
+        DomainRoutingDataSource pools = new DomainRoutingDataSource("race-" + alternate.name().toLowerCase(Locale.ROOT),
+                domainRegistry, domainProperties, domain -> buildRaceDomain(domain, alternate));
+        return new EngineDataSources(primaryEngine(), domain -> configured(props(domain, alternate)), pools);
+    }
 
-        Map<Object, Object> targets = new HashMap<>();
-        targets.put(DataSourceDomain.FINANCE.name(), finance);
-        targets.put(DataSourceDomain.HEALTHCARE.name(), healthcare);
+    /**
+     * 批量执行专用的多语句连接池（MySQL allowMultiQueries=true），按 DomainContext 路由、懒建、空闲回收；
+     * 同样包会话配置、负载隔离舱（按 域@MULTI 登记）和域并发上限。主引擎不是 MySQL 或没开 mysql-multi-queries 时没有
+     */
+    @Bean
+    public BatchDataSources batchDataSources() {
+        if (primaryEngine() != SqlDialect.MYSQL || !queryProperties.getBatch().isMysqlMultiQueries()) {
+            return new BatchDataSources(null);
+        }
+        return new BatchDataSources(new DomainRoutingDataSource("multi-query", domainRegistry, domainProperties,
+                domain -> buildMultiQueryDomain(domain, SqlDialect.MYSQL)));
+    }
 
-        DomainRoutingDataSource rds = new DomainRoutingDataSource();
-        rds.setTargetDataSources(targets);
-        rds.setDefaultTargetDataSource(finance);
-        rds.afterPropertiesSet();
+    /**
+     * MyBatis 实体映射用的数据源：同样按域懒建、空闲回收，只连主库；连接池不带分析查询专用的驱动参数
+     * （PG 的 stringtype=unspecified / prepareThreshold 是给字面量参数化后的分析 SQL 用的，实体读写按 JDBC 类型严格绑定）
+     */
+    @Bean
+    public DataSource mybatisDataSource() {
+        SqlDialect engine = primaryEngine();
+        return new DomainRoutingDataSource("mybatis", domainRegistry, domainProperties,
+                domain -> buildMybatisDomain(domain, engine));
+    }
+
+    /** mysql / pg / pgsql / postgres ... 都认，认不出按 MySQL */
+    private SqlDialect primaryEngine() {
+        return SqlDialect.of(routingProperties.getDbms(), SqlDialect.MYSQL);
+    }
+
+    private MultiDataSourceProperties.DbProps props(DataSourceDomain domain, SqlDialect engine) {
+        return domainRegistry.dbProps(domain, engine);
+    }
 
-        return rds;
+    private static boolean configured(MultiDataSourceProperties.DbProps p) {
+        return p != null && p.getUrl() != null && !p.getUrl().isBlank();
     }
 
-    private DataSource buildDataSource(MultiDataSourceProperties.DbProps p) {
+    private MultiDataSourceProperties.DbProps requireProps(DataSourceDomain domain, SqlDialect engine) {
+        MultiDataSourceProperties.DbProps p = props(domain, engine);
+        if (!configured(p)) {
+            throw new IllegalStateException("域 " + domain + " 没有配置 " + engine.displayName() + " 连接");
+        }
+        return p;
+    }
+
+    /**
+     * 一个域的数据源：没配副本就是主库连接池；配了副本则是主库 + 各副本连接池，读请求按负载 / 延迟分到副本上。
+     * 最外层是负载隔离舱，总许可数按参与读分流的节点数放大。
+     * 回收时注销这次登记的隔离舱和副本探测（按实例，不动同名的新实例）、关掉这个域建的所有连接池。
+     */
+    private DomainRoutingDataSource.Pool buildDomain(DataSourceDomain domain, SqlDialect engine) {
+        MultiDataSourceProperties.DbProps p = requireProps(domain, engine);
+        List<HikariDataSource> pools = new ArrayList<>();
+
+        HikariDataSource primaryPool = buildDataSource(p, true);
+        pools.add(primaryPool);
+        DataSource primary = withSessionProfiles(primaryPool);
+        List<MultiDataSourceProperties.DbProps> replicaProps = p.getReplicas() == null ? List.of() : p.getReplicas();
+        int capacity = Math.max(1, queryProperties.getWorkload().getPoolSize());
+        if (replicaProps.isEmpty()) {
+            DataSource outer = withBulkhead(domain.name(), primary, capacity, 0);
+            return new DomainRoutingDataSource.Pool(outer, () -> {
+                unregisterBulkhead(domain.name(), outer);
+                pools.forEach(HikariDataSource::close);
+            });
+        }
+
+        QueryProperties.Replicas cfg = queryProperties.getReplicas();
+        List<ReplicaRoutingDataSource.Node> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaProps.size(); i++) {
+            HikariDataSource replicaPool = buildDataSource(inheritFromPrimary(replicaProps.get(i), p), true);
+            pools.add(replicaPool);
+            replicas.add(new ReplicaRoutingDataSource.Node("replica-" + (i + 1),
+                    withSessionProfiles(replicaPool), false));
+        }
+        ReplicaRoutingDataSource rrds = new ReplicaRoutingDataSource(domain.name(),
+                new ReplicaRoutingDataSource.Node("primary", primary, true), replicas,
+                cfg.isIncludePrimary(), cfg.getLatencyAlpha(), cfg.getLagThreshold());
+        replicaMonitor.register(rrds);
+        DataSource outer = withBulkhead(domain.name(), rrds, capacity * Math.max(1, rrds.readableNodes()), 0);
+        return new DomainRoutingDataSource.Pool(outer, () -> {
+            unregisterBulkhead(domain.name(), outer);
+            replicaMonitor.unregister(rrds);
+            pools.forEach(HikariDataSource::close);
+        });
+    }
+
+    /**
+     * 竞速用的另一个引擎上的一个域：只连主库（不读副本），池子按 app.query.racing.pool-size，
+     * 隔离舱排队也不超过 racing.acquire-timeout；隔离舱按 域@引擎 登记，和主引擎的分开看。
+     */
+    private DomainRoutingDataSource.Pool buildRaceDomain(DataSourceDomain domain, SqlDialect engine) {
+        QueryProperties.Racing racing = queryProperties.getRacing();
+        String key = domain.name() + "@" + engine.name();
+        int size = Math.max(1, racing.getPoolSize());
+        long waitMs = Math.max(250, racing.getAcquireTimeout().toMillis());
+
+        HikariDataSource pool = buildDataSource(requireProps(domain, engine), true);
+        pool.setMaximumPoolSize(size);
+        pool.setMinimumIdle(0);
+        pool.setConnectionTimeout(waitMs);
+        pool.setPoolName("Hikari-race-" + domain.name() + "-" + engine.name());
+        DataSource outer = withBulkhead(key, withSessionProfiles(pool), size, waitMs);
+        return new DomainRoutingDataSource.Pool(outer, () -> {
+            unregisterBulkhead(key, outer);
+            pool.close();
+        });
+    }
+
+    /** 批量执行的多语句池：只连主库，池子按 app.query.batch.multi-query-pool-size */
+    private DomainRoutingDataSource.Pool buildMultiQueryDomain(DataSourceDomain domain, SqlDialect engine) {
+        String key = domain.name() + "@MULTI";
+        int size = Math.max(1, queryProperties.getBatch().getMultiQueryPoolSize());
+
+        HikariDataSource pool = buildDataSource(requireProps(domain, engine), true);
+        pool.addDataSourceProperty("allowMultiQueries", "true");
+        pool.setMaximumPoolSize(size);
+        pool.setMinimumIdle(0);
+        pool.setPoolName("Hikari-multi-" + domain.name());
+        DataSource outer = withBulkhead(key, withSessionProfiles(pool), size, 0);
+        return new DomainRoutingDataSource.Pool(outer, () -> {
+            unregisterBulkhead(key, outer);
+            pool.close();
+        });
+    }
+
+    /** MyBatis 的一个域：只连主库，空闲时不留连接 */
+    private DomainRoutingDataSource.Pool buildMybatisDomain(DataSourceDomain domain, SqlDialect engine) {
+        HikariDataSource pool = buildDataSource(requireProps(domain, engine), false);
+        pool.setMinimumIdle(0);
+        pool.setPoolName("Hikari-mybatis-" + domain.name());
+        return new DomainRoutingDataSource.Pool(withSessionProfiles(pool), pool::close);
+    }
+
+    /** 副本没填的账号 / 驱动沿用主库 */
+    private static MultiDataSourceProperties.DbProps inheritFromPrimary(MultiDataSourceProperties.DbProps r,
+                                                                        MultiDataSourceProperties.DbProps p) {
+        MultiDataSourceProperties.DbProps out = new MultiDataSourceProperties.DbProps();
+        out.setUrl(r.getUrl());
+        out.setUsername(r.getUsername() != null ? r.getUsername() : p.getUsername());
+        out.setPassword(r.getPassword() != null ? r.getPassword() : p.getPassword());
+        out.setDriverClassName(r.getDriverClassName() != null ? r.getDriverClassName() : p.getDriverClassName());
+        return out;
+    }
+
+    /** @param analytic 分析查询（SqlExecuteService / 竞速 / 批量）用的池子才带预编译缓存和 PG 的参数类型推断 */
+    private HikariDataSource buildDataSource(MultiDataSourceProperties.DbProps p, boolean analytic) {
         HikariDataSource ds = new HikariDataSource();
         ds.setJdbcUrl(p.getUrl());
         ds.setUsername(p.getUsername());
         ds.setPassword(p.getPassword());
         ds.setDriverClassName(p.getDriverClassName());
 
-        ds.setMaximumPoolSize(5);
-        ds.setMinimumIdle(1);
+        applyDriverProps(ds, p.getDriverClassName(), analytic);
+
+        QueryProperties.Workload workload = queryProperties.getWorkload();
+        ds.setMaximumPoolSize(Math.max(1, workload.getPoolSize()));
+        ds.setMinimumIdle(Math.max(0, Math.min(workload.getMinIdle(), workload.getPoolSize())));
         ds.setPoolName("Hikari-" + p.getUrl());
         return ds;
     }
 
+    /** 每个连接池外包一层：借连接时按查询类别套用会话配置（只读、语句超时、work_mem ...） */
+    private DataSource withSessionProfiles(DataSource pool) {
+        return new SessionProfileDataSource(pool, queryProperties.getSessionProfiles());
+    }
+
+    /**
+     * 连接池前加负载隔离舱：批处理 / 元数据扫描各自限并发，池满时交互请求先拿到连接。
+     * 隔离舱总许可数等于连接池大小（有副本时乘以参与读分流的节点数），许可先于连接获取，
+     * 所以排队发生在隔离舱里（按优先级），不在 Hikari 里（FIFO）。
+     *
+     * @param maxWaitMs 各类别排队上限再封顶（竞速用），0 按配置
+     */
+    private DataSource withBulkhead(String key, DataSource pool, int capacity, long maxWaitMs) {
+        QueryProperties.Workload workload = queryProperties.getWorkload();
+        if (!workload.isEnabled()) return pool;
+
+        Map<WorkloadClass, Integer> limits = new EnumMap<>(WorkloadClass.class);
+        Map<WorkloadClass, Long> timeouts = new EnumMap<>(WorkloadClass.class);
+        putLimit(limits, timeouts, WorkloadClass.INTERACTIVE, workload.getInteractive(), maxWaitMs);
+        putLimit(limits, timeouts, WorkloadClass.METADATA, workload.getMetadata(), maxWaitMs);
+        putLimit(limits, timeouts, WorkloadClass.BATCH, workload.getBatch(), maxWaitMs);
+
+        WorkloadBulkhead bulkhead = new WorkloadBulkhead(key, capacity, limits, timeouts);
+        workloadBulkheads.register(key, bulkhead);
+        return new BulkheadDataSource(pool, bulkhead);
+    }
+
+    /** 注销 withBulkhead 登记的隔离舱（没开隔离舱时什么都不做） */
+    private void unregisterBulkhead(String key, DataSource outer) {
+        if (outer instanceof BulkheadDataSource b) workloadBulkheads.unregister(key, b.getBulkhead());
+    }
+
+    private static void putLimit(Map<WorkloadClass, Integer> limits, Map<WorkloadClass, Long> timeouts,
+                                 WorkloadClass cls, QueryProperties.ClassLimit limit, long maxWaitMs) {
+        if (limit == null) return;
+        limits.put(cls, limit.getMaxConcurrent());
+        long t = limit.getAcquireTimeout() == null ? 0L : limit.getAcquireTimeout().toMillis();
+        if (maxWaitMs > 0) t = t > 0 ? Math.min(t, maxWaitMs) : maxWaitMs;
+        timeouts.put(cls, t);
+    }
+
+    /**
+     * 字面量参数化之后同形状 SQL 文本一致，打开驱动的预编译语句缓存才有意义，所以缓存参数只给分析查询的池子。
+     * PG 的分析池额外设 stringtype=unspecified：参数化提出来的日期等字符串参数按未定类型发给服务端，
+     * 由服务端推断（否则 timestamp >= varchar 报错）；MyBatis 的实体参数本来就带类型，不放宽。
+     */
+    void applyDriverProps(HikariDataSource ds, String driverClassName, boolean analytic) {
+        QueryProperties.PreparedStatements ps = queryProperties.getPreparedStatements();
+        String driver = driverClassName == null ? "" : driverClassName;
+
+        if (driver.contains("mysql")) {
+            // 多语句只在批量执行专用的池子上打开（buildMultiQueryDomain），SqlGuard 漏判时这里也执行不了第二条语句
+            ds.addDataSourceProperty("allowMultiQueries", "false");
+            if (!analytic) return;
+            ds.addDataSourceProperty("useServerPrepStmts", String.valueOf(ps.isMysqlServerSide()));
+            ds.addDataSourceProperty("cachePrepStmts", "true");
+            ds.addDataSourceProperty("prepStmtCacheSize", String.valueOf(ps.getMysqlCacheSize()));
+            ds.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(ps.getMysqlCacheSqlLimit()));
+            // 只影响设置了 fetchSize 的语句（流式执行），普通查询仍一次取完
+            ds.addDataSourceProperty("useCursorFetch", String.valueOf(queryProperties.getStreaming().isMysqlCursorFetch()));
+        } else if (driver.contains("postgresql") && analytic) {
+            ds.addDataSourceProperty("prepareThreshold", String.valueOf(ps.getPgPrepareThreshold()));
+            ds.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(ps.getPgCacheQueries()));
+            ds.addDataSourceProperty("stringtype", "unspecified");
+        }
+    }
+
     @Bean
-    public SqlSessionFactory sqlSessionFactory(DataSource routingDataSource) throws Exception {
+    public SqlSessionFactory sqlSessionFactory(@Qualifier("mybatisDataSource") DataSource mybatisDataSource)
+            throws Exception {
         MybatisSqlSessionFactoryBean factory = new MybatisSqlSessionFactoryBean();
-        factory.setDataSource(routingDataSource);
+        factory.setDataSource(mybatisDataSource);
 
         com.baomidou.mybatisplus.core.MybatisConfiguration configuration =
                 new com.baomidou.mybatisplus.core.MybatisConfiguration();
@@ -1,5 +1,73 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
 
-public enum DataSourceDomain {
-    FINANCE, HEALTHCARE
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * 业务域。原来是只有 FINANCE / HEALTHCARE 两个值的枚举，现在域由 app.domains 配置（DomainRegistry 启动时登记），
+ * 这里保留枚举的用法：同名只有一个实例（可以用 == 比较）、name() / valueOf() / values()，
+ * 没登记的名字 valueOf 抛 IllegalArgumentException。
+ */
+public final class DataSourceDomain {
+
+    private static final Pattern NAME = Pattern.compile("[A-Z][A-Z0-9_]*");
+    private static final Map<String, DataSourceDomain> BY_NAME = new ConcurrentHashMap<>();
+    private static final List<DataSourceDomain> ORDERED = new CopyOnWriteArrayList<>();
+
+    /** 内置的两个域（没有 app.domains 配置时沿用 spring.datasource.finance-* / healthcare-*） */
+    public static final DataSourceDomain FINANCE = register("FINANCE");
+    public static final DataSourceDomain HEALTHCARE = register("HEALTHCARE");
+
+    private final String name;
+
+    private DataSourceDomain(String name) {
+        this.name = name;
+    }
+
+    /** 登记一个域（名字统一转大写、- 换成 _），已登记过返回同一个实例 */
+    public static DataSourceDomain register(String name) {
+        String n = normalize(name);
+        if (!NAME.matcher(n).matches()) {
+            throw new IllegalArgumentException("域名只能是字母开头的字母 / 数字 / 下划线: " + name);
+        }
+        synchronized (ORDERED) {
+            DataSourceDomain d = BY_NAME.get(n);
+            if (d == null) {
+                d = new DataSourceDomain(n);
+                BY_NAME.put(n, d);
+                ORDERED.add(d);
+            }
+            return d;
+        }
+    }
+
+    /** 和枚举一样：大小写不敏感地按名字查，没登记的抛 IllegalArgumentException */
+    public static DataSourceDomain valueOf(String name) {
+        DataSourceDomain d = BY_NAME.get(normalize(name));
+        if (d == null) throw new IllegalArgumentException("未登记的域: " + name);
+        return d;
+    }
+
+    /** 已登记的域，按登记顺序 */
+    public static DataSourceDomain[] values() {
+        return ORDERED.toArray(new DataSourceDomain[0]);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static String normalize(String name) {
+        if (name == null) throw new NullPointerException("域名为空");
+        return name.trim().replace('-', '_').toUpperCase(Locale.ROOT);
+    }
 }
@@ -1,9 +1,23 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-public class DomainClassifier {
+/**
+ * 按问题文本判断走哪个域（/api/ai/query 没传 domain 时）：
+ * 1. 问题里提到了注册表里某个域的名字或别名（app.domains.registry.*.aliases），直接走那个域
+ * 2. 内置两个域的关键词：药名 / 药品剂型 / 医疗词 -> HEALTHCARE，金融词 -> FINANCE
+ * 3. 都没命中走注册表的默认域（app.domains.default-domain）
+ */
+public final class DomainClassifier {
+
+    private DomainClassifier() {}
+
+    /** 别名太短（单个字母 / 汉字）容易误命中，不参与匹配 */
+    private static final int MIN_ALIAS_LENGTH = 2;
 
     /** ================= 医疗强信号 ================= */
 
@@ -11,73 +25,78 @@ public class DomainClassifier {
     private static final Set<String> DRUG_NAMES = Set.of(
             "阿莫西林", "阿司匹林", "布洛芬", "头孢", "头孢克肟", "头孢呋辛",
             "奥美拉唑", "二甲双胍", "甲硝唑", "左氧氟沙星", "诺氟沙星",
-            "青霉素", "红霉素", "维生素", "维C", "葡萄糖", "胰岛素"
+            "青霉素", "红霉素", "胰岛素", "葡萄糖", "维生素"
     );
 
     // 药品通用后缀（命中即医疗）
-    private static final Pattern DRUG_SUFFIX_PATTERN = Pattern.compile(
+    private static final Pattern DRUG_SUFFIX = Pattern.compile(
             "(片|胶囊|注射液|针剂|颗粒|滴丸|缓释片|控释片|口服液|混悬液|乳膏|栓|喷雾)"
     );
 
     // 医疗场景词
     private static final Set<String> MEDICAL_TERMS = Set.of(
-            "患者", "病人", "诊断", "处方", "用药", "剂量", "给药", "禁忌",
-            "不良反应", "过敏", "适应症", "门诊", "住院", "手术",
-            "检验", "检查", "病历", "医保", "科室", "库存", "药房"
+            "患者", "病人", "就诊", "科室", "病历", "医院", "处方", "用药", "剂量", "给药",
+            "药品", "药房", "库存", "检验", "检查", "医生", "医师", "手术", "诊断",
+            "住院", "门诊", "医", "护士"
     );
 
     /** ================= 金融强信号 ================= */
 
     private static final Set<String> FINANCE_TERMS = Set.of(
-            "客户", "账户", "资金", "余额", "交易", "持仓", "基金", "股票",
-            "债券", "产品", "净值", "收益", "风险", "申购", "赎回",
-            "对手方", "结算", "保证金", "投资组合"
+            "资产", "客户", "交易", "基金", "理财", "持仓", "对手方",
+            "净值", "收益", "风险", "申购", "赎回", "账户"
     );
 
     /**
      * 对外主入口：自动识别 Domain
      */
-    public static DataSourceDomain detect(String question) {
-        if (question == null || question.isBlank()) {
-            return DataSourceDomain.FINANCE; // 默认兜底
-        }
+    public static DataSourceDomain detect(String question, DomainRegistry registry) {
+        String q = normalize(question == null ? "" : question);
+        if (q.isEmpty()) return registry.defaultDomain();
 
-        String q = normalize(question);
+        // 1️⃣ 点名了某个域
+        DataSourceDomain named = mentioned(q, registry);
+        if (named != null) return named;
 
-        // 1️⃣ 药品名称直接命中（最强）
+        // 2️⃣ 药品名称 / 药品后缀 / 医疗语义
         for (String drug : DRUG_NAMES) {
-            if (q.contains(drug)) {
-                return DataSourceDomain.HEALTHCARE;
-            }
+            if (q.contains(drug)) return DataSourceDomain.HEALTHCARE;
         }
-
-        // 2️⃣ 药品后缀命中
-        if (DRUG_SUFFIX_PATTERN.matcher(q).find()) {
-            return DataSourceDomain.HEALTHCARE;
-        }
-
-        // 3️⃣ 医疗语义命中
+        if (DRUG_SUFFIX.matcher(q).find()) return DataSourceDomain.HEALTHCARE;
         for (String term : MEDICAL_TERMS) {
-            if (q.contains(term)) {
-                return DataSourceDomain.HEALTHCARE;
-            }
+            if (q.contains(term)) return DataSourceDomain.HEALTHCARE;
         }
 
-        // 4️⃣ 金融强信号
+        // 3️⃣ 金融强信号
         for (String term : FINANCE_TERMS) {
-            if (q.contains(term)) {
-                return DataSourceDomain.FINANCE;
-            }
+            if (q.contains(term)) return DataSourceDomain.FINANCE;
         }
 
-        // 5️⃣ 都没命中 → 兜底（可以接 LLM，这里先默认金融）
-        return DataSourceDomain.FINANCE;
+        // 4️⃣ 都没命中 → 默认域
+        return registry.defaultDomain();
+    }
+
+    /** 问题里出现的域名 / 别名；多个都出现时取最长的那个词（"零售门店" 优先于 "门店"） */
+    static DataSourceDomain mentioned(String normalized, DomainRegistry registry) {
+        DataSourceDomain best = null;
+        int bestLen = 0;
+        for (DataSourceDomain d : registry.domains()) {
+            List<String> words = new ArrayList<>(registry.get(d).aliases);
+            words.add(d.name());
+            for (String word : words) {
+                String w = normalize(word);
+                if (w.length() >= MIN_ALIAS_LENGTH && w.length() > bestLen && normalized.contains(w)) {
+                    best = d;
+                    bestLen = w.length();
+                }
+            }
+        }
+        return best;
     }
 
     private static String normalize(String s) {
         return s.replaceAll("\\s+", "")
-                .replaceAll("[，。！？,.!?]", "")
-                .toLowerCase();
+                .replaceAll("[，。！？,.!?；;:：()（）\\[\\]{}【】\"“”'’]", "")
+                .toLowerCase(Locale.ROOT);
     }
 }
-
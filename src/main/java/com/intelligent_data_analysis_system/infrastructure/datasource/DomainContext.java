@@ -1,13 +1,27 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
 
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的业务域：ExecutionContext 里的一项。
+ * 嵌套设置用 call（结束后恢复外层的值）；切线程时用 ExecutionContext.current().wrap(...) 整体带过去。
+ */
 public final class DomainContext {
-    private static final ThreadLocal<DataSourceDomain> CTX = new ThreadLocal<>();
 
     private DomainContext() {}
 
-    public static void set(DataSourceDomain domain) { CTX.set(domain); }
+    public static void set(DataSourceDomain domain) {
+        ExecutionContext.replace(ExecutionContext.current().withDomain(domain));
+    }
+
+    public static DataSourceDomain get() { return ExecutionContext.current().domain(); }
 
-    public static DataSourceDomain get() { return CTX.get(); }
+    public static void clear() { set(null); }
 
-    public static void clear() { CTX.remove(); }
+    /** 临时切换域执行，结束后恢复原值 */
+    public static <T> T call(DataSourceDomain domain, Supplier<T> work) {
+        return ExecutionContext.current().withDomain(domain).call(work);
+    }
 }
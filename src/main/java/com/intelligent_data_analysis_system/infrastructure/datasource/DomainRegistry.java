@@ -0,0 +1,271 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 业务域注册表：启动时从 app.domains.registry 读出所有域（FINANCE / HEALTHCARE 不配也有，连接沿用 spring.datasource.*），
+ * 登记成 DataSourceDomain，提供 别名 / URL 前缀 -> 域 的解析和每个域各引擎的连接配置。
+ *
+ * 每个域的 schema / mapping / prompt 资源第一次用到该域时才读进来，不用的域只占一份配置。
+ * 连接池也是第一次借连接时才建（DomainRoutingDataSource），所以内存和连接数跟着活跃的域走，而不是配置了多少个域。
+ */
+@Component
+public class DomainRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DomainRegistry.class);
+
+    /** 一个域解析好的配置 */
+    public static final class Domain {
+        public final DataSourceDomain id;
+        public final List<String> aliases;
+        public final String urlPrefix;
+        public final MultiDataSourceProperties.DbProps mysql;
+        public final MultiDataSourceProperties.DbProps pgsql;
+        public final MultiDataSourceProperties.DbProps mongodb;
+        /** 同时借出的连接数上限，0 不限 */
+        public final int maxConcurrent;
+        final String schema;
+        final String mapping;
+        final String prompt;
+
+        Domain(DataSourceDomain id, DomainProperties.Definition def, int maxConcurrent) {
+            this.id = id;
+            this.aliases = List.copyOf(def.getAliases());
+            String prefix = def.getUrlPrefix();
+            if (prefix == null || prefix.isBlank()) prefix = "/api/" + id.name().toLowerCase(Locale.ROOT) + "/";
+            this.urlPrefix = prefix.endsWith("/") ? prefix : prefix + "/";
+            this.mysql = def.getMysql();
+            this.pgsql = def.getPgsql();
+            this.mongodb = def.getMongodb();
+            this.maxConcurrent = Math.max(0, maxConcurrent);
+            this.schema = def.getSchema();
+            this.mapping = def.getMapping();
+            this.prompt = def.getPrompt();
+        }
+    }
+
+    /** 按需读进来的资源：schema / prompt 文本（没配为 null），mapping 读进来后直接登记到 MappingRegistry */
+    private static final class Assets {
+        final String schema;
+        final String prompt;
+
+        Assets(String schema, String prompt) {
+            this.schema = schema;
+            this.prompt = prompt;
+        }
+    }
+
+    private final Map<DataSourceDomain, Domain> domains;
+    /** 小写的域名 / 别名 -> 域 */
+    private final Map<String, DataSourceDomain> byAlias;
+    private final DataSourceDomain defaultDomain;
+    private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+    private final Map<DataSourceDomain, Assets> assets = new ConcurrentHashMap<>();
+    private final Map<DataSourceDomain, WorkloadBulkhead> limiters = new ConcurrentHashMap<>();
+
+    public DomainRegistry(DomainProperties props, MultiDataSourceProperties multi) {
+        Map<String, DomainProperties.Definition> defs = new LinkedHashMap<>();
+        defs.put(DataSourceDomain.FINANCE.name(),
+                legacy(multi.getFinanceMysql(), multi.getFinancePgsql(), multi.getFinanceMongoDB()));
+        defs.put(DataSourceDomain.HEALTHCARE.name(),
+                legacy(multi.getHealthcareMysql(), multi.getHealthcarePgsql(), multi.getHealthcareMongoDB()));
+        props.getRegistry().forEach((name, def) -> {
+            String key = DataSourceDomain.register(name).name();
+            defs.merge(key, def, DomainRegistry::override);
+        });
+
+        Map<DataSourceDomain, Domain> out = new LinkedHashMap<>();
+        Map<String, DataSourceDomain> aliases = new HashMap<>();
+        defs.forEach((name, def) -> {
+            DataSourceDomain id = DataSourceDomain.register(name);
+            int cap = def.getMaxConcurrent() != null ? def.getMaxConcurrent() : props.getMaxConcurrent();
+            Domain d = new Domain(id, def, cap);
+            out.put(id, d);
+            aliases.put(name.toLowerCase(Locale.ROOT), id);
+            for (String a : d.aliases) {
+                DataSourceDomain prev = aliases.putIfAbsent(a.trim().toLowerCase(Locale.ROOT), id);
+                if (prev != null && prev != id) {
+                    throw new IllegalStateException("域别名 " + a + " 同时属于 " + prev + " 和 " + id);
+                }
+            }
+        });
+        this.domains = Collections.unmodifiableMap(out);
+        this.byAlias = Map.copyOf(aliases);
+
+        DataSourceDomain def = resolve(props.getDefaultDomain());
+        this.defaultDomain = def != null ? def : DataSourceDomain.FINANCE;
+        logger.info("[domain] registered {}, default {}", domains.keySet(), defaultDomain);
+    }
+
+    private static DomainProperties.Definition legacy(MultiDataSourceProperties.DbProps mysql,
+                                                      MultiDataSourceProperties.DbProps pgsql,
+                                                      MultiDataSourceProperties.DbProps mongodb) {
+        DomainProperties.Definition d = new DomainProperties.Definition();
+        d.setMysql(mysql);
+        d.setPgsql(pgsql);
+        d.setMongodb(mongodb);
+        return d;
+    }
+
+    /** 配置里写了的项覆盖内置的，别名合并 */
+    private static DomainProperties.Definition override(DomainProperties.Definition base,
+                                                        DomainProperties.Definition cfg) {
+        DomainProperties.Definition d = new DomainProperties.Definition();
+        List<String> aliases = new ArrayList<>(base.getAliases());
+        aliases.addAll(cfg.getAliases());
+        d.setAliases(aliases);
+        d.setUrlPrefix(cfg.getUrlPrefix() != null ? cfg.getUrlPrefix() : base.getUrlPrefix());
+        d.setMysql(cfg.getMysql() != null ? cfg.getMysql() : base.getMysql());
+        d.setPgsql(cfg.getPgsql() != null ? cfg.getPgsql() : base.getPgsql());
+        d.setMongodb(cfg.getMongodb() != null ? cfg.getMongodb() : base.getMongodb());
+        d.setSchema(cfg.getSchema() != null ? cfg.getSchema() : base.getSchema());
+        d.setMapping(cfg.getMapping() != null ? cfg.getMapping() : base.getMapping());
+        d.setPrompt(cfg.getPrompt() != null ? cfg.getPrompt() : base.getPrompt());
+        d.setMaxConcurrent(cfg.getMaxConcurrent() != null ? cfg.getMaxConcurrent() : base.getMaxConcurrent());
+        return d;
+    }
+
+    /** 所有域，按配置顺序（内置的两个在前） */
+    public List<DataSourceDomain> domains() {
+        return List.copyOf(domains.keySet());
+    }
+
+    public Domain get(DataSourceDomain domain) {
+        Domain d = domains.get(domain);
+        if (d == null) throw new IllegalArgumentException("未配置的域: " + domain);
+        return d;
+    }
+
+    public DataSourceDomain defaultDomain() {
+        return defaultDomain;
+    }
+
+    /** 域名或别名（大小写不敏感，- 等同 _）；认不出返回 null */
+    public DataSourceDomain resolve(String nameOrAlias) {
+        if (nameOrAlias == null || nameOrAlias.isBlank()) return null;
+        String key = nameOrAlias.trim().toLowerCase(Locale.ROOT);
+        DataSourceDomain d = byAlias.get(key);
+        return d != null ? d : byAlias.get(key.replace('-', '_'));
+    }
+
+    /** 同 resolve，认不出抛 IllegalArgumentException（带上已配置的域） */
+    public DataSourceDomain require(String nameOrAlias) {
+        DataSourceDomain d = resolve(nameOrAlias);
+        if (d == null) throw new IllegalArgumentException("未知的域: " + nameOrAlias + "，已配置: " + domains.keySet());
+        return d;
+    }
+
+    /** 按 URL 前缀找域，多个前缀都匹配时取最长的；都不匹配返回 null */
+    public DataSourceDomain byUri(String uri) {
+        if (uri == null) return null;
+        Domain best = null;
+        for (Domain d : domains.values()) {
+            if (uri.startsWith(d.urlPrefix) && (best == null || d.urlPrefix.length() > best.urlPrefix.length())) {
+                best = d;
+            }
+        }
+        return best == null ? null : best.id;
+    }
+
+    /** 配置顺序里的下一个域（NL2SQL 当前域生成失败时换这个再试）；只有一个域时返回自己 */
+    public DataSourceDomain next(DataSourceDomain domain) {
+        List<DataSourceDomain> all = domains();
+        int i = all.indexOf(domain);
+        return all.get(i < 0 ? 0 : (i + 1) % all.size());
+    }
+
+    /** 该域在某个引擎上的连接配置；没配返回 null */
+    public MultiDataSourceProperties.DbProps dbProps(DataSourceDomain domain, SqlDialect engine) {
+        Domain d = get(domain);
+        return engine == SqlDialect.POSTGRESQL ? d.pgsql : d.mysql;
+    }
+
+    /**
+     * 域的并发上限：主引擎、竞速的另一个引擎、多语句池（三个 DomainRoutingDataSource）借这个域的连接都占同一份名额，
+     * 满了按负载类别优先级排队（INTERACTIVE 先于 METADATA 先于 BATCH）。不限时返回 null。
+     */
+    public WorkloadBulkhead limiter(DataSourceDomain domain) {
+        Domain d = get(domain);
+        if (d.maxConcurrent <= 0) return null;
+        return limiters.computeIfAbsent(domain, id -> new WorkloadBulkhead(id.name() + "@LIMIT", d.maxConcurrent, null, null));
+    }
+
+    /** 配置的静态 schema 文本；没配返回 null（按数据库元数据生成） */
+    public String schemaText(DataSourceDomain domain) {
+        return assets(domain).schema;
+    }
+
+    /** 配置的领域说明；没配返回空串 */
+    public String prompt(DataSourceDomain domain) {
+        String p = assets(domain).prompt;
+        return p == null ? "" : p;
+    }
+
+    /** 第一次用到某个域时读资源，mapping 顺带登记到 MappingRegistry；读失败记警告，按没配处理 */
+    private Assets assets(DataSourceDomain domain) {
+        return assets.computeIfAbsent(domain, id -> {
+            Domain d = get(id);
+            if (d.mapping != null && !d.mapping.isBlank()) {
+                try (InputStream in = resourceLoader.getResource(d.mapping).getInputStream()) {
+                    Object body = new Yaml().load(in);
+                    if (body instanceof Map<?, ?> m) MappingRegistry.get().registerDomain(id.name(), m);
+                } catch (Exception e) {
+                    logger.warn("[domain] load mapping {} for {} failed: {}", d.mapping, id, e.getMessage());
+                }
+            }
+            return new Assets(readText(id, d.schema), readText(id, d.prompt));
+        });
+    }
+
+    private String readText(DataSourceDomain id, String location) {
+        if (location == null || location.isBlank()) return null;
+        try {
+            Resource r = resourceLoader.getResource(location);
+            try (InputStream in = r.getInputStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+        } catch (Exception e) {
+            logger.warn("[domain] load {} for {} failed: {}", location, id, e.getMessage());
+            return null;
+        }
+    }
+
+    /** 给 /api/debug/domains 看：各域的别名、URL 前缀、配了哪些引擎、资源是否已载入（不含连接串和账号） */
+    public Map<String, Object> describe() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("default", defaultDomain.name());
+        domains.forEach((id, d) -> {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("aliases", d.aliases);
+            s.put("urlPrefix", d.urlPrefix);
+            List<String> engines = new ArrayList<>();
+            if (configured(d.mysql)) engines.add("mysql");
+            if (configured(d.pgsql)) engines.add("pgsql");
+            if (configured(d.mongodb)) engines.add("mongodb");
+            s.put("engines", engines);
+            s.put("maxConcurrent", d.maxConcurrent);
+            s.put("assetsLoaded", assets.containsKey(id));
+            m.put(id.name(), s);
+        });
+        return m;
+    }
+
+    private static boolean configured(MultiDataSourceProperties.DbProps p) {
+        return p != null && p.getUrl() != null && !p.getUrl().isBlank();
+    }
+}
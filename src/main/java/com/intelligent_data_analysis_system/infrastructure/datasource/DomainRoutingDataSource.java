@@ -1,11 +1,344 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
-import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
-public class DomainRoutingDataSource extends AbstractRoutingDataSource{
-    @Override
-    protected Object determineCurrentLookupKey() {
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 按 DomainContext 路由到各域的数据源。域的数据源（连接池 + 副本 + 隔离舱，由 DataSourceConfig 组装）第一次借连接时才建，
+ * 空闲超过 app.domains.idle-evict-after（期间没有借出中的连接）就整个关掉，下次用到再建：
+ * 配了很多域时，连接数和内存只跟最近活跃的域有关。
+ *
+ * 每个域可以设同时借出的连接数上限（所有负载类别合计，DomainRegistry.limiter：主引擎、竞速、多语句池共用一份），
+ * 满了按负载类别优先级排队，排队不超过请求剩余的截止时间。
+ * 建池在 Map 操作之外做：同一个域只有一个线程在建，其它线程等它的 future，不占 ConcurrentHashMap 的桶锁；
+ * 建失败后按次数退避（1s 起翻倍，最多 60s），退避期内直接报错，不让每个请求都去重建一遍。
+ * 引擎竞速的另一个引擎也是一个实例（label 区分日志），按 forDomain 指定域借连接，不看 DomainContext。
+ */
+public class DomainRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DomainRoutingDataSource.class);
+
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    /** 建好的一个域：对外的数据源 + 关闭时要做的事（关连接池、注销隔离舱 / 副本探测） */
+    public static final class Pool {
+        final DataSource dataSource;
+        final Runnable close;
+
+        public Pool(DataSource dataSource, Runnable close) {
+            this.dataSource = dataSource;
+            this.close = close;
+        }
+    }
+
+    private static final class Failure {
+        final RuntimeException cause;
+        final int attempts;
+        final long retryAtNanos;
+
+        Failure(RuntimeException cause, int attempts, long backoffMs) {
+            this.cause = cause;
+            this.attempts = attempts;
+            this.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        }
+    }
+
+    private static final class Entry {
+        final DataSourceDomain domain;
+        final Pool pool;
+        final long createdAt = System.currentTimeMillis();
+        /** 借出中的连接数；只在 synchronized(this) 里改，和回收互斥 */
+        int inFlight;
+        volatile long lastUsedNanos = System.nanoTime();
+        long borrowed;
+        boolean closed;
+
+        Entry(DataSourceDomain domain, Pool pool) {
+            this.domain = domain;
+            this.pool = pool;
+        }
+    }
+
+    private final String label;
+    private final DomainRegistry registry;
+    private final DomainProperties config;
+    private final Function<DataSourceDomain, Pool> factory;
+    private final Map<DataSourceDomain, Entry> entries = new ConcurrentHashMap<>();
+    /** 正在建的域：建池的线程放一个 future，同时来的线程等它 */
+    private final Map<DataSourceDomain, CompletableFuture<Entry>> opening = new ConcurrentHashMap<>();
+    /** 最近一次建池失败的域：退避到 retryAt 之前不再建 */
+    private final Map<DataSourceDomain, Failure> failures = new ConcurrentHashMap<>();
+    private final Map<DataSourceDomain, Long> evictions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    public DomainRoutingDataSource(DomainRegistry registry, DomainProperties config,
+                                   Function<DataSourceDomain, Pool> factory) {
+        this("domain", registry, config, factory);
+    }
+
+    /** @param label 日志前缀和回收线程名，区分主引擎和竞速用的另一个引擎 */
+    public DomainRoutingDataSource(String label, DomainRegistry registry, DomainProperties config,
+                                   Function<DataSourceDomain, Pool> factory) {
+        this.label = label;
+        this.registry = registry;
+        this.config = config;
+        this.factory = factory;
+        long idleMs = config.getIdleEvictAfter() == null ? 0 : config.getIdleEvictAfter().toMillis();
+        if (idleMs > 0) {
+            long intervalMs = Math.max(1000, config.getEvictCheckInterval().toMillis());
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, label + "-pool-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            evictor.scheduleWithFixedDelay(() -> {
+                try {
+                    evictIdle(TimeUnit.MILLISECONDS.toNanos(idleMs));
+                } catch (Exception e) {
+                    logger.warn("[{}] idle pool eviction failed: {}", label, e.getMessage());
+                }
+            }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /** 当前线程要用的域：没设置时走默认域 */
+    private DataSourceDomain currentDomain() {
         DataSourceDomain domain = DomainContext.get();
-        // 没设置时默认走 FINANCE（也可以改成抛异常）
-        return domain == null ? DataSourceDomain.FINANCE.name() : domain.name();
+        return domain == null ? registry.defaultDomain() : domain;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return borrow(currentDomain(), null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return borrow(currentDomain(), username, password);
+    }
+
+    /** 固定借某个域的连接（不看 DomainContext），同样按需建池、占域名额、参与空闲回收 */
+    public DataSource forDomain(DataSourceDomain domain) {
+        return new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return borrow(domain, null, null);
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return borrow(domain, username, password);
+            }
+        };
+    }
+
+    private Connection borrow(DataSourceDomain domain, String username, String password) throws SQLException {
+        Entry e = enter(domain);
+        WorkloadClass cls = WorkloadContext.get();
+        WorkloadBulkhead limiter = registry.limiter(domain);
+        if (limiter != null) {
+            try {
+                limiter.acquire(cls, waitTimeoutMs());
+            } catch (SQLException ex) {
+                leave(e);
+                throw ex;
+            }
+        }
+        try {
+            Connection con = username == null
+                    ? e.pool.dataSource.getConnection()
+                    : e.pool.dataSource.getConnection(username, password);
+            return guard(con, e, limiter, cls);
+        } catch (SQLException | RuntimeException ex) {
+            leave(e);
+            if (limiter != null) limiter.release(cls);
+            throw ex;
+        }
+    }
+
+    /** 拿到域的数据源（没有就建）并记一次借出；和回收并发时重试到拿到没关掉的那个 */
+    private Entry enter(DataSourceDomain domain) throws SQLException {
+        while (true) {
+            Entry e = entries.get(domain);
+            if (e == null) e = open(domain);
+            synchronized (e) {
+                if (!e.closed) {
+                    e.inFlight++;
+                    e.borrowed++;
+                    e.lastUsedNanos = System.nanoTime();
+                    return e;
+                }
+            }
+        }
+    }
+
+    private void leave(Entry e) {
+        synchronized (e) {
+            e.inFlight--;
+            e.lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    /** 建域的数据源（同一时刻每个域只有一个线程在建，其它线程等结果）；退避期内直接抛 SQLTransientConnectionException */
+    private Entry open(DataSourceDomain domain) throws SQLException {
+        Failure f = failures.get(domain);
+        if (f != null) {
+            long waitMs = TimeUnit.NANOSECONDS.toMillis(f.retryAtNanos - System.nanoTime());
+            if (waitMs > 0) {
+                throw new SQLTransientConnectionException("域 " + domain + " 的连接池建立失败（" + f.cause.getMessage()
+                        + "），" + waitMs + "ms 后重试", f.cause);
+            }
+        }
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> other = opening.putIfAbsent(domain, mine);
+        if (other != null) return await(domain, other);
+        try {
+            // 上一个建池的线程可能刚建完、已经从 opening 里移走
+            Entry existing = entries.get(domain);
+            if (existing != null) {
+                mine.complete(existing);
+                return existing;
+            }
+            DomainRegistry.Domain d = registry.get(domain);
+            Entry e = new Entry(domain, factory.apply(domain));
+            entries.put(domain, e);
+            failures.remove(domain);
+            logger.info("[{}] opened pool for {} (maxConcurrent={})", label, domain, d.maxConcurrent);
+            mine.complete(e);
+            return e;
+        } catch (RuntimeException ex) {
+            int attempts = f == null ? 1 : f.attempts + 1;
+            long backoffMs = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(attempts - 1, 6));
+            failures.put(domain, new Failure(ex, attempts, backoffMs));
+            logger.warn("[{}] open pool for {} failed (attempt {}), retry after {}ms: {}",
+                    label, domain, attempts, backoffMs, ex.getMessage());
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            opening.remove(domain, mine);
+            // Error 之类没走上面的分支：也要让等待的线程醒过来
+            if (!mine.isDone()) mine.completeExceptionally(new IllegalStateException("域 " + domain + " 的连接池建立中断"));
+        }
+    }
+
+    /** 等别的线程建池：等待上限同域名额（acquire-timeout，不超过请求剩余的截止时间） */
+    private Entry await(DataSourceDomain domain, CompletableFuture<Entry> future) throws SQLException {
+        long timeoutMs = waitTimeoutMs();
+        try {
+            return timeoutMs > 0 ? future.get(timeoutMs, TimeUnit.MILLISECONDS) : future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new SQLTransientConnectionException("域 " + domain + " 的连接池建立失败", ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new SQLTransientConnectionException("等待域 " + domain + " 的连接池建立超时（" + timeoutMs + "ms）");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("等待域 " + domain + " 的连接池建立时被中断", ie);
+        }
+    }
+
+    private long waitTimeoutMs() {
+        Deadline deadline = DeadlineContext.get();
+        long timeoutMs = config.getAcquireTimeout() == null ? 0 : config.getAcquireTimeout().toMillis();
+        if (!deadline.isUnbounded()) timeoutMs = Math.max(1, deadline.remainingMillis(timeoutMs));
+        return timeoutMs;
+    }
+
+    /** 关掉空闲超过 idleNanos 的域；正在借出连接的域不动 */
+    void evictIdle(long idleNanos) {
+        long now = System.nanoTime();
+        for (Entry e : entries.values()) {
+            synchronized (e) {
+                if (e.closed || e.inFlight > 0 || now - e.lastUsedNanos < idleNanos) continue;
+                e.closed = true;
+            }
+            entries.remove(e.domain, e);
+            evictions.merge(e.domain, 1L, Long::sum);
+            close(e);
+            logger.info("[{}] evicted idle pool for {}", label, e.domain);
+        }
+    }
+
+    private static void close(Entry e) {
+        try {
+            e.pool.close.run();
+        } catch (Exception ex) {
+            logger.warn("[domain] close pool for {} failed: {}", e.domain, ex.getMessage());
+        }
+    }
+
+    /** 代理 Connection：第一次 close 时记归还、还域名额（连接本身回池由内层处理） */
+    private Connection guard(Connection target, Entry e, WorkloadBulkhead limiter, WorkloadClass cls) {
+        return GuardedConnection.onClose(target, () -> {
+            leave(e);
+            if (limiter != null) limiter.release(cls);
+        });
+    }
+
+    /** 给 /api/debug/domains 看：哪些域的连接池开着、借出数、空闲多久、被回收过几次 */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (DataSourceDomain domain : registry.domains()) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            Entry e = entries.get(domain);
+            s.put("open", e != null);
+            if (e != null) {
+                synchronized (e) {
+                    s.put("inFlight", e.inFlight);
+                    s.put("borrowed", e.borrowed);
+                }
+                s.put("idleMs", TimeUnit.NANOSECONDS.toMillis(now - e.lastUsedNanos));
+                s.put("openedAt", e.createdAt);
+            }
+            // 三个实例共用的域名额，各自的 stats 里看到的是同一份
+            WorkloadBulkhead limiter = registry.limiter(domain);
+            if (limiter != null) s.put("limit", limiter.stats());
+            s.put("evictions", evictions.getOrDefault(domain, 0L));
+            Failure f = failures.get(domain);
+            if (f != null) {
+                s.put("openFailures", f.attempts);
+                s.put("lastOpenError", f.cause.getMessage());
+                s.put("retryInMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(f.retryAtNanos - now)));
+            }
+            m.put(domain.name(), s);
+        }
+        return m;
+    }
+
+    @Override
+    public void destroy() {
+        if (evictor != null) evictor.shutdownNow();
+        for (Entry e : entries.values()) {
+            synchronized (e) {
+                e.closed = true;
+            }
+            close(e);
+        }
+        entries.clear();
     }
 }
@@ -1,15 +1,30 @@
 package com.intelligent_data_analysis_system.infrastructure.datasource;
 
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.lang.NonNull;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
-public class DomainRoutingInterceptor implements HandlerInterceptor {
+/**
+ * 按 URL 前缀给请求绑定业务域：preHandle 打开一个 withDomain 作用域，请求结束（或转成异步处理、
+ * 当前线程先退出）时在同一个线程上关闭，恢复进入前的上下文，不清掉外层设置的其它项。
+ * 异步处理再派发回来时 preHandle 会再走一次，在那个线程上重新绑定。
+ */
+public class DomainRoutingInterceptor implements AsyncHandlerInterceptor {
 
     // 方案1：按 Header（可选）
     private static final String HEADER_DOMAIN = "X-Domain";
 
+    /** 本线程打开的作用域，挂在请求上等结束时关闭 */
+    private static final String SCOPE_ATTRIBUTE = DomainRoutingInterceptor.class.getName() + ".scope";
+
+    private final DomainRegistry registry;
+
+    public DomainRoutingInterceptor(DomainRegistry registry) {
+        this.registry = registry;
+    }
+
     @Override
     public boolean preHandle(
             @NonNull HttpServletRequest request,
@@ -17,29 +32,30 @@ public class DomainRoutingInterceptor implements HandlerInterceptor {
             @NonNull Object handler
     ) {
         // 方案2：按 URL 前缀（推荐先用这个）
-        // 例如：
+        // 前缀来自域注册表（app.domains.registry.*.url-prefix，默认 /api/{小写域名}/），例如：
         // /api/healthcare/** -> HEALTHCARE
         // /api/finance/**    -> FINANCE
-        String uri = request.getRequestURI();
+        DataSourceDomain domain = registry.byUri(request.getRequestURI());
 
-        DataSourceDomain domain = null;
-
-        if (uri.startsWith("/api/healthcare/")) {
-            domain = DataSourceDomain.HEALTHCARE;
-        } else if (uri.startsWith("/api/finance/")) {
-            domain = DataSourceDomain.FINANCE;
-        } else {
-            // 如果你希望“默认域”，就放开这一行（比如默认 FINANCE）
-            // domain = DataSourceDomain.FINANCE;
-
-            // 否则不设置，让 routingDataSource 走默认（你自己配置的 defaultTargetDataSource）
+        if (domain == null) {
+            // 不设置，让 routingDataSource 走默认域（app.domains.default-domain）
             return true;
         }
 
-        DomainContext.set(domain);
+        request.setAttribute(SCOPE_ATTRIBUTE, ExecutionContext.current().withDomain(domain).open());
         return true;
     }
 
+    @Override
+    public void afterConcurrentHandlingStarted(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull Object handler
+    ) {
+        // 转成异步处理：请求线程先回池，这里就要恢复，不然域留在了 Tomcat 线程上
+        closeScope(request);
+    }
+
     @Override
     public void afterCompletion(
             @NonNull HttpServletRequest request,
@@ -47,7 +63,14 @@ public class DomainRoutingInterceptor implements HandlerInterceptor {
             @NonNull Object handler,
             Exception ex
     ) {
-        // 必须清理线程变量，避免线程复用导致串库
-        DomainContext.clear();
+        // 必须恢复线程上下文，避免线程复用导致串库
+        closeScope(request);
+    }
+
+    private static void closeScope(HttpServletRequest request) {
+        if (request.getAttribute(SCOPE_ATTRIBUTE) instanceof ExecutionContext.Scope scope) {
+            request.removeAttribute(SCOPE_ATTRIBUTE);
+            scope.close();
+        }
     }
 }
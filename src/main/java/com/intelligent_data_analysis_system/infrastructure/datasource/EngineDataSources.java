@@ -0,0 +1,65 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 两个引擎上的同一份数据：app.routing.dbms 是主引擎（走 routingDataSource）；
+ * 另一个引擎（MySQL ↔ PG）的库在 spring.datasource.* 里也配着，引擎竞速第一次用到某个域时才建一个小连接池，
+ * 空闲后和主引擎的域一样回收，不用就不占连接。连接池外面的包装和主引擎相同（会话配置、负载隔离舱、域并发上限），
+ * 由 DataSourceConfig 组装。没配另一个引擎的库时 get 返回 null。
+ */
+public class EngineDataSources implements DisposableBean {
+
+    private final SqlDialect primary;
+    private final Predicate<DataSourceDomain> configured;
+    private final DomainRoutingDataSource alternatePools;
+
+    /**
+     * @param configured     某个域在另一个引擎上有没有配库（不建连接池）
+     * @param alternatePools 另一个引擎上各域的数据源
+     */
+    public EngineDataSources(SqlDialect primary, Predicate<DataSourceDomain> configured,
+                             DomainRoutingDataSource alternatePools) {
+        this.primary = primary;
+        this.configured = configured;
+        this.alternatePools = alternatePools;
+    }
+
+    /** 主引擎（routingDataSource 连的那个） */
+    public SqlDialect primary() {
+        return primary;
+    }
+
+    public SqlDialect alternate() {
+        return alternateOf(primary);
+    }
+
+    public static SqlDialect alternateOf(SqlDialect primary) {
+        return primary == SqlDialect.POSTGRESQL ? SqlDialect.MYSQL : SqlDialect.POSTGRESQL;
+    }
+
+    /** 另一个引擎上该域的数据源；主引擎请用 routingDataSource（这里返回 null） */
+    public DataSource get(DataSourceDomain domain, SqlDialect engine) {
+        if (engine == null || engine == primary || !configured.test(domain)) return null;
+        return alternatePools.forDomain(domain);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("primary", primary.name());
+        m.put("alternate", alternate().name());
+        m.put("domains", alternatePools.stats());
+        return m;
+    }
+
+    @Override
+    public void destroy() {
+        alternatePools.destroy();
+    }
+}
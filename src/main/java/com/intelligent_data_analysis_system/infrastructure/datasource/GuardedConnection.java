@@ -0,0 +1,61 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 借出连接上的代理，各层数据源共用（域名额、隔离舱许可、副本在途数 / 耗时、会话配置的 fetch size）：
+ * - onClose：第一次 close 时执行一次（内层 close 抛异常也执行），之后的 close 照常转给内层
+ * - onStatement：新建的 Statement / PreparedStatement / CallableStatement 先交给它
+ *
+ * equals / hashCode 按代理自身；unwrap 到代理本身实现的接口时返回代理，其余转给内层。
+ */
+final class GuardedConnection {
+
+    /** 新建语句的钩子 */
+    @FunctionalInterface
+    interface StatementHook {
+        void accept(Statement statement) throws SQLException;
+    }
+
+    private GuardedConnection() {}
+
+    static Connection onClose(Connection target, Runnable onClose) {
+        return wrap(target, onClose, null);
+    }
+
+    static Connection onStatement(Connection target, StatementHook onStatement) {
+        return wrap(target, null, onStatement);
+    }
+
+    static Connection wrap(Connection target, Runnable onClose, StatementHook onStatement) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("equals".equals(name)) return proxy == args[0];
+                    if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+                    if ("unwrap".equals(name) && ((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    boolean firstClose = onClose != null && "close".equals(name) && closed.compareAndSet(false, true);
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (firstClose) onClose.run();
+                    }
+                    if (onStatement != null && result instanceof Statement st
+                            && ("createStatement".equals(name) || name.startsWith("prepare"))) {
+                        onStatement.accept(st);
+                    }
+                    return result;
+                });
+    }
+}
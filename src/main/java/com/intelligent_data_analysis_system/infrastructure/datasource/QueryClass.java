@@ -0,0 +1,38 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import java.util.Locale;
+
+/**
+ * 查询类别：决定借到连接后套用哪个会话配置（只读事务、服务端语句超时、PG work_mem、fetch size，见 SessionProfileDataSource）。
+ * 和 WorkloadClass 是两件事：WorkloadClass 管排队和并发上限，QueryClass 管连接上的会话参数；
+ * 交互请求按 SQL 的 AST 特征再分成 LOOKUP / AGGREGATE（QueryClassifier）。
+ */
+public enum QueryClass {
+    /** 明细查询：按条件取少量行 */
+    LOOKUP,
+    /** 重聚合：GROUP BY / 聚合函数 / 窗口函数 / DISTINCT / 集合运算 / 多表连接 */
+    AGGREGATE,
+    /** 元数据扫描 */
+    METADATA,
+    /** 批处理评测 */
+    BATCH;
+
+    public static QueryClass of(String s) {
+        if (s == null || s.isBlank()) return null;
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** 负载类别能直接决定的查询类别；INTERACTIVE 要看 SQL，返回 null */
+    public static QueryClass forWorkload(WorkloadClass workload) {
+        if (workload == null) return null;
+        return switch (workload) {
+            case METADATA -> METADATA;
+            case BATCH -> BATCH;
+            case INTERACTIVE -> null;
+        };
+    }
+}
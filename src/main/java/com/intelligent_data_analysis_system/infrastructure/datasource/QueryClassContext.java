@@ -0,0 +1,37 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的查询类别（ExecutionContext 里的一项）。没设置时按负载类别推：METADATA / BATCH 对应同名类别，
+ * 交互请求没设置就是 null（连接保持默认会话参数，MyBatis 的 Mapper 等走这条路）。
+ * 切线程时用 ExecutionContext.current().wrap(...) 整体带过去。
+ */
+public final class QueryClassContext {
+
+    private QueryClassContext() {}
+
+    public static void set(QueryClass cls) {
+        ExecutionContext.replace(ExecutionContext.current().withQueryClass(cls));
+    }
+
+    /** 显式设置的类别，没有时按负载类别推，可能为 null */
+    public static QueryClass get() {
+        QueryClass c = ExecutionContext.current().queryClass();
+        return c != null ? c : QueryClass.forWorkload(WorkloadContext.get());
+    }
+
+    /** 只取显式设置的值 */
+    public static QueryClass peek() {
+        return ExecutionContext.current().queryClass();
+    }
+
+    public static void clear() { set(null); }
+
+    /** 临时切换类别执行，结束后恢复原值 */
+    public static <T> T call(QueryClass cls, Supplier<T> work) {
+        return ExecutionContext.current().withQueryClass(cls).call(work);
+    }
+}
@@ -0,0 +1,78 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各域的主从数据源（DataSourceConfig 建连接池时登记）：后台定期探测副本复制延迟，给 /api/debug/replicas 看节点状态。
+ * 登记后立刻异步探测一次，不在启动线程里等数据库。
+ */
+@Component
+public class ReplicaMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaMonitor.class);
+
+    private final QueryProperties queryProperties;
+    private final Map<String, ReplicaRoutingDataSource> byDomain = new ConcurrentHashMap<>();
+    /** 按实例记探测任务：回收和重建交错时同一个域可能短暂有两个实例 */
+    private final Map<ReplicaRoutingDataSource, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replica-lag-monitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ReplicaMonitor(QueryProperties queryProperties) {
+        this.queryProperties = queryProperties;
+    }
+
+    public void register(ReplicaRoutingDataSource ds) {
+        byDomain.put(ds.domain(), ds);
+        long intervalMs = Math.max(1000, queryProperties.getReplicas().getLagCheckInterval().toMillis());
+        ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                ds.checkLag();
+            } catch (Exception e) {
+                logger.warn("[replica] lag check failed for {}: {}", ds.domain(), e.getMessage());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> prev = tasks.put(ds, task);
+        if (prev != null) prev.cancel(false);
+    }
+
+    /** 域的连接池被回收时注销、停止探测；按实例注销，不动同名的新实例 */
+    public void unregister(ReplicaRoutingDataSource ds) {
+        byDomain.remove(ds.domain(), ds);
+        ScheduledFuture<?> task = tasks.remove(ds);
+        if (task != null) task.cancel(false);
+    }
+
+    /** 立刻探测一遍（调试用） */
+    public void checkNow() {
+        byDomain.values().forEach(ReplicaRoutingDataSource::checkLag);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        byDomain.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> m.put(e.getKey(), e.getValue().stats()));
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
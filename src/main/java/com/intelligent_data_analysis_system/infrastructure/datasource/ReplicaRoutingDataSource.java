@@ -0,0 +1,240 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个域的主库 + N 个只读副本。系统只读（SqlGuard 只放行 SELECT），读请求分到副本上。
+ *
+ * - 选节点：在未被摘除的副本里取 (在途请求数 + 1) * 平均耗时 最小的；耗时是借出连接到归还的 EWMA，
+ *   还没有样本的节点按已知最小值算，新节点能马上分到流量
+ * - 复制延迟：ReplicaMonitor 定期调 checkLag()，延迟超过阈值 / 复制中断 / 探测失败的副本摘除，恢复后重新加入
+ * - 没有可用副本时回落到主库（include-primary 打开时主库也参与分流）
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    /** 一个节点（主库或副本）及其负载 / 延迟状态 */
+    public static final class Node {
+        final String name;
+        final DataSource dataSource;
+        final boolean primary;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicLong served = new AtomicLong();
+        /** 借出到归还的平均耗时（毫秒），&lt; 0 表示还没有样本 */
+        volatile double ewmaMs = -1;
+        /** 最近一次探测到的复制延迟（秒），null 表示未知 */
+        volatile Double lagSeconds;
+        volatile boolean ejected;
+        volatile String ejectReason;
+
+        public Node(String name, DataSource dataSource, boolean primary) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.primary = primary;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public DataSource dataSource() {
+            return dataSource;
+        }
+    }
+
+    private final String domain;
+    private final Node primary;
+    private final List<Node> replicas;
+    private final boolean includePrimary;
+    private final double alpha;
+    private final double lagThresholdSeconds;
+
+    public ReplicaRoutingDataSource(String domain, Node primary, List<Node> replicas,
+                                    boolean includePrimary, double latencyAlpha, Duration lagThreshold) {
+        this.domain = domain;
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.includePrimary = includePrimary;
+        this.alpha = latencyAlpha <= 0 || latencyAlpha > 1 ? 0.2 : latencyAlpha;
+        this.lagThresholdSeconds = lagThreshold == null ? Double.MAX_VALUE : lagThreshold.toMillis() / 1000.0;
+    }
+
+    public String domain() {
+        return domain;
+    }
+
+    /** 参与读分流的节点数（给隔离舱算总许可数） */
+    public int readableNodes() {
+        return Math.max(1, replicas.size() + (includePrimary ? 1 : 0));
+    }
+
+    public List<Node> nodes() {
+        List<Node> all = new ArrayList<>(replicas.size() + 1);
+        all.add(primary);
+        all.addAll(replicas);
+        return all;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return borrow(pick(), null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return borrow(pick(), username, password);
+    }
+
+    private Connection borrow(Node node, String username, String password) throws SQLException {
+        node.outstanding.incrementAndGet();
+        long t0 = System.nanoTime();
+        try {
+            Connection c = username == null
+                    ? node.dataSource.getConnection()
+                    : node.dataSource.getConnection(username, password);
+            node.served.incrementAndGet();
+            return track(c, node, t0);
+        } catch (SQLException | RuntimeException e) {
+            node.outstanding.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /** 选节点：可用副本（+主库）里 score 最小的，同分随机 */
+    Node pick() {
+        List<Node> candidates = new ArrayList<>(replicas.size() + 1);
+        for (Node r : replicas) {
+            if (!r.ejected) candidates.add(r);
+        }
+        if (includePrimary || candidates.isEmpty()) candidates.add(primary);
+        if (candidates.size() == 1) return candidates.get(0);
+
+        double known = Double.MAX_VALUE;
+        for (Node n : candidates) {
+            if (n.ewmaMs >= 0) known = Math.min(known, n.ewmaMs);
+        }
+        double fallback = known == Double.MAX_VALUE ? 1.0 : known;
+
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        Node best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            Node n = candidates.get((start + i) % candidates.size());
+            double latency = Math.max(0.1, n.ewmaMs >= 0 ? n.ewmaMs : fallback);
+            double score = (n.outstanding.get() + 1) * latency;
+            if (score < bestScore) {
+                bestScore = score;
+                best = n;
+            }
+        }
+        return best;
+    }
+
+    /** 代理 Connection：close 时扣减在途数、记录耗时 */
+    private Connection track(Connection target, Node node, long t0) {
+        return GuardedConnection.onClose(target, () -> {
+            node.outstanding.decrementAndGet();
+            observe(node, (System.nanoTime() - t0) / 1e6);
+        });
+    }
+
+    void observe(Node node, double ms) {
+        double prev = node.ewmaMs;
+        node.ewmaMs = prev < 0 ? ms : prev + alpha * (ms - prev);
+    }
+
+    /** 探测每个副本的复制延迟，超过阈值 / 中断 / 连不上的摘除，恢复的重新加入 */
+    public void checkLag() {
+        for (Node r : replicas) {
+            String reason;
+            try (Connection c = r.dataSource.getConnection()) {
+                Double lag = lagSeconds(c);
+                r.lagSeconds = lag;
+                if (lag == null) reason = "replication stopped";
+                else if (lag > lagThresholdSeconds) reason = "lag " + lag + "s > " + lagThresholdSeconds + "s";
+                else reason = null;
+            } catch (SQLException | RuntimeException e) {
+                r.lagSeconds = null;
+                reason = "probe failed: " + e.getMessage();
+            }
+
+            boolean eject = reason != null;
+            if (eject != r.ejected) {
+                if (eject) logger.warn("[replica] {} {} ejected: {}", domain, r.name, reason);
+                else logger.info("[replica] {} {} readmitted, lag: {}s", domain, r.name, r.lagSeconds);
+            }
+            r.ejected = eject;
+            r.ejectReason = reason;
+        }
+    }
+
+    /**
+     * 复制延迟（秒）：不是副本（独立库、本地替身库）返回 0；复制线程停了返回 null。
+     * - MySQL：SHOW REPLICA STATUS（8.0.22+）/ SHOW SLAVE STATUS 的 Seconds_Behind_Source / Seconds_Behind_Master
+     * - PG：恢复模式下 WAL 已全部回放为 0，否则 now() - pg_last_xact_replay_timestamp()
+     */
+    static Double lagSeconds(Connection c) throws SQLException {
+        String product = c.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("postgres")) {
+            String sql = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0"
+                    + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+                    + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                if (!rs.next()) return 0.0;
+                double v = rs.getDouble(1);
+                return rs.wasNull() ? null : Math.max(0, v);
+            }
+        }
+        if (product.contains("mysql") || product.contains("mariadb")) {
+            try {
+                return mysqlLag(c, "SHOW REPLICA STATUS", "Seconds_Behind_Source");
+            } catch (SQLException e) {
+                return mysqlLag(c, "SHOW SLAVE STATUS", "Seconds_Behind_Master");
+            }
+        }
+        return 0.0;
+    }
+
+    private static Double mysqlLag(Connection c, String sql, String column) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            if (!rs.next()) return 0.0;
+            long v = rs.getLong(column);
+            return rs.wasNull() ? null : (double) v;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("domain", domain);
+        m.put("includePrimary", includePrimary);
+        m.put("lagThresholdSeconds", lagThresholdSeconds);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Node n : nodes()) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("name", n.name);
+            s.put("role", n.primary ? "primary" : "replica");
+            s.put("outstanding", n.outstanding.get());
+            s.put("served", n.served.get());
+            s.put("ewmaMs", n.ewmaMs < 0 ? null : Math.round(n.ewmaMs * 100) / 100.0);
+            if (!n.primary) {
+                s.put("lagSeconds", n.lagSeconds);
+                s.put("ejected", n.ejected);
+                s.put("ejectReason", n.ejectReason);
+            }
+            list.add(s);
+        }
+        m.put("nodes", list);
+        return m;
+    }
+}
@@ -0,0 +1,195 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * 借连接时按当前查询类别（QueryClassContext）套用会话配置，直接包在每个 Hikari 连接池外面：
+ * - 只读：PG SET SESSION CHARACTERISTICS AS TRANSACTION READ ONLY，MySQL transaction_read_only
+ * - 服务端语句超时：PG statement_timeout，MySQL max_execution_time（JDBC setQueryTimeout 之外的兜底，客户端不在了也会中止）
+ * - PG work_mem：重聚合的大排序 / 哈希不落盘
+ * - fetch size：连接上新建的语句默认设上（调用方自己设了的以调用方为准；PG 只在关掉自动提交时按批取）
+ *
+ * 还原是惰性的：每个物理连接记着当前套的是哪个类别，下次借出时要的类别不同才发一次 SET（多条合成一个语句，一次往返），
+ * 没有类别（MyBatis Mapper、副本延迟探测等）就还原成默认值。连续同类查询不额外往返。
+ * SET 报“没有这个参数 / 参数值不合法”（数据库版本不支持，重试也没用）时记一次警告，之后这个池不再套用，
+ * 已经套过类别的连接下次借出时还原成默认值（还原失败就剔除）；
+ * 其它错误（连接断了、语句被 kill ...）只说明这个连接坏了：把它从连接池里剔除，换一个连接重套一次，配置照常生效。
+ */
+public class SessionProfileDataSource extends DelegatingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionProfileDataSource.class);
+
+    /** 连接上没套任何类别 */
+    private static final String DEFAULT = "DEFAULT";
+
+    /**
+     * MySQL ER_UNKNOWN_SYSTEM_VARIABLE / ER_WRONG_VALUE_FOR_VAR / ER_WRONG_TYPE_FOR_VAR
+     * （SQLState 是笼统的 HY000 / 42000，只能看错误码）
+     */
+    private static final Set<Integer> MYSQL_UNSUPPORTED_CODES = Set.of(1193, 1231, 1232);
+    /** PG undefined_object（unrecognized configuration parameter）/ invalid_parameter_value */
+    private static final Set<String> PG_UNSUPPORTED_STATES = Set.of("42704", "22023");
+
+    private final QueryProperties.SessionProfiles config;
+    /** 物理连接 -> 当前套用的类别；连接被连接池丢弃后自动清掉 */
+    private final Map<Connection, String> applied = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile Boolean postgres;
+    private volatile boolean disabled;
+
+    public SessionProfileDataSource(DataSource target, QueryProperties.SessionProfiles config) {
+        super(target);
+        this.config = config;
+    }
+
+    @FunctionalInterface
+    private interface Borrow {
+        Connection get() throws SQLException;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return withProfile(() -> obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return withProfile(() -> obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection withProfile(Borrow borrow) throws SQLException {
+        Connection con = borrow.get();
+        if (!config.isEnabled()) return con;
+        try {
+            return applyOrClose(con);
+        } catch (SQLException first) {
+            // 坏连接已经剔除，换一个再套一次；还失败就交给调用方（和借不到连接一样处理）
+            try {
+                return applyOrClose(borrow.get());
+            } catch (SQLException e) {
+                e.addSuppressed(first);
+                throw e;
+            }
+        }
+    }
+
+    private Connection applyOrClose(Connection con) throws SQLException {
+        try {
+            return apply(con);
+        } catch (RuntimeException e) {
+            con.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 套用当前类别（停用后一律还原成默认值）；参数不受支持时停用本池的会话配置并原样返回连接。
+     *
+     * @throws SQLException 其它原因失败、或停用后还原失败，连接已从池中剔除（不能带着不对的配置交出去）
+     */
+    private Connection apply(Connection con) throws SQLException {
+        QueryClass cls = disabled ? null : QueryClassContext.get();
+        QueryProperties.Profile profile = cls == null ? null : config.profile(cls);
+        String want = profile == null ? DEFAULT : cls.name();
+
+        Connection physical;
+        try {
+            physical = con.unwrap(Connection.class);
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+        String current = applied.getOrDefault(physical, DEFAULT);
+        if (!want.equals(current)) {
+            try (Statement st = con.createStatement()) {
+                st.execute(isPostgres(con) ? pgSql(profile) : mysqlSql(profile));
+                applied.put(physical, want);
+            } catch (SQLException e) {
+                applied.remove(physical);
+                boolean unsupported = !DEFAULT.equals(want) && unsupported(e);
+                if (unsupported) {
+                    disabled = true;
+                    logger.warn("[session-profile] apply {} failed, profiles disabled for this pool: {}", want, e.getMessage());
+                } else {
+                    logger.warn("[session-profile] apply {} failed, evicting connection: {}", want, e.getMessage());
+                }
+                // 连接身上可能还带着之前的类别（还原失败，或新类别没套上、旧的还在）：只能剔除，换连接重来
+                if (!unsupported || !DEFAULT.equals(current)) {
+                    evict(con);
+                    throw e;
+                }
+            }
+        }
+
+        int fetchSize = profile == null ? 0 : profile.getFetchSize();
+        return fetchSize > 0 ? withFetchSize(con, fetchSize) : con;
+    }
+
+    /** 数据库不认这个参数 / 参数值：换连接也一样失败（连库类型都没查到时不算） */
+    private boolean unsupported(SQLException e) {
+        Boolean pg = postgres;
+        if (pg == null) return false;
+        return pg
+                ? e.getSQLState() != null && PG_UNSUPPORTED_STATES.contains(e.getSQLState())
+                : MYSQL_UNSUPPORTED_CODES.contains(e.getErrorCode());
+    }
+
+    /** 从连接池里剔除（Hikari 立刻关掉借出中的连接，不会再借给别人）；不是 Hikari 时只能关掉 */
+    private void evict(Connection con) {
+        try {
+            DataSource target = obtainTargetDataSource();
+            if (target.isWrapperFor(HikariDataSource.class)) {
+                target.unwrap(HikariDataSource.class).evictConnection(con);
+            } else {
+                con.close();
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.debug("[session-profile] evict connection failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean isPostgres(Connection con) throws SQLException {
+        Boolean pg = postgres;
+        if (pg == null) {
+            pg = con.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres");
+            postgres = pg;
+        }
+        return pg;
+    }
+
+    /** 一次发完（简单查询协议允许多条）；profile 为 null 时全部还原 */
+    static String pgSql(QueryProperties.Profile p) {
+        List<String> sql = new ArrayList<>();
+        sql.add(p != null && p.isReadOnly()
+                ? "SET SESSION CHARACTERISTICS AS TRANSACTION READ ONLY"
+                : "SET SESSION CHARACTERISTICS AS TRANSACTION READ WRITE");
+        sql.add(p != null && p.getStatementTimeout() != null
+                ? "SET statement_timeout = " + p.getStatementTimeout().toMillis()
+                : "RESET statement_timeout");
+        sql.add(p != null && p.getPgWorkMem() != null && p.getPgWorkMem().matches("\\d+\\s*(kB|MB|GB)?")
+                ? "SET work_mem = '" + p.getPgWorkMem() + "'"
+                : "RESET work_mem");
+        return String.join("; ", sql);
+    }
+
+    static String mysqlSql(QueryProperties.Profile p) {
+        String readOnly = p != null && p.isReadOnly() ? "ON" : "DEFAULT";
+        String timeout = p != null && p.getStatementTimeout() != null
+                ? String.valueOf(p.getStatementTimeout().toMillis()) : "DEFAULT";
+        return "SET SESSION transaction_read_only = " + readOnly + ", SESSION max_execution_time = " + timeout;
+    }
+
+    /** 代理 Connection：新建的语句先设好 fetch size */
+    private static Connection withFetchSize(Connection target, int fetchSize) {
+        return GuardedConnection.onStatement(target, st -> st.setFetchSize(fetchSize));
+    }
+}
@@ -0,0 +1,207 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个域的连接隔离舱：总许可数 = 连接池大小（有只读副本时乘以节点数），每个负载类别另有自己的并发上限。
+ *
+ * - 有空位（总数和本类别都没满）直接拿到许可；否则按 (类别优先级, 到达顺序) 排队
+ * - 归还时按优先级唤醒：INTERACTIVE 先于 METADATA 先于 BATCH；只因本类别满了而等待的不挡后面的类别
+ * - 批处理最多占 batch.max-concurrent 个连接，剩下的始终留给交互请求
+ * - 每个类别单独计数：占用、排队、累计获取、排队获取、超时拒绝、等待时长
+ */
+public final class WorkloadBulkhead {
+
+    private static final WorkloadClass[] CLASSES = WorkloadClass.values();
+
+    private final String name;
+    private final int capacity;
+    private final int[] limits = new int[CLASSES.length];
+    private final long[] acquireTimeoutMs = new long[CLASSES.length];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingInt((Waiter w) -> w.cls.ordinal()).thenComparingLong(w -> w.seq));
+    private long seq;
+    private int inUse;
+
+    private final int[] active = new int[CLASSES.length];
+    private final int[] waiting = new int[CLASSES.length];
+    private final long[] acquired = new long[CLASSES.length];
+    private final long[] queued = new long[CLASSES.length];
+    private final long[] rejected = new long[CLASSES.length];
+    private final long[] waitNanos = new long[CLASSES.length];
+    private final long[] maxWaitNanos = new long[CLASSES.length];
+
+    private final class Waiter {
+        final WorkloadClass cls;
+        final long seq;
+        final Condition granted = lock.newCondition();
+        boolean done;
+
+        Waiter(WorkloadClass cls, long seq) {
+            this.cls = cls;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * @param limits           每个类别的并发上限（缺省或 &lt;= 0 为 capacity）
+     * @param acquireTimeoutMs 每个类别排队等待上限（缺省或 &lt;= 0 不限）
+     */
+    public WorkloadBulkhead(String name, int capacity,
+                            Map<WorkloadClass, Integer> limits, Map<WorkloadClass, Long> acquireTimeoutMs) {
+        if (capacity <= 0) throw new IllegalArgumentException("bulkhead capacity 必须大于 0: " + capacity);
+        this.name = name;
+        this.capacity = capacity;
+        for (WorkloadClass c : CLASSES) {
+            Integer l = limits == null ? null : limits.get(c);
+            this.limits[c.ordinal()] = l == null || l <= 0 ? capacity : Math.min(l, capacity);
+            Long t = acquireTimeoutMs == null ? null : acquireTimeoutMs.get(c);
+            this.acquireTimeoutMs[c.ordinal()] = t == null ? 0 : t;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** 类别默认的排队等待上限，0 不限 */
+    public long acquireTimeoutMs(WorkloadClass cls) {
+        return acquireTimeoutMs[cls.ordinal()];
+    }
+
+    /** 按类别默认的等待上限获取 */
+    public void acquire(WorkloadClass cls) throws SQLTransientConnectionException {
+        acquire(cls, acquireTimeoutMs[cls.ordinal()]);
+    }
+
+    /**
+     * 获取一个许可；timeoutMs &lt;= 0 不限时。等待超时 / 被中断抛 SQLTransientConnectionException（和连接池超时同类）。
+     */
+    public void acquire(WorkloadClass cls, long timeoutMs) throws SQLTransientConnectionException {
+        int c = cls.ordinal();
+        long t0 = System.nanoTime();
+        lock.lock();
+        try {
+            if (canGrant(c)) {
+                grant(c);
+                return;
+            }
+            Waiter w = new Waiter(cls, seq++);
+            waiters.add(w);
+            waiting[c]++;
+            queued[c]++;
+            long left = timeoutMs > 0 ? TimeUnit.MILLISECONDS.toNanos(timeoutMs) : Long.MAX_VALUE;
+            boolean interrupted = false;
+            while (!w.done && left > 0 && !interrupted) {
+                try {
+                    if (timeoutMs > 0) left = w.granted.awaitNanos(left);
+                    else w.granted.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (w.done) {
+                // dispatch 里已经记了占用，这里只记等待时长
+                recordWait(c, System.nanoTime() - t0);
+                if (interrupted) Thread.currentThread().interrupt();
+                return;
+            }
+            waiters.remove(w);
+            waiting[c]--;
+            rejected[c]++;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("[" + name + "] " + cls + " 等待连接被中断");
+            }
+            throw new SQLTransientConnectionException("[" + name + "] " + cls + " 连接隔离舱已满，等待 "
+                    + timeoutMs + "ms 超时（占用 " + active[c] + "/" + limits[c] + "，总 " + inUse + "/" + capacity + "）");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(WorkloadClass cls) {
+        int c = cls.ordinal();
+        lock.lock();
+        try {
+            if (active[c] <= 0) return;
+            active[c]--;
+            inUse--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canGrant(int c) {
+        return inUse < capacity && active[c] < limits[c];
+    }
+
+    private void grant(int c) {
+        inUse++;
+        active[c]++;
+        acquired[c]++;
+    }
+
+    private void recordWait(int c, long nanos) {
+        waitNanos[c] += nanos;
+        if (nanos > maxWaitNanos[c]) maxWaitNanos[c] = nanos;
+    }
+
+    /** 按优先级把空出来的许可交给排队者；只因本类别满了而排队的跳过，不挡后面的 */
+    private void dispatch() {
+        if (waiters.isEmpty() || inUse >= capacity) return;
+        List<Waiter> skipped = new ArrayList<>();
+        while (inUse < capacity && !waiters.isEmpty()) {
+            Waiter w = waiters.poll();
+            int c = w.cls.ordinal();
+            if (active[c] >= limits[c]) {
+                skipped.add(w);
+                continue;
+            }
+            waiting[c]--;
+            grant(c);
+            w.done = true;
+            w.granted.signal();
+        }
+        waiters.addAll(skipped);
+    }
+
+    /** 每个类别的饱和度指标 */
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", name);
+            m.put("capacity", capacity);
+            m.put("inUse", inUse);
+            Map<String, Object> classes = new LinkedHashMap<>();
+            for (WorkloadClass cls : CLASSES) {
+                int c = cls.ordinal();
+                Map<String, Object> s = new LinkedHashMap<>();
+                s.put("limit", limits[c]);
+                s.put("active", active[c]);
+                s.put("waiting", waiting[c]);
+                s.put("saturation", limits[c] == 0 ? 0.0 : (double) active[c] / limits[c]);
+                s.put("acquired", acquired[c]);
+                s.put("queued", queued[c]);
+                s.put("rejected", rejected[c]);
+                long served = queued[c] - rejected[c] - waiting[c];
+                s.put("avgWaitMs", served <= 0 ? 0.0 : waitNanos[c] / 1e6 / served);
+                s.put("maxWaitMs", maxWaitNanos[c] / 1e6);
+                s.put("acquireTimeoutMs", acquireTimeoutMs[c]);
+                classes.put(cls.name(), s);
+            }
+            m.put("classes", classes);
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 各域的连接隔离舱（DataSourceConfig 建连接池时登记，空闲回收时注销），给 /api/debug/bulkheads 看饱和度指标用。
+ */
+@Component
+public class WorkloadBulkheads {
+
+    private final Map<String, WorkloadBulkhead> byDomain = new ConcurrentHashMap<>();
+
+    public void register(String domain, WorkloadBulkhead bulkhead) {
+        byDomain.put(domain, bulkhead);
+    }
+
+    /** 域的连接池被回收时注销；只注销登记的还是这一个时（回收和重建交错时，同名的可能已经是新建的） */
+    public void unregister(String domain, WorkloadBulkhead bulkhead) {
+        byDomain.remove(domain, bulkhead);
+    }
+
+    public WorkloadBulkhead get(String domain) {
+        return byDomain.get(domain);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        byDomain.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> m.put(e.getKey(), e.getValue().stats()));
+        return m;
+    }
+}
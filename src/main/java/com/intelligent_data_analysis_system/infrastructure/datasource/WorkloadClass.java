@@ -0,0 +1,25 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import java.util.Locale;
+
+/**
+ * 数据库流量的负载类别：决定借连接时走哪个隔离舱（并发上限）、排队时的优先级。
+ * 声明顺序即优先级：连接池满时先唤醒 INTERACTIVE，再 METADATA，最后 BATCH。
+ */
+public enum WorkloadClass {
+    /** 前端 / API 的即时查询（/api/ai/query、/api/debug/execute） */
+    INTERACTIVE,
+    /** 元数据扫描（information_schema、DatabaseMetaData），一般是交互请求生成 SQL 前的准备 */
+    METADATA,
+    /** 批处理评测（BatchRunner、候选投票） */
+    BATCH;
+
+    public static WorkloadClass of(String s) {
+        if (s == null || s.isBlank()) return null;
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
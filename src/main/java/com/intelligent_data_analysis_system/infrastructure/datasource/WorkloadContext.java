@@ -0,0 +1,30 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的负载类别（ExecutionContext 里的一项）；没设置时按 INTERACTIVE 处理。
+ * 批处理 / 元数据扫描在入口设置；切线程时用 ExecutionContext.current().wrap(...) 整体带过去。
+ */
+public final class WorkloadContext {
+
+    private WorkloadContext() {}
+
+    public static void set(WorkloadClass cls) {
+        ExecutionContext.replace(ExecutionContext.current().withWorkload(cls));
+    }
+
+    public static WorkloadClass get() {
+        WorkloadClass c = ExecutionContext.current().workload();
+        return c == null ? WorkloadClass.INTERACTIVE : c;
+    }
+
+    public static void clear() { set(null); }
+
+    /** 临时切换类别执行，结束后恢复原值（交互请求里嵌套的元数据扫描） */
+    public static <T> T call(WorkloadClass cls, Supplier<T> work) {
+        return ExecutionContext.current().withWorkload(cls).call(work);
+    }
+}
@@ -0,0 +1,57 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource.mongo;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按域取 MongoTemplate：FINANCE / HEALTHCARE 用 MongoTemplateConfig 里的两个 bean（spring.datasource.*_mongoDB），
+ * 注册表里的其它域按 app.domains.registry.&lt;域&gt;.mongodb 第一次用到时建，没配 mongodb 的域抛 IllegalArgumentException。
+ * 按域对象精确匹配，不按名字包含（FINANCE_ARCHIVE 不会落到 FINANCE 的库）。
+ */
+@Component
+public class DomainMongoTemplates implements DisposableBean {
+
+    private final DomainRegistry registry;
+    private final Map<DataSourceDomain, MongoTemplate> templates = new ConcurrentHashMap<>();
+    /** 这里建的客户端（关闭时关掉），不含两个 bean 的 */
+    private final Map<DataSourceDomain, MongoClient> clients = new ConcurrentHashMap<>();
+
+    public DomainMongoTemplates(DomainRegistry registry,
+                                @Qualifier("financeMongoTemplate") MongoTemplate financeMongoTemplate,
+                                @Qualifier("healthcareMongoTemplate") MongoTemplate healthcareMongoTemplate) {
+        this.registry = registry;
+        templates.put(DataSourceDomain.FINANCE, financeMongoTemplate);
+        templates.put(DataSourceDomain.HEALTHCARE, healthcareMongoTemplate);
+    }
+
+    public MongoTemplate get(DataSourceDomain domain) {
+        return templates.computeIfAbsent(domain, d -> {
+            MultiDataSourceProperties.DbProps p = registry.get(d).mongodb;
+            if (p == null || p.getUrl() == null || p.getUrl().isBlank()) {
+                throw new IllegalArgumentException("域 " + d + " 没有配置 MongoDB（app.domains.registry."
+                        + d.name().toLowerCase(Locale.ROOT) + ".mongodb）");
+            }
+            ConnectionString cs = MongoTemplateConfig.connectionString(p.getUrl(), p.getUsername(), p.getPassword());
+            MongoClient client = MongoClients.create(cs);
+            clients.put(d, client);
+            return new MongoTemplate(client, cs.getDatabase());
+        });
+    }
+
+    @Override
+    public void destroy() {
+        clients.values().forEach(MongoClient::close);
+    }
+}
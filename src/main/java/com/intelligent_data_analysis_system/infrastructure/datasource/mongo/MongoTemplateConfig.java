@@ -42,6 +42,18 @@ public class MongoTemplateConfig {
     }
 
     private MongoTemplate buildMongoTemplate(String url, String username, String password) {
+        ConnectionString cs = connectionString(url, username, password);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(cs)
+                .build();
+
+        MongoClient client = MongoClients.create(settings);
+        return new MongoTemplate(client, cs.getDatabase());
+    }
+
+    /** 带上账号、校验过库名的连接串；注册表里其它域的 MongoDB 也用它（DomainMongoTemplates） */
+    static ConnectionString connectionString(String url, String username, String password) {
         if (url == null || url.isBlank()) {
             throw new IllegalStateException("MongoDB url 未配置");
         }
@@ -54,16 +66,10 @@ public class MongoTemplateConfig {
                     "MongoDB url 必须包含数据库名，例如 mongodb://host:27017/db?authSource=admin"
             );
         }
-
-        MongoClientSettings settings = MongoClientSettings.builder()
-                .applyConnectionString(cs)
-                .build();
-
-        MongoClient client = MongoClients.create(settings);
-        return new MongoTemplate(client, cs.getDatabase());
+        return cs;
     }
 
-    private String injectCredential(String url, String username, String password) {
+    private static String injectCredential(String url, String username, String password) {
         if (username == null || username.isBlank()) {
             return url; // 允许无认证
         }
@@ -0,0 +1,1002 @@
+package com.intelligent_data_analysis_system.infrastructure.dto;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * 列式查询结果：按 ResultSetMetaData 一次性建好，每列一个按类型特化的存储。
+ *
+ * | 列类型                         | 存储                                   |
+ * |--------------------------------|----------------------------------------|
+ * | 整数（Integer / Long ...）      | long[]                                 |
+ * | 浮点（Float / Double）          | double[]                               |
+ * | DECIMAL（精度 ≤ 18）            | long[] 未缩放值 + 列的 scale            |
+ * | DATE / TIMESTAMP               | long[]（epoch day / 本地时间的微秒数）   |
+ * | 布尔                            | BitSet                                 |
+ * | 字符串                          | int[] 字典编码 + 字典                    |
+ * | 其它（BigInteger / PGobject ...）| Object[]                               |
+ *
+ * 每列另有一个 null 位图。相比每行一个 LinkedCaseInsensitiveMap：列名只存一份、数值不装箱、重复字符串只存一份。
+ *
+ * get(r, c) 还原出和驱动 getObject 相同的 Java 类型（Integer / Long / BigDecimal / java.sql.Date / Timestamp ...），
+ * 下游的归一化、指纹、报告逻辑不用区分来源。rows() / rowMaps() 是按需取值的只读视图，不复制数据；
+ * select(...) 只换列的引用，也不复制。
+ *
+ * 同名列（不区分大小写）只保留一列：位置取第一次出现、值取最后一次出现，与 ColumnMapRowMapper 的行为一致。
+ */
+public final class ColumnarResult {
+
+    public enum Type {
+        LONG, DOUBLE, DECIMAL, DATE, TIMESTAMP, BOOLEAN, STRING, OBJECT
+    }
+
+    private static final ColumnarResult EMPTY = new ColumnarResult(new String[0], new Col[0], 0);
+
+    /** DECIMAL 用 long 存未缩放值的最大精度 */
+    private static final int MAX_LONG_PRECISION = 18;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String[] names;
+    private final Col[] cols;
+    private final int rowCount;
+    private final Map<String, Integer> index;
+
+    private ColumnarResult(String[] names, Col[] cols, int rowCount) {
+        this.names = names;
+        this.cols = cols;
+        this.rowCount = rowCount;
+        Map<String, Integer> idx = new HashMap<>();
+        for (int i = 0; i < names.length; i++) idx.putIfAbsent(names[i].toLowerCase(Locale.ROOT), i);
+        this.index = idx;
+    }
+
+    public static ColumnarResult empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 读完整个结果集；签名与 ResultSetExtractor#extractData 一致，可直接传 ColumnarResult::from。
+     */
+    public static ColumnarResult from(ResultSet rs) throws SQLException {
+        ResultSetMetaData md = rs.getMetaData();
+        int n = md.getColumnCount();
+
+        // 同名列去重：槽位按第一次出现排，取值用最后一次出现的 JDBC 列号
+        List<String> slotNames = new ArrayList<>(n);
+        List<Integer> slotJdbc = new ArrayList<>(n);
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 1; i <= n; i++) {
+            String label = md.getColumnLabel(i);
+            if (label == null || label.isEmpty()) label = md.getColumnName(i);
+            Integer slot = seen.putIfAbsent(label.toLowerCase(Locale.ROOT), slotNames.size());
+            if (slot == null) {
+                slotNames.add(label);
+                slotJdbc.add(i);
+            } else {
+                slotJdbc.set(slot, i);
+            }
+        }
+
+        int m = slotNames.size();
+        Col[] cols = new Col[m];
+        int[] jdbc = new int[m];
+        for (int s = 0; s < m; s++) {
+            jdbc[s] = slotJdbc.get(s);
+            cols[s] = Col.forMetaData(md, jdbc[s]);
+        }
+
+        int rows = 0;
+        while (rs.next()) {
+            for (int s = 0; s < m; s++) cols[s].read(rs, jdbc[s], rows);
+            rows++;
+        }
+        for (Col c : cols) c.seal(rows);
+        return new ColumnarResult(slotNames.toArray(new String[0]), cols, rows);
+    }
+
+    /**
+     * 由内存里算好的行构造（分片聚合合并后的结果），每列按 OBJECT 存储，get 原样返回放进去的对象。
+     */
+    public static ColumnarResult of(List<String> columns, List<? extends List<?>> rows) {
+        int m = columns.size();
+        int n = rows.size();
+        Col[] cols = new Col[m];
+        for (int c = 0; c < m; c++) {
+            ObjectCol col = new ObjectCol();
+            col.values = new Object[n];
+            for (int r = 0; r < n; r++) {
+                Object v = rows.get(r).get(c);
+                if (v == null) col.nulls.set(r);
+                else col.values[r] = v;
+            }
+            cols[c] = col;
+        }
+        return new ColumnarResult(columns.toArray(new String[0]), cols, n);
+    }
+
+    /* ========================= 读取 ========================= */
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public List<String> columns() {
+        return List.of(names);
+    }
+
+    public String column(int c) {
+        return names[c];
+    }
+
+    /** 列名不区分大小写；不存在返回 -1 */
+    public int columnIndex(String name) {
+        if (name == null) return -1;
+        Integer i = index.get(name.toLowerCase(Locale.ROOT));
+        return i == null ? -1 : i;
+    }
+
+    public Type type(int c) {
+        return cols[c].type;
+    }
+
+    public boolean isNull(int r, int c) {
+        return cols[c].nulls.get(r);
+    }
+
+    /** 还原成驱动 getObject 的类型；null 值返回 null */
+    public Object get(int r, int c) {
+        return isNull(r, c) ? null : cols[c].get(r);
+    }
+
+    /**
+     * 数值列：LONG / DOUBLE / DECIMAL，或者 OBJECT 列里第一个非空值是 Number（BigInteger、大精度 DECIMAL）
+     */
+    public boolean isNumeric(int c) {
+        Col col = cols[c];
+        return switch (col.type) {
+            case LONG, DOUBLE, DECIMAL -> true;
+            case OBJECT -> {
+                for (int r = 0; r < rowCount; r++) {
+                    if (!col.nulls.get(r)) yield col.get(r) instanceof Number;
+                }
+                yield false;
+            }
+            default -> false;
+        };
+    }
+
+    /** 数值列直接读原始数组，不装箱；null 或非数值返回 NaN */
+    public double getDouble(int r, int c) {
+        if (isNull(r, c)) return Double.NaN;
+        return cols[c].getDouble(r);
+    }
+
+    public long getLong(int r, int c) {
+        if (isNull(r, c)) return 0L;
+        return cols[c].getLong(r);
+    }
+
+    /** 字符串列直接查字典；其它类型 String.valueOf；null 返回 null */
+    public String getString(int r, int c) {
+        if (isNull(r, c)) return null;
+        Col col = cols[c];
+        return col instanceof StringCol sc ? sc.get(r) : String.valueOf(col.get(r));
+    }
+
+    /* ========================= 视图 ========================= */
+
+    /** 只保留给定的列（按给定顺序）；共享列存储，不复制 */
+    public ColumnarResult select(int... columns) {
+        String[] n = new String[columns.length];
+        Col[] c = new Col[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            n[i] = names[columns[i]];
+            c[i] = cols[columns[i]];
+        }
+        return new ColumnarResult(n, c, rowCount);
+    }
+
+    /** 只保留前 n 行；共享列存储，不复制 */
+    public ColumnarResult head(int n) {
+        if (n >= rowCount) return this;
+        return new ColumnarResult(names, cols, Math.max(0, n));
+    }
+
+    /** 按位置换列名（列数必须一致）；共享列存储，不复制 */
+    public ColumnarResult withColumns(List<String> columns) {
+        if (columns.size() != names.length) {
+            throw new IllegalArgumentException("列数不一致: " + columns.size() + " vs " + names.length);
+        }
+        return new ColumnarResult(columns.toArray(new String[0]), cols, rowCount);
+    }
+
+    /** 第 r 行的只读视图 */
+    public List<Object> row(int r) {
+        Objects.checkIndex(r, rowCount);
+        return new AbstractList<>() {
+            @Override
+            public Object get(int c) {
+                return ColumnarResult.this.get(r, c);
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    /** 行式只读视图：List&lt;List&lt;Object&gt;&gt;，取值时才还原 */
+    public List<List<Object>> rows() {
+        return new AbstractList<>() {
+            @Override
+            public List<Object> get(int r) {
+                return row(r);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    /**
+     * 行式只读视图：List&lt;Map&lt;列名, 值&gt;&gt;，给按 Map 处理或直接序列化成 JSON 的调用方；
+     * Map 的 get 不区分大小写（同 LinkedCaseInsensitiveMap），迭代顺序即列顺序。
+     */
+    public List<Map<String, Object>> rowMaps() {
+        return new AbstractList<>() {
+            @Override
+            public Map<String, Object> get(int r) {
+                Objects.checkIndex(r, rowCount);
+                return new RowMap(r);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    private final class RowMap extends AbstractMap<String, Object> {
+        private final int r;
+
+        RowMap(int r) {
+            this.r = r;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int c = key instanceof String s ? columnIndex(s) : -1;
+            return c < 0 ? null : ColumnarResult.this.get(r, c);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String s && columnIndex(s) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        int c = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return c < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (c >= names.length) throw new NoSuchElementException();
+                            int i = c++;
+                            return new SimpleImmutableEntry<>(names[i], ColumnarResult.this.get(r, i));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+
+    /** 粗略内存占用（字节）：数组 + 字典 + 位图，OBJECT 列按每个 32 字节估；给结果缓存按容量淘汰用 */
+    public long estimatedBytes() {
+        long bytes = 64L + names.length * 48L;
+        for (Col c : cols) bytes += c.estimatedBytes(rowCount);
+        return bytes;
+    }
+
+    /* ========================= 序列化 ========================= */
+
+    private static final int CODEC_VERSION = 1;
+
+    /**
+     * 紧凑二进制编码（给 Redis 二级缓存用）：每列写类型、null 位图和原始数组，字符串列写字典 + 编码。
+     * OBJECT 列里的数值按 BigDecimal、byte[] 原样、其它按字符串写，解码后类型可能变（BigInteger -> BigDecimal）。
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(1 << 20, estimatedBytes()));
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(CODEC_VERSION);
+            out.writeInt(rowCount);
+            out.writeInt(names.length);
+            for (int c = 0; c < names.length; c++) {
+                writeString(out, names[c]);
+                cols[c].write(out, rowCount);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    public static ColumnarResult fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int version = in.readUnsignedByte();
+            if (version != CODEC_VERSION) {
+                throw new IllegalArgumentException("不支持的 ColumnarResult 编码版本: " + version);
+            }
+            int rows = in.readInt();
+            int n = in.readInt();
+            String[] names = new String[n];
+            Col[] cols = new Col[n];
+            for (int c = 0; c < n; c++) {
+                names[c] = readString(in);
+                cols[c] = Col.read(in, rows);
+            }
+            return new ColumnarResult(names, cols, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** writeUTF 有 64KB 上限，TEXT 列的值可能超过：长度 + UTF-8 字节 */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long w : words) out.writeLong(w);
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+        return BitSet.valueOf(words);
+    }
+
+    /* ========================= 列存储 ========================= */
+
+    private abstract static class Col {
+        final Type type;
+        final BitSet nulls = new BitSet();
+
+        Col(Type type) {
+            this.type = type;
+        }
+
+        /** 按 getColumnClassName 选存储；拿不准的一律 OBJECT */
+        static Col forMetaData(ResultSetMetaData md, int i) throws SQLException {
+            String cls = md.getColumnClassName(i);
+            if (cls == null) return new ObjectCol();
+            return switch (cls) {
+                case "java.lang.Long" -> new LongCol(false);
+                case "java.lang.Integer", "java.lang.Short", "java.lang.Byte" -> new LongCol(true);
+                case "java.lang.Double" -> new DoubleCol(false);
+                case "java.lang.Float" -> new DoubleCol(true);
+                case "java.math.BigDecimal" -> {
+                    int precision = md.getPrecision(i);
+                    int scale = md.getScale(i);
+                    yield precision > 0 && precision <= MAX_LONG_PRECISION && scale >= 0
+                            ? new DecimalCol(scale) : new ObjectCol();
+                }
+                case "java.sql.Date" -> new DateCol();
+                case "java.sql.Timestamp" -> new TimestampCol();
+                case "java.lang.Boolean" -> new BooleanCol();
+                case "java.lang.String" -> new StringCol();
+                default -> new ObjectCol();
+            };
+        }
+
+        abstract void read(ResultSet rs, int i, int r) throws SQLException;
+
+        abstract Object get(int r);
+
+        double getDouble(int r) {
+            return get(r) instanceof Number n ? n.doubleValue() : Double.NaN;
+        }
+
+        long getLong(int r) {
+            return get(r) instanceof Number n ? n.longValue() : 0L;
+        }
+
+        /** 读完后把数组收缩到实际行数 */
+        abstract void seal(int rows);
+
+        abstract long estimatedBytes(int rows);
+
+        /** 类型 + 列头（装箱方式 / scale）+ null 位图 + 值 */
+        final void write(DataOutputStream out, int rows) throws IOException {
+            out.writeByte(type.ordinal());
+            writeHeader(out);
+            writeBits(out, nulls);
+            writeValues(out, rows);
+        }
+
+        static Col read(DataInputStream in, int rows) throws IOException {
+            Type t = Type.values()[in.readUnsignedByte()];
+            Col col = switch (t) {
+                case LONG -> new LongCol(in.readBoolean());
+                case DOUBLE -> new DoubleCol(in.readBoolean());
+                case DECIMAL -> new DecimalCol(in.readInt());
+                case DATE -> new DateCol();
+                case TIMESTAMP -> new TimestampCol();
+                case BOOLEAN -> new BooleanCol();
+                case STRING -> new StringCol();
+                case OBJECT -> new ObjectCol();
+            };
+            col.nulls.or(readBits(in));
+            col.readValues(in, rows);
+            return col;
+        }
+
+        void writeHeader(DataOutputStream out) throws IOException {
+        }
+
+        abstract void writeValues(DataOutputStream out, int rows) throws IOException;
+
+        abstract void readValues(DataInputStream in, int rows) throws IOException;
+
+        static void writeLongs(DataOutputStream out, long[] values, int rows) throws IOException {
+            for (int r = 0; r < rows; r++) out.writeLong(values[r]);
+        }
+
+        static long[] readLongs(DataInputStream in, int rows) throws IOException {
+            long[] values = new long[rows];
+            for (int r = 0; r < rows; r++) values[r] = in.readLong();
+            return values;
+        }
+
+        static int grow(int length, int r) {
+            return Math.max(INITIAL_CAPACITY, Math.max(length * 2, r + 1));
+        }
+    }
+
+    private static final class LongCol extends Col {
+        private final boolean intBoxed;
+        private long[] values = new long[0];
+
+        LongCol(boolean intBoxed) {
+            super(Type.LONG);
+            this.intBoxed = intBoxed;
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            long v = rs.getLong(i);
+            if (rs.wasNull()) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= values.length) values = Arrays.copyOf(values, grow(values.length, r));
+            values[r] = v;
+        }
+
+        @Override
+        Object get(int r) {
+            return intBoxed ? (Object) (int) values[r] : (Object) values[r];
+        }
+
+        @Override
+        double getDouble(int r) {
+            return values[r];
+        }
+
+        @Override
+        long getLong(int r) {
+            return values[r];
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 8L + rows / 8;
+        }
+
+        @Override
+        void writeHeader(DataOutputStream out) throws IOException {
+            out.writeBoolean(intBoxed);
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            writeLongs(out, values, rows);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            values = readLongs(in, rows);
+        }
+    }
+
+    private static final class DoubleCol extends Col {
+        private final boolean floatBoxed;
+        private double[] values = new double[0];
+
+        DoubleCol(boolean floatBoxed) {
+            super(Type.DOUBLE);
+            this.floatBoxed = floatBoxed;
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            double v = rs.getDouble(i);
+            if (rs.wasNull()) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= values.length) values = Arrays.copyOf(values, grow(values.length, r));
+            values[r] = v;
+        }
+
+        @Override
+        Object get(int r) {
+            return floatBoxed ? (Object) (float) values[r] : (Object) values[r];
+        }
+
+        @Override
+        double getDouble(int r) {
+            return values[r];
+        }
+
+        @Override
+        long getLong(int r) {
+            return (long) values[r];
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 8L + rows / 8;
+        }
+
+        @Override
+        void writeHeader(DataOutputStream out) throws IOException {
+            out.writeBoolean(floatBoxed);
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            for (int r = 0; r < rows; r++) out.writeDouble(values[r]);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            values = new double[rows];
+            for (int r = 0; r < rows; r++) values[r] = in.readDouble();
+        }
+    }
+
+    /** 固定 scale 的定点数：存未缩放值；个别值放不进 long（驱动报的精度不准）时单独存 BigDecimal */
+    private static final class DecimalCol extends Col {
+        private final int scale;
+        private long[] unscaled = new long[0];
+        private Map<Integer, BigDecimal> spill;
+
+        DecimalCol(int scale) {
+            super(Type.DECIMAL);
+            this.scale = scale;
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            BigDecimal v = rs.getBigDecimal(i);
+            if (v == null) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= unscaled.length) unscaled = Arrays.copyOf(unscaled, grow(unscaled.length, r));
+            try {
+                unscaled[r] = v.setScale(scale).unscaledValue().longValueExact();
+            } catch (ArithmeticException e) {
+                if (spill == null) spill = new HashMap<>();
+                spill.put(r, v);
+            }
+        }
+
+        @Override
+        Object get(int r) {
+            if (spill != null) {
+                BigDecimal v = spill.get(r);
+                if (v != null) return v;
+            }
+            return BigDecimal.valueOf(unscaled[r], scale);
+        }
+
+        @Override
+        double getDouble(int r) {
+            if (spill != null && spill.containsKey(r)) return spill.get(r).doubleValue();
+            return scale == 0 ? unscaled[r] : unscaled[r] / Math.pow(10, scale);
+        }
+
+        @Override
+        void seal(int rows) {
+            unscaled = Arrays.copyOf(unscaled, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 8L + rows / 8 + (spill == null ? 0 : spill.size() * 96L);
+        }
+
+        @Override
+        void writeHeader(DataOutputStream out) throws IOException {
+            out.writeInt(scale);
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            writeLongs(out, unscaled, rows);
+            out.writeInt(spill == null ? 0 : spill.size());
+            if (spill == null) return;
+            for (Map.Entry<Integer, BigDecimal> e : spill.entrySet()) {
+                out.writeInt(e.getKey());
+                writeString(out, e.getValue().toString());
+            }
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            unscaled = readLongs(in, rows);
+            int n = in.readInt();
+            if (n > 0) spill = new HashMap<>();
+            for (int i = 0; i < n; i++) spill.put(in.readInt(), new BigDecimal(readString(in)));
+        }
+    }
+
+    /** java.sql.Date：存 epoch day，按本地日期还原（不经过时区换算） */
+    private static final class DateCol extends Col {
+        private long[] days = new long[0];
+
+        DateCol() {
+            super(Type.DATE);
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            java.sql.Date v = rs.getDate(i);
+            if (v == null) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= days.length) days = Arrays.copyOf(days, grow(days.length, r));
+            days[r] = v.toLocalDate().toEpochDay();
+        }
+
+        @Override
+        Object get(int r) {
+            return java.sql.Date.valueOf(LocalDate.ofEpochDay(days[r]));
+        }
+
+        @Override
+        double getDouble(int r) {
+            return Double.NaN;
+        }
+
+        @Override
+        void seal(int rows) {
+            days = Arrays.copyOf(days, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 8L + rows / 8;
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            writeLongs(out, days, rows);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            days = readLongs(in, rows);
+        }
+    }
+
+    /** Timestamp：存本地时间的 epoch 微秒（MySQL / PG 的最高精度），按本地时间还原 */
+    private static final class TimestampCol extends Col {
+        private long[] micros = new long[0];
+
+        TimestampCol() {
+            super(Type.TIMESTAMP);
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            Timestamp v = rs.getTimestamp(i);
+            if (v == null) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= micros.length) micros = Arrays.copyOf(micros, grow(micros.length, r));
+            LocalDateTime ldt = v.toLocalDateTime();
+            micros[r] = ldt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + ldt.getNano() / 1_000;
+        }
+
+        @Override
+        Object get(int r) {
+            long sec = Math.floorDiv(micros[r], 1_000_000L);
+            int nano = (int) Math.floorMod(micros[r], 1_000_000L) * 1_000;
+            return Timestamp.valueOf(LocalDateTime.ofEpochSecond(sec, nano, ZoneOffset.UTC));
+        }
+
+        @Override
+        double getDouble(int r) {
+            return Double.NaN;
+        }
+
+        @Override
+        void seal(int rows) {
+            micros = Arrays.copyOf(micros, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 8L + rows / 8;
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            writeLongs(out, micros, rows);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            micros = readLongs(in, rows);
+        }
+    }
+
+    private static final class BooleanCol extends Col {
+        private final BitSet values = new BitSet();
+
+        BooleanCol() {
+            super(Type.BOOLEAN);
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            boolean v = rs.getBoolean(i);
+            if (rs.wasNull()) nulls.set(r);
+            else if (v) values.set(r);
+        }
+
+        @Override
+        Object get(int r) {
+            return values.get(r);
+        }
+
+        @Override
+        double getDouble(int r) {
+            return Double.NaN;
+        }
+
+        @Override
+        void seal(int rows) {
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 32L + rows / 4;
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            writeBits(out, values);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            values.or(readBits(in));
+        }
+    }
+
+    /** 字典编码：codes[r] 指向 dict；建完后丢掉反查表 */
+    private static final class StringCol extends Col {
+        private int[] codes = new int[0];
+        private List<String> dict = new ArrayList<>();
+        private Map<String, Integer> lookup = new HashMap<>();
+
+        StringCol() {
+            super(Type.STRING);
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            String v = rs.getString(i);
+            if (v == null) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= codes.length) codes = Arrays.copyOf(codes, grow(codes.length, r));
+            Integer code = lookup.get(v);
+            if (code == null) {
+                code = dict.size();
+                dict.add(v);
+                lookup.put(v, code);
+            }
+            codes[r] = code;
+        }
+
+        @Override
+        String get(int r) {
+            return dict.get(codes[r]);
+        }
+
+        @Override
+        double getDouble(int r) {
+            return Double.NaN;
+        }
+
+        @Override
+        void seal(int rows) {
+            codes = Arrays.copyOf(codes, rows);
+            dict = List.copyOf(dict);
+            lookup = null;
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            long bytes = 32L + rows * 4L + rows / 8;
+            for (String s : dict) bytes += 40L + s.length() * 2L;
+            return bytes;
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            out.writeInt(dict.size());
+            for (String s : dict) writeString(out, s);
+            for (int r = 0; r < rows; r++) out.writeInt(codes[r]);
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            int n = in.readInt();
+            List<String> d = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) d.add(readString(in));
+            dict = List.copyOf(d);
+            lookup = null;
+            codes = new int[rows];
+            for (int r = 0; r < rows; r++) codes[r] = in.readInt();
+        }
+    }
+
+    private static final class ObjectCol extends Col {
+        private Object[] values = new Object[0];
+
+        ObjectCol() {
+            super(Type.OBJECT);
+        }
+
+        @Override
+        void read(ResultSet rs, int i, int r) throws SQLException {
+            Object v = rs.getObject(i);
+            if (v == null) {
+                nulls.set(r);
+                return;
+            }
+            if (r >= values.length) values = Arrays.copyOf(values, grow(values.length, r));
+            values[r] = v;
+        }
+
+        @Override
+        Object get(int r) {
+            return values[r];
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        long estimatedBytes(int rows) {
+            return 16L + rows * 40L + rows / 8;
+        }
+
+        private static final int TAG_NUMBER = 1;
+        private static final int TAG_BYTES = 2;
+        private static final int TAG_STRING = 3;
+
+        @Override
+        void writeValues(DataOutputStream out, int rows) throws IOException {
+            for (int r = 0; r < rows; r++) {
+                if (nulls.get(r)) continue;
+                Object v = values[r];
+                if (v instanceof Number n) {
+                    out.writeByte(TAG_NUMBER);
+                    writeString(out, n.toString());
+                } else if (v instanceof byte[] b) {
+                    out.writeByte(TAG_BYTES);
+                    out.writeInt(b.length);
+                    out.write(b);
+                } else {
+                    out.writeByte(TAG_STRING);
+                    writeString(out, String.valueOf(v));
+                }
+            }
+        }
+
+        @Override
+        void readValues(DataInputStream in, int rows) throws IOException {
+            values = new Object[rows];
+            for (int r = 0; r < rows; r++) {
+                if (nulls.get(r)) continue;
+                int tag = in.readUnsignedByte();
+                if (tag == TAG_NUMBER) {
+                    String n = readString(in);
+                    try {
+                        values[r] = new BigDecimal(n);
+                    } catch (NumberFormatException e) {
+                        values[r] = Double.valueOf(n); // NaN / Infinity
+                    }
+                } else if (tag == TAG_BYTES) {
+                    byte[] b = new byte[in.readInt()];
+                    in.readFully(b);
+                    values[r] = b;
+                } else {
+                    values[r] = readString(in);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.intelligent_data_analysis_system.infrastructure.exception;
 
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -7,6 +8,8 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -26,6 +29,22 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(HttpStatus.BAD_REQUEST, "业务逻辑错误", e.getErrorMessage());
     }
 
+    @ExceptionHandler(QueryTimeoutException.class)
+    public ResponseEntity<Map<String, Object>> handleQueryTimeoutException(QueryTimeoutException e) {
+        return buildErrorResponse(HttpStatus.GATEWAY_TIMEOUT, "查询超时", e.getMessage());
+    }
+
+    @ExceptionHandler(CancellationException.class)
+    public ResponseEntity<Map<String, Object>> handleCancellationException(CancellationException e) {
+        return buildErrorResponse(HttpStatus.CONFLICT, "查询已取消", e.getMessage());
+    }
+
+    /** 执行线程和排队都满了（如 /api/ai/query 的有界执行器） */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, Object>> handleRejectedExecutionException(RejectedExecutionException e) {
+        return buildErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, "服务繁忙", "请求排队已满，请稍后重试");
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleException(Exception e) {
         return buildErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "服务器内部错误", e.getMessage());
@@ -3,6 +3,9 @@ package com.intelligent_data_analysis_system.infrastructure.runner;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intelligent_data_analysis_system.LLM.QWenSqlGenerator;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.BatchProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
 import com.intelligent_data_analysis_system.infrastructure.runner.dto.AdvancedReportItem;
 import com.intelligent_data_analysis_system.infrastructure.runner.dto.ProblemItem;
 import com.intelligent_data_analysis_system.infrastructure.runner.dto.QueryResult;
@@ -10,13 +13,13 @@ import com.intelligent_data_analysis_system.infrastructure.runner.dto.SubmitItem
 import com.intelligent_data_analysis_system.service.AiText2SqlService;
 import com.intelligent_data_analysis_system.service.SqlExecuteService;
 import com.intelligent_data_analysis_system.service.SqlSelfCheckService;
-import com.intelligent_data_analysis_system.utils.Fixer.FinanceProjectionFixer;
-import com.intelligent_data_analysis_system.utils.Fixer.HealthcareProjectionFixer;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import com.intelligent_data_analysis_system.utils.Fixer.SqlFailureRepairer;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGenResult;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGuard;
+import com.intelligent_data_analysis_system.utils.Optimizer.SqlLogicalOptimizer;
 import com.intelligent_data_analysis_system.utils.Pruner.QueryResultPruner;
 import com.intelligent_data_analysis_system.utils.RuleFallback;
-import com.intelligent_data_analysis_system.utils.SqlExceptionRepair;
 import com.intelligent_data_analysis_system.utils.SqlPatchPipeline;
 
 import lombok.RequiredArgsConstructor;
@@ -33,6 +36,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,6 +51,8 @@ public class BatchRunner implements CommandLineRunner {
     private final SqlExecuteService sqlExecuteService;
     private final SqlSelfCheckService sqlSelfCheckService;
     private final AiText2SqlService aiText2SqlService;
+    private final BatchProperties batchProperties;
+    private final CandidateVoteExecutor candidateVoteExecutor;
 
     // 你可以按需要调
     private static final int MAX_RETRY_PER_PROBLEM = 3;
@@ -57,6 +63,13 @@ public class BatchRunner implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        // 批处理整体走 BATCH 隔离舱：最多占 app.query.workload.batch.max-concurrent 个连接，池满时让交互请求先拿
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withWorkload(WorkloadClass.BATCH).open()) {
+            runBatch(args);
+        }
+    }
+
+    private void runBatch(String... args) throws Exception {
         String mode = parseMode(args); // dev / submit（你现在其实不靠它也行）
         System.out.println("Batch mode = " + mode);
 
@@ -76,8 +89,7 @@ public class BatchRunner implements CommandLineRunner {
             int id = item.getId() == null ? -1 : item.getId();
             String level = safe(item.getLevel());
             String problem = safe(item.getProblem()).trim();
-            String domain = safe(item.getDomain());
-            if (domain.isBlank()) domain = "FINANCE";
+            String domain = safe(item.getDomain()).isBlank() ? "FINANCE" : safe(item.getDomain());
 
             boolean isFinance = "FINANCE".equalsIgnoreCase(domain);
             boolean isHealthcare = "HEALTHCARE".equalsIgnoreCase(domain);
@@ -85,91 +97,13 @@ public class BatchRunner implements CommandLineRunner {
             boolean isAdvanced = "高级".equals(level);
 
             // 题目必须不丢：即使失败也要输出占位（初中级必须输出四字段）
-            String finalSql = "";
-            String finalAnswer = "";
-
-            QueryResult predQrForChart = null;
-
-            // ====== 核心：最多重试 3 次，失败也继续下一个题 ======
-            for (int attempt = 1; attempt <= MAX_RETRY_PER_PROBLEM; attempt++) {
-                try {
-                    // 1) 生成 SQL（LLM -> fallback）
-                    SqlGenResult gen = sqlGenerator.generate(domain, problem);
-                    String predSql = gen == null ? "" : safe(gen.getSql()).trim();
-
-                    if (predSql.isBlank()) {
-                        predSql = safe(RuleFallback.tryBuild(domain, problem)).trim();
-                    }
-                    if (predSql.isBlank()) {
-                        // 继续重试
-                        continue;
-                    }
-
-                    // 2) 清洗：去代码块围栏 + 反转义 \n \t \r（修你说的“sql 里存进 \\n”）
-                    predSql = normalizeSqlText(predSql);
-
-                    // 3) 只读单条校验
-                    SqlGuard.validateReadOnlySingleStatement(predSql);
+            Solution solution = solve(batchProperties.getVote().isEnabled(),
+                    () -> solveByVote(domain, problem, isAdvanced),
+                    () -> solveByRetry(domain, problem, isAdvanced));
 
-                    // 4) SQL 自检（结构 hint），必要时重写一次
-                    SqlSelfCheckService.CheckResult check = sqlSelfCheckService.check(problem, predSql);
-                    if (check != null && !check.ok) {
-                        SqlGenResult retry = aiText2SqlService.rewriteWithHint(domain, problem, predSql, check.hint);
-                        if (retry != null && retry.getSql() != null && !retry.getSql().isBlank()) {
-                            predSql = normalizeSqlText(retry.getSql());
-                            SqlGuard.validateReadOnlySingleStatement(predSql);
-                        }
-                    }
-
-                    // 5) 领域投影兜底 + patch pipeline
-                    if (isFinance) predSql = FinanceProjectionFixer.fix(problem, predSql);
-                    if (isHealthcare) predSql = HealthcareProjectionFixer.fix(problem, predSql);
-                    predSql = SqlPatchPipeline.apply(domain, problem, predSql, check);
-
-                    // 6) 执行（初中级允许做异常修复，高级不做“错误展示”，但依旧可尝试轻修复一次）
-                    List<Map<String, Object>> predRows;
-                    try {
-                        predRows = sqlExecuteService.query(domain, predSql);
-                    } catch (Exception e) {
-                        // 初/中：尝试别名/语法修复再执行
-                        if (!isAdvanced) {
-                            String aliased = SqlExceptionRepair.tryAliasRepair(domain, predSql, e);
-                            if (!aliased.equals(predSql)) {
-                                predSql = aliased;
-                                predRows = sqlExecuteService.query(domain, predSql);
-                            } else {
-                                String repaired = SqlExceptionRepair.tryRepair(predSql, e);
-                                if (!repaired.equals(predSql)) {
-                                    predSql = repaired;
-                                    predRows = sqlExecuteService.query(domain, predSql);
-                                } else {
-                                    throw e;
-                                }
-                            }
-                        } else {
-                            // 高级：不展示错误、不阻塞整个 batch；进入下一次 attempt
-                            continue;
-                        }
-                    }
-
-                    // 7) QueryResult + 裁剪
-                    QueryResult predQr = toQueryResult(predRows);
-                    predQr = QueryResultPruner.pruneByIntent(domain, problem, predQr);
-
-                    // 8) 初中级：提交用极简答案（修你说的 answer 多余一堆东西）
-                    finalSql = predSql;
-                    finalAnswer = buildSubmitAnswer(problem, predQr);
-
-                    // 9) 高级：图表数据来源（用裁剪后的结果）
-                    predQrForChart = predQr;
-
-                    // 成功就 break
-                    break;
-
-                } catch (Exception ignore) {
-                    // 不打印、不阻塞，继续下一次 attempt
-                }
-            }
+            String finalSql = solution == null ? "" : solution.sql;
+            String finalAnswer = solution == null ? "" : buildSubmitAnswer(problem, solution.result);
+            QueryResult predQrForChart = solution == null ? null : solution.result;
 
             // ====== 输出归档 ======
             if (!isAdvanced) {
@@ -207,6 +141,177 @@ public class BatchRunner implements CommandLineRunner {
         System.out.println("HEALTHCARE 初中级条目数=" + healthcareSubmit.size() + "，HEALTHCARE 高级条目数=" + healthcareAdvancedItems.size());
     }
 
+    /** 一道题的答案：最终 SQL + 裁剪后的结果 */
+    static final class Solution {
+        final String sql;
+        final QueryResult result;
+
+        Solution(String sql, QueryResult result) {
+            this.sql = sql;
+            this.result = result;
+        }
+    }
+
+    /**
+     * 投票模式先投票；没有候选、候选全部失败或投票本身出错时退回串行重试，
+     * 不因为开了投票就让原本重试能答出来的题空着。
+     */
+    static Solution solve(boolean vote, Supplier<Solution> byVote, Supplier<Solution> byRetry) {
+        if (vote) {
+            try {
+                Solution s = byVote.get();
+                if (s != null) return s;
+            } catch (Exception ignore) {
+                // 与串行模式一致：不阻塞整个 batch
+            }
+        }
+        return byRetry.get();
+    }
+
+    // =========================
+    // 串行模式：最多重试 3 次，失败返回 null
+    // =========================
+    private Solution solveByRetry(String domain, String problem, boolean isAdvanced) {
+        for (int attempt = 1; attempt <= MAX_RETRY_PER_PROBLEM; attempt++) {
+            try {
+                // 1) 生成 SQL（LLM -> fallback）
+                SqlGenResult gen = sqlGenerator.generate(domain, problem);
+                String predSql = gen == null ? "" : safe(gen.getSql()).trim();
+
+                if (predSql.isBlank()) {
+                    predSql = safe(RuleFallback.tryBuild(domain, problem)).trim();
+                }
+                if (predSql.isBlank()) {
+                    // 继续重试
+                    continue;
+                }
+
+                // 2) 清洗：去代码块围栏 + 反转义 \n \t \r（修你说的“sql 里存进 \\n”）
+                predSql = normalizeSqlText(predSql);
+
+                // 3) 只读单条校验
+                SqlGuard.validateReadOnlySingleStatement(predSql);
+
+                // 4) SQL 自检（结构 hint），必要时重写一次
+                SqlSelfCheckService.CheckResult check = sqlSelfCheckService.check(problem, predSql);
+                if (check != null && !check.ok) {
+                    SqlGenResult retry = aiText2SqlService.rewriteWithHint(domain, problem, predSql, check.hint);
+                    if (retry != null && retry.getSql() != null && !retry.getSql().isBlank()) {
+                        predSql = normalizeSqlText(retry.getSql());
+                        SqlGuard.validateReadOnlySingleStatement(predSql);
+                    }
+                }
+
+                // 5) patch pipeline（含领域投影兜底等改写规则）+ 逻辑优化
+                predSql = SqlPatchPipeline.apply(domain, problem, predSql, check);
+                predSql = SqlLogicalOptimizer.optimize(domain, predSql);
+
+                // 6) 执行（初中级允许做异常修复，高级不做“错误展示”，但依旧可尝试轻修复一次）
+                ColumnarResult predData;
+                try {
+                    predData = sqlExecuteService.queryColumnar(domain, predSql);
+                } catch (Exception e) {
+                    // 初/中：按错误码定点修复（表名/列名/歧义列）再执行一次，没有修复直接失败
+                    if (!isAdvanced) {
+                        SqlFailureRepairer.Repair repair = SqlFailureRepairer.repair(domain, predSql, e);
+                        if (!repair.repaired()) throw e;
+                        predSql = repair.sql;
+                        predData = sqlExecuteService.queryColumnar(domain, predSql);
+                    } else {
+                        // 高级：不展示错误、不阻塞整个 batch；进入下一次 attempt
+                        continue;
+                    }
+                }
+
+                // 7) QueryResult + 裁剪；成功就返回
+                QueryResult predQr = QueryResult.of(predData);
+                return new Solution(predSql, QueryResultPruner.pruneByIntent(domain, problem, predQr));
+
+            } catch (Exception ignore) {
+                // 不打印、不阻塞，继续下一次 attempt
+            }
+        }
+        return null;
+    }
+
+    // =========================
+    // 投票模式：收集候选 -> 并发执行 -> 结果指纹投票
+    // =========================
+    private Solution solveByVote(String domain, String problem, boolean isAdvanced) {
+        // 1) LLM 生成（原始 + 自检重写），每条都走一遍领域投影兜底 + patch pipeline
+        SqlGenResult gen = sqlGenerator.generate(domain, problem);
+        String llmSql = gen == null ? "" : normalizeSqlText(gen.getSql());
+        String patched = "";
+        String hinted = "";
+        if (!llmSql.isBlank() && isReadOnly(llmSql)) {
+            SqlSelfCheckService.CheckResult check = sqlSelfCheckService.check(problem, llmSql);
+            patched = patchCandidate(domain, problem, llmSql, check);
+
+            if (check != null && !check.ok) {
+                SqlGenResult retry = aiText2SqlService.rewriteWithHint(domain, problem, llmSql, check.hint);
+                String rewritten = retry == null ? "" : normalizeSqlText(retry.getSql());
+                if (!rewritten.isBlank() && isReadOnly(rewritten)) {
+                    hinted = patchCandidate(domain, problem, rewritten, null);
+                }
+            }
+        } else {
+            llmSql = "";
+        }
+
+        // 2) 规则兜底
+        String ruleSql = normalizeSqlText(RuleFallback.tryBuild(domain, problem));
+        if (ruleSql.isBlank() || !isReadOnly(ruleSql)) ruleSql = "";
+
+        List<CandidateVoteExecutor.Candidate> candidates = voteCandidates(llmSql, patched, hinted, ruleSql);
+        if (candidates.isEmpty()) return null;
+
+        // 3) 执行失败的候选用异常修复生成第二波（高级题与串行模式一致，不做修复）
+        java.util.function.BiFunction<String, Exception, String> repair = isAdvanced ? null : (sql, e) -> {
+            SqlFailureRepairer.Repair r = SqlFailureRepairer.repair(domain, sql, e);
+            return r.repaired() ? r.sql : sql;
+        };
+
+        CandidateVoteExecutor.Outcome winner = candidateVoteExecutor.execute(domain, candidates, repair).winner;
+        if (winner == null) return null;
+        QueryResult predQr = QueryResult.of(winner.result);
+        return new Solution(winner.sql, QueryResultPruner.pruneByIntent(domain, problem, predQr));
+    }
+
+    /**
+     * 投票候选（顺序即平票优先级）：patch 后的 LLM SQL、自检重写后的 SQL、未经 patch 的原始 SQL、规则兜底。
+     * 同一次生成的几个变体文本相同时只留一条：patch 没改动时原始 SQL 和 patch 后的是同一票，
+     * 重复计票会让一次 LLM 生成压过独立的规则兜底。不同来源给出同一条 SQL 仍各记一票（执行器合并）。
+     * 空串表示该候选没有。
+     */
+    static List<CandidateVoteExecutor.Candidate> voteCandidates(String llmSql, String patched,
+                                                               String hinted, String ruleSql) {
+        List<CandidateVoteExecutor.Candidate> out = new ArrayList<>();
+        Set<String> fromLlm = new HashSet<>();
+        addVariant(out, fromLlm, "llm", patched);
+        addVariant(out, fromLlm, "llm-hint", hinted);
+        // 未经 patch 的原始 SQL 也作为一票：patch 改坏时它能把票拉回来
+        addVariant(out, fromLlm, "llm-raw", llmSql);
+        if (ruleSql != null && !ruleSql.isBlank()) {
+            out.add(new CandidateVoteExecutor.Candidate("rule", ruleSql));
+        }
+        return out;
+    }
+
+    private static void addVariant(List<CandidateVoteExecutor.Candidate> out, Set<String> seen,
+                                   String source, String sql) {
+        if (sql == null || sql.isBlank() || !seen.add(CandidateVoteExecutor.textKey(sql))) return;
+        out.add(new CandidateVoteExecutor.Candidate(source, sql));
+    }
+
+    private String patchCandidate(String domain, String problem, String sql,
+                                  SqlSelfCheckService.CheckResult check) {
+        return SqlLogicalOptimizer.optimize(domain, SqlPatchPipeline.apply(domain, problem, sql, check));
+    }
+
+    private boolean isReadOnly(String sql) {
+        return SqlGuard.isReadOnlySingleStatement(sql);
+    }
+
     private AdvancedReportItem buildEmptyAdvancedItem(String id, String query, String note) {
         AdvancedReportItem a = new AdvancedReportItem();
         a.setId(id);
@@ -222,42 +327,41 @@ public class BatchRunner implements CommandLineRunner {
     // 初中级：提交用极简答案（避免“多余一堆东西”）
     // =========================
     private String buildSubmitAnswer(String problem, QueryResult qr) {
-        if (qr == null || qr.getRows() == null || qr.getRows().isEmpty() || qr.getColumns() == null) {
+        if (qr == null || qr.isEmpty() || qr.colCount() == 0) {
             return "";
         }
 
-        List<String> cols = qr.getColumns();
-        List<List<Object>> rows = qr.getRows();
+        ColumnarResult d = qr.getData();
+        int rowCount = d.rowCount();
+        int colCount = d.columnCount();
 
         // 1) 单值（最常见、最稳）
-        if (rows.size() == 1 && cols.size() == 1) {
-            Object v = rows.get(0).get(0);
-            return clip(oneValueToString(v), SUBMIT_MAX_CHARS);
+        if (rowCount == 1 && colCount == 1) {
+            return clip(cellToString(d, 0, 0), SUBMIT_MAX_CHARS);
         }
 
         // 2) 1 行多列：拼成 “col=value; col=value”
-        if (rows.size() == 1 && cols.size() <= 6) {
+        if (rowCount == 1 && colCount <= 6) {
             StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < cols.size(); i++) {
+            for (int i = 0; i < colCount; i++) {
                 if (i > 0) sb.append("；");
-                sb.append(cols.get(i)).append("=").append(oneValueToString(rows.get(0).get(i)));
+                sb.append(d.column(i)).append("=").append(cellToString(d, 0, i));
             }
             return clip(sb.toString(), SUBMIT_MAX_CHARS);
         }
 
         // 3) 多行：最多拼接前 N 行（每行做紧凑键值）
-        int take = Math.min(rows.size(), SUBMIT_MAX_ROWS_INLINE);
-        int takeCols = Math.min(cols.size(), 4); // 过多列会变长影响评分
+        int take = Math.min(rowCount, SUBMIT_MAX_ROWS_INLINE);
+        int takeCols = Math.min(colCount, 4); // 过多列会变长影响评分
         List<String> lineParts = new ArrayList<>();
         for (int r = 0; r < take; r++) {
-            List<Object> row = rows.get(r);
             if (takeCols == 1) {
-                lineParts.add(oneValueToString(row.get(0)));
+                lineParts.add(cellToString(d, r, 0));
             } else {
                 StringBuilder one = new StringBuilder();
                 for (int c = 0; c < takeCols; c++) {
                     if (c > 0) one.append(",");
-                    one.append(oneValueToString(row.get(c)));
+                    one.append(cellToString(d, r, c));
                 }
                 lineParts.add(one.toString());
             }
@@ -266,6 +370,16 @@ public class BatchRunner implements CommandLineRunner {
         return clip(joined, SUBMIT_MAX_CHARS);
     }
 
+    /** 数值列直接读列存里的原始值，其它按 oneValueToString */
+    private String cellToString(ColumnarResult d, int r, int c) {
+        if (d.isNull(r, c)) return "";
+        ColumnarResult.Type t = d.type(c);
+        if (t == ColumnarResult.Type.LONG || t == ColumnarResult.Type.DOUBLE || t == ColumnarResult.Type.DECIMAL) {
+            return DF.format(d.getDouble(r, c));
+        }
+        return oneValueToString(d.get(r, c));
+    }
+
     private String oneValueToString(Object v) {
         if (v == null) return "";
         if (v instanceof Number n) return DF.format(n.doubleValue());
@@ -309,8 +423,8 @@ public class BatchRunner implements CommandLineRunner {
     }
 
     private String buildNarrative(String query, QueryResult qr) {
-        int rowCount = qr.getRows() == null ? 0 : qr.getRows().size();
-        int colCount = qr.getColumns() == null ? 0 : qr.getColumns().size();
+        int rowCount = qr.rowCount();
+        int colCount = qr.colCount();
 
         // 简单意图识别：时间序列/TopN/占比
         boolean timeLike = looksLikeTimeSeries(qr);
@@ -333,34 +447,24 @@ public class BatchRunner implements CommandLineRunner {
 
     private String quickStatSentence(QueryResult qr) {
         // 找一个数值列做 max/min（如果有）
-        if (qr.getRows() == null || qr.getRows().isEmpty() || qr.getColumns() == null) return "";
-        int ncol = qr.getColumns().size();
-        int numericIdx = -1;
-        for (int c = 0; c < ncol; c++) {
-            Object v = qr.getRows().get(0).get(c);
-            if (v instanceof Number) {
-                numericIdx = c;
-                break;
-            }
-        }
+        int numericIdx = findFirstNumericCol(qr);
         if (numericIdx < 0) return "";
+        ColumnarResult d = qr.getData();
         double max = Double.NEGATIVE_INFINITY, min = Double.POSITIVE_INFINITY;
-        for (List<Object> row : qr.getRows()) {
-            Object v = row.get(numericIdx);
-            if (v instanceof Number n) {
-                double d = n.doubleValue();
-                max = Math.max(max, d);
-                min = Math.min(min, d);
-            }
+        for (int r = 0; r < d.rowCount(); r++) {
+            double v = d.getDouble(r, numericIdx);
+            if (Double.isNaN(v)) continue;
+            max = Math.max(max, v);
+            min = Math.min(min, v);
         }
         if (!Double.isFinite(max) || !Double.isFinite(min)) return "";
-        return " 数值列“" + qr.getColumns().get(numericIdx) + "”的区间大致在 [" + DF.format(min) + ", " + DF.format(max) + "]。";
+        return " 数值列“" + d.column(numericIdx) + "”的区间大致在 [" + DF.format(min) + ", " + DF.format(max) + "]。";
     }
 
     private List<String> buildBullets(QueryResult qr) {
         List<String> b = new ArrayList<>();
-        int rowCount = qr.getRows() == null ? 0 : qr.getRows().size();
-        int colCount = qr.getColumns() == null ? 0 : qr.getColumns().size();
+        int rowCount = qr.rowCount();
+        int colCount = qr.colCount();
 
         b.add("数据规模：返回 " + rowCount + " 行 × " + colCount + " 列。");
         if (looksLikeTimeSeries(qr)) b.add("形态判断：时间序列结果，适合展示趋势/周期性。");
@@ -372,7 +476,7 @@ public class BatchRunner implements CommandLineRunner {
 
     private List<String> buildCharts(QueryResult qr) {
         List<String> charts = new ArrayList<>();
-        if (qr.getRows() == null || qr.getRows().isEmpty() || qr.getColumns() == null || qr.getColumns().isEmpty()) {
+        if (qr.isEmpty() || qr.colCount() == 0) {
             return charts;
         }
 
@@ -388,40 +492,39 @@ public class BatchRunner implements CommandLineRunner {
         int valueCol = findFirstNumericCol(qr);
         if (valueCol >= 0) {
             charts.add(svgBarChart(qr, labelCol, valueCol, 12));
-            if (qr.getRows().size() <= 8) {
+            if (qr.rowCount() <= 8) {
                 charts.add(svgPieChart(qr, labelCol, valueCol, 8));
             }
         }
         return charts;
     }
 
+    /** 按列类型判断（列存已知类型），不再逐行 instanceof */
     private int findFirstNumericCol(QueryResult qr) {
-        if (qr.getRows() == null || qr.getRows().isEmpty() || qr.getColumns() == null) return -1;
-        int ncol = qr.getColumns().size();
-        for (int c = 0; c < ncol; c++) {
-            for (int r = 0; r < Math.min(3, qr.getRows().size()); r++) {
-                Object v = qr.getRows().get(r).get(c);
-                if (v instanceof Number) return c;
-            }
+        if (qr.isEmpty()) return -1;
+        ColumnarResult d = qr.getData();
+        for (int c = 0; c < d.columnCount(); c++) {
+            if (d.isNumeric(c)) return c;
         }
         return -1;
     }
 
     private boolean looksLikeTimeSeries(QueryResult qr) {
-        if (qr.getColumns() == null || qr.getColumns().isEmpty()) return false;
+        if (qr.colCount() == 0) return false;
+        ColumnarResult d = qr.getData();
+        if (d.type(0) == ColumnarResult.Type.DATE || d.type(0) == ColumnarResult.Type.TIMESTAMP) return true;
         // 第一列列名包含 date/time/month/year 或值像 yyyy-mm
-        String c0 = qr.getColumns().get(0).toLowerCase(Locale.ROOT);
+        String c0 = d.column(0).toLowerCase(Locale.ROOT);
         if (c0.contains("date") || c0.contains("time") || c0.contains("month") || c0.contains("year")) return true;
-        if (qr.getRows() == null || qr.getRows().isEmpty()) return false;
-        String v0 = String.valueOf(qr.getRows().get(0).get(0));
+        if (d.isEmpty()) return false;
+        String v0 = String.valueOf(d.get(0, 0));
         return v0.matches("\\d{4}-\\d{1,2}(-\\d{1,2})?.*") || v0.matches("\\d{1,2}"); // month_num
     }
 
     private boolean looksLikeCategory(QueryResult qr) {
-        if (qr.getRows() == null || qr.getRows().isEmpty() || qr.getColumns() == null) return false;
+        if (qr.isEmpty() || qr.colCount() == 0) return false;
         // 第一列非数值，且存在数值列
-        Object v0 = qr.getRows().get(0).get(0);
-        if (v0 instanceof Number) return false;
+        if (qr.getData().isNumeric(0)) return false;
         return findFirstNumericCol(qr) >= 0;
     }
 
@@ -504,32 +607,29 @@ public class BatchRunner implements CommandLineRunner {
     // 表格渲染：一定输出（最多 N 行）
     // =========================
     private String toHtmlTable(QueryResult qr, int maxRows) {
-        if (qr == null || qr.getColumns() == null || qr.getColumns().isEmpty()) {
+        if (qr == null || qr.colCount() == 0) {
             return "<div class='muted'>无数据表可展示</div>";
         }
-        List<String> cols = qr.getColumns();
-        List<List<Object>> rows = qr.getRows() == null ? List.of() : qr.getRows();
+        ColumnarResult d = qr.getData();
 
-        int take = Math.min(rows.size(), Math.max(0, maxRows));
+        int take = Math.min(d.rowCount(), Math.max(0, maxRows));
 
         StringBuilder sb = new StringBuilder();
         sb.append("<table><thead><tr>");
-        for (String c : cols) sb.append("<th>").append(esc(c)).append("</th>");
+        for (String c : d.columns()) sb.append("<th>").append(esc(c)).append("</th>");
         sb.append("</tr></thead><tbody>");
 
         for (int i = 0; i < take; i++) {
             sb.append("<tr>");
-            List<Object> r = rows.get(i);
-            for (int j = 0; j < cols.size(); j++) {
-                Object v = j < r.size() ? r.get(j) : "";
-                sb.append("<td>").append(esc(oneValueToString(v))).append("</td>");
+            for (int j = 0; j < d.columnCount(); j++) {
+                sb.append("<td>").append(esc(cellToString(d, i, j))).append("</td>");
             }
             sb.append("</tr>");
         }
         sb.append("</tbody></table>");
-        if (rows.size() > take) {
+        if (d.rowCount() > take) {
             sb.append("<div class='muted' style='padding:8px 10px'>仅展示前 ")
-                    .append(take).append(" 行，共 ").append(rows.size()).append(" 行</div>");
+                    .append(take).append(" 行，共 ").append(d.rowCount()).append(" 行</div>");
         }
         return sb.toString();
     }
@@ -538,17 +638,16 @@ public class BatchRunner implements CommandLineRunner {
     // SVG 图表（内联，避免 base64 拥塞）
     // =========================
     private String svgBarChart(QueryResult qr, int labelCol, int valueCol, int topN) {
-        List<List<Object>> rows = qr.getRows();
-        if (rows == null || rows.isEmpty() || valueCol < 0) return null;
+        ColumnarResult d = qr.getData();
+        if (d.isEmpty() || valueCol < 0) return null;
 
-        int n = Math.min(rows.size(), topN);
+        int n = Math.min(d.rowCount(), topN);
         List<String> labels = new ArrayList<>();
         List<Double> values = new ArrayList<>();
 
         for (int i = 0; i < n; i++) {
-            List<Object> r = rows.get(i);
-            labels.add(String.valueOf(r.get(labelCol)));
-            values.add(toDouble(r.get(valueCol)));
+            labels.add(String.valueOf(d.getString(i, labelCol)));
+            values.add(toDouble(d, i, valueCol));
         }
 
         double max = values.stream().mapToDouble(x -> x == null ? 0 : x).max().orElse(1);
@@ -585,16 +684,15 @@ public class BatchRunner implements CommandLineRunner {
 
     private String svgLineChart(QueryResult qr, int labelCol, int valueCol) {
         if (valueCol < 0) return null;
-        List<List<Object>> rows = qr.getRows();
-        if (rows == null || rows.isEmpty()) return null;
+        ColumnarResult d = qr.getData();
+        if (d.isEmpty()) return null;
 
-        int n = Math.min(rows.size(), 40); // 线图最多 40 点
+        int n = Math.min(d.rowCount(), 40); // 线图最多 40 点
         List<String> labels = new ArrayList<>();
         List<Double> values = new ArrayList<>();
         for (int i = 0; i < n; i++) {
-            List<Object> r = rows.get(i);
-            labels.add(String.valueOf(r.get(labelCol)));
-            values.add(toDouble(r.get(valueCol)));
+            labels.add(String.valueOf(d.getString(i, labelCol)));
+            values.add(toDouble(d, i, valueCol));
         }
 
         double max = Double.NEGATIVE_INFINITY, min = Double.POSITIVE_INFINITY;
@@ -638,17 +736,16 @@ public class BatchRunner implements CommandLineRunner {
     }
 
     private String svgPieChart(QueryResult qr, int labelCol, int valueCol, int maxSlices) {
-        List<List<Object>> rows = qr.getRows();
-        if (rows == null || rows.isEmpty() || valueCol < 0) return null;
+        ColumnarResult d = qr.getData();
+        if (d.isEmpty() || valueCol < 0) return null;
 
-        int n = Math.min(rows.size(), maxSlices);
+        int n = Math.min(d.rowCount(), maxSlices);
         List<String> labels = new ArrayList<>();
         List<Double> values = new ArrayList<>();
         double sum = 0;
         for (int i = 0; i < n; i++) {
-            List<Object> r = rows.get(i);
-            String lab = String.valueOf(r.get(labelCol));
-            double v = toDouble(r.get(valueCol));
+            String lab = String.valueOf(d.getString(i, labelCol));
+            double v = toDouble(d, i, valueCol);
             if (v < 0) v = 0;
             labels.add(lab);
             values.add(v);
@@ -699,6 +796,12 @@ public class BatchRunner implements CommandLineRunner {
                 cx, cy, x1, y1, r, r, largeArc, x2, y2);
     }
 
+    /** 数值列直接读 double；其它列（数字存成字符串等）按 toDouble(Object) 解析 */
+    private double toDouble(ColumnarResult d, int r, int c) {
+        double v = d.getDouble(r, c);
+        return Double.isNaN(v) ? toDouble(d.get(r, c)) : v;
+    }
+
     private double toDouble(Object v) {
         if (v == null) return 0;
         if (v instanceof Number n) return n.doubleValue();
@@ -819,30 +922,6 @@ public class BatchRunner implements CommandLineRunner {
         return mode;
     }
 
-    private QueryResult toQueryResult(List<Map<String, Object>> rows) {
-        QueryResult qr = new QueryResult();
-        qr.setSuccess(true);
-        qr.setStatus("success");
-
-        if (rows == null || rows.isEmpty()) {
-            qr.setColumns(new ArrayList<>());
-            qr.setRows(new ArrayList<>());
-            return qr;
-        }
-
-        List<String> cols = new ArrayList<>(rows.get(0).keySet()); // LinkedHashMap 顺序
-        qr.setColumns(cols);
-
-        List<List<Object>> data = new ArrayList<>();
-        for (Map<String, Object> r : rows) {
-            List<Object> one = new ArrayList<>(cols.size());
-            for (String c : cols) one.add(r.get(c));
-            data.add(one);
-        }
-        qr.setRows(data);
-        return qr;
-    }
-
     private String safe(String s) {
         return s == null ? "" : s;
     }
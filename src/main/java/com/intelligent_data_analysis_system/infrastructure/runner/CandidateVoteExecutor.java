@@ -0,0 +1,240 @@
+package com.intelligent_data_analysis_system.infrastructure.runner;
+
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.BatchProperties;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.service.SqlExecuteService;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import com.intelligent_data_analysis_system.utils.ResultFingerprint;
+import com.intelligent_data_analysis_system.utils.SingleFlight;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * 多候选 SQL 并发执行 + 结果指纹投票。
+ *
+ * 串行重试模式下，一道题的耗时 = 每次“生成 + 执行”之和，而且只认第一个不抛异常的结果；
+ * 这里把 LLM / 规则 / 修复得到的多个候选放到线程池里同时跑（每个候选单独超时），
+ * 再按结果集指纹分组，票数最多的那组胜出。耗时约等于最慢的那个候选。
+ */
+@Profile("batch")
+@Component
+@ConditionalOnProperty(name = "app.batch.enabled", havingValue = "true", matchIfMissing = false)
+public class CandidateVoteExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandidateVoteExecutor.class);
+
+    private final SqlExecuteService sqlExecuteService;
+    private final BatchProperties batchProperties;
+    private final ExecutorService pool;
+
+    public CandidateVoteExecutor(SqlExecuteService sqlExecuteService, BatchProperties batchProperties,
+                                 TaskThreads taskThreads) {
+        this.sqlExecuteService = sqlExecuteService;
+        this.batchProperties = batchProperties;
+        this.pool = taskThreads.fixed("candidate-vote", batchProperties.getVote().getParallelism());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /** 一个候选：来源（llm / rule / repair ...）+ SQL */
+    public static class Candidate {
+        public final String source;
+        public final String sql;
+
+        public Candidate(String source, String sql) {
+            this.source = source;
+            this.sql = sql;
+        }
+    }
+
+    /** 单个候选的执行结果 */
+    public static class Outcome {
+        public final List<String> sources = new ArrayList<>();
+        public final String sql;
+        public final int priority; // 越小越优先（候选传入顺序）
+        public ColumnarResult result;
+        public String fingerprint;
+        public Exception error;
+
+        Outcome(String source, String sql, int priority) {
+            this.sources.add(source);
+            this.sql = sql;
+            this.priority = priority;
+        }
+
+        public boolean ok() {
+            return error == null && result != null;
+        }
+
+        public int weight() {
+            return sources.size();
+        }
+    }
+
+    /** 投票结果：winner 为空表示所有候选都失败 */
+    public static class VoteResult {
+        public final Outcome winner;
+        public final int votes;
+        public final List<Outcome> outcomes;
+
+        VoteResult(Outcome winner, int votes, List<Outcome> outcomes) {
+            this.winner = winner;
+            this.votes = votes;
+            this.outcomes = outcomes;
+        }
+    }
+
+    /**
+     * @param domain     执行所用业务域
+     * @param candidates 候选列表（顺序即平票时的优先级）
+     * @param repair     失败候选的修复函数（返回原 SQL 表示无法修复），可为空
+     */
+    public VoteResult execute(String domain,
+                              List<Candidate> candidates,
+                              BiFunction<String, Exception, String> repair) {
+        // 1) 同一条 SQL 只执行一次，但多个来源都给出它时记多票
+        Map<String, Outcome> byText = new LinkedHashMap<>();
+        int priority = 0;
+        for (Candidate c : candidates) {
+            if (c == null || c.sql == null || c.sql.isBlank()) continue;
+            String key = textKey(c.sql);
+            Outcome existing = byText.get(key);
+            if (existing != null) {
+                existing.sources.add(c.source);
+            } else {
+                byText.put(key, new Outcome(c.source, c.sql, priority++));
+            }
+        }
+
+        List<Outcome> all = new ArrayList<>(byText.values());
+        runWave(domain, all);
+
+        // 2) 失败的候选尝试修复，修复后的 SQL 作为第二波并发执行
+        if (repair != null) {
+            List<Outcome> repaired = new ArrayList<>();
+            for (Outcome o : all) {
+                if (o.ok() || o.error == null) continue;
+                String fixed;
+                try {
+                    fixed = repair.apply(o.sql, o.error);
+                } catch (Exception ignore) {
+                    continue;
+                }
+                if (fixed == null || fixed.isBlank()) continue;
+                String key = textKey(fixed);
+                if (byText.containsKey(key)) continue;
+                Outcome r = new Outcome("repair(" + String.join("+", o.sources) + ")", fixed, o.priority);
+                byText.put(key, r);
+                repaired.add(r);
+            }
+            if (!repaired.isEmpty()) {
+                runWave(domain, repaired);
+                all.addAll(repaired);
+            }
+        }
+
+        return vote(all);
+    }
+
+    private void runWave(String domain, List<Outcome> wave) {
+        long timeoutMs = Math.max(1, batchProperties.getVote().getCandidateTimeoutMs());
+
+        // 池线程里没有调用方的上下文：整体带过去（负载类别批处理时为 BATCH）
+        // 每个候选一个取消句柄：超时的候选用 Statement.cancel 在数据库端中止，中断线程对 JDBC 不起作用
+        ExecutionContext ctx = ExecutionContext.current();
+        int timeoutSeconds = (int) Math.min(Integer.MAX_VALUE, (timeoutMs + 999) / 1000);
+        Map<Outcome, Future<ColumnarResult>> futures = new LinkedHashMap<>();
+        Map<Outcome, SingleFlight.Flight> flights = new HashMap<>();
+        for (Outcome o : wave) {
+            SingleFlight.Flight flight = new SingleFlight.Flight();
+            flights.put(o, flight);
+            futures.put(o, pool.submit(ctx.wrap(
+                    () -> sqlExecuteService.queryColumnar(domain, o.sql, flight::onCancel, timeoutSeconds))));
+        }
+
+        // 所有候选同时开跑，统一截止时间即为“每个候选的超时”
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Map.Entry<Outcome, Future<ColumnarResult>> e : futures.entrySet()) {
+            Outcome o = e.getKey();
+            Future<ColumnarResult> f = e.getValue();
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                o.result = f.get(left, TimeUnit.NANOSECONDS);
+                o.fingerprint = ResultFingerprint.of(o.result);
+            } catch (TimeoutException te) {
+                cancel(f, flights.get(o));
+                o.error = new TimeoutException("候选执行超时(" + timeoutMs + "ms)");
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                o.error = cause instanceof Exception ex ? ex : new RuntimeException(cause);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                cancel(f, flights.get(o));
+                o.error = ie;
+            }
+        }
+    }
+
+    /** 还没开始的不再开始；已经在执行的取消数据库上的语句，连接随之归还 */
+    private static void cancel(Future<?> f, SingleFlight.Flight flight) {
+        f.cancel(true);
+        flight.cancel();
+    }
+
+    /**
+     * 按指纹分组计票：票数多者胜；平票时非空结果优先，再按候选优先级。
+     */
+    private VoteResult vote(List<Outcome> all) {
+        Map<String, List<Outcome>> groups = new LinkedHashMap<>();
+        for (Outcome o : all) {
+            if (!o.ok()) continue;
+            groups.computeIfAbsent(o.fingerprint, k -> new ArrayList<>()).add(o);
+        }
+        if (groups.isEmpty()) {
+            logger.info("[vote] all {} candidates failed", all.size());
+            return new VoteResult(null, 0, all);
+        }
+
+        List<Outcome> bestGroup = null;
+        int bestVotes = -1;
+        for (List<Outcome> g : groups.values()) {
+            int votes = g.stream().mapToInt(Outcome::weight).sum();
+            if (bestGroup == null || better(g, votes, bestGroup, bestVotes)) {
+                bestGroup = g;
+                bestVotes = votes;
+            }
+        }
+
+        Outcome winner = bestGroup.stream().min(Comparator.comparingInt(o -> o.priority)).orElseThrow();
+        logger.info("[vote] candidates={}, groups={}, winner={} votes={} rows={}",
+                all.size(), groups.size(), winner.sources, bestVotes, winner.result.rowCount());
+        return new VoteResult(winner, bestVotes, all);
+    }
+
+    private boolean better(List<Outcome> g, int votes, List<Outcome> best, int bestVotes) {
+        if (votes != bestVotes) return votes > bestVotes;
+        boolean empty = g.get(0).result.isEmpty();
+        boolean bestEmpty = best.get(0).result.isEmpty();
+        if (empty != bestEmpty) return !empty;
+        int p = g.stream().mapToInt(o -> o.priority).min().orElse(Integer.MAX_VALUE);
+        int bp = best.stream().mapToInt(o -> o.priority).min().orElse(Integer.MAX_VALUE);
+        return p < bp;
+    }
+
+    /** 同一条 SQL 的判定：忽略首尾空白、空白数量和大小写 */
+    static String textKey(String sql) {
+        return sql.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
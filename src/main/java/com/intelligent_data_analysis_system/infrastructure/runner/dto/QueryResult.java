@@ -1,8 +1,8 @@
 package com.intelligent_data_analysis_system.infrastructure.runner.dto;
 
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
 import lombok.Data;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -13,27 +13,43 @@ public class QueryResult {
     private String errorMsg;
     private long elapsedMs;
 
-    private List<String> columns = new ArrayList<>();
-    private List<List<Object>> rows = new ArrayList<>();
+    /** 列式存储；columns / rows 是它的只读视图 */
+    private ColumnarResult data = ColumnarResult.empty();
+
+    public static QueryResult of(ColumnarResult data) {
+        QueryResult qr = new QueryResult();
+        qr.setSuccess(true);
+        qr.setStatus("success");
+        qr.setData(data == null ? ColumnarResult.empty() : data);
+        return qr;
+    }
+
+    public List<String> getColumns() {
+        return data.columns();
+    }
+
+    public List<List<Object>> getRows() {
+        return data.rows();
+    }
 
     public boolean isEmpty() {
-        return rows == null || rows.isEmpty();
+        return data.isEmpty();
     }
 
     public int rowCount() {
-        return rows == null ? 0 : rows.size();
+        return data.rowCount();
     }
 
     public int colCount() {
-        return columns == null ? 0 : columns.size();
+        return data.columnCount();
     }
 
     public Object get(int r, int c) {
-        return rows.get(r).get(c);
+        return data.get(r, c);
     }
 
     public Object getFirstValue() {
         if (isEmpty() || colCount() == 0) return null;
-        return rows.get(0).get(0);
+        return data.get(0, 0);
     }
 }
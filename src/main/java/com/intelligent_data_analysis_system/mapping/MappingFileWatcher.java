@@ -0,0 +1,99 @@
+package com.intelligent_data_analysis_system.mapping;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MappingProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.*;
+
+/**
+ * 配置了 app.mapping.path 时：启动加载外部 mapping.yml，并用 WatchService 监听所在目录，
+ * 文件变化后（去抖）在后台线程重新编译并原子替换 MappingRegistry 的快照，请求线程不受影响。
+ */
+@Component
+@RequiredArgsConstructor
+public class MappingFileWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappingFileWatcher.class);
+
+    private final MappingProperties mappingProperties;
+
+    private volatile WatchService watchService;
+    private Thread thread;
+
+    @PostConstruct
+    public void start() {
+        String p = mappingProperties.getPath();
+        if (p == null || p.isBlank()) return;
+
+        Path file = Paths.get(p.trim()).toAbsolutePath().normalize();
+        if (!Files.isRegularFile(file)) {
+            logger.warn("[mapping] app.mapping.path={} 不存在，继续使用 classpath:mapping.yml", file);
+            return;
+        }
+        MappingRegistry.get().reload(file);
+
+        if (!mappingProperties.isWatch()) return;
+
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            // 监听目录而不是文件：很多编辑器是“写临时文件再 rename”
+            file.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (Exception e) {
+            logger.warn("[mapping] 无法监听 {}，热加载关闭: {}", file, e.getMessage());
+            return;
+        }
+
+        thread = new Thread(() -> loop(file), "mapping-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("[mapping] watching {}", file);
+    }
+
+    private void loop(Path file) {
+        Path name = file.getFileName();
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> ev : key.pollEvents()) {
+                if (name.equals(ev.context())) changed = true;
+            }
+            key.reset();
+            if (!changed) continue;
+
+            try {
+                // 去抖：等写盘结束，期间的事件一起丢掉
+                Thread.sleep(mappingProperties.getDebounceMs());
+                WatchKey more;
+                while ((more = watchService.poll()) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (Files.isRegularFile(file)) MappingRegistry.get().reload(file);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (thread != null) thread.interrupt();
+        try {
+            if (watchService != null) watchService.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
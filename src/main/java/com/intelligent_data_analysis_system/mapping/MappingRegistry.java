@@ -1,123 +1,369 @@
 package com.intelligent_data_analysis_system.mapping;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
+/**
+ * mapping.yml 注册表。
+ *
+ * 加载时把 YAML 树编译成不可变的快照：枚举映射按列名/输入值预先归一（小写）成 HashMap，
+ * 每个 domain 的枚举约束 prompt 预先渲染好；查询只读一个 volatile 引用，不加锁。
+ * 重新加载（MappingFileWatcher 监听到文件变化时）先编译出新快照再整体替换，编译失败保留旧快照。
+ *
+ * 默认读 classpath:mapping.yml；配置了 app.mapping.path 时读外部文件（见 MappingFileWatcher）。
+ *
+ * 每个域下可以有 rewrite 段，给 SqlRewriteRules 的内置规则补充 / 覆盖数据、按方言关掉规则：
+ * <pre>
+ * FINANCE:
+ *   rewrite:
+ *     disabled: [default-projection]          # 该域不跑的规则名
+ *     dialects:
+ *       POSTGRESQL:
+ *         disabled: [boolean-literal]         # 只在该方言下不跑
+ *     column_rename: {create_time: created_time}
+ *     english_values: {bank: 银行}
+ *     default_projection: {clients: "client_id, client_name"}
+ *     listing_objects: [客户, 产品]
+ * </pre>
+ */
 public class MappingRegistry {
 
+    private static final Logger logger = LoggerFactory.getLogger(MappingRegistry.class);
+
     private static final MappingRegistry INSTANCE = new MappingRegistry();
 
-    private final Map<String, Object> root;
+    private volatile Snapshot snapshot;
+
+    /** 当前快照的来源：null 表示 classpath:mapping.yml */
+    private volatile Path source;
+
+    /** 域注册表里按域单独配置的映射（registerDomain），不随 mapping.yml 重新加载；mapping.yml 里有同名域时以它为准 */
+    private volatile Map<String, DomainMappings> extra = Map.of();
 
     private MappingRegistry() {
+        Snapshot s;
         try {
-            Yaml yaml = new Yaml();
-            InputStream in = new ClassPathResource("mapping.yml").getInputStream();
-            this.root = yaml.load(in);
+            s = compile(loadClasspath());
         } catch (Exception e) {
-            throw new RuntimeException("加载 mapping.yml 失败", e);
+            // 不在类初始化里抛：缺文件时映射功能降级为空，其余链路照常
+            logger.warn("加载 classpath:mapping.yml 失败，枚举映射为空: {}", e.getMessage());
+            s = Snapshot.EMPTY;
         }
+        this.snapshot = s;
     }
 
     public static MappingRegistry get() {
         return INSTANCE;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> domain(String domain) {
-        Object d = root.get(domain.toLowerCase(Locale.ROOT));
-        return d instanceof Map ? (Map<String, Object>) d : Map.of();
+    /* =========================
+       编译后的快照
+       ========================= */
+
+    /** 单个 domain 的映射（全部不可变） */
+    private static final class DomainMappings {
+        /** 列(table.col 小写) -> 原样 key -> 值 */
+        final Map<String, Map<String, String>> exact;
+        /** 列(table.col 小写) -> 小写 key -> 值（exact 没命中时再查） */
+        final Map<String, Map<String, String>> folded;
+        /** 原样列名 与 归一列名 -> 允许值 */
+        final Map<String, Object> allowedValues;
+        final Map<String, String> tableAliases;
+        final String enumPrompt;
+        final RewriteSettings rewrite;
+
+        DomainMappings(Map<String, Map<String, String>> exact,
+                       Map<String, Map<String, String>> folded,
+                       Map<String, Object> allowedValues,
+                       Map<String, String> tableAliases,
+                       String enumPrompt,
+                       RewriteSettings rewrite) {
+            this.exact = exact;
+            this.folded = folded;
+            this.allowedValues = allowedValues;
+            this.tableAliases = tableAliases;
+            this.enumPrompt = enumPrompt;
+            this.rewrite = rewrite;
+        }
+
+        static final DomainMappings EMPTY =
+                new DomainMappings(Map.of(), Map.of(), Map.of(), Map.of(), "", RewriteSettings.EMPTY);
+    }
+
+    /**
+     * 一个域的 rewrite 段（全部不可变，键小写）。重新加载后是新对象，使用方按引用判断要不要重建缓存。
+     */
+    public static final class RewriteSettings {
+        public final Map<String, String> columnRenames;
+        public final Map<String, String> englishValues;
+        /** 表名 -> 逗号分隔的列 */
+        public final Map<String, String> defaultProjections;
+        public final List<String> listingObjects;
+        private final Set<String> disabled;
+        /** 大写方言名 -> 规则名 */
+        private final Map<String, Set<String>> disabledByDialect;
+
+        RewriteSettings(Map<String, String> columnRenames, Map<String, String> englishValues,
+                        Map<String, String> defaultProjections, List<String> listingObjects,
+                        Set<String> disabled, Map<String, Set<String>> disabledByDialect) {
+            this.columnRenames = columnRenames;
+            this.englishValues = englishValues;
+            this.defaultProjections = defaultProjections;
+            this.listingObjects = listingObjects;
+            this.disabled = disabled;
+            this.disabledByDialect = disabledByDialect;
+        }
+
+        public static final RewriteSettings EMPTY =
+                new RewriteSettings(Map.of(), Map.of(), Map.of(), List.of(), Set.of(), Map.of());
+
+        /** @param dialect 方言名（MYSQL / POSTGRESQL），未知为 null */
+        public boolean isDisabled(String rule, String dialect) {
+            if (disabled.contains(rule)) return true;
+            return dialect != null && disabledByDialect.getOrDefault(dialect.toUpperCase(Locale.ROOT), Set.of())
+                    .contains(rule);
+        }
+    }
+
+    private static final class Snapshot {
+        /** 小写 domain -> 映射 */
+        final Map<String, DomainMappings> domains;
+
+        Snapshot(Map<String, DomainMappings> domains) {
+            this.domains = domains;
+        }
+
+        static final Snapshot EMPTY = new Snapshot(Map.of());
+    }
+
+    private DomainMappings domain(String domain) {
+        if (domain == null) return DomainMappings.EMPTY;
+        String key = domain.trim().toLowerCase(Locale.ROOT);
+        DomainMappings dm = snapshot.domains.get(key);
+        if (dm == null) dm = extra.getOrDefault(key, DomainMappings.EMPTY);
+        return dm;
     }
 
     /* =========================
        A. 枚举值映射
        ========================= */
-    @SuppressWarnings("unchecked")
     public Optional<String> mapValue(String domain, String fullColumn, String input) {
         if (input == null) return Optional.empty();
 
-        Map<String, Object> dm = domain(domain);
-        Object vm = dm.get("value_mapping");
-        if (!(vm instanceof Map)) return Optional.empty();
-
-        Map<String, Object> valueMap = (Map<String, Object>) vm;
-
+        DomainMappings dm = domain(domain);
         String colKey = normalizeFullColumn(fullColumn);
-        Object colMap = valueMap.get(colKey);
-        if (!(colMap instanceof Map)) return Optional.empty();
-
-        Map<String, Object> m = (Map<String, Object>) colMap;
 
         String key = input.trim();
-        Object v = m.get(key);
-        if (v == null) v = m.get(key.toLowerCase(Locale.ROOT));
-        if (v == null) v = m.get(key.toUpperCase(Locale.ROOT));
-        if (v == null) return Optional.empty();
+        Map<String, String> exact = dm.exact.get(colKey);
+        if (exact == null) return Optional.empty();
 
-        return Optional.of(String.valueOf(v));
+        String v = exact.get(key);
+        if (v == null) v = dm.folded.get(colKey).get(key.toLowerCase(Locale.ROOT));
+        return Optional.ofNullable(v);
     }
 
-    private String normalizeFullColumn(String fullColumn) {
+    private static String normalizeFullColumn(String fullColumn) {
         if (fullColumn == null) return "";
         String s = fullColumn.trim();
         // public.clients.status -> clients.status
-        if (countDots(s) >= 2) {
-            s = s.substring(s.indexOf('.') + 1);
+        int first = s.indexOf('.');
+        if (first >= 0 && s.indexOf('.', first + 1) >= 0) {
+            s = s.substring(first + 1);
         }
         return s.toLowerCase(Locale.ROOT);
     }
 
-    private int countDots(String s) {
-        int c = 0;
-        for (char ch : s.toCharArray()) if (ch == '.') c++;
-        return c;
-    }
-
-
     /* =========================
        B. allowed_values（枚举/范围）
        ========================= */
-    @SuppressWarnings("unchecked")
     public Optional<Object> allowedValues(String domain, String fullColumn) {
-        Map<String, Object> dm = domain(domain);
-        Object av = dm.get("allowed_values");
-        if (!(av instanceof Map)) return Optional.empty();
-
-        return Optional.ofNullable(((Map<String, Object>) av).get(fullColumn));
+        if (fullColumn == null) return Optional.empty();
+        Map<String, Object> av = domain(domain).allowedValues;
+        Object v = av.get(fullColumn);
+        if (v == null) v = av.get(normalizeFullColumn(fullColumn));
+        return Optional.ofNullable(v);
     }
 
     /* =========================
        C. 表别名
        ========================= */
-    @SuppressWarnings("unchecked")
     public Map<String, String> tableAliases(String domain) {
-        Map<String, Object> dm = domain(domain);
-        Object ta = dm.get("table_alias");
-        if (!(ta instanceof Map)) return Map.of();
+        return domain(domain).tableAliases;
+    }
 
-        Map<String, String> res = new HashMap<>();
-        ((Map<String, Object>) ta).forEach((k, v) -> res.put(k, String.valueOf(v)));
-        return res;
+    /** 该域 mapping 里的 rewrite 段；没配时是 RewriteSettings.EMPTY */
+    public RewriteSettings rewriteSettings(String domain) {
+        return domain(domain).rewrite;
     }
 
-    @SuppressWarnings("unchecked")
+    /** 预渲染好的枚举约束片段（加载时生成） */
     public String buildEnumConstraintPrompt(String domain) {
-        Map<String, Object> dm = domain(domain);
-        Object vm = dm.get("value_mapping");
-        if (!(vm instanceof Map)) return "";
+        return domain(domain).enumPrompt;
+    }
 
-        Map<String, Object> valueMap = (Map<String, Object>) vm;
+    /* =========================
+       D. 加载 / 热更新
+       ========================= */
+
+    /**
+     * 从外部文件重新加载并原子替换；path 为 null 时重新读 classpath:mapping.yml。
+     * 解析/编译失败时保留旧快照并返回 false。
+     */
+    public boolean reload(Path path) {
+        try {
+            Map<String, Object> root;
+            if (path == null) {
+                root = loadClasspath();
+            } else {
+                try (InputStream in = Files.newInputStream(path)) {
+                    root = new Yaml().load(in);
+                }
+            }
+            Snapshot next = compile(root);
+            this.snapshot = next;
+            this.source = path;
+            logger.info("[mapping] reloaded from {}, domains={}",
+                    path == null ? "classpath:mapping.yml" : path, next.domains.keySet());
+            return true;
+        } catch (Exception e) {
+            logger.error("[mapping] reload failed from {}, keep previous snapshot", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * 登记单个域的映射（内容同 mapping.yml 里一个域下面的部分），编译后整体替换 extra。
+     * 编译失败返回 false，原来的保持不变。
+     */
+    public synchronized boolean registerDomain(String domain, Map<?, ?> body) {
+        try {
+            Map<String, DomainMappings> next = new HashMap<>(extra);
+            next.put(domain.trim().toLowerCase(Locale.ROOT), compileDomain(body));
+            this.extra = Map.copyOf(next);
+            logger.info("[mapping] registered domain {}", domain);
+            return true;
+        } catch (Exception e) {
+            logger.error("[mapping] register domain {} failed", domain, e);
+            return false;
+        }
+    }
+
+    /** 当前快照来源，null 表示 classpath */
+    public Path source() {
+        return source;
+    }
+
+    private static Map<String, Object> loadClasspath() throws Exception {
+        try (InputStream in = new ClassPathResource("mapping.yml").getInputStream()) {
+            return new Yaml().load(in);
+        }
+    }
+
+    private static Snapshot compile(Map<String, Object> root) {
+        if (root == null) return Snapshot.EMPTY;
+
+        Map<String, DomainMappings> domains = new HashMap<>();
+        root.forEach((name, body) -> {
+            if (body instanceof Map<?, ?> dm) {
+                domains.put(String.valueOf(name).trim().toLowerCase(Locale.ROOT), compileDomain(dm));
+            }
+        });
+        return new Snapshot(Map.copyOf(domains));
+    }
+
+    private static DomainMappings compileDomain(Map<?, ?> dm) {
+        Map<String, Map<String, String>> exact = new HashMap<>();
+        Map<String, Map<String, String>> folded = new HashMap<>();
+
+        if (dm.get("value_mapping") instanceof Map<?, ?> valueMap) {
+            valueMap.forEach((col, mappingObj) -> {
+                if (!(mappingObj instanceof Map<?, ?> m)) return;
+                Map<String, String> e = new HashMap<>();
+                Map<String, String> f = new HashMap<>();
+                m.forEach((k, v) -> {
+                    if (k == null || v == null) return;
+                    String key = String.valueOf(k).trim();
+                    e.put(key, String.valueOf(v));
+                    f.putIfAbsent(key.toLowerCase(Locale.ROOT), String.valueOf(v));
+                });
+                String colKey = normalizeFullColumn(String.valueOf(col));
+                exact.put(colKey, Map.copyOf(e));
+                folded.put(colKey, Map.copyOf(f));
+            });
+        }
+
+        Map<String, Object> allowed = new HashMap<>();
+        if (dm.get("allowed_values") instanceof Map<?, ?> av) {
+            av.forEach((col, v) -> {
+                if (col == null || v == null) return;
+                allowed.put(String.valueOf(col), v);
+                allowed.putIfAbsent(normalizeFullColumn(String.valueOf(col)), v);
+            });
+        }
+
+        Map<String, String> aliases = new HashMap<>();
+        if (dm.get("table_alias") instanceof Map<?, ?> ta) {
+            ta.forEach((k, v) -> {
+                if (k != null && v != null) aliases.put(String.valueOf(k), String.valueOf(v));
+            });
+        }
+
+        return new DomainMappings(Map.copyOf(exact), Map.copyOf(folded), Map.copyOf(allowed),
+                Map.copyOf(aliases), renderEnumPrompt(dm.get("value_mapping")), compileRewrite(dm.get("rewrite")));
+    }
+
+    private static RewriteSettings compileRewrite(Object section) {
+        if (!(section instanceof Map<?, ?> rw)) return RewriteSettings.EMPTY;
+        Map<String, Set<String>> byDialect = new HashMap<>();
+        if (rw.get("dialects") instanceof Map<?, ?> dialects) {
+            dialects.forEach((d, body) -> {
+                if (d != null && body instanceof Map<?, ?> b) {
+                    byDialect.put(String.valueOf(d).trim().toUpperCase(Locale.ROOT), names(b.get("disabled")));
+                }
+            });
+        }
+        return new RewriteSettings(lowerKeys(rw.get("column_rename")), lowerKeys(rw.get("english_values")),
+                lowerKeys(rw.get("default_projection")), List.copyOf(names(rw.get("listing_objects"))),
+                names(rw.get("disabled")), Map.copyOf(byDialect));
+    }
+
+    private static Map<String, String> lowerKeys(Object o) {
+        Map<String, String> out = new HashMap<>();
+        if (o instanceof Map<?, ?> m) {
+            m.forEach((k, v) -> {
+                if (k != null && v != null) {
+                    out.put(String.valueOf(k).trim().toLowerCase(Locale.ROOT), String.valueOf(v).trim());
+                }
+            });
+        }
+        return Map.copyOf(out);
+    }
+
+    private static Set<String> names(Object o) {
+        Set<String> out = new LinkedHashSet<>();
+        if (o instanceof Collection<?> c) {
+            for (Object x : c) {
+                if (x != null && !String.valueOf(x).isBlank()) out.add(String.valueOf(x).trim());
+            }
+        }
+        return Collections.unmodifiableSet(out);
+    }
+
+    private static String renderEnumPrompt(Object vm) {
+        if (!(vm instanceof Map<?, ?> valueMap)) return "";
 
         StringBuilder sb = new StringBuilder();
         sb.append("【枚举值强约束（必须严格遵守）】\n");
 
         valueMap.forEach((col, mappingObj) -> {
-            if (!(mappingObj instanceof Map)) return;
-
-            Map<?, ?> m = (Map<?, ?>) mappingObj;
+            if (!(mappingObj instanceof Map<?, ?> m)) return;
 
             // 允许值集合（把各种类型都转成字符串）
             Set<String> uniq = new LinkedHashSet<>();
@@ -126,22 +372,18 @@ public class MappingRegistry {
                 uniq.add(String.valueOf(v));
             }
 
-            sb.append("- ").append(String.valueOf(col))
+            sb.append("- ").append(col)
                     .append(" 只允许使用以下编码值：")
                     .append(String.join(", ", uniq))
                     .append("\n");
 
             sb.append("  语义映射规则：\n");
-            m.forEach((k, v) -> {
-                sb.append("  - ").append(String.valueOf(k))
-                        .append(" → '").append(String.valueOf(v)).append("'\n");
-            });
+            m.forEach((k, v) -> sb.append("  - ").append(k)
+                    .append(" → '").append(v).append("'\n"));
         });
 
         sb.append("- 禁止在 SQL 中直接使用自然语言值（如 Female / Male / 女 / 男）\n");
         sb.append("- 禁止在 SQL 中直接使用英汉翻译值（如 Cancelled）\n");
         return sb.toString();
     }
-
-
 }
@@ -0,0 +1,141 @@
+package com.intelligent_data_analysis_system.mapping;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.intelligent_data_analysis_system.domain.finance.entity.*;
+import com.intelligent_data_analysis_system.domain.healthcare.entity.*;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * 表结构目录：从 domain/{finance,healthcare}/entity 上的 MyBatis-Plus 注解反射出来（表名、主键、列、列类型）。
+ * 给 SQL 改写/优化规则判断“这是不是主键”“这是不是布尔列”用，不依赖数据库连接。
+ * app.domains 里新增的域没有实体类，第一次执行该域的查询时按数据库元数据登记进来（SchemaTextProvider.loadCatalog）。
+ */
+public class SchemaCatalog {
+
+    private static final SchemaCatalog INSTANCE = new SchemaCatalog();
+
+    /** 单表信息 */
+    public static class TableInfo {
+        public final String name;
+        public final String primaryKey;
+        /** 列名 -> Java 类型（LinkedHashMap，保持实体字段顺序） */
+        public final Map<String, Class<?>> columns;
+
+        public TableInfo(String name, String primaryKey, Map<String, Class<?>> columns) {
+            this.name = name;
+            this.primaryKey = primaryKey;
+            this.columns = Collections.unmodifiableMap(columns);
+        }
+
+        public boolean hasColumn(String column) {
+            return column != null && columns.containsKey(column.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /** 大写 domain -> 表名 -> 表信息；登记时整体替换（写少读多，读不加锁） */
+    private volatile Map<String, Map<String, TableInfo>> domains = Map.of();
+
+    private SchemaCatalog() {
+        register("FINANCE", Clients.class, Counterparties.class, Holdings.class, Managers.class,
+                Portfolios.class, Products.class, RiskMetrics.class, Transactions.class);
+        register("HEALTHCARE", BillingTransactions.class, DepartmentsWards.class, MedicalEncounters.class,
+                MedicalEquipmentUsage.class, MedicalOrders.class, MedicalStaff.class,
+                PatientMasterIndex.class, PharmacyInventory.class);
+    }
+
+    public static SchemaCatalog get() {
+        return INSTANCE;
+    }
+
+    private void register(String domain, Class<?>... entities) {
+        Map<String, TableInfo> tables = new LinkedHashMap<>();
+        for (Class<?> c : entities) {
+            TableName tn = c.getAnnotation(TableName.class);
+            if (tn == null) continue;
+
+            String pk = null;
+            Map<String, Class<?>> cols = new LinkedHashMap<>();
+            for (Field f : c.getDeclaredFields()) {
+                TableId id = f.getAnnotation(TableId.class);
+                if (id != null) {
+                    pk = id.value().toLowerCase(Locale.ROOT);
+                    cols.put(pk, f.getType());
+                    continue;
+                }
+                TableField tf = f.getAnnotation(TableField.class);
+                if (tf != null && tf.exist() && !tf.value().isBlank()) {
+                    cols.put(tf.value().toLowerCase(Locale.ROOT), f.getType());
+                }
+            }
+
+            String name = tn.value().toLowerCase(Locale.ROOT);
+            tables.put(name, new TableInfo(name, pk, cols));
+        }
+        registerTables(domain, tables.values());
+    }
+
+    /** 登记（或整体替换）一个域的表；表名、列名按小写存 */
+    public synchronized void registerTables(String domain, Collection<TableInfo> tables) {
+        Map<String, TableInfo> byName = new LinkedHashMap<>();
+        for (TableInfo ti : tables) byName.put(ti.name.toLowerCase(Locale.ROOT), ti);
+        Map<String, Map<String, TableInfo>> next = new LinkedHashMap<>(domains);
+        next.put(domain.toUpperCase(Locale.ROOT), Collections.unmodifiableMap(byName));
+        domains = Collections.unmodifiableMap(next);
+    }
+
+    /** 这个域有没有表结构（内置实体或已按元数据登记） */
+    public boolean hasDomain(String domain) {
+        return domain != null && domains.containsKey(domain.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param domain FINANCE / HEALTHCARE / 注册表里的域；为空时在所有域里找（内置两个域表名不重复）
+     */
+    public Optional<TableInfo> table(String domain, String table) {
+        if (table == null) return Optional.empty();
+        String t = unquote(table);
+        for (Map.Entry<String, Map<String, TableInfo>> e : domains.entrySet()) {
+            if (domain != null && !domain.isBlank() && !e.getKey().equalsIgnoreCase(domain)) continue;
+            TableInfo ti = e.getValue().get(t);
+            if (ti != null) return Optional.of(ti);
+        }
+        return Optional.empty();
+    }
+
+    /** domain 为空时返回所有域的表 */
+    public Collection<TableInfo> tables(String domain) {
+        if (domain == null || domain.isBlank()) {
+            List<TableInfo> all = new ArrayList<>();
+            for (Map<String, TableInfo> m : domains.values()) all.addAll(m.values());
+            return all;
+        }
+        return domains.getOrDefault(domain.toUpperCase(Locale.ROOT), Map.of()).values();
+    }
+
+    /** 主键列名（小写），未知表返回 null */
+    public String primaryKey(String domain, String table) {
+        return table(domain, table).map(ti -> ti.primaryKey).orElse(null);
+    }
+
+    /** 某列在该域任意表中是否是 Boolean 类型（is_active / is_paid ...） */
+    public boolean isBooleanColumn(String domain, String column) {
+        if (column == null) return false;
+        String c = unquote(column);
+        for (TableInfo ti : tables(domain)) {
+            Class<?> type = ti.columns.get(c);
+            if (type == Boolean.class || type == boolean.class) return true;
+        }
+        return false;
+    }
+
+    private static String unquote(String identifier) {
+        String s = identifier.trim();
+        int dot = s.lastIndexOf('.');
+        if (dot >= 0) s = s.substring(dot + 1);
+        return s.replace("`", "").replace("\"", "").toLowerCase(Locale.ROOT);
+    }
+}
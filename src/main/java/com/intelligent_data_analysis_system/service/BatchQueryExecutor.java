@@ -0,0 +1,221 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.BatchDataSources;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.Generator.SqlGuard;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 多条只读查询一次往返：借一个连接，把各条 SELECT 拼成一个多语句 PreparedStatement 发出去，按顺序读多个结果集。
+ *
+ * - PgJDBC：一个 PreparedStatement 里的多条语句拆成多个 Parse/Bind/Execute，只在最后发一次 Sync（流水线），
+ *   整批在一个隐式事务里执行，各条看到同一个快照
+ * - MySQL：借 BatchDataSources 里 allowMultiQueries=true 的专用连接池（app.query.batch.mysql-multi-queries 打开时才有），
+ *   多语句一次发出、服务端依次返回多个结果集；多语句 SQL 走客户端预编译。其它连接池都不开多语句
+ *
+ * 拼接前每条语句都要重新过 SqlGuard（单条只读语句），多语句只在这里由我们自己拼出来。
+ * 中途有一条失败时，PG 整批的结果都拿不到、MySQL 后面的语句不再执行，所以从失败处起改为逐条执行（仍在同一个连接上），
+ * 每条单独给出结果或错误。不支持多语句时（MySQL 没开 allowMultiQueries）直接逐条执行，省的是借连接的开销。
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchQueryExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchQueryExecutor.class);
+
+    /** 一条待执行的语句（命名参数） */
+    public static final class Statement {
+        public final String sql;
+        public final Map<String, ?> params;
+
+        public Statement(String sql, Map<String, ?> params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /** 一条语句的结果：result / error 二选一 */
+    public static final class Outcome {
+        public final ColumnarResult result;
+        public final RuntimeException error;
+
+        private Outcome(ColumnarResult result, RuntimeException error) {
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    public static final class Result {
+        public final List<Outcome> outcomes;
+        /** 实际的数据库往返次数 */
+        public final int roundTrips;
+        /** PIPELINED（一次发出）/ SEQUENTIAL（逐条）/ MIXED（中途失败后改逐条） */
+        public final String mode;
+
+        Result(List<Outcome> outcomes, int roundTrips, String mode) {
+            this.outcomes = outcomes;
+            this.roundTrips = roundTrips;
+            this.mode = mode;
+        }
+    }
+
+    /** 转成 ? 占位符的语句 */
+    private static final class Bound {
+        final String sql;
+        final Object[] args;
+
+        Bound(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final ObjectProvider<BatchDataSources> batchDataSources;
+
+    /**
+     * 在调用线程里借连接执行（DomainContext / WorkloadContext 由调用方设好，照常经过负载隔离舱）
+     *
+     * @param timeoutSeconds 整批的语句超时（0 不设）
+     */
+    public Result execute(List<Statement> statements, Deadline deadline, int timeoutSeconds) {
+        if (statements.isEmpty()) return new Result(List.of(), 0, "PIPELINED");
+        List<Bound> bound = new ArrayList<>(statements.size());
+        for (Statement s : statements) bound.add(bind(s));
+
+        BatchDataSources sources = batchDataSources.getIfAvailable();
+        DataSource multiQuery = sources == null || bound.size() < 2 ? null : sources.multiQuery();
+        JdbcTemplate jdbc = multiQuery != null ? new JdbcTemplate(multiQuery) : namedJdbc.getJdbcTemplate();
+        return jdbc.execute((ConnectionCallback<Result>) con -> {
+            List<Outcome> out = new ArrayList<>(bound.size());
+            int roundTrips = 0;
+            boolean pipelined = bound.size() > 1 && supportsMultiStatements(con, multiQuery != null);
+            if (pipelined) {
+                roundTrips++;
+                try {
+                    runCombined(con, bound, timeoutSeconds, deadline, out);
+                    return new Result(out, roundTrips, "PIPELINED");
+                } catch (SQLException e) {
+                    // 已读到的结果集保留，从第一条没拿到结果的语句起逐条执行
+                    logger.info("[batch] pipelined batch failed at statement {}/{}, fall back to sequential: {}",
+                            out.size() + 1, bound.size(), e.getMessage());
+                }
+            }
+            for (int i = out.size(); i < bound.size(); i++) {
+                Bound b = bound.get(i);
+                if (deadline.isExpired()) {
+                    out.add(new Outcome(null, new QueryTimeoutException("批量查询超过截止时间，未执行")));
+                    continue;
+                }
+                roundTrips++;
+                try {
+                    out.add(new Outcome(runSingle(con, b, timeoutSeconds, deadline), null));
+                } catch (SQLException e) {
+                    out.add(new Outcome(null, jdbc.getExceptionTranslator().translate("batch statement", b.sql, e)));
+                }
+            }
+            return new Result(out, roundTrips, pipelined ? "MIXED" : "SEQUENTIAL");
+        });
+    }
+
+    private static Bound bind(Statement s) {
+        ParsedSql parsed = NamedParameterUtils.parseSqlStatement(s.sql);
+        MapSqlParameterSource source = new MapSqlParameterSource(s.params == null ? Map.of() : s.params);
+        String jdbcSql = NamedParameterUtils.substituteNamedParameters(parsed, source).trim();
+        if (jdbcSql.endsWith(";")) jdbcSql = jdbcSql.substring(0, jdbcSql.length() - 1).trim();
+        // 要拼进多语句里的每一段都必须是单条只读语句（按两个引擎的词法都校验一遍：拼接后由哪边执行取决于连接）
+        SqlGuard.validateReadOnlySingleStatement(jdbcSql);
+        return new Bound(jdbcSql, NamedParameterUtils.buildValueArray(parsed, source, null));
+    }
+
+    /** @param multiQueryPool 连接是不是从多语句专用池借的（MySQL 只有这个池开了 allowMultiQueries） */
+    private static boolean supportsMultiStatements(Connection con, boolean multiQueryPool) throws SQLException {
+        String product = con.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("postgres")) return true;
+        return product.contains("mysql") && multiQueryPool;
+    }
+
+    /** 拼成一条多语句一次执行，按顺序读结果集，每读到一个追加到 out */
+    private static void runCombined(Connection con, List<Bound> bound, int timeoutSeconds, Deadline deadline,
+                                    List<Outcome> out) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        for (Bound b : bound) {
+            // 分号单独一行：语句末尾的行注释不会把它注释掉
+            if (sql.length() > 0) sql.append("\n;\n");
+            sql.append(b.sql);
+            args.addAll(List.of(b.args));
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql.toString());
+             Deadline.Registration ignored = deadline.onCancel(cancelOf(ps))) {
+            prepare(ps, args.toArray(), timeoutSeconds);
+            boolean isResultSet = ps.execute();
+            while (out.size() < bound.size()) {
+                if (isResultSet) {
+                    try (ResultSet rs = ps.getResultSet()) {
+                        out.add(new Outcome(ColumnarResult.from(rs), null));
+                    }
+                } else if (ps.getUpdateCount() == -1) {
+                    break;
+                }
+                isResultSet = ps.getMoreResults();
+            }
+        }
+        if (out.size() < bound.size()) {
+            throw new SQLException("多语句只返回了 " + out.size() + " 个结果集，预期 " + bound.size());
+        }
+    }
+
+    private static ColumnarResult runSingle(Connection con, Bound b, int timeoutSeconds, Deadline deadline)
+            throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(b.sql);
+             Deadline.Registration ignored = deadline.onCancel(cancelOf(ps))) {
+            prepare(ps, b.args, timeoutSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                return ColumnarResult.from(rs);
+            }
+        }
+    }
+
+    /** 截止时间被取消时停掉语句；登记跟着语句的 try 块注销（先于语句关闭），同一个截止时间上的后续语句不会攒下旧钩子 */
+    private static Runnable cancelOf(PreparedStatement ps) {
+        return () -> {
+            try {
+                ps.cancel();
+            } catch (SQLException e) {
+                logger.debug("Statement cancel failed: {}", e.getMessage());
+            }
+        };
+    }
+
+    private static void prepare(PreparedStatement ps, Object[] args, int timeoutSeconds) throws SQLException {
+        if (timeoutSeconds > 0) ps.setQueryTimeout(timeoutSeconds);
+        for (int i = 0; i < args.length; i++) {
+            StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import com.intelligent_data_analysis_system.utils.Generator.SqlGuard;
+import com.intelligent_data_analysis_system.utils.Optimizer.ExplainPlan;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 执行前的代价准入：对生成的 SQL 先跑 EXPLAIN（MySQL FORMAT=JSON / PG FORMAT JSON），按估计行数、代价、全表扫描判断
+ *
+ * - ADMIT：都在阈值内
+ * - REWRITE：PG 上超阈值，但计划里没有排序 / 聚合等阻塞算子，把 LIMIT 收紧到 rewrite-limit 后再 EXPLAIN 一次确认在阈值内；
+ *   结果只有前 rewrite-limit 行，响应的 admission 里写明 truncatedTo
+ * - ADMIT 也包括：超阈值、计划可流式，且 SQL 自己的 LIMIT 已经不超过 rewrite-limit（取够行就停，不改结果）
+ * - REJECT：抛 BusinessException，消息里写明超了哪一项、哪些表在全表扫描。
+ *   MySQL 超阈值且要收紧 LIMIT 的也拒绝：它的估计值不随 LIMIT 变，确认不了改写后的代价，收紧了还会截断结果
+ * - SKIPPED：准入关闭、非关系库，或 EXPLAIN 本身失败（不因为拿不到计划挡住查询）
+ *
+ * 阈值见 app.query.admission.thresholds：default ← 方言 ← 负载类别 ← 域 ← 域.类别，逐项覆盖（yml 里带点的键要写成 "[FINANCE.BATCH]"）。
+ * 计划按 (域, 方言, SQL 指纹) 缓存：参数化后同形状的 SQL 共用一份计划，不用每次都 EXPLAIN。
+ */
+@Component
+public class CostAdmissionGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(CostAdmissionGuard.class);
+
+    public enum Verdict { ADMIT, REWRITE, REJECT, SKIPPED }
+
+    public static final class Decision {
+        public final Verdict verdict;
+        /** 要执行的 SQL（REWRITE 时是收紧 LIMIT 后的） */
+        public final String sql;
+        public final ExplainPlan plan;
+        public final String reason;
+        public final boolean planCached;
+        /** REWRITE 时结果最多几行，否则 0 */
+        public final int truncatedTo;
+
+        private Decision(Verdict verdict, String sql, ExplainPlan plan, String reason, boolean planCached) {
+            this(verdict, sql, plan, reason, planCached, 0);
+        }
+
+        private Decision(Verdict verdict, String sql, ExplainPlan plan, String reason, boolean planCached,
+                         int truncatedTo) {
+            this.verdict = verdict;
+            this.sql = sql;
+            this.plan = plan;
+            this.reason = reason;
+            this.planCached = planCached;
+            this.truncatedTo = truncatedTo;
+        }
+
+        /** 响应里的 admission 字段 */
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("decision", verdict.name());
+            if (reason != null) m.put("reason", reason);
+            if (truncatedTo > 0) m.put("truncatedTo", truncatedTo);
+            if (plan != null) {
+                m.put("estimatedRows", plan.maxRows);
+                m.put("cost", plan.cost);
+                List<String> full = new ArrayList<>();
+                for (ExplainPlan.TableAccess t : plan.fullScans()) full.add(t.table);
+                if (!full.isEmpty()) m.put("fullScans", full);
+                m.put("planCached", planCached);
+            }
+            return m;
+        }
+    }
+
+    private static final class CachedPlan {
+        final ExplainPlan plan;
+        final long expiresAt;
+
+        CachedPlan(ExplainPlan plan, long expiresAt) {
+            this.plan = plan;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final QueryProperties queryProperties;
+
+    /** 访问序 LRU，条数上限 plan-cache-size */
+    private final LinkedHashMap<String, CachedPlan> plans = new LinkedHashMap<>(256, 0.75f, true);
+
+    public CostAdmissionGuard(NamedParameterJdbcTemplate namedJdbc, QueryProperties queryProperties) {
+        this.namedJdbc = namedJdbc;
+        this.queryProperties = queryProperties;
+    }
+
+    public boolean isEnabled() {
+        return queryProperties.getAdmission().isEnabled();
+    }
+
+    /**
+     * 判断一条（已参数化的）SQL 能不能执行。调用线程上要已经设好 DomainContext（EXPLAIN 走同一个数据源）。
+     *
+     * @param allowRewrite false 时只放行 / 拒绝（流式导出不改用户要的行数）
+     * @throws BusinessException 拒绝时
+     */
+    public Decision check(DataSourceDomain domain, SqlDialect dialect, String sql, Map<String, ?> params,
+                          String fingerprint, WorkloadClass workload, boolean allowRewrite) {
+        QueryProperties.Admission cfg = queryProperties.getAdmission();
+        if (!cfg.isEnabled() || dialect == null) return new Decision(Verdict.SKIPPED, sql, null, null, false);
+
+        String key = domain.name() + "|" + dialect.name() + "|" + fingerprint;
+        boolean[] cached = {false};
+        ExplainPlan plan = plan(key, dialect, sql, params, cached);
+        if (plan == null) return new Decision(Verdict.SKIPPED, sql, null, "EXPLAIN 失败，未做准入判断", false);
+
+        QueryProperties.Thresholds limits = resolve(domain, dialect, workload);
+        String over = exceeded(plan, limits);
+        if (over == null) return new Decision(Verdict.ADMIT, sql, plan, null, cached[0]);
+
+        if (allowRewrite && plan.streamable && cfg.getRewriteLimit() > 0) {
+            String limited = SqlGuard.ensureLimit(sql, cfg.getRewriteLimit());
+            // ensureLimit 会重新生成 SQL 文本，不能和原文比；原 LIMIT 已经不超过 rewrite-limit 时两次结果相同
+            boolean tightened = !limited.equals(SqlGuard.ensureLimit(sql, cfg.getRewriteLimit() + 1));
+            if (!tightened) {
+                // 自己的 LIMIT 已经够小：没有阻塞算子时执行在取够行后就停（MySQL 的估计值不反映 LIMIT）
+                logger.info("[admission] {} admitted under own LIMIT: {}", domain, over);
+                return new Decision(Verdict.ADMIT, sql, plan, over, cached[0]);
+            }
+            if (dialect == SqlDialect.POSTGRESQL) {
+                // PG 的 Limit 节点会把代价和行数压下来，改写后再看一次；MySQL 看不出来，不改写
+                boolean[] c2 = {false};
+                ExplainPlan p2 = plan(key + "|limit=" + cfg.getRewriteLimit(), dialect, limited, params, c2);
+                if (p2 != null && exceeded(p2, limits) == null) {
+                    logger.info("[admission] {} rewrite LIMIT {}: {}", domain, cfg.getRewriteLimit(), over);
+                    return new Decision(Verdict.REWRITE, limited, p2,
+                            over + "；结果只返回前 " + cfg.getRewriteLimit() + " 行", c2[0], cfg.getRewriteLimit());
+                }
+            }
+        }
+
+        logger.warn("[admission] {} rejected, workload: {}, fingerprint: {}, {}", domain, workload, fingerprint, over);
+        throw new BusinessException(rejectMessage(plan, over));
+    }
+
+    /** 查缓存，没有就 EXPLAIN；失败返回 null */
+    private ExplainPlan plan(String key, SqlDialect dialect, String sql, Map<String, ?> params, boolean[] cached) {
+        long now = System.currentTimeMillis();
+        synchronized (plans) {
+            CachedPlan c = plans.get(key);
+            if (c != null && c.expiresAt > now) {
+                cached[0] = true;
+                return c.plan;
+            }
+        }
+
+        ExplainPlan plan;
+        try {
+            String json = namedJdbc.query(ExplainPlan.explainSql(dialect, sql), params,
+                    rs -> rs.next() ? rs.getString(1) : null);
+            if (json == null) return null;
+            plan = ExplainPlan.parse(dialect, json);
+        } catch (RuntimeException e) {
+            logger.debug("[admission] EXPLAIN failed, admit without plan: {}", e.getMessage());
+            return null;
+        }
+
+        QueryProperties.Admission cfg = queryProperties.getAdmission();
+        long ttl = cfg.getPlanCacheTtl() == null ? 0 : cfg.getPlanCacheTtl().toMillis();
+        if (ttl > 0 && cfg.getPlanCacheSize() > 0) {
+            synchronized (plans) {
+                plans.put(key, new CachedPlan(plan, now + ttl));
+                Iterator<String> it = plans.keySet().iterator();
+                while (plans.size() > cfg.getPlanCacheSize() && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        return plan;
+    }
+
+    /** 超了哪一项；都没超返回 null */
+    private static String exceeded(ExplainPlan plan, QueryProperties.Thresholds t) {
+        if (positive(t.getMaxRows()) && plan.maxRows > t.getMaxRows()) {
+            return "估计中间结果 " + plan.maxRows + " 行，超过上限 " + t.getMaxRows();
+        }
+        if (t.getMaxCost() != null && t.getMaxCost() > 0 && plan.cost > t.getMaxCost()) {
+            return "估计代价 " + Math.round(plan.cost) + "，超过上限 " + Math.round(t.getMaxCost());
+        }
+        if (positive(t.getMaxFullScanRows()) && plan.maxFullScanRows() > t.getMaxFullScanRows()) {
+            return "全表扫描约 " + plan.maxFullScanRows() + " 行，超过上限 " + t.getMaxFullScanRows();
+        }
+        return null;
+    }
+
+    private static boolean positive(Long v) {
+        return v != null && v > 0;
+    }
+
+    private static String rejectMessage(ExplainPlan plan, String over) {
+        StringBuilder sb = new StringBuilder("查询代价过高，已拒绝执行：").append(over);
+        List<ExplainPlan.TableAccess> full = plan.fullScans();
+        if (!full.isEmpty()) sb.append("；全表扫描：").append(full);
+        sb.append("。请补充过滤条件（时间范围、主键 / 索引列）、检查连接条件，或缩小统计范围");
+        return sb.toString();
+    }
+
+    /** default ← 方言 ← 类别 ← 域 ← 域.类别，逐项覆盖 */
+    QueryProperties.Thresholds resolve(DataSourceDomain domain, SqlDialect dialect, WorkloadClass workload) {
+        Map<String, QueryProperties.Thresholds> all = queryProperties.getAdmission().getThresholds();
+        QueryProperties.Thresholds out = new QueryProperties.Thresholds();
+        if (all == null) return out;
+        String cls = workload == null ? WorkloadClass.INTERACTIVE.name() : workload.name();
+        for (String k : List.of("default", dialect.name(), cls, domain.name(), domain.name() + "." + cls)) {
+            QueryProperties.Thresholds t = lookup(all, k);
+            if (t == null) continue;
+            if (t.getMaxRows() != null) out.setMaxRows(t.getMaxRows());
+            if (t.getMaxCost() != null) out.setMaxCost(t.getMaxCost());
+            if (t.getMaxFullScanRows() != null) out.setMaxFullScanRows(t.getMaxFullScanRows());
+        }
+        return out;
+    }
+
+    private static QueryProperties.Thresholds lookup(Map<String, QueryProperties.Thresholds> all, String key) {
+        QueryProperties.Thresholds t = all.get(key);
+        if (t != null) return t;
+        for (Map.Entry<String, QueryProperties.Thresholds> e : all.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(key)) return e.getValue();
+        }
+        return null;
+    }
+
+    /** 清空计划缓存（建索引 / 统计信息更新后） */
+    public void clear() {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        QueryProperties.Admission cfg = queryProperties.getAdmission();
+        m.put("enabled", cfg.isEnabled());
+        synchronized (plans) {
+            m.put("cachedPlans", plans.size());
+        }
+        m.put("planCacheSize", cfg.getPlanCacheSize());
+        m.put("rewriteLimit", cfg.getRewriteLimit());
+        return m;
+    }
+}
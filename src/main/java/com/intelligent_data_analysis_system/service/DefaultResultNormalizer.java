@@ -2,6 +2,7 @@ package com.intelligent_data_analysis_system.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
 import com.intelligent_data_analysis_system.infrastructure.runner.dto.QueryResult;
 import org.springframework.stereotype.Service;
 
@@ -45,20 +46,18 @@ public class DefaultResultNormalizer implements ResultNormalizer {
     }
 
     private List<Map<String, Object>> toStableJsonRows(QueryResult qr) {
-        List<Map<String, Object>> rows = new ArrayList<>();
+        ColumnarResult data = qr.getData();
+        List<Map<String, Object>> rows = new ArrayList<>(data.rowCount());
 
-        // 列名按出现顺序，同时做一个“稳定排序”的列索引（避免同结果不同列顺序）
-        List<String> cols = new ArrayList<>(qr.getColumns());
-        List<String> colsSorted = new ArrayList<>(cols);
-        colsSorted.sort(String.CASE_INSENSITIVE_ORDER);
+        // 列按名字排序（避免同结果不同列顺序），直接记下列号，逐行按列号取值
+        Integer[] order = new Integer[data.columnCount()];
+        for (int c = 0; c < order.length; c++) order[c] = c;
+        Arrays.sort(order, (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(data.column(a), data.column(b)));
 
-        // 行转 map（key 固定为 colsSorted）
-        for (List<Object> r : qr.getRows()) {
+        for (int r = 0; r < data.rowCount(); r++) {
             Map<String, Object> m = new LinkedHashMap<>();
-            for (String c : colsSorted) {
-                int idx = indexOfIgnoreCase(cols, c);
-                Object v = (idx >= 0 && idx < r.size()) ? r.get(idx) : null;
-                m.put(c, normalizeValueRaw(v));
+            for (int c : order) {
+                m.put(data.column(c), normalizeValueRaw(data.get(r, c)));
             }
             rows.add(m);
         }
@@ -68,13 +67,6 @@ public class DefaultResultNormalizer implements ResultNormalizer {
         return rows;
     }
 
-    private int indexOfIgnoreCase(List<String> cols, String target) {
-        for (int i = 0; i < cols.size(); i++) {
-            if (cols.get(i) != null && cols.get(i).equalsIgnoreCase(target)) return i;
-        }
-        return -1;
-    }
-
     private String normalizeValue(Object v) {
         Object nv = normalizeValueRaw(v);
         return nv == null ? "" : String.valueOf(nv);
@@ -0,0 +1,535 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.EngineDataSources;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialectTranspiler;
+import jakarta.annotation.PreDestroy;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.operators.arithmetic.Division;
+import net.sf.jsqlparser.expression.operators.arithmetic.IntegerDivision;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.ComparisonOperator;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 引擎竞速：同一份数据在 MySQL 和 PG 上各有一份，查询转译后两边同时跑，先成功返回的赢，输的那条语句立刻 cancel。
+ *
+ * 按 域|SQL 指纹 记录每个引擎赢了几次：比过 min-races 次后，胜率达到 win-ratio 的引擎固定下来直接跑（不再双倍占连接），
+ * 谁都不占优时走主引擎；固定之后每 rerace-every 次重新比一次，结论超过 learned-ttl 清掉重新学。
+ * 只记输的一方因为慢被取消的场次，另一路先失败（连不上、借不到连接）的不战而胜不计入。
+ *
+ * 只比单层 SELECT、且输出列都是列名或带别名（两个引擎给表达式列起的默认列名不同）；另一个引擎赢时按主引擎的列名规则
+ * 逐列改名，下游看到的列名和只跑主引擎时一样。另一个引擎的连接池见 EngineDataSources，和主引擎一样经过负载隔离舱、
+ * 会话配置和域并发上限。
+ *
+ * 两个引擎算出来可能不一样的查询不比（见 divergence）：谁赢取决于谁快，学到偏好后结果就固定成了那个引擎的语义。
+ */
+@Component
+public class EngineRacer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineRacer.class);
+
+    public enum Mode {
+        /** 两个引擎同时跑 */
+        RACE,
+        /** 按学到的结论只跑一个 */
+        LEARNED
+    }
+
+    /** 一个查询的竞速计划 */
+    public static final class Plan {
+        public final String key;
+        public final Mode mode;
+        public final SqlDialect primary;
+        public final SqlDialect alternate;
+        /** LEARNED 时选中的引擎 */
+        public final SqlDialect chosen;
+        /** 转译到另一个引擎的 SQL */
+        public final String alternateSql;
+        /** 主引擎下的输出列名；空表示两边列名本来就一样（SELECT *），不用改 */
+        final List<String> labels;
+
+        /** 本请求自己执行时的结果（合并到别人的执行上时为空） */
+        volatile SqlDialect winner;
+        volatile long winnerMs = -1;
+        volatile String loserError;
+
+        Plan(String key, Mode mode, SqlDialect primary, SqlDialect alternate, SqlDialect chosen,
+             String alternateSql, List<String> labels) {
+            this.key = key;
+            this.mode = mode;
+            this.primary = primary;
+            this.alternate = alternate;
+            this.chosen = chosen;
+            this.alternateSql = alternateSql;
+            this.labels = labels;
+        }
+
+        /** 要不要动另一个引擎（LEARNED 且选中主引擎时按普通查询执行） */
+        public boolean usesAlternate() {
+            return mode == Mode.RACE || chosen == alternate;
+        }
+
+        /** 响应里的 engine 字段 */
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("mode", mode.name());
+            SqlDialect engine = mode == Mode.LEARNED ? chosen : winner;
+            if (engine != null) m.put("engine", engine.name());
+            m.put("primary", primary.name());
+            m.put("alternate", alternate.name());
+            if (winnerMs >= 0) m.put("winnerMs", winnerMs);
+            if (loserError != null) m.put("loserError", loserError);
+            return m;
+        }
+    }
+
+    /** 一路执行：把语句的取消钩子交给 onCancel */
+    @FunctionalInterface
+    public interface Leg {
+        ColumnarResult run(Consumer<Runnable> onCancel);
+    }
+
+    private static final class Stats {
+        int races;
+        /** 下标 0 主引擎，1 另一个引擎 */
+        final int[] wins = new int[2];
+        final double[] winMs = new double[2];
+        int runsSinceRace;
+        long learnedAt;
+    }
+
+    private static final class Finish {
+        final int leg;
+        final ColumnarResult result;
+        final long elapsedMs;
+
+        Finish(int leg, ColumnarResult result, long elapsedMs) {
+            this.leg = leg;
+            this.result = result;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    /** 一路的取消钩子：输了的那路在钩子注册之前就被判负时，注册时立刻执行 */
+    private static final class LegCancel implements Consumer<Runnable> {
+        private final List<Runnable> hooks = new CopyOnWriteArrayList<>();
+        private final Consumer<Runnable> parent;
+        private volatile boolean cancelled;
+
+        LegCancel(Consumer<Runnable> parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void accept(Runnable hook) {
+            hooks.add(hook);
+            parent.accept(hook);
+            if (cancelled) runHook(hook);
+        }
+
+        void cancel() {
+            cancelled = true;
+            hooks.forEach(LegCancel::runHook);
+        }
+
+        private static void runHook(Runnable hook) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                logger.debug("[race] cancel hook failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private final QueryProperties queryProperties;
+    private final ObjectProvider<EngineDataSources> engineDataSources;
+    private final ExecutorService pool;
+
+    /** 访问序 LRU，条数上限 max-fingerprints */
+    private final LinkedHashMap<String, Stats> learned = new LinkedHashMap<>(256, 0.75f, true);
+
+    public EngineRacer(QueryProperties queryProperties, ObjectProvider<EngineDataSources> engineDataSources,
+                       TaskThreads taskThreads) {
+        this.queryProperties = queryProperties;
+        this.engineDataSources = engineDataSources;
+        this.pool = taskThreads.unbounded("sql-race");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param dialect 本次执行的方言；和部署的主引擎不同（请求里指定了别的 dbms）时不比
+     * @return 不比（没开、另一个引擎没配库、查询形状不支持）时 null
+     */
+    public Plan plan(DataSourceDomain domain, SqlDialect dialect, String sql, String fingerprint) {
+        QueryProperties.Racing cfg = queryProperties.getRacing();
+        EngineDataSources engines = engineDataSources.getIfAvailable();
+        if (!cfg.isEnabled() || engines == null || dialect != engines.primary()) return null;
+        if (engines.get(domain, engines.alternate()) == null) return null;
+
+        List<String> labels = outputLabels(dialect, sql);
+        if (labels == null) return null;
+        String divergence = divergence(domain.name(), sql);
+        if (divergence != null) {
+            logger.debug("[race] skip ({}): {}", divergence, sql);
+            return null;
+        }
+        String alternateSql = SqlDialectTranspiler.transpile(sql, dialect, engines.alternate(), domain.name());
+
+        String key = domain.name() + "|" + fingerprint;
+        SqlDialect chosen = preferred(key, engines.primary(), engines.alternate(), cfg);
+        return new Plan(key, chosen == null ? Mode.RACE : Mode.LEARNED, engines.primary(), engines.alternate(),
+                chosen, alternateSql, labels);
+    }
+
+    /**
+     * 按计划执行：RACE 两路并发，LEARNED 选中另一个引擎时在调用线程里直接跑。
+     * 两路在竞速线程里执行，绑定调用线程的 ExecutionContext（域换成 domain）
+     * （竞速线程里照样设上，主引擎那路照常经过负载隔离舱）。
+     *
+     * @param parentCancel 外层（SingleFlight.Flight）的取消钩子，两路语句都挂上去
+     * @param primaryLeg   在主引擎上跑 sql
+     * @param alternateLeg 在另一个引擎上跑 plan.alternateSql
+     */
+    public ColumnarResult execute(Plan plan, DataSourceDomain domain, Consumer<Runnable> parentCancel,
+                                  Leg primaryLeg, Leg alternateLeg) {
+        if (plan.mode == Mode.LEARNED) {
+            long t0 = System.currentTimeMillis();
+            ColumnarResult r = plan.chosen == plan.alternate ? alternateLeg.run(parentCancel) : primaryLeg.run(parentCancel);
+            plan.winnerMs = System.currentTimeMillis() - t0;
+            return plan.chosen == plan.alternate ? relabel(plan, r) : r;
+        }
+
+        ExecutionContext ctx = ExecutionContext.current().withDomain(domain);
+        long t0 = System.currentTimeMillis();
+        LegCancel[] cancels = {new LegCancel(parentCancel), new LegCancel(parentCancel)};
+        Leg[] legs = {primaryLeg, alternateLeg};
+        CompletionService<Finish> cs = new ExecutorCompletionService<>(pool);
+        List<Future<Finish>> futures = new ArrayList<>(2);
+        for (int i = 0; i < 2; i++) {
+            int leg = i;
+            futures.add(cs.submit(ctx.wrap(() -> {
+                ColumnarResult r = legs[leg].run(cancels[leg]);
+                return new Finish(leg, r, System.currentTimeMillis() - t0);
+            })));
+        }
+
+        Throwable[] errors = new Throwable[2];
+        try {
+            for (int done = 0; done < 2; done++) {
+                Future<Finish> f = cs.take();
+                int leg = futures.indexOf(f);
+                try {
+                    Finish finish = f.get();
+                    int loser = 1 - finish.leg;
+                    cancels[loser].cancel();
+                    futures.get(loser).cancel(true);
+
+                    SqlDialect winner = finish.leg == 0 ? plan.primary : plan.alternate;
+                    plan.winner = winner;
+                    plan.winnerMs = finish.elapsedMs;
+                    if (errors[loser] != null) {
+                        // 对方先失败了（连不上、借不到连接、语法不支持）：只是不战而胜，不说明谁快，不计入胜负
+                        plan.loserError = errors[loser].getMessage();
+                        logger.info("[race] {} won by forfeit in {}ms ({})", winner, finish.elapsedMs, plan.key);
+                    } else {
+                        record(plan.key, finish.leg, finish.elapsedMs);
+                        logger.info("[race] {} won in {}ms ({})", winner, finish.elapsedMs, plan.key);
+                    }
+                    return finish.leg == 1 ? relabel(plan, finish.result) : finish.result;
+                } catch (ExecutionException e) {
+                    errors[leg] = e.getCause();
+                    logger.debug("[race] {} leg failed: {}", leg == 0 ? plan.primary : plan.alternate,
+                            e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (int i = 0; i < 2; i++) {
+                cancels[i].cancel();
+                futures.get(i).cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new CancellationException("竞速查询等待被中断");
+        }
+
+        // 两路都失败：抛主引擎的错误（修复 / 重试按主引擎的 SQL 来）
+        Throwable cause = errors[0] != null ? errors[0] : errors[1];
+        if (cause instanceof RuntimeException re) throw re;
+        if (cause instanceof Error err) throw err;
+        throw new IllegalStateException(cause);
+    }
+
+    /** 另一个引擎上该域的数据源（plan 返回非空时一定有） */
+    public DataSource alternateDataSource(DataSourceDomain domain, Plan plan) {
+        return engineDataSources.getObject().get(domain, plan.alternate);
+    }
+
+    /** 学到的结论：返回要固定走的引擎；还要比时返回 null */
+    private SqlDialect preferred(String key, SqlDialect primary, SqlDialect alternate, QueryProperties.Racing cfg) {
+        long now = System.currentTimeMillis();
+        synchronized (learned) {
+            Stats s = learned.get(key);
+            if (s == null) return null;
+            if (cfg.getLearnedTtl() != null && now - s.learnedAt > cfg.getLearnedTtl().toMillis()) {
+                learned.remove(key);
+                return null;
+            }
+            if (s.races < Math.max(1, cfg.getMinRaces())) return null;
+            if (cfg.getReraceEvery() > 0 && s.runsSinceRace >= cfg.getReraceEvery()) {
+                s.runsSinceRace = 0;
+                return null;
+            }
+            s.runsSinceRace++;
+            int best = s.wins[1] > s.wins[0] ? 1 : 0;
+            if ((double) s.wins[best] / s.races < cfg.getWinRatio()) return primary;
+            return best == 0 ? primary : alternate;
+        }
+    }
+
+    private void record(String key, int leg, long elapsedMs) {
+        QueryProperties.Racing cfg = queryProperties.getRacing();
+        synchronized (learned) {
+            Stats s = learned.computeIfAbsent(key, k -> {
+                Stats fresh = new Stats();
+                fresh.learnedAt = System.currentTimeMillis();
+                return fresh;
+            });
+            s.races++;
+            s.wins[leg]++;
+            // 赢的时候用了多久（EWMA），只用于展示
+            s.winMs[leg] = s.winMs[leg] == 0 ? elapsedMs : 0.8 * s.winMs[leg] + 0.2 * elapsedMs;
+            Iterator<String> it = learned.keySet().iterator();
+            while (learned.size() > Math.max(1, cfg.getMaxFingerprints()) && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /** 另一个引擎的结果按主引擎的列名改名；列数对不上（不该发生）时原样返回 */
+    private static ColumnarResult relabel(Plan plan, ColumnarResult r) {
+        if (plan.labels.isEmpty()) return r;
+        if (r.columnCount() != plan.labels.size()) {
+            logger.warn("[race] column count mismatch ({} vs {}), keep {} labels", r.columnCount(), plan.labels.size(),
+                    plan.alternate);
+            return r;
+        }
+        return r.withColumns(plan.labels);
+    }
+
+    /**
+     * 主引擎下的输出列名：别名 / 列名，未加引号的 PG 转小写、MySQL 原样，加了引号的去掉引号原样。
+     *
+     * @return 含 * 时空列表（两边都按表定义的列名，不用改）；有不带别名的表达式列、不是单层 SELECT 时 null（不比）
+     */
+    static List<String> outputLabels(SqlDialect dialect, String sql) {
+        try {
+            Statement st = CCJSqlParserUtil.parse(sql);
+            if (!(st instanceof PlainSelect ps)) return null;
+            List<String> labels = new ArrayList<>(ps.getSelectItems().size());
+            for (SelectItem<?> item : ps.getSelectItems()) {
+                Expression e = item.getExpression();
+                if (e instanceof AllColumns) return List.of();
+                Alias alias = item.getAlias();
+                String name = alias != null ? alias.getName()
+                        : e instanceof Column c ? c.getColumnName()
+                        : null;
+                if (name == null) return null;
+                labels.add(label(dialect, name));
+            }
+            return labels;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 两个引擎上结果可能不同的原因，null 表示可以比：
+     * - ORDER BY / 窗口排序键没写 NULLS FIRST/LAST（MySQL ASC 时 NULL 在前，PG 在后），主键列除外（不会是 NULL）；
+     * - 有 / 或 DIV（PG 整数相除截断，MySQL 得小数；小数位数两边也不同）；
+     * - 字符串列参与比较、IN / BETWEEN、排序、分组、DISTINCT、MIN / MAX（MySQL 默认排序规则大小写不敏感，PG 按区分大小写的
+     *   排序规则，比较结果和顺序都不同）。列类型来自 SchemaCatalog，查不到类型的列（别名、没登记的域）按非字符串处理。
+     */
+    static String divergence(String domain, String sql) {
+        try {
+            Statement st = CCJSqlParserUtil.parse(sql);
+            if (!(st instanceof Select select)) return "不是 SELECT";
+            String[] reason = new String[1];
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                if (reason[0] == null) reason[0] = divergence(domain, ps);
+            });
+            return reason[0];
+        } catch (Exception e) {
+            return "解析失败";
+        }
+    }
+
+    private static String divergence(String domain, PlainSelect ps) {
+        List<Expression> exprs = new ArrayList<>();
+        for (SelectItem<?> item : ps.getSelectItems()) {
+            exprs.add(item.getExpression());
+            if (ps.getDistinct() != null && stringColumn(domain, item.getExpression())) return "DISTINCT 字符串列";
+        }
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.getOnExpressions() != null) exprs.addAll(j.getOnExpressions());
+            }
+        }
+        exprs.add(ps.getWhere());
+        exprs.add(ps.getHaving());
+        if (ps.getGroupBy() != null && ps.getGroupBy().getGroupByExpressionList() != null) {
+            for (Object g : ps.getGroupBy().getGroupByExpressionList()) {
+                if (stringColumn(domain, (Expression) g)) return "按字符串列分组";
+                exprs.add((Expression) g);
+            }
+        }
+        if (ps.getOrderByElements() != null) {
+            for (OrderByElement o : ps.getOrderByElements()) {
+                String r = divergence(domain, o);
+                if (r != null) return r;
+                exprs.add(o.getExpression());
+            }
+        }
+
+        String[] reason = new String[1];
+        for (Expression e : exprs) {
+            SqlAstWalker.transform(e, x -> {
+                if (reason[0] == null) reason[0] = divergence(domain, x);
+                return x;
+            });
+            if (reason[0] != null) return reason[0];
+        }
+        return null;
+    }
+
+    private static String divergence(String domain, Expression e) {
+        if (e instanceof Division || e instanceof IntegerDivision) return "除法";
+        if (e instanceof ComparisonOperator c
+                && (stringColumn(domain, c.getLeftExpression()) || stringColumn(domain, c.getRightExpression()))) {
+            return "比较字符串列";
+        }
+        if (e instanceof InExpression in && stringColumn(domain, in.getLeftExpression())) return "字符串列 IN";
+        if (e instanceof Between b && stringColumn(domain, b.getLeftExpression())) return "字符串列 BETWEEN";
+        if (e instanceof Function f && f.getName() != null && f.getParameters() != null
+                && (f.getName().equalsIgnoreCase("MIN") || f.getName().equalsIgnoreCase("MAX"))) {
+            for (Object p : f.getParameters()) {
+                if (stringColumn(domain, (Expression) p)) return "字符串列 MIN / MAX";
+            }
+        }
+        if (e instanceof AnalyticExpression a) {
+            if (a.getPartitionExpressionList() != null) {
+                for (Object p : a.getPartitionExpressionList()) {
+                    if (stringColumn(domain, (Expression) p)) return "按字符串列分区";
+                }
+            }
+            if (a.getOrderByElements() != null) {
+                for (OrderByElement o : a.getOrderByElements()) {
+                    String r = divergence(domain, o);
+                    if (r != null) return r;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String divergence(String domain, OrderByElement o) {
+        if (stringColumn(domain, o.getExpression())) return "按字符串列排序";
+        if (o.getNullOrdering() == null && !primaryKeyColumn(domain, o.getExpression())) {
+            return "排序键没写 NULLS FIRST/LAST";
+        }
+        return null;
+    }
+
+    private static boolean stringColumn(String domain, Expression e) {
+        return e instanceof Column c && columnTypes(domain, c).contains(String.class);
+    }
+
+    private static boolean primaryKeyColumn(String domain, Expression e) {
+        if (!(e instanceof Column c)) return false;
+        String name = unquote(c.getColumnName());
+        for (SchemaCatalog.TableInfo ti : SchemaCatalog.get().tables(domain)) {
+            if (name.equals(ti.primaryKey)) return true;
+        }
+        return false;
+    }
+
+    /** 该域里所有叫这个名字的列的类型（不按表区分：别名解析不到表时也宁可多算一种） */
+    private static Set<Class<?>> columnTypes(String domain, Column c) {
+        String name = unquote(c.getColumnName());
+        Set<Class<?>> types = new HashSet<>();
+        for (SchemaCatalog.TableInfo ti : SchemaCatalog.get().tables(domain)) {
+            Class<?> type = ti.columns.get(name);
+            if (type != null) types.add(type);
+        }
+        return types;
+    }
+
+    private static String unquote(String identifier) {
+        return identifier.replace("`", "").replace("\"", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static String label(SqlDialect dialect, String name) {
+        if (name.length() >= 2) {
+            char q = name.charAt(0);
+            if ((q == '`' || q == '"' || q == '\'') && name.charAt(name.length() - 1) == q) {
+                return name.substring(1, name.length() - 1);
+            }
+        }
+        return dialect == SqlDialect.POSTGRESQL ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        QueryProperties.Racing cfg = queryProperties.getRacing();
+        EngineDataSources engines = engineDataSources.getIfAvailable();
+        m.put("enabled", cfg.isEnabled() && engines != null);
+        if (engines != null) m.put("pools", engines.stats());
+        List<Map<String, Object>> entries = new ArrayList<>();
+        synchronized (learned) {
+            learned.forEach((key, s) -> {
+                Map<String, Object> e = new LinkedHashMap<>();
+                e.put("key", key);
+                e.put("races", s.races);
+                e.put("primaryWins", s.wins[0]);
+                e.put("alternateWins", s.wins[1]);
+                e.put("primaryWinMs", Math.round(s.winMs[0]));
+                e.put("alternateWinMs", Math.round(s.winMs[1]));
+                entries.add(e);
+            });
+        }
+        m.put("learned", entries);
+        return m;
+    }
+}
@@ -0,0 +1,202 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 分页游标：对调用方不透明的字符串，里面是继续翻页要的全部状态（数据源、SQL、参数、上一页最后一行的排序键、剩余行数），
+ * 翻页时只传游标，不用再传 SQL（/api/ai/query 也不用重新生成）。
+ *
+ * 格式：JSON -> deflate -> 追加 HMAC-SHA256 前 16 字节 -> base64url。签名防篡改（游标里的 SQL 不能被改成别的），
+ * 多节点部署要配同一个 app.query.pagination.token-secret，没配时每个进程随机生成（重启后旧游标失效）。
+ *
+ * 排序键值带类型标记（l / d / f / b / ts / dt / s），还原成驱动认得的 Java 类型再绑定，PG 比较时间列不会因为是字符串报错。
+ */
+@Component
+public class PageCursorCodec {
+
+    private static final int MAC_BYTES = 16;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final byte[] secret;
+
+    /** 一个游标的内容 */
+    public static final class Cursor {
+        public final String domain;
+        public final String dbms;
+        public final String sql;
+        public final Map<String, Object> params;
+        /** 上一页最后一行的排序键 */
+        public final List<Object> after;
+        /** 原 SQL 的 LIMIT 还剩多少行，-1 不限 */
+        public final long remaining;
+        public final int pageSize;
+        /** 下一页是第几页（从 1 开始） */
+        public final int page;
+
+        public Cursor(String domain, String dbms, String sql, Map<String, Object> params,
+                      List<Object> after, long remaining, int pageSize, int page) {
+            this.domain = domain;
+            this.dbms = dbms;
+            this.sql = sql;
+            this.params = params == null ? Map.of() : params;
+            this.after = after;
+            this.remaining = remaining;
+            this.pageSize = pageSize;
+            this.page = page;
+        }
+    }
+
+    public PageCursorCodec(QueryProperties queryProperties) {
+        String configured = queryProperties.getPagination().getTokenSecret();
+        if (configured != null && !configured.isBlank()) {
+            this.secret = configured.getBytes(StandardCharsets.UTF_8);
+        } else {
+            this.secret = new byte[32];
+            new SecureRandom().nextBytes(this.secret);
+        }
+    }
+
+    public String encode(Cursor c) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("v", 1);
+        m.put("d", c.domain);
+        m.put("m", c.dbms);
+        m.put("q", c.sql);
+        if (!c.params.isEmpty()) m.put("p", c.params);
+        List<Object> keys = new ArrayList<>(c.after.size());
+        for (Object v : c.after) keys.add(encodeValue(v));
+        m.put("k", keys);
+        m.put("r", c.remaining);
+        m.put("s", c.pageSize);
+        m.put("n", c.page);
+        try {
+            byte[] body = deflate(mapper.writeValueAsBytes(m));
+            byte[] out = Arrays.copyOf(body, body.length + MAC_BYTES);
+            System.arraycopy(mac(body), 0, out, body.length, MAC_BYTES);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(out);
+        } catch (Exception e) {
+            throw new IllegalStateException("分页游标编码失败: " + e.getMessage(), e);
+        }
+    }
+
+    /** 游标格式不对 / 签名不对 / 过期（换了密钥）抛 BusinessException */
+    @SuppressWarnings("unchecked")
+    public Cursor decode(String token) {
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token.trim());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("cursor 格式不正确");
+        }
+        if (raw.length <= MAC_BYTES) throw new BusinessException("cursor 格式不正确");
+        byte[] body = Arrays.copyOf(raw, raw.length - MAC_BYTES);
+        byte[] sig = Arrays.copyOfRange(raw, raw.length - MAC_BYTES, raw.length);
+        if (!MessageDigest.isEqual(sig, Arrays.copyOf(mac(body), MAC_BYTES))) {
+            throw new BusinessException("cursor 无效或已过期，请从第一页重新查询");
+        }
+        try {
+            Map<String, Object> m = mapper.readValue(inflate(body), Map.class);
+            List<Object> keys = new ArrayList<>();
+            for (Object k : (List<Object>) m.get("k")) keys.add(decodeValue(k));
+            Object p = m.get("p");
+            return new Cursor((String) m.get("d"), (String) m.get("m"), (String) m.get("q"),
+                    p == null ? Map.of() : (Map<String, Object>) p, keys,
+                    ((Number) m.get("r")).longValue(), ((Number) m.get("s")).intValue(),
+                    ((Number) m.get("n")).intValue());
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BusinessException("cursor 内容无法解析: " + e.getMessage());
+        }
+    }
+
+    private static Object encodeValue(Object v) {
+        if (v == null) return null;
+        if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+            return List.of("l", ((Number) v).longValue());
+        }
+        if (v instanceof BigDecimal d) return List.of("d", d.toPlainString());
+        if (v instanceof Double || v instanceof Float) return List.of("f", ((Number) v).doubleValue());
+        if (v instanceof Boolean b) return List.of("b", b);
+        if (v instanceof Timestamp ts) return List.of("ts", ts.toLocalDateTime().toString());
+        if (v instanceof LocalDateTime ldt) return List.of("ts", ldt.toString());
+        if (v instanceof java.sql.Date d) return List.of("dt", d.toLocalDate().toString());
+        if (v instanceof LocalDate ld) return List.of("dt", ld.toString());
+        return List.of("s", String.valueOf(v));
+    }
+
+    private static Object decodeValue(Object o) {
+        if (o == null) return null;
+        List<?> pair = (List<?>) o;
+        String type = (String) pair.get(0);
+        Object v = pair.get(1);
+        return switch (type) {
+            case "l" -> ((Number) v).longValue();
+            case "d" -> new BigDecimal((String) v);
+            case "f" -> ((Number) v).doubleValue();
+            case "b" -> v;
+            case "ts" -> Timestamp.valueOf(LocalDateTime.parse((String) v));
+            case "dt" -> java.sql.Date.valueOf(LocalDate.parse((String) v));
+            default -> String.valueOf(v);
+        };
+    }
+
+    private byte[] mac(byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac.doFinal(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 不可用", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] in) {
+        Deflater d = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            d.setInput(in);
+            d.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.length / 2 + 16);
+            byte[] buf = new byte[512];
+            while (!d.finished()) out.write(buf, 0, d.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            d.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] in) throws DataFormatException {
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.length * 3);
+            byte[] buf = new byte[512];
+            while (!inf.finished()) {
+                int n = inf.inflate(buf);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inf.end();
+        }
+    }
+}
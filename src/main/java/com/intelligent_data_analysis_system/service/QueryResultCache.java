@@ -0,0 +1,482 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import com.intelligent_data_analysis_system.utils.Sha256;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.ParenthesedFromItem;
+import net.sf.jsqlparser.statement.select.Select;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * execute 的结果缓存，两级：
+ *
+ * - L1：本节点内存，LinkedHashMap 访问序 LRU，按 ColumnarResult.estimatedBytes 计总大小，超过 app.query.cache.max-bytes 淘汰最久未用的
+ * - L2：Redis（app.query.cache.redis.enabled），值是 ColumnarResult.toBytes() 前面加 8 字节写入时间，过期交给 Redis TTL；
+ *   L2 命中后回填 L1
+ *
+ * 键：(数据源, dbms, 参数化后的 SQL, 绑定参数, maxRows) 的 SHA-256。SQL 用 SqlLiteralParameterizer 输出的统一格式文本，
+ * 字面量写法不同（大小写、空白）但语义相同的 SQL 落到同一个键上。
+ *
+ * TTL：SQL 涉及的每张表取 table-ttl，没配的取 domain-ttl / ttl，最后取最小值；结果为 0 的不缓存。
+ *
+ * 失效：invalidate(domain, table) 清 L1 里涉及该表（table 为空则整个域）的条目，
+ * 删掉 Redis 里按域 / 按表登记的键，并通过 pub/sub 通知其它节点清各自的 L1。
+ * 没有自动失效：数据更新后要有人调 invalidate，否则 TTL 内读到的是旧结果，所以默认关闭（app.query.cache.enabled）。
+ */
+@Component
+public class QueryResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private final QueryProperties queryProperties;
+    private final ObjectProvider<RedisConnectionFactory> redisConnectionFactory;
+
+    /** 本节点标识：收到自己发的失效广播时跳过（本地已经清过） */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LinkedHashMap<Key, Entry> l1 = new LinkedHashMap<>(256, 0.75f, true);
+    private long l1Bytes;
+
+    private final AtomicLong l1Hits = new AtomicLong();
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private RedisTemplate<String, byte[]> redis;
+    private StringRedisTemplate redisTags;
+    private RedisMessageListenerContainer listener;
+
+    public QueryResultCache(QueryProperties queryProperties,
+                            ObjectProvider<RedisConnectionFactory> redisConnectionFactory) {
+        this.queryProperties = queryProperties;
+        this.redisConnectionFactory = redisConnectionFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        QueryProperties.Cache c = queryProperties.getCache();
+        if (!c.isEnabled() || !c.getRedis().isEnabled()) return;
+
+        RedisConnectionFactory factory = redisConnectionFactory.getIfAvailable();
+        if (factory == null) {
+            logger.warn("[cache] app.query.cache.redis.enabled=true 但没有 RedisConnectionFactory，只用本地缓存");
+            return;
+        }
+
+        RedisTemplate<String, byte[]> t = new RedisTemplate<>();
+        t.setConnectionFactory(factory);
+        t.setKeySerializer(RedisSerializer.string());
+        t.setValueSerializer(RedisSerializer.byteArray());
+        t.afterPropertiesSet();
+        attachRedis(t, new StringRedisTemplate(factory));
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener((message, pattern) ->
+                onInvalidateMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(channel()));
+        container.afterPropertiesSet();
+        container.start();
+        this.listener = container;
+        logger.info("[cache] redis L2 enabled, prefix={}", c.getRedis().getKeyPrefix());
+    }
+
+    /** 接上二级缓存：values 存结果，tags 存按域 / 按表登记的键并发失效广播（广播的订阅在 init 里建） */
+    void attachRedis(RedisTemplate<String, byte[]> values, StringRedisTemplate tags) {
+        this.redis = values;
+        this.redisTags = tags;
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listener != null) listener.destroy();
+    }
+
+    public boolean isEnabled() {
+        return queryProperties.getCache().isEnabled();
+    }
+
+    /* ========================= 键 / 命中结果 ========================= */
+
+    public static final class Key {
+        public final String domain;
+        public final String dbms;
+        /** SQL 涉及的表（小写、去引号和 schema）；解析失败为空，只能按域失效 */
+        public final Set<String> tables;
+        public final String digest;
+
+        private Key(String domain, String dbms, Set<String> tables, String digest) {
+            this.domain = domain;
+            this.dbms = dbms;
+            this.tables = tables;
+            this.digest = digest;
+        }
+
+        /**
+         * params 按名字排序后参与摘要，值带上类型名（'1' 和 1 是不同的绑定值）
+         */
+        public static Key of(String domain, String dbms, String sql, Map<String, ?> params, int maxRows) {
+            String d = domain == null ? "" : domain.trim().toUpperCase(Locale.ROOT);
+            String m = dbms == null ? "" : dbms.trim().toLowerCase(Locale.ROOT);
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(d).append('\u0001').append(m).append('\u0001').append(sql).append('\u0001');
+            if (params != null) {
+                for (Map.Entry<String, ?> e : new TreeMap<>(params).entrySet()) {
+                    Object v = e.getValue();
+                    sb.append(e.getKey()).append('=')
+                            .append(v == null ? "null" : v.getClass().getSimpleName() + ":" + v)
+                            .append('\u0002');
+                }
+            }
+            sb.append('\u0001').append(maxRows);
+            return new Key(d, m, tablesOf(sql), Sha256.hex(sb.toString()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && digest.equals(k.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return digest.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return domain + "/" + dbms + "/" + digest;
+        }
+    }
+
+    public static final class Hit {
+        public final ColumnarResult result;
+        /** L1 / L2 */
+        public final String tier;
+        /** 数据写入缓存到现在的毫秒数 */
+        public final long ageMs;
+
+        Hit(ColumnarResult result, String tier, long ageMs) {
+            this.result = result;
+            this.tier = tier;
+            this.ageMs = ageMs;
+        }
+    }
+
+    private static final class Entry {
+        final ColumnarResult result;
+        final long createdAt;
+        final long expiresAt;
+        final long bytes;
+
+        Entry(ColumnarResult result, long createdAt, long expiresAt, long bytes) {
+            this.result = result;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+
+    /* ========================= 读写 ========================= */
+
+    /** 未命中返回 null */
+    public Hit get(Key key) {
+        if (!isEnabled()) return null;
+        long now = System.currentTimeMillis();
+
+        synchronized (l1) {
+            Entry e = l1.get(key);
+            if (e != null) {
+                if (e.expiresAt > now) {
+                    l1Hits.incrementAndGet();
+                    return new Hit(e.result, "L1", now - e.createdAt);
+                }
+                l1.remove(key);
+                l1Bytes -= e.bytes;
+            }
+        }
+
+        if (redis != null) {
+            try {
+                byte[] payload = redis.opsForValue().get(redisKey(key));
+                if (payload != null) {
+                    ByteBuffer buf = ByteBuffer.wrap(payload);
+                    long createdAt = buf.getLong();
+                    byte[] body = new byte[buf.remaining()];
+                    buf.get(body);
+                    ColumnarResult result = ColumnarResult.fromBytes(body);
+
+                    long expiresAt = createdAt + ttl(key).toMillis();
+                    if (expiresAt > now) putLocal(key, new Entry(result, createdAt, expiresAt, result.estimatedBytes()));
+                    l2Hits.incrementAndGet();
+                    return new Hit(result, "L2", now - createdAt);
+                }
+            } catch (Exception ex) {
+                // Redis 不可用不影响查询，按未命中处理
+                logger.warn("[cache] redis get failed for {}: {}", key, ex.getMessage());
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, ColumnarResult result) {
+        if (!isEnabled() || result == null) return;
+        QueryProperties.Cache c = queryProperties.getCache();
+
+        long bytes = result.estimatedBytes();
+        if (bytes > c.getMaxEntryBytes()) {
+            logger.debug("[cache] skip {}, {} bytes > max-entry-bytes", key, bytes);
+            return;
+        }
+        Duration ttl = ttl(key);
+        if (ttl.isZero() || ttl.isNegative()) return;
+
+        long now = System.currentTimeMillis();
+        putLocal(key, new Entry(result, now, now + ttl.toMillis(), bytes));
+
+        if (redis != null) {
+            try {
+                byte[] body = result.toBytes();
+                byte[] payload = ByteBuffer.allocate(8 + body.length).putLong(now).put(body).array();
+                String rk = redisKey(key);
+                redis.opsForValue().set(rk, payload, ttl);
+                // 按域 / 按表登记键，失效时按登记删除；登记集合的过期只往后推到配置里最长的 TTL，
+                // 不能按本条的 TTL 设（会比集合里已有键的剩余时间短，集合先过期后那些键就失效不掉了）
+                Duration tagTtl = maxTtl();
+                for (String tag : tagsOf(key)) {
+                    redisTags.opsForSet().add(tag, rk);
+                    redisTags.expire(tag, tagTtl);
+                }
+            } catch (Exception ex) {
+                logger.warn("[cache] redis put failed for {}: {}", key, ex.getMessage());
+            }
+        }
+    }
+
+    private void putLocal(Key key, Entry e) {
+        long maxBytes = queryProperties.getCache().getMaxBytes();
+        long now = System.currentTimeMillis();
+        synchronized (l1) {
+            Entry old = l1.put(key, e);
+            if (old != null) l1Bytes -= old.bytes;
+            l1Bytes += e.bytes;
+
+            // 访问序迭代：最久未用的在前；过期的顺带清掉
+            Iterator<Map.Entry<Key, Entry>> it = l1.entrySet().iterator();
+            while (l1Bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, Entry> x = it.next();
+                if (x.getKey().equals(key)) continue;
+                it.remove();
+                l1Bytes -= x.getValue().bytes;
+                if (x.getValue().expiresAt > now) evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** 每张表的 TTL（table-ttl，否则 domain-ttl / ttl）取最小值；解析不出表时用 domain-ttl / ttl */
+    Duration ttl(Key key) {
+        QueryProperties.Cache c = queryProperties.getCache();
+        Duration base = lookup(c.getDomainTtl(), key.domain);
+        if (base == null) base = c.getTtl();
+
+        if (key.tables.isEmpty()) return base;
+        Duration min = null;
+        for (String t : key.tables) {
+            Duration d = lookup(c.getTableTtl(), t);
+            if (d == null) d = base;
+            if (min == null || d.compareTo(min) < 0) min = d;
+        }
+        return min;
+    }
+
+    /** 配置里最长的 TTL（ttl / domain-ttl / table-ttl），任何缓存键都不会活得比它久 */
+    Duration maxTtl() {
+        QueryProperties.Cache c = queryProperties.getCache();
+        Duration max = c.getTtl();
+        for (Map<String, Duration> m : Arrays.asList(c.getDomainTtl(), c.getTableTtl())) {
+            if (m == null) continue;
+            for (Duration d : m.values()) {
+                if (d != null && (max == null || d.compareTo(max) > 0)) max = d;
+            }
+        }
+        return max;
+    }
+
+    private static Duration lookup(Map<String, Duration> map, String name) {
+        if (map == null || name == null) return null;
+        for (Map.Entry<String, Duration> e : map.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+        }
+        return null;
+    }
+
+    /* ========================= 失效 ========================= */
+
+    /**
+     * domain 为空：所有域；table 为空：整个域。返回本节点 L1 清掉的条目数。
+     */
+    public int invalidate(String domain, String table) {
+        String d = blankToNull(domain) == null ? null : domain.trim().toUpperCase(Locale.ROOT);
+        String t = blankToNull(table) == null ? null : normalizeTable(table);
+
+        int removed = invalidateLocal(d, t);
+        if (redis != null) {
+            try {
+                List<String> domains = new ArrayList<>();
+                if (d != null) domains.add(d);
+                else for (DataSourceDomain x : DataSourceDomain.values()) domains.add(x.name());
+
+                for (String dom : domains) {
+                    String tag = t == null ? domainTag(dom) : tableTag(dom, t);
+                    Set<String> keys = redisTags.opsForSet().members(tag);
+                    if (keys != null && !keys.isEmpty()) redis.delete(keys);
+                    redisTags.delete(tag);
+                }
+                redisTags.convertAndSend(channel(), nodeId + "|" + (d == null ? "" : d) + "|" + (t == null ? "" : t));
+            } catch (Exception ex) {
+                logger.warn("[cache] redis invalidate failed for domain={}, table={}: {}", d, t, ex.getMessage());
+            }
+        }
+        logger.info("[cache] invalidated domain={}, table={}, local entries={}", d, t, removed);
+        return removed;
+    }
+
+    private int invalidateLocal(String domain, String table) {
+        int removed = 0;
+        synchronized (l1) {
+            Iterator<Map.Entry<Key, Entry>> it = l1.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> x = it.next();
+                Key k = x.getKey();
+                if (domain != null && !domain.equals(k.domain)) continue;
+                // 按表失效时，解析不出表的条目也清掉（不知道它读没读这张表）
+                if (table != null && !k.tables.isEmpty() && !k.tables.contains(table)) continue;
+                it.remove();
+                l1Bytes -= x.getValue().bytes;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /** 其它节点的失效广播：nodeId|domain|table */
+    void onInvalidateMessage(String msg) {
+        String[] parts = msg.split("\\|", -1);
+        if (parts.length != 3 || nodeId.equals(parts[0])) return;
+        invalidateLocal(blankToNull(parts[1]), blankToNull(parts[2]));
+    }
+
+    /* ========================= 统计 ========================= */
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (l1) {
+            m.put("entries", l1.size());
+            m.put("bytes", l1Bytes);
+        }
+        m.put("maxBytes", queryProperties.getCache().getMaxBytes());
+        m.put("l1Hits", l1Hits.get());
+        m.put("l2Hits", l2Hits.get());
+        m.put("misses", misses.get());
+        m.put("evictions", evictions.get());
+        m.put("redis", redis != null);
+        return m;
+    }
+
+    /* ========================= 工具 ========================= */
+
+    private String prefix() {
+        return queryProperties.getCache().getRedis().getKeyPrefix();
+    }
+
+    private String redisKey(Key key) {
+        return prefix() + "v:" + key.digest;
+    }
+
+    private String domainTag(String domain) {
+        return prefix() + "tag:" + domain;
+    }
+
+    private String tableTag(String domain, String table) {
+        return prefix() + "tag:" + domain + ":" + table;
+    }
+
+    private List<String> tagsOf(Key key) {
+        List<String> tags = new ArrayList<>();
+        tags.add(domainTag(key.domain));
+        for (String t : key.tables) tags.add(tableTag(key.domain, t));
+        return tags;
+    }
+
+    private String channel() {
+        return prefix() + "invalidate";
+    }
+
+    /** FROM / JOIN 里的物理表（含子查询、CTE、UNION 分支里的） */
+    static Set<String> tablesOf(String sql) {
+        Set<String> out = new TreeSet<>();
+        if (sql == null || sql.isBlank()) return out;
+        try {
+            Statement st = CCJSqlParserUtil.parse(sql);
+            if (!(st instanceof Select select)) return out;
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                collectTables(ps.getFromItem(), out);
+                if (ps.getJoins() != null) {
+                    for (Join j : ps.getJoins()) collectTables(j.getRightItem(), out);
+                }
+            });
+        } catch (Exception e) {
+            logger.debug("[cache] table extraction failed: {}", e.getMessage());
+            return new TreeSet<>();
+        }
+        return out;
+    }
+
+    private static void collectTables(FromItem item, Set<String> out) {
+        if (item instanceof Table t && t.getName() != null) {
+            out.add(normalizeTable(t.getName()));
+        } else if (item instanceof ParenthesedFromItem pf) {
+            collectTables(pf.getFromItem(), out);
+            if (pf.getJoins() != null) {
+                for (Join j : pf.getJoins()) collectTables(j.getRightItem(), out);
+            }
+        }
+    }
+
+    private static String normalizeTable(String name) {
+        String s = name.replace("`", "").replace("\"", "").trim().toLowerCase(Locale.ROOT);
+        int dot = s.lastIndexOf('.');
+        return dot >= 0 ? s.substring(dot + 1) : s;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+
+}
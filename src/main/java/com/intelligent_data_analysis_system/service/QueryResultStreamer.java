@@ -0,0 +1,276 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.*;
+import java.time.temporal.Temporal;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 流式结果输出：游标分批从数据库取数，每行直接写到 HTTP 输出流，不在内存里攒 List&lt;Map&gt;。
+ *
+ * - PgJDBC 只有在关闭自动提交时 setFetchSize 才生效（否则一次读完整个结果集），这里借用连接时临时关掉，读完回滚恢复
+ * - MySQL 需要连接属性 useCursorFetch=true（DataSourceConfig 按 app.query.streaming.mysql-cursor-fetch 设置）
+ * - 每 fetchSize 行 flush 一次，第一批数据在结果集读完之前就能到达客户端
+ * - 客户端断开 / 按 queryId 取消时先 Statement.cancel 再关闭：MySQL 关闭未读完的流式结果集会把剩余行全部读完
+ *
+ * 两种格式：
+ * - NDJSON：第一行 {"type":"meta",...,"columns":[...]}，之后每行一个数组 [v1, v2, ...]，
+ *   最后 {"type":"end","rowCount":n,"elapsedMs":t}；中途出错写 {"type":"error","message":...}
+ * - JSON：一个对象 {"dataSource":...,"columns":[...],"rows":[[...],...],"rowCount":n,"elapsedMs":t}，分块传输
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryResultStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultStreamer.class);
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final ObjectMapper objectMapper;
+    private final QueryProperties queryProperties;
+    private final RunningQueryRegistry runningQueries;
+
+    public enum Format {
+        NDJSON(MediaType.parseMediaType("application/x-ndjson")),
+        JSON(MediaType.APPLICATION_JSON);
+
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public MediaType mediaType() {
+            return mediaType;
+        }
+
+        /** ndjson（默认）/ json */
+        public static Format of(String s) {
+            if (s == null || s.isBlank()) return NDJSON;
+            return "json".equals(s.trim().toLowerCase(Locale.ROOT)) ? JSON : NDJSON;
+        }
+    }
+
+    /**
+     * 在调用线程里借连接、执行、边读边写；StreamingResponseBody 在 MVC 异步线程里调用，所以域在这里绑定（结束后恢复）。
+     */
+    public void write(DataSourceDomain dsDomain, String sql, Map<String, ?> params, int maxRows,
+                      String fingerprint, Format format, String queryId, Deadline deadline,
+                      OutputStream out) throws IOException {
+        long t0 = System.currentTimeMillis();
+        int fetchSize = Math.max(1, queryProperties.getStreaming().getFetchSize());
+
+        ParsedSql parsed = NamedParameterUtils.parseSqlStatement(sql);
+        MapSqlParameterSource source = new MapSqlParameterSource(params);
+        String jdbcSql = NamedParameterUtils.substituteNamedParameters(parsed, source);
+        Object[] args = NamedParameterUtils.buildValueArray(parsed, source, null);
+
+        JsonGenerator jg = objectMapper.getFactory().createGenerator(out);
+        jg.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // NDJSON：顶层值之间用换行分隔（Jackson 默认是空格）
+        if (format == Format.NDJSON) jg.setRootValueSeparator(new SerializedString("\n"));
+        RowWriter writer = new RowWriter(jg, format, dsDomain.name(), fingerprint);
+
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withDomain(dsDomain).open();
+             RunningQueryRegistry.Handle handle = runningQueries.start(queryId, "STREAMING", deadline)) {
+            handle.stage("STREAMING", dsDomain.name(), sql);
+            long rows = namedJdbc.getJdbcTemplate().execute((ConnectionCallback<Long>) con ->
+                    streamRows(con, jdbcSql, args, fetchSize, maxRows, handle.deadline(), writer));
+            writer.end(rows, System.currentTimeMillis() - t0);
+            logger.info("SQL streamed for domain: {}, rows: {}, time: {}ms, fingerprint: {}",
+                    dsDomain.name(), rows, System.currentTimeMillis() - t0, fingerprint);
+        } catch (UncheckedIOException e) {
+            // 客户端断开：连接已在 ConnectionCallback 里归还，直接结束
+            logger.info("SQL stream aborted by client for domain: {}, fingerprint: {}", dsDomain.name(), fingerprint);
+        } catch (DataAccessException e) {
+            // 响应头已经发出去，状态码改不了，只能在流里报错
+            logger.warn("SQL stream failed for domain: {}, error: {}", dsDomain.name(), e.getMessage());
+            writer.error(e.getMostSpecificCause().getMessage());
+        } finally {
+            jg.close();
+        }
+    }
+
+    private static long streamRows(Connection con, String sql, Object[] args, int fetchSize, int maxRows,
+                                   Deadline deadline, RowWriter writer) throws SQLException {
+        boolean postgres = con.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres");
+        boolean autoCommit = con.getAutoCommit();
+        if (postgres && autoCommit) con.setAutoCommit(false);
+        try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(fetchSize);
+            if (maxRows > 0) ps.setMaxRows(maxRows);
+            int timeoutSeconds = deadline.remainingSeconds(0);
+            if (timeoutSeconds > 0) ps.setQueryTimeout(timeoutSeconds);
+            Runnable cancel = () -> {
+                try {
+                    ps.cancel();
+                } catch (SQLException e) {
+                    logger.debug("Statement cancel failed: {}", e.getMessage());
+                }
+            };
+            deadline.whenCancelled().thenRun(cancel);
+            for (int i = 0; i < args.length; i++) {
+                StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                int n = md.getColumnCount();
+                String[] columns = new String[n];
+                for (int i = 0; i < n; i++) columns[i] = md.getColumnLabel(i + 1);
+                writer.begin(columns);
+
+                long count = 0;
+                Object[] row = new Object[n];
+                try {
+                    while (rs.next()) {
+                        writer.row(rs, row);
+                        if (++count % fetchSize == 0) writer.flush();
+                    }
+                } catch (UncheckedIOException e) {
+                    // 客户端断开：在关结果集之前让数据库停下来
+                    cancel.run();
+                    throw e;
+                }
+                return count;
+            }
+        } finally {
+            if (postgres && autoCommit) {
+                // 只读查询：回滚结束事务，恢复连接池里连接的原状态
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** 按格式写 JSON；IOException 包成 UncheckedIOException 穿过 ConnectionCallback */
+    private static final class RowWriter {
+        private final JsonGenerator jg;
+        private final Format format;
+        private final String dataSource;
+        private final String fingerprint;
+
+        RowWriter(JsonGenerator jg, Format format, String dataSource, String fingerprint) {
+            this.jg = jg;
+            this.format = format;
+            this.dataSource = dataSource;
+            this.fingerprint = fingerprint;
+        }
+
+        void begin(String[] columns) {
+            try {
+                if (format == Format.NDJSON) {
+                    jg.writeStartObject();
+                    jg.writeStringField("type", "meta");
+                    header(columns);
+                    jg.writeEndObject();
+                } else {
+                    jg.writeStartObject();
+                    header(columns);
+                    jg.writeArrayFieldStart("rows");
+                }
+                jg.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void header(String[] columns) throws IOException {
+            jg.writeStringField("dataSource", dataSource);
+            jg.writeStringField("fingerprint", fingerprint);
+            jg.writeArrayFieldStart("columns");
+            for (String c : columns) jg.writeString(c);
+            jg.writeEndArray();
+        }
+
+        /** 先把整行取到 buf 里再写：取值中途出错（类型转换、连接断开）时输出里不会留下半行 */
+        void row(ResultSet rs, Object[] buf) throws SQLException {
+            for (int i = 0; i < buf.length; i++) buf[i] = rs.getObject(i + 1);
+            try {
+                jg.writeStartArray();
+                for (Object v : buf) value(v);
+                jg.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void value(Object v) throws IOException {
+            if (v == null) jg.writeNull();
+            else if (v instanceof String s) jg.writeString(s);
+            else if (v instanceof Number || v instanceof Boolean
+                    || v instanceof java.util.Date || v instanceof Temporal) jg.writeObject(v);
+            else if (v instanceof byte[] b) jg.writeBinary(b);
+            // PGobject / Clob 等驱动类型：转字符串，不让 Jackson 反射驱动内部字段
+            else jg.writeString(String.valueOf(v));
+        }
+
+        void flush() {
+            try {
+                jg.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void end(long rowCount, long elapsedMs) throws IOException {
+            if (format == Format.NDJSON) {
+                jg.writeStartObject();
+                jg.writeStringField("type", "end");
+            } else {
+                jg.writeEndArray();
+            }
+            jg.writeNumberField("rowCount", rowCount);
+            jg.writeNumberField("elapsedMs", elapsedMs);
+            jg.writeEndObject();
+            jg.writeRaw('\n');
+            jg.flush();
+        }
+
+        /**
+         * 先按生成器的嵌套层次把没闭合的数组 / 对象依次闭合：NDJSON 回到顶层另起一行写错误，
+         * JSON 回到最外层对象把 message 作为它的字段（还没开始输出时单独写一个对象）
+         */
+        void error(String message) throws IOException {
+            JsonStreamContext ctx = jg.getOutputContext();
+            while (!ctx.inRoot() && !(format == Format.JSON && ctx.getParent().inRoot())) {
+                if (ctx.inArray()) jg.writeEndArray();
+                else jg.writeEndObject();
+                ctx = jg.getOutputContext();
+            }
+            if (ctx.inRoot()) {
+                jg.writeStartObject();
+                if (format == Format.NDJSON) jg.writeStringField("type", "error");
+                else jg.writeStringField("dataSource", dataSource);
+            }
+            jg.writeStringField("message", message);
+            jg.writeEndObject();
+            jg.writeRaw('\n');
+            jg.flush();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 正在执行的查询：按 queryId 登记，供 GET /api/debug/queries 查看、DELETE /api/debug/queries/{id} 取消。
+ *
+ * 取消 = 取消这次请求的 Deadline：等待中的调用方立刻返回，最后一个等待者离开时 Statement.cancel
+ * 在数据库端中止语句（MySQL 发 KILL QUERY，PG 发取消请求），连接随之归还。
+ *
+ * /api/ai/query 在入口就用同一个 id 登记（阶段 GENERATING），执行时复用这条登记、切到 EXECUTING，
+ * 所以 LLM 生成阶段也能按 id 取消。只有登记它的线程能复用；别的请求带着正在执行的 id 进来直接拒绝
+ * （否则两个不相干的查询共用一个 Deadline，取消一个另一个也停）。
+ */
+@Component
+public class RunningQueryRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunningQueryRegistry.class);
+
+    private final ConcurrentHashMap<String, Entry> running = new ConcurrentHashMap<>();
+
+    public static final class Entry {
+        public final String id;
+        public final long startedAt = System.currentTimeMillis();
+        public final Deadline deadline;
+        /** 登记它的线程：同一请求里的嵌套调用在这个线程上 */
+        private final Thread thread = Thread.currentThread();
+        private volatile String stage;
+        private volatile String domain;
+        private volatile String sql;
+
+        private Entry(String id, Deadline deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+    }
+
+    /** 登记句柄；close 时移出（复用已有登记的句柄 close 不移出，由登记方负责） */
+    public final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private final boolean owner;
+
+        private Handle(Entry entry, boolean owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        public String id() {
+            return entry.id;
+        }
+
+        public Deadline deadline() {
+            return entry.deadline;
+        }
+
+        public void stage(String stage, String domain, String sql) {
+            entry.stage = stage;
+            if (domain != null) entry.domain = domain;
+            if (sql != null) entry.sql = sql;
+        }
+
+        @Override
+        public void close() {
+            if (owner) running.remove(entry.id, entry);
+        }
+    }
+
+    public static String newId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * 登记一次查询；id 为空时生成。同一 id 已由当前线程登记时复用那条登记（和它共用 Deadline），否则用传入的 deadline。
+     * 同一 id 正由别的请求执行时抛 BusinessException(409)。
+     */
+    public Handle start(String id, String stage, Deadline deadline) {
+        String queryId = id == null || id.isBlank() ? newId() : id.trim();
+        Entry created = new Entry(queryId, deadline);
+        Entry existing = running.putIfAbsent(queryId, created);
+        if (existing != null && existing.thread != Thread.currentThread()) {
+            throw new BusinessException(409, "queryId 正在执行中，不能重复使用: " + queryId);
+        }
+        Entry entry = existing == null ? created : existing;
+        Handle handle = new Handle(entry, existing == null);
+        handle.stage(stage, null, null);
+        return handle;
+    }
+
+    /** 取消一次查询；不存在（已结束 / id 错误）返回 false */
+    public boolean cancel(String id) {
+        Entry e = id == null ? null : running.get(id);
+        if (e == null) return false;
+        logger.info("[query] cancel requested, id: {}, stage: {}, domain: {}", e.id, e.stage, e.domain);
+        e.deadline.cancel();
+        return true;
+    }
+
+    public List<Map<String, Object>> list() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Entry e : running.values()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("queryId", e.id);
+            m.put("stage", e.stage);
+            m.put("domain", e.domain);
+            m.put("sql", e.sql);
+            m.put("runningMs", now - e.startedAt);
+            m.put("remainingMs", e.deadline.isUnbounded() ? null : e.deadline.remainingMillis());
+            m.put("cancelled", e.deadline.isCancelled());
+            out.add(m);
+        }
+        out.sort(Comparator.comparing(m -> -((Long) m.get("runningMs"))));
+        return out;
+    }
+
+    public int size() {
+        return running.size();
+    }
+}
@@ -0,0 +1,192 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import com.intelligent_data_analysis_system.utils.Optimizer.ScatterGatherPlanner;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * 大表聚合的 scatter-gather 执行：ScatterGatherPlanner 拆出的各个日期分片放到 sql-scatter 线程池里并发执行，
+ * 全部完成后合并。一片失败就取消其它分片（调用方的 runner 负责把 Statement.cancel 注册到同一个 Flight 上）。
+ *
+ * 查询没写分区列的上 / 下界时用表的 MIN / MAX 补（按 域.表 缓存 bounds-ttl），跨度不足 min-range-days 不拆。
+ * 分片线程里绑定调用方的 ExecutionContext（域、负载类别、查询类别、截止时间），每片照常经过负载隔离舱借连接。
+ */
+@Component
+public class ScatterGatherExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScatterGatherExecutor.class);
+
+    /** 拆好的一次执行 */
+    public static final class Prepared {
+        public final ScatterGatherPlanner.Plan plan;
+        public final List<ScatterGatherPlanner.Partition> partitions;
+
+        Prepared(ScatterGatherPlanner.Plan plan, List<ScatterGatherPlanner.Partition> partitions) {
+            this.plan = plan;
+            this.partitions = partitions;
+        }
+
+        /** 响应里的 scatter 字段 */
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("table", plan.table);
+            m.put("column", plan.column);
+            m.put("partitions", partitions.size());
+            List<String> ranges = new ArrayList<>(partitions.size());
+            for (ScatterGatherPlanner.Partition p : partitions) ranges.add(p.range);
+            m.put("ranges", ranges);
+            return m;
+        }
+    }
+
+    private static final class Bounds {
+        final LocalDate min;
+        final LocalDate max;
+        final long expiresAt;
+
+        Bounds(LocalDate min, LocalDate max, long expiresAt) {
+            this.min = min;
+            this.max = max;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final QueryProperties queryProperties;
+    private final ExecutorService pool;
+    private final Map<String, Bounds> bounds = new ConcurrentHashMap<>();
+
+    public ScatterGatherExecutor(NamedParameterJdbcTemplate namedJdbc, QueryProperties queryProperties,
+                                 TaskThreads taskThreads) {
+        this.namedJdbc = namedJdbc;
+        this.queryProperties = queryProperties;
+        this.pool = taskThreads.unbounded("sql-scatter");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 判断能不能拆、拆成哪几片。调用线程上要已经设好 DomainContext（补上下界的 MIN / MAX 走同一个数据源）。
+     *
+     * @return 不拆时 null
+     */
+    public Prepared prepare(DataSourceDomain domain, SqlDialect dialect, String sql, Map<String, Object> params) {
+        QueryProperties.ScatterGather cfg = queryProperties.getScatterGather();
+        if (!cfg.isEnabled() || cfg.getPartitions() < 2 || dialect == null) return null;
+
+        ScatterGatherPlanner.Plan plan;
+        try {
+            plan = ScatterGatherPlanner.plan(dialect, sql, params, partitionColumns(cfg));
+        } catch (RuntimeException e) {
+            logger.debug("[scatter] plan failed, run as single statement: {}", e.getMessage());
+            return null;
+        }
+        if (plan == null) return null;
+
+        LocalDate lo = plan.lower;
+        LocalDate hi = plan.upper;
+        if (lo == null || hi == null) {
+            Bounds b = tableBounds(domain, dialect, plan);
+            if (b == null) return null;
+            if (lo == null) lo = b.min;
+            if (hi == null) hi = b.max;
+        }
+        if (lo == null || hi == null || ChronoUnit.DAYS.between(lo, hi) + 1 < cfg.getMinRangeDays()) return null;
+
+        List<ScatterGatherPlanner.Partition> parts = plan.split(lo, hi, cfg.getPartitions());
+        if (parts.size() < 2) return null;
+        logger.info("[scatter] {} {}.{} split into {} partitions over [{}, {}]",
+                domain, plan.table, plan.column, parts.size(), lo, hi);
+        return new Prepared(plan, parts);
+    }
+
+    /**
+     * 并发执行各分片并合并
+     *
+     * @param runner (分片 SQL, 绑定参数) -&gt; 结果；在分片线程里调用，
+     *               调用线程的 ExecutionContext（域换成 domain）已绑定
+     */
+    public ColumnarResult execute(DataSourceDomain domain, Prepared prepared, Map<String, Object> params,
+                                  BiFunction<String, Map<String, Object>, ColumnarResult> runner) {
+        ExecutionContext ctx = ExecutionContext.current().withDomain(domain);
+        List<Future<ColumnarResult>> futures = new ArrayList<>(prepared.partitions.size());
+        for (ScatterGatherPlanner.Partition p : prepared.partitions) {
+            Map<String, Object> partParams = new LinkedHashMap<>(params);
+            partParams.putAll(p.params);
+            futures.add(pool.submit(ctx.wrap(() -> runner.apply(p.sql, partParams))));
+        }
+
+        List<ColumnarResult> partials = new ArrayList<>(futures.size());
+        try {
+            for (Future<ColumnarResult> f : futures) partials.add(f.get());
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("分片查询等待被中断");
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        }
+        return prepared.plan.merge(partials);
+    }
+
+    private static void cancelAll(List<Future<ColumnarResult>> futures) {
+        for (Future<ColumnarResult> f : futures) f.cancel(true);
+    }
+
+    /** 表的 MIN / MAX（分区列上通常有索引，两端各取一行）；查不到返回 null */
+    private Bounds tableBounds(DataSourceDomain domain, SqlDialect dialect, ScatterGatherPlanner.Plan plan) {
+        String key = domain.name() + "." + plan.table;
+        long now = System.currentTimeMillis();
+        Bounds b = bounds.get(key);
+        if (b != null && b.expiresAt > now) return b;
+
+        try {
+            String column = dialect.quoteIdentifier(plan.column);
+            String sql = "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + dialect.quoteIdentifier(plan.table);
+            Bounds fresh = WorkloadContext.call(WorkloadClass.METADATA, () ->
+                    namedJdbc.getJdbcTemplate().query(sql, rs -> rs.next()
+                            ? new Bounds(ScatterGatherPlanner.toLocalDate(rs.getObject(1)),
+                                         ScatterGatherPlanner.toLocalDate(rs.getObject(2)),
+                                         now + queryProperties.getScatterGather().getBoundsTtl().toMillis())
+                            : null));
+            if (fresh == null || fresh.min == null || fresh.max == null) return null;
+            bounds.put(key, fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            logger.debug("[scatter] bounds lookup failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, String> partitionColumns(QueryProperties.ScatterGather cfg) {
+        Map<String, String> m = new HashMap<>();
+        if (cfg.getPartitionColumns() != null) {
+            cfg.getPartitionColumns().forEach((t, c) -> m.put(t.toLowerCase(Locale.ROOT), c.toLowerCase(Locale.ROOT)));
+        }
+        return m;
+    }
+}
@@ -1,8 +1,13 @@
 package com.intelligent_data_analysis_system.service;
 
-import com.intelligent_data_analysis_system.infrastructure.datasource.DomainContext;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
 import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -11,11 +16,13 @@ import java.sql.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SchemaTextProvider {
 
     private final DataSource dataSource; // 动态数据源最终返回的 DataSource（你现在已能按 domain 切）
+    private final DomainRegistry domainRegistry;
     
     // Schema 缓存，key: domain_maxTables_maxColsPerTable
     private final Map<String, String> schemaCache = new ConcurrentHashMap<>();
@@ -26,13 +33,92 @@ public class SchemaTextProvider {
     // 缓存条目的过期时间记录
     private final Map<String, Long> cacheExpiryTimes = new ConcurrentHashMap<>();
 
+    // 按元数据登记表结构失败的域 -> 下次可以重试的时间
+    private final Map<DataSourceDomain, Long> catalogRetryAt = new ConcurrentHashMap<>();
+
+    /**
+     * 注册表里新增的域没有实体类，SchemaCatalog 里没有它的表：第一次执行该域的查询时扫一遍数据库元数据登记进去
+     * （表、列的 Java 类型、单列主键），优化 / 键集分页 / 近似查询 / 引擎竞速的列类型判断才用得上。
+     * 内置域和已登记的域直接返回；扫描失败记警告，CACHE_EXPIRY_TIME 之后再试，这期间这些改写按“不认识的表”跳过。
+     */
+    public void loadCatalog(DataSourceDomain domain) {
+        SchemaCatalog catalog = SchemaCatalog.get();
+        if (catalog.hasDomain(domain.name())) return;
+        Long retryAt = catalogRetryAt.get(domain);
+        if (retryAt != null && System.currentTimeMillis() < retryAt) return;
+        synchronized (catalogRetryAt) {
+            if (catalog.hasDomain(domain.name())) return;
+            try {
+                List<SchemaCatalog.TableInfo> tables = WorkloadContext.call(WorkloadClass.METADATA, () -> scanTables(domain));
+                catalog.registerTables(domain.name(), tables);
+                catalogRetryAt.remove(domain);
+                log.info("[schema] registered {} tables for {} from database metadata", tables.size(), domain);
+            } catch (RuntimeException e) {
+                catalogRetryAt.put(domain, System.currentTimeMillis() + CACHE_EXPIRY_TIME);
+                log.warn("[schema] load catalog for {} failed: {}", domain, e.getMessage());
+            }
+        }
+    }
+
+    private List<SchemaCatalog.TableInfo> scanTables(DataSourceDomain domain) {
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withDomain(domain).open();
+             Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData md = conn.getMetaData();
+            String catalog = conn.getCatalog();
+            String schema = conn.getSchema();
+
+            List<String> names = new ArrayList<>();
+            try (ResultSet rs = md.getTables(catalog, schema, "%", new String[]{"TABLE"})) {
+                while (rs.next()) names.add(rs.getString("TABLE_NAME"));
+            }
+            List<SchemaCatalog.TableInfo> tables = new ArrayList<>();
+            for (String table : names) {
+                Map<String, Class<?>> cols = new LinkedHashMap<>();
+                try (ResultSet crs = md.getColumns(catalog, schema, table, "%")) {
+                    while (crs.next()) {
+                        cols.put(crs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT), javaType(crs.getInt("DATA_TYPE")));
+                    }
+                }
+                List<String> pk = new ArrayList<>();
+                try (ResultSet prs = md.getPrimaryKeys(catalog, schema, table)) {
+                    while (prs.next()) pk.add(prs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                }
+                // 复合主键当作没有唯一键：键集分页 / 去重改写只认单列主键
+                tables.add(new SchemaCatalog.TableInfo(table.toLowerCase(Locale.ROOT),
+                        pk.size() == 1 ? pk.get(0) : null, cols));
+            }
+            return tables;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /** JDBC 类型 -> 实体字段会用的 Java 类型（和内置域 entity 里的写法一致） */
+    static Class<?> javaType(int sqlType) {
+        return switch (sqlType) {
+            case Types.BIT, Types.BOOLEAN -> Boolean.class;
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> Integer.class;
+            case Types.BIGINT -> Long.class;
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> Double.class;
+            case Types.NUMERIC, Types.DECIMAL -> java.math.BigDecimal.class;
+            case Types.DATE -> java.time.LocalDate.class;
+            case Types.TIME, Types.TIME_WITH_TIMEZONE -> java.time.LocalTime.class;
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> java.time.LocalDateTime.class;
+            default -> String.class;
+        };
+    }
+
     /**
      * 生成紧凑 schemaText：TABLE t (col TYPE [PK] [FK -> x.y], ...)
-     * @param domain FINANCE / HEALTHCARE
+     * 域在 app.domains 里配了静态 schema 时直接用配置的文本，不扫元数据
+     * @param domain 域名或别名（FINANCE / HEALTHCARE ...）
      * @param maxTables 最多输出多少张表（防止太长）
      * @param maxColsPerTable 每表最多多少列（防止太长）
      */
     public String getSchemaText(String domain, int maxTables, int maxColsPerTable) {
+        String configured = domainRegistry.schemaText(domainRegistry.require(domain));
+        if (configured != null) return configured;
+
         // 生成缓存键
         String cacheKey = generateCacheKey(domain, maxTables, maxColsPerTable);
         
@@ -42,7 +128,9 @@ public class SchemaTextProvider {
         }
         
         // 缓存无效，重新生成schema
-        String schemaText = generateSchemaText(domain, maxTables, maxColsPerTable);
+        // 元数据扫描走 METADATA 隔离舱，不和交互查询抢连接
+        String schemaText = WorkloadContext.call(WorkloadClass.METADATA,
+                () -> generateSchemaText(domain, maxTables, maxColsPerTable));
         
         // 更新缓存
         if (!schemaText.isEmpty()) {
@@ -76,8 +164,9 @@ public class SchemaTextProvider {
      * 实际生成schemaText的方法
      */
     private String generateSchemaText(String domain, int maxTables, int maxColsPerTable) {
-        DomainContext.set(DataSourceDomain.valueOf(domain));
-        try (Connection conn = dataSource.getConnection()) {
+        DataSourceDomain dsDomain = domainRegistry.require(domain);
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withDomain(dsDomain).open();
+             Connection conn = dataSource.getConnection()) {
             DatabaseMetaData md = conn.getMetaData();
 
             String catalog = conn.getCatalog();
@@ -138,8 +227,6 @@ public class SchemaTextProvider {
         } catch (Exception e) {
             // schemaText 获取失败时也别让全流程挂掉
             return "";
-        } finally {
-            DomainContext.clear();
         }
     }
 }
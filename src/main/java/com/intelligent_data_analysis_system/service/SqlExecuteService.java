@@ -1,21 +1,58 @@
 package com.intelligent_data_analysis_system.service;
 
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
 import com.intelligent_data_analysis_system.infrastructure.datasource.DomainContext;
 import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainRegistry;
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClassContext;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
+import com.intelligent_data_analysis_system.infrastructure.datasource.mongo.DomainMongoTemplates;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
 import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import com.intelligent_data_analysis_system.utils.Fixer.SqlFailure;
+import com.intelligent_data_analysis_system.utils.Fixer.SqlFailureRepairer;
 import com.intelligent_data_analysis_system.utils.Generator.SqlGuard;
+import com.intelligent_data_analysis_system.utils.Optimizer.ApproximateRewriter;
+import com.intelligent_data_analysis_system.utils.Optimizer.QueryClassifier;
+import com.intelligent_data_analysis_system.utils.Optimizer.SqlLogicalOptimizer;
+import com.intelligent_data_analysis_system.utils.Rewriter.KeysetPaginator;
+import com.intelligent_data_analysis_system.utils.Rewriter.SargableDateRewriter;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlLiteralParameterizer;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import com.intelligent_data_analysis_system.utils.SingleFlight;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialectTranspiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
+import jakarta.annotation.PreDestroy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,9 +63,10 @@ public class SqlExecuteService {
 
     private static final Logger logger = LoggerFactory.getLogger(SqlExecuteService.class);
 
+    private static final ResultSetExtractor<ColumnarResult> COLUMNAR = ColumnarResult::from;
+
     private final NamedParameterJdbcTemplate namedJdbc;
-    private final MongoTemplate financeMongoTemplate;
-    private final MongoTemplate healthcareMongoTemplate;
+    private final DomainMongoTemplates mongoTemplates;
 
     /**
      * 你仓库里已经有 app.routing.dbms（mysql / pgsql），这里直接复用。
@@ -37,43 +75,103 @@ public class SqlExecuteService {
     @Value("${app.routing.dbms}")
     private String defaultDbms;
 
+    private final QueryProperties queryProperties;
+    private final QueryResultStreamer queryResultStreamer;
+    private final QueryResultCache queryResultCache;
+    private final RunningQueryRegistry runningQueries;
+    private final CostAdmissionGuard admissionGuard;
+    private final PageCursorCodec pageCursors;
+    private final ScatterGatherExecutor scatterGather;
+    private final EngineRacer engineRacer;
+    private final BatchQueryExecutor batchExecutor;
+    private final DomainRegistry domainRegistry;
+    private final SchemaTextProvider schemaTextProvider;
+
+    /** 键是 QueryResultCache.Key；关掉合并时每次一个新键（独立执行，但同样可取消、受截止时间约束） */
+    private final SingleFlight<Object, ColumnarResult> singleFlight;
+
+    /** 近似查询 MySQL 主键范围抽样用的 [MIN, MAX, 过期时间]，按 域.表 缓存 key-range-ttl */
+    private final Map<String, long[]> keyRanges = new ConcurrentHashMap<>();
+
     public SqlExecuteService(NamedParameterJdbcTemplate namedJdbc,
-                             @Qualifier("financeMongoTemplate") MongoTemplate financeMongoTemplate,
-                             @Qualifier("healthcareMongoTemplate") MongoTemplate healthcareMongoTemplate) {
+                             DomainMongoTemplates mongoTemplates,
+                             QueryProperties queryProperties,
+                             QueryResultStreamer queryResultStreamer,
+                             QueryResultCache queryResultCache,
+                             RunningQueryRegistry runningQueries,
+                             CostAdmissionGuard admissionGuard,
+                             PageCursorCodec pageCursors,
+                             ScatterGatherExecutor scatterGather,
+                             EngineRacer engineRacer,
+                             BatchQueryExecutor batchExecutor,
+                             DomainRegistry domainRegistry,
+                             SchemaTextProvider schemaTextProvider,
+                             TaskThreads taskThreads) {
         this.namedJdbc = namedJdbc;
-        this.financeMongoTemplate = financeMongoTemplate;
-        this.healthcareMongoTemplate = healthcareMongoTemplate;
+        this.queryProperties = queryProperties;
+        this.queryResultStreamer = queryResultStreamer;
+        this.queryResultCache = queryResultCache;
+        this.runningQueries = runningQueries;
+        this.admissionGuard = admissionGuard;
+        this.pageCursors = pageCursors;
+        this.scatterGather = scatterGather;
+        this.engineRacer = engineRacer;
+        this.batchExecutor = batchExecutor;
+        this.domainRegistry = domainRegistry;
+        this.schemaTextProvider = schemaTextProvider;
+        this.singleFlight = new SingleFlight<>("sql-flight", taskThreads.unbounded("sql-flight"));
+        this.mongoTemplates = mongoTemplates;
     }
 
     public List<Map<String, Object>> query(String domain, String sql) {
-        DomainContext.set(DataSourceDomain.valueOf(domain));
-        try {
-            return query(domain, sql, Collections.emptyMap());
-        } finally {
-            DomainContext.clear();
-        }
+        return query(domain, sql, Collections.emptyMap());
     }
 
     public List<Map<String, Object>> query(String domain,
                                            String sql,
                                            Map<String, ?> params) {
-        DomainContext.set(DataSourceDomain.valueOf(domain));
-        try {
-            return namedJdbc.queryForList(sql, params);
-        } finally {
-            DomainContext.clear();
-        }
+        return DomainContext.call(domainRegistry.require(domain),
+                () -> namedJdbc.queryForList(SargableDateRewriter.rewrite(sql), params));
+    }
+
+    /** 同 query，结果按列式存储（ColumnarResult），给批处理 / 投票 / 报告用 */
+    public ColumnarResult queryColumnar(String domain, String sql) {
+        return DomainContext.call(domainRegistry.require(domain),
+                () -> namedJdbc.query(SargableDateRewriter.rewrite(sql), Collections.emptyMap(), COLUMNAR));
+    }
+
+    /**
+     * 同 queryColumnar，拿到 PreparedStatement 时把 Statement.cancel 注册给 onCancel、设语句超时（timeoutSeconds &lt;= 0 不设）：
+     * 调用方不要结果了（投票超时 / 落选）就能在数据库端中止，不只是中断执行线程（JDBC 不响应中断）
+     */
+    public ColumnarResult queryColumnar(String domain, String sql, Consumer<Runnable> onCancel, int timeoutSeconds) {
+        return DomainContext.call(domainRegistry.require(domain),
+                () -> queryCancellable(namedJdbc.getJdbcTemplate(), SargableDateRewriter.rewrite(sql),
+                        Collections.emptyMap(), onCancel, timeoutSeconds, COLUMNAR, 0));
     }
 
 
     /**
      * 统一执行入口（给 controller / agent 用）
      * body 支持字段：
-     * - domain: "finance" / "healthcare" 或者直接传 enum 名（FINANCE_MYSQL 等）
+     * - domain: 域名或别名（app.domains 里登记的，如 "finance" / "healthcare"）
      * - dbms: "mysql" / "pgsql"（可选；不传就用 app.routing.dbms）
+     * - sqlDialect: sql 是按哪个方言写的（可选；和 dbms 不同时先转译）
      * - sql:  要执行的 SQL
      * - params: 命名参数（可选）
      * - maxRows: 行数上限（可选，默认 200）
+     * - useCache: 是否读写结果缓存（可选，默认 true；要最新数据时传 false）
+     * - pageSize: 分页（可选）：按唯一键稳定排序、键集翻页，响应 page.nextCursor 为下一页游标；分页时忽略 maxRows，
+     *   原 SQL 的 LIMIT 作为总行数上限
+     * - cursor: 上一页返回的 nextCursor；传了就只看游标（SQL、数据源、参数都在游标里），其它字段除 queryId / timeoutMs 外忽略
+     * 执行前过 CostAdmissionGuard（EXPLAIN 代价准入），响应里 admission 字段写明放行 / 改写的原因
+     * - approximate: true 时按近似查询执行（抽样，见 ApproximateRewriter），samplePercent 可选；
+     *   响应里 approximate 字段给出方法和 95% 误差区间，查询形状不支持时按精确查询执行并写明原因。不能和分页一起用
+     * - race: true 时引擎竞速（见 EngineRacer）：转译后在 MySQL 和 PG 上同时跑，取先返回的；同一指纹学到赢家后只跑赢家。
+     *   响应里 engine 字段写明竞速 / 按结论选的引擎；分页、近似查询、dbms 不是部署的主引擎时忽略
+     * - queryId: 查询 id（可选，不传生成）；执行中可用 DELETE /api/debug/queries/{queryId} 取消
+     * - timeoutMs: 截止时间（可选，默认 app.query.deadline.execution-timeout）；
+     *   调用线程上已有 DeadlineContext（/api/ai/query）时用那个剩余预算
      */
     public Map<String, Object> execute(Map<String, Object> body) {
         Object d = body.get("domain");
@@ -81,31 +179,81 @@ public class SqlExecuteService {
 
         if (body == null) body = Collections.emptyMap();
 
-        String originalSql = asString(body.get("sql"));
+        // 翻页：数据源 / SQL / 参数从游标里还原
+        PageCursorCodec.Cursor cursor = null;
+        String cursorToken = asString(body.get("cursor"));
+        if (cursorToken != null && !cursorToken.isBlank()) {
+            cursor = pageCursors.decode(cursorToken);
+            Map<String, Object> resumed = new LinkedHashMap<>(body);
+            resumed.put("domain", cursor.domain);
+            resumed.put("dbms", cursor.dbms);
+            resumed.put("sql", cursor.sql);
+            resumed.put("params", cursor.params);
+            resumed.remove("sqlDialect");
+            body = resumed;
+        }
+        int pageSize = cursor != null ? cursor.pageSize : asInt(body.get("pageSize"), 0);
+        pageSize = Math.min(pageSize, queryProperties.getPagination().getMaxPageSize());
+        QueryProperties.Approximate approxCfg = queryProperties.getApproximate();
+        boolean approximate = approxCfg.isEnabled() && Boolean.parseBoolean(String.valueOf(body.get("approximate")));
+        if (approximate && pageSize > 0) throw new BusinessException("近似查询不支持分页");
+        double samplePercent = Math.max(approxCfg.getMinSamplePercent(), Math.min(approxCfg.getMaxSamplePercent(),
+                asDouble(body.get("samplePercent"), approxCfg.getSamplePercent())));
+        boolean race = Boolean.parseBoolean(String.valueOf(body.get("race")));
+
         String domain = asString(body.get("domain"));
         String dbms = asString(body.getOrDefault("dbms", defaultDbms));
+        String originalSql = prepareSql(body, domain, dbms);
         int maxRows = asInt(body.get("maxRows"), 200);
-
-        SqlGuard.validateReadOnlySingleStatement(originalSql);
+        boolean useCache = queryResultCache.isEnabled() && !"false".equalsIgnoreCase(String.valueOf(body.get("useCache")));
 
         DataSourceDomain dsDomain = resolveDomain(domain, dbms);
+        // 注册表里新增的域：优化 / 分页 / 近似查询 / 竞速要的表结构按数据库元数据补进 SchemaCatalog
+        if (!"mongodb".equalsIgnoreCase(dbms) && !"mongo".equalsIgnoreCase(dbms)) schemaTextProvider.loadCatalog(dsDomain);
 
         long t0 = System.currentTimeMillis();
-        DomainContext.set(dsDomain);
-        try {
+        long timeoutMs = asLong(body.get("timeoutMs"), 0);
+        Deadline requested = DeadlineContext.isSet() ? DeadlineContext.get()
+                : timeoutMs > 0 ? Deadline.afterMillis(timeoutMs)
+                : Deadline.after(queryProperties.getDeadline().getExecutionTimeout());
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withDomain(dsDomain).open();
+             RunningQueryRegistry.Handle handle = runningQueries.start(asString(body.get("queryId")), "EXECUTING", requested)) {
+            handle.stage("EXECUTING", dsDomain.name(), originalSql);
+            Deadline deadline = handle.deadline();
             Map<String, Object> params = asMap(body.get("params"));
 
-            // 设置重试次数
+            // 最多执行次数（含修复后重跑）
             int maxRetries = 3;
+            boolean transientRetried = false;
             String sql = originalSql;
 
             for (int attempt = 1; attempt <= maxRetries; attempt++) {
+                if (deadline.isExpired()) throw deadlineExceeded(handle.id(), deadline, null);
                 logger.info("Executing SQL for domain: {}, attempt: {}", domain, attempt);
                 logger.debug("SQL to execute: {}", sql);
 
                 try {
-                    // 确保有 LIMIT 子句
-                    String sqlWithLimit = SqlGuard.ensureLimit(sql, maxRows);
+                    String sqlWithLimit;
+                    KeysetPaginator.Page page = null;
+                    long pageRows = 0;
+                    long remaining = -1;
+                    if (pageSize > 0) {
+                        if ("mongodb".equalsIgnoreCase(dbms) || "mongo".equalsIgnoreCase(dbms)) {
+                            throw new BusinessException("MongoDB 数据源不支持分页");
+                        }
+                        // 先优化（可能去掉主键上的 DISTINCT），再改成一页：本页多取一行判断有没有下一页
+                        String base = SqlLogicalOptimizer.optimize(dsDomain.name(), sql);
+                        remaining = cursor != null ? cursor.remaining : KeysetPaginator.originalLimit(base);
+                        pageRows = remaining < 0 ? pageSize : Math.min(pageSize, remaining);
+                        long fetch = remaining >= 0 && remaining <= pageSize ? pageRows : pageRows + 1;
+                        page = paginate(dsDomain, dbms, base, cursor == null ? null : cursor.after, fetch);
+                        sqlWithLimit = page.pageable ? page.sql : SqlGuard.ensureLimit(base, maxRows);
+                    } else {
+                        // 确保有 LIMIT 子句
+                        sqlWithLimit = SqlGuard.ensureLimit(sql, maxRows);
+                        // 逻辑优化（去冗余 DISTINCT/ORDER BY、NOT IN -> NOT EXISTS、LIMIT 下推等）
+                        sqlWithLimit = SqlLogicalOptimizer.optimize(dsDomain.name(), sqlWithLimit);
+                    }
                     logger.debug("SQL with limit: {}", sqlWithLimit);
 
                     // MongoDB 分支：必须在 namedJdbc 之前 return 掉
@@ -118,243 +266,567 @@ public class SqlExecuteService {
                         return resp;
                     }
 
-                    // 尝试执行SQL
-                    List<Map<String, Object>> rows =
-                            namedJdbc.query(sqlWithLimit, params, new ColumnMapRowMapper());
+                    // 字面量提成绑定参数：同形状 SQL 文本一致，走驱动/服务端的预编译语句缓存
+                    SqlLiteralParameterizer.Parameterized bound = parameterize(sqlWithLimit);
+                    Map<String, Object> execParams = params;
+                    if (!bound.params.isEmpty() || (page != null && !page.params.isEmpty())) {
+                        execParams = new LinkedHashMap<>(params);
+                        execParams.putAll(bound.params);
+                        if (page != null) execParams.putAll(page.params);
+                    }
+
+                    // 近似查询：改写成样本上的部分聚合（MySQL 按主键范围抽样，要先知道主键的 MIN / MAX）
+                    ApproximateRewriter.Plan approx = !approximate ? null
+                            : ApproximateRewriter.plan(dsDomain.name(), SqlDialect.of(dbms), bound.sql, samplePercent,
+                                    approxCfg.getSampleSeed(), (table, pk) -> keyRange(dsDomain, SqlDialect.of(dbms), table, pk));
+
+                    // 代价准入：EXPLAIN 超阈值的收紧 LIMIT 或直接拒绝（计划按指纹缓存，缓存命中的查询也不用再 EXPLAIN）
+                    // 近似查询按改写后的 SQL 准入（指纹加后缀单独缓存计划），且不能收紧 LIMIT（投影少一行结果就错了）
+                    CostAdmissionGuard.Decision admission = approx == null
+                            ? admissionGuard.check(dsDomain, SqlDialect.of(dbms), bound.sql, execParams,
+                                    bound.fingerprint, WorkloadContext.get(), true)
+                            : admissionGuard.check(dsDomain, SqlDialect.of(dbms), approx.sql, execParams,
+                                    bound.fingerprint + "~" + approx.method, WorkloadContext.get(), false);
+                    String execSql = admission.sql;
+                    // 查询类别决定借到连接后的会话配置（只读、服务端超时、work_mem ...）
+                    QueryClass queryClass = classify(execSql);
+
+                    // 结果缓存：参数化后的 SQL + 绑定值 + maxRows 相同即命中，不再占连接执行
+                    QueryResultCache.Key cacheKey = useCache
+                            ? QueryResultCache.Key.of(dsDomain.name(), dbms, execSql, execParams, maxRows)
+                            : null;
+                    QueryResultCache.Hit hit = cacheKey == null ? null : queryResultCache.get(cacheKey);
+
+                    // 尝试执行SQL：结果按列存，rows 是序列化时才取值的 Map 视图
+                    ColumnarResult result;
+                    ScatterGatherExecutor.Prepared scatter = null;
+                    EngineRacer.Plan racePlan = null;
+                    if (hit != null) {
+                        result = hit.result;
+                    } else {
+                        // 引擎竞速：两个引擎同时跑，或按学到的结论只跑赢家
+                        if (race && page == null && approx == null) {
+                            racePlan = engineRacer.plan(dsDomain, SqlDialect.of(dbms), execSql, bound.fingerprint);
+                        }
+                        // 大表聚合按日期范围拆片并发执行（分页查询不拆：键集谓词和隐藏键列要原样执行）
+                        if (page == null && approx == null && (racePlan == null || !racePlan.usesAlternate())) {
+                            scatter = scatterGather.prepare(dsDomain, SqlDialect.of(dbms), execSql, execParams);
+                        }
+                        // 合并只看 SQL + 绑定值；关掉合并时用一次性的键（不能用 queryId：客户端复用 id 会把不同的 SQL 合到一起）
+                        Object flightKey = !queryProperties.getSingleFlight().isEnabled() ? new Object()
+                                : cacheKey != null ? cacheKey
+                                : QueryResultCache.Key.of(dsDomain.name(), dbms, execSql, execParams, maxRows);
+                        result = querySingleFlight(dsDomain, flightKey, execSql, execParams, deadline, queryClass,
+                                scatter, racePlan);
+                        if (cacheKey != null) queryResultCache.put(cacheKey, result);
+                    }
 
-                    List<String> columns = rows.isEmpty()
-                            ? List.of()
-                            : new ArrayList<>(rows.get(0).keySet());
+                    // 缓存里存的是样本上的部分聚合，每次放大 / 算误差区间
+                    Map<String, Object> approxInfo = null;
+                    if (approx != null) {
+                        ApproximateRewriter.Estimate estimate = approx.finish(result);
+                        result = estimate.result;
+                        approxInfo = estimate.meta;
+                    } else if (approximate) {
+                        approxInfo = new LinkedHashMap<>();
+                        approxInfo.put("applied", false);
+                        approxInfo.put("reason", ApproximateRewriter.exactReason(dsDomain.name(), SqlDialect.of(dbms), bound.sql));
+                    }
+
+                    Map<String, Object> pageInfo = null;
+                    if (page != null) {
+                        int pageNo = cursor == null ? 1 : cursor.page;
+                        pageInfo = new LinkedHashMap<>();
+                        pageInfo.put("page", pageNo);
+                        pageInfo.put("pageSize", pageSize);
+                        if (page.pageable) {
+                            // 多取的那一行只用来判断有没有下一页；游标从本页最后一行的隐藏排序键取值
+                            boolean hasMore = result.rowCount() > pageRows;
+                            ColumnarResult visible = result.head((int) pageRows);
+                            String next = null;
+                            if (hasMore) {
+                                List<Object> after = new ArrayList<>(page.keyCount);
+                                int last = visible.rowCount() - 1;
+                                for (int k = 0; k < page.keyCount; k++) {
+                                    after.add(visible.get(last, visible.columnIndex(KeysetPaginator.keyAlias(k))));
+                                }
+                                next = pageCursors.encode(new PageCursorCodec.Cursor(dsDomain.name(), dbms, sql, params,
+                                        after, remaining < 0 ? -1 : remaining - pageRows, pageSize, pageNo + 1));
+                            }
+                            result = withoutKeyColumns(visible);
+                            pageInfo.put("hasMore", hasMore);
+                            pageInfo.put("nextCursor", next);
+                        } else {
+                            pageInfo.put("hasMore", false);
+                            pageInfo.put("nextCursor", null);
+                        }
+                    }
 
                     long elapsed = System.currentTimeMillis() - t0;
-                    logger.info("SQL executed successfully for domain: {}, rows returned: {}, time: {}ms",
-                            domain, rows.size(), elapsed);
+                    logger.info("SQL executed successfully for domain: {}, rows returned: {}, time: {}ms, fingerprint: {}, cache: {}",
+                            domain, result.rowCount(), elapsed, bound.fingerprint,
+                            hit != null ? hit.tier : cacheKey != null ? "MISS" : "BYPASS");
 
                     Map<String, Object> resp = new LinkedHashMap<>();
+                    resp.put("queryId", handle.id());
                     resp.put("dataSource", dsDomain.name());
                     resp.put("elapsedMs", elapsed);
-                    resp.put("columns", columns);
-                    resp.put("rows", rows);
-                    resp.put("rowCount", rows.size());
+                    resp.put("fingerprint", bound.fingerprint);
+                    resp.put("queryClass", queryClass.name());
+                    resp.put("columns", result.columns());
+                    resp.put("rows", result.rowMaps());
+                    resp.put("rowCount", result.rowCount());
+                    resp.put("cache", cacheInfo(cacheKey, hit));
+                    resp.put("admission", admission.toMap());
+                    if (scatter != null) resp.put("scatter", scatter.toMap());
+                    if (approxInfo != null) resp.put("approximate", approxInfo);
+                    if (racePlan != null) resp.put("engine", racePlan.toMap());
+                    if (pageInfo != null) resp.put("page", pageInfo);
                     return resp;
                 } catch (Exception e) {
-                    logger.warn("SQL execution failed for domain: {}, attempt: {}, error: {}",
-                            domain, attempt, e.getMessage());
+                    // 准入拒绝不是执行失败，修复重跑也还是同一个计划
+                    if (e instanceof BusinessException) throw e;
+                    SqlFailure failure = SqlFailure.classify(e);
+                    logger.warn("SQL execution failed for domain: {}, attempt: {}, failure: {}, error: {}",
+                            domain, attempt, failure, e.getMessage());
+
+                    // 超时 / 被取消：修复重跑只会再超时一次
+                    if (deadline.isExpired() || failure.kind == SqlFailure.Kind.TIMEOUT) {
+                        throw deadlineExceeded(handle.id(), deadline, e);
+                    }
 
-                    // 如果是最后一次尝试，抛出异常
                     if (attempt == maxRetries) {
                         logger.error("All SQL execution attempts failed for domain: {}, final SQL: {}",
                                 domain, sql);
                         throw e;
                     }
 
-                    // 尝试修复SQL
-                    String oldSql = sql;
-                    sql = repairSqlForExecution(sql, e.getMessage());
-                    logger.debug("SQL repair attempt - from: {}, to: {}", oldSql, sql);
+                    // 死锁 / 串行化冲突：原样重试一次
+                    if (failure.isRetryable() && !transientRetried) {
+                        transientRetried = true;
+                        continue;
+                    }
 
-                    // 如果修复后的SQL与原始SQL相同，不再重试
-                    if (sql.equals(oldSql)) {
-                        logger.warn("SQL repair did not change the statement, stopping retry for domain: {}", domain);
+                    // 按错误码定点修复；没有修复就立刻失败，不重复执行注定失败的 SQL
+                    SqlFailureRepairer.Repair repair = SqlFailureRepairer.repair(dsDomain.name(), sql, failure);
+                    if (!repair.repaired()) {
+                        logger.warn("No targeted repair for {}, fail fast for domain: {}", failure, domain);
                         throw e;
                     }
+                    logger.debug("SQL repair attempt - from: {}, to: {}", sql, repair.sql);
+                    sql = repair.sql;
                 }
             }
 
             // 理论上不会到达这里
             throw new RuntimeException("SQL执行失败，重试次数已耗尽");
-        } finally {
-            DomainContext.clear();
         }
     }
 
     /**
-     * 根据执行错误修复SQL
-     * @param sql 原始SQL
-     * @param errorMessage 错误信息
-     * @return 修复后的SQL
+     * 流式执行：入参同 execute（maxRows 默认 app.query.streaming.max-rows，0 不限；timeoutMs 不传不限时，
+     * 大结果导出只受 MVC 异步超时约束）。
+     * 校验、转译、参数化在调用线程里做完（出错直接 4xx/5xx），返回的 body 在 MVC 异步线程里游标取数、边读边写。
      */
-    private String repairSqlForExecution(String sql, String errorMessage) {
-        if (sql == null || sql.trim().isEmpty()) {
-            return sql;
-        }
+    public StreamingResponseBody stream(Map<String, Object> body, QueryResultStreamer.Format format) {
+        if (body == null) throw new BusinessException("请求体不能为空");
 
-        String repaired = sql;
+        String domain = asString(body.get("domain"));
+        String dbms = asString(body.getOrDefault("dbms", defaultDbms));
+        if ("mongodb".equalsIgnoreCase(dbms) || "mongo".equalsIgnoreCase(dbms)) {
+            throw new BusinessException("MongoDB 数据源不支持流式执行");
+        }
+        String sql = prepareSql(body, domain, dbms);
+        int maxRows = asInt(body.get("maxRows"), queryProperties.getStreaming().getMaxRows());
+        DataSourceDomain dsDomain = resolveDomain(domain, dbms);
 
-        // 根据错误信息进行针对性修复
-        errorMessage = errorMessage.toLowerCase();
+        sql = SqlLogicalOptimizer.optimize(dsDomain.name(), sql);
+        SqlLiteralParameterizer.Parameterized bound = parameterize(sql);
+        Map<String, Object> params = new LinkedHashMap<>(asMap(body.get("params")));
+        params.putAll(bound.params);
+
+        // 流式导出只做放行 / 拒绝，不改用户要的行数
+        DomainContext.call(dsDomain, () -> admissionGuard.check(dsDomain, SqlDialect.of(dbms), bound.sql, params,
+                bound.fingerprint, WorkloadContext.get(), false));
+
+        logger.info("Streaming SQL for domain: {}, maxRows: {}, format: {}, fingerprint: {}",
+                dsDomain.name(), maxRows, format, bound.fingerprint);
+        String queryId = asString(body.get("queryId"));
+        long timeoutMs = asLong(body.get("timeoutMs"), 0);
+        QueryClass queryClass = classify(bound.sql);
+        Deadline deadline = timeoutMs > 0 ? Deadline.afterMillis(timeoutMs) : Deadline.none();
+        // 在 MVC 异步线程里写：调用线程的上下文（负载类别等）整体带过去，截止时间换成流式导出自己的
+        ExecutionContext ctx = ExecutionContext.current().withDomain(dsDomain).withQueryClass(queryClass)
+                .withDeadline(deadline);
+        return out -> {
+            try (ExecutionContext.Scope scope = ctx.open()) {
+                queryResultStreamer.write(dsDomain, bound.sql, params, maxRows, bound.fingerprint, format,
+                        queryId, deadline, out);
+            }
+        };
+    }
 
-        // 处理列名歧义错误
-        if (errorMessage.contains("column") && errorMessage.contains("ambiguous")) {
-            // 尝试添加表名前缀到SELECT列中
-            repaired = addTablePrefixToAmbiguousColumns(repaired);
+    /**
+     * 批量只读查询：同一个域的多条独立 SELECT（报表 / 看板一次取齐）借一个连接、一次往返执行，每条一个结果。
+     * body 支持字段：
+     * - domain / dbms / sqlDialect / params / maxRows / useCache / queryId / timeoutMs：同 execute，对每条语句生效
+     * - statements: 语句列表，每项是 SQL 字符串，或 {sql, params, maxRows, sqlDialect}（覆盖批次上的同名字段）
+     * 每条照常转译、加 LIMIT、优化、参数化、过代价准入、查结果缓存；缓存没命中的一起发出去（见 BatchQueryExecutor）。
+     * 单条出错（校验 / 准入 / 执行）只影响那一条，results 里对应项给出 error；不做修复重跑。
+     */
+    public Map<String, Object> executeBatch(Map<String, Object> body) {
+        if (body == null) throw new BusinessException("请求体不能为空");
+        QueryProperties.Batch cfg = queryProperties.getBatch();
+        if (!cfg.isEnabled()) throw new BusinessException("批量查询未开启");
+        List<?> statements = body.get("statements") instanceof List<?> l ? l : List.of();
+        if (statements.isEmpty()) throw new BusinessException("statements 不能为空");
+        if (statements.size() > cfg.getMaxStatements()) {
+            throw new BusinessException("一批最多 " + cfg.getMaxStatements() + " 条语句: " + statements.size());
         }
 
-        // 处理表名不存在的错误
-        if (errorMessage.contains("table") && errorMessage.contains("doesn't exist")) {
-            // 尝试移除可能的schema前缀
-            repaired = repaired.replaceAll("[^\\s]+\\.([\\w_]+)", "$1");
-            // 尝试修复常见的表名错误
-            repaired = fixCommonTableNameErrors(repaired);
+        String domain = asString(body.get("domain"));
+        if (domain != null) domain = domain.trim().toUpperCase();
+        String dbms = asString(body.getOrDefault("dbms", defaultDbms));
+        if ("mongodb".equalsIgnoreCase(dbms) || "mongo".equalsIgnoreCase(dbms)) {
+            throw new BusinessException("MongoDB 数据源不支持批量查询");
         }
+        DataSourceDomain dsDomain = resolveDomain(domain, dbms);
+        boolean useCache = queryResultCache.isEnabled() && !"false".equalsIgnoreCase(String.valueOf(body.get("useCache")));
 
-        // 处理列名不存在的错误
-//        if (errorMessage.contains("column") && errorMessage.contains("doesn't exist")) {
-//            // 尝试修复可能的列名拼写错误（简单处理：保留列名结构）
-//            repaired = repaired.replaceAll("(?i)SELECT\\s+.*\\s+FROM", "SELECT * FROM");
-//        }
-
-        // 处理语法错误
-        if (errorMessage.contains("you have an error in your sql syntax")) {
-            // 尝试修复常见的语法错误
-            repaired = repaired.replaceAll("(?<!['\\w])\\b(\\d{4}-\\d{2}-\\d{2})\\b(?!['\\w])", "'$1'");
-            repaired = repaired.replaceAll("'\\b(\\d+(\\.\\d+)?)\\b'", "$1");
-            repaired = repaired.replaceAll("=\\s*=", "=");
-        }
+        long t0 = System.currentTimeMillis();
+        long timeoutMs = asLong(body.get("timeoutMs"), 0);
+        Deadline requested = DeadlineContext.isSet() ? DeadlineContext.get()
+                : timeoutMs > 0 ? Deadline.afterMillis(timeoutMs)
+                : Deadline.after(queryProperties.getDeadline().getExecutionTimeout());
+        try (ExecutionContext.Scope scope = ExecutionContext.current().withDomain(dsDomain).open();
+             RunningQueryRegistry.Handle handle = runningQueries.start(asString(body.get("queryId")), "EXECUTING", requested)) {
+            handle.stage("EXECUTING", dsDomain.name(), statements.size() + " statements (batch)");
+            Deadline deadline = handle.deadline();
+
+            List<Map<String, Object>> results = new ArrayList<>(statements.size());
+            List<BatchQueryExecutor.Statement> pending = new ArrayList<>();
+            List<Integer> pendingIndex = new ArrayList<>();
+            List<QueryResultCache.Key> pendingKeys = new ArrayList<>();
+            QueryClass queryClass = null;
+            for (int i = 0; i < statements.size(); i++) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("index", i);
+                results.add(item);
+                try {
+                    Object raw = statements.get(i);
+                    Map<String, Object> stmt = raw instanceof Map<?, ?> ? asMap(raw) : Map.of("sql", String.valueOf(raw));
+                    Map<String, Object> sqlBody = new HashMap<>();
+                    sqlBody.put("sql", stmt.get("sql"));
+                    sqlBody.put("sqlDialect", stmt.getOrDefault("sqlDialect", body.get("sqlDialect")));
+                    int maxRows = asInt(stmt.getOrDefault("maxRows", body.get("maxRows")), 200);
+                    String sql = SqlGuard.ensureLimit(prepareSql(sqlBody, domain, dbms), maxRows);
+                    sql = SqlLogicalOptimizer.optimize(dsDomain.name(), sql);
+
+                    SqlLiteralParameterizer.Parameterized bound = parameterize(sql);
+                    Map<String, Object> params = new LinkedHashMap<>(asMap(body.get("params")));
+                    params.putAll(asMap(stmt.get("params")));
+                    params.putAll(bound.params);
+                    item.put("fingerprint", bound.fingerprint);
+
+                    CostAdmissionGuard.Decision admission = admissionGuard.check(dsDomain, SqlDialect.of(dbms),
+                            bound.sql, params, bound.fingerprint, WorkloadContext.get(), true);
+                    item.put("admission", admission.toMap());
+
+                    QueryResultCache.Key cacheKey = useCache
+                            ? QueryResultCache.Key.of(dsDomain.name(), dbms, admission.sql, params, maxRows)
+                            : null;
+                    QueryResultCache.Hit hit = cacheKey == null ? null : queryResultCache.get(cacheKey);
+                    if (hit != null) {
+                        putResult(item, hit.result);
+                        item.put("cache", cacheInfo(cacheKey, hit));
+                    } else {
+                        item.put("cache", cacheInfo(cacheKey, null));
+                        pending.add(new BatchQueryExecutor.Statement(admission.sql, params));
+                        // 整批一个连接：有一条是重聚合就按重聚合的会话配置
+                        QueryClass cls = classify(admission.sql);
+                        if (queryClass == null || cls == QueryClass.AGGREGATE) queryClass = cls;
+                        pendingIndex.add(i);
+                        pendingKeys.add(cacheKey);
+                    }
+                } catch (RuntimeException e) {
+                    item.put("error", e.getMessage());
+                }
+            }
 
-        // 处理未闭合的引号
-        if (errorMessage.contains("unclosed quotation mark")) {
-            int quoteCount = repaired.replaceAll("[^']", "").length();
-            if (quoteCount % 2 != 0) {
-                repaired = repaired + "'";
+            if (deadline.isExpired()) throw deadlineExceeded(handle.id(), deadline, null);
+            long capMs = queryProperties.getDeadline().getExecutionTimeout().toMillis();
+            int timeoutSeconds = deadline.remainingSeconds(capMs);
+            QueryClass batchClass = queryClass;
+            BatchQueryExecutor.Result batch = QueryClassContext.call(batchClass,
+                    () -> batchExecutor.execute(pending, deadline, timeoutSeconds));
+            for (int k = 0; k < pending.size(); k++) {
+                BatchQueryExecutor.Outcome outcome = batch.outcomes.get(k);
+                Map<String, Object> item = results.get(pendingIndex.get(k));
+                if (outcome.error != null) {
+                    item.put("error", outcome.error.getMessage());
+                    continue;
+                }
+                putResult(item, outcome.result);
+                if (pendingKeys.get(k) != null) queryResultCache.put(pendingKeys.get(k), outcome.result);
             }
+
+            long elapsed = System.currentTimeMillis() - t0;
+            logger.info("SQL batch executed for domain: {}, statements: {}, executed: {}, round trips: {}, mode: {}, time: {}ms",
+                    dsDomain.name(), statements.size(), pending.size(), batch.roundTrips, batch.mode, elapsed);
+
+            Map<String, Object> resp = new LinkedHashMap<>();
+            resp.put("queryId", handle.id());
+            resp.put("dataSource", dsDomain.name());
+            resp.put("elapsedMs", elapsed);
+            resp.put("mode", batch.mode);
+            resp.put("roundTrips", batch.roundTrips);
+            resp.put("results", results);
+            return resp;
         }
+    }
 
-        return repaired;
+    private static void putResult(Map<String, Object> item, ColumnarResult result) {
+        item.put("columns", result.columns());
+        item.put("rows", result.rowMaps());
+        item.put("rowCount", result.rowCount());
     }
 
-    /**
-     * 为模糊列添加表名前缀
-     */
-    private String addTablePrefixToAmbiguousColumns(String sql) {
-        // 简单实现：查找FROM子句中的表名，然后为SELECT中的列添加前缀
-        String lowerSql = sql.toLowerCase();
-
-        // 提取表名
-        String mainTableName = null;
-
-        // 处理FROM子句
-        int fromIndex = lowerSql.indexOf(" from ");
-        if (fromIndex != -1) {
-            String fromPart = sql.substring(fromIndex + 6);
-            int whereIndex = fromPart.toLowerCase().indexOf(" where ");
-            int joinIndex = fromPart.toLowerCase().indexOf(" join ");
-            int orderByIndex = fromPart.toLowerCase().indexOf(" order by ");
-            int groupByIndex = fromPart.toLowerCase().indexOf(" group by ");
-
-            // 找到FROM子句的结束位置
-            int endIndex = fromPart.length();
-            if (whereIndex != -1) endIndex = Math.min(endIndex, whereIndex);
-            if (joinIndex != -1) endIndex = Math.min(endIndex, joinIndex);
-            if (orderByIndex != -1) endIndex = Math.min(endIndex, orderByIndex);
-            if (groupByIndex != -1) endIndex = Math.min(endIndex, groupByIndex);
-
-            String mainTable = fromPart.substring(0, endIndex).trim();
-            mainTableName = mainTable.replaceAll("\\s+.*", ""); // 移除别名
-        }
+    /** execute / stream 共用：方言转译 + 日期谓词改写 + 只读校验 */
+    private String prepareSql(Map<String, Object> body, String domain, String dbms) {
+        String sql = asString(body.get("sql"));
 
-        // 如果找到表名，为SELECT列添加表名前缀
-        if (mainTableName != null) {
-            // 简单处理：只处理没有别名和复杂表达式的情况
-            // 找到SELECT和FROM之间的部分
-            int selectIndex = lowerSql.indexOf("select");
-            int fromIndex2 = lowerSql.indexOf(" from ");
-            if (selectIndex != -1 && fromIndex2 != -1) {
-                String selectPart = sql.substring(selectIndex + 6, fromIndex2).trim();
-
-                // 检查SELECT部分是否包含函数或复杂表达式
-                if (!selectPart.contains("(") && !selectPart.contains(")")) {
-                    // 简单情况：只包含列名
-                    String[] columns = selectPart.split(",");
-                    StringBuilder newSelectPart = new StringBuilder();
-                    for (int i = 0; i < columns.length; i++) {
-                        String column = columns[i].trim();
-                        // 跳过空列
-                        if (column.isEmpty()) continue;
-                        // 添加表名前缀
-                        if (i > 0) newSelectPart.append(", ");
-                        newSelectPart.append(mainTableName).append(".").append(column);
-                    }
-                    // 重新构建SQL
-                    return sql.substring(0, selectIndex + 6) + " " + newSelectPart.toString() + " " + sql.substring(fromIndex2);
-                }
-            }
+        // SQL 按另一个方言写的（缓存/别的后端生成的）：先转译到当前 dbms，不用重新生成
+        SqlDialect sqlDialect = SqlDialect.of(asString(body.get("sqlDialect")));
+        SqlDialect targetDialect = SqlDialect.of(dbms);
+        if (sqlDialect != null && targetDialect != null && sqlDialect != targetDialect) {
+            sql = SqlDialectTranspiler.transpile(sql, sqlDialect, targetDialect, domain);
         }
+        sql = SargableDateRewriter.rewrite(sql);
 
-        // 如果无法处理，返回原始SQL
+        SqlGuard.validateReadOnlySingleStatement(sql, targetDialect);
         return sql;
     }
 
+    /** 整数主键的 MIN / MAX（主键索引两端各取一行）；查不到、表空返回 null */
+    private long[] keyRange(DataSourceDomain dsDomain, SqlDialect dialect, String table, String pk) {
+        String key = dsDomain.name() + "." + table;
+        long now = System.currentTimeMillis();
+        long[] cached = keyRanges.get(key);
+        if (cached != null && cached[2] > now) return cached;
+
+        try {
+            String column = dialect.quoteIdentifier(pk);
+            String sql = "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + dialect.quoteIdentifier(table);
+            long[] fresh = WorkloadContext.call(WorkloadClass.METADATA, () ->
+                    namedJdbc.getJdbcTemplate().query(sql, rs -> {
+                        if (!rs.next() || rs.getObject(1) == null || rs.getObject(2) == null) return null;
+                        return new long[]{rs.getLong(1), rs.getLong(2),
+                                now + queryProperties.getApproximate().getKeyRangeTtl().toMillis()};
+                    }));
+            if (fresh != null) keyRanges.put(key, fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            logger.debug("[approx] key range lookup failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
     /**
-     * 修复常见的表名错误
+     * 同键查询合并：相同 (数据源, 参数化 SQL, 绑定值, maxRows) 的并发请求只占一个连接执行一次，结果 / 异常共享。
+     * 执行在 SingleFlight 的线程里，调用方的 ExecutionContext（域、负载类别、查询类别）在执行体里整体绑定；
+     * 截止时间不用发起者的：后加入的请求预算可能更长，执行不能跟着发起者一起到期 / 被取消。
+     * 执行体自己的预算是 execution-timeout（语句的 setQueryTimeout 也按它），每个请求只按自己的剩余预算等待，
+     * 到时间或被取消（deadline.cancel）就离开；所有等待者都离开时取消这次执行（Statement.cancel），
+     * 所以执行实际能跑多久 = 当前等待者里最长的剩余预算，且不超过 execution-timeout。
+     * scatter 不为空时按分片并发执行再合并，每个分片的语句都注册到同一个 Flight 上，取消时一起取消；
+     * racePlan 要动另一个引擎时交给 EngineRacer，两个引擎上的语句也都注册到同一个 Flight 上。
      */
-    private String fixCommonTableNameErrors(String sql) {
-        // 常见表名映射（根据错误日志中的表名进行调整）
-        Map<String, String> tableNameMapping = new HashMap<>();
-        tableNameMapping.put("managers", "manager");
-        tableNameMapping.put("portfolios", "portfolio");
-        tableNameMapping.put("risk_metrics", "risk_metric");
-        tableNameMapping.put("departments", "department");
-
-        String result = sql;
-        // 替换表名
-        for (Map.Entry<String, String> entry : tableNameMapping.entrySet()) {
-            String wrong = entry.getKey();
-            String correct = entry.getValue();
-            // 确保只替换表名，不替换列名
-            result = result.replaceAll("(?i)(from|join|on)\\s+" + wrong + "\\s*", "$1 " + correct + " ");
+    private ColumnarResult querySingleFlight(DataSourceDomain dsDomain, Object key, String sql,
+                                             Map<String, Object> params, Deadline deadline, QueryClass queryClass,
+                                             ScatterGatherExecutor.Prepared scatter, EngineRacer.Plan racePlan) {
+        QueryProperties.SingleFlight cfg = queryProperties.getSingleFlight();
+        long capMs = queryProperties.getDeadline().getExecutionTimeout().toMillis();
+        long maxWaitMs = deadline.remainingMillis(cfg.isEnabled() ? cfg.getMaxWait().toMillis() : 0);
+        ExecutionContext ctx = ExecutionContext.current().withDomain(dsDomain).withQueryClass(queryClass);
+        try {
+            return singleFlight.execute(key, maxWaitMs, deadline.whenCancelled(), flight -> {
+                // 排队等连接（隔离舱、域并发上限）也按这个预算；所有等待者离开时一起取消
+                Deadline budget = Deadline.afterMillis(capMs);
+                flight.onCancel(budget::cancel);
+                return ctx.withDeadline(budget).call(() -> {
+                    if (scatter != null) {
+                        return scatterGather.execute(dsDomain, scatter, params,
+                                (partSql, partParams) -> queryCancellable(partSql, partParams, flight,
+                                        budget.remainingSeconds(capMs)));
+                    }
+                    if (racePlan != null && racePlan.usesAlternate()) {
+                        JdbcTemplate alternate = new JdbcTemplate(engineRacer.alternateDataSource(dsDomain, racePlan));
+                        int timeoutSeconds = budget.remainingSeconds(capMs);
+                        return engineRacer.execute(racePlan, dsDomain, flight::onCancel,
+                                onCancel -> queryCancellable(namedJdbc.getJdbcTemplate(), sql, params, onCancel,
+                                        timeoutSeconds, COLUMNAR, 0),
+                                onCancel -> queryCancellable(alternate, racePlan.alternateSql, params, onCancel,
+                                        timeoutSeconds, COLUMNAR, 0));
+                    }
+                    return queryCancellable(sql, params, flight, budget.remainingSeconds(capMs));
+                });
+            });
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("查询超过截止时间(" + maxWaitMs + "ms)，已取消");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("查询等待被中断");
         }
+    }
 
-        return result;
+    /** 同 namedJdbc.query，拿到 PreparedStatement 时设语句超时、注册取消钩子 */
+    private ColumnarResult queryCancellable(String sql, Map<String, Object> params, SingleFlight.Flight flight,
+                                            int timeoutSeconds) {
+        return queryCancellable(namedJdbc.getJdbcTemplate(), sql, params, flight::onCancel, timeoutSeconds,
+                COLUMNAR, 0);
     }
 
     /**
-     * 把 (finance/healthcare + mysql/pgsql) 解析成你已有的 DataSourceDomain 枚举。
-     * 兼容两种输入：
-     * 1) domain 直接传 enum 名：FINANCE_MYSQL / HEALTHCARE_PGSQL ...
-     * 2) domain 传 finance/healthcare，dbms 传 mysql/pgsql，然后拼成 FINANCE_MYSQL ...
+     * fetchSize &gt; 0 时按游标分批读（结果集不整个进内存）：MySQL 靠 useCursorFetch，
+     * PG 要关掉自动提交才生效，这里在借到的连接上关掉，归还时连接池回滚并恢复。
+     * jdbc 一般是 namedJdbc 底下的（走域路由），引擎竞速时另一个引擎的那路传直连它连接池的
      */
-    private DataSourceDomain resolveDomain(String domain, String dbms) {
-        if (domain == null || domain.isBlank()) {
-            throw new BusinessException("domain 不能为空（finance/healthcare 或 DataSourceDomain 枚举名）");
+    private ColumnarResult queryCancellable(JdbcTemplate jdbc, String sql, Map<String, Object> params,
+                                            Consumer<Runnable> onCancel, int timeoutSeconds,
+                                            ResultSetExtractor<ColumnarResult> extractor, int fetchSize) {
+        org.springframework.jdbc.core.namedparam.ParsedSql parsed = NamedParameterUtils.parseSqlStatement(sql);
+        MapSqlParameterSource source = new MapSqlParameterSource(params);
+        String jdbcSql = NamedParameterUtils.substituteNamedParameters(parsed, source);
+        ArgumentPreparedStatementSetter args =
+                new ArgumentPreparedStatementSetter(NamedParameterUtils.buildValueArray(parsed, source, null));
+
+        PreparedStatementSetter setter = ps -> {
+            // 覆盖 JdbcTemplate 的默认 query-timeout；MySQL 驱动到时发 KILL QUERY，PG 驱动发取消请求
+            if (timeoutSeconds > 0) ps.setQueryTimeout(timeoutSeconds);
+            if (fetchSize > 0) {
+                Connection con = ps.getConnection();
+                if (con.getAutoCommit()
+                        && con.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgres")) {
+                    con.setAutoCommit(false);
+                }
+                ps.setFetchSize(fetchSize);
+            }
+            onCancel.accept(() -> {
+                try {
+                    ps.cancel();
+                } catch (SQLException e) {
+                    logger.debug("Statement cancel failed: {}", e.getMessage());
+                }
+            });
+            args.setValues(ps);
+        };
+        return jdbc.query(jdbcSql, setter, extractor);
+    }
+
+    /** 改成一页；不支持分页的 SQL（OFFSET、UNION、DISTINCT、未知主键 ...）报 400 */
+    private static KeysetPaginator.Page paginate(DataSourceDomain dsDomain, String dbms, String sql,
+                                                 List<Object> after, long limit) {
+        try {
+            return KeysetPaginator.paginate(dsDomain.name(), SqlDialect.of(dbms, SqlDialect.MYSQL), sql, after, limit);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("该查询不支持分页: " + e.getMessage());
+        }
+    }
+
+    /** 去掉分页加的隐藏排序键列（__k0 ...） */
+    private static ColumnarResult withoutKeyColumns(ColumnarResult r) {
+        int[] keep = new int[r.columnCount()];
+        int n = 0;
+        for (int c = 0; c < r.columnCount(); c++) {
+            if (!r.column(c).toLowerCase(Locale.ROOT).startsWith(KeysetPaginator.KEY_ALIAS_PREFIX)) keep[n++] = c;
+        }
+        return n == keep.length ? r : r.select(Arrays.copyOf(keep, n));
+    }
+
+    /** 截止时间到 / 被取消：取消的抛 CancellationException，超时的抛 QueryTimeoutException（504） */
+    private static RuntimeException deadlineExceeded(String queryId, Deadline deadline, Exception cause) {
+        if (deadline.isCancelled()) {
+            return new CancellationException("查询已取消: " + queryId);
         }
+        if (cause instanceof QueryTimeoutException qte) return qte;
+        String detail = cause == null ? "" : ": " + cause.getMessage();
+        return new QueryTimeoutException("查询超过截止时间: " + queryId + detail, cause);
+    }
 
-        String d = domain.trim().toUpperCase(Locale.ROOT);
-        String m = (dbms == null ? "MYSQL" : dbms.trim().toUpperCase(Locale.ROOT));
+    @PreDestroy
+    public void shutdown() {
+        singleFlight.shutdown();
+    }
 
-        // 常见写法：pgsql / postgres / postgresql 都归一到 PGSQL
-        if (m.equals("POSTGRES") || m.equals("POSTGRESQL") || m.equals("PG")) {
-            m = "PGSQL";
+    /** 响应里的缓存状态：status = HIT / MISS / BYPASS，命中时带 tier（L1 / L2）和数据的缓存时长 ageMs */
+    private static Map<String, Object> cacheInfo(QueryResultCache.Key key, QueryResultCache.Hit hit) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        if (hit != null) {
+            m.put("status", "HIT");
+            m.put("tier", hit.tier);
+            m.put("ageMs", hit.ageMs);
+        } else {
+            m.put("status", key != null ? "MISS" : "BYPASS");
         }
+        return m;
+    }
+
+    /** 批处理 / 元数据扫描按负载类别，交互查询按 SQL 的 AST 特征分 LOOKUP / AGGREGATE */
+    private static QueryClass classify(String sql) {
+        QueryClass byWorkload = QueryClass.forWorkload(WorkloadContext.get());
+        return byWorkload != null ? byWorkload : QueryClassifier.classify(sql);
+    }
 
-        // 常见写法：mongo / mongodb 都归一到 MONGODB
-        if (m.equals("MONGO") || m.equals("MONGODB")) {
-            m = "MONGODB";
+    /** 按配置做字面量参数化；关掉时只算指纹 */
+    private SqlLiteralParameterizer.Parameterized parameterize(String sql) {
+        if (queryProperties.isParameterizeLiterals()) {
+            return SqlLiteralParameterizer.parameterize(sql);
         }
+        return new SqlLiteralParameterizer.Parameterized(sql, Map.of(), SqlLiteralParameterizer.fingerprint(sql));
+    }
 
+    /**
+     * 把接口传入的 domain 解析成域注册表里的域（app.domains）：域名或别名，大小写不敏感。
+     * dbms 只决定走哪个引擎，不参与解析；兼容旧写法 FINANCE_MYSQL / HEALTHCARE_PGSQL ...（去掉引擎后缀再认一次）。
+     */
+    private DataSourceDomain resolveDomain(String domain, String dbms) {
+        if (domain == null || domain.isBlank()) {
+            throw new BusinessException("domain 不能为空（域名或别名，如 finance / healthcare）");
+        }
 
-        // 1) 先尝试直接当 enum
-        try {
-            return DataSourceDomain.valueOf(d);
-        } catch (Exception ignore) {}
+        DataSourceDomain d = domainRegistry.resolve(domain);
+        if (d != null) return d;
 
-        // 2) 再按 finance/healthcare + dbms 拼 enum
-        // 例如 FINANCE + MYSQL => FINANCE_MYSQL
-        String candidate = d + "_" + m;
-        try {
-            return DataSourceDomain.valueOf(candidate);
-        } catch (Exception e) {
-            throw new BusinessException(
-                    "无法解析数据源 domain=" + domain + ", dbms=" + dbms +
-                            "，请确认 DataSourceDomain 是否包含：" + candidate
-            );
+        String upper = domain.trim().toUpperCase(Locale.ROOT);
+        for (String suffix : List.of("_MYSQL", "_PGSQL", "_MONGODB")) {
+            if (upper.endsWith(suffix)) {
+                d = domainRegistry.resolve(upper.substring(0, upper.length() - suffix.length()));
+                if (d != null) return d;
+            }
         }
+        throw new BusinessException(
+                "无法解析数据源 domain=" + domain + ", dbms=" + dbms + "，已配置的域：" + domainRegistry.domains()
+        );
     }
 
     private static String asString(Object o) {
         return o == null ? null : String.valueOf(o);
     }
 
+    private static long asLong(Object o, long def) {
+        if (o == null) return def;
+        if (o instanceof Number n) return n.longValue();
+        try { return Long.parseLong(String.valueOf(o).trim()); }
+        catch (Exception e) { return def; }
+    }
+
+    private static double asDouble(Object o, double def) {
+        if (o == null) return def;
+        if (o instanceof Number n) return n.doubleValue();
+        try { return Double.parseDouble(String.valueOf(o).trim()); }
+        catch (Exception e) { return def; }
+    }
+
     private static int asInt(Object o, int def) {
         if (o == null) return def;
         if (o instanceof Number n) return n.intValue();
@@ -428,12 +900,13 @@ public class SqlExecuteService {
         return resp;
     }
 
-    /** 按 dsDomain 选择 finance/healthcare MongoTemplate。 */
+    /** 按域取 MongoTemplate（注册表里的域按各自的 mongodb 配置，没配的不支持 Mongo 模式） */
     private MongoTemplate pickMongoTemplate(DataSourceDomain dsDomain) {
-        String n = dsDomain.name().toUpperCase(Locale.ROOT);
-        if (n.contains("FINANCE")) return financeMongoTemplate;
-        if (n.contains("HEALTHCARE")) return healthcareMongoTemplate;
-        throw new BusinessException("未知 domain: " + dsDomain.name());
+        try {
+            return mongoTemplates.get(dsDomain);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Mongo 模式不支持 domain: " + dsDomain.name() + "（" + e.getMessage() + "）");
+        }
     }
 
     private static class ParsedSql {
@@ -0,0 +1,139 @@
+package com.intelligent_data_analysis_system.utils;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 请求截止时间：从入口（controller）开始计时，各阶段（LLM 生成、SQL 执行）按剩余时间分配预算。
+ *
+ * - 绝对时间点（System.nanoTime），跨线程传递不漂移
+ * - 同时是取消令牌：cancel() 之后立刻视为过期，whenCancelled() 可供等待方监听（客户端断开 / 按 id 取消）；
+ *   语句级的取消钩子用 onCancel 登记，语句关闭时注销，不在截止时间上积攒已关闭语句的引用
+ * - slice 出来的子截止时间共享同一个取消状态，父请求被取消时所有阶段一起结束
+ */
+public final class Deadline {
+
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final long expiresAtNanos;
+    private final CompletableFuture<Void> cancelled;
+    /** onCancel 登记的钩子，slice 出来的子截止时间共用 */
+    private final Set<Runnable> hooks;
+
+    private Deadline(long expiresAtNanos, CompletableFuture<Void> cancelled, Set<Runnable> hooks) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.cancelled = cancelled;
+        this.hooks = hooks;
+    }
+
+    private Deadline(long expiresAtNanos) {
+        this(expiresAtNanos, new CompletableFuture<>(), ConcurrentHashMap.newKeySet());
+    }
+
+    /** onCancel 的登记，close 即注销（重复 close 无害） */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** 从现在起 timeout 之后到期；timeout 为空或 &lt;= 0 表示不限 */
+    public static Deadline after(Duration timeout) {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) return none();
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Deadline afterMillis(long timeoutMs) {
+        return after(Duration.ofMillis(timeoutMs));
+    }
+
+    /** 不限时（仍可取消） */
+    public static Deadline none() {
+        return new Deadline(UNBOUNDED);
+    }
+
+    public boolean isUnbounded() {
+        return expiresAtNanos == UNBOUNDED;
+    }
+
+    /** 剩余毫秒；不限时返回 Long.MAX_VALUE，过期或已取消返回 0 */
+    public long remainingMillis() {
+        if (isCancelled()) return 0;
+        if (isUnbounded()) return Long.MAX_VALUE;
+        return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return remainingMillis() <= 0;
+    }
+
+    /** min(剩余时间, cap)；cap &lt;= 0 表示不设上限，两者都不限时返回 0（调用方按“不限”处理） */
+    public long remainingMillis(long capMs) {
+        long r = remainingMillis();
+        if (capMs > 0 && r > capMs) return capMs;
+        return r == Long.MAX_VALUE ? 0 : r;
+    }
+
+    /** JDBC setQueryTimeout 用的秒数：向上取整、至少 1 秒；不限时返回 0 */
+    public int remainingSeconds(long capMs) {
+        long ms = remainingMillis(capMs);
+        if (ms <= 0) return isUnbounded() && !isCancelled() ? 0 : 1;
+        return (int) Math.min(Integer.MAX_VALUE, (ms + 999) / 1000);
+    }
+
+    /**
+     * 从剩余时间里切出一段给某个阶段：到期点 = now + 剩余 * share，但不超过 max（max &lt;= 0 不限）。
+     * 不限时的截止时间只按 max 切。
+     */
+    public Deadline slice(double share, Duration max) {
+        long maxNanos = max == null || max.isZero() || max.isNegative() ? Long.MAX_VALUE : max.toNanos();
+        long now = System.nanoTime();
+        long budget;
+        if (isUnbounded()) {
+            budget = maxNanos;
+        } else {
+            long left = Math.max(0, expiresAtNanos - now);
+            budget = Math.min((long) (left * Math.max(0, Math.min(1, share))), maxNanos);
+        }
+        long at = budget == Long.MAX_VALUE ? Long.MAX_VALUE : now + budget;
+        return new Deadline(Math.min(at, expiresAtNanos), cancelled, hooks);
+    }
+
+    public void cancel() {
+        cancelled.complete(null);
+        for (Runnable hook : hooks) runOnce(hook);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.isDone();
+    }
+
+    /** 取消信号：cancel() 时完成 */
+    public CompletableFuture<Void> whenCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 登记取消钩子（比如 Statement.cancel）：cancel() 时执行一次，已经取消的话立刻执行。
+     * 和 whenCancelled().thenRun 不同，返回的登记 close 之后钩子连同它引用的语句一起放掉，
+     * 一个截止时间上先后跑很多条语句时（批量、逐条回退）不会越攒越多。
+     */
+    public Registration onCancel(Runnable hook) {
+        hooks.add(hook);
+        if (isCancelled()) runOnce(hook);
+        return () -> hooks.remove(hook);
+    }
+
+    /** cancel 和 onCancel 并发时两边都可能看到这个钩子，谁先移除谁执行 */
+    private void runOnce(Runnable hook) {
+        if (hooks.remove(hook)) hook.run();
+    }
+
+    @Override
+    public String toString() {
+        if (isCancelled()) return "Deadline[cancelled]";
+        return isUnbounded() ? "Deadline[none]" : "Deadline[" + remainingMillis() + "ms]";
+    }
+}
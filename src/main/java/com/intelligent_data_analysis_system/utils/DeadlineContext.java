@@ -0,0 +1,23 @@
+package com.intelligent_data_analysis_system.utils;
+
+/**
+ * 当前线程的请求截止时间（ExecutionContext 里的一项）：controller 设置，LLM 客户端、隔离舱等深层调用读取剩余预算。
+ * 没设置时 get() 返回不限时的 Deadline。
+ */
+public final class DeadlineContext {
+
+    private DeadlineContext() {}
+
+    public static void set(Deadline deadline) {
+        ExecutionContext.replace(ExecutionContext.current().withDeadline(deadline));
+    }
+
+    public static Deadline get() {
+        Deadline d = ExecutionContext.current().deadline();
+        return d == null ? Deadline.none() : d;
+    }
+
+    public static boolean isSet() { return ExecutionContext.current().deadline() != null; }
+
+    public static void clear() { set(null); }
+}
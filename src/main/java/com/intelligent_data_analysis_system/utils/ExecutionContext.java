@@ -0,0 +1,155 @@
+package com.intelligent_data_analysis_system.utils;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * 一次执行的上下文：业务域、负载类别、查询类别、截止时间，整体不可变（withXxx 返回新对象）。
+ * 路由数据源、隔离舱、会话配置、LLM 客户端都从这里读；DomainContext / WorkloadContext / QueryClassContext /
+ * DeadlineContext 只是其中一项的视图，原来的 set / get / clear 照常可用。
+ *
+ * 按作用域绑定（ScopedValue 的用法，JDK 21 里它还是预览特性，这里用一个 ThreadLocal 实现）：
+ * - open / call / run：在这个上下文里执行，结束后恢复进入前的上下文（嵌套调用不会把外层设置的值清掉）
+ * - wrap：在当前线程捕获，交给线程池 / 虚拟线程 / 异步阶段执行时整体带过去，不用逐项重新设置
+ * 每个线程只有这一个 ThreadLocal，对象本身不可变，在大量虚拟线程之间传递只是复制一个引用。
+ */
+public final class ExecutionContext {
+
+    private static final ExecutionContext EMPTY = new ExecutionContext(null, null, null, null);
+    private static final ThreadLocal<ExecutionContext> CURRENT = new ThreadLocal<>();
+
+    private final DataSourceDomain domain;
+    private final WorkloadClass workload;
+    private final QueryClass queryClass;
+    private final Deadline deadline;
+
+    private ExecutionContext(DataSourceDomain domain, WorkloadClass workload, QueryClass queryClass,
+                             Deadline deadline) {
+        this.domain = domain;
+        this.workload = workload;
+        this.queryClass = queryClass;
+        this.deadline = deadline;
+    }
+
+    /** 当前线程绑定的上下文；没有时是各项都未设置的空上下文 */
+    public static ExecutionContext current() {
+        ExecutionContext c = CURRENT.get();
+        return c == null ? EMPTY : c;
+    }
+
+    public static ExecutionContext empty() {
+        return EMPTY;
+    }
+
+    /** 以下取值都是原样返回，未设置为 null（默认值由各 XxxContext.get 决定） */
+    public DataSourceDomain domain() {
+        return domain;
+    }
+
+    public WorkloadClass workload() {
+        return workload;
+    }
+
+    public QueryClass queryClass() {
+        return queryClass;
+    }
+
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    public ExecutionContext withDomain(DataSourceDomain domain) {
+        return domain == this.domain ? this : new ExecutionContext(domain, workload, queryClass, deadline);
+    }
+
+    public ExecutionContext withWorkload(WorkloadClass workload) {
+        return workload == this.workload ? this : new ExecutionContext(domain, workload, queryClass, deadline);
+    }
+
+    public ExecutionContext withQueryClass(QueryClass queryClass) {
+        return queryClass == this.queryClass ? this : new ExecutionContext(domain, workload, queryClass, deadline);
+    }
+
+    public ExecutionContext withDeadline(Deadline deadline) {
+        return deadline == this.deadline ? this : new ExecutionContext(domain, workload, queryClass, deadline);
+    }
+
+    private boolean isEmpty() {
+        return domain == null && workload == null && queryClass == null && deadline == null;
+    }
+
+    /* =========================
+       作用域
+       ========================= */
+
+    /** 一次绑定；close 时恢复进入前的上下文（用 try-with-resources，方法体里有受检异常时用这个） */
+    public static final class Scope implements AutoCloseable {
+        private final ExecutionContext previous;
+        private boolean closed;
+
+        private Scope(ExecutionContext previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            bind(previous);
+        }
+    }
+
+    /** 在当前线程上绑定这个上下文，直到返回的 Scope 关闭 */
+    public Scope open() {
+        Scope scope = new Scope(CURRENT.get());
+        bind(this);
+        return scope;
+    }
+
+    public <T> T call(Supplier<T> work) {
+        try (Scope ignored = open()) {
+            return work.get();
+        }
+    }
+
+    public void run(Runnable work) {
+        try (Scope ignored = open()) {
+            work.run();
+        }
+    }
+
+    /* =========================
+       跨线程传递
+       ========================= */
+
+    /** 在执行线程上以这个上下文执行 task */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            try (Scope ignored = open()) {
+                return task.call();
+            }
+        };
+    }
+
+    public Runnable wrap(Runnable task) {
+        return () -> run(task);
+    }
+
+    /* =========================
+       给旧的 XxxContext.set / clear 用
+       ========================= */
+
+    /** 不带作用域地替换当前线程的上下文（入口处设置、请求结束清理）；嵌套调用请用 open / call */
+    public static void replace(ExecutionContext ctx) {
+        bind(ctx);
+    }
+
+    private static void bind(ExecutionContext ctx) {
+        if (ctx == null || ctx.isEmpty()) CURRENT.remove();
+        else CURRENT.set(ctx);
+    }
+}
@@ -0,0 +1,146 @@
+package com.intelligent_data_analysis_system.utils.Fixer;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 执行失败的分类：按 SQLState / 厂商错误码判断，不靠拼接小写报错文本做 contains。
+ *
+ * | 分类              | MySQL 错误码 | PG SQLState  |
+ * |-------------------|-------------|--------------|
+ * | UNKNOWN_COLUMN    | 1054        | 42703        |
+ * | UNKNOWN_TABLE     | 1146        | 42P01        |
+ * | AMBIGUOUS_COLUMN  | 1052        | 42702        |
+ * | SYNTAX            | 1064        | 42601        |
+ * | UNKNOWN_FUNCTION  | 1305        | 42883        |
+ * | TRANSIENT         | 1205, 1213  | 40001, 40P01 |
+ * | TIMEOUT           | 3024, 1317  | 57014        |
+ *
+ * 出错的标识符（列名 / 表名）从驱动的报错里按固定格式抠出来，抠不到时为 null。
+ */
+public final class SqlFailure {
+
+    public enum Kind {
+        UNKNOWN_COLUMN,
+        UNKNOWN_TABLE,
+        AMBIGUOUS_COLUMN,
+        SYNTAX,
+        UNKNOWN_FUNCTION,
+        /** 死锁 / 锁等待 / 串行化冲突：原样重试有意义 */
+        TRANSIENT,
+        /** 语句超时 / 被取消：重试只会再超时一次 */
+        TIMEOUT,
+        OTHER
+    }
+
+    public final Kind kind;
+    public final String sqlState;
+    public final int vendorCode;
+    /** 出错的标识符，可能带限定名（c.client_nam / db.managers）；没有为 null */
+    public final String identifier;
+    public final String message;
+
+    private SqlFailure(Kind kind, String sqlState, int vendorCode, String identifier, String message) {
+        this.kind = kind;
+        this.sqlState = sqlState;
+        this.vendorCode = vendorCode;
+        this.identifier = identifier;
+        this.message = message;
+    }
+
+    /** 只有 TRANSIENT 值得原样重试；其它要么改写后再跑，要么直接失败 */
+    public boolean isRetryable() {
+        return kind == Kind.TRANSIENT;
+    }
+
+    // MySQL: Unknown column 'c.client_nam' in 'field list'
+    private static final Pattern MYSQL_UNKNOWN_COLUMN = Pattern.compile("Unknown column '([^']+)'");
+    // MySQL: Table 'finance.managers' doesn't exist
+    private static final Pattern MYSQL_UNKNOWN_TABLE = Pattern.compile("Table '([^']+)' doesn't exist");
+    // MySQL: Column 'client_id' in field list is ambiguous
+    private static final Pattern MYSQL_AMBIGUOUS = Pattern.compile("Column '([^']+)' in .* is ambiguous");
+    // PG: column "client_nam" does not exist / column c.client_nam does not exist
+    private static final Pattern PG_UNKNOWN_COLUMN = Pattern.compile("column \"?([\\w.]+)\"? does not exist");
+    // PG: relation "managers" does not exist
+    private static final Pattern PG_UNKNOWN_TABLE = Pattern.compile("relation \"([^\"]+)\" does not exist");
+    // PG: column reference "client_id" is ambiguous
+    private static final Pattern PG_AMBIGUOUS = Pattern.compile("column reference \"([^\"]+)\" is ambiguous");
+
+    /** 沿 cause 链找到 SQLException 后分类；没有 SQLException（连接池超时等）归为 OTHER */
+    public static SqlFailure classify(Throwable t) {
+        SQLException sqlEx = findSqlException(t);
+        String message = t == null ? null : t.getMessage();
+        if (sqlEx == null) return new SqlFailure(Kind.OTHER, null, 0, null, message);
+
+        String state = sqlEx.getSQLState();
+        int code = sqlEx.getErrorCode();
+        String msg = sqlEx.getMessage() == null ? "" : sqlEx.getMessage();
+
+        Kind kind = byVendorCode(code);
+        if (kind == null) kind = bySqlState(state);
+        if (kind == null) kind = Kind.OTHER;
+
+        String identifier = switch (kind) {
+            case UNKNOWN_COLUMN -> first(msg, MYSQL_UNKNOWN_COLUMN, PG_UNKNOWN_COLUMN);
+            case UNKNOWN_TABLE -> first(msg, MYSQL_UNKNOWN_TABLE, PG_UNKNOWN_TABLE);
+            case AMBIGUOUS_COLUMN -> first(msg, MYSQL_AMBIGUOUS, PG_AMBIGUOUS);
+            default -> null;
+        };
+        return new SqlFailure(kind, state, code, identifier, msg);
+    }
+
+    /** MySQL 的错误码（PG 驱动的 errorCode 恒为 0，不会误命中） */
+    private static Kind byVendorCode(int code) {
+        return switch (code) {
+            case 1054 -> Kind.UNKNOWN_COLUMN;
+            case 1146 -> Kind.UNKNOWN_TABLE;
+            case 1052 -> Kind.AMBIGUOUS_COLUMN;
+            case 1064 -> Kind.SYNTAX;
+            case 1305 -> Kind.UNKNOWN_FUNCTION;
+            case 1205, 1213 -> Kind.TRANSIENT;
+            // 3024：MAX_EXECUTION_TIME；1317：语句被 KILL QUERY（Connector/J 的 setQueryTimeout / cancel 走这条）
+            case 3024, 1317 -> Kind.TIMEOUT;
+            default -> null;
+        };
+    }
+
+    private static Kind bySqlState(String state) {
+        if (state == null) return null;
+        return switch (state.toUpperCase(Locale.ROOT)) {
+            case "42703" -> Kind.UNKNOWN_COLUMN;
+            case "42P01" -> Kind.UNKNOWN_TABLE;
+            case "42702" -> Kind.AMBIGUOUS_COLUMN;
+            case "42601" -> Kind.SYNTAX;
+            case "42883" -> Kind.UNKNOWN_FUNCTION;
+            case "40001", "40P01" -> Kind.TRANSIENT;
+            // 57014：statement_timeout / 取消请求；70100：Connector/J 超时异常（MySQLTimeoutException）
+            case "57014", "70100" -> Kind.TIMEOUT;
+            default -> null;
+        };
+    }
+
+    private static SQLException findSqlException(Throwable t) {
+        int depth = 0;
+        while (t != null && depth++ < 16) {
+            if (t instanceof SQLException e) return e;
+            t = t.getCause();
+        }
+        return null;
+    }
+
+    private static String first(String msg, Pattern... patterns) {
+        for (Pattern p : patterns) {
+            Matcher m = p.matcher(msg);
+            if (m.find()) return m.group(1);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return kind + "(state=" + sqlState + ", code=" + vendorCode
+                + (identifier == null ? "" : ", identifier=" + identifier) + ")";
+    }
+}
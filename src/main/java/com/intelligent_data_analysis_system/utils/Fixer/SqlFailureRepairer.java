@@ -0,0 +1,301 @@
+package com.intelligent_data_analysis_system.utils.Fixer;
+
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteContext;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteEngine;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteRule;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按失败分类（SqlFailure）做定点 AST 修复，依据是 SchemaCatalog：
+ *
+ * - UNKNOWN_COLUMN：只改报错的那一列。列在同一 SELECT 的另一张表里 -> 换限定名；
+ *   否则在这些表的列里找编辑距离最近且唯一的（client_nam -> client_name）
+ * - UNKNOWN_TABLE：去掉多余的 schema 前缀 / mapping.yml 的 table_alias / 该域里编辑距离最近的表名
+ * - AMBIGUOUS_COLUMN：含此列的表都是内连接、且按这一列相等连接时，给没写限定名的该列补上其中第一张表的别名；
+ *   否则选哪张表会改变结果（外连接的 NULL 侧、不同含义的同名列），不修
+ *
+ * 其它分类（语法错误、函数不存在、超时 ...）没有能保证正确的改写，直接返回“无修复”，
+ * 调用方据此立刻失败，而不是把同一条注定失败的 SQL 再执行几遍。
+ */
+public final class SqlFailureRepairer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlFailureRepairer.class);
+
+    /** 编辑距离阈值：超过就不猜 */
+    private static final int MAX_DISTANCE = 2;
+
+    private SqlFailureRepairer() {}
+
+    public static class Repair {
+        public final SqlFailure failure;
+        /** 修复后的 SQL；没有可用修复时为 null */
+        public final String sql;
+
+        Repair(SqlFailure failure, String sql) {
+            this.failure = failure;
+            this.sql = sql;
+        }
+
+        public boolean repaired() {
+            return sql != null;
+        }
+    }
+
+    public static Repair repair(String domain, String sql, Throwable error) {
+        return repair(domain, sql, SqlFailure.classify(error));
+    }
+
+    public static Repair repair(String domain, String sql, SqlFailure failure) {
+        if (sql == null || sql.isBlank() || failure.identifier == null) return new Repair(failure, null);
+
+        SqlRewriteRule rule = switch (failure.kind) {
+            case UNKNOWN_COLUMN -> unknownColumn(failure.identifier);
+            case UNKNOWN_TABLE -> unknownTable(failure.identifier);
+            case AMBIGUOUS_COLUMN -> ambiguousColumn(failure.identifier);
+            default -> null;
+        };
+        if (rule == null) return new Repair(failure, null);
+
+        SqlRewriteContext ctx = SqlRewriteContext.of(domain, null);
+        String out = new SqlRewriteEngine(List.of(rule)).rewrite(sql, ctx);
+        if (ctx.fired().isEmpty() || out.equals(sql)) {
+            logger.info("[repair] no targeted repair for {}", failure);
+            return new Repair(failure, null);
+        }
+        logger.info("[repair] {} repaired by {}", failure, rule.name());
+        return new Repair(failure, out);
+    }
+
+    /* ========================= 列不存在 ========================= */
+
+    private static SqlRewriteRule unknownColumn(String identifier) {
+        String qualifier = qualifierPart(identifier);
+        String name = lastPart(identifier);
+        return SqlRewriteRule.expression("repair-unknown-column", Column.class)
+                .when((col, ctx) -> matches(col, qualifier, name) && columnFix(col, name, ctx) != null)
+                .then((col, ctx) -> {
+                    String[] fix = columnFix(col, name, ctx);
+                    if (col.getTable() != null || !fix[0].equals(ctx.tableOf(col))) {
+                        col.setTable(new Table(ctx.qualifierOf(fix[0])));
+                    }
+                    col.setColumnName(fix[1]);
+                    return col;
+                });
+    }
+
+    /** [表, 列]：在同一 SELECT 的所有表里找最近的列；最近距离不唯一时不猜 */
+    private static String[] columnFix(Column col, String name, SqlRewriteContext ctx) {
+        String own = ctx.tableOf(col);
+        String[] best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean tie = false;
+
+        for (String table : ctx.tables()) {
+            SchemaCatalog.TableInfo ti = SchemaCatalog.get().table(ctx.domain, table).orElse(null);
+            if (ti == null) continue;
+            for (String c : ti.columns.keySet()) {
+                int d = distance(name, c);
+                // 本表同名列说明报错不是列名问题（比如限定名写错），本表不算
+                if (d == 0 && table.equals(own)) continue;
+                if (d < bestDistance) {
+                    best = new String[]{table, c};
+                    bestDistance = d;
+                    tie = false;
+                } else if (d == bestDistance) {
+                    tie = true;
+                }
+            }
+        }
+        if (best == null || tie || bestDistance > MAX_DISTANCE || bestDistance * 2 >= name.length()) return null;
+        return best;
+    }
+
+    /* ========================= 表不存在 ========================= */
+
+    private static SqlRewriteRule unknownTable(String identifier) {
+        String name = lastPart(identifier);
+        return SqlRewriteRule.table("repair-unknown-table")
+                .when((t, ctx) -> t.getName() != null && name.equals(unquote(t.getName()))
+                        && tableFix(t, name, ctx.domain) != null)
+                .apply((t, ctx) -> {
+                    String target = tableFix(t, name, ctx.domain);
+                    // 没有别名时把原名留作别名，SQL 里 原表名.列 的写法仍然有效
+                    if (t.getAlias() == null && !target.equals(name)) t.setAlias(new Alias(t.getName(), false));
+                    t.setSchemaName(null);
+                    t.setName(target);
+                    return true;
+                });
+    }
+
+    private static String tableFix(Table t, String name, String domain) {
+        SchemaCatalog catalog = SchemaCatalog.get();
+        // 表名本身在目录里：是 schema 前缀写错了（finance.clients），去掉前缀
+        if (catalog.table(domain, name).isPresent()) {
+            return t.getSchemaName() != null ? name : null;
+        }
+
+        for (Map.Entry<String, String> e : MappingRegistry.get().tableAliases(domain).entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name) && catalog.table(domain, e.getValue()).isPresent()) {
+                return e.getValue();
+            }
+        }
+
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean tie = false;
+        for (SchemaCatalog.TableInfo ti : catalog.tables(domain)) {
+            int d = distance(name, ti.name);
+            if (d < bestDistance) {
+                best = ti.name;
+                bestDistance = d;
+                tie = false;
+            } else if (d == bestDistance) {
+                tie = true;
+            }
+        }
+        if (best == null || tie || bestDistance > MAX_DISTANCE) return null;
+        return best;
+    }
+
+    /* ========================= 列有歧义 ========================= */
+
+    private static SqlRewriteRule ambiguousColumn(String identifier) {
+        String name = lastPart(identifier);
+        return SqlRewriteRule.expression("repair-ambiguous-column", Column.class)
+                .when((col, ctx) -> col.getTable() == null
+                        && name.equals(unquote(col.getColumnName()))
+                        && owner(name, ctx) != null)
+                .then((col, ctx) -> {
+                    col.setTable(new Table(owner(name, ctx)));
+                    return col;
+                });
+    }
+
+    /**
+     * 补哪个限定名：只有选哪张表结果都一样时才补 —— FROM / JOIN 全是普通表、全是内连接，
+     * 且所有含该列的表通过 ON / WHERE 里的 a.列 = b.列 连成一片（每行上这些列的值相等）。
+     * 有外连接（另一侧可能是 NULL）、子查询（列不明）、或者含该列的表之间不是按这一列连接的，都返回 null，交回报错。
+     */
+    private static String owner(String column, SqlRewriteContext ctx) {
+        PlainSelect ps = ctx.currentSelect();
+        if (ps == null) return null;
+
+        List<FromItem> items = new ArrayList<>();
+        items.add(ps.getFromItem());
+        List<Expression> equalities = new ArrayList<>(SqlAstWalker.flattenAnd(ps.getWhere()));
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.isLeft() || j.isRight() || j.isFull() || j.isOuter() || j.isNatural() || j.isSemi()) return null;
+                items.add(j.getRightItem());
+                if (j.getOnExpressions() != null) {
+                    for (Expression on : j.getOnExpressions()) equalities.addAll(SqlAstWalker.flattenAnd(on));
+                }
+            }
+        }
+
+        // 含该列的表的限定名（小写）-> 原样写法
+        Map<String, String> candidates = new LinkedHashMap<>();
+        for (FromItem item : items) {
+            if (!(item instanceof Table t) || t.getName() == null) return null;
+            if (!SchemaCatalog.get().table(ctx.domain, unquote(t.getName())).map(ti -> ti.hasColumn(column)).orElse(false)) {
+                continue;
+            }
+            String qualifier = t.getAlias() != null && t.getAlias().getName() != null ? t.getAlias().getName() : t.getName();
+            candidates.putIfAbsent(unquote(qualifier), qualifier);
+        }
+        if (candidates.isEmpty()) return null;
+
+        // 按 a.列 = b.列 合并连通块，最后只能剩一块
+        Map<String, String> parent = new HashMap<>();
+        for (String q : candidates.keySet()) parent.put(q, q);
+        for (Expression e : equalities) {
+            if (!(e instanceof EqualsTo eq)
+                    || !(eq.getLeftExpression() instanceof Column a) || !(eq.getRightExpression() instanceof Column b)) {
+                continue;
+            }
+            String qa = qualifierOn(a, column), qb = qualifierOn(b, column);
+            if (qa == null || qb == null || !parent.containsKey(qa) || !parent.containsKey(qb)) continue;
+            parent.put(root(parent, qa), root(parent, qb));
+        }
+        String first = candidates.keySet().iterator().next();
+        for (String q : candidates.keySet()) {
+            if (!root(parent, q).equals(root(parent, first))) return null;
+        }
+        return candidates.get(first);
+    }
+
+    /** q.列 的限定名（小写）；不是该列或没有限定名返回 null */
+    private static String qualifierOn(Column c, String column) {
+        if (!column.equals(unquote(c.getColumnName())) || c.getTable() == null || c.getTable().getName() == null) {
+            return null;
+        }
+        return unquote(c.getTable().getName());
+    }
+
+    private static String root(Map<String, String> parent, String q) {
+        while (!parent.get(q).equals(q)) q = parent.get(q);
+        return q;
+    }
+
+    /* ========================= 工具 ========================= */
+
+    private static boolean matches(Column col, String qualifier, String name) {
+        if (!name.equals(unquote(col.getColumnName()))) return false;
+        if (qualifier == null) return true;
+        Table t = col.getTable();
+        return t != null && t.getName() != null && qualifier.equals(unquote(t.getName()));
+    }
+
+    private static String lastPart(String identifier) {
+        String s = unquote(identifier);
+        int dot = s.lastIndexOf('.');
+        return dot >= 0 ? s.substring(dot + 1) : s;
+    }
+
+    private static String qualifierPart(String identifier) {
+        String s = unquote(identifier);
+        int dot = s.lastIndexOf('.');
+        return dot > 0 ? s.substring(0, dot) : null;
+    }
+
+    private static String unquote(String identifier) {
+        return identifier == null ? "" : identifier.replace("`", "").replace("\"", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Levenshtein 距离 */
+    static int distance(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+        return prev[b.length()];
+    }
+}
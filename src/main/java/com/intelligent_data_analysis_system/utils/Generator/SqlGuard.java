@@ -1,46 +1,201 @@
 package com.intelligent_data_analysis_system.utils.Generator;
 
-import java.util.Locale;
-import java.util.regex.Pattern;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+
+import java.util.*;
 
 public final class SqlGuard {
 
     private SqlGuard() {}
 
     // 允许：SELECT / WITH / EXPLAIN（只读）
-    private static final Pattern ALLOW_PREFIX =
-            Pattern.compile("^\\s*(select|with|explain)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> ALLOW_PREFIX = Set.of("select", "with", "explain");
+
+    // 禁止关键字（只看真正的关键字 token：字符串、注释、引号标识符、t.update 这种限定列名都不算）
+    private static final Set<String> FORBIDDEN = Set.of(
+            "insert", "update", "delete", "drop", "alter", "truncate", "create", "grant", "revoke", "replace",
+            "merge", "call", "rename", "into");
 
-    // 禁止关键字
-    private static final Pattern FORBIDDEN =
-            Pattern.compile("\\b(insert|update|delete|drop|alter|truncate|create|grant|revoke|replace)\\b",
-                    Pattern.CASE_INSENSITIVE);
+    // 后面跟 ( 时是函数调用，不是语句关键字：REPLACE(name, 'a', 'b')
+    private static final Set<String> ALLOWED_AS_FUNCTION = Set.of("replace");
 
+    /** 不知道发往哪个引擎时用：按 MySQL 和 PG 的词法各校验一遍，都通过才放行 */
     public static void validateReadOnlySingleStatement(String sql) {
+        validateReadOnlySingleStatement(sql, null);
+    }
+
+    /**
+     * 按目标引擎的词法规则校验（注释、字符串转义、# 的含义两边不同，用错规则会把服务端执行的语句当成注释 / 字符串放过去）。
+     * dialect 为 null 时两种规则都校验。
+     */
+    public static void validateReadOnlySingleStatement(String sql, SqlDialect dialect) {
         if (sql == null || sql.trim().isEmpty()) {
             throw new IllegalArgumentException("SQL不能为空");
         }
-        String s = sql.trim();
+        if (dialect != null) {
+            validate(SqlLexer.tokenize(sql, dialect));
+            return;
+        }
+        validate(SqlLexer.tokenize(sql, SqlDialect.MYSQL));
+        validate(SqlLexer.tokenize(sql, SqlDialect.POSTGRESQL));
+    }
+
+    /** 同 validateReadOnlySingleStatement，不抛异常 */
+    public static boolean isReadOnlySingleStatement(String sql) {
+        return isReadOnlySingleStatement(sql, null);
+    }
+
+    public static boolean isReadOnlySingleStatement(String sql, SqlDialect dialect) {
+        if (sql == null || sql.isBlank()) return false;
+        try {
+            validateReadOnlySingleStatement(sql, dialect);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** 预检用的切词：先按 MySQL 规则，切不开再按 PG 规则（比如 PG 的 E'\'' 字符串） */
+    private static SqlLexer.Tokens lex(String sql) {
+        try {
+            return SqlLexer.tokenize(sql, SqlDialect.MYSQL);
+        } catch (IllegalArgumentException e) {
+            return SqlLexer.tokenize(sql, SqlDialect.POSTGRESQL);
+        }
+    }
+
+    private static void validate(SqlLexer.Tokens t) {
+        int n = t.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("SQL不能为空");
+        }
 
         // 禁多语句（避免 “; DROP TABLE …”）
-        // 允许末尾一个分号：SELECT ...;
-        int semicolonCount = 0;
-        for (char c : s.toCharArray()) if (c == ';') semicolonCount++;
-        if (semicolonCount > 1 || (semicolonCount == 1 && !s.endsWith(";"))) {
-            throw new IllegalArgumentException("SQL不允许多语句（仅允许单条查询）");
+        // 允许末尾一个分号：SELECT ...;（字符串/注释里的分号不算）
+        for (int i = 0; i < n; i++) {
+            if (t.isSymbol(i, ';') && i != n - 1) {
+                throw new IllegalArgumentException("SQL不允许多语句（仅允许单条查询）");
+            }
         }
 
-        // 只读前缀
-        if (!ALLOW_PREFIX.matcher(s).find()) {
+        // 只读前缀（允许开头的括号：(SELECT ...) UNION (SELECT ...)）
+        int first = 0;
+        while (first < n && t.isSymbol(first, '(')) first++;
+        String head = t.type(Math.min(first, n - 1)) == SqlLexer.TokenType.WORD ? t.identifier(first) : null;
+        if (head == null || !ALLOW_PREFIX.contains(head)) {
             throw new IllegalArgumentException("仅允许 SELECT / WITH / EXPLAIN 查询");
         }
 
         // 禁止危险关键字
-        if (FORBIDDEN.matcher(s).find()) {
+        for (int i = 0; i < n; i++) {
+            if (t.type(i) != SqlLexer.TokenType.WORD || t.isSymbol(i - 1, '.')) continue;
+            String w = t.identifier(i);
+            if (!FORBIDDEN.contains(w)) continue;
+            if (ALLOWED_AS_FUNCTION.contains(w) && t.isSymbol(i + 1, '(')) continue;
             throw new IllegalArgumentException("检测到危险SQL关键字，已拒绝执行");
         }
     }
 
+    /**
+     * 语句类型：第一个关键字的大写（SELECT / WITH / EXPLAIN / INSERT ...），跳过开头的注释和括号。
+     * 空 SQL、词法错误返回空串。给“像不像 SQL”这类廉价预检用，不做完整校验。
+     */
+    public static String statementType(String sql) {
+        if (sql == null || sql.isBlank()) return "";
+        try {
+            SqlLexer.Tokens t = lex(sql);
+            for (int i = 0; i < t.size(); i++) {
+                if (t.isSymbol(i, '(')) continue;
+                return t.type(i) == SqlLexer.TokenType.WORD ? t.text(i).toUpperCase(Locale.ROOT) : "";
+            }
+            return "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * SQL 里引用到的物理表名（小写、去引号、去 schema 前缀，按出现顺序去重）：FROM / JOIN 后面的表，
+     * 包括子查询和 CTE 里的；CTE 自己的名字不算。词法错误返回空列表。
+     * 只是词法级预检（不解析 AST），给 schema 校验、路由判断这类“先粗筛一遍”的地方用。
+     */
+    public static List<String> tables(String sql) {
+        if (sql == null || sql.isBlank()) return List.of();
+        SqlLexer.Tokens t;
+        try {
+            t = lex(sql);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+
+        int n = t.size();
+        Set<String> ctes = new HashSet<>();
+        // CTE：name [(cols)] AS (
+        for (int i = 0; i < n; i++) {
+            if (!t.isIdentifier(i) || !(t.isWord(i - 1, "with") || t.isWord(i - 1, "recursive") || t.isSymbol(i - 1, ','))) {
+                continue;
+            }
+            int j = i + 1;
+            if (t.isSymbol(j, '(')) j = skipParens(t, j);
+            if (t.isWord(j, "as") && t.isSymbol(j + 1, '(')) ctes.add(t.identifier(i));
+        }
+
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        // 括号栈：true 表示是函数调用的括号，EXTRACT(YEAR FROM x) / SUBSTRING(s FROM 2) 里的 FROM 不是表
+        Deque<Boolean> parens = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (t.isSymbol(i, '(')) {
+                parens.push(t.isIdentifier(i - 1) && !isClauseKeyword(t, i - 1) && !t.isWord(i - 1, "as")
+                        && !t.isWord(i - 1, "in") && !t.isWord(i - 1, "exists"));
+                continue;
+            }
+            if (t.isSymbol(i, ')')) {
+                if (!parens.isEmpty()) parens.pop();
+                continue;
+            }
+            if (!t.isWord(i, "from") && !t.isWord(i, "join")) continue;
+            if (!parens.isEmpty() && parens.peek()) continue;
+            // FROM a x, b y, c —— 逗号连接的表逐个读
+            int j = i + 1;
+            while (j < n) {
+                if (t.isWord(j, "lateral") || t.isWord(j, "only")) j++;
+                if (!t.isIdentifier(j) || t.isSymbol(j + 1, '(')) break; // 子查询 / 表函数
+
+                // schema.table
+                int last = j;
+                while (t.isSymbol(last + 1, '.') && t.isIdentifier(last + 2)) last += 2;
+                String name = t.identifier(last);
+                if (!ctes.contains(name) && !isClauseKeyword(t, j)) out.add(name);
+
+                j = last + 1;
+                if (t.isWord(j, "as")) j++;
+                if (t.isIdentifier(j) && !isClauseKeyword(t, j)) j++;
+                if (!t.isSymbol(j, ',')) break;
+                j++;
+            }
+        }
+        return new ArrayList<>(out);
+    }
+
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of(
+            "where", "group", "having", "order", "limit", "offset", "fetch", "union", "intersect", "except",
+            "join", "inner", "left", "right", "full", "cross", "natural", "on", "using", "window", "for",
+            "select", "lateral", "straight_join");
+
+    private static boolean isClauseKeyword(SqlLexer.Tokens t, int i) {
+        return t.type(i) == SqlLexer.TokenType.WORD && CLAUSE_KEYWORDS.contains(t.identifier(i));
+    }
+
+    /** i 指向 (，返回配对的 ) 之后的下标 */
+    private static int skipParens(SqlLexer.Tokens t, int i) {
+        int depth = 0;
+        for (; i < t.size(); i++) {
+            if (t.isSymbol(i, '(')) depth++;
+            else if (t.isSymbol(i, ')') && --depth == 0) return i + 1;
+        }
+        return i;
+    }
+
     /**
      * 如果用户 SQL 没写 LIMIT，则自动补一个 LIMIT，防止一次拉爆数据
      * 使用JSqlParser确保在正确的位置添加LIMIT子句
@@ -85,14 +240,18 @@ public final class SqlGuard {
                 return select.toString();
             } 
             // 检查是否是集合操作（如UNION、INTERSECT、EXCEPT等）
-            else if (select.getSelectBody() instanceof net.sf.jsqlparser.statement.select.SetOperationList) {
-                // 对于集合操作，简单处理：直接在末尾添加LIMIT
-                // 因为JSqlParser 4.9版本可能不支持SetOperationList的LIMIT操作
-                String s = trimmed.toLowerCase(Locale.ROOT);
-                if (!s.contains(" limit ")) {
-                    return trimmed + " LIMIT " + limit;
+            // LIMIT 挂在 SetOperationList 上，作用于整个集合结果；分支下推交给 SqlLogicalOptimizer
+            else if (select.getSelectBody() instanceof net.sf.jsqlparser.statement.select.SetOperationList setOp) {
+                net.sf.jsqlparser.statement.select.Limit existingLimit = setOp.getLimit();
+                if (existingLimit == null) {
+                    net.sf.jsqlparser.statement.select.Limit newLimit = new net.sf.jsqlparser.statement.select.Limit();
+                    newLimit.setRowCount(new net.sf.jsqlparser.expression.LongValue((long) limit));
+                    setOp.setLimit(newLimit);
+                } else if (!(existingLimit.getRowCount() instanceof net.sf.jsqlparser.expression.LongValue lv)
+                        || lv.getValue() > limit) {
+                    existingLimit.setRowCount(new net.sf.jsqlparser.expression.LongValue((long) limit));
                 }
-                return trimmed;
+                return select.toString();
             }
             else {
                 // 其他类型的SELECT语句，简单处理
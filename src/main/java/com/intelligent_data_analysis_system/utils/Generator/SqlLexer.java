@@ -0,0 +1,372 @@
+package com.intelligent_data_analysis_system.utils.Generator;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 手写的轻量 SQL 词法器：一遍扫描，认识字符串/注释，只记录 token 的类型和起止偏移（不切子串）。
+ * 按方言切词，规则和服务端一致（否则 SqlGuard 看到的语句边界和服务端执行的不是一回事）：
+ *
+ * - MySQL：'...' / "..." 是字符串（\ 和连写引号转义），`...` 是标识符；# 和 "-- " 是行注释（-- 后要有空白）；
+ *   块注释不嵌套；/*!、/*M!、/*+ 里的内容会被执行，按正常 SQL 继续切词；$ 是标识符字符
+ * - PG：'...' 只认连写引号，E'...' 认 \ 转义，$tag$...$tag$ 字符串，"..." 是标识符；-- 是行注释；
+ *   块注释可嵌套；# 和 ` 是运算符 / 符号
+ * - 参数：?、:name、PG 的 $1
+ *
+ * 字符串/注释没闭合、或结尾随服务端设置变化（反斜杠转义开关、可执行注释版本号）时抛 IllegalArgumentException（与 SqlGuard 其余报错一致）。
+ */
+public final class SqlLexer {
+
+    private SqlLexer() {}
+
+    public enum TokenType {
+        /** 关键字或未加引号的标识符 */
+        WORD,
+        /** "x" / `x` */
+        QUOTED_IDENT,
+        /** 字符串字面量（含引号） */
+        STRING,
+        NUMBER,
+        /** 参数占位符：? / :name / $1 */
+        PARAM,
+        /** 运算符、括号、逗号、分号、点等；多字符运算符（<= <> != || ::）合成一个 */
+        SYMBOL
+    }
+
+    /** 切词结果：按下标访问，避免每个 token 一个对象 */
+    public static final class Tokens {
+        private final String sql;
+        private TokenType[] types = new TokenType[32];
+        private int[] starts = new int[32];
+        private int[] ends = new int[32];
+        private int size;
+
+        private Tokens(String sql) {
+            this.sql = sql;
+        }
+
+        private void add(TokenType type, int start, int end) {
+            if (size == types.length) {
+                int n = size * 2;
+                types = Arrays.copyOf(types, n);
+                starts = Arrays.copyOf(starts, n);
+                ends = Arrays.copyOf(ends, n);
+            }
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        public String sql() {
+            return sql;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public TokenType type(int i) {
+            return types[i];
+        }
+
+        public int start(int i) {
+            return starts[i];
+        }
+
+        public int end(int i) {
+            return ends[i];
+        }
+
+        public String text(int i) {
+            return sql.substring(starts[i], ends[i]);
+        }
+
+        /** 第 i 个 token 是否是关键字 keyword（忽略大小写，不分配内存）；越界返回 false */
+        public boolean isWord(int i, String keyword) {
+            return i >= 0 && i < size && types[i] == TokenType.WORD
+                    && ends[i] - starts[i] == keyword.length()
+                    && sql.regionMatches(true, starts[i], keyword, 0, keyword.length());
+        }
+
+        /** 第 i 个 token 是否是单字符符号 c；越界返回 false */
+        public boolean isSymbol(int i, char c) {
+            return i >= 0 && i < size && types[i] == TokenType.SYMBOL
+                    && ends[i] - starts[i] == 1 && sql.charAt(starts[i]) == c;
+        }
+
+        /** 标识符的名字：去掉引号、转小写；不是标识符返回 null */
+        public String identifier(int i) {
+            if (i < 0 || i >= size) return null;
+            if (types[i] == TokenType.WORD) return text(i).toLowerCase(Locale.ROOT);
+            if (types[i] == TokenType.QUOTED_IDENT) {
+                return sql.substring(starts[i] + 1, ends[i] - 1).toLowerCase(Locale.ROOT);
+            }
+            return null;
+        }
+
+        public boolean isIdentifier(int i) {
+            return i >= 0 && i < size && (types[i] == TokenType.WORD || types[i] == TokenType.QUOTED_IDENT);
+        }
+    }
+
+    /**
+     * 按 dialect 的规则切词（字符串、转义、注释、# 和 $ 的含义都跟着引擎走，和服务端对“哪里是字符串 / 注释”的判断一致）。
+     * 反斜杠转义受服务端设置影响（MySQL 的 NO_BACKSLASH_ESCAPES、PG 的 standard_conforming_strings）：
+     * 两种设置下字符串在不同位置结束的，直接当词法错误拒绝，不去猜服务端用的是哪个。
+     */
+    public static Tokens tokenize(String sql, SqlDialect dialect) {
+        if (dialect == null) throw new IllegalArgumentException("切词需要指定方言");
+        Tokens out = new Tokens(sql == null ? "" : sql);
+        if (sql == null) return out;
+
+        final boolean mysql = dialect == SqlDialect.MYSQL;
+        final int n = sql.length();
+        int i = 0;
+        // 所在 MySQL 可执行注释的结尾（*/ 的位置），不在可执行注释里时为 -1
+        int executableEnd = -1;
+
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+
+            if (executableEnd >= 0 && i == executableEnd) {
+                executableEnd = -1;
+                i += 2;
+                continue;
+            }
+
+            // 注释：MySQL 的 -- 后面必须是空白或控制字符（1--1 是 1 - -1），# 只有 MySQL 是注释（PG 里是异或运算符）
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-'
+                    && (!mysql || i + 2 >= n || isMysqlCommentSpace(sql.charAt(i + 2)))) {
+                i = skipLine(sql, i + 2);
+                checkInsideExecutable(executableEnd, start, i);
+                continue;
+            }
+            if (c == '#' && mysql) {
+                i = skipLine(sql, i + 1);
+                checkInsideExecutable(executableEnd, start, i);
+                continue;
+            }
+            if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                if (mysql && isExecutableCommentStart(sql, i)) {
+                    if (executableEnd >= 0) throw new IllegalArgumentException("SQL 存在嵌套的可执行注释");
+                    executableEnd = sql.indexOf("*/", i + 2);
+                    if (executableEnd < 0) throw new IllegalArgumentException("SQL 存在未闭合的注释");
+                    i += sql.charAt(i + 2) == 'M' ? 4 : 3;
+                    continue;
+                }
+                i = mysql ? skipFlatBlockComment(sql, i) : skipNestedBlockComment(sql, i);
+                checkInsideExecutable(executableEnd, start, i);
+                continue;
+            }
+
+            // 字符串 / 引号标识符
+            if (c == '\'') {
+                i = skipEitherWay(sql, i, '\'');
+                out.add(TokenType.STRING, start, i);
+            } else if (!mysql && (c == 'E' || c == 'e') && i + 1 < n && sql.charAt(i + 1) == '\'') {
+                // PG 的 E'...' 总是认反斜杠转义
+                i = skipQuoted(sql, i + 1, '\'', true);
+                out.add(TokenType.STRING, start, i);
+            } else if (!mysql && (c == 'U' || c == 'u') && i + 2 < n && sql.charAt(i + 1) == '&'
+                    && (sql.charAt(i + 2) == '\'' || sql.charAt(i + 2) == '"')) {
+                // PG 的 U&'...' / U&"..."：只有连写引号是转义
+                char q = sql.charAt(i + 2);
+                i = q == '\'' ? skipEitherWay(sql, i + 2, q) : skipQuoted(sql, i + 2, q, false);
+                out.add(q == '\'' ? TokenType.STRING : TokenType.QUOTED_IDENT, start, i);
+            } else if ((c == 'N' || c == 'n' || c == 'X' || c == 'x' || c == 'B' || c == 'b')
+                    && i + 1 < n && sql.charAt(i + 1) == '\'') {
+                i = skipEitherWay(sql, i + 1, '\'');
+                out.add(TokenType.STRING, start, i);
+            } else if (c == '"') {
+                // MySQL 默认模式下双引号是字符串（认反斜杠转义），ANSI_QUOTES 下是标识符（不认）：两种结尾一致才放行
+                i = mysql ? skipEitherWay(sql, i, '"') : skipQuoted(sql, i, '"', false);
+                out.add(TokenType.QUOTED_IDENT, start, i);
+            } else if (c == '`' && mysql) {
+                i = skipQuoted(sql, i, '`', false);
+                out.add(TokenType.QUOTED_IDENT, start, i);
+            } else if (c == '$' && !mysql && (i = dollar(sql, i, out)) > start) {
+                // PG：$1 参数 / $tag$ ... $tag$ 字符串；MySQL 里 $ 只是标识符字符
+            } else if (c == '?') {
+                out.add(TokenType.PARAM, start, ++i);
+            } else if (c == ':' && i + 1 < n && isIdentStart(sql.charAt(i + 1), false)
+                    && (i == 0 || sql.charAt(i - 1) != ':')) {
+                // :name 参数（:: 类型转换除外）
+                int j = i + 1;
+                while (j < n && isIdentPart(sql.charAt(j))) j++;
+                out.add(TokenType.PARAM, start, j);
+                i = j;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                i = skipNumber(sql, i);
+                out.add(TokenType.NUMBER, start, i);
+            } else if (isIdentStart(c, mysql)) {
+                int j = i + 1;
+                while (j < n && isIdentPart(sql.charAt(j))) j++;
+                out.add(TokenType.WORD, start, j);
+                i = j;
+            } else {
+                // 包括 PG 里的 ` 和 #：PG 不认反引号，按符号切，里面的内容照常检查
+                i += symbolLength(sql, i);
+                out.add(TokenType.SYMBOL, start, i);
+            }
+            checkInsideExecutable(executableEnd, start, i);
+        }
+
+        if (executableEnd >= 0) throw new IllegalArgumentException("SQL 存在未闭合的注释");
+        return out;
+    }
+
+    /**
+     * PG 的 $：$1 参数、$tag$...$tag$ 字符串，切出 token 返回新位置；都不是返回 i（交给后面按符号切）
+     */
+    private static int dollar(String sql, int i, Tokens out) {
+        final int n = sql.length();
+        int j = i + 1;
+        if (j < n && Character.isDigit(sql.charAt(j))) {
+            while (j < n && Character.isDigit(sql.charAt(j))) j++;
+            out.add(TokenType.PARAM, i, j);
+            return j;
+        }
+        while (j < n && isIdentPart(sql.charAt(j)) && sql.charAt(j) != '$') j++;
+        if (j < n && sql.charAt(j) == '$') {
+            String tag = sql.substring(i, j + 1);
+            int close = sql.indexOf(tag, j + 1);
+            if (close < 0) throw new IllegalArgumentException("SQL 存在未闭合的 $$ 字符串");
+            out.add(TokenType.STRING, i, close + tag.length());
+            return close + tag.length();
+        }
+        return i;
+    }
+
+    /** /*! 和 /*M!（MySQL / MariaDB 按版本执行）、/*+（优化器提示）：内容按 SQL 切词 */
+    private static boolean isExecutableCommentStart(String sql, int i) {
+        if (i + 2 >= sql.length()) return false;
+        char c = sql.charAt(i + 2);
+        return c == '!' || c == '+' || (c == 'M' && i + 3 < sql.length() && sql.charAt(i + 3) == '!');
+    }
+
+    /**
+     * 可执行注释里的 token / 注释不能跨过注释结尾：版本号高于服务端时 MySQL 把整段当注释、在第一个注释结尾结束，
+     * 否则按 SQL 切词；两种读法对不上的一律拒绝
+     */
+    private static void checkInsideExecutable(int executableEnd, int start, int end) {
+        if (executableEnd >= 0 && start < executableEnd && end > executableEnd) {
+            throw new IllegalArgumentException("SQL 可执行注释里的字符串或注释跨过了注释结尾");
+        }
+    }
+
+    /** MySQL：-- 之后要跟空白或控制字符才是注释 */
+    private static boolean isMysqlCommentSpace(char c) {
+        return Character.isWhitespace(c) || Character.isISOControl(c);
+    }
+
+    private static int skipLine(String sql, int i) {
+        int nl = sql.indexOf('\n', i);
+        return nl < 0 ? sql.length() : nl + 1;
+    }
+
+    /** MySQL 块注释不嵌套：到第一个注释结尾就结束 */
+    private static int skipFlatBlockComment(String sql, int i) {
+        int close = sql.indexOf("*/", i + 2);
+        if (close < 0) throw new IllegalArgumentException("SQL 存在未闭合的注释");
+        return close + 2;
+    }
+
+    /** PG 块注释可嵌套：开头和结尾成对计数，内层注释结尾不结束外层 */
+    private static int skipNestedBlockComment(String sql, int i) {
+        int depth = 0;
+        final int n = sql.length();
+        while (i < n) {
+            if (i + 1 < n && sql.charAt(i) == '/' && sql.charAt(i + 1) == '*') {
+                depth++;
+                i += 2;
+            } else if (i + 1 < n && sql.charAt(i) == '*' && sql.charAt(i + 1) == '/') {
+                depth--;
+                i += 2;
+                if (depth == 0) return i;
+            } else {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("SQL 存在未闭合的注释");
+    }
+
+    /**
+     * 反斜杠是否转义取决于服务端设置的字符串（MySQL 的 '...' / "..."，PG 的 '...'）：
+     * 认和不认反斜杠转义两种读法的结尾必须一致，否则拒绝（'\' 在一种设置下是完整字符串，另一种下还没结束）
+     */
+    private static int skipEitherWay(String sql, int i, char quote) {
+        int escaped = skipQuoted(sql, i, quote, true);
+        int plain = skipQuoted(sql, i, quote, false);
+        if (escaped != plain) {
+            throw new IllegalArgumentException("SQL 字符串里的反斜杠在不同的服务端设置下结尾不同，已拒绝");
+        }
+        return plain;
+    }
+
+    /** i 指向开引号，返回闭引号之后的位置；连写两个引号是转义，backslashEscape 时还认 \ 转义 */
+    private static int skipQuoted(String sql, int i, char quote, boolean backslashEscape) {
+        final int n = sql.length();
+        i++;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (backslashEscape && c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        throw new IllegalArgumentException(quote == '\'' ? "SQL 存在未闭合的字符串" : "SQL 存在未闭合的引号标识符");
+    }
+
+    private static int skipNumber(String sql, int i) {
+        final int n = sql.length();
+        while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+        if (i < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < n && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) j++;
+            if (j < n && Character.isDigit(sql.charAt(j))) {
+                i = j;
+                while (i < n && Character.isDigit(sql.charAt(i))) i++;
+            }
+        }
+        return i;
+    }
+
+    private static int symbolLength(String sql, int i) {
+        if (i + 1 < sql.length()) {
+            char a = sql.charAt(i);
+            char b = sql.charAt(i + 1);
+            if ((a == '<' && (b == '=' || b == '>')) || (a == '>' && b == '=') || (a == '!' && b == '=')
+                    || (a == '|' && b == '|') || (a == ':' && b == ':') || (a == '&' && b == '&')) {
+                return 2;
+            }
+        }
+        return 1;
+    }
+
+    /** MySQL 的未加引号标识符可以以 $ 开头（PG 不行，PG 里开头的 $ 是参数或 $$ 字符串） */
+    private static boolean isIdentStart(char c, boolean mysql) {
+        return Character.isLetter(c) || c == '_' || (mysql && c == '$');
+    }
+
+    private static boolean isIdentPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -107,27 +107,13 @@ public class AdvancedResultNormalizer implements ResultNormalizer {
     }
 
     /**
-     * 将QueryResult转换为List<Map<String, Object>>格式
+     * QueryResult 的按行 Map 视图（只读、不复制；advancedNormalize 会另建新行）
      */
     private List<Map<String, Object>> convertQueryResultToList(QueryResult result) {
-        List<Map<String, Object>> list = new ArrayList<>();
         if (result == null || result.isEmpty()) {
-            return list;
+            return new ArrayList<>();
         }
-
-        List<String> columns = result.getColumns();
-        List<List<Object>> rows = result.getRows();
-
-        for (List<Object> row : rows) {
-            Map<String, Object> map = new LinkedHashMap<>();
-            for (int i = 0; i < columns.size(); i++) {
-                String column = columns.get(i);
-                Object value = i < row.size() ? row.get(i) : null;
-                map.put(column, value);
-            }
-            list.add(map);
-        }
-        return list;
+        return result.getData().rowMaps();
     }
 
     /**
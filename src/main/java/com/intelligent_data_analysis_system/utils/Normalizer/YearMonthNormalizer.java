@@ -2,7 +2,7 @@ package com.intelligent_data_analysis_system.utils.Normalizer;
 
 import com.intelligent_data_analysis_system.utils.SqlWherePatcher;
 
-import java.util.Locale;
+import java.time.LocalDate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,23 +50,14 @@ public class YearMonthNormalizer {
         return null;
     }
 
+    /**
+     * 直接生成半开区间（col >= 起 AND col < 止），不再用 YEAR()/EXTRACT() 包列：
+     * 函数包列会让日期索引失效；字符串边界在 MySQL / PostgreSQL 下都会按列类型隐式转换，写法两边通用。
+     */
     private static String buildYearMonthCond(String dbms, String dateCol, int year, Integer month) {
-        String d = (dbms == null ? "" : dbms.toLowerCase(Locale.ROOT));
-        boolean isMySQL = d.contains("mysql");
-
-        if (isMySQL) {
-            if (month != null) {
-                return "YEAR(" + dateCol + ") = " + year + " AND MONTH(" + dateCol + ") = " + month;
-            }
-            return "YEAR(" + dateCol + ") = " + year;
-        }
-
-        // PostgreSQL
-        if (month != null) {
-            return "EXTRACT(YEAR FROM " + dateCol + ") = " + year +
-                    " AND EXTRACT(MONTH FROM " + dateCol + ") = " + month;
-        }
-        return "EXTRACT(YEAR FROM " + dateCol + ") = " + year;
+        LocalDate from = month == null ? LocalDate.of(year, 1, 1) : LocalDate.of(year, month, 1);
+        LocalDate to = month == null ? from.plusYears(1) : from.plusMonths(1);
+        return dateCol + " >= '" + from + "' AND " + dateCol + " < '" + to + "'";
     }
 
     /**
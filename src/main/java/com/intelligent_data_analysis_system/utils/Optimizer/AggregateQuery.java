@@ -0,0 +1,356 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * 单表（可 JOIN 维表）上的简单聚合查询：投影只有 GROUP BY 表达式和 COUNT / SUM / MIN / MAX / AVG。
+ * 分片合并（ScatterGatherPlanner）和近似查询（ApproximateRewriter）都把它改写成“部分聚合”再在内存里算出最终结果，
+ * 这里负责识别查询形状、算输出列名（和驱动返回的一致），以及合并后的排序 / LIMIT。
+ *
+ * 不支持：WITH、DISTINCT、HAVING、OFFSET、GROUPING SETS、RIGHT / FULL JOIN、子查询做 FROM、窗口函数；
+ * ORDER BY 只能引用输出列（别名、序号或同一表达式）。
+ */
+public final class AggregateQuery {
+
+    public enum Agg { GROUP, COUNT, SUM, MIN, MAX, AVG }
+
+    /** 一个输出列 */
+    public static final class Output {
+        public final Agg agg;
+        public final String label;
+        /** GROUP：分组键下标，其它 -1 */
+        public final int group;
+        /** 聚合函数原样（GROUP 为 null） */
+        public final Function fn;
+        /** COUNT(DISTINCT x) */
+        public final boolean distinct;
+
+        Output(Agg agg, String label, int group, Function fn, boolean distinct) {
+            this.agg = agg;
+            this.label = label;
+            this.group = group;
+            this.fn = fn;
+            this.distinct = distinct;
+        }
+
+        /** 聚合参数；COUNT(*) 返回 null */
+        public Expression arg() {
+            if (fn == null || fn.getParameters() == null || fn.getParameters().isEmpty()) return null;
+            Expression e = (Expression) fn.getParameters().get(0);
+            return e instanceof AllColumns ? null : e;
+        }
+    }
+
+    private static final class OrderKey {
+        final int output;
+        final boolean asc;
+        final Boolean nullsFirst;
+
+        OrderKey(int output, boolean asc, Boolean nullsFirst) {
+            this.output = output;
+            this.asc = asc;
+            this.nullsFirst = nullsFirst;
+        }
+    }
+
+    public final SqlDialect dialect;
+    /** 解析出来的语句；调用方可以就地改写成部分聚合 */
+    public final PlainSelect select;
+    public final Table fact;
+    /** FROM 表名（去引号、小写） */
+    public final String table;
+    /** 引用 FROM 表列时的限定名（别名，或有 JOIN 时的表名），不需要限定时 null */
+    public final String qualifier;
+    /** 分组表达式（GROUP BY 的序号 / 别名已换成投影表达式） */
+    public final List<Expression> groups;
+    public final List<Output> outputs;
+    /** 原 LIMIT，没有为 -1 */
+    public final long limit;
+    private final List<OrderKey> order;
+
+    private AggregateQuery(SqlDialect dialect, PlainSelect select, Table fact, String qualifier,
+                           List<Expression> groups, List<Output> outputs, List<OrderKey> order, long limit) {
+        this.dialect = dialect;
+        this.select = select;
+        this.fact = fact;
+        this.table = unquote(fact.getName());
+        this.qualifier = qualifier;
+        this.groups = groups;
+        this.outputs = outputs;
+        this.order = order;
+        this.limit = limit;
+    }
+
+    /**
+     * @param allowDistinctCount 是否接受 COUNT(DISTINCT x)（单参数）
+     * @return 不是这种形状时 null
+     */
+    public static AggregateQuery analyze(SqlDialect dialect, String sql, boolean allowDistinctCount) {
+        if (sql == null) return null;
+        Statement st;
+        try {
+            String s = sql.trim();
+            if (s.endsWith(";")) s = s.substring(0, s.length() - 1).trim();
+            st = CCJSqlParserUtil.parse(s);
+        } catch (Exception e) {
+            return null;
+        }
+        if (!(st instanceof PlainSelect ps)) return null;
+        if (ps.getWithItemsList() != null && !ps.getWithItemsList().isEmpty()) return null;
+        if (ps.getDistinct() != null || ps.getHaving() != null || ps.getOffset() != null || ps.getFetch() != null) {
+            return null;
+        }
+        if (ps.getLimit() != null && ps.getLimit().getOffset() != null) return null;
+        if (!(ps.getFromItem() instanceof Table fact)) return null;
+        String qualifier = fact.getAlias() != null ? fact.getAlias().getName()
+                : ps.getJoins() != null && !ps.getJoins().isEmpty() ? fact.getName() : null;
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (!(j.getRightItem() instanceof Table)) return null;
+                if (j.isRight() || j.isFull()) return null;
+            }
+        }
+
+        List<Expression> groups = new ArrayList<>();
+        if (ps.getGroupBy() != null) {
+            GroupByElement gb = ps.getGroupBy();
+            if (gb.getGroupingSets() != null && !gb.getGroupingSets().isEmpty()) return null;
+            if (gb.getGroupByExpressionList() != null) {
+                for (Object o : gb.getGroupByExpressionList()) {
+                    Expression e = resolve(ps, (Expression) o);
+                    if (e == null) return null;
+                    groups.add(e);
+                }
+            }
+        }
+
+        List<Output> outputs = new ArrayList<>();
+        boolean anyAggregate = false;
+        for (SelectItem<?> si : ps.getSelectItems()) {
+            Expression e = si.getExpression();
+            if (e == null || e instanceof AllColumns) return null;
+            String label = label(dialect, si);
+            int gi = indexOf(groups, e);
+            if (gi >= 0) {
+                outputs.add(new Output(Agg.GROUP, label, gi, null, false));
+                continue;
+            }
+            if (!(e instanceof Function f) || f.getName() == null) return null;
+            Agg agg;
+            try {
+                agg = Agg.valueOf(f.getName().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+            if (agg == Agg.GROUP) return null;
+            int params = f.getParameters() == null ? 0 : f.getParameters().size();
+            if (f.isDistinct() && !(allowDistinctCount && agg == Agg.COUNT && params == 1)) return null;
+            if (agg != Agg.COUNT && params != 1) return null;
+            anyAggregate = true;
+            outputs.add(new Output(agg, label, -1, f, f.isDistinct()));
+        }
+        if (!anyAggregate) return null;
+
+        List<OrderKey> order = new ArrayList<>();
+        if (ps.getOrderByElements() != null) {
+            for (OrderByElement ob : ps.getOrderByElements()) {
+                int idx = outputIndex(ps, outputs, ob.getExpression());
+                if (idx < 0) return null;
+                Boolean nullsFirst = ob.getNullOrdering() == null ? null
+                        : ob.getNullOrdering() == OrderByElement.NullOrdering.NULLS_FIRST;
+                order.add(new OrderKey(idx, ob.isAsc(), nullsFirst));
+            }
+        }
+        long limit = -1;
+        if (ps.getLimit() != null) {
+            if (!(ps.getLimit().getRowCount() instanceof LongValue lv)) return null;
+            limit = lv.getValue();
+        }
+        return new AggregateQuery(dialect, ps, fact, qualifier, groups, outputs, order, limit);
+    }
+
+    public boolean hasOrder() {
+        return !order.isEmpty();
+    }
+
+    public List<String> labels() {
+        List<String> labels = new ArrayList<>(outputs.size());
+        for (Output o : outputs) labels.add(o.label);
+        return labels;
+    }
+
+    /** FROM 表上某列在改写后 SQL 里的写法 */
+    public String columnRef(String column) {
+        return qualifier == null ? column : qualifier + "." + column;
+    }
+
+    /** e 是不是 FROM 表上的这一列（不带限定名的列也算） */
+    public boolean isFactColumn(Expression e, String column) {
+        if (!(e instanceof Column c) || !unquote(c.getColumnName()).equals(column)) return false;
+        if (c.getTable() == null || c.getTable().getName() == null) return true;
+        String t = unquote(c.getTable().getName());
+        return t.equals(table) || (qualifier != null && t.equals(unquote(qualifier)));
+    }
+
+    /** 最终行按原 ORDER BY 排序（各方言的 NULL 顺序）、截 LIMIT，列名用原查询的输出列名 */
+    public ColumnarResult finish(List<List<Object>> rows) {
+        return ColumnarResult.of(labels(), finishRows(rows));
+    }
+
+    /** 同 finish，但返回行本身（行里输出列之后可以带附加值，排序时跟着走） */
+    public List<List<Object>> finishRows(List<List<Object>> rows) {
+        if (!order.isEmpty()) rows.sort(comparator());
+        if (limit >= 0 && rows.size() > limit) rows = new ArrayList<>(rows.subList(0, (int) limit));
+        return rows;
+    }
+
+    private Comparator<List<Object>> comparator() {
+        return (x, y) -> {
+            for (OrderKey k : order) {
+                Object a = x.get(k.output);
+                Object b = y.get(k.output);
+                if (a == null || b == null) {
+                    if (a == b) continue;
+                    // MySQL 里 NULL 最小，PG 里 NULL 最大；显式 NULLS FIRST / LAST 优先
+                    boolean nullsFirst = k.nullsFirst != null ? k.nullsFirst
+                            : k.asc == (dialect != SqlDialect.POSTGRESQL);
+                    return (a == null) == nullsFirst ? -1 : 1;
+                }
+                int c = compare(a, b);
+                if (c != 0) return k.asc ? c : -c;
+            }
+            return 0;
+        };
+    }
+
+    /** 和数据库 AVG 返回的类型、小数位一致 */
+    public Object average(Number sum, long n) {
+        if (sum == null || n == 0) return null;
+        if (sum instanceof Double || sum instanceof Float) return sum.doubleValue() / n;
+        BigDecimal s = toBig(sum);
+        if (dialect == SqlDialect.POSTGRESQL) {
+            return s.divide(BigDecimal.valueOf(n), MathContext.DECIMAL64);
+        }
+        // MySQL：AVG 的小数位 = 参数小数位 + div_precision_increment(4)
+        return s.divide(BigDecimal.valueOf(n), Math.max(s.scale(), 0) + 4, RoundingMode.HALF_UP);
+    }
+
+    // ========================= 解析辅助 =========================
+
+    /** GROUP BY 1 / 别名 -> 投影表达式 */
+    private static Expression resolve(PlainSelect ps, Expression e) {
+        List<SelectItem<?>> items = ps.getSelectItems();
+        if (e instanceof LongValue lv) {
+            int idx = (int) lv.getValue() - 1;
+            return idx < 0 || idx >= items.size() ? null : items.get(idx).getExpression();
+        }
+        if (e instanceof Column c && c.getTable() == null) {
+            for (SelectItem<?> si : items) {
+                if (si.getAlias() != null && unquote(si.getAlias().getName()).equals(unquote(c.getColumnName()))
+                        && !(si.getExpression() instanceof Column)) {
+                    return si.getExpression();
+                }
+            }
+        }
+        return e;
+    }
+
+    private static int outputIndex(PlainSelect ps, List<Output> outputs, Expression e) {
+        List<SelectItem<?>> items = ps.getSelectItems();
+        if (e instanceof LongValue lv) {
+            int idx = (int) lv.getValue() - 1;
+            return idx < 0 || idx >= outputs.size() ? -1 : idx;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem<?> si = items.get(i);
+            if (e instanceof Column c && c.getTable() == null && si.getAlias() != null
+                    && unquote(si.getAlias().getName()).equals(unquote(c.getColumnName()))) {
+                return i;
+            }
+            if (same(si.getExpression(), e)) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(List<Expression> list, Expression e) {
+        for (int i = 0; i < list.size(); i++) {
+            if (same(list.get(i), e)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean same(Expression a, Expression b) {
+        if (a instanceof Column ca && b instanceof Column cb) {
+            if (!unquote(ca.getColumnName()).equals(unquote(cb.getColumnName()))) return false;
+            String ta = ca.getTable() == null ? null : ca.getTable().getName();
+            String tb = cb.getTable() == null ? null : cb.getTable().getName();
+            return ta == null || tb == null || unquote(ta).equals(unquote(tb));
+        }
+        return a != null && b != null && a.toString().equalsIgnoreCase(b.toString());
+    }
+
+    /** 和驱动返回的列名一致：别名 &gt; 列名 &gt; MySQL 用表达式原文，PG 用函数名 */
+    private static String label(SqlDialect dialect, SelectItem<?> si) {
+        if (si.getAlias() != null) return unquoteKeepCase(si.getAlias().getName());
+        Expression e = si.getExpression();
+        if (e instanceof Column c) return unquoteKeepCase(c.getColumnName());
+        if (dialect == SqlDialect.POSTGRESQL) {
+            return e instanceof Function f ? f.getName().toLowerCase(Locale.ROOT) : "?column?";
+        }
+        return e.toString();
+    }
+
+    // ========================= 数值 =========================
+
+    /** 保留类型相加：整数溢出转 BigDecimal，有小数的按 BigDecimal / double */
+    public static Number add(Number a, Number b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a instanceof BigDecimal || b instanceof BigDecimal || a instanceof BigInteger || b instanceof BigInteger) {
+            return toBig(a).add(toBig(b));
+        }
+        if (a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float) {
+            return a.doubleValue() + b.doubleValue();
+        }
+        try {
+            return Math.addExact(a.longValue(), b.longValue());
+        } catch (ArithmeticException e) {
+            return toBig(a).add(toBig(b));
+        }
+    }
+
+    public static BigDecimal toBig(Number n) {
+        if (n instanceof BigDecimal d) return d;
+        if (n instanceof BigInteger i) return new BigDecimal(i);
+        if (n instanceof Double || n instanceof Float) return BigDecimal.valueOf(n.doubleValue());
+        return BigDecimal.valueOf(n.longValue());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) return toBig(x).compareTo(toBig(y));
+        if (a instanceof Comparable ca && a.getClass().isInstance(b)) return ca.compareTo(b);
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    static String unquote(String s) {
+        return unquoteKeepCase(s).toLowerCase(Locale.ROOT);
+    }
+
+    private static String unquoteKeepCase(String s) {
+        return s.replace("`", "").replace("\"", "");
+    }
+}
@@ -0,0 +1,331 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * 近似查询：只要大概数字的聚合（“大约多少客户”、分布形状）不做精确全表扫描。
+ *
+ * COUNT / SUM / AVG / MIN / MAX 在 FROM 表的样本上算（查询形状同 AggregateQuery，判断不了返回 null，调用方按精确查询执行）：
+ * - PG：TABLESAMPLE SYSTEM（按数据块抽，只读样本页）+ REPEATABLE（同一查询结果稳定、可缓存）
+ * - MySQL：没有 TABLESAMPLE，按整数主键范围抽 —— 把 [MIN, MAX] 分成若干段，每段里按种子取一个占 f 的子区间，
+ *   条件是 pk BETWEEN a1 AND b1 OR ...，走聚簇索引的范围扫描，只读这些区间。主键不是整数、拿不到 MIN / MAX 时不抽样
+ *
+ * COUNT / SUM 按抽样比例放大，AVG 用样本均值，MIN / MAX 是样本里的极值。
+ * 误差区间按行级独立抽样的公式算（名义 95%）：COUNT / SUM 的方差 (1-f)·Σx² / f²，AVG 的方差 (1-f)·s² / n。
+ * 但两种都是整群抽样（PG 按数据块，MySQL 按主键连续区间），同一块 / 同一段里的行相关时实际误差比区间大，
+ * 所以响应里标 interval: heuristic，只给名义置信度（nominalConfidence），不承诺覆盖率；样本里没出现的小分组不会返回。
+ *
+ * COUNT(DISTINCT) 不能从样本按比例放大，也不把整表拉到应用里估：这类查询不改写，由数据库精确执行，
+ * 响应的 approximate 字段里说明原因（见 exactReason）。
+ */
+public final class ApproximateRewriter {
+
+    private static final String GROUP_ALIAS = "__apg";
+    private static final String AGG_ALIAS = "__apa";
+    private static final String COUNT_ALIAS = "__apc";
+    private static final String SQUARE_ALIAS = "__apq";
+    private static final String SAMPLE_MARKER = "__approx_sample__";
+    /** MySQL 主键范围抽样最多分几段：段越多样本越分散（误差越接近行级抽样），OR 条件也越长 */
+    private static final int KEY_STRATA = 64;
+    /** 95% 置信区间 */
+    private static final double Z = 1.96;
+
+    private ApproximateRewriter() {}
+
+    public enum Method { TABLESAMPLE, KEY_RANGE_SAMPLE }
+
+    /** MySQL 主键范围抽样用的整数主键 [MIN, MAX]；查不到返回 null */
+    @FunctionalInterface
+    public interface KeyRange {
+        long[] of(String table, String primaryKey);
+    }
+
+    /** 最终结果 + 响应里的 approximate 字段 */
+    public static final class Estimate {
+        public final ColumnarResult result;
+        public final Map<String, Object> meta;
+
+        Estimate(ColumnarResult result, Map<String, Object> meta) {
+            this.result = result;
+            this.meta = meta;
+        }
+    }
+
+    public static final class Plan {
+        public final Method method;
+        /** 要执行的 SQL */
+        public final String sql;
+        /** 抽样比例（0~1） */
+        public final double fraction;
+
+        private final AggregateQuery query;
+
+        private Plan(Method method, String sql, double fraction, AggregateQuery query) {
+            this.method = method;
+            this.sql = sql;
+            this.fraction = fraction;
+            this.query = query;
+        }
+
+        /** 部分聚合放大成估计值并算误差区间 */
+        public Estimate finish(ColumnarResult raw) {
+            List<AggregateQuery.Output> outputs = query.outputs;
+            int g = query.groups.size();
+            double f = fraction;
+            int[] gi = new int[g];
+            for (int j = 0; j < g; j++) gi[j] = raw.columnIndex(GROUP_ALIAS + j);
+
+            List<List<Object>> rows = new ArrayList<>(raw.rowCount());
+            for (int r = 0; r < raw.rowCount(); r++) {
+                List<Object> row = new ArrayList<>(outputs.size() + 1);
+                Map<String, Object> b = new LinkedHashMap<>();
+                for (int o = 0; o < outputs.size(); o++) {
+                    AggregateQuery.Output out = outputs.get(o);
+                    if (out.agg == AggregateQuery.Agg.GROUP) {
+                        row.add(raw.get(r, gi[out.group]));
+                        continue;
+                    }
+                    Object value = raw.get(r, raw.columnIndex(AGG_ALIAS + o));
+                    if (out.agg == AggregateQuery.Agg.MIN || out.agg == AggregateQuery.Agg.MAX) {
+                        row.add(value);
+                        continue;
+                    }
+                    Number v = (Number) value;
+                    switch (out.agg) {
+                        case COUNT -> {
+                            long c = v == null ? 0 : v.longValue();
+                            long est = Math.round(c / f);
+                            double se = Math.sqrt((1 - f) * c) / f;
+                            row.add(est);
+                            b.put(out.label, List.of(Math.max(c, Math.round(est - Z * se)), Math.round(est + Z * se)));
+                        }
+                        case SUM -> {
+                            Number q = (Number) raw.get(r, raw.columnIndex(SQUARE_ALIAS + o));
+                            Number est = scale(v, f);
+                            row.add(est);
+                            if (est != null) {
+                                double se = Math.sqrt(Math.max(0, (1 - f) * doubleOf(q))) / f;
+                                b.put(out.label, List.of(est.doubleValue() - Z * se, est.doubleValue() + Z * se));
+                            }
+                        }
+                        case AVG -> {
+                            Number c = (Number) raw.get(r, raw.columnIndex(COUNT_ALIAS + o));
+                            Number q = (Number) raw.get(r, raw.columnIndex(SQUARE_ALIAS + o));
+                            long n = c == null ? 0 : c.longValue();
+                            Object mean = query.average(v, n);
+                            row.add(mean);
+                            if (mean != null && n > 1) {
+                                double s = doubleOf(v);
+                                double variance = Math.max(0, (doubleOf(q) - s * s / n) / (n - 1));
+                                double se = Math.sqrt(variance / n * (1 - f));
+                                double m = ((Number) mean).doubleValue();
+                                b.put(out.label, List.of(m - Z * se, m + Z * se));
+                            }
+                        }
+                        default -> row.add(v);
+                    }
+                }
+                row.add(b);
+                rows.add(row);
+            }
+            rows = query.finishRows(rows);
+            List<Map<String, Object>> bounds = new ArrayList<>(rows.size());
+            for (List<Object> row : rows) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> b = (Map<String, Object>) row.get(outputs.size());
+                bounds.add(b);
+            }
+            Map<String, Object> meta = meta(kinds(), bounds);
+            meta.put("samplePercent", BigDecimal.valueOf(f * 100).round(new MathContext(4)).doubleValue());
+            return new Estimate(ColumnarResult.of(query.labels(), rows), meta);
+        }
+
+        private Map<String, Object> kinds() {
+            Map<String, Object> kinds = new LinkedHashMap<>();
+            for (AggregateQuery.Output out : query.outputs) {
+                switch (out.agg) {
+                    case COUNT, SUM -> kinds.put(out.label, "scaled");
+                    case AVG -> kinds.put(out.label, "sample-mean");
+                    case MIN, MAX -> kinds.put(out.label, "sample-extreme");
+                    default -> { }
+                }
+            }
+            return kinds;
+        }
+
+        private Map<String, Object> meta(Map<String, Object> kinds, List<Map<String, Object>> bounds) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("applied", true);
+            m.put("method", method.name());
+            m.put("table", query.table);
+            // 区间按行级抽样公式算，整群抽样下偏窄：只是参考，不是真正的 95% 置信区间
+            m.put("interval", "heuristic");
+            m.put("nominalConfidence", 0.95);
+            m.put("columns", kinds);
+            m.put("bounds", bounds);
+            return m;
+        }
+    }
+
+    /**
+     * @param samplePercent 抽样百分比（0~100）
+     * @param seed          PG TABLESAMPLE 的 REPEATABLE 种子 / MySQL 主键范围抽样选子区间的种子
+     * @param keyRange      MySQL 用的主键 MIN / MAX，PG 不用（可为 null）
+     * @return 不适用时 null（原因见 exactReason）
+     */
+    public static Plan plan(String domain, SqlDialect dialect, String sql, double samplePercent, long seed,
+                            KeyRange keyRange) {
+        if (dialect == null || !(samplePercent > 0) || samplePercent >= 100) return null;
+        AggregateQuery q = AggregateQuery.analyze(dialect, sql, true);
+        if (q == null || q.outputs.stream().anyMatch(o -> o.distinct)) return null;
+        PlainSelect ps = q.select;
+
+        List<SelectItem<?>> items = new ArrayList<>();
+        for (int j = 0; j < q.groups.size(); j++) {
+            items.add(new SelectItem<>(q.groups.get(j), new Alias(GROUP_ALIAS + j, true)));
+        }
+        for (int o = 0; o < q.outputs.size(); o++) {
+            AggregateQuery.Output out = q.outputs.get(o);
+            Expression arg = out.arg();
+            switch (out.agg) {
+                case COUNT, MIN, MAX -> items.add(new SelectItem<>(out.fn, new Alias(AGG_ALIAS + o, true)));
+                case SUM -> {
+                    items.add(new SelectItem<>(out.fn, new Alias(AGG_ALIAS + o, true)));
+                    items.add(new SelectItem<>(ScatterGatherPlanner.function("SUM", square(arg)), new Alias(SQUARE_ALIAS + o, true)));
+                }
+                case AVG -> {
+                    items.add(new SelectItem<>(ScatterGatherPlanner.function("SUM", arg), new Alias(AGG_ALIAS + o, true)));
+                    items.add(new SelectItem<>(ScatterGatherPlanner.function("COUNT", arg), new Alias(COUNT_ALIAS + o, true)));
+                    items.add(new SelectItem<>(ScatterGatherPlanner.function("SUM", square(arg)), new Alias(SQUARE_ALIAS + o, true)));
+                }
+                default -> { }
+            }
+        }
+        ps.setSelectItems(items);
+        if (!q.groups.isEmpty()) ps.getGroupBy().setGroupByExpressions(new ExpressionList<>(q.groups));
+        ps.setOrderByElements(null);
+        // 没有 ORDER BY 时返回哪些分组本来就不确定，LIMIT 可以留在数据库里做
+        if (q.hasOrder()) ps.setLimit(null);
+
+        if (dialect == SqlDialect.POSTGRESQL) {
+            Table fact = q.fact;
+            String alias = fact.getAlias() != null ? fact.getAlias().getName() : fact.getName();
+            Table marker = new Table(SAMPLE_MARKER);
+            marker.setAlias(new Alias(alias, false));
+            ps.setFromItem(marker);
+            String text = ps.toString();
+            String from = SAMPLE_MARKER + " " + alias;
+            if (text.indexOf(from) < 0 || text.indexOf(from) != text.lastIndexOf(from)) return null;
+            String sampled = fact.getFullyQualifiedName() + " " + alias
+                    + " TABLESAMPLE SYSTEM (" + percent(samplePercent) + ") REPEATABLE (" + seed + ")";
+            return new Plan(Method.TABLESAMPLE, text.replace(from, sampled), samplePercent / 100, q);
+        }
+        if (dialect == SqlDialect.MYSQL) {
+            String pk = integerPrimaryKey(domain, q.table);
+            long[] range = pk == null || keyRange == null ? null : keyRange.of(q.table, pk);
+            if (range == null || range[1] < range[0]) return null;
+            StringBuilder cond = new StringBuilder();
+            double fraction = keyRanges(q.columnRef(pk), range[0], range[1], samplePercent / 100, seed, cond);
+            // 键空间太小，每段至少取 1 个键就覆盖了全部：直接精确执行
+            if (fraction >= 1) return null;
+            Expression sample;
+            try {
+                sample = CCJSqlParserUtil.parseCondExpression(cond.toString());
+            } catch (Exception e) {
+                return null;
+            }
+            Expression where = ps.getWhere();
+            ps.setWhere(where == null ? sample : SqlAstWalker.and(List.of(new Parenthesis(where), new Parenthesis(sample))));
+            return new Plan(Method.KEY_RANGE_SAMPLE, ps.toString(), fraction, q);
+        }
+        return null;
+    }
+
+    /**
+     * plan 返回 null 时给响应用的原因（已知查询形状下为什么按精确查询执行）
+     */
+    public static String exactReason(String domain, SqlDialect dialect, String sql) {
+        AggregateQuery q = dialect == null ? null : AggregateQuery.analyze(dialect, sql, true);
+        if (q == null) return "查询形状不支持近似计算（只支持单表聚合 + GROUP BY），已按精确查询执行";
+        if (q.outputs.stream().anyMatch(o -> o.distinct)) {
+            return "COUNT(DISTINCT) 不能从样本按比例放大，已由数据库按精确查询执行";
+        }
+        if (dialect == SqlDialect.MYSQL && integerPrimaryKey(domain, q.table) == null) {
+            return "表没有整数主键，无法按主键范围抽样，已按精确查询执行";
+        }
+        return "无法构造抽样查询，已按精确查询执行";
+    }
+
+    /** 整数类型的主键列名；没有或不是整数返回 null */
+    private static String integerPrimaryKey(String domain, String table) {
+        SchemaCatalog.TableInfo ti = SchemaCatalog.get().table(domain, table).orElse(null);
+        if (ti == null || ti.primaryKey == null) return null;
+        Class<?> type = ti.columns.get(ti.primaryKey);
+        return type == Long.class || type == Integer.class || type == Short.class || type == BigInteger.class
+                ? ti.primaryKey : null;
+    }
+
+    /**
+     * [lo, hi] 均分成最多 KEY_STRATA 段，每段里按种子取一个长度约 f·段长（至少 1）的子区间，拼成 OR 条件写进 out。
+     * 子区间起点随机，每个主键值被抽中的概率等于它所在段的 子区间长 / 段长，按键空间比例放大是无偏的（主键有空洞也一样）。
+     *
+     * @return 实际抽中的键空间比例
+     */
+    static double keyRanges(String column, long lo, long hi, double f, long seed, StringBuilder out) {
+        double span = (double) hi - lo + 1;
+        int strata = (int) Math.max(1, Math.min(KEY_STRATA, span));
+        Random random = new Random(seed);
+        double covered = 0;
+        for (int i = 0; i < strata; i++) {
+            long start = lo + (long) Math.floor(span * i / strata);
+            long end = i == strata - 1 ? hi : lo + (long) Math.floor(span * (i + 1) / strata) - 1;
+            long width = end - start + 1;
+            long take = Math.max(1, Math.min(width, Math.round(width * f)));
+            long from = start + (long) Math.floor(random.nextDouble() * (width - take + 1));
+            if (out.length() > 0) out.append(" OR ");
+            out.append(column).append(" BETWEEN ").append(from).append(" AND ").append(from + take - 1);
+            covered += take;
+        }
+        return covered / span;
+    }
+
+    /** 1.0 * (x) * (x)：先转成小数再乘，整数列平方不溢出 */
+    private static Expression square(Expression arg) {
+        try {
+            return CCJSqlParserUtil.parseExpression("1.0 * (" + arg + ") * (" + arg + ")");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无法构造平方和: " + arg, e);
+        }
+    }
+
+    private static String percent(double p) {
+        return BigDecimal.valueOf(p).stripTrailingZeros().toPlainString();
+    }
+
+    /** 按抽样比例放大，类型和小数位同原 SUM */
+    private static Number scale(Number v, double f) {
+        if (v == null) return null;
+        if (v instanceof Double || v instanceof Float) return v.doubleValue() / f;
+        BigDecimal s = AggregateQuery.toBig(v);
+        BigDecimal est = s.divide(BigDecimal.valueOf(f), MathContext.DECIMAL64);
+        if (v instanceof BigDecimal) return est.setScale(Math.max(s.scale(), 0), RoundingMode.HALF_UP);
+        return est.setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static double doubleOf(Number n) {
+        return n == null ? 0 : n.doubleValue();
+    }
+}
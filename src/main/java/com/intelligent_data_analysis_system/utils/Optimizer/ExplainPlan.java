@@ -0,0 +1,199 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * EXPLAIN 的 JSON 输出（MySQL EXPLAIN FORMAT=JSON / PostgreSQL EXPLAIN (FORMAT JSON)）里抠出准入判断要的几个数：
+ *
+ * - cost：优化器总代价（MySQL query_block.cost_info.query_cost / PG 根节点 Total Cost），两家单位不同，阈值按方言分开配
+ * - maxRows：执行过程中最大的中间结果行数估计（MySQL 各表 rows_produced_per_join / PG 各节点 Plan Rows 的最大值），
+ *   笛卡尔积、漏了连接条件时这个数会爆
+ * - tables：每张表的访问方式、每次扫描行数、是否全表扫描（MySQL access_type=ALL / PG Seq Scan）
+ * - streamable：计划里没有排序 / 聚合 / 去重 / 窗口 / 临时表这类要读完输入才能出结果的算子，
+ *   加 LIMIT 能让执行提前结束（收紧 LIMIT 的改写才有意义）
+ *
+ * PG 的 Limit 节点已经反映在代价里；它下面到第一个阻塞算子为止的节点行数按 Limit 行数封顶。
+ * MySQL 的 JSON 计划不随 LIMIT 调整估计值。
+ */
+public final class ExplainPlan {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** PG 里要读完输入才能出第一行的节点 */
+    private static final Set<String> PG_BLOCKING = Set.of(
+            "sort", "incremental sort", "aggregate", "group", "windowagg", "unique", "setop", "hash");
+
+    /** MySQL JSON 计划里表示排序 / 分组 / 去重 / 临时表的键 */
+    private static final Set<String> MYSQL_BLOCKING = Set.of(
+            "grouping_operation", "duplicates_removal", "windowing", "union_result", "materialized_from_subquery");
+
+    public static final class TableAccess {
+        public final String table;
+        public final String access;
+        public final long rows;
+        public final boolean fullScan;
+
+        TableAccess(String table, String access, long rows, boolean fullScan) {
+            this.table = table;
+            this.access = access;
+            this.rows = rows;
+            this.fullScan = fullScan;
+        }
+
+        @Override
+        public String toString() {
+            return table + "(" + access + ", ~" + rows + " rows)";
+        }
+    }
+
+    public final double cost;
+    public final long maxRows;
+    public final List<TableAccess> tables;
+    public final boolean streamable;
+
+    private ExplainPlan(double cost, long maxRows, List<TableAccess> tables, boolean streamable) {
+        this.cost = cost;
+        this.maxRows = maxRows;
+        this.tables = Collections.unmodifiableList(tables);
+        this.streamable = streamable;
+    }
+
+    /** 全表扫描的表里最大的行数估计；没有全表扫描为 0 */
+    public long maxFullScanRows() {
+        long max = 0;
+        for (TableAccess t : tables) {
+            if (t.fullScan) max = Math.max(max, t.rows);
+        }
+        return max;
+    }
+
+    public List<TableAccess> fullScans() {
+        List<TableAccess> out = new ArrayList<>();
+        for (TableAccess t : tables) {
+            if (t.fullScan) out.add(t);
+        }
+        return out;
+    }
+
+    /** 给对应方言拼 EXPLAIN 前缀 */
+    public static String explainSql(SqlDialect dialect, String sql) {
+        return dialect == SqlDialect.POSTGRESQL ? "EXPLAIN (FORMAT JSON) " + sql : "EXPLAIN FORMAT=JSON " + sql;
+    }
+
+    /** 解析失败抛 IllegalArgumentException */
+    public static ExplainPlan parse(SqlDialect dialect, String json) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("EXPLAIN 输出不是合法 JSON: " + e.getMessage(), e);
+        }
+        if (root == null) throw new IllegalArgumentException("EXPLAIN 输出为空");
+        return dialect == SqlDialect.POSTGRESQL ? parsePostgres(root) : parseMysql(root);
+    }
+
+    // ========================= MySQL =========================
+
+    private static ExplainPlan parseMysql(JsonNode root) {
+        JsonNode block = root.path("query_block");
+        double cost = number(block.path("cost_info").path("query_cost"));
+        List<TableAccess> tables = new ArrayList<>();
+        long[] maxRows = {0};
+        boolean[] blocking = {false};
+        walkMysql(root, tables, maxRows, blocking);
+        return new ExplainPlan(cost, maxRows[0], tables, !blocking[0]);
+    }
+
+    /** 任何带 table_name + access_type 的对象都是一次表访问；嵌套在 nested_loop / ordering_operation / 子查询里都要找 */
+    private static void walkMysql(JsonNode n, List<TableAccess> tables, long[] maxRows, boolean[] blocking) {
+        if (n == null) return;
+        if (n.isArray()) {
+            for (JsonNode c : n) walkMysql(c, tables, maxRows, blocking);
+            return;
+        }
+        if (!n.isObject()) return;
+        if (n.path("using_filesort").asBoolean(false) || n.path("using_temporary_table").asBoolean(false)) {
+            blocking[0] = true;
+        }
+        if (n.has("table_name") && n.has("access_type")) {
+            String access = n.path("access_type").asText("");
+            long perScan = (long) number(n.path("rows_examined_per_scan"));
+            long produced = (long) number(n.path("rows_produced_per_join"));
+            maxRows[0] = Math.max(maxRows[0], Math.max(perScan, produced));
+            boolean full = "ALL".equalsIgnoreCase(access) || "index".equalsIgnoreCase(access);
+            tables.add(new TableAccess(n.path("table_name").asText(), access, perScan, full));
+        }
+        n.fields().forEachRemaining(e -> {
+            if (MYSQL_BLOCKING.contains(e.getKey())) blocking[0] = true;
+            walkMysql(e.getValue(), tables, maxRows, blocking);
+        });
+    }
+
+    // ========================= PostgreSQL =========================
+
+    private static ExplainPlan parsePostgres(JsonNode root) {
+        JsonNode top = root.isArray() ? root.path(0) : root;
+        // 结果列是 json 类型时部分驱动返回的是字符串套 JSON
+        if (top.isTextual()) return parsePostgres(readTree(top.asText()));
+        JsonNode plan = top.path("Plan");
+        double cost = number(plan.path("Total Cost"));
+        List<TableAccess> tables = new ArrayList<>();
+        long[] maxRows = {0};
+        boolean[] blocking = {false};
+        walkPostgres(plan, Long.MAX_VALUE, tables, maxRows, blocking);
+        return new ExplainPlan(cost, maxRows[0], tables, !blocking[0]);
+    }
+
+    /** cap：上方 Limit 的行数（中间没有阻塞算子时），节点估计行数按它封顶 */
+    private static void walkPostgres(JsonNode n, long cap, List<TableAccess> tables, long[] maxRows, boolean[] blocking) {
+        if (n == null || !n.isObject()) return;
+        String type = n.path("Node Type").asText("");
+        String lower = type.toLowerCase(Locale.ROOT);
+        long rows = (long) number(n.path("Plan Rows"));
+        maxRows[0] = Math.max(maxRows[0], Math.min(rows, cap));
+        if (n.has("Relation Name")) {
+            boolean full = lower.contains("seq scan");
+            tables.add(new TableAccess(n.path("Relation Name").asText(), type, rows, full));
+        }
+
+        long childCap = cap;
+        if ("limit".equals(lower)) childCap = Math.min(cap, Math.max(1, rows));
+        if (PG_BLOCKING.contains(lower)) {
+            blocking[0] = true;
+            childCap = Long.MAX_VALUE;
+        }
+        for (JsonNode c : n.path("Plans")) walkPostgres(c, childCap, tables, maxRows, blocking);
+    }
+
+    private static JsonNode readTree(String s) {
+        try {
+            return MAPPER.readTree(s);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("EXPLAIN 输出不是合法 JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /** MySQL 的数字有时是字符串（"123.45"） */
+    private static double number(JsonNode n) {
+        if (n == null || n.isMissingNode() || n.isNull()) return 0;
+        if (n.isNumber()) return n.asDouble();
+        try {
+            return Double.parseDouble(n.asText().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExplainPlan{cost=" + cost + ", maxRows=" + maxRows + ", streamable=" + streamable + ", tables=" + tables + "}";
+    }
+}
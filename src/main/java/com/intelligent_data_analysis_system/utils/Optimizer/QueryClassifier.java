@@ -0,0 +1,97 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClass;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 按 AST 特征给交互查询分类：LOOKUP（按条件取明细行）或 AGGREGATE（需要大排序 / 哈希的重查询）。
+ *
+ * 任意一层（含子查询、CTE、UNION 分支）出现下列特征即为 AGGREGATE：
+ * GROUP BY、聚合函数、窗口函数、DISTINCT、集合运算（UNION / INTERSECT / EXCEPT）、连接的表数达到 heavyJoins。
+ * 解析失败按 AGGREGATE 处理（给更宽的会话配置，不会因为分错类被服务端语句超时提前杀掉）。
+ */
+public final class QueryClassifier {
+
+    /** 连接这么多张表（含 FROM 里的第一张）就算重查询 */
+    static final int HEAVY_JOINS = 3;
+
+    private static final Set<String> AGGREGATES = Set.of(
+            "COUNT", "SUM", "AVG", "MIN", "MAX", "STDDEV", "STDDEV_POP", "STDDEV_SAMP", "VARIANCE", "VAR_POP",
+            "VAR_SAMP", "GROUP_CONCAT", "STRING_AGG", "ARRAY_AGG", "JSON_AGG", "JSON_ARRAYAGG", "BIT_AND", "BIT_OR",
+            "BOOL_AND", "BOOL_OR", "PERCENTILE_CONT", "PERCENTILE_DISC", "MODE");
+
+    private QueryClassifier() {}
+
+    public static QueryClass classify(String sql) {
+        if (sql == null || sql.isBlank()) return QueryClass.LOOKUP;
+        try {
+            String trimmed = sql.trim();
+            if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+            Statement st = CCJSqlParserUtil.parse(trimmed);
+            if (!(st instanceof Select select)) return QueryClass.AGGREGATE;
+            return isHeavy(select) ? QueryClass.AGGREGATE : QueryClass.LOOKUP;
+        } catch (Exception e) {
+            return QueryClass.AGGREGATE;
+        }
+    }
+
+    private static boolean isHeavy(Select select) {
+        boolean[] heavy = {hasSetOperation(select)};
+        SqlAstWalker.forEachPlainSelect(select, ps -> {
+            if (!heavy[0] && isHeavy(ps)) heavy[0] = true;
+        });
+        return heavy[0];
+    }
+
+    private static boolean hasSetOperation(Select select) {
+        if (select instanceof SetOperationList) return true;
+        if (select instanceof ParenthesedSelect p) return hasSetOperation(p.getSelect());
+        if (select.getWithItemsList() != null) {
+            for (WithItem wi : select.getWithItemsList()) {
+                if (hasSetOperation(wi.getSelect())) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHeavy(PlainSelect ps) {
+        if (ps.getGroupBy() != null || ps.getDistinct() != null) return true;
+        if (ps.getJoins() != null && ps.getJoins().size() + 1 >= HEAVY_JOINS) return true;
+        if (ps.getSelectItems() != null) {
+            for (SelectItem<?> si : ps.getSelectItems()) {
+                if (hasAggregate(si.getExpression())) return true;
+            }
+        }
+        if (ps.getOrderByElements() != null) {
+            for (OrderByElement o : ps.getOrderByElements()) {
+                if (hasAggregate(o.getExpression())) return true;
+            }
+        }
+        return hasAggregate(ps.getHaving());
+    }
+
+    /** 只看表达式本身（子查询由 forEachPlainSelect 单独判断）；transform 不改节点，只用来遍历 */
+    private static boolean hasAggregate(Expression e) {
+        if (e == null) return false;
+        boolean[] found = {false};
+        SqlAstWalker.transform(e, x -> {
+            if (x instanceof AnalyticExpression) {
+                found[0] = true;
+            } else if (x instanceof Function f && f.getName() != null
+                    && AGGREGATES.contains(f.getName().toUpperCase(Locale.ROOT))) {
+                found[0] = true;
+            }
+            return x;
+        });
+        return found[0];
+    }
+}
@@ -0,0 +1,293 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 大事实表上的可分解聚合按日期范围拆成 N 个互不相交的分片，各自执行后在内存里合并（scatter-gather）。
+ *
+ * 可拆的条件（判断不了就返回 null，走原来的单条语句）：
+ * - AggregateQuery 能识别的形状，FROM 的第一张表是配置了分区列的大表（transactions.trade_date 等），JOIN 维表可以
+ * - 聚合不带 DISTINCT（AVG 拆成 SUM + COUNT）
+ *
+ * 分片：原 WHERE 不动，再 AND 上分区列的范围：第一片 col &lt; b1 OR col IS NULL，中间 b_i &lt;= col &lt; b_{i+1}，
+ * 最后一片 col &gt;= b_{n-1}。分片点只影响各片大小，不影响结果正确性（各片并起来正好是全集）。
+ * 分片点按 WHERE 里分区列的上下界均分；没写界的由调用方补（表的 MIN / MAX）。
+ *
+ * 合并：按分组键归并，COUNT / SUM 相加，MIN / MAX 取极值，AVG = SUM 之和 / COUNT 之和；之后按 ORDER BY 排序、截 LIMIT。
+ */
+public final class ScatterGatherPlanner {
+
+    private static final String GROUP_ALIAS = "__sgg";
+    private static final String AGG_ALIAS = "__sga";
+    private static final String COUNT_ALIAS = "__sgc";
+    private static final String LO = "sg_lo";
+    private static final String HI = "sg_hi";
+
+    private ScatterGatherPlanner() {}
+
+    /** 一个分片：SQL + 范围参数（sg_lo / sg_hi） */
+    public static final class Partition {
+        public final String sql;
+        public final Map<String, Object> params;
+        public final String range;
+
+        Partition(String sql, Map<String, Object> params, String range) {
+            this.sql = sql;
+            this.params = params;
+            this.range = range;
+        }
+    }
+
+    public static final class Plan {
+        public final String table;
+        public final String column;
+        /** WHERE 里分区列的上下界，没有为 null */
+        public final LocalDate lower;
+        public final LocalDate upper;
+
+        private final AggregateQuery query;
+        private final Expression baseWhere;
+
+        private Plan(AggregateQuery query, String column, LocalDate lower, LocalDate upper) {
+            this.table = query.table;
+            this.column = column;
+            this.lower = lower;
+            this.upper = upper;
+            this.query = query;
+            this.baseWhere = query.select.getWhere();
+        }
+
+        /**
+         * 按 [lo, hi] 均分成最多 n 片（每片至少一天）；n &lt;= 1 或范围不足两天时返回一片（不加范围条件）
+         */
+        public synchronized List<Partition> split(LocalDate lo, LocalDate hi, int n) {
+            long days = lo == null || hi == null ? 0 : ChronoUnit.DAYS.between(lo, hi) + 1;
+            int parts = (int) Math.max(1, Math.min(n, days));
+            List<LocalDate> cuts = new ArrayList<>();
+            for (int i = 1; i < parts; i++) cuts.add(lo.plusDays(days * i / parts));
+
+            PlainSelect partial = query.select;
+            String columnRef = query.columnRef(column);
+            List<Partition> out = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                LocalDate from = i == 0 ? null : cuts.get(i - 1);
+                LocalDate to = i == parts - 1 ? null : cuts.get(i);
+                Map<String, Object> params = new LinkedHashMap<>();
+                List<String> conds = new ArrayList<>();
+                if (from != null) {
+                    conds.add(columnRef + " >= :" + LO);
+                    params.put(LO, java.sql.Date.valueOf(from));
+                }
+                if (to != null) {
+                    String lt = columnRef + " < :" + HI;
+                    conds.add(from == null ? "(" + lt + " OR " + columnRef + " IS NULL)" : lt);
+                    params.put(HI, java.sql.Date.valueOf(to));
+                }
+                Expression where = baseWhere;
+                if (!conds.isEmpty()) {
+                    Expression range;
+                    try {
+                        range = CCJSqlParserUtil.parseCondExpression(String.join(" AND ", conds));
+                    } catch (Exception e) {
+                        throw new IllegalStateException("分片条件构造失败: " + e.getMessage(), e);
+                    }
+                    where = baseWhere == null ? range : SqlAstWalker.and(List.of(new Parenthesis(baseWhere), range));
+                }
+                partial.setWhere(where);
+                out.add(new Partition(partial.toString(), params,
+                        (from == null ? "(-∞" : "[" + from) + ", " + (to == null ? "+∞)" : to + ")")));
+            }
+            partial.setWhere(baseWhere);
+            return out;
+        }
+
+        /** 合并各分片的部分聚合；列名和单条语句执行时一致 */
+        public ColumnarResult merge(List<ColumnarResult> partials) {
+            List<AggregateQuery.Output> outputs = query.outputs;
+            int g = query.groups.size();
+            Map<List<Object>, Object[]> acc = new LinkedHashMap<>();
+            Map<List<Object>, long[]> counts = new HashMap<>();
+
+            for (ColumnarResult p : partials) {
+                int[] gi = new int[g];
+                for (int j = 0; j < g; j++) gi[j] = p.columnIndex(GROUP_ALIAS + j);
+                int[] ai = new int[outputs.size()];
+                int[] ci = new int[outputs.size()];
+                for (int o = 0; o < outputs.size(); o++) {
+                    ai[o] = p.columnIndex(AGG_ALIAS + o);
+                    ci[o] = p.columnIndex(COUNT_ALIAS + o);
+                }
+
+                for (int r = 0; r < p.rowCount(); r++) {
+                    List<Object> key = new ArrayList<>(g);
+                    for (int j = 0; j < g; j++) key.add(p.get(r, gi[j]));
+                    Object[] a = acc.computeIfAbsent(key, k -> new Object[outputs.size()]);
+                    long[] n = counts.computeIfAbsent(key, k -> new long[outputs.size()]);
+                    for (int o = 0; o < outputs.size(); o++) {
+                        AggregateQuery.Output out = outputs.get(o);
+                        if (out.agg == AggregateQuery.Agg.GROUP) continue;
+                        Object v = p.get(r, ai[o]);
+                        switch (out.agg) {
+                            case COUNT, SUM -> {
+                                if (v != null) a[o] = AggregateQuery.add((Number) a[o], (Number) v);
+                            }
+                            case MIN -> {
+                                if (v != null && (a[o] == null || AggregateQuery.compare(v, a[o]) < 0)) a[o] = v;
+                            }
+                            case MAX -> {
+                                if (v != null && (a[o] == null || AggregateQuery.compare(v, a[o]) > 0)) a[o] = v;
+                            }
+                            case AVG -> {
+                                if (v != null) a[o] = AggregateQuery.add((Number) a[o], (Number) v);
+                                Object c = p.get(r, ci[o]);
+                                if (c != null) n[o] += ((Number) c).longValue();
+                            }
+                            default -> { }
+                        }
+                    }
+                }
+            }
+            // 没有 GROUP BY 的聚合永远有一行
+            if (acc.isEmpty() && g == 0) {
+                acc.put(List.of(), new Object[outputs.size()]);
+                counts.put(List.of(), new long[outputs.size()]);
+            }
+
+            List<List<Object>> rows = new ArrayList<>(acc.size());
+            for (Map.Entry<List<Object>, Object[]> e : acc.entrySet()) {
+                Object[] a = e.getValue();
+                long[] n = counts.get(e.getKey());
+                List<Object> row = new ArrayList<>(outputs.size());
+                for (int o = 0; o < outputs.size(); o++) {
+                    AggregateQuery.Output out = outputs.get(o);
+                    row.add(switch (out.agg) {
+                        case GROUP -> e.getKey().get(out.group);
+                        case COUNT -> a[o] == null ? 0L : a[o];
+                        case AVG -> query.average((Number) a[o], n[o]);
+                        default -> a[o];
+                    });
+                }
+                rows.add(row);
+            }
+            return query.finish(rows);
+        }
+    }
+
+    /**
+     * @param partitionColumns 表名（小写）-&gt; 日期分区列
+     * @return 不能拆时 null
+     */
+    public static Plan plan(SqlDialect dialect, String sql, Map<String, ?> params, Map<String, String> partitionColumns) {
+        if (sql == null || partitionColumns == null || partitionColumns.isEmpty()) return null;
+        AggregateQuery q = AggregateQuery.analyze(dialect, sql, false);
+        if (q == null) return null;
+        String column = partitionColumns.get(q.table);
+        if (column == null) return null;
+
+        // 分区列上下界
+        LocalDate[] bounds = new LocalDate[2];
+        for (Expression c : SqlAstWalker.flattenAnd(q.select.getWhere())) bound(q, c, column, params, bounds);
+
+        // 部分聚合语句：分组键 + 部分聚合，去掉 ORDER BY / LIMIT，GROUP BY 用解析后的表达式（投影变了，序号 / 别名不能再用）
+        PlainSelect ps = q.select;
+        List<SelectItem<?>> items = new ArrayList<>();
+        for (int j = 0; j < q.groups.size(); j++) {
+            items.add(new SelectItem<>(q.groups.get(j), new Alias(GROUP_ALIAS + j, true)));
+        }
+        for (int o = 0; o < q.outputs.size(); o++) {
+            AggregateQuery.Output out = q.outputs.get(o);
+            if (out.agg == AggregateQuery.Agg.GROUP) continue;
+            if (out.agg == AggregateQuery.Agg.AVG) {
+                items.add(new SelectItem<>(function("SUM", out.arg()), new Alias(AGG_ALIAS + o, true)));
+                items.add(new SelectItem<>(function("COUNT", out.arg()), new Alias(COUNT_ALIAS + o, true)));
+            } else {
+                items.add(new SelectItem<>(out.fn, new Alias(AGG_ALIAS + o, true)));
+            }
+        }
+        ps.setSelectItems(items);
+        ps.setOrderByElements(null);
+        ps.setLimit(null);
+        if (!q.groups.isEmpty()) {
+            ps.getGroupBy().setGroupByExpressions(new ExpressionList<>(q.groups));
+        }
+        return new Plan(q, column, bounds[0], bounds[1]);
+    }
+
+    static Function function(String name, Expression arg) {
+        Function f = new Function();
+        f.setName(name);
+        f.setParameters(new ExpressionList<>(arg));
+        return f;
+    }
+
+    /** WHERE 顶层条件里分区列和常量的比较 -&gt; 上下界 */
+    private static void bound(AggregateQuery q, Expression c, String column, Map<String, ?> params, LocalDate[] bounds) {
+        if (c instanceof Between b && !b.isNot() && q.isFactColumn(b.getLeftExpression(), column)) {
+            lower(bounds, date(b.getBetweenExpressionStart(), params));
+            upper(bounds, date(b.getBetweenExpressionEnd(), params));
+            return;
+        }
+        if (!(c instanceof ComparisonOperator op)) return;
+        boolean left = q.isFactColumn(op.getLeftExpression(), column);
+        boolean right = q.isFactColumn(op.getRightExpression(), column);
+        if (left == right) return;
+        LocalDate v = date(left ? op.getRightExpression() : op.getLeftExpression(), params);
+        if (v == null) return;
+        boolean greater = op instanceof GreaterThan || op instanceof GreaterThanEquals;
+        boolean less = op instanceof MinorThan || op instanceof MinorThanEquals;
+        if (op instanceof EqualsTo) {
+            lower(bounds, v);
+            upper(bounds, v);
+        } else if (greater == left && (greater || less)) {
+            lower(bounds, v);
+        } else if (greater || less) {
+            upper(bounds, v);
+        }
+    }
+
+    private static void lower(LocalDate[] bounds, LocalDate v) {
+        if (v != null && (bounds[0] == null || v.isAfter(bounds[0]))) bounds[0] = v;
+    }
+
+    private static void upper(LocalDate[] bounds, LocalDate v) {
+        if (v != null && (bounds[1] == null || v.isBefore(bounds[1]))) bounds[1] = v;
+    }
+
+    private static LocalDate date(Expression e, Map<String, ?> params) {
+        Object v;
+        if (e instanceof StringValue s) v = s.getValue();
+        else if (e instanceof DateValue d) v = d.getValue();
+        else if (e instanceof TimestampValue t) v = t.getValue();
+        else if (e instanceof JdbcNamedParameter p && params != null) v = params.get(p.getName());
+        else return null;
+        return toLocalDate(v);
+    }
+
+    /** 分区列的取值 / 绑定值转日期；转不了返回 null */
+    public static LocalDate toLocalDate(Object v) {
+        if (v instanceof LocalDate d) return d;
+        if (v instanceof java.sql.Date d) return d.toLocalDate();
+        if (v instanceof Timestamp t) return t.toLocalDateTime().toLocalDate();
+        if (v instanceof LocalDateTime t) return t.toLocalDate();
+        if (v instanceof String s && s.trim().length() >= 10) {
+            try {
+                return LocalDate.parse(s.trim().substring(0, 10));
+            } catch (Exception ignore) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,615 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于规则的逻辑优化（patch 之后、执行之前）。只做语义等价的改写，判断不了就不动：
+ *
+ * - distinct-over-pk      单表查询且投影里有主键：去掉 DISTINCT
+ * - count-distinct-pk     单表 COUNT(DISTINCT 主键) -> COUNT(主键)
+ * - not-in-to-not-exists  WHERE 顶层的 x NOT IN (SELECT c ...)，x 是外层主键 -> NOT EXISTS（c 可空时带上 c IS NULL，保持 NULL 语义）
+ * - unused-left-join      LEFT JOIN 按主键等值连接、且别名在别处没被引用：整段 JOIN 删掉
+ * - subquery-order-by     IN/EXISTS/标量子查询、以及外层自带 ORDER BY / GROUP BY 的派生表里，没有 LIMIT 的 ORDER BY 删掉
+ * - inline-cte            只被引用一次的非递归 CTE 内联成派生表
+ * - limit-into-union      UNION ALL 外层的 LIMIT 下推到每个分支
+ * - limit-into-derived / limit-into-cte  外层只是“原样透传”单个派生表/CTE 时，LIMIT 下推进去
+ *
+ * 主键信息来自 SchemaCatalog（实体注解），表不在目录里的规则一律跳过。
+ */
+public final class SqlLogicalOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlLogicalOptimizer.class);
+
+    private SqlLogicalOptimizer() {}
+
+    /** 优化结果：fired 为触发的规则名（同一规则触发多次会出现多次） */
+    public static class Result {
+        public final String sql;
+        public final List<String> fired;
+
+        Result(String sql, List<String> fired) {
+            this.sql = sql;
+            this.fired = fired;
+        }
+    }
+
+    public static String optimize(String domain, String sql) {
+        return optimizeWithReport(domain, sql).sql;
+    }
+
+    public static Result optimizeWithReport(String domain, String sql) {
+        if (sql == null || sql.isBlank()) return new Result(sql, List.of());
+
+        try {
+            String trimmed = sql.trim();
+            if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+
+            Statement st = CCJSqlParserUtil.parse(trimmed);
+            if (!(st instanceof Select select)) return new Result(sql, List.of());
+
+            List<String> fired = new ArrayList<>();
+
+            // LIMIT 先下推（CTE 还在时才能推进 CTE），再内联
+            pushLimit(select, fired);
+            inlineSingleUseCtes(select, fired);
+
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                removeDistinctOverPk(domain, ps, fired);
+                countDistinctPk(domain, ps, fired);
+                notInToNotExists(domain, ps, fired);
+                removeUnusedLeftJoins(domain, ps, fired);
+                dropSubqueryOrderBy(ps, fired);
+            });
+
+            if (fired.isEmpty()) return new Result(sql, List.of());
+
+            String out = select.toString();
+            logger.info("[optimizer] rules fired: {}", fired);
+            logger.debug("[optimizer] before: {}\n after: {}", sql, out);
+            return new Result(out, fired);
+        } catch (Exception e) {
+            // 解析/改写失败：原样返回，不影响执行
+            return new Result(sql, List.of());
+        }
+    }
+
+    // =========================
+    // distinct-over-pk
+    // =========================
+    private static void removeDistinctOverPk(String domain, PlainSelect ps, List<String> fired) {
+        Distinct d = ps.getDistinct();
+        if (d == null) return;
+        if (d.getOnSelectItems() != null && !d.getOnSelectItems().isEmpty()) return; // PG DISTINCT ON
+        if (ps.getGroupBy() != null) return;
+
+        Table t = singleTable(ps);
+        if (t == null) return;
+
+        for (SelectItem<?> si : ps.getSelectItems()) {
+            if (si.getExpression() instanceof Column c && isPk(domain, t, c)) {
+                ps.setDistinct(null);
+                fired.add("distinct-over-pk");
+                return;
+            }
+        }
+    }
+
+    // =========================
+    // count-distinct-pk
+    // =========================
+    private static void countDistinctPk(String domain, PlainSelect ps, List<String> fired) {
+        Table t = singleTable(ps);
+        if (t == null) return;
+
+        UnaryOperator<Expression> fn = e -> {
+            if (e instanceof Function f
+                    && f.isDistinct()
+                    && "COUNT".equalsIgnoreCase(f.getName())
+                    && f.getParameters() != null
+                    && f.getParameters().size() == 1
+                    && f.getParameters().get(0) instanceof Column c
+                    && isPk(domain, t, c)) {
+                f.setDistinct(false);
+                fired.add("count-distinct-pk");
+            }
+            return e;
+        };
+
+        for (SelectItem<?> si : ps.getSelectItems()) SqlAstWalker.transform(si.getExpression(), fn);
+        if (ps.getHaving() != null) ps.setHaving(SqlAstWalker.transform(ps.getHaving(), fn));
+    }
+
+    // =========================
+    // not-in-to-not-exists
+    // =========================
+    private static void notInToNotExists(String domain, PlainSelect ps, List<String> fired) {
+        if (ps.getWhere() == null) return;
+
+        // 只处理 WHERE 顶层 AND 链：在 OR / NOT 里 NULL 与 FALSE 的区别会影响结果
+        List<Expression> conjuncts = SqlAstWalker.flattenAnd(ps.getWhere());
+        boolean changed = false;
+
+        for (int i = 0; i < conjuncts.size(); i++) {
+            if (!(conjuncts.get(i) instanceof InExpression in) || !in.isNot()) continue;
+            if (!(in.getLeftExpression() instanceof Column x)) continue;
+            if (!(in.getRightExpression() instanceof ParenthesedSelect sub)) continue;
+            if (!(sub.getSelect() instanceof PlainSelect inner)) continue;
+
+            if (inner.getSelectItems() == null || inner.getSelectItems().size() != 1) continue;
+            if (!(inner.getSelectItems().get(0).getExpression() instanceof Column c)) continue;
+            if (inner.getGroupBy() != null || inner.getHaving() != null) continue;
+            if (inner.getLimit() != null || inner.getOffset() != null || inner.getFetch() != null) continue;
+
+            // 外层值必须非空（主键），否则“子查询为空时 NULL NOT IN () 为真”的语义保不住；
+            // 外连接可空一侧的主键在没匹配上的行里也是 NULL，只认 FROM 主表和内连接的表
+            Table outer = resolvePreservedTable(ps, x);
+            if (outer == null || !isPk(domain, outer, x)) continue;
+
+            // 相关条件里用外层限定名引用，避免被内层同名表/别名“捕获”
+            String q = qualifierOf(outer);
+            if (qualifiers(inner).contains(q)) continue;
+
+            String rawQualifier = outer.getAlias() != null && outer.getAlias().getName() != null
+                    ? outer.getAlias().getName() : outer.getName();
+            Expression corr = new EqualsTo(copy(c), new Column(new Table(rawQualifier), x.getColumnName()));
+            Table innerTable = singleTable(inner);
+            boolean innerNonNull = innerTable != null && isPk(domain, innerTable, c);
+            if (!innerNonNull) {
+                // 子查询里只要有 NULL，NOT IN 就恒不为真；把它等价成“存在 NULL 也算命中”
+                IsNullExpression isNull = new IsNullExpression();
+                isNull.setLeftExpression(copy(c));
+                corr = new Parenthesis(new OrExpression(corr, isNull));
+            }
+
+            List<SelectItem<?>> one = new ArrayList<>();
+            one.add(new SelectItem<>(new LongValue(1)));
+            inner.setSelectItems(one);
+            inner.setDistinct(null);
+            inner.setOrderByElements(null);
+            inner.setWhere(andOf(inner.getWhere(), corr));
+
+            ExistsExpression exists = new ExistsExpression();
+            exists.setNot(true);
+            exists.setRightExpression(sub);
+            conjuncts.set(i, exists);
+            changed = true;
+            fired.add("not-in-to-not-exists");
+        }
+
+        if (changed) ps.setWhere(SqlAstWalker.and(conjuncts));
+    }
+
+    // =========================
+    // unused-left-join
+    // =========================
+    private static void removeUnusedLeftJoins(String domain, PlainSelect ps, List<String> fired) {
+        List<Join> joins = ps.getJoins();
+        if (joins == null || joins.isEmpty()) return;
+        for (SelectItem<?> si : ps.getSelectItems()) {
+            if (si.getExpression() instanceof AllColumns) return; // SELECT * 会用到所有表
+        }
+
+        for (int i = joins.size() - 1; i >= 0; i--) {
+            Join j = joins.get(i);
+            if (!j.isLeft() || j.isNatural() || j.isRight() || j.isFull()) continue;
+            if (j.getUsingColumns() != null && !j.getUsingColumns().isEmpty()) continue;
+            if (!(j.getRightItem() instanceof Table t)) continue;
+            if (j.getOnExpressions() == null || j.getOnExpressions().isEmpty()) continue;
+
+            Optional<SchemaCatalog.TableInfo> ti = SchemaCatalog.get().table(domain, t.getName());
+            if (ti.isEmpty() || ti.get().primaryKey == null) continue;
+
+            String q = qualifierOf(t);
+            if (!joinsOnPk(j, t, ti.get().primaryKey, q)) continue;
+
+            // 去掉这段 JOIN 后，语句里还提到这个表就保留
+            joins.remove(i);
+            if (mentions(ps.toString(), q, ti.get())) {
+                joins.add(i, j);
+                continue;
+            }
+            fired.add("unused-left-join");
+        }
+        if (joins.isEmpty()) ps.setJoins(null);
+    }
+
+    /** ON 里有 q.pk = <不引用 q 的表达式>：右表每行最多匹配一次，删掉 JOIN 不改变行数 */
+    private static boolean joinsOnPk(Join j, Table t, String pk, String q) {
+        for (Expression on : j.getOnExpressions()) {
+            for (Expression c : SqlAstWalker.flattenAnd(on)) {
+                if (!(c instanceof EqualsTo eq)) continue;
+                Expression l = eq.getLeftExpression(), r = eq.getRightExpression();
+                if (isQualifiedPk(l, t, pk) && !qualifiedRef(q).matcher(r.toString()).find()) return true;
+                if (isQualifiedPk(r, t, pk) && !qualifiedRef(q).matcher(l.toString()).find()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isQualifiedPk(Expression e, Table t, String pk) {
+        return e instanceof Column c
+                && c.getTable() != null && c.getTable().getName() != null
+                && matchesQualifier(c, t)
+                && pk.equals(unquote(c.getColumnName()));
+    }
+
+    private static boolean mentions(String text, String q, SchemaCatalog.TableInfo ti) {
+        if (qualifiedRef(q).matcher(text).find()) return true;
+        if (!q.equals(ti.name) && qualifiedRef(ti.name).matcher(text).find()) return true;
+        // 不带限定名的列：只要名字出现过就当作引用（保守）
+        for (String col : ti.columns.keySet()) {
+            Matcher m = Pattern.compile("(?i)(?<![\\w$])[`\"]?" + Pattern.quote(col) + "[`\"]?(?![\\w$])").matcher(text);
+            while (m.find()) {
+                int p = m.start() - 1;
+                if (p < 0 || text.charAt(p) != '.') return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern qualifiedRef(String q) {
+        return Pattern.compile("(?i)(?<![\\w$])[`\"]?" + Pattern.quote(q) + "[`\"]?\\s*\\.");
+    }
+
+    // =========================
+    // subquery-order-by
+    // =========================
+    private static void dropSubqueryOrderBy(PlainSelect ps, List<String> fired) {
+        // 1) 表达式里的子查询（IN / EXISTS / 标量）：顺序对结果没有意义
+        UnaryOperator<Expression> fn = e -> {
+            if (e instanceof Select s) stripOrderBy(s, fired);
+            return e;
+        };
+        if (ps.getWhere() != null) SqlAstWalker.transform(ps.getWhere(), fn);
+        if (ps.getHaving() != null) SqlAstWalker.transform(ps.getHaving(), fn);
+        for (SelectItem<?> si : ps.getSelectItems()) SqlAstWalker.transform(si.getExpression(), fn);
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.getOnExpressions() == null) continue;
+                for (Expression on : j.getOnExpressions()) SqlAstWalker.transform(on, fn);
+            }
+        }
+
+        // 2) 派生表：只有外层自己重新排序/分组时，内层顺序才肯定不可见
+        boolean outerReorders = (ps.getOrderByElements() != null && !ps.getOrderByElements().isEmpty())
+                || ps.getGroupBy() != null;
+        if (!outerReorders) return;
+        if (ps.getFromItem() instanceof Select s) stripOrderBy(s, fired);
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.getRightItem() instanceof Select s) stripOrderBy(s, fired);
+            }
+        }
+    }
+
+    private static void stripOrderBy(Select s, List<String> fired) {
+        if (s instanceof ParenthesedSelect p) s = p.getSelect();
+
+        if (s instanceof PlainSelect p) {
+            if (p.getOrderByElements() == null || p.getOrderByElements().isEmpty()) return;
+            if (p.getLimit() != null || p.getOffset() != null || p.getFetch() != null) return;
+            p.setOrderByElements(null);
+            fired.add("subquery-order-by");
+        } else if (s instanceof SetOperationList sol) {
+            if (sol.getOrderByElements() == null || sol.getOrderByElements().isEmpty()) return;
+            if (sol.getLimit() != null || sol.getOffset() != null || sol.getFetch() != null) return;
+            sol.setOrderByElements(null);
+            fired.add("subquery-order-by");
+        }
+    }
+
+    // =========================
+    // inline-cte
+    // =========================
+    private static final Pattern WITH_ITEM_HEAD = Pattern.compile("^\\s*([^\\s(]+)\\s*(\\()?");
+
+    private static void inlineSingleUseCtes(Select select, List<String> fired) {
+        List<WithItem> withItems = select.getWithItemsList();
+        if (withItems == null || withItems.isEmpty()) return;
+        if (select.toString().trim().toUpperCase(Locale.ROOT).startsWith("WITH RECURSIVE")) return;
+
+        for (WithItem wi : new ArrayList<>(withItems)) {
+            String name = cteName(wi);
+            if (name == null) continue;
+
+            List<Runnable> replacers = new ArrayList<>();
+            int[] refs = {0};
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                if (ps.getFromItem() instanceof Table t && isCteRef(t, name)) {
+                    refs[0]++;
+                    replacers.add(() -> ps.setFromItem(asDerived(wi, t, name)));
+                }
+                if (ps.getJoins() != null) {
+                    for (Join j : ps.getJoins()) {
+                        if (j.getRightItem() instanceof Table t && isCteRef(t, name)) {
+                            refs[0]++;
+                            replacers.add(() -> j.setRightItem(asDerived(wi, t, name)));
+                        }
+                    }
+                }
+            });
+            // 其他形式的引用（ParenthesedFromItem 里等）没统计到：文本出现次数对不上就不动
+            if (refs[0] != 1 || countNameRefs(select.toString(), name) != 2) continue;
+
+            replacers.get(0).run();
+            withItems.remove(wi);
+            fired.add("inline-cte");
+        }
+        if (withItems.isEmpty()) select.setWithItemsList(null);
+    }
+
+    /** WithItem 的名字；带列清单（WITH x(a, b) AS ...）的不处理 */
+    private static String cteName(WithItem wi) {
+        Matcher m = WITH_ITEM_HEAD.matcher(wi.toString());
+        if (!m.find() || m.group(2) != null) return null;
+        return unquote(m.group(1));
+    }
+
+    private static boolean isCteRef(Table t, String name) {
+        return (t.getSchemaName() == null || t.getSchemaName().isBlank()) && name.equals(unquote(t.getName()));
+    }
+
+    /** 整条语句里 name 作为表名出现的次数（定义处 1 次 + 引用处） */
+    private static int countNameRefs(String text, String name) {
+        Matcher m = Pattern.compile("(?i)(?<![\\w$.])[`\"]?" + Pattern.quote(name) + "[`\"]?(?![\\w$])(?!\\s*\\.)").matcher(text);
+        int n = 0;
+        while (m.find()) n++;
+        return n;
+    }
+
+    private static FromItem asDerived(WithItem wi, Table ref, String name) {
+        Select body = wi.getSelect();
+        ParenthesedSelect derived;
+        if (body instanceof ParenthesedSelect p) {
+            derived = p;
+        } else {
+            derived = new ParenthesedSelect();
+            derived.setSelect(body);
+        }
+        derived.setAlias(ref.getAlias() != null ? ref.getAlias() : new Alias(name, false));
+        return derived;
+    }
+
+    // =========================
+    // LIMIT 下推
+    // =========================
+    private static void pushLimit(Select select, List<String> fired) {
+        if (select instanceof SetOperationList sol) {
+            Long n = limitOf(sol.getLimit(), sol.getOffset());
+            if (n != null && (sol.getOrderByElements() == null || sol.getOrderByElements().isEmpty())) {
+                pushIntoUnionAll(sol, n, fired);
+            }
+            return;
+        }
+        if (!(select instanceof PlainSelect ps)) return;
+
+        Long n = limitOf(ps.getLimit(), ps.getOffset());
+        if (n == null || !isPassThrough(ps)) return;
+
+        if (ps.getFromItem() instanceof ParenthesedSelect sub) {
+            if (applyLimit(sub.getSelect(), n, fired)) fired.add("limit-into-derived");
+            return;
+        }
+
+        if (ps.getFromItem() instanceof Table t && select.getWithItemsList() != null) {
+            for (WithItem wi : select.getWithItemsList()) {
+                String name = cteName(wi);
+                if (name == null || !isCteRef(t, name)) continue;
+                // CTE 在别处还被引用时不能替它们截断
+                if (countNameRefs(select.toString(), name) != 2) return;
+                if (applyLimit(wi.getSelect(), n, fired)) fired.add("limit-into-cte");
+                return;
+            }
+        }
+    }
+
+    /** 外层只是把单个来源原样透传：没有过滤/连接/分组/去重/排序/聚合 */
+    private static boolean isPassThrough(PlainSelect ps) {
+        if (ps.getJoins() != null && !ps.getJoins().isEmpty()) return false;
+        if (ps.getWhere() != null || ps.getGroupBy() != null || ps.getHaving() != null) return false;
+        if (ps.getDistinct() != null) return false;
+        if (ps.getOrderByElements() != null && !ps.getOrderByElements().isEmpty()) return false;
+
+        boolean[] agg = {false};
+        for (SelectItem<?> si : ps.getSelectItems()) {
+            SqlAstWalker.transform(si.getExpression(), e -> {
+                if (e instanceof Function || e instanceof AnalyticExpression
+                        || e instanceof Select) {
+                    agg[0] = true;
+                }
+                return e;
+            });
+        }
+        return !agg[0];
+    }
+
+    /** 给 body 加/收紧 LIMIT n，返回是否有改动 */
+    private static boolean applyLimit(Select body, long n, List<String> fired) {
+        if (body instanceof ParenthesedSelect p) return applyLimit(p.getSelect(), n, fired);
+
+        if (body instanceof PlainSelect p) {
+            Limit capped = capLimit(p.getLimit(), n);
+            if (capped == null) return false;
+            p.setLimit(capped);
+            return true;
+        }
+        if (body instanceof SetOperationList sol) {
+            Limit capped = capLimit(sol.getLimit(), n);
+            if (capped == null) return false;
+            sol.setLimit(capped);
+            if (sol.getOrderByElements() == null || sol.getOrderByElements().isEmpty()) {
+                Long inner = limitOf(sol.getLimit(), sol.getOffset());
+                if (inner != null) pushIntoUnionAll(sol, inner, fired);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** 纯 UNION ALL：每个分支最多只需要 n 行（n 已含 OFFSET） */
+    private static void pushIntoUnionAll(SetOperationList sol, long n, List<String> fired) {
+        if (sol.getOperations() == null || sol.getOperations().isEmpty()) return;
+        for (SetOperation op : sol.getOperations()) {
+            if (!(op instanceof UnionOp u) || !u.isAll()) return;
+        }
+
+        List<Select> branches = sol.getSelects();
+        boolean any = false;
+        for (int i = 0; i < branches.size(); i++) {
+            Select b = branches.get(i);
+            if (b instanceof PlainSelect p) {
+                Limit capped = capLimit(p.getLimit(), n);
+                if (capped == null) continue;
+                p.setLimit(capped);
+                // 分支带 LIMIT 必须加括号，MySQL / PostgreSQL 都要求
+                ParenthesedSelect wrapped = new ParenthesedSelect();
+                wrapped.setSelect(p);
+                branches.set(i, wrapped);
+                any = true;
+            } else if (b instanceof ParenthesedSelect) {
+                any |= applyLimit(b, n, fired);
+            }
+        }
+        if (any) fired.add("limit-into-union");
+    }
+
+    /** 已有更小（或相等）的 LIMIT / 非字面量 LIMIT 时返回 null（不动） */
+    private static Limit capLimit(Limit existing, long n) {
+        if (existing == null) {
+            Limit l = new Limit();
+            l.setRowCount(new LongValue(n));
+            return l;
+        }
+        if (existing.getRowCount() instanceof LongValue lv && lv.getValue() > n) {
+            existing.setRowCount(new LongValue(n));
+            return existing;
+        }
+        return null;
+    }
+
+    /** 外层需要的行数 = LIMIT + OFFSET（两种写法：MySQL LIMIT o, n / PG LIMIT n OFFSET o） */
+    private static Long limitOf(Limit limit, Offset offset) {
+        if (limit == null || !(limit.getRowCount() instanceof LongValue rc)) return null;
+        long n = rc.getValue();
+        if (limit.getOffset() != null) {
+            if (!(limit.getOffset() instanceof LongValue o)) return null;
+            n += o.getValue();
+        }
+        if (offset != null) {
+            if (!(offset.getOffset() instanceof LongValue o)) return null;
+            n += o.getValue();
+        }
+        return n;
+    }
+
+    // =========================
+    // 小工具
+    // =========================
+
+    /** 没有 JOIN 的单表 FROM */
+    private static Table singleTable(PlainSelect ps) {
+        if (ps.getJoins() != null && !ps.getJoins().isEmpty()) return null;
+        return ps.getFromItem() instanceof Table t ? t : null;
+    }
+
+    /** 按列的限定名在 FROM / JOIN 里找表；无限定名时只有单表才能确定 */
+    private static Table resolveTable(PlainSelect ps, Column c) {
+        boolean qualified = c.getTable() != null && c.getTable().getName() != null;
+        if (!qualified) return singleTable(ps);
+
+        List<FromItem> items = new ArrayList<>();
+        items.add(ps.getFromItem());
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) items.add(j.getRightItem());
+        }
+        for (FromItem fi : items) {
+            if (fi instanceof Table t && matchesQualifier(c, t)) return t;
+        }
+        return null;
+    }
+
+    /**
+     * 同 resolveTable，但只返回每一行都一定有值的表：FROM 主表或内连接（JOIN / INNER / CROSS / 逗号）的表。
+     * LEFT / OUTER JOIN 的右表返回 null；有 RIGHT / FULL JOIN 时前面的表都可能补 NULL，一律返回 null。
+     */
+    private static Table resolvePreservedTable(PlainSelect ps, Column c) {
+        Table t = resolveTable(ps, c);
+        if (t == null || ps.getJoins() == null) return t;
+        for (Join j : ps.getJoins()) {
+            if (j.isRight() || j.isFull()) return null;
+            if (j.getRightItem() == t && (j.isLeft() || j.isOuter())) return null;
+        }
+        return t;
+    }
+
+    private static boolean isPk(String domain, Table t, Column c) {
+        String pk = SchemaCatalog.get().primaryKey(domain, t.getName());
+        if (pk == null || !pk.equals(unquote(c.getColumnName()))) return false;
+        boolean qualified = c.getTable() != null && c.getTable().getName() != null;
+        return !qualified || matchesQualifier(c, t);
+    }
+
+    private static boolean matchesQualifier(Column c, Table t) {
+        String q = unquote(c.getTable().getName());
+        if (t.getAlias() != null && t.getAlias().getName() != null) {
+            return q.equals(unquote(t.getAlias().getName()));
+        }
+        return q.equals(unquote(t.getName()));
+    }
+
+    private static String qualifierOf(Table t) {
+        if (t.getAlias() != null && t.getAlias().getName() != null) return unquote(t.getAlias().getName());
+        return unquote(t.getName());
+    }
+
+    /** FROM / JOIN 里出现的所有表名和别名（小写） */
+    private static Set<String> qualifiers(PlainSelect ps) {
+        Set<String> out = new HashSet<>();
+        List<FromItem> items = new ArrayList<>();
+        items.add(ps.getFromItem());
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) items.add(j.getRightItem());
+        }
+        for (FromItem fi : items) {
+            if (fi == null) continue;
+            if (fi.getAlias() != null && fi.getAlias().getName() != null) out.add(unquote(fi.getAlias().getName()));
+            if (fi instanceof Table t) out.add(unquote(t.getName()));
+        }
+        return out;
+    }
+
+    private static Column copy(Column c) {
+        return new Column(c.getTable(), c.getColumnName());
+    }
+
+    private static Expression andOf(Expression a, Expression b) {
+        if (a == null) return b;
+        if (a instanceof OrExpression) a = new Parenthesis(a);
+        return new AndExpression(a, b);
+    }
+
+    private static String unquote(String identifier) {
+        if (identifier == null) return "";
+        return identifier.replace("`", "").replace("\"", "").trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -14,9 +14,8 @@ public class QueryResultPruner {
     );
 
     public static QueryResult pruneByIntent(String domain, String problem, QueryResult qr) {
-        if (qr == null || qr.getColumns() == null || qr.getRows() == null) return qr;
-        if (qr.getColumns().isEmpty()) return qr;
-        if (qr.getColumns().size() == 1) return qr;
+        if (qr == null || qr.getData() == null) return qr;
+        if (qr.colCount() <= 1) return qr;
 
         // 1) 统计/数量/总和/平均…：只保留聚合列（或第一列）
         if (SelectIntentRouter.wantAggregate(problem)) {
@@ -28,7 +27,7 @@ public class QueryResultPruner {
             Set<String> keep = pickSingleFieldKeepSet(domain, problem);
             if (!keep.isEmpty()) {
                 QueryResult out = keepColumns(qr, keep);
-                if (out.getColumns() != null && !out.getColumns().isEmpty()) return out;
+                if (out.colCount() > 0) return out;
             }
         }
 
@@ -107,38 +106,26 @@ public class QueryResultPruner {
         return keep;
     }
 
-    /** 核心：按 keep（小写列名集合）裁剪 QueryResult */
+    /** 核心：按 keep（小写列名集合）裁剪 QueryResult；只挑列，不复制行数据 */
     private static QueryResult keepColumns(QueryResult qr, Set<String> keepLower) {
         List<String> cols = qr.getColumns();
         List<Integer> idx = new ArrayList<>();
-        List<String> newCols = new ArrayList<>();
 
         for (int i = 0; i < cols.size(); i++) {
             String c = cols.get(i);
             String lc = c == null ? "" : c.toLowerCase(Locale.ROOT);
             if (keepLower.contains(lc)) {
                 idx.add(i);
-                newCols.add(c);
             }
         }
 
         // 若一个都没命中：不裁剪
         if (idx.isEmpty()) return qr;
 
-        List<List<Object>> newRows = new ArrayList<>();
-        for (List<Object> row : qr.getRows()) {
-            List<Object> r = new ArrayList<>(idx.size());
-            for (int j : idx) {
-                r.add(j < row.size() ? row.get(j) : null);
-            }
-            newRows.add(r);
-        }
-
         QueryResult out = new QueryResult();
         out.setSuccess(qr.isSuccess());
         out.setStatus(qr.getStatus());
-        out.setColumns(newCols);
-        out.setRows(newRows);
+        out.setData(qr.getData().select(idx.stream().mapToInt(Integer::intValue).toArray()));
         return out;
     }
 
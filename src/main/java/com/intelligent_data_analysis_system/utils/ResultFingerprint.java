@@ -0,0 +1,86 @@
+package com.intelligent_data_analysis_system.utils;
+
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 结果集指纹：用于判断两条不同 SQL 的执行结果是否“等价”。
+ * 规则：
+ * - 忽略列名（不同候选的别名往往不同）
+ * - 忽略行顺序（ORDER BY 写法不同不影响答案）
+ * - 数值按数学值比较（100 / 100.00 / 1E+2 视为同一个值）
+ * - 日期统一为 ISO 文本
+ */
+public class ResultFingerprint {
+
+    private static final char COL_SEP = '\u0001';
+    private static final char ROW_SEP = '\u0002';
+
+    public static String of(ColumnarResult result) {
+        if (result == null || result.isEmpty()) return "empty";
+
+        int colCount = result.columnCount();
+        List<String> lines = new ArrayList<>(result.rowCount());
+        for (int r = 0; r < result.rowCount(); r++) {
+            StringBuilder sb = new StringBuilder();
+            for (int c = 0; c < colCount; c++) {
+                sb.append(normalize(result.get(r, c))).append(COL_SEP);
+            }
+            lines.add(sb.toString());
+        }
+        Collections.sort(lines);
+
+        MessageDigest md = Sha256.digest();
+        md.update(String.valueOf(colCount).getBytes(StandardCharsets.UTF_8));
+        for (String line : lines) {
+            md.update(line.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) ROW_SEP);
+        }
+        return Sha256.hex(md, 16);
+    }
+
+    private static String normalize(Object v) {
+        if (v == null) return "\u0000";
+        if (v instanceof Number n) return number(n);
+        if (v instanceof Boolean b) return b ? "1" : "0";
+        if (v instanceof java.sql.Date d) return d.toLocalDate().toString();
+        if (v instanceof Timestamp ts) return ts.toLocalDateTime().toString();
+        if (v instanceof LocalDate ld) return ld.toString();
+        if (v instanceof LocalDateTime ldt) return ldt.toString();
+        return String.valueOf(v).trim();
+    }
+
+    /**
+     * 按精确的十进制值比较：不经过 double，超过 2^53 的 BIGINT 主键不会被舍入成同一个值。
+     * 浮点数按它的最短十进制表示（0.1f 是 "0.1" 而不是 0.100000001...）。
+     */
+    private static String number(Number n) {
+        BigDecimal bd;
+        if (n instanceof BigDecimal b) {
+            bd = b;
+        } else if (n instanceof BigInteger bi) {
+            bd = new BigDecimal(bi);
+        } else if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+            return String.valueOf(n.longValue());
+        } else if (n instanceof Double || n instanceof Float) {
+            double d = n.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) return String.valueOf(d);
+            bd = n instanceof Float f ? new BigDecimal(Float.toString(f)) : BigDecimal.valueOf(d);
+        } else {
+            try {
+                bd = new BigDecimal(n.toString());
+            } catch (NumberFormatException e) {
+                return n.toString();
+            }
+        }
+        return bd.signum() == 0 ? "0" : bd.stripTrailingZeros().toPlainString();
+    }
+}
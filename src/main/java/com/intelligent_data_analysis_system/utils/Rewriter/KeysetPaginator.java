@@ -0,0 +1,392 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.*;
+
+/**
+ * 键集分页（keyset / seek）：把一条 SELECT 改成按唯一键稳定排序的一页，翻页用上一页最后一行的键值做谓词，不用 OFFSET，
+ * 第几页都只读一页的行。
+ *
+ * - 排序键 = 原 ORDER BY + 唯一键补位：有 GROUP BY 时唯一键是分组表达式，否则是 FROM / JOIN 里每张表的主键（SchemaCatalog）。
+ *   ORDER BY 里已有的不重复加；ORDER BY 1 / 别名按投影解析成表达式
+ * - 排序键作为隐藏列 __k0、__k1 ... 加进投影，调用方从最后一行取值做下一页的游标，返回前去掉
+ * - 翻页谓词：排序键全是主键列且方向一致时用行值比较 (k1, k2) &gt; (:p_key_0, :p_key_1)；
+ *   否则展开成 k1 &gt; a OR (k1 = a AND k2 &gt; b) ...，按方言的 NULL 排序位置处理可空列（MySQL NULL 最小，PG NULL 最大）
+ * - 排序键里有聚合（ORDER BY SUM(x)）时谓词放 HAVING，否则放 WHERE
+ * - 原 LIMIT 由调用方当总行数上限，这里换成本页的 LIMIT；有 OFFSET、UNION、DISTINCT、窗口函数排序、派生表 / 未知表时不支持
+ * - 没有 GROUP BY 的全表聚合只有一行，不分页（pageable = false，原样执行）
+ */
+public final class KeysetPaginator {
+
+    public static final String KEY_ALIAS_PREFIX = "__k";
+    public static final String PARAM_PREFIX = "p_key_";
+
+    private static final Set<String> AGGREGATES = Set.of("count", "sum", "avg", "min", "max");
+
+    private KeysetPaginator() {}
+
+    public static final class Page {
+        /** false：结果最多一行，不用分页，sql 为原 SQL */
+        public final boolean pageable;
+        public final String sql;
+        /** 翻页谓词的绑定值（p_key_0 ...） */
+        public final Map<String, Object> params;
+        /** 隐藏排序键列数（__k0 ... __k{n-1}） */
+        public final int keyCount;
+        /** 原 SQL 的 LIMIT，没有为 -1 */
+        public final long originalLimit;
+
+        Page(boolean pageable, String sql, Map<String, Object> params, int keyCount, long originalLimit) {
+            this.pageable = pageable;
+            this.sql = sql;
+            this.params = params;
+            this.keyCount = keyCount;
+            this.originalLimit = originalLimit;
+        }
+    }
+
+    private static final class Key {
+        final Expression expr;
+        final boolean asc;
+        /** null = 方言默认位置 */
+        final Boolean nullsFirst;
+        final boolean notNull;
+
+        Key(Expression expr, boolean asc, Boolean nullsFirst, boolean notNull) {
+            this.expr = expr;
+            this.asc = asc;
+            this.nullsFirst = nullsFirst;
+            this.notNull = notNull;
+        }
+    }
+
+    public static String keyAlias(int i) {
+        return KEY_ALIAS_PREFIX + i;
+    }
+
+    /**
+     * 原 SQL 的 LIMIT（没有为 -1）；分页时作为总行数上限。
+     */
+    public static long originalLimit(String sql) {
+        try {
+            Statement st = CCJSqlParserUtil.parse(trim(sql));
+            if (st instanceof PlainSelect ps) return limitOf(ps);
+        } catch (Exception ignore) {
+            // 解析不了的交给 paginate 报错
+        }
+        return -1;
+    }
+
+    /**
+     * @param after 上一页最后一行的排序键值（第一页为 null），个数必须和排序键一致
+     * @param limit 本页 LIMIT（调用方一般传页大小 + 1，用多出的一行判断还有没有下一页）
+     * @throws IllegalArgumentException 不支持分页的 SQL / 游标和 SQL 对不上
+     */
+    public static Page paginate(String domain, SqlDialect dialect, String sql, List<Object> after, long limit) {
+        Statement st;
+        try {
+            st = CCJSqlParserUtil.parse(trim(sql));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("SQL 解析失败: " + e.getMessage(), e);
+        }
+        if (!(st instanceof PlainSelect ps)) {
+            throw new IllegalArgumentException("只支持单个 SELECT（不支持 UNION / VALUES）");
+        }
+        if (ps.getOffset() != null || (ps.getLimit() != null && ps.getLimit().getOffset() != null)) {
+            throw new IllegalArgumentException("分页查询不能带 OFFSET，请去掉后用游标翻页");
+        }
+        if (ps.getFetch() != null) {
+            throw new IllegalArgumentException("分页查询请用 LIMIT 而不是 FETCH FIRST");
+        }
+        long originalLimit = limitOf(ps);
+
+        boolean grouped = ps.getGroupBy() != null;
+        if (!grouped && selectsAggregate(ps)) {
+            // 全表聚合：一行结果
+            return new Page(false, sql, Map.of(), 0, originalLimit);
+        }
+        if (ps.getDistinct() != null) {
+            throw new IllegalArgumentException("DISTINCT 查询没有唯一键，不支持分页（可改成 GROUP BY）");
+        }
+
+        List<Key> keys = orderKeys(ps);
+        boolean inHaving = false;
+        for (Key k : keys) {
+            if (contains(k.expr, true)) throw new IllegalArgumentException("按窗口函数排序的查询不支持分页");
+            if (contains(k.expr, false)) inHaving = true;
+        }
+        if (inHaving && !grouped) throw new IllegalArgumentException("按聚合排序需要 GROUP BY");
+
+        // 唯一键补位
+        List<Key> unique = grouped ? groupKeys(ps) : primaryKeys(domain, ps);
+        for (Key u : unique) {
+            Key existing = find(keys, u.expr);
+            if (existing == null) {
+                keys.add(u);
+            } else if (u.notNull && !existing.notNull) {
+                keys.set(keys.indexOf(existing), new Key(existing.expr, existing.asc, existing.nullsFirst, true));
+            }
+        }
+
+        // ORDER BY：原有的保留，补上的唯一键追加
+        List<OrderByElement> order = ps.getOrderByElements() == null
+                ? new ArrayList<>() : new ArrayList<>(ps.getOrderByElements());
+        for (int i = order.size(); i < keys.size(); i++) {
+            OrderByElement o = new OrderByElement();
+            o.setExpression(keys.get(i).expr);
+            o.setAsc(keys.get(i).asc);
+            order.add(o);
+        }
+        ps.setOrderByElements(order);
+
+        // 隐藏排序键列
+        List<SelectItem<?>> items = new ArrayList<>(ps.getSelectItems());
+        for (int i = 0; i < keys.size(); i++) {
+            items.add(new SelectItem<>(keys.get(i).expr, new Alias(keyAlias(i), true)));
+        }
+        ps.setSelectItems(items);
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (after != null) {
+            if (after.size() != keys.size()) {
+                throw new IllegalArgumentException("游标与 SQL 的排序键不一致（" + after.size() + " vs " + keys.size() + "）");
+            }
+            Expression pred = seekPredicate(dialect, keys, after, params);
+            if (inHaving) {
+                ps.setHaving(ps.getHaving() == null ? pred : and(ps.getHaving(), pred));
+            } else {
+                ps.setWhere(ps.getWhere() == null ? pred : and(ps.getWhere(), pred));
+            }
+        }
+
+        Limit l = new Limit();
+        l.setRowCount(new LongValue(limit));
+        ps.setLimit(l);
+
+        return new Page(true, ps.toString(), params, keys.size(), originalLimit);
+    }
+
+    // ========================= 排序键 =========================
+
+    private static List<Key> orderKeys(PlainSelect ps) {
+        List<Key> keys = new ArrayList<>();
+        if (ps.getOrderByElements() == null) return keys;
+        for (OrderByElement o : ps.getOrderByElements()) {
+            Expression e = resolve(ps, o.getExpression());
+            Boolean nullsFirst = o.getNullOrdering() == null ? null
+                    : o.getNullOrdering() == OrderByElement.NullOrdering.NULLS_FIRST;
+            keys.add(new Key(e, o.isAsc(), nullsFirst, false));
+        }
+        return keys;
+    }
+
+    /** ORDER BY 2 / ORDER BY 别名 -> 投影里的表达式（谓词和隐藏列里不能用序号 / 别名） */
+    private static Expression resolve(PlainSelect ps, Expression e) {
+        List<SelectItem<?>> items = ps.getSelectItems();
+        if (e instanceof LongValue lv) {
+            int idx = (int) lv.getValue() - 1;
+            if (idx < 0 || idx >= items.size() || items.get(idx).getExpression() instanceof AllColumns) {
+                throw new IllegalArgumentException("ORDER BY 序号 " + lv.getValue() + " 无法解析");
+            }
+            return items.get(idx).getExpression();
+        }
+        if (e instanceof Column c && c.getTable() == null) {
+            for (SelectItem<?> si : items) {
+                if (si.getAlias() != null && unquote(si.getAlias().getName()).equals(unquote(c.getColumnName()))) {
+                    return si.getExpression();
+                }
+            }
+        }
+        return e;
+    }
+
+    private static List<Key> groupKeys(PlainSelect ps) {
+        GroupByElement gb = ps.getGroupBy();
+        if (gb.getGroupingSets() != null && !gb.getGroupingSets().isEmpty()) {
+            throw new IllegalArgumentException("GROUPING SETS / ROLLUP 不支持分页");
+        }
+        List<Key> keys = new ArrayList<>();
+        if (gb.getGroupByExpressionList() != null) {
+            for (Object o : gb.getGroupByExpressionList()) {
+                keys.add(new Key(resolve(ps, (Expression) o), true, null, false));
+            }
+        }
+        if (keys.isEmpty()) throw new IllegalArgumentException("GROUP BY 为空");
+        return keys;
+    }
+
+    /** FROM / JOIN 里每张表的主键（LEFT JOIN 的右表可能为 NULL，按可空处理） */
+    private static List<Key> primaryKeys(String domain, PlainSelect ps) {
+        List<Key> keys = new ArrayList<>();
+        boolean single = ps.getJoins() == null || ps.getJoins().isEmpty();
+        keys.add(primaryKey(domain, ps.getFromItem(), single, true));
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                boolean notNull = !(j.isLeft() || j.isRight() || j.isFull() || j.isOuter());
+                keys.add(primaryKey(domain, j.getRightItem(), false, notNull));
+            }
+        }
+        return keys;
+    }
+
+    private static Key primaryKey(String domain, FromItem item, boolean single, boolean notNull) {
+        if (!(item instanceof Table t)) {
+            throw new IllegalArgumentException("FROM 子查询 / 派生表没有已知主键，不支持分页");
+        }
+        String pk = SchemaCatalog.get().primaryKey(domain, t.getName());
+        if (pk == null) throw new IllegalArgumentException("表 " + t.getName() + " 没有已知主键，不支持分页");
+        Column c = single && t.getAlias() == null
+                ? new Column(pk)
+                : new Column(new Table(t.getAlias() != null ? t.getAlias().getName() : t.getName()), pk);
+        return new Key(c, true, null, notNull);
+    }
+
+    /** 同一个表达式（列按列名 + 限定名比，限定名缺省时视为同一列） */
+    private static Key find(List<Key> keys, Expression e) {
+        for (Key k : keys) {
+            if (same(k.expr, e)) return k;
+        }
+        return null;
+    }
+
+    private static boolean same(Expression a, Expression b) {
+        if (a instanceof Column ca && b instanceof Column cb) {
+            if (!unquote(ca.getColumnName()).equals(unquote(cb.getColumnName()))) return false;
+            String ta = ca.getTable() == null ? null : ca.getTable().getName();
+            String tb = cb.getTable() == null ? null : cb.getTable().getName();
+            return ta == null || tb == null || unquote(ta).equals(unquote(tb));
+        }
+        return a.toString().equalsIgnoreCase(b.toString());
+    }
+
+    // ========================= 翻页谓词 =========================
+
+    private static Expression seekPredicate(SqlDialect dialect, List<Key> keys, List<Object> after,
+                                            Map<String, Object> params) {
+        for (int i = 0; i < keys.size(); i++) params.put(PARAM_PREFIX + i, after.get(i));
+
+        String text = rowValueEligible(keys, after) ? rowValue(keys) : expanded(dialect, keys, after);
+        try {
+            return new Parenthesis(CCJSqlParserUtil.parseCondExpression(text));
+        } catch (Exception e) {
+            if (text.startsWith("(") && keys.size() > 1) {
+                // 解析器不认行值比较时退回展开形式
+                try {
+                    return new Parenthesis(CCJSqlParserUtil.parseCondExpression(expanded(dialect, keys, after)));
+                } catch (Exception ignore) {
+                    // 落到下面报错
+                }
+            }
+            throw new IllegalArgumentException("分页谓词构造失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean rowValueEligible(List<Key> keys, List<Object> after) {
+        boolean asc = keys.get(0).asc;
+        for (int i = 0; i < keys.size(); i++) {
+            Key k = keys.get(i);
+            if (!k.notNull || k.asc != asc || after.get(i) == null) return false;
+        }
+        return true;
+    }
+
+    /** (k1, k2) &gt; (:p_key_0, :p_key_1)；单列退化成 k1 &gt; :p_key_0 */
+    private static String rowValue(List<Key> keys) {
+        String op = keys.get(0).asc ? " > " : " < ";
+        if (keys.size() == 1) return keys.get(0).expr + op + ":" + PARAM_PREFIX + 0;
+        StringJoiner l = new StringJoiner(", ", "(", ")");
+        StringJoiner r = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < keys.size(); i++) {
+            l.add(keys.get(i).expr.toString());
+            r.add(":" + PARAM_PREFIX + i);
+        }
+        return l + op + r;
+    }
+
+    /** OR_i (k_0 = v_0 AND ... AND k_{i-1} = v_{i-1} AND k_i 在 v_i 之后) */
+    private static String expanded(SqlDialect dialect, List<Key> keys, List<Object> after) {
+        List<String> ors = new ArrayList<>();
+        List<String> prefix = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Key k = keys.get(i);
+            String col = k.expr.toString();
+            Object v = after.get(i);
+            String p = ":" + PARAM_PREFIX + i;
+
+            String next = after(dialect, k, col, v, p);
+            if (next != null) {
+                List<String> conj = new ArrayList<>(prefix);
+                conj.add(next);
+                ors.add("(" + String.join(" AND ", conj) + ")");
+            }
+            prefix.add(v == null ? col + " IS NULL" : col + " = " + p);
+        }
+        // 最后一行已是所有键的末尾：没有下一页
+        return ors.isEmpty() ? "1 = 0" : String.join(" OR ", ors);
+    }
+
+    /** 严格排在 v 之后的条件；没有能排在后面的值返回 null */
+    private static String after(SqlDialect dialect, Key k, String col, Object v, String p) {
+        boolean nullsLast = nullsLast(dialect, k);
+        if (v == null) return nullsLast ? null : col + " IS NOT NULL";
+        String cmp = col + (k.asc ? " > " : " < ") + p;
+        return nullsLast && !k.notNull ? "(" + cmp + " OR " + col + " IS NULL)" : cmp;
+    }
+
+    /** MySQL：NULL 最小（ASC 在前）；PG：NULL 最大（ASC 在后）；显式 NULLS FIRST/LAST 优先 */
+    private static boolean nullsLast(SqlDialect dialect, Key k) {
+        if (k.nullsFirst != null) return !k.nullsFirst;
+        boolean nullIsLargest = dialect == SqlDialect.POSTGRESQL;
+        return k.asc == nullIsLargest;
+    }
+
+    // ========================= 工具 =========================
+
+    private static long limitOf(PlainSelect ps) {
+        Limit l = ps.getLimit();
+        if (l == null || !(l.getRowCount() instanceof LongValue lv)) return -1;
+        return lv.getValue();
+    }
+
+    private static boolean selectsAggregate(PlainSelect ps) {
+        for (SelectItem<?> si : ps.getSelectItems()) {
+            if (si.getExpression() != null && contains(si.getExpression(), false)) return true;
+        }
+        return false;
+    }
+
+    /** analytic=true 找窗口函数，false 找普通聚合 */
+    private static boolean contains(Expression e, boolean analytic) {
+        boolean[] found = {false};
+        SqlAstWalker.transform(e, x -> {
+            if (analytic ? x instanceof AnalyticExpression
+                    : x instanceof Function f && f.getName() != null
+                    && AGGREGATES.contains(f.getName().toLowerCase(Locale.ROOT))) {
+                found[0] = true;
+            }
+            return x;
+        });
+        return found[0];
+    }
+
+    private static Expression and(Expression a, Expression b) {
+        return SqlAstWalker.and(List.of(a instanceof Parenthesis ? a : new Parenthesis(a), b));
+    }
+
+    private static String trim(String sql) {
+        String s = sql == null ? "" : sql.trim();
+        return s.endsWith(";") ? s.substring(0, s.length() - 1).trim() : s;
+    }
+
+    private static String unquote(String s) {
+        return s.replace("`", "").replace("\"", "").toLowerCase(Locale.ROOT);
+    }
+}
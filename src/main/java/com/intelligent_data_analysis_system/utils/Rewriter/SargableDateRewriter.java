@@ -0,0 +1,438 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 日期谓词 SARGable 改写：把“函数包列”的日期条件改成半开区间，让 trade_date / encounter_date 上的索引能用上。
+ *
+ * 支持（col 必须是普通列，右侧必须是字面量）：
+ * - YEAR(col) / EXTRACT(YEAR FROM col)          =, >, >=, <, <=, BETWEEN
+ * - YEAR(col) = y AND MONTH(col) = m（同一 AND 链里，EXTRACT 写法同理）
+ * - DATE(col) / CAST(col AS DATE) / col::date   =, >, >=, <, <=, BETWEEN
+ * - DATE_FORMAT(col, '%Y' | '%Y-%m' | '%Y-%m-%d')
+ * - TO_CHAR(col, 'YYYY' | 'YYYY-MM' | 'YYYY-MM-DD')
+ * - DATE_TRUNC('year' | 'month' | 'day', col)
+ *
+ * 生成的边界统一是 'yyyy-MM-dd' 字符串字面量：MySQL 与 PostgreSQL 都会按列类型隐式转换，
+ * 对 DATE / DATETIME / TIMESTAMP 列语义与原函数写法一致（NULL 也一致）。识别不了的一律原样保留。
+ */
+public final class SargableDateRewriter {
+
+    private SargableDateRewriter() {}
+
+    private enum Unit { YEAR, MONTH, DAY }
+
+    /**
+     * 包列函数的种类，决定字面量怎么解析：
+     * PART   YEAR() / EXTRACT(YEAR ...)，字面量是年份数字
+     * FORMAT DATE_FORMAT / TO_CHAR，比较的是字符串，字面量必须严格补零
+     * TRUNC  DATE_TRUNC，字面量是日期，且必须对齐到粒度起点（否则永不相等）
+     * DATE   DATE() / CAST(... AS DATE)，字面量按日期隐式转换
+     */
+    private enum Kind { PART, FORMAT, TRUNC, DATE }
+
+    /** 被截断到某个粒度的日期列，例如 YEAR(trade_date) -> (trade_date, YEAR) */
+    private static class Bucket {
+        final Column col;
+        final Unit unit;
+        final Kind kind;
+
+        Bucket(Column col, Unit unit, Kind kind) {
+            this.col = col;
+            this.unit = unit;
+            this.kind = kind;
+        }
+    }
+
+    private static final Pattern YEAR_TEXT = Pattern.compile("^\\d{4}$");
+    private static final Pattern MONTH_TEXT = Pattern.compile("^(\\d{4})-(\\d{2})$");
+    private static final Pattern DAY_STRICT = Pattern.compile("^(\\d{4})-(\\d{2})-(\\d{2})$");
+    private static final Pattern DAY_LOOSE = Pattern.compile("^(\\d{4})-(\\d{1,2})-(\\d{1,2})(?:[ T]00:00(?::00(?:\\.0+)?)?)?$");
+    private static final Pattern TYPED_LITERAL = Pattern.compile("(?i)^(?:DATE|TIMESTAMP)\\s*'([^']*)'$");
+
+    public static String rewrite(String sql) {
+        if (sql == null || sql.isBlank()) return sql;
+        String lower = sql.toLowerCase(Locale.ROOT);
+        if (!lower.contains("year") && !lower.contains("date") && !lower.contains("to_char")) return sql;
+
+        try {
+            Statement st = CCJSqlParserUtil.parse(sql);
+            if (!(st instanceof Select select)) return sql;
+
+            boolean[] changed = {false};
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                if (rewritePlainSelect(ps)) changed[0] = true;
+            });
+            return changed[0] ? select.toString() : sql;
+        } catch (Exception e) {
+            // 解析失败直接返回原 SQL
+            return sql;
+        }
+    }
+
+    private static boolean rewritePlainSelect(PlainSelect ps) {
+        boolean changed = false;
+
+        Expression where = ps.getWhere();
+        if (where != null) {
+            String before = where.toString();
+            ps.setWhere(rewriteCondition(where));
+            changed |= !before.equals(ps.getWhere().toString());
+        }
+
+        Expression having = ps.getHaving();
+        if (having != null) {
+            String before = having.toString();
+            ps.setHaving(rewriteCondition(having));
+            changed |= !before.equals(ps.getHaving().toString());
+        }
+
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.getOnExpressions() == null || j.getOnExpressions().isEmpty()) continue;
+                List<Expression> ons = new ArrayList<>();
+                for (Expression on : j.getOnExpressions()) {
+                    String before = on.toString();
+                    Expression after = rewriteCondition(on);
+                    changed |= !before.equals(after.toString());
+                    ons.add(after);
+                }
+                j.setOnExpressions(ons);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 把条件当成一条 AND 链处理：先合并 YEAR+MONTH，再逐个改写单谓词，区间两端直接拼回链里。
+     */
+    private static Expression rewriteCondition(Expression e) {
+        List<Expression> conjuncts = new ArrayList<>();
+        for (Expression c : SqlAstWalker.flattenAnd(e)) {
+            conjuncts.add(rewriteNested(c));
+        }
+
+        mergeYearMonth(conjuncts);
+
+        List<Expression> out = new ArrayList<>();
+        for (Expression c : conjuncts) {
+            List<Expression> range = toRange(c);
+            if (range != null) out.addAll(range);
+            else out.add(c);
+        }
+        return SqlAstWalker.and(out);
+    }
+
+    /** 括号 / OR / NOT 内部同样按条件处理；结果是 AND 时补括号，避免优先级问题 */
+    private static Expression rewriteNested(Expression e) {
+        if (e instanceof Parenthesis p) {
+            p.setExpression(rewriteCondition(p.getExpression()));
+            return p;
+        }
+        if (e instanceof OrExpression or) {
+            or.setLeftExpression(wrapAnd(rewriteCondition(or.getLeftExpression())));
+            or.setRightExpression(wrapAnd(rewriteCondition(or.getRightExpression())));
+            return or;
+        }
+        if (e instanceof NotExpression not) {
+            not.setExpression(wrapAnd(rewriteCondition(not.getExpression())));
+            return not;
+        }
+        return e;
+    }
+
+    private static Expression wrapAnd(Expression e) {
+        return e instanceof AndExpression ? new Parenthesis(e) : e;
+    }
+
+    // =========================
+    // YEAR(col) = y AND MONTH(col) = m  ->  月区间
+    // =========================
+    private static void mergeYearMonth(List<Expression> conjuncts) {
+        for (int i = 0; i < conjuncts.size(); i++) {
+            if (!(conjuncts.get(i) instanceof EqualsTo yEq)) continue;
+            Column yCol = partColumn(yEq, "YEAR");
+            Integer year = yCol == null ? null : intLiteral(otherSide(yEq, "YEAR"));
+            if (year == null || year < 1000 || year > 9999) continue;
+
+            for (int j = 0; j < conjuncts.size(); j++) {
+                if (j == i || !(conjuncts.get(j) instanceof EqualsTo mEq)) continue;
+                Column mCol = partColumn(mEq, "MONTH");
+                if (mCol == null || !sameColumn(yCol, mCol)) continue;
+                Integer month = intLiteral(otherSide(mEq, "MONTH"));
+                if (month == null || month < 1 || month > 12) continue;
+
+                LocalDate start = LocalDate.of(year, month, 1);
+                List<Expression> range = range(yCol, start, start.plusMonths(1));
+                conjuncts.set(i, range.get(0));
+                conjuncts.set(j, range.get(1));
+                break;
+            }
+        }
+    }
+
+    /** 如果 eq 的某一侧是 YEAR(col)/MONTH(col)/EXTRACT(part FROM col)，返回 col */
+    private static Column partColumn(EqualsTo eq, String part) {
+        Column c = partColumn(eq.getLeftExpression(), part);
+        return c != null ? c : partColumn(eq.getRightExpression(), part);
+    }
+
+    private static Column partColumn(Expression e, String part) {
+        if (e instanceof Function f && part.equalsIgnoreCase(name(f)) && args(f).size() == 1
+                && args(f).get(0) instanceof Column c) {
+            return c;
+        }
+        if (e instanceof ExtractExpression ex && part.equalsIgnoreCase(ex.getName())
+                && ex.getExpression() instanceof Column c) {
+            return c;
+        }
+        return null;
+    }
+
+    private static Expression otherSide(EqualsTo eq, String part) {
+        return partColumn(eq.getLeftExpression(), part) != null ? eq.getRightExpression() : eq.getLeftExpression();
+    }
+
+    // =========================
+    // 单谓词改写
+    // =========================
+    private static List<Expression> toRange(Expression e) {
+        if (e instanceof Between bt) {
+            if (bt.isNot()) return null;
+            Bucket b = bucketOf(bt.getLeftExpression());
+            if (b == null) return null;
+            LocalDate lo = bucketStart(b, bt.getBetweenExpressionStart());
+            LocalDate hi = bucketStart(b, bt.getBetweenExpressionEnd());
+            if (lo == null || hi == null) return null;
+            return range(b.col, lo, next(hi, b.unit));
+        }
+
+        if (!(e instanceof ComparisonOperator cmp)) return null;
+        if (!(e instanceof EqualsTo || e instanceof GreaterThan || e instanceof GreaterThanEquals
+                || e instanceof MinorThan || e instanceof MinorThanEquals)) {
+            return null;
+        }
+
+        Expression literal = cmp.getRightExpression();
+        boolean flipped = false;
+        Bucket b = bucketOf(cmp.getLeftExpression());
+        if (b == null) {
+            b = bucketOf(cmp.getRightExpression());
+            if (b == null) return null;
+            literal = cmp.getLeftExpression();
+            flipped = true;
+        }
+
+        LocalDate start = bucketStart(b, literal);
+        if (start == null) return null;
+        LocalDate end = next(start, b.unit);
+
+        // 字面量在左边时比较方向反过来：'2023' < YEAR(col) 等价于 YEAR(col) > '2023'
+        boolean gt = e instanceof GreaterThan, ge = e instanceof GreaterThanEquals;
+        boolean lt = e instanceof MinorThan, le = e instanceof MinorThanEquals;
+        if (flipped) {
+            boolean t1 = gt, t2 = ge;
+            gt = lt;
+            ge = le;
+            lt = t1;
+            le = t2;
+        }
+
+        List<Expression> out = new ArrayList<>();
+        if (e instanceof EqualsTo) return range(b.col, start, end);
+        if (ge) out.add(cmp(new GreaterThanEquals(), b.col, start));
+        if (gt) out.add(cmp(new GreaterThanEquals(), b.col, end));
+        if (lt) out.add(cmp(new MinorThan(), b.col, start));
+        if (le) out.add(cmp(new MinorThan(), b.col, end));
+        return out;
+    }
+
+    /** 识别“函数包列”的左侧，返回被截断的列和粒度 */
+    private static Bucket bucketOf(Expression e) {
+        if (e instanceof ExtractExpression ex) {
+            if ("YEAR".equalsIgnoreCase(ex.getName()) && ex.getExpression() instanceof Column c) {
+                return new Bucket(c, Unit.YEAR, Kind.PART);
+            }
+            return null;
+        }
+
+        if (e instanceof CastExpression cast) {
+            String type = cast.getColDataType() == null ? "" : cast.getColDataType().getDataType();
+            if ("DATE".equalsIgnoreCase(type) && cast.getLeftExpression() instanceof Column c) {
+                return new Bucket(c, Unit.DAY, Kind.DATE);
+            }
+            return null;
+        }
+
+        if (!(e instanceof Function f)) return null;
+        String name = name(f).toUpperCase(Locale.ROOT);
+        List<Expression> args = args(f);
+
+        switch (name) {
+            case "YEAR":
+                if (args.size() == 1 && args.get(0) instanceof Column c) return new Bucket(c, Unit.YEAR, Kind.PART);
+                return null;
+            case "DATE":
+                if (args.size() == 1 && args.get(0) instanceof Column c) return new Bucket(c, Unit.DAY, Kind.DATE);
+                return null;
+            case "DATE_FORMAT":
+            case "TO_CHAR": {
+                if (args.size() != 2 || !(args.get(0) instanceof Column c)) return null;
+                String fmt = literalText(args.get(1));
+                if (fmt == null) return null;
+                Unit u = formatUnit(fmt);
+                return u == null ? null : new Bucket(c, u, Kind.FORMAT);
+            }
+            case "DATE_TRUNC": {
+                if (args.size() != 2 || !(args.get(1) instanceof Column c)) return null;
+                String unit = literalText(args.get(0));
+                if (unit == null) return null;
+                return switch (unit.trim().toLowerCase(Locale.ROOT)) {
+                    case "year" -> new Bucket(c, Unit.YEAR, Kind.TRUNC);
+                    case "month" -> new Bucket(c, Unit.MONTH, Kind.TRUNC);
+                    case "day" -> new Bucket(c, Unit.DAY, Kind.TRUNC);
+                    default -> null;
+                };
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Unit formatUnit(String fmt) {
+        return switch (fmt) {
+            case "%Y", "YYYY" -> Unit.YEAR;
+            case "%Y-%m", "YYYY-MM" -> Unit.MONTH;
+            case "%Y-%m-%d", "YYYY-MM-DD" -> Unit.DAY;
+            default -> null;
+        };
+    }
+
+    /**
+     * 把比较的字面量解析成桶的起始日期；对不上格式（或 date_trunc 的值没对齐到粒度）就返回 null 不改写。
+     */
+    private static LocalDate bucketStart(Bucket b, Expression literal) {
+        String text = literalText(literal);
+        if (text == null) return null;
+        text = text.trim();
+
+        try {
+            switch (b.kind) {
+                case PART:
+                    if (!YEAR_TEXT.matcher(text).matches()) return null;
+                    return LocalDate.of(Integer.parseInt(text), 1, 1);
+                case FORMAT:
+                    return parseFormatted(b.unit, text);
+                case TRUNC: {
+                    LocalDate d = parseDay(text, false);
+                    if (d == null) return null;
+                    if (b.unit == Unit.MONTH && d.getDayOfMonth() != 1) return null;
+                    if (b.unit == Unit.YEAR && d.getDayOfYear() != 1) return null;
+                    return d;
+                }
+                case DATE:
+                    return parseDay(text, false);
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            // 非法日期（2023-02-30 等）不改写
+            return null;
+        }
+    }
+
+    private static LocalDate parseFormatted(Unit unit, String text) {
+        switch (unit) {
+            case YEAR:
+                if (!YEAR_TEXT.matcher(text).matches()) return null;
+                return LocalDate.of(Integer.parseInt(text), 1, 1);
+            case MONTH: {
+                Matcher m = MONTH_TEXT.matcher(text);
+                if (!m.matches()) return null;
+                return LocalDate.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), 1);
+            }
+            default:
+                return parseDay(text, true);
+        }
+    }
+
+    private static LocalDate parseDay(String text, boolean strict) {
+        Matcher m = (strict ? DAY_STRICT : DAY_LOOSE).matcher(text);
+        if (!m.matches()) return null;
+        return LocalDate.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
+    }
+
+    private static LocalDate next(LocalDate start, Unit unit) {
+        return switch (unit) {
+            case YEAR -> start.plusYears(1);
+            case MONTH -> start.plusMonths(1);
+            case DAY -> start.plusDays(1);
+        };
+    }
+
+    private static List<Expression> range(Column col, LocalDate from, LocalDate to) {
+        List<Expression> out = new ArrayList<>(2);
+        out.add(cmp(new GreaterThanEquals(), col, from));
+        out.add(cmp(new MinorThan(), col, to));
+        return out;
+    }
+
+    private static Expression cmp(ComparisonOperator op, Column col, LocalDate bound) {
+        op.setLeftExpression(new Column(col.getTable(), col.getColumnName()));
+        op.setRightExpression(new StringValue(bound.toString()));
+        return op;
+    }
+
+    // =========================
+    // 字面量 / 函数小工具
+    // =========================
+    private static String literalText(Expression e) {
+        if (e instanceof StringValue s) return s.getValue();
+        if (e instanceof LongValue l) return l.getStringValue();
+        if (e instanceof CastExpression c && c.getLeftExpression() instanceof StringValue s) return s.getValue();
+        if (e != null) {
+            Matcher m = TYPED_LITERAL.matcher(e.toString().trim());
+            if (m.matches()) return m.group(1);
+        }
+        return null;
+    }
+
+    private static Integer intLiteral(Expression e) {
+        String t = literalText(e);
+        if (t == null || !t.trim().matches("\\d{1,4}")) return null;
+        return Integer.parseInt(t.trim());
+    }
+
+    private static String name(Function f) {
+        String n = f.getName();
+        return n == null ? "" : n.replace("`", "").replace("\"", "");
+    }
+
+    private static List<Expression> args(Function f) {
+        List<Expression> out = new ArrayList<>();
+        if (f.getParameters() != null) {
+            for (Object o : f.getParameters()) out.add((Expression) o);
+        }
+        return out;
+    }
+
+    private static boolean sameColumn(Column a, Column b) {
+        return a.getFullyQualifiedName().equalsIgnoreCase(b.getFullyQualifiedName());
+    }
+}
@@ -0,0 +1,187 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * JSqlParser AST 遍历小工具（4.9）。
+ *
+ * 不用官方的 Visitor/Adapter：各版本方法集合变化大，这里只用稳定的 getter/setter 做 instanceof 递归，
+ * 给各个改写器（SARGable 日期、逻辑优化等）复用。
+ */
+public final class SqlAstWalker {
+
+    private SqlAstWalker() {}
+
+    /**
+     * 找出语句里所有 PlainSelect（WITH、UNION 分支、FROM 子查询、表达式里的子查询），外层在前。
+     * 先收集再回调，回调里改 where/having 不影响遍历。
+     */
+    public static void forEachPlainSelect(Select select, Consumer<PlainSelect> fn) {
+        List<PlainSelect> all = new ArrayList<>();
+        collect(select, all);
+        for (PlainSelect ps : all) fn.accept(ps);
+    }
+
+    private static void collect(Select select, List<PlainSelect> out) {
+        if (select == null) return;
+
+        if (select.getWithItemsList() != null) {
+            for (WithItem wi : select.getWithItemsList()) {
+                Select inner = wi.getSelect();
+                collect(inner, out);
+            }
+        }
+
+        if (select instanceof PlainSelect ps) {
+            out.add(ps);
+            collectFromItem(ps.getFromItem(), out);
+            if (ps.getJoins() != null) {
+                for (Join j : ps.getJoins()) {
+                    collectFromItem(j.getRightItem(), out);
+                    if (j.getOnExpressions() != null) {
+                        for (Expression on : j.getOnExpressions()) collectExpr(on, out);
+                    }
+                }
+            }
+            if (ps.getSelectItems() != null) {
+                for (SelectItem<?> si : ps.getSelectItems()) collectExpr(si.getExpression(), out);
+            }
+            collectExpr(ps.getWhere(), out);
+            collectExpr(ps.getHaving(), out);
+        } else if (select instanceof SetOperationList sol) {
+            if (sol.getSelects() != null) {
+                for (Select s : sol.getSelects()) collect(s, out);
+            }
+        } else if (select instanceof ParenthesedSelect p) {
+            collect(p.getSelect(), out);
+        }
+    }
+
+    private static void collectFromItem(FromItem item, List<PlainSelect> out) {
+        if (item instanceof Select s) {
+            collect(s, out);
+        } else if (item instanceof ParenthesedFromItem pf) {
+            collectFromItem(pf.getFromItem(), out);
+            if (pf.getJoins() != null) {
+                for (Join j : pf.getJoins()) {
+                    collectFromItem(j.getRightItem(), out);
+                    if (j.getOnExpressions() != null) {
+                        for (Expression on : j.getOnExpressions()) collectExpr(on, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collectExpr(Expression e, List<PlainSelect> out) {
+        if (e == null) return;
+        transform(e, x -> {
+            if (x instanceof Select s) collect(s, out);
+            return x;
+        });
+    }
+
+    /**
+     * 自底向上改写表达式：先改子节点，再对当前节点调用 fn。
+     * 不进入子查询内部（子查询由 forEachPlainSelect 单独处理），子查询节点本身会作为叶子交给 fn。
+     */
+    @SuppressWarnings("unchecked")
+    public static Expression transform(Expression e, UnaryOperator<Expression> fn) {
+        if (e == null) return null;
+
+        if (e instanceof BinaryExpression b) {
+            b.setLeftExpression(transform(b.getLeftExpression(), fn));
+            b.setRightExpression(transform(b.getRightExpression(), fn));
+        } else if (e instanceof Parenthesis p) {
+            p.setExpression(transform(p.getExpression(), fn));
+        } else if (e instanceof NotExpression n) {
+            n.setExpression(transform(n.getExpression(), fn));
+        } else if (e instanceof InExpression in) {
+            in.setLeftExpression(transform(in.getLeftExpression(), fn));
+            in.setRightExpression(transform(in.getRightExpression(), fn));
+        } else if (e instanceof ExistsExpression ex) {
+            ex.setRightExpression(transform(ex.getRightExpression(), fn));
+        } else if (e instanceof Between bt) {
+            bt.setLeftExpression(transform(bt.getLeftExpression(), fn));
+            bt.setBetweenExpressionStart(transform(bt.getBetweenExpressionStart(), fn));
+            bt.setBetweenExpressionEnd(transform(bt.getBetweenExpressionEnd(), fn));
+        } else if (e instanceof IsNullExpression isNull) {
+            isNull.setLeftExpression(transform(isNull.getLeftExpression(), fn));
+        } else if (e instanceof CastExpression c) {
+            c.setLeftExpression(transform(c.getLeftExpression(), fn));
+        } else if (e instanceof ExtractExpression ex) {
+            ex.setExpression(transform(ex.getExpression(), fn));
+        } else if (e instanceof Function f) {
+            if (f.getParameters() != null) {
+                transformList((List<Expression>) (List<?>) f.getParameters(), fn);
+            }
+        } else if (e instanceof AnalyticExpression a) {
+            a.setExpression(transform(a.getExpression(), fn));
+            a.setFilterExpression(transform(a.getFilterExpression(), fn));
+            if (a.getPartitionExpressionList() != null) {
+                transformList((List<Expression>) (List<?>) a.getPartitionExpressionList(), fn);
+            }
+            if (a.getOrderByElements() != null) {
+                for (OrderByElement o : a.getOrderByElements()) o.setExpression(transform(o.getExpression(), fn));
+            }
+        } else if (e instanceof CaseExpression c) {
+            c.setSwitchExpression(transform(c.getSwitchExpression(), fn));
+            if (c.getWhenClauses() != null) {
+                for (WhenClause w : c.getWhenClauses()) {
+                    w.setWhenExpression(transform(w.getWhenExpression(), fn));
+                    w.setThenExpression(transform(w.getThenExpression(), fn));
+                }
+            }
+            c.setElseExpression(transform(c.getElseExpression(), fn));
+        } else if (e instanceof ExpressionList<?> list) {
+            transformList((List<Expression>) (List<?>) list, fn);
+        }
+
+        return fn.apply(e);
+    }
+
+    private static void transformList(List<Expression> list, UnaryOperator<Expression> fn) {
+        for (int i = 0; i < list.size(); i++) {
+            list.set(i, transform(list.get(i), fn));
+        }
+    }
+
+    /** 把 a AND (b AND c) 这样的链拍平成 [a, b, c]（不穿透括号） */
+    public static List<Expression> flattenAnd(Expression e) {
+        List<Expression> out = new ArrayList<>();
+        flattenAnd(e, out);
+        return out;
+    }
+
+    private static void flattenAnd(Expression e, List<Expression> out) {
+        if (e == null) return;
+        if (e instanceof AndExpression and) {
+            flattenAnd(and.getLeftExpression(), out);
+            flattenAnd(and.getRightExpression(), out);
+        } else {
+            out.add(e);
+        }
+    }
+
+    /** flattenAnd 的逆操作；空列表返回 null（即“没有条件”） */
+    public static Expression and(List<Expression> conjuncts) {
+        Expression out = null;
+        for (Expression c : conjuncts) {
+            if (c == null) continue;
+            out = out == null ? c : new AndExpression(out, c);
+        }
+        return out;
+    }
+}
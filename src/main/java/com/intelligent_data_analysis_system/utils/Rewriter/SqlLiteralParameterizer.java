@@ -0,0 +1,145 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.utils.Sha256;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.Select;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 字面量参数化：把 WHERE / HAVING / JOIN ON 里的字符串、数字字面量提成命名参数（:p_lit_0, :p_lit_1 ...），
+ * 让同一“形状”的 SQL 文本一致，驱动端/服务端的预编译语句缓存能复用执行计划。
+ *
+ * 不提的：
+ * - SELECT 列表、GROUP BY、ORDER BY、LIMIT（会影响语义：ORDER BY 1、GROUP BY 1、LIMIT ? 在部分库不支持）
+ * - 函数参数、CAST 里的字面量（DATE_FORMAT 的格式串、DATE_TRUNC 的单位等必须是常量）
+ * - NULL、带前缀的字符串（E'..' / N'..'）、含反斜杠的字符串（MySQL/PG 转义规则不同，原样保留更安全）
+ *
+ * fingerprint：参数化后 SQL 文本的 SHA-256（前 16 字节 hex），同形状的 SQL 相同，给缓存和指标用。
+ */
+public final class SqlLiteralParameterizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlLiteralParameterizer.class);
+
+    public static final String PARAM_PREFIX = "p_lit_";
+
+    private SqlLiteralParameterizer() {}
+
+    /** 参数化结果；params 按出现顺序 */
+    public static class Parameterized {
+        public final String sql;
+        public final Map<String, Object> params;
+        public final String fingerprint;
+
+        public Parameterized(String sql, Map<String, Object> params, String fingerprint) {
+            this.sql = sql;
+            this.params = Collections.unmodifiableMap(params);
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    public static Parameterized parameterize(String sql) {
+        if (sql == null || sql.isBlank()) return new Parameterized(sql, new LinkedHashMap<>(), fingerprint(sql));
+
+        String trimmed = sql.trim();
+        if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+
+        // 已经手工用了同名前缀的参数，不动
+        if (trimmed.contains(":" + PARAM_PREFIX)) {
+            return new Parameterized(trimmed, new LinkedHashMap<>(), fingerprint(trimmed));
+        }
+
+        try {
+            Statement st = CCJSqlParserUtil.parse(trimmed);
+            if (!(st instanceof Select select)) {
+                return new Parameterized(trimmed, new LinkedHashMap<>(), fingerprint(trimmed));
+            }
+
+            Map<String, Object> params = new LinkedHashMap<>();
+            SqlAstWalker.forEachPlainSelect(select, ps -> {
+                ps.setWhere(lift(ps.getWhere(), params));
+                ps.setHaving(lift(ps.getHaving(), params));
+                if (ps.getJoins() != null) {
+                    for (Join j : ps.getJoins()) {
+                        if (j.getOnExpressions() == null || j.getOnExpressions().isEmpty()) continue;
+                        List<Expression> ons = new ArrayList<>();
+                        for (Expression on : j.getOnExpressions()) ons.add(lift(on, params));
+                        j.setOnExpressions(ons);
+                    }
+                }
+            });
+
+            String out = params.isEmpty() ? trimmed : select.toString();
+            return new Parameterized(out, params, fingerprint(select.toString()));
+        } catch (Exception e) {
+            logger.debug("[parameterize] skip, parse failed: {}", e.getMessage());
+            return new Parameterized(trimmed, new LinkedHashMap<>(), fingerprint(trimmed));
+        }
+    }
+
+    private static Expression lift(Expression e, Map<String, Object> params) {
+        if (e == null) return null;
+
+        // 先把函数/CAST/窗口函数里的节点都标记成“不提”
+        Set<Expression> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+        SqlAstWalker.transform(e, x -> {
+            if (x instanceof Function || x instanceof CastExpression || x instanceof AnalyticExpression) {
+                SqlAstWalker.transform(x, y -> {
+                    keep.add(y);
+                    return y;
+                });
+            }
+            return x;
+        });
+
+        return SqlAstWalker.transform(e, x -> {
+            if (keep.contains(x)) return x;
+            Object value = literalValue(x);
+            if (value == null) return x;
+            String name = PARAM_PREFIX + params.size();
+            params.put(name, value);
+            return new JdbcNamedParameter(name);
+        });
+    }
+
+    /** 可以提成参数的字面量的 Java 值；不能提返回 null */
+    private static Object literalValue(Expression e) {
+        if (e instanceof StringValue sv) {
+            if (sv.getPrefix() != null && !sv.getPrefix().isEmpty()) return null;
+            String v = sv.getValue();
+            if (v == null || v.indexOf('\\') >= 0) return null;
+            return v.replace("''", "'");
+        }
+        if (e instanceof LongValue lv) {
+            String s = lv.getStringValue();
+            try {
+                return Long.parseLong(s);
+            } catch (NumberFormatException ex) {
+                return new BigDecimal(s);
+            }
+        }
+        if (e instanceof DoubleValue dv) {
+            return new BigDecimal(dv.toString());
+        }
+        return null;
+    }
+
+    /**
+     * SQL 文本指纹。不做大小写/空白折叠：没提成参数的字面量还在文本里，折叠了会把不同的 SQL 算成一个；
+     * 解析成功时传进来的已经是 JSqlParser 统一格式化过的文本。
+     */
+    public static String fingerprint(String sql) {
+        String normalized = sql == null ? "" : sql.trim();
+        MessageDigest md = Sha256.digest();
+        md.update(normalized.getBytes(StandardCharsets.UTF_8));
+        return Sha256.hex(md, 16);
+    }
+}
@@ -0,0 +1,118 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.*;
+
+/**
+ * 一次改写的上下文：domain / 方言 / 原始问题，以及引擎遍历到的当前 PlainSelect 的 别名 -> 表 映射。
+ * 规则只读它；别名映射由 SqlRewriteEngine 在进入每个 PlainSelect 时重建。
+ */
+public class SqlRewriteContext {
+
+    /** 大写 domain（FINANCE / HEALTHCARE），可为 null */
+    public final String domain;
+    /** 目标方言，未知为 null（此时只跑不限方言的规则） */
+    public final SqlDialect dialect;
+    /** 原始自然语言问题，可为 null（依赖问题的规则不会命中） */
+    public final String problem;
+
+    private PlainSelect root;
+    private PlainSelect current;
+    private final Map<String, String> aliasToTable = new HashMap<>();
+    /** 表（小写）-> SQL 里引用它用的限定名（有别名用别名），按 FROM / JOIN 出现顺序 */
+    private final Map<String, String> tableToQualifier = new LinkedHashMap<>();
+    private String defaultTable;
+    private final Set<String> fired = new LinkedHashSet<>();
+
+    public SqlRewriteContext(String domain, SqlDialect dialect, String problem) {
+        this.domain = domain == null || domain.isBlank() ? null : domain.trim().toUpperCase(Locale.ROOT);
+        this.dialect = dialect;
+        this.problem = problem;
+    }
+
+    public static SqlRewriteContext of(String domain, SqlDialect dialect) {
+        return new SqlRewriteContext(domain, dialect, null);
+    }
+
+    /** 当前 PlainSelect（select 规则里就是被改写的那个） */
+    public PlainSelect currentSelect() {
+        return current;
+    }
+
+    /** 当前 PlainSelect 是不是整条语句本身（不是 WITH / UNION 分支 / 子查询） */
+    public boolean isRoot() {
+        return current != null && current == root;
+    }
+
+    /** 列所属的表名（小写）：有限定名按别名查，否则取当前 FROM 的第一张表；解析不出返回 null */
+    public String tableOf(Column column) {
+        if (column == null) return null;
+        Table t = column.getTable();
+        if (t != null && t.getName() != null && !t.getName().isBlank()) {
+            return aliasToTable.get(unquote(t.getName()));
+        }
+        return defaultTable;
+    }
+
+    /** 当前 PlainSelect 的 FROM / JOIN 里实际出现的表（小写，不含子查询），按出现顺序 */
+    public Collection<String> tables() {
+        return Collections.unmodifiableSet(tableToQualifier.keySet());
+    }
+
+    /** 在当前 PlainSelect 里引用该表应该写的限定名（别名优先）；表不在 FROM / JOIN 里返回 null */
+    public String qualifierOf(String table) {
+        return table == null ? null : tableToQualifier.get(table.toLowerCase(Locale.ROOT));
+    }
+
+    /** 本次改写命中过的规则名（按首次命中顺序） */
+    public Set<String> fired() {
+        return Collections.unmodifiableSet(fired);
+    }
+
+    void markFired(String rule) {
+        fired.add(rule);
+    }
+
+    void root(PlainSelect ps) {
+        root = ps;
+    }
+
+    void enter(PlainSelect ps) {
+        current = ps;
+        aliasToTable.clear();
+        tableToQualifier.clear();
+        defaultTable = null;
+
+        register(ps.getFromItem());
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) register(j.getRightItem());
+        }
+    }
+
+    private void register(FromItem item) {
+        if (item instanceof Table t && t.getName() != null) {
+            String table = unquote(t.getName());
+            aliasToTable.put(table, table);
+            String qualifier = t.getName();
+            if (t.getAlias() != null && t.getAlias().getName() != null) {
+                aliasToTable.put(unquote(t.getAlias().getName()), table);
+                qualifier = t.getAlias().getName();
+            }
+            tableToQualifier.putIfAbsent(table, qualifier);
+            if (defaultTable == null) defaultTable = table;
+        } else if (item instanceof ParenthesedFromItem pf) {
+            register(pf.getFromItem());
+            if (pf.getJoins() != null) {
+                for (Join j : pf.getJoins()) register(j.getRightItem());
+            }
+        }
+    }
+
+    static String unquote(String identifier) {
+        return identifier.replace("`", "").replace("\"", "").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,217 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL 改写规则引擎：SQL 只解析一次，所有规则在同一次 AST 遍历里执行。
+ *
+ * 规则（SqlRewriteRule）按 (domain, 方言) 编译一次并缓存：
+ * - table / select 规则各一个列表
+ * - expression 规则按节点类型分发（Column / EqualsTo / InExpression ...），某类节点没有规则就不做任何事
+ * 所以加一条规则只是在分发表里多一项，不会给每个请求多一遍全文正则。
+ * mapping 里该域的 rewrite.disabled / rewrite.dialects.*.disabled 关掉的规则编译时就去掉；
+ * mapping 重新加载后（配置对象换了）下一次改写重新编译。
+ *
+ * 遍历顺序（每个 PlainSelect，外层在前）：FROM/JOIN 表 -> 建别名映射 -> select 规则 -> 各子句表达式自底向上。
+ * 解析失败或没有规则命中时原样返回输入文本（不做 JSqlParser 的格式化）。
+ */
+public final class SqlRewriteEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlRewriteEngine.class);
+
+    private static final SqlRewriteEngine DEFAULT = new SqlRewriteEngine(SqlRewriteRules.defaults());
+
+    private final List<SqlRewriteRule> rules;
+    private final Map<String, Compiled> compiled = new ConcurrentHashMap<>();
+
+    public SqlRewriteEngine(List<SqlRewriteRule> rules) {
+        Set<String> names = new HashSet<>();
+        for (SqlRewriteRule r : rules) {
+            if (!names.add(r.name)) throw new IllegalArgumentException("重复的改写规则名: " + r.name);
+        }
+        this.rules = List.copyOf(rules);
+    }
+
+    /** 内置规则集（SqlRewriteRules.defaults()） */
+    public static SqlRewriteEngine get() {
+        return DEFAULT;
+    }
+
+    public List<SqlRewriteRule> rules() {
+        return rules;
+    }
+
+    public String rewrite(String sql, SqlRewriteContext ctx) {
+        if (sql == null || sql.isBlank()) return sql;
+
+        MappingRegistry.RewriteSettings settings = MappingRegistry.get().rewriteSettings(ctx.domain);
+        String key = key(ctx.domain, ctx.dialect);
+        Compiled c = compiled.get(key);
+        if (c == null || c.settings != settings) {
+            c = compile(ctx.domain, ctx.dialect, settings);
+            compiled.put(key, c);
+        }
+        if (c.isEmpty()) return sql;
+
+        String trimmed = sql.trim();
+        if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+
+        Select select;
+        try {
+            Statement st = CCJSqlParserUtil.parse(trimmed);
+            if (!(st instanceof Select s)) return sql;
+            select = s;
+        } catch (Exception e) {
+            logger.debug("[rewrite] skip, parse failed: {}", e.getMessage());
+            return sql;
+        }
+
+        ctx.root(select instanceof PlainSelect ps ? ps : null);
+        SqlAstWalker.forEachPlainSelect(select, ps -> visit(ps, c, ctx));
+
+        if (ctx.fired().isEmpty()) return sql;
+        String out = select.toString();
+        logger.debug("[rewrite][{}] rules={}", ctx.domain, ctx.fired());
+        return out;
+    }
+
+    /* ========================= 单次遍历 ========================= */
+
+    private void visit(PlainSelect ps, Compiled c, SqlRewriteContext ctx) {
+        if (!c.tableRules.isEmpty()) {
+            visitTable(ps.getFromItem(), c, ctx);
+            if (ps.getJoins() != null) {
+                for (Join j : ps.getJoins()) visitTable(j.getRightItem(), c, ctx);
+            }
+        }
+
+        ctx.enter(ps);
+
+        for (SqlRewriteRule r : c.selectRules) {
+            if (r.when.test(ps, ctx) && Boolean.TRUE.equals(r.then.apply(ps, ctx))) {
+                ctx.markFired(r.name);
+                // 结构可能变了（换了 FROM / 投影），别名映射重建
+                ctx.enter(ps);
+            }
+        }
+
+        if (c.expressionRules.isEmpty()) return;
+
+        if (ps.getSelectItems() != null) {
+            for (SelectItem<?> si : ps.getSelectItems()) {
+                si.setExpression(expr(si.getExpression(), c, ctx));
+            }
+        }
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) {
+                if (j.getOnExpressions() == null || j.getOnExpressions().isEmpty()) continue;
+                List<Expression> ons = new ArrayList<>();
+                for (Expression on : j.getOnExpressions()) ons.add(expr(on, c, ctx));
+                j.setOnExpressions(ons);
+            }
+        }
+        ps.setWhere(expr(ps.getWhere(), c, ctx));
+        if (ps.getGroupBy() != null && ps.getGroupBy().getGroupByExpressionList() != null) {
+            expr(ps.getGroupBy().getGroupByExpressionList(), c, ctx);
+        }
+        ps.setHaving(expr(ps.getHaving(), c, ctx));
+        if (ps.getOrderByElements() != null) {
+            for (OrderByElement o : ps.getOrderByElements()) o.setExpression(expr(o.getExpression(), c, ctx));
+        }
+    }
+
+    private static void visitTable(FromItem item, Compiled c, SqlRewriteContext ctx) {
+        if (item instanceof Table t) {
+            for (SqlRewriteRule r : c.tableRules) {
+                if (r.when.test(t, ctx) && Boolean.TRUE.equals(r.then.apply(t, ctx))) ctx.markFired(r.name);
+            }
+        } else if (item instanceof ParenthesedFromItem pf) {
+            visitTable(pf.getFromItem(), c, ctx);
+            if (pf.getJoins() != null) {
+                for (Join j : pf.getJoins()) visitTable(j.getRightItem(), c, ctx);
+            }
+        }
+    }
+
+    private static Expression expr(Expression e, Compiled c, SqlRewriteContext ctx) {
+        if (e == null) return null;
+        return SqlAstWalker.transform(e, node -> {
+            Expression cur = node;
+            for (SqlRewriteRule r : c.rulesFor(node.getClass())) {
+                if (!r.nodeType.isInstance(cur) || !r.when.test(cur, ctx)) continue;
+                Object next = r.then.apply(cur, ctx);
+                if (next instanceof Expression ne) cur = ne;
+                ctx.markFired(r.name);
+            }
+            return cur;
+        });
+    }
+
+    /* ========================= 编译 ========================= */
+
+    private static String key(String domain, SqlDialect dialect) {
+        return (domain == null ? "*" : domain) + "|" + (dialect == null ? "*" : dialect.name());
+    }
+
+    private Compiled compile(String domain, SqlDialect dialect, MappingRegistry.RewriteSettings settings) {
+        List<SqlRewriteRule> tableRules = new ArrayList<>();
+        List<SqlRewriteRule> selectRules = new ArrayList<>();
+        List<SqlRewriteRule> expressionRules = new ArrayList<>();
+        for (SqlRewriteRule r : rules) {
+            if (!r.appliesTo(domain, dialect)) continue;
+            if (settings.isDisabled(r.name, dialect == null ? null : dialect.name())) continue;
+            switch (r.kind) {
+                case TABLE -> tableRules.add(r);
+                case SELECT -> selectRules.add(r);
+                case EXPRESSION -> expressionRules.add(r);
+            }
+        }
+        logger.debug("[rewrite] compiled domain={}, dialect={}, rules={}",
+                domain, dialect, tableRules.size() + selectRules.size() + expressionRules.size());
+        return new Compiled(settings, tableRules, selectRules, expressionRules);
+    }
+
+    /** 某个 (domain, 方言) 下生效的规则；expression 规则的按类分发表懒加载 */
+    private static final class Compiled {
+        /** 编译时用的配置（引用比较，换了就重新编译） */
+        final MappingRegistry.RewriteSettings settings;
+        final List<SqlRewriteRule> tableRules;
+        final List<SqlRewriteRule> selectRules;
+        final List<SqlRewriteRule> expressionRules;
+        private final Map<Class<?>, List<SqlRewriteRule>> byType = new ConcurrentHashMap<>();
+
+        Compiled(MappingRegistry.RewriteSettings settings, List<SqlRewriteRule> tableRules,
+                 List<SqlRewriteRule> selectRules, List<SqlRewriteRule> expressionRules) {
+            this.settings = settings;
+            this.tableRules = List.copyOf(tableRules);
+            this.selectRules = List.copyOf(selectRules);
+            this.expressionRules = List.copyOf(expressionRules);
+        }
+
+        boolean isEmpty() {
+            return tableRules.isEmpty() && selectRules.isEmpty() && expressionRules.isEmpty();
+        }
+
+        /** 节点类型 -> 能匹配它的规则（声明类型是它本身或父类/接口），保持声明顺序 */
+        List<SqlRewriteRule> rulesFor(Class<?> type) {
+            return byType.computeIfAbsent(type, t -> {
+                List<SqlRewriteRule> out = new ArrayList<>();
+                for (SqlRewriteRule r : expressionRules) {
+                    if (r.nodeType.isAssignableFrom(t)) out.add(r);
+                }
+                return out.isEmpty() ? List.of() : List.copyOf(out);
+            });
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+/**
+ * 声明式改写规则 = 作用域（domain / 方言）+ AST 模式（节点类型 + 条件）+ 动作。
+ *
+ * 三种节点：
+ * - expression：匹配某类表达式节点，动作返回替换后的节点（可以是原节点）
+ * - table：FROM / JOIN 里的表，动作原地改 Table
+ * - select：整个 PlainSelect（投影兜底这类结构性改写），动作原地改，返回是否改了
+ *
+ * 规则本身无状态，由 SqlRewriteEngine 按 (domain, 方言) 编译成一张按节点类型分发的表。
+ *
+ * <pre>
+ * SqlRewriteRule.expression("is-active-typo", Column.class)
+ *         .when((col, ctx) -&gt; "is_acitve".equalsIgnoreCase(col.getColumnName()))
+ *         .then((col, ctx) -&gt; { col.setColumnName("is_active"); return col; });
+ * </pre>
+ */
+public final class SqlRewriteRule {
+
+    enum Kind { EXPRESSION, TABLE, SELECT }
+
+    final String name;
+    final Kind kind;
+    final Class<?> nodeType;
+    /** 大写 domain，空集合表示所有 domain */
+    final Set<String> domains;
+    /** 空集合表示所有方言 */
+    final Set<SqlDialect> dialects;
+    final BiPredicate<Object, SqlRewriteContext> when;
+    final BiFunction<Object, SqlRewriteContext, Object> then;
+
+    private SqlRewriteRule(Builder<?> b) {
+        this.name = b.name;
+        this.kind = b.kind;
+        this.nodeType = b.nodeType;
+        this.domains = Set.copyOf(b.domains);
+        this.dialects = b.dialects.isEmpty() ? Set.of() : Collections.unmodifiableSet(EnumSet.copyOf(b.dialects));
+        this.when = b.when;
+        this.then = b.then;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** 是否对该 (domain, 方言) 生效；限定了方言的规则在方言未知时不生效 */
+    boolean appliesTo(String domain, SqlDialect dialect) {
+        if (!domains.isEmpty() && (domain == null || !domains.contains(domain))) return false;
+        return dialects.isEmpty() || (dialect != null && dialects.contains(dialect));
+    }
+
+    /* ========================= 声明入口 ========================= */
+
+    public static <T extends Expression> Builder<T> expression(String name, Class<T> nodeType) {
+        return new Builder<>(name, Kind.EXPRESSION, nodeType);
+    }
+
+    public static Builder<Table> table(String name) {
+        return new Builder<>(name, Kind.TABLE, Table.class);
+    }
+
+    public static Builder<PlainSelect> select(String name) {
+        return new Builder<>(name, Kind.SELECT, PlainSelect.class);
+    }
+
+    public static final class Builder<T> {
+        private final String name;
+        private final Kind kind;
+        private final Class<T> nodeType;
+        private final Set<String> domains = new HashSet<>();
+        private final Set<SqlDialect> dialects = new HashSet<>();
+        private BiPredicate<Object, SqlRewriteContext> when = (n, c) -> true;
+        private BiFunction<Object, SqlRewriteContext, Object> then;
+
+        private Builder(String name, Kind kind, Class<T> nodeType) {
+            if (name == null || name.isBlank()) throw new IllegalArgumentException("规则名不能为空");
+            this.name = name;
+            this.kind = kind;
+            this.nodeType = nodeType;
+        }
+
+        public Builder<T> domains(String... domains) {
+            for (String d : domains) this.domains.add(d.trim().toUpperCase(Locale.ROOT));
+            return this;
+        }
+
+        public Builder<T> dialects(SqlDialect... dialects) {
+            this.dialects.addAll(Arrays.asList(dialects));
+            return this;
+        }
+
+        public Builder<T> when(BiPredicate<? super T, SqlRewriteContext> predicate) {
+            this.when = (n, c) -> predicate.test(nodeType.cast(n), c);
+            return this;
+        }
+
+        /** expression 规则：返回替换节点（不变就返回原节点） */
+        public SqlRewriteRule then(BiFunction<? super T, SqlRewriteContext, ? extends Expression> action) {
+            if (kind != Kind.EXPRESSION) throw new IllegalArgumentException("规则 " + name + " 不是 expression 规则");
+            return build((n, c) -> action.apply(nodeType.cast(n), c));
+        }
+
+        /** table / select 规则：原地修改，返回是否改了（用于记录命中） */
+        public SqlRewriteRule apply(BiPredicate<? super T, SqlRewriteContext> action) {
+            if (kind == Kind.EXPRESSION) throw new IllegalArgumentException("规则 " + name + " 是 expression 规则，用 then");
+            return build((n, c) -> action.test(nodeType.cast(n), c));
+        }
+
+        private SqlRewriteRule build(BiFunction<Object, SqlRewriteContext, Object> action) {
+            this.then = action;
+            return new SqlRewriteRule(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,423 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内置改写规则（原来散在 SqlValueNormalizer / EnumValueNormalizer / EnumSqlRewriter /
+ * Finance/HealthcareProjectionFixer / SqlDeterministicFixer 里的正则替换）。
+ *
+ * 和原来正则版的区别：都落在 AST 节点上，字符串字面量里的内容不会被误改；
+ * 值归一只在“列 = 字面量”上做，并且按 SchemaCatalog 的列类型判断（布尔列才转 TRUE/FALSE）。
+ *
+ * 声明顺序即同一节点上的执行顺序。
+ *
+ * 规则用到的数据（列名纠错、英文枚举、默认投影、列表类问题的对象词）内置了 FINANCE / HEALTHCARE 两个域的，
+ * 各域可以在 mapping 的 rewrite 段里逐项补充 / 覆盖，也可以按域、按方言关掉某条规则（格式见 MappingRegistry）；
+ * 注册表里新增的域用自己的 mapping 文件配。mapping 重新加载后下一次改写用新的配置。
+ */
+public final class SqlRewriteRules {
+
+    private SqlRewriteRules() {}
+
+    /** 某个域生效的规则数据：内置的 ← mapping 的 rewrite 段，逐项覆盖 */
+    static final class DomainData {
+        /** 合并时用的配置（引用比较，mapping 重新加载后重建） */
+        final MappingRegistry.RewriteSettings source;
+        final Map<String, String> columnRenames;
+        final Map<String, String> englishValues;
+        final Map<String, String> defaultProjections;
+        final List<String> listingObjects;
+
+        DomainData(String domain, MappingRegistry.RewriteSettings source) {
+            this.source = source;
+            domain = domain == null ? "" : domain;
+            this.columnRenames = merge(COLUMN_RENAMES, source.columnRenames);
+            this.englishValues = merge(ENGLISH_VALUES.getOrDefault(domain, Map.of()), source.englishValues);
+            this.defaultProjections = merge(DEFAULT_SELECT.getOrDefault(domain, Map.of()), source.defaultProjections);
+            List<String> objects = new ArrayList<>(LISTING_OBJECTS.getOrDefault(domain, List.of()));
+            for (String o : source.listingObjects) {
+                String word = o.toLowerCase(Locale.ROOT);
+                if (!objects.contains(word)) objects.add(word);
+            }
+            this.listingObjects = List.copyOf(objects);
+        }
+
+        private static Map<String, String> merge(Map<String, String> builtIn, Map<String, String> configured) {
+            if (configured.isEmpty()) return builtIn;
+            Map<String, String> out = new HashMap<>(builtIn);
+            out.putAll(configured);
+            return Map.copyOf(out);
+        }
+    }
+
+    private static final Map<String, DomainData> DATA = new ConcurrentHashMap<>();
+
+    static DomainData data(String domain) {
+        MappingRegistry.RewriteSettings settings = MappingRegistry.get().rewriteSettings(domain);
+        String key = domain == null ? "" : domain;
+        DomainData d = DATA.get(key);
+        if (d == null || d.source != settings) {
+            d = new DomainData(domain, settings);
+            DATA.put(key, d);
+        }
+        return d;
+    }
+
+    public static List<SqlRewriteRule> defaults() {
+        return List.of(
+                TABLE_ALIAS,
+                COLUMN_RENAME,
+                ENUM_MAPPING,
+                ENUM_MAPPING_IN,
+                BOOLEAN_LITERAL,
+                FINANCE_ENGLISH_ENUM,
+                DEFAULT_PROJECTION
+        );
+    }
+
+    /* ========================= 表 / 列名 ========================= */
+
+    /** mapping.yml 的 table_alias：模型写了别名表（不在 schema 里）时换成真实表名 */
+    public static final SqlRewriteRule TABLE_ALIAS = SqlRewriteRule.table("table-alias")
+            .when((t, ctx) -> t.getName() != null
+                    && SchemaCatalog.get().table(ctx.domain, t.getName()).isEmpty()
+                    && aliasTarget(ctx.domain, t.getName()) != null)
+            .apply((t, ctx) -> {
+                t.setName(aliasTarget(ctx.domain, t.getName()));
+                return true;
+            });
+
+    private static String aliasTarget(String domain, String table) {
+        String name = SqlRewriteContext.unquote(table);
+        for (Map.Entry<String, String> e : MappingRegistry.get().tableAliases(domain).entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * 高频写错的列名（原 SqlDeterministicFixer / SqlExceptionRepair），所有域共用，mapping 的 rewrite.column_rename 补充：
+     * 只在列所属表确实没有原列名、而有目标列名时才改，两个库 create_time / created_time 并存也不会改错。
+     */
+    private static final Map<String, String> COLUMN_RENAMES = Map.of(
+            "create_time", "created_time",
+            "created_time", "create_time",
+            "inception_date", "establish_date",
+            "establish_date", "inception_date",
+            "is_acitve", "is_active"
+    );
+
+    public static final SqlRewriteRule COLUMN_RENAME = SqlRewriteRule.expression("column-rename", Column.class)
+            .when((col, ctx) -> renameTarget(col, ctx) != null)
+            .then((col, ctx) -> {
+                col.setColumnName(renameTarget(col, ctx));
+                return col;
+            });
+
+    private static String renameTarget(Column col, SqlRewriteContext ctx) {
+        String name = col.getColumnName();
+        if (name == null) return null;
+        String target = data(ctx.domain).columnRenames.get(SqlRewriteContext.unquote(name));
+        if (target == null) return null;
+
+        SchemaCatalog.TableInfo ti = SchemaCatalog.get().table(ctx.domain, ctx.tableOf(col)).orElse(null);
+        if (ti == null || ti.hasColumn(SqlRewriteContext.unquote(name)) || !ti.hasColumn(target)) return null;
+        return target;
+    }
+
+    /* ========================= 枚举值 ========================= */
+
+    /** 列 = '自然语言值' -> mapping.yml 里的编码值（原 EnumValueNormalizer / EnumSqlRewriter） */
+    public static final SqlRewriteRule ENUM_MAPPING =
+            SqlRewriteRule.expression("enum-mapping", ComparisonOperator.class)
+                    .when((cmp, ctx) -> isEquality(cmp) && mappedLiteral(cmp, ctx) != null)
+                    .then((cmp, ctx) -> {
+                        Expression lit = mappedLiteral(cmp, ctx);
+                        if (cmp.getRightExpression() instanceof StringValue) cmp.setRightExpression(lit);
+                        else cmp.setLeftExpression(lit);
+                        return cmp;
+                    });
+
+    /** 列 IN ('a', 'b') 里逐个映射 */
+    public static final SqlRewriteRule ENUM_MAPPING_IN =
+            SqlRewriteRule.expression("enum-mapping-in", InExpression.class)
+                    .when((in, ctx) -> in.getLeftExpression() instanceof Column
+                            && in.getRightExpression() instanceof ExpressionList<?> list
+                            && anyMapped((Column) in.getLeftExpression(), list, ctx))
+                    .then((in, ctx) -> {
+                        Column col = (Column) in.getLeftExpression();
+                        ExpressionList<?> list = (ExpressionList<?>) in.getRightExpression();
+                        ExpressionList<Expression> out = new ExpressionList<>();
+                        for (Object o : list) {
+                            Expression e = (Expression) o;
+                            Expression lit = e instanceof StringValue sv ? literalFor(col, sv, ctx) : null;
+                            out.add(lit == null ? e : lit);
+                        }
+                        in.setRightExpression(list instanceof ParenthesedExpressionList<?>
+                                ? new ParenthesedExpressionList<>(out) : out);
+                        return in;
+                    });
+
+    private static boolean isEquality(ComparisonOperator cmp) {
+        return cmp instanceof EqualsTo || cmp instanceof NotEqualsTo;
+    }
+
+    private static Expression mappedLiteral(ComparisonOperator cmp, SqlRewriteContext ctx) {
+        if (cmp.getLeftExpression() instanceof Column col && cmp.getRightExpression() instanceof StringValue sv) {
+            return literalFor(col, sv, ctx);
+        }
+        if (cmp.getRightExpression() instanceof Column col && cmp.getLeftExpression() instanceof StringValue sv) {
+            return literalFor(col, sv, ctx);
+        }
+        return null;
+    }
+
+    private static boolean anyMapped(Column col, ExpressionList<?> list, SqlRewriteContext ctx) {
+        for (Object o : list) {
+            if (o instanceof StringValue sv && literalFor(col, sv, ctx) != null) return true;
+        }
+        return false;
+    }
+
+    /** 映射后的字面量；没有映射或映射结果与原值相同返回 null */
+    private static Expression literalFor(Column col, StringValue sv, SqlRewriteContext ctx) {
+        String raw = sv.getValue();
+        String mapped = mapValue(col, raw, ctx);
+        if (mapped == null || mapped.equals(raw)) return null;
+        return render(mapped, columnType(col, ctx));
+    }
+
+    /**
+     * 先按解析出的表查 table.col；列没写表名、又解析不出表时在该域所有含此列的表里找
+     * （原 EnumSqlRewriter 把 gender 固定查 patient_master_index.gender）。
+     */
+    private static String mapValue(Column col, String raw, SqlRewriteContext ctx) {
+        String name = SqlRewriteContext.unquote(col.getColumnName());
+        MappingRegistry registry = MappingRegistry.get();
+
+        String table = ctx.tableOf(col);
+        if (table != null) {
+            Optional<String> v = registry.mapValue(ctx.domain, table + "." + name, raw);
+            if (v.isPresent()) return v.get();
+        }
+        for (SchemaCatalog.TableInfo ti : SchemaCatalog.get().tables(ctx.domain)) {
+            if (ti.name.equals(table) || !ti.hasColumn(name)) continue;
+            Optional<String> v = registry.mapValue(ctx.domain, ti.name + "." + name, raw);
+            if (v.isPresent()) return v.get();
+        }
+        return registry.mapValue(ctx.domain, name, raw).orElse(null);
+    }
+
+    private static Class<?> columnType(Column col, SqlRewriteContext ctx) {
+        String name = SqlRewriteContext.unquote(col.getColumnName());
+        return SchemaCatalog.get().table(ctx.domain, ctx.tableOf(col))
+                .map(ti -> ti.columns.get(name))
+                .orElse(null);
+    }
+
+    /** 布尔列 -> TRUE/FALSE，数值列 -> 数字，其它一律字符串（PG 下 varchar = 1 会报错，不能随便去引号） */
+    private static Expression render(String value, Class<?> type) {
+        String v = value.trim();
+        if ((type == Boolean.class || type == boolean.class)
+                && (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("false"))) {
+            return keyword(v.toUpperCase(Locale.ROOT));
+        }
+        if (type != null && Number.class.isAssignableFrom(type) && v.matches("[-+]?\\d+(\\.\\d+)?")) {
+            return v.contains(".") ? new DoubleValue(v) : new LongValue(v);
+        }
+        return new StringValue(v);
+    }
+
+    /* ========================= 布尔值 ========================= */
+
+    private static final Set<String> TRUE_WORDS = Set.of("y", "yes", "true", "ture", "1");
+    private static final Set<String> FALSE_WORDS = Set.of("n", "no", "false", "0");
+
+    /** 布尔列 = 'Y'/'N'/'1'/'0'/1/0/'true' -> TRUE/FALSE（原 SqlValueNormalizer，只认布尔列） */
+    public static final SqlRewriteRule BOOLEAN_LITERAL =
+            SqlRewriteRule.expression("boolean-literal", ComparisonOperator.class)
+                    .when((cmp, ctx) -> isEquality(cmp) && booleanSide(cmp, ctx) != 0)
+                    .then((cmp, ctx) -> {
+                        int side = booleanSide(cmp, ctx);
+                        Expression lit = side > 0 ? cmp.getRightExpression() : cmp.getLeftExpression();
+                        Expression out = keyword(booleanWord(lit) ? "TRUE" : "FALSE");
+                        if (side > 0) cmp.setRightExpression(out);
+                        else cmp.setLeftExpression(out);
+                        return cmp;
+                    });
+
+    /** 1：右边是要改的字面量；-1：左边；0：不匹配 */
+    private static int booleanSide(ComparisonOperator cmp, SqlRewriteContext ctx) {
+        if (isBooleanColumn(cmp.getLeftExpression(), ctx) && booleanLiteral(cmp.getRightExpression())) return 1;
+        if (isBooleanColumn(cmp.getRightExpression(), ctx) && booleanLiteral(cmp.getLeftExpression())) return -1;
+        return 0;
+    }
+
+    private static boolean isBooleanColumn(Expression e, SqlRewriteContext ctx) {
+        if (!(e instanceof Column col)) return false;
+        Class<?> type = columnType(col, ctx);
+        if (type != null) return type == Boolean.class || type == boolean.class;
+        return SchemaCatalog.get().isBooleanColumn(ctx.domain, col.getColumnName());
+    }
+
+    private static boolean booleanLiteral(Expression e) {
+        String s = literalText(e);
+        return s != null && (TRUE_WORDS.contains(s) || FALSE_WORDS.contains(s));
+    }
+
+    private static boolean booleanWord(Expression e) {
+        return TRUE_WORDS.contains(literalText(e));
+    }
+
+    private static String literalText(Expression e) {
+        if (e instanceof StringValue sv) return sv.getValue().trim().toLowerCase(Locale.ROOT);
+        if (e instanceof LongValue lv) return lv.getStringValue();
+        return null;
+    }
+
+    /* ========================= 英文枚举兜底 ========================= */
+
+    /** 内置只有 FINANCE 的；其它域在 mapping 的 rewrite.english_values 里配 */
+    private static final Map<String, Map<String, String>> ENGLISH_VALUES = Map.of(
+            "FINANCE", Map.of(
+                    "bank", "银行",
+                    "broker", "券商",
+                    "securities", "券商",
+                    "insurance", "保险",
+                    "sell", "卖出",
+                    "buy", "买入",
+                    "confirmed", "已成"
+            )
+    );
+
+    /** 原 EnumValueNormalizer 的英文 -> 中文兜底；优先级低于 enum-mapping，只对字符串列 */
+    public static final SqlRewriteRule FINANCE_ENGLISH_ENUM =
+            SqlRewriteRule.expression("finance-english-enum", EqualsTo.class)
+                    .when((eq, ctx) -> eq.getLeftExpression() instanceof Column col
+                            && eq.getRightExpression() instanceof StringValue sv
+                            && data(ctx.domain).englishValues.containsKey(sv.getValue().trim().toLowerCase(Locale.ROOT))
+                            && isStringColumn(col, ctx))
+                    .then((eq, ctx) -> {
+                        StringValue sv = (StringValue) eq.getRightExpression();
+                        eq.setRightExpression(new StringValue(
+                                data(ctx.domain).englishValues.get(sv.getValue().trim().toLowerCase(Locale.ROOT))));
+                        return eq;
+                    });
+
+    private static boolean isStringColumn(Column col, SqlRewriteContext ctx) {
+        Class<?> type = columnType(col, ctx);
+        return type == null || type == String.class;
+    }
+
+    /* ========================= 默认投影 ========================= */
+
+    private static final Map<String, Map<String, String>> DEFAULT_SELECT = Map.of(
+            "FINANCE", Map.of(
+                    "clients", "client_id, client_name, risk_level, total_assets",
+                    "products", "product_id, product_name, product_type, risk_rating, currency",
+                    "portfolios", "portfolio_id, portfolio_code, client_id, portfolio_type, current_value, contribution_amount",
+                    "transactions", "transaction_id, portfolio_id, product_id, trade_date, transaction_type, transaction_amount"
+            ),
+            "HEALTHCARE", Map.of(
+                    "patient_master_index", "patient_id, patient_name, gender, age",
+                    "medical_encounters", "encounter_id, patient_id, department_id, encounter_date",
+                    "departments_wards", "dept_ward_id, name, parent_id",
+                    "medical_orders", "order_id, encounter_id, order_type, item_name, start_datetime",
+                    "billing_transactions", "transaction_id, patient_id, net_amount, transaction_date"
+            )
+    );
+
+    private static final Map<String, List<String>> LISTING_OBJECTS = Map.of(
+            "FINANCE", List.of("客户", "产品", "组合", "投资组合", "交易"),
+            "HEALTHCARE", List.of("患者", "就诊", "科室", "医嘱", "账单")
+    );
+
+    private static final String[] LISTING_VERBS = {"查看", "查询", "列出", "显示", "获取", "找出"};
+
+    private static final Set<String> AGGREGATES = Set.of("count", "sum", "avg", "min", "max");
+
+    /**
+     * 列表类问题（“查看/列出 + 客户/患者...”）的单表 SELECT * 或单列查询，投影换成该表的默认列
+     * （原 Finance/HealthcareProjectionFixer）。只动整条语句的最外层；有 JOIN/GROUP BY/DISTINCT/聚合的不动。
+     * 默认列要在 SchemaCatalog 里对得上（表已知、列都在），配错了不改写，不会把能跑的 SQL 改成跑不了的。
+     */
+    public static final SqlRewriteRule DEFAULT_PROJECTION = SqlRewriteRule.select("default-projection")
+            .when((ps, ctx) -> ctx.isRoot()
+                    && isListingQuestion(ctx)
+                    && ps.getFromItem() instanceof Table
+                    && (ps.getJoins() == null || ps.getJoins().isEmpty())
+                    && ps.getGroupBy() == null
+                    && ps.getDistinct() == null
+                    && ps.getSelectItems() != null && ps.getSelectItems().size() == 1
+                    && !hasAggregate(ps.getSelectItems().get(0).getExpression())
+                    && defaultColumns(ps, ctx) != null)
+            .apply((ps, ctx) -> {
+                List<SelectItem<?>> items = new ArrayList<>();
+                for (String c : defaultColumns(ps, ctx).split(",\\s*")) items.add(SelectItem.from(new Column(c)));
+                ps.setSelectItems(items);
+                return true;
+            });
+
+    private static String defaultColumns(PlainSelect ps, SqlRewriteContext ctx) {
+        Table t = (Table) ps.getFromItem();
+        String table = SqlRewriteContext.unquote(t.getName());
+        String columns = data(ctx.domain).defaultProjections.get(table);
+        if (columns == null) return null;
+        SchemaCatalog.TableInfo ti = SchemaCatalog.get().table(ctx.domain, table).orElse(null);
+        if (ti == null) return null;
+        for (String c : columns.split(",\\s*")) {
+            if (!ti.hasColumn(c)) return null;
+        }
+        return columns;
+    }
+
+    private static boolean isListingQuestion(SqlRewriteContext ctx) {
+        if (ctx.problem == null) return false;
+        String p = ctx.problem.toLowerCase(Locale.ROOT);
+        return containsAny(p, LISTING_VERBS) && containsAny(p, data(ctx.domain).listingObjects);
+    }
+
+    private static boolean hasAggregate(Expression e) {
+        boolean[] found = {false};
+        SqlAstWalker.transform(e, x -> {
+            if (x instanceof AnalyticExpression
+                    || (x instanceof Function f && f.getName() != null
+                    && AGGREGATES.contains(f.getName().toLowerCase(Locale.ROOT)))) {
+                found[0] = true;
+            }
+            return x;
+        });
+        return found[0];
+    }
+
+    private static boolean containsAny(String text, String[] keys) {
+        return containsAny(text, Arrays.asList(keys));
+    }
+
+    private static boolean containsAny(String text, List<String> keys) {
+        for (String k : keys) {
+            if (text.contains(k)) return true;
+        }
+        return false;
+    }
+
+    /* ========================= 工具 ========================= */
+
+    private static Expression keyword(String text) {
+        try {
+            return CCJSqlParserUtil.parseExpression(text);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无法构造字面量: " + text, e);
+        }
+    }
+}
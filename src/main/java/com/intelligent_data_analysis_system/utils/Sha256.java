@@ -0,0 +1,35 @@
+package com.intelligent_data_analysis_system.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 摘要：结果缓存键、SQL 指纹、结果集指纹共用。
+ * JDK 必带 SHA-256，拿不到说明运行环境坏了，直接抛 IllegalStateException ——
+ * 不降级成 hashCode 之类会碰撞的哈希（缓存键碰撞就是把别的查询的结果返回给用户）。
+ */
+public final class Sha256 {
+
+    private Sha256() {}
+
+    /** 新的摘要器（MessageDigest 不是线程安全的，每次用新的） */
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /** UTF-8 文本的摘要，完整 64 位十六进制 */
+    public static String hex(String s) {
+        return HexFormat.of().formatHex(digest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** 摘要的前 bytes 字节转十六进制（指纹用 16 字节就够） */
+    public static String hex(MessageDigest md, int bytes) {
+        return HexFormat.of().formatHex(md.digest(), 0, bytes);
+    }
+}
@@ -0,0 +1,198 @@
+package com.intelligent_data_analysis_system.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 同键请求合并：同一个 key 同时只执行一次，期间到达的相同请求等待这次执行、共享结果或异常。
+ *
+ * - 执行放在内部线程池里，不占调用线程：发起者（第一个调用方）走掉不影响其它等待者拿结果
+ * - 每个等待者各自有等待上限；等待超时 / 被中断就退出，最后一个等待者退出时取消这次执行
+ *   （调用 Flight.onCancel 注册的钩子，比如 Statement.cancel），不让没人要的查询继续占连接
+ * - 执行结束（成功或失败）立刻移出，之后的请求重新执行（结果复用交给缓存）
+ * - 执行体由发起者提交，但属于所有等待者：不要在里面沿用发起者的截止时间 / 取消信号，
+ *   否则后加入、预算更长的等待者会跟着发起者一起失败
+ */
+public final class SingleFlight<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final String name;
+    private final ConcurrentHashMap<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    public SingleFlight(String name) {
+        this(name, defaultExecutor(name));
+    }
+
+    /**
+     * 执行体跑在 executor 上（虚拟线程模式下传每任务一个虚拟线程的执行器）。
+     * 执行线程上没有调用方的 ExecutionContext，执行体自己用 ExecutionContext.call 绑定。
+     */
+    public SingleFlight(String name, ExecutorService executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    private static ExecutorService defaultExecutor(String name) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 一次执行的取消句柄：执行体在拿到可取消的资源后注册钩子 */
+    public static final class Flight {
+        private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        /** 注册取消钩子（可多个：分片并发执行时每条语句一个）；已经取消的话立刻执行 */
+        public void onCancel(Runnable hook) {
+            cancelHooks.add(hook);
+            if (cancelled) runHook(hook);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** 执行所有钩子；之后注册的钩子立刻执行。单独使用（不经 SingleFlight 合并）时由持有方调用 */
+        public void cancel() {
+            cancelled = true;
+            for (Runnable hook : cancelHooks) runHook(hook);
+        }
+
+        private static void runHook(Runnable hook) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                logger.debug("[single-flight] cancel hook failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static final class Call<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final Flight flight = new Flight();
+        /** 当前等待者数；abandoned 之后不再接收新的等待者 */
+        int waiters;
+        boolean abandoned;
+    }
+
+    /**
+     * 执行或加入正在进行的同键执行。
+     *
+     * @param maxWaitMs 本调用方最多等多久，&lt;= 0 不限
+     * @throws TimeoutException     等待超时（执行本身不一定失败，其它等待者可能还在等）
+     * @throws InterruptedException 调用线程被中断
+     *                              执行体抛出的 RuntimeException / Error 原样抛出，受检异常包成 CompletionException
+     */
+    public V execute(K key, long maxWaitMs, Function<Flight, V> work) throws TimeoutException, InterruptedException {
+        return execute(key, maxWaitMs, null, work);
+    }
+
+    /**
+     * 同上，另外带一个放弃信号：abort 先于结果完成时本调用方离开（和等待超时一样处理），抛 CancellationException。
+     * 用于客户端断开 / 按查询 id 取消，不需要中断调用线程。
+     */
+    public V execute(K key, long maxWaitMs, CompletableFuture<?> abort, Function<Flight, V> work)
+            throws TimeoutException, InterruptedException {
+        Call<V> call;
+        boolean leader;
+        while (true) {
+            Call<V> created = new Call<>();
+            Call<V> existing = inFlight.putIfAbsent(key, created);
+            call = existing == null ? created : existing;
+            leader = existing == null;
+            synchronized (call) {
+                if (!call.abandoned) {
+                    call.waiters++;
+                    break;
+                }
+            }
+            // 刚被所有人放弃、还没移出的：换一个新的
+            inFlight.remove(key, call);
+        }
+
+        if (leader) {
+            executions.incrementAndGet();
+            Call<V> c = call;
+            executor.execute(() -> {
+                try {
+                    c.future.complete(work.apply(c.flight));
+                } catch (Throwable t) {
+                    c.future.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, c);
+                }
+            });
+        } else {
+            shared.incrementAndGet();
+            logger.debug("[{}] joined in-flight execution for {}", name, key);
+        }
+
+        CompletableFuture<?> waitOn = abort == null ? call.future : CompletableFuture.anyOf(call.future, abort);
+        try {
+            if (maxWaitMs > 0) waitOn.get(maxWaitMs, TimeUnit.MILLISECONDS);
+            else waitOn.get();
+            if (!call.future.isDone()) {
+                leave(key, call);
+                throw new CancellationException("[" + name + "] waiter aborted");
+            }
+            return call.future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new CompletionException(cause);
+        } catch (TimeoutException | InterruptedException e) {
+            leave(key, call);
+            throw e;
+        }
+    }
+
+    private void leave(K key, Call<V> call) {
+        synchronized (call) {
+            call.waiters--;
+            if (call.waiters > 0 || call.future.isDone()) return;
+            call.abandoned = true;
+        }
+        inFlight.remove(key, call);
+        abandoned.incrementAndGet();
+        logger.info("[{}] all waiters left, cancelling execution for {}", name, key);
+        call.flight.cancel();
+        call.future.cancel(false);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public long executions() {
+        return executions.get();
+    }
+
+    public long shared() {
+        return shared.get();
+    }
+
+    public long abandoned() {
+        return abandoned.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -2,9 +2,11 @@ package com.intelligent_data_analysis_system.utils;
 
 import com.intelligent_data_analysis_system.infrastructure.config.properties.RoutingProperties;
 import com.intelligent_data_analysis_system.service.SqlSelfCheckService;
-import com.intelligent_data_analysis_system.utils.Normalizer.EnumValueNormalizer;
-import com.intelligent_data_analysis_system.utils.Normalizer.SqlValueNormalizer;
 import com.intelligent_data_analysis_system.utils.Normalizer.YearMonthNormalizer;
+import com.intelligent_data_analysis_system.utils.Rewriter.SargableDateRewriter;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteContext;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlRewriteEngine;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
 
 public class SqlPatchPipeline {
 
@@ -21,9 +23,8 @@ public class SqlPatchPipeline {
         RoutingProperties routingProperties = new RoutingProperties();
         String dbms = routingProperties.getDbms();
 
-        // 1️⃣ 低风险：值归一化（已存在）
-        out = SqlValueNormalizer.normalize(out);
-        out = EnumValueNormalizer.normalize(domain, out);
+        // 1️⃣ 低风险：声明式改写规则（列名纠错 / 枚举值 / 布尔值 / 领域投影兜底），一次 AST 遍历
+        out = SqlRewriteEngine.get().rewrite(out, new SqlRewriteContext(domain, SqlDialect.of(dbms), problem));
         out = YearMonthNormalizer.apply(dbms, domain, problem, out, null);
 
 
@@ -38,6 +39,9 @@ public class SqlPatchPipeline {
             }
         }
 
+        // 3️⃣ 日期谓词改成半开区间（YEAR(col)=... -> col >= ... AND col < ...），保证能走索引
+        out = SargableDateRewriter.rewrite(out);
+
         return out;
     }
 }
@@ -0,0 +1,54 @@
+package com.intelligent_data_analysis_system.utils.Transpiler;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 关系库方言。app.routing.dbms 的各种写法（mysql / pg / pgsql / postgres / postgresql）统一到这里。
+ */
+public enum SqlDialect {
+    MYSQL("MySQL"),
+    POSTGRESQL("PostgreSQL");
+
+    /** 能直接拼进 SQL 的表名 / 列名：字母数字下划线，不带 schema、不带引号 */
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*");
+
+    private final String displayName;
+
+    SqlDialect(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /** 给 prompt 用的名字：MySQL / PostgreSQL */
+    public String displayName() {
+        return displayName;
+    }
+
+    /**
+     * 内部拼的 SQL（MIN / MAX 探测等）里引用表名 / 列名：先校验是普通标识符，再按方言加引号（MySQL 反引号，PG 双引号）。
+     *
+     * @throws IllegalArgumentException 不是普通标识符
+     */
+    public String quoteIdentifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("非法标识符: " + name);
+        }
+        return this == MYSQL ? "`" + name + "`" : "\"" + name + "\"";
+    }
+
+    /** 解析 dbms 配置；空或 mongodb 等非关系库返回 null */
+    public static SqlDialect of(String dbms) {
+        if (dbms == null || dbms.isBlank()) return null;
+        return switch (dbms.trim().toLowerCase(Locale.ROOT)) {
+            case "mysql" -> MYSQL;
+            case "pg", "pgsql", "postgres", "postgresql" -> POSTGRESQL;
+            default -> null;
+        };
+    }
+
+    /** 同 of，解析不了时用 fallback */
+    public static SqlDialect of(String dbms, SqlDialect fallback) {
+        SqlDialect d = of(dbms);
+        return d == null ? fallback : d;
+    }
+}
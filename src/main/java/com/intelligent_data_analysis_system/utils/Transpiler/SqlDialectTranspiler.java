@@ -0,0 +1,749 @@
+package com.intelligent_data_analysis_system.utils.Transpiler;
+
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Rewriter.SqlAstWalker;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.arithmetic.Concat;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.expression.operators.relational.NotEqualsTo;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * MySQL <-> PostgreSQL 方言转译（AST 级，JSqlParser 4.9）。
+ *
+ * 同一条 SQL（LLM 按某一方言生成的、或缓存里的）直接转成另一个后端能跑的写法，不用再问一次模型。
+ * 覆盖：
+ * - 日期函数：YEAR/MONTH/DAY/... <-> EXTRACT、DATE(x) -> CAST(x AS DATE)、DATE_FORMAT <-> TO_CHAR（格式串逐项换算）、
+ *   DATEDIFF、DATE_ADD/DATE_SUB、INTERVAL 写法、DATE_PART / DATE_TRUNC -> MySQL、CURDATE() -> CURRENT_DATE
+ * - 字符串：PG 的 a || b -> MySQL CONCAT(a, b)（MySQL 默认 || 是 OR）、GROUP_CONCAT <-> STRING_AGG、
+ *   LIKE/ILIKE（MySQL 默认排序规则大小写不敏感，到 PG 用 ILIKE 保持语义）
+ * - 空值函数：IFNULL / NVL -> COALESCE（两边都支持）
+ * - 条件：IF(c, a, b) -> CASE WHEN
+ * - 类型转换：x::type -> CAST(x AS type)，两边类型名互换（SIGNED/BIGINT、CHAR/TEXT、DATETIME/TIMESTAMP ...）
+ * - 分页：LIMIT o, n -> LIMIT n OFFSET o；FETCH FIRST n ROWS ONLY -> LIMIT n；MySQL 里单独的 OFFSET 补 LIMIT
+ * - 布尔：PG 下 布尔列 = 1/0 -> = TRUE/FALSE（布尔列来自 SchemaCatalog）
+ * - 引号：反引号 <-> 双引号；MySQL 默认模式下双引号是字符串，到 PG 变单引号；PG 不认 AS '别名'
+ * - 窗口/聚合：MySQL 没有 FILTER (WHERE ...) 和 NULLS FIRST/LAST，分别改成 CASE WHEN 和 "expr IS NULL" 排序键
+ *
+ * 解析失败、或某个节点改不了时原样保留（该节点跳过，其余照常转），不抛异常。
+ * 两边默认 NULL 排序不同（MySQL ASC 时 NULL 在前，PG 在后）；没写 NULLS FIRST/LAST 的不补，避免每条 ORDER BY 都变样。
+ * 整数除法、字符串排序规则同样不补：转译只保证语句能在目标引擎上跑，要求两边结果一致的（引擎竞速）自己先筛，见 EngineRacer.divergence。
+ */
+public final class SqlDialectTranspiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlDialectTranspiler.class);
+
+    private SqlDialectTranspiler() {}
+
+    /** 转译上下文 */
+    private static class Ctx {
+        final SqlDialect from;
+        final SqlDialect to;
+        final String domain;
+
+        Ctx(SqlDialect from, SqlDialect to, String domain) {
+            this.from = from;
+            this.to = to;
+            this.domain = domain;
+        }
+
+        boolean toPg() {
+            return to == SqlDialect.POSTGRESQL;
+        }
+
+        boolean toMysql() {
+            return to == SqlDialect.MYSQL;
+        }
+    }
+
+    public static String transpile(String sql, SqlDialect from, SqlDialect to) {
+        return transpile(sql, from, to, null);
+    }
+
+    /**
+     * @param from   源方言；null 表示未知：只做“往目标方言归一”的改写，双引号一律当标识符
+     * @param to     目标方言；null 或与 from 相同时原样返回
+     * @param domain FINANCE / HEALTHCARE，用来识别布尔列；可空（在所有域里找）
+     */
+    public static String transpile(String sql, SqlDialect from, SqlDialect to, String domain) {
+        if (sql == null || sql.isBlank() || to == null || from == to) return sql;
+
+        try {
+            String trimmed = sql.trim();
+            if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+
+            Statement st = CCJSqlParserUtil.parse(trimmed);
+            if (!(st instanceof Select select)) return sql;
+
+            Ctx c = new Ctx(from, to, domain);
+            SqlAstWalker.forEachPlainSelect(select, ps -> rewritePlainSelect(ps, c));
+            forEachSetOperation(select, sol -> rewriteSetOperation(sol, c));
+
+            String out = select.toString();
+            if (!out.equals(trimmed)) {
+                logger.debug("[transpiler] {} -> {}: {} => {}", from, to, trimmed, out);
+            }
+            return out;
+        } catch (Exception e) {
+            logger.debug("[transpiler] skip, parse failed: {}", e.getMessage());
+            return sql;
+        }
+    }
+
+    /* ======================== SELECT 各部分 ======================== */
+
+    @SuppressWarnings("unchecked")
+    private static void rewritePlainSelect(PlainSelect ps, Ctx c) {
+        rewriteFromItem(ps.getFromItem(), c);
+        if (ps.getJoins() != null) {
+            for (Join j : ps.getJoins()) rewriteJoin(j, c);
+        }
+
+        if (ps.getSelectItems() != null) {
+            for (SelectItem<?> si : ps.getSelectItems()) {
+                ((SelectItem<Expression>) si).setExpression(expr(si.getExpression(), c));
+                rewriteAlias(si.getAlias(), c);
+            }
+        }
+
+        ps.setWhere(expr(ps.getWhere(), c));
+        ps.setHaving(expr(ps.getHaving(), c));
+
+        if (ps.getGroupBy() != null && ps.getGroupBy().getGroupByExpressionList() != null) {
+            expr(ps.getGroupBy().getGroupByExpressionList(), c);
+        }
+
+        ps.setOrderByElements(rewriteOrderBy(ps.getOrderByElements(), c, true));
+
+        rewritePaging(ps.getLimit(), ps.getOffset(), ps.getFetch(),
+                ps::setLimit, ps::setOffset, ps::setFetch, c);
+    }
+
+    private static void rewriteSetOperation(SetOperationList sol, Ctx c) {
+        sol.setOrderByElements(rewriteOrderBy(sol.getOrderByElements(), c, true));
+        rewritePaging(sol.getLimit(), sol.getOffset(), sol.getFetch(),
+                sol::setLimit, sol::setOffset, sol::setFetch, c);
+    }
+
+    /** 语句里所有 UNION/INTERSECT/EXCEPT（顶层、WITH、FROM 子查询），它们自己的 ORDER BY / LIMIT 也要转 */
+    private static void forEachSetOperation(Select select, Consumer<SetOperationList> fn) {
+        if (select == null) return;
+        if (select.getWithItemsList() != null) {
+            for (WithItem wi : select.getWithItemsList()) forEachSetOperation(wi.getSelect(), fn);
+        }
+        if (select instanceof SetOperationList sol) {
+            fn.accept(sol);
+            if (sol.getSelects() != null) {
+                for (Select s : sol.getSelects()) forEachSetOperation(s, fn);
+            }
+        } else if (select instanceof ParenthesedSelect p) {
+            forEachSetOperation(p.getSelect(), fn);
+        } else if (select instanceof PlainSelect ps) {
+            if (ps.getFromItem() instanceof Select s) forEachSetOperation(s, fn);
+            if (ps.getJoins() != null) {
+                for (Join j : ps.getJoins()) {
+                    if (j.getRightItem() instanceof Select s) forEachSetOperation(s, fn);
+                }
+            }
+        }
+    }
+
+    private static void rewriteFromItem(FromItem item, Ctx c) {
+        if (item == null) return;
+        if (item instanceof Table t) {
+            rewriteTable(t, c);
+        } else if (item instanceof ParenthesedFromItem pf) {
+            rewriteFromItem(pf.getFromItem(), c);
+            if (pf.getJoins() != null) {
+                for (Join j : pf.getJoins()) rewriteJoin(j, c);
+            }
+        }
+        rewriteAlias(item.getAlias(), c);
+    }
+
+    private static void rewriteJoin(Join j, Ctx c) {
+        rewriteFromItem(j.getRightItem(), c);
+        if (j.getOnExpressions() != null && !j.getOnExpressions().isEmpty()) {
+            List<Expression> ons = new ArrayList<>();
+            for (Expression on : j.getOnExpressions()) ons.add(expr(on, c));
+            j.setOnExpressions(ons);
+        }
+    }
+
+    private static void rewriteTable(Table t, Ctx c) {
+        if (t.getName() != null) t.setName(requote(t.getName(), c));
+        if (t.getSchemaName() != null) t.setSchemaName(requote(t.getSchemaName(), c));
+    }
+
+    private static void rewriteAlias(Alias alias, Ctx c) {
+        if (alias == null || alias.getName() == null) return;
+        String name = alias.getName();
+        // MySQL 允许 AS '别名'，PG 不行
+        if (c.toPg() && name.length() >= 2 && name.startsWith("'") && name.endsWith("'")) {
+            alias.setName("\"" + name.substring(1, name.length() - 1).replace("\"", "") + "\"");
+            return;
+        }
+        alias.setName(requote(name, c));
+    }
+
+    /** 反引号 <-> 双引号 */
+    private static String requote(String ident, Ctx c) {
+        if (ident == null || ident.length() < 2) return ident;
+        if (c.toPg() && ident.startsWith("`") && ident.endsWith("`")) {
+            return "\"" + ident.substring(1, ident.length() - 1) + "\"";
+        }
+        if (c.toMysql() && ident.startsWith("\"") && ident.endsWith("\"")) {
+            return "`" + ident.substring(1, ident.length() - 1) + "`";
+        }
+        return ident;
+    }
+
+    /* ======================== ORDER BY / 分页 ======================== */
+
+    /**
+     * 转 ORDER BY：表达式照常转；目标是 MySQL 时把 NULLS FIRST/LAST 换成前置的 "expr IS NULL" 排序键。
+     * @param transformExpressions 窗口函数里的 ORDER BY 已经被 walker 转过，传 false
+     */
+    private static List<OrderByElement> rewriteOrderBy(List<OrderByElement> list, Ctx c, boolean transformExpressions) {
+        if (list == null || list.isEmpty()) return list;
+
+        List<OrderByElement> out = new ArrayList<>();
+        for (OrderByElement o : list) {
+            if (transformExpressions) o.setExpression(expr(o.getExpression(), c));
+
+            if (c.toMysql() && o.getNullOrdering() != null) {
+                boolean nullsFirst = o.getNullOrdering() == OrderByElement.NullOrdering.NULLS_FIRST;
+                // MySQL：ASC 时 NULL 天然在前，DESC 时在后；一致就只删掉修饰，不一致才加排序键
+                // ORDER BY 2 这种序号没法套 IS NULL，只能删修饰
+                if (nullsFirst != o.isAsc() && !(o.getExpression() instanceof LongValue)) {
+                    IsNullExpression isNull = new IsNullExpression();
+                    isNull.setLeftExpression(o.getExpression());
+                    OrderByElement key = new OrderByElement();
+                    key.setExpression(isNull);
+                    key.setAsc(!nullsFirst);
+                    out.add(key);
+                }
+                o.setNullOrdering(null);
+            }
+            out.add(o);
+        }
+        return out;
+    }
+
+    private static final Pattern FETCH_ROWS =
+            Pattern.compile("(?i)FETCH\\s+(?:FIRST|NEXT)\\s+(\\d+)\\s+ROWS?\\s+ONLY");
+
+    /** MySQL 里 OFFSET 必须跟在 LIMIT 后面，没有 LIMIT 时用官方文档推荐的最大值 */
+    private static final String MYSQL_NO_LIMIT = "18446744073709551615";
+
+    private static void rewritePaging(Limit limit, Offset offset, Fetch fetch,
+                                      Consumer<Limit> setLimit, Consumer<Offset> setOffset, Consumer<Fetch> setFetch,
+                                      Ctx c) {
+        if (c.toPg()) {
+            // LIMIT o, n -> LIMIT n OFFSET o
+            if (limit != null && limit.getOffset() != null && offset == null) {
+                Offset off = new Offset();
+                off.setOffset(limit.getOffset());
+                limit.setOffset(null);
+                setOffset.accept(off);
+            }
+            return;
+        }
+
+        // -> MySQL：FETCH FIRST n ROWS ONLY -> LIMIT n
+        if (fetch != null && limit == null) {
+            Matcher m = FETCH_ROWS.matcher(fetch.toString());
+            if (m.find()) {
+                limit = new Limit();
+                limit.setRowCount(new LongValue(m.group(1)));
+                setLimit.accept(limit);
+                setFetch.accept(null);
+            }
+        }
+
+        if (offset != null && offset.getOffset() != null) {
+            // 去掉 PG 的 OFFSET n ROWS 里的 ROWS
+            Offset off = new Offset();
+            off.setOffset(offset.getOffset());
+            setOffset.accept(off);
+            if (limit == null) {
+                Limit all = new Limit();
+                all.setRowCount(new LongValue(MYSQL_NO_LIMIT));
+                setLimit.accept(all);
+            }
+        }
+    }
+
+    /* ======================== 表达式 ======================== */
+
+    private static Expression expr(Expression e, Ctx c) {
+        if (e == null) return null;
+        return SqlAstWalker.transform(e, node -> rewriteNode(node, c));
+    }
+
+    private static Expression rewriteNode(Expression e, Ctx c) {
+        try {
+            if (e instanceof Column col) return rewriteColumn(col, c);
+            if (e instanceof Function f) return rewriteFunction(f, c);
+            if (e instanceof MySQLGroupConcat gc) return rewriteGroupConcat(gc, c);
+            if (e instanceof Concat cc) return rewriteConcat(cc, c);
+            if (e instanceof CastExpression cast) return rewriteCast(cast, c);
+            if (e instanceof LikeExpression like) return rewriteLike(like, c);
+            if (e instanceof IntervalExpression iv) return rewriteInterval(iv, c);
+            if (e instanceof AnalyticExpression a) return rewriteAnalytic(a, c);
+            if (e instanceof EqualsTo || e instanceof NotEqualsTo) return rewriteBooleanCompare((BinaryExpression) e, c);
+        } catch (Exception ex) {
+            logger.debug("[transpiler] keep node as is: {} ({})", e, ex.getMessage());
+        }
+        return e;
+    }
+
+    private static Expression rewriteColumn(Column col, Ctx c) {
+        String name = col.getColumnName();
+        if (name == null) return col;
+
+        // MySQL 默认（非 ANSI_QUOTES）下 "abc" 是字符串字面量
+        if (c.from == SqlDialect.MYSQL && c.toPg() && col.getTable() == null
+                && name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+            return new StringValue(name.substring(1, name.length() - 1).replace("'", "''"));
+        }
+
+        col.setColumnName(requote(name, c));
+        if (col.getTable() != null) rewriteTable(col.getTable(), c);
+        return col;
+    }
+
+    private static final Set<String> DATE_PARTS =
+            Set.of("YEAR", "QUARTER", "MONTH", "DAY", "HOUR", "MINUTE", "SECOND");
+
+    private static Expression rewriteFunction(Function f, Ctx c) throws Exception {
+        String name = f.getName() == null ? "" : f.getName().trim().toUpperCase(Locale.ROOT);
+        List<Expression> args = args(f);
+
+        // 两边通用：IFNULL/NVL -> COALESCE
+        if ((name.equals("IFNULL") || name.equals("NVL")) && args.size() == 2) {
+            f.setName("COALESCE");
+            return f;
+        }
+
+        return c.toPg() ? functionToPg(f, name, args) : functionToMysql(f, name, args);
+    }
+
+    private static Expression functionToPg(Function f, String name, List<Expression> args) throws Exception {
+        String unit = name.equals("DAYOFMONTH") ? "DAY" : name;
+        if (DATE_PARTS.contains(unit) && args.size() == 1) {
+            return parse("EXTRACT(" + unit + " FROM " + args.get(0) + ")");
+        }
+
+        switch (name) {
+            case "DATE":
+                if (args.size() == 1) return parse("CAST(" + args.get(0) + " AS DATE)");
+                break;
+            case "CURDATE":
+                if (args.isEmpty()) return parse("CURRENT_DATE");
+                break;
+            case "DATE_FORMAT": {
+                String fmt = args.size() == 2 ? stringArg(args.get(1)) : null;
+                String pg = fmt == null ? null : mysqlFormatToPg(fmt);
+                if (pg != null) return parse("TO_CHAR(" + args.get(0) + ", " + quote(pg) + ")");
+                break;
+            }
+            case "DATEDIFF":
+                if (args.size() == 2) {
+                    return parse("(CAST(" + args.get(0) + " AS DATE) - CAST(" + args.get(1) + " AS DATE))");
+                }
+                break;
+            case "DATE_ADD", "ADDDATE", "DATE_SUB", "SUBDATE": {
+                if (args.size() != 2) break;
+                String op = name.endsWith("ADD") || name.equals("ADDDATE") ? " + " : " - ";
+                Expression amount = args.get(1);
+                String interval;
+                if (amount instanceof IntervalExpression) {
+                    interval = amount.toString(); // 已经被 rewriteInterval 转成 PG 写法
+                    if (!interval.contains("'")) break; // DAY_HOUR 这类复合单位没转成功
+                } else if (amount instanceof LongValue lv) {
+                    interval = "INTERVAL '" + lv.getValue() + " day'"; // ADDDATE(d, n) 按天
+                } else {
+                    break;
+                }
+                return parse("(" + args.get(0) + op + interval + ")");
+            }
+            case "IF":
+                if (args.size() == 3) {
+                    return parse("CASE WHEN " + args.get(0) + " THEN " + args.get(1) + " ELSE " + args.get(2) + " END");
+                }
+                break;
+            case "RAND":
+                if (args.isEmpty()) {
+                    f.setName("RANDOM");
+                    return f;
+                }
+                break;
+            case "TRUNCATE":
+                if (args.size() == 2) {
+                    f.setName("TRUNC");
+                    return f;
+                }
+                break;
+            default:
+                break;
+        }
+        return f;
+    }
+
+    private static Expression functionToMysql(Function f, String name, List<Expression> args) throws Exception {
+        switch (name) {
+            case "DATE_PART": {
+                String unit = args.size() == 2 ? stringArg(args.get(0)) : null;
+                if (unit != null && unit.matches("[A-Za-z]+")) {
+                    return parse("EXTRACT(" + unit.toUpperCase(Locale.ROOT) + " FROM " + args.get(1) + ")");
+                }
+                break;
+            }
+            case "DATE_TRUNC": {
+                String unit = args.size() == 2 ? stringArg(args.get(0)) : null;
+                if (unit == null) break;
+                String x = args.get(1).toString();
+                switch (unit.toLowerCase(Locale.ROOT)) {
+                    case "year":
+                        return parse("CAST(DATE_FORMAT(" + x + ", '%Y-01-01') AS DATE)");
+                    case "month":
+                        return parse("CAST(DATE_FORMAT(" + x + ", '%Y-%m-01') AS DATE)");
+                    case "day":
+                        return parse("CAST(" + x + " AS DATE)");
+                    case "hour":
+                        return parse("CAST(DATE_FORMAT(" + x + ", '%Y-%m-%d %H:00:00') AS DATETIME)");
+                    default:
+                        break;
+                }
+                break;
+            }
+            case "TO_CHAR": {
+                String fmt = args.size() == 2 ? stringArg(args.get(1)) : null;
+                String my = fmt == null ? null : pgFormatToMysql(fmt);
+                if (my != null) return parse("DATE_FORMAT(" + args.get(0) + ", " + quote(my) + ")");
+                break;
+            }
+            case "STRING_AGG": {
+                // 带 ORDER BY 的交给人工，避免把排序丢掉
+                if (args.size() == 2 && !f.toString().toUpperCase(Locale.ROOT).contains(" ORDER BY ")) {
+                    return parse("GROUP_CONCAT(" + (f.isDistinct() ? "DISTINCT " : "") + args.get(0)
+                            + " SEPARATOR " + args.get(1) + ")");
+                }
+                break;
+            }
+            case "RANDOM":
+                if (args.isEmpty()) {
+                    f.setName("RAND");
+                    return f;
+                }
+                break;
+            case "TRUNC":
+                if (args.size() == 1) return parse("TRUNCATE(" + args.get(0) + ", 0)");
+                if (args.size() == 2) {
+                    f.setName("TRUNCATE");
+                    return f;
+                }
+                break;
+            case "LENGTH":
+                // PG 的 LENGTH 是字符数，MySQL 的是字节数
+                if (args.size() == 1) {
+                    f.setName("CHAR_LENGTH");
+                    return f;
+                }
+                break;
+            default:
+                break;
+        }
+        return f;
+    }
+
+    /** GROUP_CONCAT(DISTINCT a ORDER BY b SEPARATOR ',') -> STRING_AGG(DISTINCT CAST(a AS TEXT), ',' ORDER BY b) */
+    private static Expression rewriteGroupConcat(MySQLGroupConcat gc, Ctx c) throws Exception {
+        if (!c.toPg() || gc.getExpressionList() == null || gc.getExpressionList().isEmpty()) return gc;
+
+        List<String> parts = new ArrayList<>();
+        for (Object o : gc.getExpressionList()) parts.add(expr((Expression) o, c).toString());
+        String value = parts.size() == 1 ? parts.get(0) : "CONCAT(" + String.join(", ", parts) + ")";
+
+        String sep = gc.getSeparator() == null ? "','" : gc.getSeparator();
+        StringBuilder sb = new StringBuilder("STRING_AGG(");
+        if (gc.isDistinct()) sb.append("DISTINCT ");
+        sb.append("CAST(").append(value).append(" AS TEXT), ").append(sep);
+        if (gc.getOrderByElements() != null && !gc.getOrderByElements().isEmpty()) {
+            sb.append(" ORDER BY ").append(gc.getOrderByElements().stream()
+                    .map(o -> {
+                        o.setExpression(expr(o.getExpression(), c));
+                        return o.toString();
+                    })
+                    .collect(Collectors.joining(", ")));
+        }
+        sb.append(")");
+        return parse(sb.toString());
+    }
+
+    /** PG 的 a || b || c -> MySQL CONCAT(a, b, c) */
+    private static Expression rewriteConcat(Concat cc, Ctx c) throws Exception {
+        if (!c.toMysql()) return cc;
+        List<String> parts = new ArrayList<>();
+        flattenConcat(cc, parts);
+        return parse("CONCAT(" + String.join(", ", parts) + ")");
+    }
+
+    private static void flattenConcat(Expression e, List<String> out) {
+        if (e instanceof Concat cc) {
+            flattenConcat(cc.getLeftExpression(), out);
+            flattenConcat(cc.getRightExpression(), out);
+        } else if (e instanceof Function f && "CONCAT".equalsIgnoreCase(f.getName())) {
+            // 子节点已经先被转成 CONCAT(...)，拍平
+            for (Expression a : args(f)) out.add(a.toString());
+        } else {
+            out.add(e.toString());
+        }
+    }
+
+    private static Expression rewriteCast(CastExpression cast, Ctx c) throws Exception {
+        if (cast.getColDataType() == null || cast.getColDataType().getDataType() == null) return cast;
+
+        String fullType = cast.getColDataType().toString().trim();
+        String base = cast.getColDataType().getDataType().trim();
+        String typeArgs = fullType.length() > base.length() && fullType.regionMatches(true, 0, base, 0, base.length())
+                ? fullType.substring(base.length()).trim()
+                : "";
+
+        String mapped = c.toMysql() ? castTypeToMysql(base, typeArgs) : castTypeToPg(base, typeArgs);
+        boolean colonCast = !cast.toString().trim().regionMatches(true, 0, "CAST", 0, 4)
+                && cast.toString().contains("::");
+
+        if (mapped == null && !(colonCast && c.toMysql())) return cast;
+        String type = mapped != null ? mapped : fullType;
+        return parse("CAST(" + cast.getLeftExpression() + " AS " + type + ")");
+    }
+
+    private static String castTypeToMysql(String base, String typeArgs) {
+        switch (base.toLowerCase(Locale.ROOT)) {
+            case "text", "varchar", "character varying", "bpchar", "character":
+                return "CHAR";
+            case "int", "integer", "int2", "int4", "int8", "bigint", "smallint":
+                return "SIGNED";
+            case "numeric":
+                return "DECIMAL" + (typeArgs.isEmpty() ? "(65, 30)" : typeArgs);
+            case "real", "float4", "float8", "double precision", "float":
+                return "DOUBLE";
+            case "timestamp", "timestamptz", "timestamp without time zone", "timestamp with time zone":
+                return "DATETIME";
+            default:
+                return null;
+        }
+    }
+
+    private static String castTypeToPg(String base, String typeArgs) {
+        switch (base.toLowerCase(Locale.ROOT)) {
+            case "signed", "signed integer", "unsigned", "unsigned integer":
+                return "BIGINT";
+            case "char":
+                return typeArgs.isEmpty() ? "TEXT" : "VARCHAR" + typeArgs;
+            case "datetime":
+                return "TIMESTAMP";
+            case "double":
+                return "DOUBLE PRECISION";
+            default:
+                return null;
+        }
+    }
+
+    /** LIKE <-> ILIKE：从 toString 里截出操作符，避开各版本 LikeExpression 关键字 API 的差异 */
+    private static Expression rewriteLike(LikeExpression like, Ctx c) throws Exception {
+        String s = like.toString();
+        String left = like.getLeftExpression().toString();
+        String right = like.getRightExpression().toString();
+        if (!s.startsWith(left) || !s.endsWith(right) || s.length() < left.length() + right.length()) return like;
+
+        String op = s.substring(left.length(), s.length() - right.length()).trim().toUpperCase(Locale.ROOT);
+        boolean not = op.startsWith("NOT ");
+        String keyword = not ? op.substring(4).trim() : op;
+
+        String target;
+        if (c.toMysql() && keyword.equals("ILIKE")) {
+            target = "LIKE";
+        } else if (c.toPg() && c.from == SqlDialect.MYSQL && keyword.equals("LIKE")) {
+            target = "ILIKE";
+        } else {
+            return like;
+        }
+        return parse(left + (not ? " NOT " : " ") + target + " " + right);
+    }
+
+    private static final Pattern MYSQL_INTERVAL =
+            Pattern.compile("(?i)^INTERVAL\\s+'?(-?\\d+(?:\\.\\d+)?)'?\\s+([A-Z_]+)$");
+    private static final Pattern PG_INTERVAL =
+            Pattern.compile("(?i)^INTERVAL\\s+'\\s*(-?\\d+(?:\\.\\d+)?)\\s+([A-Z]+?)S?\\s*'$");
+
+    /** INTERVAL 3 DAY（MySQL） <-> INTERVAL '3 day'（PG） */
+    private static Expression rewriteInterval(IntervalExpression iv, Ctx c) throws Exception {
+        String s = iv.toString().trim();
+        Matcher m = (c.toPg() ? MYSQL_INTERVAL : PG_INTERVAL).matcher(s);
+        if (!m.matches()) return iv;
+
+        String unit = m.group(2).toUpperCase(Locale.ROOT);
+        if (!DATE_PARTS.contains(unit) && !unit.equals("WEEK")) return iv;
+
+        return c.toPg()
+                ? parse("INTERVAL '" + m.group(1) + " " + unit.toLowerCase(Locale.ROOT) + "'")
+                : parse("INTERVAL " + m.group(1) + " " + unit);
+    }
+
+    /**
+     * -> MySQL：agg(x) FILTER (WHERE c) -> agg(CASE WHEN c THEN x END)，COUNT(*) 用 THEN 1；
+     * 窗口里的 NULLS FIRST/LAST 同 ORDER BY 处理。
+     */
+    private static Expression rewriteAnalytic(AnalyticExpression a, Ctx c) throws Exception {
+        if (!c.toMysql()) return a;
+
+        if (a.getOrderByElements() != null) {
+            a.setOrderByElements(rewriteOrderBy(a.getOrderByElements(), c, false));
+        }
+
+        Expression filter = a.getFilterExpression();
+        if (filter == null) return a;
+
+        String value = a.isAllColumns() || a.getExpression() == null ? "1" : a.getExpression().toString();
+        String caseWhen = "CASE WHEN " + filter + " THEN " + value + " END";
+
+        if (a.getType() == AnalyticType.FILTER_ONLY) {
+            return parse(a.getName() + "(" + (a.isDistinct() ? "DISTINCT " : "") + caseWhen + ")");
+        }
+        a.setExpression(parse(caseWhen));
+        a.setAllColumns(false);
+        a.setFilterExpression(null);
+        return a;
+    }
+
+    /** -> PG：布尔列 = 1/0 -> = TRUE/FALSE（PG 里 boolean = integer 直接报错） */
+    private static Expression rewriteBooleanCompare(BinaryExpression b, Ctx c) throws Exception {
+        if (!c.toPg()) return b;
+
+        if (isBooleanColumn(b.getLeftExpression(), c) && b.getRightExpression() instanceof LongValue lv) {
+            Expression lit = booleanLiteral(lv);
+            if (lit != null) b.setRightExpression(lit);
+        } else if (isBooleanColumn(b.getRightExpression(), c) && b.getLeftExpression() instanceof LongValue lv) {
+            Expression lit = booleanLiteral(lv);
+            if (lit != null) b.setLeftExpression(lit);
+        }
+        return b;
+    }
+
+    private static boolean isBooleanColumn(Expression e, Ctx c) {
+        return e instanceof Column col && SchemaCatalog.get().isBooleanColumn(c.domain, col.getColumnName());
+    }
+
+    private static Expression booleanLiteral(LongValue lv) throws Exception {
+        long v = lv.getValue();
+        if (v == 1) return parse("TRUE");
+        if (v == 0) return parse("FALSE");
+        return null;
+    }
+
+    /* ======================== 日期格式串 ======================== */
+
+    private static final Map<Character, String> MYSQL_TO_PG_FORMAT = Map.ofEntries(
+            Map.entry('Y', "YYYY"), Map.entry('y', "YY"),
+            Map.entry('m', "MM"), Map.entry('c', "FMMM"),
+            Map.entry('d', "DD"), Map.entry('e', "FMDD"),
+            Map.entry('H', "HH24"), Map.entry('k', "FMHH24"),
+            Map.entry('h', "HH12"), Map.entry('I', "HH12"), Map.entry('l', "FMHH12"),
+            Map.entry('i', "MI"), Map.entry('s', "SS"), Map.entry('S', "SS"),
+            Map.entry('p', "AM"), Map.entry('M', "FMMonth"), Map.entry('b', "Mon"),
+            Map.entry('W', "FMDay"), Map.entry('a', "Dy"), Map.entry('j', "DDD"),
+            Map.entry('T', "HH24:MI:SS"), Map.entry('%', "%")
+    );
+
+    /** 顺序即匹配优先级（长的在前），忽略大小写匹配 */
+    private static final String[][] PG_TO_MYSQL_FORMAT = {
+            {"FMMonth", "%M"}, {"FMDay", "%W"}, {"FMHH24", "%k"}, {"FMHH12", "%l"}, {"FMDD", "%e"}, {"FMMM", "%c"},
+            {"YYYY", "%Y"}, {"HH24", "%H"}, {"HH12", "%h"}, {"Month", "%M"}, {"DDD", "%j"}, {"Day", "%W"},
+            {"Mon", "%b"}, {"YY", "%y"}, {"MM", "%m"}, {"MI", "%i"}, {"DD", "%d"}, {"HH", "%h"}, {"SS", "%s"},
+            {"Dy", "%a"}, {"AM", "%p"}, {"PM", "%p"}
+    };
+
+    /** '%Y-%m' -> 'YYYY-MM'；有换算不了的占位符或裸字母（PG 会当成模式）返回 null */
+    static String mysqlFormatToPg(String fmt) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fmt.length(); i++) {
+            char ch = fmt.charAt(i);
+            if (ch == '%') {
+                if (i + 1 >= fmt.length()) return null;
+                String p = MYSQL_TO_PG_FORMAT.get(fmt.charAt(++i));
+                if (p == null) return null;
+                sb.append(p);
+            } else if ((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || ch == '"') {
+                return null;
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** 'YYYY-MM' -> '%Y-%m'；PG 双引号里的原样文本照抄；不认识的字母返回 null */
+    static String pgFormatToMysql(String fmt) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        outer:
+        while (i < fmt.length()) {
+            char ch = fmt.charAt(i);
+            if (ch == '"') {
+                int end = fmt.indexOf('"', i + 1);
+                if (end < 0) return null;
+                sb.append(fmt, i + 1, end);
+                i = end + 1;
+                continue;
+            }
+            for (String[] t : PG_TO_MYSQL_FORMAT) {
+                if (fmt.regionMatches(true, i, t[0], 0, t[0].length())) {
+                    sb.append(t[1]);
+                    i += t[0].length();
+                    continue outer;
+                }
+            }
+            if ((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z')) return null;
+            sb.append(ch == '%' ? "%%" : String.valueOf(ch));
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /* ======================== 小工具 ======================== */
+
+    @SuppressWarnings("unchecked")
+    private static List<Expression> args(Function f) {
+        if (f.getParameters() == null) return List.of();
+        return (List<Expression>) (List<?>) f.getParameters();
+    }
+
+    private static String stringArg(Expression e) {
+        return e instanceof StringValue sv ? sv.getValue() : null;
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "''") + "'";
+    }
+
+    private static Expression parse(String text) throws Exception {
+        return CCJSqlParserUtil.parseExpression(text);
+    }
+}
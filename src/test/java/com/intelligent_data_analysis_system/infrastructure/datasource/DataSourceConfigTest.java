@@ -0,0 +1,55 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.RoutingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 驱动参数：预编译缓存和 PG 的 stringtype=unspecified 只给分析查询的池子，MyBatis 的池子不带；
+ * 多语句在所有 MySQL 池子上都关着。
+ */
+class DataSourceConfigTest {
+
+    private final DataSourceConfig config = new DataSourceConfig(new RoutingProperties(), new QueryProperties(),
+            new DomainProperties(), null, null, null);
+
+    private Properties props(String driver, boolean analytic) {
+        HikariDataSource ds = new HikariDataSource();
+        config.applyDriverProps(ds, driver, analytic);
+        return ds.getDataSourceProperties();
+    }
+
+    @Test
+    void postgresAnalyticPoolInfersParameterTypes() {
+        Properties p = props("org.postgresql.Driver", true);
+        assertEquals("unspecified", p.getProperty("stringtype"));
+        assertNotNull(p.getProperty("prepareThreshold"));
+        assertNotNull(p.getProperty("preparedStatementCacheQueries"));
+    }
+
+    @Test
+    void postgresMybatisPoolKeepsDriverDefaults() {
+        Properties p = props("org.postgresql.Driver", false);
+        assertNull(p.getProperty("stringtype"));
+        assertNull(p.getProperty("prepareThreshold"));
+        assertTrue(p.isEmpty());
+    }
+
+    @Test
+    void mysqlPoolsNeverAllowMultiQueries() {
+        Properties analytic = props("com.mysql.cj.jdbc.Driver", true);
+        assertEquals("false", analytic.getProperty("allowMultiQueries"));
+        assertEquals("true", analytic.getProperty("cachePrepStmts"));
+
+        Properties mybatis = props("com.mysql.cj.jdbc.Driver", false);
+        assertEquals("false", mybatis.getProperty("allowMultiQueries"));
+        assertNull(mybatis.getProperty("cachePrepStmts"));
+        assertNull(mybatis.getProperty("useCursorFetch"));
+    }
+}
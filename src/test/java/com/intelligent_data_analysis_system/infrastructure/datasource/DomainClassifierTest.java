@@ -0,0 +1,56 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按问题判域：点名注册表里的域（域名 / 别名）优先，其次内置两个域的关键词，都没有走默认域。
+ */
+class DomainClassifierTest {
+
+    private static DomainRegistry registry(String defaultDomain) {
+        DomainProperties props = new DomainProperties();
+        props.setDefaultDomain(defaultDomain);
+        DomainProperties.Definition retail = new DomainProperties.Definition();
+        retail.setAliases(List.of("零售", "门店"));
+        props.getRegistry().put("retail", retail);
+        props.getRegistry().put("finance_archive", new DomainProperties.Definition());
+        return new DomainRegistry(props, new MultiDataSourceProperties());
+    }
+
+    @Test
+    void namedRegistryDomainWins() {
+        DomainRegistry r = registry("finance");
+        assertSame(DataSourceDomain.valueOf("RETAIL"), DomainClassifier.detect("各门店上个月的客户数", r),
+                "点名的域优先于“客户”这类金融关键词");
+        assertSame(DataSourceDomain.valueOf("RETAIL"), DomainClassifier.detect("Retail sales by region", r));
+    }
+
+    @Test
+    void longestMentionWins() {
+        DomainRegistry r = registry("finance");
+        assertSame(DataSourceDomain.valueOf("FINANCE_ARCHIVE"),
+                DomainClassifier.detect("finance_archive 里 2019 年的交易笔数", r),
+                "FINANCE_ARCHIVE 不会因为包含 finance 落到 FINANCE");
+    }
+
+    @Test
+    void builtInKeywords() {
+        DomainRegistry r = registry("finance");
+        assertSame(DataSourceDomain.HEALTHCARE, DomainClassifier.detect("开了阿莫西林的患者有哪些", r));
+        assertSame(DataSourceDomain.HEALTHCARE, DomainClassifier.detect("布洛芬缓释胶囊的库存", r));
+        assertSame(DataSourceDomain.FINANCE, DomainClassifier.detect("持仓最多的基金", r));
+    }
+
+    @Test
+    void fallsBackToRegistryDefault() {
+        assertSame(DataSourceDomain.valueOf("RETAIL"), DomainClassifier.detect("一共有多少条记录", registry("retail")));
+        assertSame(DataSourceDomain.FINANCE, DomainClassifier.detect("", registry("finance")));
+        assertSame(DataSourceDomain.FINANCE, DomainClassifier.detect(null, registry("finance")));
+    }
+}
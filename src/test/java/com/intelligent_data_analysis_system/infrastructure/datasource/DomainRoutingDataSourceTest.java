@@ -0,0 +1,300 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用替身数据源验证按域懒建连接池：第一次借连接才建、空闲回收（借出中的不回收）、回收后再用重建、域并发上限
+ * （多个实例共用、按负载类别优先级排队）、并发首次借连接只建一次、建失败后退避、回收和重建交错时只注销旧的。
+ */
+class DomainRoutingDataSourceTest {
+
+    private final List<String> opened = new ArrayList<>();
+    private final List<String> closed = new ArrayList<>();
+
+    @AfterEach
+    void clearContext() {
+        DomainContext.clear();
+        WorkloadContext.clear();
+    }
+
+    private static DataSource standIn() {
+        return (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (p, m, a) -> "getConnection".equals(m.getName())
+                        ? Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                        (cp, cm, ca) -> "isClosed".equals(cm.getName()) ? false : null)
+                        : null);
+    }
+
+    private static DomainProperties props(int retailCap, Duration acquireTimeout) {
+        DomainProperties props = new DomainProperties();
+        props.setIdleEvictAfter(Duration.ZERO);
+        props.setAcquireTimeout(acquireTimeout);
+        DomainProperties.Definition retail = new DomainProperties.Definition();
+        retail.setAliases(List.of("store"));
+        retail.setMaxConcurrent(retailCap);
+        props.getRegistry().put("retail", retail);
+        return props;
+    }
+
+    private DomainRoutingDataSource routing(DomainRegistry registry, DomainProperties props) {
+        return new DomainRoutingDataSource(registry, props, domain -> {
+            opened.add(domain.name());
+            return new DomainRoutingDataSource.Pool(standIn(), () -> closed.add(domain.name()));
+        });
+    }
+
+    private DomainRoutingDataSource routing(int retailCap) {
+        DomainProperties props = props(retailCap, Duration.ofMillis(50));
+        return routing(new DomainRegistry(props, new MultiDataSourceProperties()), props);
+    }
+
+    @Test
+    void opensPoolOnlyForDomainsInUse() throws Exception {
+        DomainRoutingDataSource ds = routing(0);
+        assertTrue(opened.isEmpty(), "启动时不建任何连接池");
+
+        DomainContext.set(DataSourceDomain.valueOf("retail"));
+        ds.getConnection().close();
+        ds.getConnection().close();
+        assertEquals(List.of("RETAIL"), opened);
+
+        DomainContext.clear();
+        ds.getConnection().close();
+        assertEquals(List.of("RETAIL", "FINANCE"), opened, "没设置域时走默认域");
+    }
+
+    @Test
+    void evictsIdlePoolsButKeepsBusyOnes() throws Exception {
+        DomainRoutingDataSource ds = routing(0);
+        DomainContext.set(DataSourceDomain.FINANCE);
+        Connection held = ds.getConnection();
+        DomainContext.set(DataSourceDomain.HEALTHCARE);
+        ds.getConnection().close();
+
+        ds.evictIdle(0);
+        assertEquals(List.of("HEALTHCARE"), closed);
+
+        held.close();
+        ds.evictIdle(0);
+        assertEquals(List.of("HEALTHCARE", "FINANCE"), closed);
+
+        ds.getConnection().close();
+        assertEquals(List.of("FINANCE", "HEALTHCARE", "HEALTHCARE"), opened, "回收后再用重新建");
+    }
+
+    @Test
+    void capsConcurrentConnectionsPerDomain() throws Exception {
+        DomainRoutingDataSource ds = routing(1);
+        DomainContext.set(DataSourceDomain.valueOf("RETAIL"));
+        Connection held = ds.getConnection();
+        assertThrows(SQLTransientConnectionException.class, ds::getConnection);
+
+        // 别的域不受影响
+        DomainContext.set(DataSourceDomain.FINANCE);
+        ds.getConnection().close();
+
+        held.close();
+        DomainContext.set(DataSourceDomain.valueOf("RETAIL"));
+        ds.getConnection().close();
+    }
+
+    @Test
+    void capIsSharedByAllRoutingInstances() throws Exception {
+        DomainProperties props = props(1, Duration.ofMillis(50));
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+        DomainRoutingDataSource primary = routing(registry, props);
+        DomainRoutingDataSource race = routing(registry, props);
+        DataSourceDomain retail = DataSourceDomain.valueOf("RETAIL");
+
+        Connection held = primary.forDomain(retail).getConnection();
+        assertThrows(SQLTransientConnectionException.class, () -> race.forDomain(retail).getConnection(),
+                "竞速 / 多语句池和主引擎占同一份域名额");
+        held.close();
+        race.forDomain(retail).getConnection().close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void capWakesInteractiveBeforeBatch() throws Exception {
+        DomainProperties props = props(1, Duration.ofSeconds(5));
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+        DomainRoutingDataSource ds = routing(registry, props);
+        DataSourceDomain retail = DataSourceDomain.valueOf("RETAIL");
+        Connection held = ds.forDomain(retail).getConnection();
+
+        List<WorkloadClass> order = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> borrows = new ArrayList<>();
+            for (WorkloadClass cls : List.of(WorkloadClass.BATCH, WorkloadClass.INTERACTIVE)) {
+                borrows.add(pool.submit(() -> {
+                    WorkloadContext.set(cls);
+                    try (Connection ignored = ds.forDomain(retail).getConnection()) {
+                        order.add(cls);
+                        Thread.sleep(20);
+                    } finally {
+                        WorkloadContext.clear();
+                    }
+                    return null;
+                }));
+                // 等它进了排队再放下一个，保证 BATCH 先到
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (true) {
+                    Map<String, Object> classes = (Map<String, Object>) registry.limiter(retail).stats().get("classes");
+                    if ((int) ((Map<String, Object>) classes.get(cls.name())).get("waiting") == 1) break;
+                    assertTrue(System.nanoTime() < end, cls + " 没有进入排队");
+                    Thread.sleep(5);
+                }
+            }
+            held.close();
+            for (Future<?> f : borrows) f.get(5, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(List.of(WorkloadClass.INTERACTIVE, WorkloadClass.BATCH), order, "后到的交互请求先拿到名额");
+    }
+
+    @Test
+    void evictionDoesNotUnregisterReopenedPool() throws Exception {
+        DomainProperties props = new DomainProperties();
+        props.setIdleEvictAfter(Duration.ZERO);
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+        WorkloadBulkheads bulkheads = new WorkloadBulkheads();
+        CountDownLatch closing = new CountDownLatch(1);
+        CountDownLatch finishClose = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        DomainRoutingDataSource ds = new DomainRoutingDataSource(registry, props, domain -> {
+            WorkloadBulkhead b = new WorkloadBulkhead(domain.name() + "#" + builds.incrementAndGet(), 1, null, null);
+            bulkheads.register(domain.name(), b);
+            return new DomainRoutingDataSource.Pool(new BulkheadDataSource(standIn(), b), () -> {
+                // 回收线程停在关池中途，这期间别的请求把域重新建起来
+                closing.countDown();
+                try {
+                    finishClose.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                bulkheads.unregister(domain.name(), b);
+            });
+        });
+        DataSource finance = ds.forDomain(DataSourceDomain.FINANCE);
+        finance.getConnection().close();
+        Thread.sleep(300);
+
+        // 只回收空闲超过 200ms 的：回收线程接着往下扫时不会把刚重建的也关掉
+        Thread evictor = new Thread(() -> ds.evictIdle(TimeUnit.MILLISECONDS.toNanos(200)));
+        evictor.start();
+        assertTrue(closing.await(5, TimeUnit.SECONDS));
+        finance.getConnection().close();
+        WorkloadBulkhead reopened = bulkheads.get("FINANCE");
+        assertEquals("FINANCE#2", reopened.name());
+
+        finishClose.countDown();
+        evictor.join(5_000);
+        assertSame(reopened, bulkheads.get("FINANCE"), "旧池关完只注销它自己登记的隔离舱");
+    }
+
+    @Test
+    void concurrentFirstBorrowsOpenPoolOnce() throws Exception {
+        DomainProperties props = new DomainProperties();
+        props.setIdleEvictAfter(Duration.ZERO);
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        DomainRoutingDataSource ds = new DomainRoutingDataSource(registry, props, domain -> {
+            if (domain == DataSourceDomain.FINANCE) {
+                builds.incrementAndGet();
+                building.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new DomainRoutingDataSource.Pool(standIn(), () -> {});
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> borrows = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                borrows.add(pool.submit(() -> {
+                    DomainContext.set(DataSourceDomain.FINANCE);
+                    try (Connection ignored = ds.getConnection()) {
+                        return null;
+                    } finally {
+                        DomainContext.clear();
+                    }
+                }));
+            }
+            assertTrue(building.await(5, TimeUnit.SECONDS));
+            // 建池期间别的域照常可用
+            DomainContext.set(DataSourceDomain.HEALTHCARE);
+            ds.getConnection().close();
+            release.countDown();
+            for (Future<?> f : borrows) f.get(5, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    void backsOffAfterOpenFailure() throws Exception {
+        DomainProperties props = new DomainProperties();
+        props.setIdleEvictAfter(Duration.ZERO);
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+        AtomicInteger builds = new AtomicInteger();
+        DomainRoutingDataSource ds = new DomainRoutingDataSource(registry, props, domain -> {
+            builds.incrementAndGet();
+            throw new IllegalStateException("域 " + domain + " 没有配置连接");
+        });
+
+        DomainContext.set(DataSourceDomain.FINANCE);
+        assertThrows(IllegalStateException.class, ds::getConnection);
+        assertThrows(SQLTransientConnectionException.class, ds::getConnection, "退避期内不再建");
+        assertEquals(1, builds.get());
+        assertEquals(1, ((Map<?, ?>) ds.stats().get("FINANCE")).get("openFailures"));
+    }
+
+    @Test
+    void resolvesAliasesAndUrlPrefixes() {
+        DomainProperties props = new DomainProperties();
+        DomainProperties.Definition retail = new DomainProperties.Definition();
+        retail.setAliases(List.of("store"));
+        props.getRegistry().put("retail", retail);
+        DomainRegistry registry = new DomainRegistry(props, new MultiDataSourceProperties());
+
+        DataSourceDomain r = DataSourceDomain.valueOf("RETAIL");
+        assertSame(r, registry.resolve("Store"));
+        assertSame(DataSourceDomain.FINANCE, registry.resolve("finance"));
+        assertNull(registry.resolve("unknown"));
+        assertSame(r, registry.byUri("/api/retail/query"));
+        assertSame(DataSourceDomain.HEALTHCARE, registry.byUri("/api/healthcare/x"));
+        assertSame(DataSourceDomain.FINANCE, registry.next(r), "最后一个域的下一个回到第一个");
+        assertThrows(IllegalArgumentException.class, () -> DataSourceDomain.valueOf("NOT_REGISTERED"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.DomainProperties;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.MultiDataSourceProperties;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import com.intelligent_data_analysis_system.utils.DeadlineContext;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * URL 前缀绑定域：请求结束 / 转成异步时在同一个线程上恢复进入前的上下文，外层设置的截止时间不受影响。
+ */
+class DomainRoutingInterceptorTest {
+
+    private final DomainRoutingInterceptor interceptor =
+            new DomainRoutingInterceptor(new DomainRegistry(new DomainProperties(), new MultiDataSourceProperties()));
+    private final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+            HttpServletResponse.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (p, m, a) -> null);
+
+    @AfterEach
+    void clear() {
+        ExecutionContext.replace(ExecutionContext.empty());
+    }
+
+    /** 只支持 getRequestURI 和属性读写的请求替身 */
+    private static HttpServletRequest request(String uri) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (p, m, a) -> switch (m.getName()) {
+                    case "getRequestURI" -> uri;
+                    case "getAttribute" -> attributes.get((String) a[0]);
+                    case "setAttribute" -> attributes.put((String) a[0], a[1]);
+                    case "removeAttribute" -> attributes.remove((String) a[0]);
+                    default -> null;
+                });
+    }
+
+    @Test
+    void bindsDomainAndRestoresOuterContext() {
+        Deadline outer = Deadline.after(Duration.ofSeconds(5));
+        try (ExecutionContext.Scope ignored = ExecutionContext.current().withDeadline(outer).open()) {
+            HttpServletRequest req = request("/api/healthcare/patients");
+            assertTrue(interceptor.preHandle(req, response, new Object()));
+            assertSame(DataSourceDomain.HEALTHCARE, DomainContext.get());
+            assertSame(outer, DeadlineContext.get());
+
+            interceptor.afterCompletion(req, response, new Object(), null);
+            assertNull(DomainContext.get());
+            assertSame(outer, DeadlineContext.get(), "只恢复域，外层的截止时间还在");
+        }
+    }
+
+    @Test
+    void asyncStartRestoresRequestThread() {
+        HttpServletRequest req = request("/api/finance/query");
+        interceptor.preHandle(req, response, new Object());
+        assertSame(DataSourceDomain.FINANCE, DomainContext.get());
+
+        interceptor.afterConcurrentHandlingStarted(req, response, new Object());
+        assertNull(DomainContext.get(), "请求线程回池前恢复");
+
+        // 异步派发回来：重新绑定、结束时再恢复
+        DomainContext.set(DataSourceDomain.HEALTHCARE);
+        interceptor.preHandle(req, response, new Object());
+        assertSame(DataSourceDomain.FINANCE, DomainContext.get());
+        interceptor.afterCompletion(req, response, new Object(), null);
+        assertSame(DataSourceDomain.HEALTHCARE, DomainContext.get(), "恢复成进入前的值，而不是清空");
+    }
+
+    @Test
+    void unmatchedPathLeavesContextAlone() {
+        DomainContext.set(DataSourceDomain.HEALTHCARE);
+        HttpServletRequest req = request("/api/ai/query");
+        interceptor.preHandle(req, response, new Object());
+        interceptor.afterCompletion(req, response, new Object(), null);
+        assertSame(DataSourceDomain.HEALTHCARE, DomainContext.get());
+    }
+}
@@ -0,0 +1,85 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 共用的连接代理：close 钩子只执行一次（内层 close 失败也执行），新建的语句交给语句钩子。
+ */
+class GuardedConnectionTest {
+
+    private final List<String> calls = new ArrayList<>();
+
+    private Connection target(SQLException closeFailure) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (p, m, a) -> {
+                    calls.add(m.getName());
+                    return switch (m.getName()) {
+                        case "close" -> {
+                            if (closeFailure != null) throw closeFailure;
+                            yield null;
+                        }
+                        case "createStatement" -> stub(Statement.class);
+                        case "prepareStatement" -> stub(PreparedStatement.class);
+                        case "unwrap" -> "inner";
+                        default -> null;
+                    };
+                });
+    }
+
+    private <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (p, m, a) -> {
+                    if (m.getName().startsWith("set")) calls.add(type.getSimpleName() + "." + m.getName() + "=" + a[0]);
+                    return null;
+                }));
+    }
+
+    @Test
+    void closeHookRunsOnce() throws Exception {
+        AtomicInteger released = new AtomicInteger();
+        Connection con = GuardedConnection.onClose(target(null), released::incrementAndGet);
+        con.close();
+        con.close();
+        assertEquals(1, released.get());
+        assertEquals(List.of("close", "close"), calls, "之后的 close 照常转给内层");
+    }
+
+    @Test
+    void closeHookRunsEvenWhenInnerCloseFails() {
+        AtomicInteger released = new AtomicInteger();
+        SQLException broken = new SQLException("broken");
+        Connection con = GuardedConnection.onClose(target(broken), released::incrementAndGet);
+        assertSame(broken, assertThrows(SQLException.class, con::close));
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    void statementHookSeesNewStatements() throws Exception {
+        Connection con = GuardedConnection.onStatement(target(null), st -> st.setFetchSize(500));
+        con.createStatement();
+        con.prepareStatement("SELECT 1");
+        assertEquals(List.of("createStatement", "Statement.setFetchSize=500",
+                "prepareStatement", "PreparedStatement.setFetchSize=500"), calls);
+    }
+
+    @Test
+    void identityAndUnwrapStayOnProxy() throws Exception {
+        Connection con = GuardedConnection.onClose(target(null), () -> {});
+        assertEquals(con, con);
+        assertNotEquals(con, GuardedConnection.onClose(target(null), () -> {}));
+        assertSame(con, con.unwrap(Connection.class));
+        assertEquals("inner", con.unwrap(String.class), "代理没实现的类型转给内层");
+    }
+}
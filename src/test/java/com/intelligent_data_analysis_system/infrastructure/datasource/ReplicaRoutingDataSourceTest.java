@@ -0,0 +1,93 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用本地替身数据源（不连真实数据库）验证副本选择：在途请求数 / 耗时、摘除、回落主库。
+ */
+class ReplicaRoutingDataSourceTest {
+
+    /** 替身库：产品名不是 MySQL / PG，复制延迟按 0 处理；down=true 时借连接失败 */
+    private static DataSource standIn(String product, boolean[] down) {
+        DatabaseMetaData md = (DatabaseMetaData) Proxy.newProxyInstance(
+                DatabaseMetaData.class.getClassLoader(), new Class<?>[]{DatabaseMetaData.class},
+                (p, m, a) -> "getDatabaseProductName".equals(m.getName()) ? product : null);
+        Connection con = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (p, m, a) -> switch (m.getName()) {
+                    case "getMetaData" -> md;
+                    case "isClosed", "isReadOnly" -> false;
+                    default -> null;
+                });
+        return (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (p, m, a) -> {
+                    if (!"getConnection".equals(m.getName())) return null;
+                    if (down[0]) throw new SQLException("connection refused");
+                    return con;
+                });
+    }
+
+    private static ReplicaRoutingDataSource.Node node(String name, boolean primary, boolean[] down) {
+        return new ReplicaRoutingDataSource.Node(name, standIn("H2", down), primary);
+    }
+
+    @Test
+    void picksReplicaWithFewerOutstandingRequests() throws SQLException {
+        ReplicaRoutingDataSource.Node primary = node("primary", true, new boolean[1]);
+        ReplicaRoutingDataSource.Node r1 = node("r1", false, new boolean[1]);
+        ReplicaRoutingDataSource.Node r2 = node("r2", false, new boolean[1]);
+        ReplicaRoutingDataSource ds = new ReplicaRoutingDataSource("FINANCE", primary, List.of(r1, r2),
+                false, 0.2, Duration.ofSeconds(10));
+
+        Connection held = ds.getConnection();
+        ReplicaRoutingDataSource.Node busy = r1.outstanding.get() == 1 ? r1 : r2;
+        ReplicaRoutingDataSource.Node idle = busy == r1 ? r2 : r1;
+        for (int i = 0; i < 20; i++) assertSame(idle, ds.pick());
+
+        held.close();
+        assertEquals(0, busy.outstanding.get());
+        assertEquals(0, primary.served.get(), "有可用副本时读请求不落主库");
+    }
+
+    @Test
+    void prefersLowerLatencyWhenLoadIsEqual() {
+        ReplicaRoutingDataSource.Node r1 = node("r1", false, new boolean[1]);
+        ReplicaRoutingDataSource.Node r2 = node("r2", false, new boolean[1]);
+        ReplicaRoutingDataSource ds = new ReplicaRoutingDataSource("FINANCE", node("primary", true, new boolean[1]),
+                List.of(r1, r2), false, 1.0, Duration.ofSeconds(10));
+
+        ds.observe(r1, 50);
+        ds.observe(r2, 5);
+        for (int i = 0; i < 20; i++) assertSame(r2, ds.pick());
+    }
+
+    @Test
+    void ejectsUnreachableReplicaAndFallsBackToPrimary() {
+        boolean[] r1Down = {true};
+        ReplicaRoutingDataSource.Node primary = node("primary", true, new boolean[1]);
+        ReplicaRoutingDataSource.Node r1 = node("r1", false, r1Down);
+        ReplicaRoutingDataSource ds = new ReplicaRoutingDataSource("HEALTHCARE", primary, List.of(r1),
+                false, 0.2, Duration.ofSeconds(10));
+
+        ds.checkLag();
+        assertTrue(r1.ejected);
+        assertSame(primary, ds.pick());
+
+        r1Down[0] = false;
+        ds.checkLag();
+        assertFalse(r1.ejected, "探测恢复后重新加入");
+        assertEquals(0.0, r1.lagSeconds);
+        assertSame(r1, ds.pick());
+    }
+}
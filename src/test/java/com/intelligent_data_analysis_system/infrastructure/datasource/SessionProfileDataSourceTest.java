@@ -0,0 +1,162 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.utils.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用替身连接验证会话配置的失败处理：参数不受支持才停用（停用后套过类别的连接还原），
+ * 其它错误剔除这个连接、换一个重套，配置照常生效。
+ */
+class SessionProfileDataSourceTest {
+
+    @AfterEach
+    void clear() {
+        ExecutionContext.replace(ExecutionContext.empty());
+    }
+
+    /** 一个物理连接：记下发过的 SET，execute 时依次抛 failures 里的异常 */
+    private static final class Fake {
+        final List<String> sql = new ArrayList<>();
+        final Deque<SQLException> failures = new ArrayDeque<>();
+        boolean closed;
+        final Connection con;
+
+        Fake(SQLException... failures) {
+            this.failures.addAll(List.of(failures));
+            DatabaseMetaData md = (DatabaseMetaData) Proxy.newProxyInstance(
+                    DatabaseMetaData.class.getClassLoader(), new Class<?>[]{DatabaseMetaData.class},
+                    (p, m, a) -> "getDatabaseProductName".equals(m.getName()) ? "MySQL" : null);
+            Statement st = (Statement) Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                    (p, m, a) -> {
+                        if ("execute".equals(m.getName())) {
+                            sql.add((String) a[0]);
+                            SQLException e = this.failures.poll();
+                            if (e != null) throw e;
+                            return false;
+                        }
+                        return null;
+                    });
+            con = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (p, m, a) -> switch (m.getName()) {
+                        case "unwrap" -> p;
+                        case "isWrapperFor" -> false;
+                        case "getMetaData" -> md;
+                        case "createStatement" -> st;
+                        case "close" -> {
+                            closed = true;
+                            yield null;
+                        }
+                        case "equals" -> p == a[0];
+                        case "hashCode" -> System.identityHashCode(p);
+                        default -> null;
+                    });
+        }
+    }
+
+    /** 按顺序借出给定的连接（同一个 Fake 可以出现多次，模拟连接回池后再借出） */
+    private static SessionProfileDataSource profiled(Fake... borrows) {
+        Deque<Fake> queue = new ArrayDeque<>(List.of(borrows));
+        DataSource pool = (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (p, m, a) -> switch (m.getName()) {
+                    case "getConnection" -> queue.remove().con;
+                    case "isWrapperFor" -> false;
+                    default -> null;
+                });
+        return new SessionProfileDataSource(pool, new QueryProperties.SessionProfiles());
+    }
+
+    private static SQLException mysqlError(int code) {
+        return new SQLException("mysql error " + code, "HY000", code);
+    }
+
+    @Test
+    void unknownVariableDisablesProfiles() throws Exception {
+        Fake a = new Fake(mysqlError(1193));
+        Fake b = new Fake();
+        SessionProfileDataSource ds = profiled(a, b);
+        QueryClassContext.set(QueryClass.LOOKUP);
+
+        assertSame(a.con, ds.getConnection(), "参数不受支持时原样交出连接");
+        assertFalse(a.closed);
+        ds.getConnection();
+        assertTrue(b.sql.isEmpty(), "停用后不再发 SET");
+    }
+
+    @Test
+    void invalidValueAlsoDisablesProfiles() throws Exception {
+        Fake a = new Fake(mysqlError(1231));
+        Fake b = new Fake();
+        SessionProfileDataSource ds = profiled(a, b);
+        QueryClassContext.set(QueryClass.AGGREGATE);
+
+        ds.getConnection();
+        ds.getConnection();
+        assertEquals(1, a.sql.size());
+        assertTrue(b.sql.isEmpty());
+    }
+
+    @Test
+    void otherErrorsEvictConnectionAndKeepProfiles() throws Exception {
+        Fake broken = new Fake(new SQLException("Communications link failure", "08S01", 0));
+        Fake fresh = new Fake();
+        Fake next = new Fake();
+        SessionProfileDataSource ds = profiled(broken, fresh, next);
+        QueryClassContext.set(QueryClass.LOOKUP);
+
+        assertSame(fresh.con, ds.getConnection(), "换一个连接重套");
+        assertTrue(broken.closed, "坏连接被剔除");
+        assertEquals(1, fresh.sql.size());
+
+        QueryClassContext.set(QueryClass.AGGREGATE);
+        ds.getConnection();
+        assertEquals(1, next.sql.size(), "配置照常生效");
+    }
+
+    @Test
+    void profiledConnectionsAreResetAfterDisable() throws Exception {
+        Fake profiledEarlier = new Fake();
+        Fake failing = new Fake(mysqlError(1193));
+        SessionProfileDataSource ds = profiled(profiledEarlier, failing, profiledEarlier);
+
+        QueryClassContext.set(QueryClass.LOOKUP);
+        ds.getConnection();
+        assertEquals(1, profiledEarlier.sql.size());
+
+        QueryClassContext.set(QueryClass.AGGREGATE);
+        ds.getConnection();
+
+        // 停用之后再借到之前套过 LOOKUP 的连接：发一次还原
+        ds.getConnection();
+        assertEquals(2, profiledEarlier.sql.size());
+        assertEquals(SessionProfileDataSource.mysqlSql(null), profiledEarlier.sql.get(1));
+    }
+
+    @Test
+    void generatesSingleStatementPerEngine() {
+        QueryProperties.SessionProfiles cfg = new QueryProperties.SessionProfiles();
+        assertEquals("SET SESSION transaction_read_only = ON, SESSION max_execution_time = 30000",
+                SessionProfileDataSource.mysqlSql(cfg.getLookup()));
+        assertEquals("SET SESSION transaction_read_only = DEFAULT, SESSION max_execution_time = DEFAULT",
+                SessionProfileDataSource.mysqlSql(null));
+        assertTrue(SessionProfileDataSource.pgSql(cfg.getAggregate()).contains("SET work_mem = '256MB'"));
+        assertTrue(SessionProfileDataSource.pgSql(null).contains("RESET statement_timeout"));
+    }
+}
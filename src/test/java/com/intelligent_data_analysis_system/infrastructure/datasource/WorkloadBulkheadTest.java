@@ -0,0 +1,124 @@
+package com.intelligent_data_analysis_system.infrastructure.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 隔离舱的排队顺序：许可空出来时按类别优先级唤醒，同类别按到达顺序；
+ * 只因本类别满了而排队的不挡后面的类别；等待超时计入 rejected。
+ */
+class WorkloadBulkheadTest {
+
+    private final List<String> order = new CopyOnWriteArrayList<>();
+
+    /** 在后台线程里排队，拿到许可后记下标签 */
+    private Thread queue(WorkloadBulkhead b, WorkloadClass cls, String label) throws InterruptedException {
+        int before = waiting(b, cls);
+        Thread t = new Thread(() -> {
+            try {
+                b.acquire(cls, 5_000);
+                order.add(label);
+            } catch (SQLTransientConnectionException e) {
+                order.add(label + ":rejected");
+            }
+        }, "bulkhead-" + label);
+        t.setDaemon(true);
+        t.start();
+        awaitWaiting(b, cls, before + 1);
+        return t;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int waiting(WorkloadBulkhead b, WorkloadClass cls) {
+        Map<String, Object> classes = (Map<String, Object>) b.stats().get("classes");
+        return (int) ((Map<String, Object>) classes.get(cls.name())).get("waiting");
+    }
+
+    private static void awaitWaiting(WorkloadBulkhead b, WorkloadClass cls, int n) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiting(b, cls) < n) {
+            if (System.nanoTime() > end) fail(cls + " 没有进入排队");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void join(Thread t) throws InterruptedException {
+        t.join(5_000);
+        assertFalse(t.isAlive(), t.getName() + " 没有拿到许可");
+    }
+
+    @Test
+    void higherPriorityClassIsWokenFirst() throws Exception {
+        WorkloadBulkhead b = new WorkloadBulkhead("t", 1, Map.of(), Map.of());
+        b.acquire(WorkloadClass.INTERACTIVE, 0);
+
+        Thread batch = queue(b, WorkloadClass.BATCH, "batch");
+        Thread meta = queue(b, WorkloadClass.METADATA, "metadata");
+        Thread first = queue(b, WorkloadClass.INTERACTIVE, "interactive-1");
+        Thread second = queue(b, WorkloadClass.INTERACTIVE, "interactive-2");
+
+        b.release(WorkloadClass.INTERACTIVE);
+        join(first);
+        b.release(WorkloadClass.INTERACTIVE);
+        join(second);
+        b.release(WorkloadClass.INTERACTIVE);
+        join(meta);
+        b.release(WorkloadClass.METADATA);
+        join(batch);
+
+        assertEquals(List.of("interactive-1", "interactive-2", "metadata", "batch"), order,
+                "先按类别优先级，同类别按到达顺序");
+    }
+
+    @Test
+    void classLimitedWaiterDoesNotBlockOthers() throws Exception {
+        WorkloadBulkhead b = new WorkloadBulkhead("t", 2, Map.of(WorkloadClass.INTERACTIVE, 1), Map.of());
+        b.acquire(WorkloadClass.INTERACTIVE, 0);
+        b.acquire(WorkloadClass.BATCH, 0);
+
+        Thread interactive = queue(b, WorkloadClass.INTERACTIVE, "interactive");
+        Thread batch = queue(b, WorkloadClass.BATCH, "batch");
+
+        // 空出一个许可：排在最前的 INTERACTIVE 已到类别上限，跳过它交给 BATCH
+        b.release(WorkloadClass.BATCH);
+        join(batch);
+        assertEquals(List.of("batch"), order);
+        assertTrue(interactive.isAlive(), "类别满了的继续等");
+
+        b.release(WorkloadClass.INTERACTIVE);
+        join(interactive);
+        assertEquals(List.of("batch", "interactive"), order);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void timeoutIsCountedAsRejected() throws Exception {
+        WorkloadBulkhead b = new WorkloadBulkhead("t", 1, Map.of(), Map.of(WorkloadClass.BATCH, 20L));
+        b.acquire(WorkloadClass.INTERACTIVE, 0);
+
+        assertThrows(SQLTransientConnectionException.class, () -> b.acquire(WorkloadClass.BATCH));
+
+        Map<String, Object> classes = (Map<String, Object>) b.stats().get("classes");
+        Map<String, Object> batch = (Map<String, Object>) classes.get("BATCH");
+        assertEquals(1L, batch.get("rejected"));
+        assertEquals(0, batch.get("waiting"));
+        assertEquals(1, b.stats().get("inUse"));
+    }
+
+    @Test
+    void batchLimitLeavesRoomForInteractive() throws Exception {
+        WorkloadBulkhead b = new WorkloadBulkhead("t", 2, Map.of(WorkloadClass.BATCH, 1), Map.of());
+        b.acquire(WorkloadClass.BATCH, 0);
+        assertThrows(SQLTransientConnectionException.class, () -> b.acquire(WorkloadClass.BATCH, 10),
+                "批处理最多占 1 个");
+        b.acquire(WorkloadClass.INTERACTIVE, 10);
+        assertEquals(2, b.stats().get("inUse"));
+    }
+}
@@ -0,0 +1,274 @@
+package com.intelligent_data_analysis_system.infrastructure.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列式结果：按元数据选存储，取值还原成驱动 getObject 的类型（null 按列记）；同名列的取舍同 ColumnMapRowMapper；
+ * 视图不复制数据；二进制编码往返后值不变。
+ */
+class ColumnarResultTest {
+
+    /** 一列的元数据：标签、getColumnClassName、精度、小数位 */
+    private record Meta(String label, String className, int precision, int scale) {
+        static Meta of(String label, Class<?> type) {
+            return new Meta(label, type == null ? null : type.getName(), 0, 0);
+        }
+
+        static Meta decimal(String label, int precision, int scale) {
+            return new Meta(label, BigDecimal.class.getName(), precision, scale);
+        }
+    }
+
+    /** 按行给值的假结果集，类型化的 getXxx 照驱动的约定（null 时返回 0 / false，wasNull 为 true） */
+    private static ResultSet resultSet(List<Meta> metas, Object[]... rows) {
+        ResultSetMetaData md = (ResultSetMetaData) Proxy.newProxyInstance(
+                ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+                (p, m, a) -> switch (m.getName()) {
+                    case "getColumnCount" -> metas.size();
+                    case "getColumnLabel", "getColumnName" -> metas.get((Integer) a[0] - 1).label();
+                    case "getColumnClassName" -> metas.get((Integer) a[0] - 1).className();
+                    case "getPrecision" -> metas.get((Integer) a[0] - 1).precision();
+                    case "getScale" -> metas.get((Integer) a[0] - 1).scale();
+                    default -> throw new UnsupportedOperationException(m.getName());
+                });
+        int[] current = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (p, m, a) -> {
+                    if (m.getName().equals("getMetaData")) return md;
+                    if (m.getName().equals("next")) return ++current[0] < rows.length;
+                    if (m.getName().equals("wasNull")) return wasNull[0];
+                    Object v = rows[current[0]][(Integer) a[0] - 1];
+                    wasNull[0] = v == null;
+                    return switch (m.getName()) {
+                        case "getLong" -> v == null ? 0L : ((Number) v).longValue();
+                        case "getDouble" -> v == null ? 0d : ((Number) v).doubleValue();
+                        case "getBoolean" -> v != null && (Boolean) v;
+                        case "getString" -> v == null ? null : String.valueOf(v);
+                        case "getBigDecimal", "getDate", "getTimestamp", "getObject" -> v;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    };
+                });
+    }
+
+    private static final List<Meta> TYPED = List.of(
+            Meta.of("i", Integer.class), Meta.of("l", Long.class), Meta.of("d", Double.class),
+            Meta.of("f", Float.class), Meta.decimal("amount", 12, 2), Meta.of("day", Date.class),
+            Meta.of("ts", Timestamp.class), Meta.of("flag", Boolean.class), Meta.of("name", String.class),
+            Meta.of("big", BigInteger.class));
+
+    private static ColumnarResult typed() throws Exception {
+        return ColumnarResult.from(resultSet(TYPED,
+                new Object[]{1, 10_000_000_000L, 1.5d, 2.5f, new BigDecimal("12.30"), Date.valueOf("2024-02-29"),
+                        Timestamp.valueOf("2024-03-01 12:30:45.123456"), true, "R3", new BigInteger("123456789012345678901234")},
+                new Object[]{null, null, null, null, null, null, null, null, null, null},
+                new Object[]{-7, -1L, -0.25d, 0f, new BigDecimal("-0.05"), Date.valueOf("1969-12-31"),
+                        Timestamp.valueOf("1969-12-31 23:59:59.000001"), false, "R3", BigInteger.ONE}));
+    }
+
+    // ========== 存储与取值 ==========
+
+    @Test
+    void valuesComeBackAsDriverTypes() throws Exception {
+        ColumnarResult r = typed();
+        assertEquals(3, r.rowCount());
+        assertEquals(List.of(ColumnarResult.Type.LONG, ColumnarResult.Type.LONG, ColumnarResult.Type.DOUBLE,
+                ColumnarResult.Type.DOUBLE, ColumnarResult.Type.DECIMAL, ColumnarResult.Type.DATE,
+                ColumnarResult.Type.TIMESTAMP, ColumnarResult.Type.BOOLEAN, ColumnarResult.Type.STRING,
+                ColumnarResult.Type.OBJECT), typesOf(r));
+
+        assertEquals(Arrays.asList(1, 10_000_000_000L, 1.5d, 2.5f, new BigDecimal("12.30"), Date.valueOf("2024-02-29"),
+                Timestamp.valueOf("2024-03-01 12:30:45.123456"), true, "R3", new BigInteger("123456789012345678901234")),
+                r.row(0));
+        assertEquals(Arrays.asList(-7, -1L, -0.25d, 0f, new BigDecimal("-0.05"), Date.valueOf("1969-12-31"),
+                Timestamp.valueOf("1969-12-31 23:59:59.000001"), false, "R3", BigInteger.ONE), r.row(2),
+                "负数和 1970 年以前的日期时间");
+    }
+
+    @Test
+    void nullsAreTrackedPerColumn() throws Exception {
+        ColumnarResult r = typed();
+        for (int c = 0; c < r.columnCount(); c++) {
+            assertTrue(r.isNull(1, c), r.column(c));
+            assertNull(r.get(1, c), r.column(c));
+            assertFalse(r.isNull(0, c), r.column(c));
+        }
+        assertTrue(Double.isNaN(r.getDouble(1, 0)));
+        assertEquals(0L, r.getLong(1, 1));
+        assertNull(r.getString(1, 8));
+        assertFalse(r.isNull(2, 7), "false 不是 null");
+    }
+
+    @Test
+    void primitiveAccessors() throws Exception {
+        ColumnarResult r = typed();
+        assertEquals(10_000_000_000L, r.getLong(0, 1));
+        assertEquals(12.3, r.getDouble(0, 4), 1e-9);
+        assertEquals(-0.05, r.getDouble(2, 4), 1e-9);
+        assertTrue(Double.isNaN(r.getDouble(0, 8)), "字符串不是数值");
+        assertEquals("1.5", r.getString(0, 2));
+        assertTrue(r.isNumeric(0));
+        assertTrue(r.isNumeric(4));
+        assertTrue(r.isNumeric(9), "OBJECT 列里是 BigInteger");
+        assertFalse(r.isNumeric(8));
+        assertFalse(r.isNumeric(5));
+    }
+
+    @Test
+    void decimalThatDoesNotFitIsKeptExactly() throws Exception {
+        // 驱动报的精度 / 小数位不准：放不进 long 的、位数多于 scale 的值都原样保留
+        ColumnarResult r = ColumnarResult.from(resultSet(List.of(Meta.decimal("v", 18, 2)),
+                new Object[]{new BigDecimal("1.25")},
+                new Object[]{new BigDecimal("123456789012345678901.50")},
+                new Object[]{new BigDecimal("0.125")}));
+        assertEquals(ColumnarResult.Type.DECIMAL, r.type(0));
+        assertEquals(new BigDecimal("1.25"), r.get(0, 0));
+        assertEquals(new BigDecimal("123456789012345678901.50"), r.get(1, 0));
+        assertEquals(new BigDecimal("0.125"), r.get(2, 0));
+
+        ColumnarResult wide = ColumnarResult.from(resultSet(List.of(Meta.decimal("v", 38, 0)),
+                new Object[]{new BigDecimal("99999999999999999999")}));
+        assertEquals(ColumnarResult.Type.OBJECT, wide.type(0), "精度超过 18 直接存对象");
+    }
+
+    @Test
+    void repeatedStringsShareDictionaryEntries() throws Exception {
+        Object[][] rows = new Object[200][];
+        for (int i = 0; i < rows.length; i++) rows[i] = new Object[]{i % 3 == 0 ? "R1" : i % 3 == 1 ? "R2" : null};
+        ColumnarResult r = ColumnarResult.from(resultSet(List.of(Meta.of("risk", String.class)), rows));
+
+        assertEquals(200, r.rowCount(), "超过初始容量后扩容");
+        assertEquals("R1", r.get(0, 0));
+        assertEquals("R2", r.get(199, 0));
+        assertNull(r.get(2, 0));
+
+        Object[][] unique = new Object[rows.length][];
+        for (int i = 0; i < rows.length; i++) unique[i] = new Object[]{rows[i][0] == null ? null : rows[i][0] + "-" + i};
+        ColumnarResult distinct = ColumnarResult.from(resultSet(List.of(Meta.of("risk", String.class)), unique));
+        assertTrue(r.estimatedBytes() < distinct.estimatedBytes());
+    }
+
+    @Test
+    void duplicateLabelsKeepFirstPositionAndLastValue() throws Exception {
+        ColumnarResult r = ColumnarResult.from(resultSet(
+                List.of(Meta.of("id", Long.class), Meta.of("name", String.class), Meta.of("ID", Long.class)),
+                new Object[]{1L, "a", 2L}));
+        assertEquals(List.of("id", "name"), r.columns());
+        assertEquals(2L, r.get(0, 0));
+    }
+
+    @Test
+    void unknownClassNameIsStoredAsObject() throws Exception {
+        ColumnarResult r = ColumnarResult.from(resultSet(List.of(Meta.of("doc", null), Meta.of("pg", Map.class)),
+                new Object[]{"{\"a\":1}", Map.of("k", "v")}));
+        assertEquals(ColumnarResult.Type.OBJECT, r.type(0));
+        assertEquals(ColumnarResult.Type.OBJECT, r.type(1));
+        assertEquals(Map.of("k", "v"), r.get(0, 1));
+    }
+
+    // ========== 视图 ==========
+
+    @Test
+    void viewsShareStorage() throws Exception {
+        ColumnarResult r = typed();
+
+        ColumnarResult picked = r.select(8, 0);
+        assertEquals(List.of("name", "i"), picked.columns());
+        assertEquals(Arrays.asList("R3", 1), picked.row(0));
+
+        ColumnarResult head = r.head(1);
+        assertEquals(1, head.rowCount());
+        assertSame(r, r.head(10));
+        assertEquals(0, r.head(-1).rowCount());
+
+        ColumnarResult renamed = r.select(0, 1).withColumns(List.of("A", "B"));
+        assertEquals(0, renamed.columnIndex("a"));
+        assertEquals(10_000_000_000L, renamed.get(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> r.withColumns(List.of("x")));
+        assertThrows(IndexOutOfBoundsException.class, () -> r.row(3));
+    }
+
+    @Test
+    void rowMapsAreCaseInsensitiveAndOrdered() throws Exception {
+        ColumnarResult r = typed();
+        Map<String, Object> row = r.rowMaps().get(0);
+
+        assertEquals("R3", row.get("NAME"));
+        assertTrue(row.containsKey("Amount"));
+        assertFalse(row.containsKey("missing"));
+        assertNull(row.get("missing"));
+        assertEquals(List.of("i", "l", "d", "f", "amount", "day", "ts", "flag", "name", "big"),
+                new ArrayList<>(row.keySet()));
+        assertTrue(r.rowMaps().get(1).containsKey("name"), "null 值的列也在");
+        assertEquals(3, r.rows().size());
+    }
+
+    @Test
+    void ofKeepsValuesAsGiven() {
+        ColumnarResult r = ColumnarResult.of(List.of("k", "v"), List.of(List.of("a", 1), Arrays.asList("b", null)));
+        assertEquals(2, r.rowCount());
+        assertEquals(1, r.get(0, 1));
+        assertTrue(r.isNull(1, 1));
+        assertTrue(ColumnarResult.empty().isEmpty());
+        assertEquals(-1, r.columnIndex(null));
+    }
+
+    // ========== 二进制编码 ==========
+
+    @Test
+    void bytesRoundTrip() throws Exception {
+        ColumnarResult r = typed();
+        ColumnarResult back = ColumnarResult.fromBytes(r.toBytes());
+
+        assertEquals(r.columns(), back.columns());
+        assertEquals(typesOf(r), typesOf(back));
+        for (int row = 0; row < r.rowCount(); row++) {
+            for (int c = 0; c < 9; c++) {
+                assertEquals(r.get(row, c), back.get(row, c), "row " + row + " " + r.column(c));
+            }
+        }
+        assertEquals(new BigDecimal("123456789012345678901234"), back.get(0, 9), "OBJECT 列的数值还原成 BigDecimal");
+        assertNull(back.get(1, 9));
+    }
+
+    @Test
+    void bytesRoundTripKeepsSpilledDecimalsAndLongStrings() throws Exception {
+        String longText = "x".repeat(70_000);
+        ColumnarResult r = ColumnarResult.from(resultSet(List.of(Meta.decimal("v", 18, 2), Meta.of("t", String.class)),
+                new Object[]{new BigDecimal("123456789012345678901.50"), longText},
+                new Object[]{new BigDecimal("3.10"), null}));
+        ColumnarResult back = ColumnarResult.fromBytes(r.toBytes());
+        assertEquals(new BigDecimal("123456789012345678901.50"), back.get(0, 0));
+        assertEquals(new BigDecimal("3.10"), back.get(1, 0));
+        assertEquals(longText, back.get(0, 1), "超过 writeUTF 的 64KB 上限");
+        assertNull(back.get(1, 1));
+    }
+
+    @Test
+    void unknownCodecVersionIsRejected() throws Exception {
+        byte[] bytes = typed().toBytes();
+        bytes[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> ColumnarResult.fromBytes(bytes));
+    }
+
+    private static List<ColumnarResult.Type> typesOf(ColumnarResult r) {
+        List<ColumnarResult.Type> out = new ArrayList<>();
+        for (int c = 0; c < r.columnCount(); c++) out.add(r.type(c));
+        return out;
+    }
+}
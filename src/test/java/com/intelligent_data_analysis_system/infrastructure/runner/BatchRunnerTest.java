@@ -0,0 +1,89 @@
+package com.intelligent_data_analysis_system.infrastructure.runner;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 投票模式：投不出答案时退回串行重试；同一次 LLM 生成的相同变体只记一票。
+ */
+class BatchRunnerTest {
+
+    private static List<String> sources(List<CandidateVoteExecutor.Candidate> candidates) {
+        return candidates.stream().map(c -> c.source).toList();
+    }
+
+    @Test
+    void voteWinnerSkipsRetry() {
+        AtomicInteger retries = new AtomicInteger();
+        BatchRunner.Solution voted = new BatchRunner.Solution("SELECT 1", null);
+
+        assertSame(voted, BatchRunner.solve(true, () -> voted, () -> {
+            retries.incrementAndGet();
+            return null;
+        }));
+        assertEquals(0, retries.get());
+    }
+
+    @Test
+    void allCandidatesFailingFallsBackToRetry() {
+        BatchRunner.Solution retried = new BatchRunner.Solution("SELECT 2", null);
+        assertSame(retried, BatchRunner.solve(true, () -> null, () -> retried));
+    }
+
+    @Test
+    void voteErrorFallsBackToRetry() {
+        BatchRunner.Solution retried = new BatchRunner.Solution("SELECT 2", null);
+        assertSame(retried, BatchRunner.solve(true, () -> {
+            throw new IllegalStateException("LLM unavailable");
+        }, () -> retried));
+    }
+
+    @Test
+    void voteDisabledOnlyRetries() {
+        BatchRunner.Solution retried = new BatchRunner.Solution("SELECT 2", null);
+        assertSame(retried, BatchRunner.solve(false, () -> fail("投票没开不该调用"), () -> retried));
+        assertNull(BatchRunner.solve(false, () -> null, () -> null), "重试也失败时返回空，题目照样输出占位");
+    }
+
+    @Test
+    void unchangedRawSqlIsNotASecondVote() {
+        String sql = "SELECT client_id FROM clients";
+        List<CandidateVoteExecutor.Candidate> c =
+                BatchRunner.voteCandidates(sql, "select  client_id\nFROM clients ", "", "");
+        assertEquals(List.of("llm"), sources(c), "patch 没改动时原始 SQL 与 patch 后的是同一票");
+    }
+
+    @Test
+    void distinctVariantsAreAllCandidates() {
+        List<CandidateVoteExecutor.Candidate> c = BatchRunner.voteCandidates(
+                "SELECT * FROM clients",
+                "SELECT client_id, client_name FROM clients",
+                "SELECT client_id, client_name FROM clients WHERE is_active = TRUE",
+                "SELECT client_id FROM clients");
+        assertEquals(List.of("llm", "llm-hint", "llm-raw", "rule"), sources(c));
+    }
+
+    @Test
+    void hintThatChangesNothingIsDropped() {
+        String patched = "SELECT client_id FROM clients";
+        List<CandidateVoteExecutor.Candidate> c =
+                BatchRunner.voteCandidates("SELECT * FROM clients", patched, patched, "");
+        assertEquals(List.of("llm", "llm-raw"), sources(c));
+    }
+
+    @Test
+    void ruleAgreeingWithLlmIsKeptAsIndependentVote() {
+        String sql = "SELECT client_id FROM clients";
+        List<CandidateVoteExecutor.Candidate> c = BatchRunner.voteCandidates(sql, sql, "", sql);
+        assertEquals(List.of("llm", "rule"), sources(c), "不同来源给出同一条 SQL 仍各记一票");
+    }
+
+    @Test
+    void noCandidates() {
+        assertTrue(BatchRunner.voteCandidates("", "", "", "").isEmpty());
+    }
+}
@@ -0,0 +1,285 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.BatchDataSources;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量只读查询：PG 上多条语句一个 PreparedStatement 发出去；MySQL 只在多语句专用池上这样做，否则逐条执行；
+ * 中途失败从失败处起改逐条；截止时间取消时停掉正在执行的语句，语句关闭后取消钩子随之注销。
+ */
+class BatchQueryExecutorTest {
+
+    private static final String MISSING = "missing_table";
+
+    /** 假数据库：每条语句返回一行一列（值是语句本身），涉及 MISSING 的语句执行时报错；记下预编译的 SQL、绑定值和取消次数 */
+    private static final class FakeDb {
+        final String product;
+        final List<String> prepared = new ArrayList<>();
+        final List<Object> bound = new ArrayList<>();
+        int cancels;
+        /** 语句执行期间调用（模拟执行中途发生的事） */
+        Runnable duringExecute = () -> {};
+
+        FakeDb(String product) {
+            this.product = product;
+        }
+
+        DataSource dataSource() {
+            return stub(DataSource.class, (p, m, a) -> m.getName().equals("getConnection") ? connection() : null);
+        }
+
+        private Connection connection() {
+            DatabaseMetaData meta = stub(DatabaseMetaData.class,
+                    (p, m, a) -> m.getName().equals("getDatabaseProductName") ? product : null);
+            return stub(Connection.class, (p, m, a) -> switch (m.getName()) {
+                case "getMetaData" -> meta;
+                case "prepareStatement" -> statement((String) a[0]);
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            prepared.add(sql);
+            String[] segments = sql.split("\n;\n");
+            int[] current = {0};
+            return stub(PreparedStatement.class, (p, m, a) -> {
+                String name = m.getName();
+                if (name.startsWith("set") && a.length == 2 && !name.equals("setQueryTimeout")) {
+                    bound.add(a[1]);
+                    return null;
+                }
+                return switch (name) {
+                    case "execute" -> {
+                        duringExecute.run();
+                        failIfMissing(segments[0]);
+                        yield true;
+                    }
+                    case "executeQuery" -> {
+                        duringExecute.run();
+                        failIfMissing(segments[0]);
+                        yield resultSet(segments[0]);
+                    }
+                    case "getResultSet" -> resultSet(segments[current[0]]);
+                    case "getMoreResults" -> {
+                        if (++current[0] >= segments.length) yield false;
+                        failIfMissing(segments[current[0]]);
+                        yield true;
+                    }
+                    case "getUpdateCount" -> -1;
+                    case "cancel" -> {
+                        cancels++;
+                        yield null;
+                    }
+                    default -> null;
+                };
+            });
+        }
+
+        private static void failIfMissing(String sql) throws SQLException {
+            if (sql.contains(MISSING)) throw new SQLException("relation \"" + MISSING + "\" does not exist", "42P01");
+        }
+
+        private static ResultSet resultSet(String value) {
+            ResultSetMetaData meta = stub(ResultSetMetaData.class, (p, m, a) -> switch (m.getName()) {
+                case "getColumnCount" -> 1;
+                case "getColumnLabel" -> "sql";
+                default -> null;
+            });
+            boolean[] read = {false};
+            return stub(ResultSet.class, (p, m, a) -> switch (m.getName()) {
+                case "getMetaData" -> meta;
+                case "next" -> {
+                    boolean has = !read[0];
+                    read[0] = true;
+                    yield has;
+                }
+                case "getObject" -> value;
+                default -> null;
+            });
+        }
+    }
+
+    /** 没处理的方法返回类型的默认值（基本类型不能返回 null） */
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, m, a) -> {
+            Object v = handler.invoke(p, m, a == null ? new Object[0] : a);
+            if (v != null || !m.getReturnType().isPrimitive()) return v;
+            Class<?> r = m.getReturnType();
+            if (r == boolean.class) return false;
+            if (r == void.class) return null;
+            if (r == long.class) return 0L;
+            return 0;
+        }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<BatchDataSources> batchSources(DataSource multiQuery) {
+        BatchDataSources sources = multiQuery == null ? null : new BatchDataSources(null) {
+            @Override
+            public DataSource multiQuery() {
+                return multiQuery;
+            }
+        };
+        return (ObjectProvider<BatchDataSources>) Proxy.newProxyInstance(
+                ObjectProvider.class.getClassLoader(), new Class<?>[]{ObjectProvider.class},
+                (p, m, a) -> m.getName().equals("getIfAvailable") ? sources : null);
+    }
+
+    private static BatchQueryExecutor executor(FakeDb main, FakeDb multiQuery) {
+        return new BatchQueryExecutor(new NamedParameterJdbcTemplate(main.dataSource()),
+                batchSources(multiQuery == null ? null : multiQuery.dataSource()));
+    }
+
+    private static List<BatchQueryExecutor.Statement> statements(String... sqls) {
+        List<BatchQueryExecutor.Statement> out = new ArrayList<>();
+        for (int i = 0; i < sqls.length; i++) {
+            out.add(new BatchQueryExecutor.Statement(sqls[i], Map.of("p", i)));
+        }
+        return out;
+    }
+
+    private static String value(BatchQueryExecutor.Outcome o) {
+        assertNull(o.error);
+        return o.result.getString(0, 0);
+    }
+
+    // ========== PG 流水线 ==========
+
+    @Test
+    void postgresSendsTheBatchAsOneStatement() {
+        FakeDb pg = new FakeDb("PostgreSQL");
+        BatchQueryExecutor.Result r = executor(pg, null).execute(statements(
+                "SELECT client_id FROM clients WHERE risk_level = :p;",
+                "SELECT trade_id FROM transactions WHERE status = :p -- 行尾注释"), Deadline.none(), 5);
+
+        assertEquals("PIPELINED", r.mode);
+        assertEquals(1, r.roundTrips);
+        assertEquals(List.of("SELECT client_id FROM clients WHERE risk_level = ?\n;\n"
+                + "SELECT trade_id FROM transactions WHERE status = ? -- 行尾注释"), pg.prepared);
+        assertEquals(List.of(0, 1), pg.bound, "各条的参数按顺序拼在一起");
+        assertEquals("SELECT client_id FROM clients WHERE risk_level = ?", value(r.outcomes.get(0)));
+        assertTrue(value(r.outcomes.get(1)).startsWith("SELECT trade_id"));
+    }
+
+    @Test
+    void postgresFailureFallsBackToSequentialFromTheFailedStatement() {
+        FakeDb pg = new FakeDb("PostgreSQL");
+        BatchQueryExecutor.Result r = executor(pg, null).execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM " + MISSING + " WHERE x = :p",
+                "SELECT 3 AS c FROM holdings WHERE holding_id = :p"), Deadline.none(), 5);
+
+        assertEquals("MIXED", r.mode);
+        assertEquals(3, r.roundTrips);
+        assertEquals(3, pg.prepared.size(), "第一条的结果保留，后两条逐条执行");
+        assertTrue(value(r.outcomes.get(0)).startsWith("SELECT 1"));
+        assertNull(r.outcomes.get(1).result);
+        assertNotNull(r.outcomes.get(1).error);
+        assertTrue(value(r.outcomes.get(2)).startsWith("SELECT 3"));
+    }
+
+    // ========== MySQL 多语句池 ==========
+
+    @Test
+    void mysqlWithoutMultiQueryPoolRunsSequentially() {
+        FakeDb mysql = new FakeDb("MySQL");
+        BatchQueryExecutor.Result r = executor(mysql, null).execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM holdings WHERE holding_id = :p"), Deadline.none(), 5);
+
+        assertEquals("SEQUENTIAL", r.mode);
+        assertEquals(2, r.roundTrips);
+        assertEquals(2, mysql.prepared.size());
+        assertTrue(mysql.prepared.stream().noneMatch(s -> s.contains(";")));
+    }
+
+    @Test
+    void mysqlMultiQueryPoolIsUsedOnlyForRealBatches() {
+        FakeDb main = new FakeDb("MySQL");
+        FakeDb multi = new FakeDb("MySQL");
+        BatchQueryExecutor executor = executor(main, multi);
+
+        BatchQueryExecutor.Result batch = executor.execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM holdings WHERE holding_id = :p"), Deadline.none(), 5);
+        assertEquals("PIPELINED", batch.mode);
+        assertEquals(1, multi.prepared.size());
+        assertTrue(main.prepared.isEmpty(), "多语句只在专用池上执行");
+
+        BatchQueryExecutor.Result single = executor.execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p"), Deadline.none(), 5);
+        assertEquals("SEQUENTIAL", single.mode);
+        assertEquals(1, main.prepared.size(), "单条不借多语句池的连接");
+        assertEquals(1, multi.prepared.size());
+    }
+
+    @Test
+    void embeddedSecondStatementIsRejectedBeforeAnythingRuns() {
+        FakeDb pg = new FakeDb("PostgreSQL");
+        assertThrows(IllegalArgumentException.class, () -> executor(pg, null).execute(statements(
+                "SELECT 1 FROM clients",
+                "SELECT 1 FROM clients; DELETE FROM clients"), Deadline.none(), 5));
+        assertTrue(pg.prepared.isEmpty());
+    }
+
+    // ========== 取消 ==========
+
+    @Test
+    void cancellingTheDeadlineStopsTheRunningStatement() {
+        FakeDb pg = new FakeDb("PostgreSQL");
+        Deadline deadline = Deadline.none();
+        pg.duringExecute = deadline::cancel;
+
+        executor(pg, null).execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM holdings WHERE holding_id = :p"), deadline, 5);
+        assertEquals(1, pg.cancels);
+    }
+
+    @Test
+    void closedStatementsAreNotCancelledLater() {
+        FakeDb mysql = new FakeDb("MySQL");
+        Deadline deadline = Deadline.none();
+
+        BatchQueryExecutor.Result r = executor(mysql, null).execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM holdings WHERE holding_id = :p",
+                "SELECT 3 AS c FROM portfolios WHERE portfolio_id = :p"), deadline, 5);
+        assertEquals(3, r.roundTrips);
+
+        deadline.cancel();
+        assertEquals(0, mysql.cancels, "每条语句关闭时取消钩子已经注销");
+    }
+
+    @Test
+    void expiredDeadlineSkipsRemainingStatements() {
+        FakeDb mysql = new FakeDb("MySQL");
+        Deadline deadline = Deadline.none();
+        mysql.duringExecute = deadline::cancel;
+
+        BatchQueryExecutor.Result r = executor(mysql, null).execute(statements(
+                "SELECT 1 AS a FROM clients WHERE client_id = :p",
+                "SELECT 2 AS b FROM holdings WHERE holding_id = :p"), deadline, 5);
+        assertEquals(1, r.roundTrips);
+        assertNotNull(r.outcomes.get(0).result);
+        assertNotNull(r.outcomes.get(1).error);
+    }
+}
@@ -0,0 +1,193 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 代价准入的判定：阈值内放行；超阈值时 PG 收紧 LIMIT 并再 EXPLAIN 确认、响应里写明截断，
+ * MySQL 确认不了改写后的代价，拒绝而不是悄悄截断；SQL 自己的 LIMIT 够小时放行；EXPLAIN 失败不挡查询。
+ */
+class CostAdmissionGuardTest {
+
+    private static final String SQL = "SELECT id, amount FROM transactions WHERE amount > :p0";
+
+    private static final String MYSQL_SMALL = """
+            {"query_block": {"cost_info": {"query_cost": "12.0"},
+              "table": {"table_name": "transactions", "access_type": "range",
+                        "rows_examined_per_scan": 10, "rows_produced_per_join": 10}}}""";
+
+    private static final String MYSQL_FULL_SCAN = """
+            {"query_block": {"cost_info": {"query_cost": "100512.0"},
+              "table": {"table_name": "transactions", "access_type": "ALL",
+                        "rows_examined_per_scan": 1000000, "rows_produced_per_join": 1000000}}}""";
+
+    private static final String PG_SCAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "transactions", "Total Cost": 20000.0,
+                       "Plan Rows": 1000000}}]""";
+
+    private static final String PG_LIMITED = """
+            [{"Plan": {"Node Type": "Limit", "Total Cost": 2.0, "Plan Rows": 100,
+              "Plans": [{"Node Type": "Seq Scan", "Relation Name": "transactions", "Plan Rows": 1000000}]}}]""";
+
+    private static final String PG_SORTED = """
+            [{"Plan": {"Node Type": "Sort", "Total Cost": 90000.0, "Plan Rows": 1000000,
+              "Plans": [{"Node Type": "Seq Scan", "Relation Name": "transactions", "Plan Rows": 1000000}]}}]""";
+
+    /** 按 EXPLAIN 的 SQL 返回计划 JSON；返回 null 时模拟 EXPLAIN 抛错 */
+    private static final class FakeJdbc extends NamedParameterJdbcTemplate {
+        final List<String> explained = new ArrayList<>();
+        final Function<String, String> plans;
+
+        FakeJdbc(Function<String, String> plans) {
+            super((DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                    new Class<?>[]{DataSource.class}, (p, m, a) -> null));
+            this.plans = plans;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T query(String sql, Map<String, ?> paramMap, ResultSetExtractor<T> rse) {
+            explained.add(sql);
+            String json = plans.apply(sql);
+            if (json == null) throw new IllegalStateException("EXPLAIN not allowed");
+            return (T) json;
+        }
+    }
+
+    private static QueryProperties properties() {
+        QueryProperties props = new QueryProperties();
+        QueryProperties.Thresholds t = new QueryProperties.Thresholds();
+        t.setMaxRows(1000L);
+        props.getAdmission().getThresholds().put("default", t);
+        return props;
+    }
+
+    private static CostAdmissionGuard guard(FakeJdbc jdbc) {
+        return new CostAdmissionGuard(jdbc, properties());
+    }
+
+    private static CostAdmissionGuard.Decision check(CostAdmissionGuard guard, SqlDialect dialect, String sql) {
+        return guard.check(DataSourceDomain.FINANCE, dialect, sql, Map.of("p0", 1), "fp-" + sql.hashCode(),
+                WorkloadClass.INTERACTIVE, true);
+    }
+
+    @Test
+    void withinThresholdsIsAdmittedAndPlanCached() {
+        FakeJdbc jdbc = new FakeJdbc(sql -> MYSQL_SMALL);
+        CostAdmissionGuard guard = guard(jdbc);
+
+        CostAdmissionGuard.Decision first = check(guard, SqlDialect.MYSQL, SQL);
+        assertEquals(CostAdmissionGuard.Verdict.ADMIT, first.verdict);
+        assertEquals(SQL, first.sql);
+        assertFalse(first.planCached);
+
+        assertTrue(check(guard, SqlDialect.MYSQL, SQL).planCached);
+        assertEquals(1, jdbc.explained.size(), "同一指纹只 EXPLAIN 一次");
+        assertTrue(jdbc.explained.get(0).startsWith("EXPLAIN FORMAT=JSON "));
+    }
+
+    @Test
+    void mysqlOverThresholdIsRejectedInsteadOfTruncated() {
+        CostAdmissionGuard guard = guard(new FakeJdbc(sql -> MYSQL_FULL_SCAN));
+
+        BusinessException e = assertThrows(BusinessException.class, () -> check(guard, SqlDialect.MYSQL, SQL));
+        assertTrue(e.getMessage().contains("1000000"), e.getMessage());
+        assertTrue(e.getMessage().contains("transactions"), "写明哪张表在全表扫描");
+    }
+
+    @Test
+    void ownSmallLimitIsAdmittedUnchanged() {
+        CostAdmissionGuard guard = guard(new FakeJdbc(sql -> MYSQL_FULL_SCAN));
+        String limited = SQL + " LIMIT 20";
+
+        CostAdmissionGuard.Decision d = check(guard, SqlDialect.MYSQL, limited);
+        assertEquals(CostAdmissionGuard.Verdict.ADMIT, d.verdict);
+        assertEquals(limited, d.sql, "不改用户要的行数");
+        assertEquals(0, d.truncatedTo);
+        assertNotNull(d.reason, "超了哪一项照样写在 reason 里");
+    }
+
+    @Test
+    void postgresRewriteIsConfirmedAndReported() {
+        FakeJdbc jdbc = new FakeJdbc(sql -> sql.contains("LIMIT") ? PG_LIMITED : PG_SCAN);
+        CostAdmissionGuard guard = guard(jdbc);
+
+        CostAdmissionGuard.Decision d = check(guard, SqlDialect.POSTGRESQL, SQL);
+        assertEquals(CostAdmissionGuard.Verdict.REWRITE, d.verdict);
+        assertTrue(d.sql.endsWith("LIMIT 100"), d.sql);
+        assertEquals(2, jdbc.explained.size(), "改写后再 EXPLAIN 一次");
+        assertEquals(100, d.truncatedTo);
+        assertEquals(100, d.toMap().get("truncatedTo"));
+        assertTrue(((String) d.toMap().get("reason")).contains("前 100 行"));
+    }
+
+    @Test
+    void postgresRewriteThatStaysOverThresholdIsRejected() {
+        CostAdmissionGuard guard = guard(new FakeJdbc(sql -> PG_SCAN));
+        assertThrows(BusinessException.class, () -> check(guard, SqlDialect.POSTGRESQL, SQL));
+    }
+
+    @Test
+    void blockingPlanIsRejected() {
+        CostAdmissionGuard guard = guard(new FakeJdbc(sql -> PG_SORTED));
+        assertThrows(BusinessException.class,
+                () -> check(guard, SqlDialect.POSTGRESQL, SQL + " ORDER BY amount LIMIT 20"),
+                "排序要读完输入，LIMIT 省不了扫描");
+    }
+
+    @Test
+    void explainFailureSkipsAdmission() {
+        CostAdmissionGuard.Decision d = check(guard(new FakeJdbc(sql -> null)), SqlDialect.MYSQL, SQL);
+        assertEquals(CostAdmissionGuard.Verdict.SKIPPED, d.verdict);
+        assertEquals(SQL, d.sql);
+    }
+
+    @Test
+    void streamingExportIsNotRewritten() {
+        CostAdmissionGuard guard = guard(new FakeJdbc(sql -> sql.contains("LIMIT") ? PG_LIMITED : PG_SCAN));
+        assertThrows(BusinessException.class, () -> guard.check(DataSourceDomain.FINANCE, SqlDialect.POSTGRESQL,
+                SQL, Map.of("p0", 1), "fp", WorkloadClass.INTERACTIVE, false));
+    }
+
+    @Test
+    void thresholdsOverrideFromGeneralToSpecific() {
+        QueryProperties props = properties();
+        Map<String, QueryProperties.Thresholds> all = props.getAdmission().getThresholds();
+        QueryProperties.Thresholds mysql = new QueryProperties.Thresholds();
+        mysql.setMaxCost(5000.0);
+        QueryProperties.Thresholds batch = new QueryProperties.Thresholds();
+        batch.setMaxRows(20000L);
+        QueryProperties.Thresholds financeBatch = new QueryProperties.Thresholds();
+        financeBatch.setMaxFullScanRows(70000L);
+        all.put("MYSQL", mysql);
+        all.put("batch", batch);
+        all.put("FINANCE.BATCH", financeBatch);
+
+        CostAdmissionGuard guard = new CostAdmissionGuard(new FakeJdbc(sql -> MYSQL_SMALL), props);
+        QueryProperties.Thresholds t = guard.resolve(DataSourceDomain.FINANCE, SqlDialect.MYSQL, WorkloadClass.BATCH);
+        assertEquals(20000L, t.getMaxRows(), "类别覆盖 default，键不区分大小写");
+        assertEquals(5000.0, t.getMaxCost());
+        assertEquals(70000L, t.getMaxFullScanRows());
+
+        QueryProperties.Thresholds interactive =
+                guard.resolve(DataSourceDomain.FINANCE, SqlDialect.POSTGRESQL, WorkloadClass.INTERACTIVE);
+        assertEquals(1000L, interactive.getMaxRows());
+        assertNull(interactive.getMaxCost());
+        assertNull(interactive.getMaxFullScanRows());
+    }
+}
@@ -0,0 +1,161 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.TaskThreads;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.EngineDataSources;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 引擎竞速：慢的一路被取消才记胜负，对方先失败的不战而胜不计入；另一个引擎赢时按主引擎列名改名；
+ * 两个引擎语义可能不同的查询不比。
+ */
+class EngineRacerTest {
+
+    private static final String DOMAIN = "race_test";
+
+    private final EngineRacer racer = new EngineRacer(new QueryProperties(), noEngines(), new TaskThreads(false));
+
+    @AfterEach
+    void shutdown() {
+        racer.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<EngineDataSources> noEngines() {
+        return (ObjectProvider<EngineDataSources>) Proxy.newProxyInstance(
+                ObjectProvider.class.getClassLoader(), new Class<?>[]{ObjectProvider.class},
+                (p, m, a) -> null);
+    }
+
+    private static EngineRacer.Plan plan() {
+        return new EngineRacer.Plan(DOMAIN + "|fp", EngineRacer.Mode.RACE, SqlDialect.MYSQL, SqlDialect.POSTGRESQL,
+                null, "SELECT id, name FROM t", List.of("ID", "Name"));
+    }
+
+    private static ColumnarResult result(String... columns) {
+        return ColumnarResult.of(List.of(columns), List.of(List.of(1, "a")));
+    }
+
+    /** 一直跑到被取消的一路 */
+    private static EngineRacer.Leg slow(CountDownLatch cancelled) {
+        return onCancel -> {
+            onCancel.accept(cancelled::countDown);
+            try {
+                cancelled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("cancelled");
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> learned() {
+        return (List<Map<String, Object>>) racer.stats().get("learned");
+    }
+
+    @Test
+    void slowerLegIsCancelledAndTheWinIsRecorded() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        EngineRacer.Plan plan = plan();
+
+        ColumnarResult r = racer.execute(plan, DataSourceDomain.FINANCE, hook -> {},
+                onCancel -> result("ID", "Name"), slow(cancelled));
+
+        assertEquals(List.of("ID", "Name"), r.columns());
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS), "输的一路被取消");
+        assertEquals("MYSQL", plan.toMap().get("engine"));
+        assertEquals(1, learned().size());
+        assertEquals(1, learned().get(0).get("primaryWins"));
+    }
+
+    @Test
+    void forfeitIsNotRecorded() throws Exception {
+        CountDownLatch alternateFailed = new CountDownLatch(1);
+        EngineRacer.Plan plan = plan();
+
+        ColumnarResult r = racer.execute(plan, DataSourceDomain.FINANCE, hook -> {},
+                onCancel -> {
+                    // 等另一路先失败再返回
+                    try {
+                        alternateFailed.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return result("ID", "Name");
+                },
+                onCancel -> {
+                    alternateFailed.countDown();
+                    throw new IllegalStateException("connection refused");
+                });
+
+        assertEquals(List.of("ID", "Name"), r.columns());
+        assertEquals("connection refused", plan.toMap().get("loserError"));
+        assertTrue(learned().isEmpty(), "不战而胜不计入胜负");
+    }
+
+    @Test
+    void alternateWinIsRelabeledToPrimaryColumnNames() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        EngineRacer.Plan plan = plan();
+
+        ColumnarResult r = racer.execute(plan, DataSourceDomain.FINANCE, hook -> {},
+                slow(cancelled), onCancel -> result("id", "name"));
+
+        assertEquals(List.of("ID", "Name"), r.columns(), "PG 的小写列名改回主引擎的");
+        assertEquals(1, learned().get(0).get("alternateWins"));
+    }
+
+    @Test
+    void bothLegsFailingThrowsThePrimaryError() {
+        IllegalStateException primary = new IllegalStateException("primary");
+        assertSame(primary, assertThrows(IllegalStateException.class,
+                () -> racer.execute(plan(), DataSourceDomain.FINANCE, hook -> {},
+                        onCancel -> { throw primary; },
+                        onCancel -> { throw new IllegalStateException("alternate"); })));
+        assertTrue(learned().isEmpty());
+    }
+
+    @Test
+    void outputLabelsFollowPrimaryEngineRules() {
+        assertEquals(List.of("ID", "total"), EngineRacer.outputLabels(SqlDialect.MYSQL,
+                "SELECT ID, SUM(amount) AS `total` FROM t GROUP BY ID"));
+        assertEquals(List.of("id", "Total"), EngineRacer.outputLabels(SqlDialect.POSTGRESQL,
+                "SELECT ID, SUM(amount) AS \"Total\" FROM t GROUP BY ID"));
+        assertEquals(List.of(), EngineRacer.outputLabels(SqlDialect.MYSQL, "SELECT * FROM t"));
+        assertNull(EngineRacer.outputLabels(SqlDialect.MYSQL, "SELECT COUNT(*) FROM t"), "表达式列没别名不比");
+    }
+
+    @Test
+    void divergentQueriesAreNotRaced() {
+        Map<String, Class<?>> cols = new LinkedHashMap<>();
+        cols.put("id", Long.class);
+        cols.put("name", String.class);
+        cols.put("amount", BigDecimal.class);
+        SchemaCatalog.get().registerTables(DOMAIN, List.of(new SchemaCatalog.TableInfo("t", "id", cols)));
+
+        assertNull(EngineRacer.divergence(DOMAIN, "SELECT id, amount FROM t WHERE id > 10 ORDER BY id"));
+        assertNull(EngineRacer.divergence(DOMAIN, "SELECT id FROM t ORDER BY amount DESC NULLS LAST"));
+        assertEquals("除法", EngineRacer.divergence(DOMAIN, "SELECT amount / 3 AS x FROM t"));
+        assertEquals("比较字符串列", EngineRacer.divergence(DOMAIN, "SELECT id FROM t WHERE name = 'a'"));
+        assertEquals("按字符串列排序", EngineRacer.divergence(DOMAIN, "SELECT id FROM t ORDER BY name NULLS LAST"));
+        assertEquals("排序键没写 NULLS FIRST/LAST", EngineRacer.divergence(DOMAIN, "SELECT id FROM t ORDER BY amount"));
+        assertEquals("字符串列 MIN / MAX", EngineRacer.divergence(DOMAIN, "SELECT MAX(name) AS m FROM t"));
+    }
+}
@@ -0,0 +1,281 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结果缓存：默认关闭；L1 命中、L2 命中回填 L1；按表 / 按域失效同时清 Redis 里登记的键，
+ * 并通过广播清掉其它节点的 L1；TTL 取涉及表的最小值，按字节数 LRU 淘汰。
+ */
+class QueryResultCacheTest {
+
+    private static final String TX_SQL = "SELECT trade_id FROM transactions WHERE status = :p_lit_0";
+    private static final String CLIENT_SQL = "SELECT client_id FROM clients WHERE risk_level = :p_lit_0";
+
+    /** 多个节点共用的 Redis 替身：键值、集合和一条广播频道 */
+    private static final class FakeRedis {
+        final Map<String, byte[]> values = new HashMap<>();
+        final Map<String, Set<String>> sets = new HashMap<>();
+        final List<QueryResultCache> subscribers = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, byte[]> valueTemplate() {
+            ValueOperations<String, byte[]> ops = (ValueOperations<String, byte[]>) Proxy.newProxyInstance(
+                    ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class},
+                    (p, m, a) -> switch (m.getName()) {
+                        case "get" -> values.get((String) a[0]);
+                        case "set" -> {
+                            values.put((String) a[0], (byte[]) a[1]);
+                            yield null;
+                        }
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+            return new RedisTemplate<>() {
+                @Override
+                public ValueOperations<String, byte[]> opsForValue() {
+                    return ops;
+                }
+
+                @Override
+                public Long delete(Collection<String> keys) {
+                    return keys.stream().filter(k -> values.remove(k) != null).count();
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        StringRedisTemplate tagTemplate() {
+            SetOperations<String, String> ops = (SetOperations<String, String>) Proxy.newProxyInstance(
+                    SetOperations.class.getClassLoader(), new Class<?>[]{SetOperations.class},
+                    (p, m, a) -> switch (m.getName()) {
+                        case "add" -> {
+                            Set<String> set = sets.computeIfAbsent((String) a[0], k -> new HashSet<>());
+                            long n = 0;
+                            for (Object v : (Object[]) a[1]) if (set.add((String) v)) n++;
+                            yield n;
+                        }
+                        case "members" -> sets.containsKey((String) a[0]) ? new HashSet<>(sets.get((String) a[0])) : null;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+            return new StringRedisTemplate() {
+                @Override
+                public SetOperations<String, String> opsForSet() {
+                    return ops;
+                }
+
+                @Override
+                public Boolean delete(String key) {
+                    return sets.remove(key) != null;
+                }
+
+                @Override
+                public Boolean expire(String key, long timeout, TimeUnit unit) {
+                    return true;
+                }
+
+                @Override
+                public Boolean expire(String key, Duration timeout) {
+                    return true;
+                }
+
+                @Override
+                public Long convertAndSend(String channel, Object message) {
+                    for (QueryResultCache c : subscribers) c.onInvalidateMessage((String) message);
+                    return (long) subscribers.size();
+                }
+            };
+        }
+
+        QueryResultCache node(QueryProperties props) {
+            QueryResultCache c = new QueryResultCache(props, noRedis());
+            c.attachRedis(valueTemplate(), tagTemplate());
+            subscribers.add(c);
+            return c;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<RedisConnectionFactory> noRedis() {
+        return (ObjectProvider<RedisConnectionFactory>) Proxy.newProxyInstance(
+                ObjectProvider.class.getClassLoader(), new Class<?>[]{ObjectProvider.class}, (p, m, a) -> null);
+    }
+
+    private static QueryProperties enabled() {
+        QueryProperties props = new QueryProperties();
+        props.getCache().setEnabled(true);
+        return props;
+    }
+
+    private static QueryResultCache.Key key(String sql, Object param) {
+        return QueryResultCache.Key.of("FINANCE", "mysql", sql, Map.of("p_lit_0", param), 100);
+    }
+
+    private static ColumnarResult result(Object... values) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (Object v : values) rows.add(List.of(v));
+        return ColumnarResult.of(List.of("id"), rows);
+    }
+
+    @Test
+    void disabledByDefault() {
+        QueryResultCache cache = new QueryResultCache(new QueryProperties(), noRedis());
+        assertFalse(cache.isEnabled());
+        cache.put(key(TX_SQL, 1), result(1));
+        assertNull(cache.get(key(TX_SQL, 1)));
+        assertEquals(0, cache.stats().get("entries"));
+    }
+
+    @Test
+    void localHitAndTypedParameters() {
+        QueryResultCache cache = new QueryResultCache(enabled(), noRedis());
+        cache.put(key(TX_SQL, 1), result(7));
+
+        QueryResultCache.Hit hit = cache.get(key(TX_SQL, 1));
+        assertNotNull(hit);
+        assertEquals("L1", hit.tier);
+        assertEquals(7L, hit.result.getLong(0, 0));
+        assertNull(cache.get(key(TX_SQL, "1")), "'1' 和 1 是不同的绑定值");
+        assertEquals(1L, cache.stats().get("l1Hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void l2HitIsCopiedIntoL1() {
+        FakeRedis redis = new FakeRedis();
+        QueryResultCache a = redis.node(enabled());
+        QueryResultCache b = redis.node(enabled());
+
+        a.put(key(TX_SQL, 1), result(7));
+        QueryResultCache.Hit first = b.get(key(TX_SQL, 1));
+        assertEquals("L2", first.tier);
+        assertEquals(7L, first.result.getLong(0, 0));
+
+        QueryResultCache.Hit second = b.get(key(TX_SQL, 1));
+        assertEquals("L1", second.tier, "L2 命中后回填本节点");
+        assertEquals(1L, b.stats().get("l2Hits"));
+        assertEquals(1L, b.stats().get("l1Hits"));
+    }
+
+    @Test
+    void tableInvalidationClearsTaggedKeysOnEveryNode() {
+        FakeRedis redis = new FakeRedis();
+        QueryResultCache a = redis.node(enabled());
+        QueryResultCache b = redis.node(enabled());
+
+        a.put(key(TX_SQL, 1), result(1));
+        a.put(key(CLIENT_SQL, "R3"), result(2));
+        assertNotNull(b.get(key(TX_SQL, 1)));
+        assertNotNull(b.get(key(CLIENT_SQL, "R3")));
+
+        assertEquals(1, a.invalidate("finance", "`transactions`"));
+
+        assertNull(a.get(key(TX_SQL, 1)));
+        assertNull(b.get(key(TX_SQL, 1)), "广播清掉了 B 的 L1，Redis 里登记的键也删了");
+        assertEquals("L1", b.get(key(CLIENT_SQL, "R3")).tier, "别的表不受影响");
+        assertEquals(1, redis.values.size());
+    }
+
+    @Test
+    void domainInvalidationClearsOnlyThatDomain() {
+        FakeRedis redis = new FakeRedis();
+        QueryResultCache a = redis.node(enabled());
+        QueryResultCache b = redis.node(enabled());
+
+        a.put(key(TX_SQL, 1), result(1));
+        QueryResultCache.Key healthcare = QueryResultCache.Key.of("HEALTHCARE", "mysql",
+                "SELECT patient_id FROM patient_master_index", Map.of(), 100);
+        a.put(healthcare, result(3));
+        b.get(key(TX_SQL, 1));
+        b.get(healthcare);
+
+        a.invalidate("FINANCE", null);
+
+        assertNull(b.get(key(TX_SQL, 1)));
+        assertEquals("L1", b.get(healthcare).tier);
+        assertTrue(redis.sets.keySet().stream().noneMatch(t -> t.endsWith("tag:FINANCE")));
+    }
+
+    @Test
+    void malformedBroadcastIsIgnoredAndOtherNodesClearOnlyL1() {
+        FakeRedis redis = new FakeRedis();
+        QueryResultCache a = redis.node(enabled());
+        a.put(key(TX_SQL, 1), result(1));
+
+        a.onInvalidateMessage("garbage");
+        a.onInvalidateMessage("other|FINANCE");
+        assertEquals("L1", a.get(key(TX_SQL, 1)).tier);
+
+        a.onInvalidateMessage("other-node|FINANCE|transactions");
+        assertEquals("L2", a.get(key(TX_SQL, 1)).tier, "广播只清本地 L1，Redis 里的由发起方删");
+    }
+
+    @Test
+    void unparseableQueryIsClearedByAnyTableInvalidation() {
+        QueryResultCache cache = new QueryResultCache(enabled(), noRedis());
+        QueryResultCache.Key unknown = QueryResultCache.Key.of("FINANCE", "mysql", "CALL not_a_select()", Map.of(), 100);
+        assertTrue(unknown.tables.isEmpty());
+        cache.put(unknown, result(1));
+
+        assertEquals(1, cache.invalidate("FINANCE", "holdings"), "不知道它读了哪些表，按表失效时也清掉");
+    }
+
+    @Test
+    void ttlIsTheShortestAmongTablesAndZeroSkipsCaching() {
+        QueryProperties props = enabled();
+        props.getCache().setTtl(Duration.ofMinutes(30));
+        props.getCache().getDomainTtl().put("finance", Duration.ofHours(1));
+        props.getCache().getTableTtl().put("transactions", Duration.ofMinutes(5));
+        props.getCache().getTableTtl().put("holdings", Duration.ZERO);
+        QueryResultCache cache = new QueryResultCache(props, noRedis());
+
+        assertEquals(Duration.ofHours(1), cache.ttl(key(CLIENT_SQL, "R3")));
+        assertEquals(Duration.ofMinutes(5), cache.ttl(QueryResultCache.Key.of("FINANCE", "mysql",
+                "SELECT c.client_id FROM clients c JOIN transactions t ON t.client_id = c.client_id", Map.of(), 100)));
+        assertEquals(Duration.ofHours(1), cache.maxTtl());
+
+        QueryResultCache.Key holdings = QueryResultCache.Key.of("FINANCE", "mysql", "SELECT * FROM holdings", Map.of(), 100);
+        cache.put(holdings, result(1));
+        assertNull(cache.get(holdings));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedByBytes() {
+        QueryProperties props = enabled();
+        long one = result(1).estimatedBytes();
+        props.getCache().setMaxBytes(one * 2);
+        QueryResultCache cache = new QueryResultCache(props, noRedis());
+
+        cache.put(key(TX_SQL, 1), result(1));
+        cache.put(key(TX_SQL, 2), result(2));
+        assertNotNull(cache.get(key(TX_SQL, 1)), "1 变成最近用过的");
+        cache.put(key(TX_SQL, 3), result(3));
+
+        assertNull(cache.get(key(TX_SQL, 2)));
+        assertNotNull(cache.get(key(TX_SQL, 1)));
+        assertNotNull(cache.get(key(TX_SQL, 3)));
+        assertEquals(1L, cache.stats().get("evictions"));
+    }
+
+    @Test
+    void oversizedResultIsNotCached() {
+        QueryProperties props = enabled();
+        props.getCache().setMaxEntryBytes(1);
+        QueryResultCache cache = new QueryResultCache(props, noRedis());
+        cache.put(key(TX_SQL, 1), result(1));
+        assertNull(cache.get(key(TX_SQL, 1)));
+    }
+}
@@ -0,0 +1,303 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligent_data_analysis_system.infrastructure.config.properties.QueryProperties;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式输出：NDJSON 每行一个合法 JSON、JSON 整体是一个对象；读到一半出错时输出仍然完整可解析，错误信息在最后；
+ * PG 上临时关掉自动提交让游标生效，结束后回滚恢复；客户端断开时先取消语句。
+ */
+class QueryResultStreamerTest {
+
+    private static final String SQL = "SELECT client_id, client_name FROM clients WHERE risk_level = :risk";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** 假数据库：两列（client_id, client_name），failAtRow 行取第二列时报错；记下连接和语句上的调用 */
+    private static final class FakeDb {
+        final String product;
+        final List<Object[]> rows = new ArrayList<>();
+        final List<String> calls = new ArrayList<>();
+        int failAtRow = -1;
+        boolean failOnExecute;
+        /** 读到这一行时调用（模拟读的过程中发生的事） */
+        int hookAtRow = -1;
+        Runnable hook = () -> {};
+
+        FakeDb(String product, int rowCount) {
+            this.product = product;
+            for (int i = 1; i <= rowCount; i++) rows.add(new Object[]{(long) i, "client-" + i});
+        }
+
+        DataSource dataSource() {
+            return stub(DataSource.class, (p, m, a) -> m.getName().equals("getConnection") ? connection() : null);
+        }
+
+        private Connection connection() {
+            DatabaseMetaData meta = stub(DatabaseMetaData.class,
+                    (p, m, a) -> m.getName().equals("getDatabaseProductName") ? product : null);
+            boolean[] autoCommit = {true};
+            return stub(Connection.class, (p, m, a) -> switch (m.getName()) {
+                case "getMetaData" -> meta;
+                case "getAutoCommit" -> autoCommit[0];
+                case "setAutoCommit" -> {
+                    autoCommit[0] = (Boolean) a[0];
+                    calls.add("setAutoCommit=" + a[0]);
+                    yield null;
+                }
+                case "rollback" -> {
+                    calls.add("rollback");
+                    yield null;
+                }
+                case "prepareStatement" -> statement();
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement() {
+            return stub(PreparedStatement.class, (p, m, a) -> {
+                String name = m.getName();
+                if (name.equals("setFetchSize") || name.equals("setMaxRows") || name.equals("cancel")) {
+                    calls.add(a.length == 0 ? name : name + "=" + a[0]);
+                    return null;
+                }
+                if (name.equals("setObject") || name.equals("setString")) {
+                    calls.add("bind=" + a[1]);
+                    return null;
+                }
+                if (name.equals("executeQuery")) {
+                    if (failOnExecute) throw new SQLException("ERROR: permission denied for table clients", "42501");
+                    return resultSet();
+                }
+                return null;
+            });
+        }
+
+        private ResultSet resultSet() {
+            ResultSetMetaData meta = stub(ResultSetMetaData.class, (p, m, a) -> switch (m.getName()) {
+                case "getColumnCount" -> 2;
+                case "getColumnLabel" -> (Integer) a[0] == 1 ? "client_id" : "client_name";
+                default -> null;
+            });
+            int[] current = {-1};
+            return stub(ResultSet.class, (p, m, a) -> switch (m.getName()) {
+                case "getMetaData" -> meta;
+                case "next" -> {
+                    if (++current[0] == hookAtRow) hook.run();
+                    yield current[0] < rows.size();
+                }
+                case "getObject" -> {
+                    int column = (Integer) a[0];
+                    if (current[0] == failAtRow && column == 2) {
+                        throw new SQLException("ERROR: invalid byte sequence for encoding \"UTF8\"", "22021");
+                    }
+                    yield rows.get(current[0])[column - 1];
+                }
+                default -> null;
+            });
+        }
+    }
+
+    /** 没处理的方法返回类型的默认值（基本类型不能返回 null） */
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, m, a) -> {
+            Object v = handler.invoke(p, m, a == null ? new Object[0] : a);
+            if (v != null || !m.getReturnType().isPrimitive()) return v;
+            Class<?> r = m.getReturnType();
+            if (r == boolean.class) return false;
+            if (r == void.class) return null;
+            if (r == long.class) return 0L;
+            return 0;
+        }));
+    }
+
+    private static QueryResultStreamer streamer(FakeDb db, int fetchSize) {
+        QueryProperties props = new QueryProperties();
+        props.getStreaming().setFetchSize(fetchSize);
+        return new QueryResultStreamer(new NamedParameterJdbcTemplate(db.dataSource()), new ObjectMapper(), props,
+                new RunningQueryRegistry());
+    }
+
+    private static String stream(FakeDb db, QueryResultStreamer.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamer(db, 2).write(DataSourceDomain.FINANCE, SQL, Map.of("risk", "R3"), 100, "fp-1", format,
+                null, Deadline.none(), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** NDJSON：每个非空行单独解析 */
+    private List<JsonNode> lines(String ndjson) throws IOException {
+        List<JsonNode> out = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            if (!line.isBlank()) out.add(mapper.readTree(line));
+        }
+        return out;
+    }
+
+    // ========== 正常输出 ==========
+
+    @Test
+    void ndjsonHasMetaRowsAndEnd() throws IOException {
+        FakeDb db = new FakeDb("MySQL", 3);
+        List<JsonNode> lines = lines(stream(db, QueryResultStreamer.Format.NDJSON));
+
+        assertEquals(5, lines.size());
+        assertEquals("meta", lines.get(0).get("type").asText());
+        assertEquals("FINANCE", lines.get(0).get("dataSource").asText());
+        assertEquals("[\"client_id\",\"client_name\"]", lines.get(0).get("columns").toString());
+        assertEquals("[1,\"client-1\"]", lines.get(1).toString());
+        assertEquals("[3,\"client-3\"]", lines.get(3).toString());
+        assertEquals("end", lines.get(4).get("type").asText());
+        assertEquals(3, lines.get(4).get("rowCount").asInt());
+        assertTrue(db.calls.contains("bind=R3"));
+        assertTrue(db.calls.contains("setFetchSize=2"));
+        assertTrue(db.calls.contains("setMaxRows=100"));
+    }
+
+    @Test
+    void jsonIsOneObject() throws IOException {
+        JsonNode root = mapper.readTree(stream(new FakeDb("MySQL", 2), QueryResultStreamer.Format.JSON));
+        assertEquals("fp-1", root.get("fingerprint").asText());
+        assertEquals("[[1,\"client-1\"],[2,\"client-2\"]]", root.get("rows").toString());
+        assertEquals(2, root.get("rowCount").asInt());
+        assertNull(root.get("message"));
+    }
+
+    @Test
+    void emptyResultIsStillComplete() throws IOException {
+        JsonNode root = mapper.readTree(stream(new FakeDb("MySQL", 0), QueryResultStreamer.Format.JSON));
+        assertEquals(0, root.get("rows").size());
+        assertEquals(0, root.get("rowCount").asInt());
+    }
+
+    // ========== 中途出错 ==========
+
+    @Test
+    void ndjsonFailureMidRowEndsWithAnErrorLine() throws IOException {
+        FakeDb db = new FakeDb("MySQL", 5);
+        db.failAtRow = 2;
+        List<JsonNode> lines = lines(stream(db, QueryResultStreamer.Format.NDJSON));
+
+        assertEquals(4, lines.size(), "meta + 两行完整数据 + error，出错的那行一个字段都不输出");
+        assertEquals("[2,\"client-2\"]", lines.get(2).toString());
+        JsonNode error = lines.get(3);
+        assertEquals("error", error.get("type").asText());
+        assertTrue(error.get("message").asText().contains("invalid byte sequence"));
+    }
+
+    @Test
+    void jsonFailureMidRowClosesRowsAndAddsMessage() throws IOException {
+        FakeDb db = new FakeDb("MySQL", 5);
+        db.failAtRow = 1;
+        JsonNode root = mapper.readTree(stream(db, QueryResultStreamer.Format.JSON));
+
+        assertEquals("[[1,\"client-1\"]]", root.get("rows").toString());
+        assertTrue(root.get("message").asText().contains("invalid byte sequence"));
+        assertNull(root.get("rowCount"), "没读完，不报行数");
+    }
+
+    @Test
+    void failureBeforeAnyOutputIsAStandaloneError() throws IOException {
+        FakeDb db = new FakeDb("MySQL", 1);
+        db.failOnExecute = true;
+
+        JsonNode json = mapper.readTree(stream(db, QueryResultStreamer.Format.JSON));
+        assertEquals("FINANCE", json.get("dataSource").asText());
+        assertTrue(json.get("message").asText().contains("permission denied"));
+
+        List<JsonNode> lines = lines(stream(db, QueryResultStreamer.Format.NDJSON));
+        assertEquals(1, lines.size());
+        assertEquals("error", lines.get(0).get("type").asText());
+    }
+
+    // ========== 连接状态 / 取消 ==========
+
+    @Test
+    void postgresCursorNeedsAutoCommitOffAndIsRestored() throws IOException {
+        FakeDb pg = new FakeDb("PostgreSQL", 1);
+        stream(pg, QueryResultStreamer.Format.NDJSON);
+        List<String> tx = pg.calls.stream().filter(c -> c.startsWith("setAutoCommit") || c.equals("rollback")).toList();
+        assertEquals(List.of("setAutoCommit=false", "rollback", "setAutoCommit=true"), tx);
+
+        FakeDb failing = new FakeDb("PostgreSQL", 3);
+        failing.failAtRow = 1;
+        stream(failing, QueryResultStreamer.Format.NDJSON);
+        assertTrue(failing.calls.containsAll(List.of("rollback", "setAutoCommit=true")), "出错也要恢复连接状态");
+
+        FakeDb mysql = new FakeDb("MySQL", 1);
+        stream(mysql, QueryResultStreamer.Format.NDJSON);
+        assertTrue(mysql.calls.stream().noneMatch(c -> c.startsWith("setAutoCommit")));
+    }
+
+    @Test
+    void clientDisconnectCancelsTheStatement() {
+        FakeDb db = new FakeDb("MySQL", 10);
+        boolean[] broken = {false};
+        db.hookAtRow = 3;
+        db.hook = () -> broken[0] = true;
+        OutputStream client = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (broken[0]) throw new IOException("Broken pipe");
+            }
+        };
+
+        try {
+            streamer(db, 1).write(DataSourceDomain.FINANCE, SQL, Map.of("risk", "R3"), 0, "fp-1",
+                    QueryResultStreamer.Format.NDJSON, null, Deadline.none(), client);
+        } catch (IOException ignored) {
+            // 客户端已经断开，关闭生成器时的最后一次 flush 也会失败
+        }
+        assertTrue(db.calls.contains("cancel"), "关闭没读完的结果集之前先让数据库停下");
+        assertFalse(db.calls.stream().anyMatch(c -> c.startsWith("setMaxRows")), "maxRows = 0 不设上限");
+    }
+
+    @Test
+    void cancellingTheDeadlineCancelsTheStatement() throws IOException {
+        FakeDb db = new FakeDb("MySQL", 5);
+        Deadline deadline = Deadline.none();
+        db.hookAtRow = 2;
+        db.hook = deadline::cancel;
+
+        streamer(db, 2).write(DataSourceDomain.FINANCE, SQL, Map.of("risk", "R3"), 0, "fp-1",
+                QueryResultStreamer.Format.NDJSON, null, deadline, new ByteArrayOutputStream());
+        assertEquals(1, db.calls.stream().filter("cancel"::equals).count());
+    }
+
+    @Test
+    void formatDefaultsToNdjson() {
+        assertEquals(QueryResultStreamer.Format.NDJSON, QueryResultStreamer.Format.of(null));
+        assertEquals(QueryResultStreamer.Format.NDJSON, QueryResultStreamer.Format.of("csv"));
+        assertEquals(QueryResultStreamer.Format.JSON, QueryResultStreamer.Format.of(" JSON "));
+        assertEquals("application/x-ndjson", QueryResultStreamer.Format.NDJSON.mediaType().toString());
+    }
+}
@@ -0,0 +1,96 @@
+package com.intelligent_data_analysis_system.service;
+
+import com.intelligent_data_analysis_system.infrastructure.exception.BusinessException;
+import com.intelligent_data_analysis_system.utils.Deadline;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 正在执行的查询：空 id 自动生成；同一线程复用登记并共用 Deadline，别的请求带同一 id 进来 409；
+ * 只有登记方 close 才移出；取消即取消那次请求的 Deadline。
+ */
+class RunningQueryRegistryTest {
+
+    private final RunningQueryRegistry registry = new RunningQueryRegistry();
+
+    @Test
+    void blankIdIsGenerated() {
+        try (RunningQueryRegistry.Handle h = registry.start("  ", "EXECUTING", Deadline.none())) {
+            assertEquals(32, h.id().length());
+            assertEquals(1, registry.size());
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void sameThreadReusesTheEntry() {
+        Deadline outer = Deadline.after(Duration.ofMinutes(1));
+        try (RunningQueryRegistry.Handle generating = registry.start("q1", "GENERATING", outer)) {
+            try (RunningQueryRegistry.Handle executing = registry.start(" q1 ", "EXECUTING", Deadline.none())) {
+                assertSame(outer, executing.deadline(), "复用登记时沿用登记方的 Deadline");
+                assertEquals("EXECUTING", registry.list().get(0).get("stage"));
+            }
+            assertEquals(1, registry.size(), "复用方 close 不移出");
+            assertSame(outer, generating.deadline());
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void idInUseByAnotherRequestIsRejected() throws Exception {
+        try (RunningQueryRegistry.Handle ignored = registry.start("q1", "EXECUTING", Deadline.none())) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> CompletableFuture
+                    .runAsync(() -> registry.start("q1", "EXECUTING", Deadline.none()).close())
+                    .get());
+            BusinessException be = assertInstanceOf(BusinessException.class, e.getCause());
+            assertEquals(409, be.getErrorCode());
+        }
+        // 结束后同一 id 可以再用
+        CompletableFuture.runAsync(() -> registry.start("q1", "EXECUTING", Deadline.none()).close()).get();
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void cancelCancelsTheDeadline() {
+        Deadline d = Deadline.after(Duration.ofMinutes(1));
+        try (RunningQueryRegistry.Handle ignored = registry.start("q1", "EXECUTING", d)) {
+            assertTrue(registry.cancel("q1"));
+            assertTrue(d.isCancelled());
+            assertEquals(Boolean.TRUE, registry.list().get(0).get("cancelled"));
+        }
+        assertFalse(registry.cancel("q1"), "已结束");
+        assertFalse(registry.cancel("missing"));
+        assertFalse(registry.cancel(null));
+    }
+
+    @Test
+    void listShowsStageAndBudget() {
+        try (RunningQueryRegistry.Handle bounded = registry.start("q1", "GENERATING", Deadline.after(Duration.ofSeconds(30)));
+             RunningQueryRegistry.Handle unbounded = registry.start("q2", "EXECUTING", Deadline.none())) {
+            bounded.stage("EXECUTING", "finance", "SELECT 1");
+            bounded.stage("FETCHING", null, null);
+
+            List<Map<String, Object>> rows = registry.list();
+            assertEquals(2, rows.size());
+            Map<String, Object> q1 = rows.stream().filter(m -> "q1".equals(m.get("queryId"))).findFirst().orElseThrow();
+            assertEquals("FETCHING", q1.get("stage"));
+            assertEquals("finance", q1.get("domain"), "stage 传 null 时保留原值");
+            assertEquals("SELECT 1", q1.get("sql"));
+            long remaining = (Long) q1.get("remainingMs");
+            assertTrue(remaining > 0 && remaining <= 30_000, String.valueOf(remaining));
+            assertEquals(Boolean.FALSE, q1.get("cancelled"));
+
+            Map<String, Object> q2 = rows.stream().filter(m -> "q2".equals(m.get("queryId"))).findFirst().orElseThrow();
+            assertNull(q2.get("remainingMs"), "不限时不报剩余时间");
+            assertNull(q2.get("domain"));
+            assertTrue((Long) q2.get("runningMs") >= 0);
+        }
+    }
+}
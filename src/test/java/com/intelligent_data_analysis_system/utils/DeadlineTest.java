@@ -0,0 +1,143 @@
+package com.intelligent_data_analysis_system.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 截止时间：剩余预算、JDBC 超时秒数和按比例切出子预算；取消后立刻视为过期。
+ * 取消钩子：cancel 时各执行一次，已经取消时登记立刻执行，注销后不再执行；slice 出来的子截止时间共用。
+ */
+class DeadlineTest {
+
+    // ========== 预算 ==========
+
+    @Test
+    void missingOrNonPositiveTimeoutIsUnbounded() {
+        for (Duration d : new Duration[]{null, Duration.ZERO, Duration.ofSeconds(-1)}) {
+            Deadline deadline = Deadline.after(d);
+            assertTrue(deadline.isUnbounded());
+            assertFalse(deadline.isExpired());
+            assertEquals(Long.MAX_VALUE, deadline.remainingMillis());
+            assertEquals(0, deadline.remainingSeconds(0), "不限时不设语句超时");
+        }
+        assertEquals("Deadline[none]", Deadline.none().toString());
+    }
+
+    @Test
+    void remainingIsCappedAndRoundedUp() {
+        Deadline d = Deadline.after(Duration.ofSeconds(10));
+        assertFalse(d.isUnbounded());
+        assertTrue(d.remainingMillis() > 9_000 && d.remainingMillis() <= 10_000);
+        assertEquals(2_000, d.remainingMillis(2_000));
+        assertTrue(d.remainingMillis(0) > 9_000, "cap <= 0 不设上限");
+        assertEquals(10, d.remainingSeconds(0));
+        assertEquals(2, d.remainingSeconds(1_001), "秒数向上取整");
+        assertEquals(30, Deadline.none().remainingSeconds(30_000), "不限时按 cap");
+    }
+
+    @Test
+    void expiredOrCancelledStillGivesOneSecond() throws InterruptedException {
+        Deadline expired = Deadline.afterMillis(1);
+        Thread.sleep(5);
+        assertTrue(expired.isExpired());
+        assertEquals(0, expired.remainingMillis());
+        assertEquals(1, expired.remainingSeconds(0), "setQueryTimeout(0) 是不限时，过期了也要给 1 秒");
+
+        Deadline cancelled = Deadline.none();
+        cancelled.cancel();
+        assertTrue(cancelled.isExpired());
+        assertEquals(0, cancelled.remainingMillis());
+        assertEquals(1, cancelled.remainingSeconds(0));
+        assertEquals("Deadline[cancelled]", cancelled.toString());
+    }
+
+    @Test
+    void sliceTakesShareOfRemainingUpToMax() {
+        Deadline parent = Deadline.after(Duration.ofSeconds(100));
+        long share = parent.slice(0.6, null).remainingMillis();
+        assertTrue(share > 59_000 && share <= 60_000, String.valueOf(share));
+        assertTrue(parent.slice(0.6, Duration.ofSeconds(5)).remainingMillis() <= 5_000);
+        assertTrue(parent.slice(2.0, null).remainingMillis() <= parent.remainingMillis(), "比例超过 1 按 1 算");
+
+        Deadline unbounded = Deadline.none().slice(0.5, Duration.ofSeconds(5));
+        assertFalse(unbounded.isUnbounded(), "不限时的截止时间只按 max 切");
+        assertTrue(unbounded.remainingMillis() <= 5_000);
+        assertTrue(Deadline.none().slice(0.5, null).isUnbounded());
+    }
+
+    @Test
+    void cancellingASliceCancelsTheParent() {
+        Deadline parent = Deadline.after(Duration.ofMinutes(1));
+        Deadline child = parent.slice(0.5, null);
+        child.cancel();
+        assertTrue(parent.isCancelled());
+        assertTrue(parent.whenCancelled().isDone());
+    }
+
+    @Test
+    void contextDefaultsToUnbounded() {
+        DeadlineContext.clear();
+        assertFalse(DeadlineContext.isSet());
+        assertTrue(DeadlineContext.get().isUnbounded());
+
+        Deadline d = Deadline.after(Duration.ofSeconds(5));
+        DeadlineContext.set(d);
+        try {
+            assertTrue(DeadlineContext.isSet());
+            assertSame(d, DeadlineContext.get());
+        } finally {
+            DeadlineContext.clear();
+        }
+        assertFalse(DeadlineContext.isSet());
+    }
+
+    // ========== 取消钩子 ==========
+
+    @Test
+    void hookRunsOnceOnCancel() {
+        Deadline d = Deadline.none();
+        AtomicInteger runs = new AtomicInteger();
+        d.onCancel(runs::incrementAndGet);
+
+        d.cancel();
+        d.cancel();
+        assertEquals(1, runs.get());
+        assertTrue(d.isExpired());
+    }
+
+    @Test
+    void closedRegistrationDoesNotRun() {
+        Deadline d = Deadline.after(Duration.ofMinutes(1));
+        AtomicInteger runs = new AtomicInteger();
+        try (Deadline.Registration ignored = d.onCancel(runs::incrementAndGet)) {
+            assertEquals(0, runs.get());
+        }
+        d.cancel();
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void registeringAfterCancelRunsImmediately() {
+        Deadline d = Deadline.none();
+        d.cancel();
+        AtomicInteger runs = new AtomicInteger();
+        d.onCancel(runs::incrementAndGet).close();
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void slicesShareHooks() {
+        Deadline parent = Deadline.after(Duration.ofMinutes(1));
+        Deadline child = parent.slice(0.5, Duration.ofSeconds(10));
+        AtomicInteger runs = new AtomicInteger();
+        child.onCancel(runs::incrementAndGet);
+
+        parent.cancel();
+        assertEquals(1, runs.get());
+        assertTrue(child.isCancelled());
+    }
+}
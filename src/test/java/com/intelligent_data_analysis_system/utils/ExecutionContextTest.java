@@ -0,0 +1,59 @@
+package com.intelligent_data_analysis_system.utils;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.DataSourceDomain;
+import com.intelligent_data_analysis_system.infrastructure.datasource.DomainContext;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadClass;
+import com.intelligent_data_analysis_system.infrastructure.datasource.WorkloadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 嵌套作用域退出后恢复外层的值；wrap 把整个上下文带到另一个线程（含虚拟线程），执行完不留在那个线程上。
+ */
+class ExecutionContextTest {
+
+    @AfterEach
+    void clear() {
+        ExecutionContext.replace(ExecutionContext.empty());
+    }
+
+    @Test
+    void nestedScopeRestoresOuterValues() {
+        DomainContext.set(DataSourceDomain.FINANCE);
+        DataSourceDomain inner = DomainContext.call(DataSourceDomain.HEALTHCARE, () -> {
+            assertEquals(WorkloadClass.BATCH, WorkloadContext.call(WorkloadClass.BATCH, WorkloadContext::get));
+            assertEquals(WorkloadClass.INTERACTIVE, WorkloadContext.get(), "没设置时是交互类");
+            return DomainContext.get();
+        });
+        assertSame(DataSourceDomain.HEALTHCARE, inner);
+        assertSame(DataSourceDomain.FINANCE, DomainContext.get(), "退出后恢复外层的域，而不是清空");
+
+        DomainContext.clear();
+        assertNull(DomainContext.get());
+    }
+
+    @Test
+    void wrapCarriesWholeContextAcrossThreads() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(5));
+        ExecutionContext ctx = ExecutionContext.current()
+                .withDomain(DataSourceDomain.HEALTHCARE)
+                .withWorkload(WorkloadClass.BATCH)
+                .withDeadline(deadline);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+             ExecutorService reused = Executors.newSingleThreadExecutor()) {
+            ExecutionContext seen = pool.submit(ctx.wrap(ExecutionContext::current)).get();
+            assertSame(ctx, seen);
+
+            assertSame(deadline, reused.submit(ctx.wrap(DeadlineContext::get)).get());
+            assertNull(reused.submit(DomainContext::get).get(), "线程池线程执行完不留上下文");
+        }
+        assertNull(DomainContext.get(), "调用线程没有被设置");
+    }
+}
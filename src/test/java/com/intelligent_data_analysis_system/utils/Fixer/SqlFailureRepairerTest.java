@@ -0,0 +1,151 @@
+package com.intelligent_data_analysis_system.utils.Fixer;
+
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定点修复：列名 / 表名写错时按表结构改成唯一最近的那个，猜不准的不改；
+ * 歧义列只有在所有候选表都内连接、且按这一列相等连接时才补限定名；其它分类一律不修。
+ */
+class SqlFailureRepairerTest {
+
+    private static final String DOMAIN = "repair_test";
+
+    @BeforeAll
+    static void registerSchema() {
+        SchemaCatalog.get().registerTables(DOMAIN, List.of(
+                table("clients", "client_id", "client_name", "risk_level", "manager_id"),
+                table("portfolios", "portfolio_id", "client_id", "portfolio_name", "total_value"),
+                table("managers", "manager_id", "manager_name")));
+        assertTrue(MappingRegistry.get().registerDomain(DOMAIN, Map.of("table_alias", Map.of("customer", "clients"))));
+    }
+
+    private static SchemaCatalog.TableInfo table(String name, String... columns) {
+        Map<String, Class<?>> cols = new LinkedHashMap<>();
+        for (String c : columns) cols.put(c, String.class);
+        return new SchemaCatalog.TableInfo(name, columns[0], cols);
+    }
+
+    private static SqlFailureRepairer.Repair repair(String sql, String message, String state, int code) {
+        return SqlFailureRepairer.repair(DOMAIN, sql, new SQLException(message, state, code));
+    }
+
+    private static String repaired(String sql, String message, String state, int code) {
+        SqlFailureRepairer.Repair r = repair(sql, message, state, code);
+        assertTrue(r.repaired(), "应当修复：" + sql);
+        return r.sql.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String ambiguous(String column) {
+        return "Column '" + column + "' in field list is ambiguous";
+    }
+
+    // ========== 列不存在 ==========
+
+    @Test
+    void misspelledColumnIsCorrected() {
+        assertEquals("select client_name from clients",
+                repaired("SELECT client_nam FROM clients", "Unknown column 'client_nam' in 'field list'", "42S22", 1054));
+    }
+
+    @Test
+    void columnFromAnotherJoinedTableGetsThatQualifier() {
+        String out = repaired("SELECT c.client_id, c.portfolio_name FROM clients c JOIN portfolios p ON p.client_id = c.client_id",
+                "ERROR: column c.portfolio_name does not exist", "42703", 0);
+        assertTrue(out.contains("select c.client_id, p.portfolio_name from"), out);
+    }
+
+    @Test
+    void onlyTheReportedColumnIsTouched() {
+        String out = repaired("SELECT client_nam, risk_levl FROM clients",
+                "Unknown column 'client_nam' in 'field list'", "42S22", 1054);
+        assertEquals("select client_name, risk_levl from clients", out);
+    }
+
+    @Test
+    void tiedOrDistantGuessesAreNotMade() {
+        // client_i 离 clients.client_id 和 portfolios.client_id 一样近
+        assertFalse(repair("SELECT client_i FROM clients c JOIN portfolios p ON p.portfolio_id = c.client_id",
+                "Unknown column 'client_i' in 'field list'", "42S22", 1054).repaired());
+        assertFalse(repair("SELECT foo FROM clients", "Unknown column 'foo' in 'field list'", "42S22", 1054).repaired());
+    }
+
+    // ========== 表不存在 ==========
+
+    @Test
+    void tableAliasFromMappingIsApplied() {
+        assertEquals("select client_name from clients customer",
+                repaired("SELECT client_name FROM customer", "Table 'repair_test.customer' doesn't exist", "42S02", 1146));
+    }
+
+    @Test
+    void wrongSchemaPrefixIsDropped() {
+        assertEquals("select client_name from clients",
+                repaired("SELECT client_name FROM finance.clients", "Table 'finance.clients' doesn't exist", "42S02", 1146));
+    }
+
+    @Test
+    void misspelledTableKeepsOldNameAsAlias() {
+        assertEquals("select portfolio.portfolio_name from portfolios portfolio",
+                repaired("SELECT portfolio.portfolio_name FROM portfolio",
+                        "ERROR: relation \"portfolio\" does not exist", "42P01", 0));
+        assertFalse(repair("SELECT * FROM holdings", "ERROR: relation \"holdings\" does not exist", "42P01", 0).repaired());
+    }
+
+    // ========== 列有歧义 ==========
+
+    @Test
+    void ambiguousColumnJoinedOnItselfIsQualified() {
+        String out = repaired("SELECT client_id, portfolio_name FROM clients c JOIN portfolios p ON p.client_id = c.client_id",
+                ambiguous("client_id"), "23000", 1052);
+        assertTrue(out.startsWith("select c.client_id, portfolio_name from"), out);
+    }
+
+    @Test
+    void ambiguousColumnJoinedThroughWhereIsQualified() {
+        String out = repaired("SELECT client_id FROM clients c, portfolios p WHERE c.client_id = p.client_id",
+                "ERROR: column reference \"client_id\" is ambiguous", "42702", 0);
+        assertTrue(out.startsWith("select c.client_id from"), out);
+    }
+
+    @Test
+    void outerJoinIsNotGuessed() {
+        // LEFT JOIN 上 c.client_id 和 p.client_id 在没匹配的行上不相等（一边是 NULL）
+        assertFalse(repair("SELECT client_id FROM clients c LEFT JOIN portfolios p ON p.client_id = c.client_id",
+                ambiguous("client_id"), "23000", 1052).repaired());
+    }
+
+    @Test
+    void candidatesNotJoinedOnTheColumnAreNotGuessed() {
+        // 两张表的 manager_id 不是按这一列连接的，选哪张结果不同
+        assertFalse(repair("SELECT manager_id FROM clients c JOIN managers m ON m.manager_name = c.client_name",
+                ambiguous("manager_id"), "23000", 1052).repaired());
+        assertFalse(repair("SELECT client_id FROM clients c JOIN (SELECT client_id FROM portfolios) p ON p.client_id = c.client_id",
+                ambiguous("client_id"), "23000", 1052).repaired(), "子查询的列不明");
+    }
+
+    // ========== 其它分类 ==========
+
+    @Test
+    void otherKindsAreNotRepaired() {
+        SqlFailureRepairer.Repair syntax = repair("SELEC client_name FROM clients",
+                "You have an error in your SQL syntax", "42000", 1064);
+        assertFalse(syntax.repaired());
+        assertEquals(SqlFailure.Kind.SYNTAX, syntax.failure.kind);
+
+        SqlFailureRepairer.Repair timeout = repair("SELECT client_name FROM clients",
+                "ERROR: canceling statement due to statement timeout", "57014", 0);
+        assertFalse(timeout.repaired());
+        assertFalse(SqlFailureRepairer.repair(DOMAIN, null, new SQLException("x", "42703")).repaired());
+    }
+}
@@ -0,0 +1,98 @@
+package com.intelligent_data_analysis_system.utils.Fixer;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 失败分类：MySQL 先看厂商错误码、PG 看 SQLState，出错的标识符按两边驱动的报错格式抠出来；
+ * 包在别的异常里的也能找到，只有死锁 / 串行化冲突可以原样重试。
+ */
+class SqlFailureTest {
+
+    private static SqlFailure mysql(String message, String state, int code) {
+        return SqlFailure.classify(new SQLException(message, state, code));
+    }
+
+    private static SqlFailure pg(String message, String state) {
+        return SqlFailure.classify(new SQLException(message, state));
+    }
+
+    @Test
+    void unknownColumn() {
+        SqlFailure m = mysql("Unknown column 'c.client_nam' in 'field list'", "42S22", 1054);
+        assertEquals(SqlFailure.Kind.UNKNOWN_COLUMN, m.kind);
+        assertEquals("c.client_nam", m.identifier);
+
+        SqlFailure p = pg("ERROR: column \"client_nam\" does not exist\n  Position: 8", "42703");
+        assertEquals(SqlFailure.Kind.UNKNOWN_COLUMN, p.kind);
+        assertEquals("client_nam", p.identifier);
+        assertEquals("c.client_nam", pg("ERROR: column c.client_nam does not exist", "42703").identifier);
+    }
+
+    @Test
+    void unknownTable() {
+        SqlFailure m = mysql("Table 'finance.managers' doesn't exist", "42S02", 1146);
+        assertEquals(SqlFailure.Kind.UNKNOWN_TABLE, m.kind);
+        assertEquals("finance.managers", m.identifier);
+
+        SqlFailure p = pg("ERROR: relation \"managers\" does not exist", "42P01");
+        assertEquals(SqlFailure.Kind.UNKNOWN_TABLE, p.kind);
+        assertEquals("managers", p.identifier);
+    }
+
+    @Test
+    void ambiguousColumn() {
+        assertEquals("client_id", mysql("Column 'client_id' in field list is ambiguous", "23000", 1052).identifier);
+        SqlFailure p = pg("ERROR: column reference \"client_id\" is ambiguous", "42702");
+        assertEquals(SqlFailure.Kind.AMBIGUOUS_COLUMN, p.kind);
+        assertEquals("client_id", p.identifier);
+    }
+
+    @Test
+    void vendorCodeWinsOverGenericState() {
+        // MySQL 的 42000 对语法错误、权限不足等都一样，只能靠错误码区分
+        assertEquals(SqlFailure.Kind.SYNTAX, mysql("You have an error in your SQL syntax", "42000", 1064).kind);
+        assertEquals(SqlFailure.Kind.UNKNOWN_FUNCTION, mysql("FUNCTION finance.foo does not exist", "42000", 1305).kind);
+        assertEquals(SqlFailure.Kind.OTHER, mysql("Access denied", "42000", 1142).kind);
+        assertNull(mysql("You have an error in your SQL syntax", "42000", 1064).identifier);
+    }
+
+    @Test
+    void onlyTransientFailuresAreRetryable() {
+        SqlFailure deadlock = mysql("Deadlock found when trying to get lock", "40001", 1213);
+        assertEquals(SqlFailure.Kind.TRANSIENT, deadlock.kind);
+        assertTrue(deadlock.isRetryable());
+        assertTrue(pg("ERROR: deadlock detected", "40p01").isRetryable(), "SQLState 不区分大小写");
+
+        SqlFailure timeout = pg("ERROR: canceling statement due to statement timeout", "57014");
+        assertEquals(SqlFailure.Kind.TIMEOUT, timeout.kind);
+        assertFalse(timeout.isRetryable());
+        assertEquals(SqlFailure.Kind.TIMEOUT, mysql("Query execution was interrupted", "70100", 1317).kind);
+        assertEquals(SqlFailure.Kind.TIMEOUT, mysql("maximum statement execution time exceeded", "HY000", 3024).kind);
+        assertFalse(pg("ERROR: column \"x\" does not exist", "42703").isRetryable());
+    }
+
+    @Test
+    void sqlExceptionIsFoundInTheCauseChain() {
+        SQLException root = new SQLException("ERROR: relation \"managers\" does not exist", "42P01");
+        SqlFailure f = SqlFailure.classify(new RuntimeException("bad SQL grammar", new IllegalStateException(root)));
+        assertEquals(SqlFailure.Kind.UNKNOWN_TABLE, f.kind);
+        assertEquals("42P01", f.sqlState);
+        assertEquals(root.getMessage(), f.message);
+    }
+
+    @Test
+    void withoutSqlExceptionIsOther() {
+        SqlFailure f = SqlFailure.classify(new IllegalStateException("Connection is not available, request timed out"));
+        assertEquals(SqlFailure.Kind.OTHER, f.kind);
+        assertNull(f.sqlState);
+        assertEquals("Connection is not available, request timed out", f.message);
+
+        assertEquals(SqlFailure.Kind.OTHER, SqlFailure.classify(null).kind);
+        assertEquals(SqlFailure.Kind.OTHER, pg("I/O error", "08006").kind);
+        assertEquals(SqlFailure.Kind.OTHER, pg("no state", null).kind);
+    }
+}
@@ -0,0 +1,150 @@
+package com.intelligent_data_analysis_system.utils.Generator;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect.MYSQL;
+import static com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect.POSTGRESQL;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 只读单语句校验按目标引擎的词法切词：每个用例是一种“词法器和服务端对注释 / 字符串边界看法不同”的绕过写法，
+ * 两个引擎分别断言；不指定方言时两种规则都要通过。
+ */
+class SqlGuardTest {
+
+    private static void assertRejected(String sql, SqlDialect dialect) {
+        assertThrows(IllegalArgumentException.class, () -> SqlGuard.validateReadOnlySingleStatement(sql, dialect),
+                dialect + ": " + sql);
+    }
+
+    private static void assertAccepted(String sql, SqlDialect dialect) {
+        assertDoesNotThrow(() -> SqlGuard.validateReadOnlySingleStatement(sql, dialect), dialect + ": " + sql);
+    }
+
+    // ========== 块注释 ==========
+
+    @Test
+    void mysqlBlockCommentsDoNotNest() {
+        // MySQL 在第一个 */ 结束注释，后面的 DELETE 会被执行；PG 嵌套计数后注释没闭合
+        String sql = "SELECT 1 /* /* */ ; DELETE FROM t /* */";
+        assertRejected(sql, MYSQL);
+        assertRejected(sql, POSTGRESQL);
+    }
+
+    @Test
+    void postgresBlockCommentsNest() {
+        String sql = "SELECT 1 /* outer /* inner */ ; DELETE FROM t */";
+        assertAccepted(sql, POSTGRESQL);
+        assertRejected(sql, MYSQL);
+    }
+
+    @Test
+    void stringCrossingEndOfExecutableCommentIsRejected() {
+        // 版本号高于服务端时整段是注释、在第一个 */ 结束；否则 ' 开始一个字符串 —— 两种读法对不上
+        assertRejected("SELECT /*!99999 ' */ 1; DELETE FROM t; -- ' */ 1", MYSQL);
+        assertRejected("SELECT /*+ ' */ 1; DELETE FROM t; -- ' */ 1", MYSQL);
+        assertRejected("SELECT /*! 1 /* x */ , 2 */", MYSQL);
+    }
+
+    @Test
+    void executableCommentContentIsChecked() {
+        assertRejected("SELECT 1 /*!50000 ; DELETE FROM t */", MYSQL);
+        assertAccepted("SELECT /*+ MAX_EXECUTION_TIME(1000) */ client_id FROM clients", MYSQL);
+        assertAccepted("SELECT /*!50000 SQL_NO_CACHE */ client_id FROM clients", MYSQL);
+        // PG 里 /*! 是普通注释
+        assertAccepted("SELECT client_id /*! ; DELETE FROM t */ FROM clients", POSTGRESQL);
+    }
+
+    // ========== 行注释 ==========
+
+    @Test
+    void mysqlDoubleDashNeedsWhitespace() {
+        // MySQL：1--1 是 1 - (-1)，分号后的 DELETE 会执行；PG 里 -- 总是注释
+        String sql = "SELECT 1--1 ; DELETE FROM t";
+        assertRejected(sql, MYSQL);
+        assertAccepted(sql, POSTGRESQL);
+        assertAccepted("SELECT 1 -- ; DELETE FROM t", MYSQL);
+    }
+
+    @Test
+    void hashIsCommentOnlyOnMysql() {
+        // PG 里 # 是按位异或
+        String sql = "SELECT 1 # 2 ; DELETE FROM t";
+        assertRejected(sql, POSTGRESQL);
+        assertAccepted(sql, MYSQL);
+        assertAccepted("SELECT 5 # 3", POSTGRESQL);
+    }
+
+    // ========== 字符串 ==========
+
+    @Test
+    void backslashBeforeQuoteIsAmbiguous() {
+        // standard_conforming_strings 打开时 '\' 是完整字符串，关着（或 MySQL 默认）时还没结束
+        String sql = "SELECT '\\' ; DELETE FROM t; -- '";
+        assertRejected(sql, POSTGRESQL);
+        assertRejected(sql, MYSQL);
+        assertRejected("SELECT 'C:\\'", POSTGRESQL);
+    }
+
+    @Test
+    void postgresEscapeStringAlwaysHonoursBackslash() {
+        String sql = "SELECT E'\\' ; DELETE FROM t; -- '";
+        assertAccepted(sql, POSTGRESQL);
+        assertRejected(sql, MYSQL);
+    }
+
+    @Test
+    void mysqlDoubleQuotedStringHonoursBackslash() {
+        // 默认模式下 "..." 是字符串，\" 是转义；ANSI_QUOTES 下是标识符，\ 不转义
+        String sql = "SELECT \"a\\\"\" , 1; DELETE FROM t -- \"";
+        assertRejected(sql, MYSQL);
+        assertAccepted(sql, POSTGRESQL);
+    }
+
+    @Test
+    void dollarQuotingIsPostgresOnly() {
+        String sql = "SELECT $a$ ; DELETE FROM t; $a$";
+        assertAccepted(sql, POSTGRESQL);
+        assertRejected(sql, MYSQL);
+    }
+
+    @Test
+    void backtickIsIdentifierOnlyOnMysql() {
+        String sql = "SELECT `a ; DELETE FROM t` FROM clients";
+        assertAccepted(sql, MYSQL);
+        assertRejected(sql, POSTGRESQL);
+    }
+
+    // ========== 正常查询 / 不指定方言 ==========
+
+    @Test
+    void ordinaryQueriesPassOnBothEngines() {
+        for (String sql : List.of(
+                "SELECT client_id FROM clients WHERE client_name = 'O''Brien' -- 备注",
+                "SELECT client_id, 'a;b' FROM clients /* ; */ WHERE client_type LIKE 'a\\%';",
+                "WITH t AS (SELECT client_id FROM clients) SELECT * FROM t",
+                "SELECT REPLACE(client_name, 'a', 'b') FROM clients")) {
+            assertAccepted(sql, MYSQL);
+            assertAccepted(sql, POSTGRESQL);
+            assertAccepted(sql, null);
+        }
+    }
+
+    @Test
+    void unknownDialectChecksBothEngines() {
+        assertFalse(SqlGuard.isReadOnlySingleStatement("SELECT 1 # 2 ; DELETE FROM t"));
+        assertFalse(SqlGuard.isReadOnlySingleStatement("SELECT 1--1 ; DELETE FROM t"));
+        assertFalse(SqlGuard.isReadOnlySingleStatement("SELECT 1 /* /* */ ; DELETE FROM t /* */"));
+        assertTrue(SqlGuard.isReadOnlySingleStatement("SELECT client_id FROM clients"));
+    }
+
+    @Test
+    void prechecksFallBackToPostgresRules() {
+        assertEquals("SELECT", SqlGuard.statementType("SELECT E'\\'' FROM clients"));
+        assertEquals(List.of("clients", "portfolios"),
+                SqlGuard.tables("SELECT c.client_id FROM clients c JOIN \"portfolios\" p ON p.client_id = c.client_id"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EXPLAIN JSON 解析：代价、最大中间结果行数、全表扫描的表、有没有阻塞算子；PG 的 Limit 给下面的节点行数封顶。
+ */
+class ExplainPlanTest {
+
+    static final String MYSQL_JOIN = """
+            {"query_block": {"select_id": 1, "cost_info": {"query_cost": "20512.40"},
+              "nested_loop": [
+                {"table": {"table_name": "transactions", "access_type": "ALL",
+                           "rows_examined_per_scan": 100000, "rows_produced_per_join": 100000}},
+                {"table": {"table_name": "clients", "access_type": "eq_ref",
+                           "rows_examined_per_scan": 1, "rows_produced_per_join": 100000}}
+              ]}}""";
+
+    static final String MYSQL_SORTED = """
+            {"query_block": {"cost_info": {"query_cost": 310.5},
+              "ordering_operation": {"using_filesort": true,
+                "table": {"table_name": "transactions", "access_type": "range",
+                          "rows_examined_per_scan": 3000, "rows_produced_per_join": 3000}}}}""";
+
+    static final String PG_LIMIT_SCAN = """
+            [{"Plan": {"Node Type": "Limit", "Total Cost": 4.27, "Plan Rows": 100,
+              "Plans": [{"Node Type": "Seq Scan", "Relation Name": "transactions", "Plan Rows": 1000000}]}}]""";
+
+    static final String PG_LIMIT_SORT = """
+            [{"Plan": {"Node Type": "Limit", "Total Cost": 90210.0, "Plan Rows": 100,
+              "Plans": [{"Node Type": "Sort", "Plan Rows": 1000000,
+                "Plans": [{"Node Type": "Seq Scan", "Relation Name": "transactions", "Plan Rows": 1000000}]}]}}]""";
+
+    @Test
+    void mysqlCostRowsAndFullScans() {
+        ExplainPlan p = ExplainPlan.parse(SqlDialect.MYSQL, MYSQL_JOIN);
+        assertEquals(20512.40, p.cost, 0.001, "字符串形式的数字也能读");
+        assertEquals(100000, p.maxRows);
+        assertEquals(2, p.tables.size());
+        assertEquals(List.of("transactions"), p.fullScans().stream().map(t -> t.table).toList());
+        assertEquals(100000, p.maxFullScanRows());
+        assertTrue(p.streamable);
+    }
+
+    @Test
+    void mysqlFilesortIsBlocking() {
+        ExplainPlan p = ExplainPlan.parse(SqlDialect.MYSQL, MYSQL_SORTED);
+        assertEquals(310.5, p.cost, 0.001);
+        assertFalse(p.streamable);
+        assertTrue(p.fullScans().isEmpty(), "range 不算全表扫描");
+        assertFalse(ExplainPlan.parse(SqlDialect.MYSQL,
+                "{\"query_block\": {\"grouping_operation\": {\"table\": {\"table_name\": \"t\", \"access_type\": \"ref\"}}}}")
+                .streamable);
+    }
+
+    @Test
+    void postgresLimitCapsRowsBelowIt() {
+        ExplainPlan p = ExplainPlan.parse(SqlDialect.POSTGRESQL, PG_LIMIT_SCAN);
+        assertEquals(4.27, p.cost, 0.001);
+        assertEquals(100, p.maxRows, "Limit 下面的扫描取够行就停");
+        assertEquals(1000000, p.maxFullScanRows(), "全表扫描按表的估计行数");
+        assertTrue(p.streamable);
+    }
+
+    @Test
+    void postgresBlockingNodeLiftsTheCap() {
+        ExplainPlan p = ExplainPlan.parse(SqlDialect.POSTGRESQL, PG_LIMIT_SORT);
+        assertEquals(1000000, p.maxRows, "Sort 要读完输入，下面的扫描不受 Limit 封顶");
+        assertFalse(p.streamable);
+    }
+
+    @Test
+    void postgresJsonReturnedAsText() {
+        String quoted = "\"" + PG_LIMIT_SCAN.replace("\"", "\\\"").replace("\n", " ") + "\"";
+        ExplainPlan p = ExplainPlan.parse(SqlDialect.POSTGRESQL, quoted);
+        assertEquals(100, p.maxRows);
+    }
+
+    @Test
+    void invalidJsonIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ExplainPlan.parse(SqlDialect.MYSQL, "not json"));
+    }
+
+    @Test
+    void explainPrefixPerDialect() {
+        assertEquals("EXPLAIN FORMAT=JSON SELECT 1", ExplainPlan.explainSql(SqlDialect.MYSQL, "SELECT 1"));
+        assertEquals("EXPLAIN (FORMAT JSON) SELECT 1", ExplainPlan.explainSql(SqlDialect.POSTGRESQL, "SELECT 1"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.datasource.QueryClass;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 交互查询分类：按条件取明细是 LOOKUP；任意一层有聚合 / 窗口 / DISTINCT / 集合运算 / 多表连接是 AGGREGATE；解析失败按 AGGREGATE。
+ */
+class QueryClassifierTest {
+
+    @Test
+    void plainFilterIsLookup() {
+        assertEquals(QueryClass.LOOKUP, QueryClassifier.classify(
+                "SELECT client_id, client_name FROM clients WHERE client_id = :p0 LIMIT 200"));
+        assertEquals(QueryClass.LOOKUP, QueryClassifier.classify(
+                "SELECT t.amount, c.client_name FROM transactions t JOIN clients c ON c.client_id = t.client_id"
+                        + " WHERE t.trade_date >= '2024-01-01' ORDER BY t.trade_date DESC LIMIT 50"));
+    }
+
+    @Test
+    void aggregatesAtAnyLevelAreAggregate() {
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify(
+                "SELECT transaction_type, SUM(amount) FROM transactions GROUP BY transaction_type"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify("SELECT COUNT(*) FROM transactions"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify(
+                "SELECT client_id, RANK() OVER (ORDER BY amount DESC) FROM transactions LIMIT 10"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify(
+                "SELECT * FROM clients WHERE client_id IN (SELECT client_id FROM transactions GROUP BY client_id"
+                        + " HAVING SUM(amount) > 1000)"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify(
+                "SELECT client_id FROM clients UNION SELECT client_id FROM holdings"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify("SELECT DISTINCT region FROM clients"));
+    }
+
+    @Test
+    void manyJoinsOrUnparsableAreAggregate() {
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify(
+                "SELECT h.quantity FROM holdings h JOIN portfolios p ON p.portfolio_id = h.portfolio_id"
+                        + " JOIN clients c ON c.client_id = p.client_id"));
+        assertEquals(QueryClass.AGGREGATE, QueryClassifier.classify("SELECT FROM WHERE"));
+    }
+}
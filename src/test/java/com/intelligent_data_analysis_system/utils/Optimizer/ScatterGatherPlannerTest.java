@@ -0,0 +1,99 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import com.intelligent_data_analysis_system.infrastructure.dto.ColumnarResult;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 可分解聚合按日期拆片：各片 SQL 可重新解析、范围互不相交；合并后的列名、聚合值、排序和单条执行一致。
+ */
+class ScatterGatherPlannerTest {
+
+    private static final Map<String, String> COLUMNS = Map.of("transactions", "trade_date");
+
+    private static final String GROUPED = "SELECT transaction_type, COUNT(*) AS cnt, AVG(amount) AS avg_amt"
+            + " FROM transactions WHERE trade_date >= '2024-01-01' AND trade_date < '2024-07-01'"
+            + " GROUP BY transaction_type ORDER BY cnt DESC LIMIT 10";
+
+    private static String flat(String sql) {
+        return sql.replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    @Test
+    void splitsIntoDisjointDateRanges() throws Exception {
+        ScatterGatherPlanner.Plan plan = ScatterGatherPlanner.plan(SqlDialect.MYSQL, GROUPED, Map.of(), COLUMNS);
+
+        assertNotNull(plan);
+        assertEquals(LocalDate.of(2024, 1, 1), plan.lower);
+        assertEquals(LocalDate.of(2024, 7, 1), plan.upper);
+
+        List<ScatterGatherPlanner.Partition> parts = plan.split(plan.lower, plan.upper, 4);
+        assertEquals(4, parts.size());
+        for (ScatterGatherPlanner.Partition p : parts) {
+            CCJSqlParserUtil.parse(p.sql);
+            String s = flat(p.sql);
+            assertTrue(s.contains("SUM(AMOUNT) AS __SGA2"), s);
+            assertTrue(s.contains("COUNT(AMOUNT) AS __SGC2"), s);
+            assertFalse(s.contains("ORDER BY"), s);
+            assertFalse(s.contains("LIMIT"), s);
+        }
+        assertTrue(flat(parts.get(0).sql).contains("TRADE_DATE IS NULL"));
+        assertFalse(parts.get(0).params.containsKey("sg_lo"));
+        assertFalse(parts.get(3).params.containsKey("sg_hi"));
+        assertEquals(parts.get(1).params.get("sg_hi"), parts.get(2).params.get("sg_lo"));
+    }
+
+    @Test
+    void mergeCombinesPartialAggregates() {
+        ScatterGatherPlanner.Plan plan = ScatterGatherPlanner.plan(SqlDialect.MYSQL, GROUPED, Map.of(), COLUMNS);
+        List<String> cols = List.of("__sgg0", "__sga1", "__sga2", "__sgc2");
+        ColumnarResult a = ColumnarResult.of(cols, List.of(
+                List.of("BUY", 3L, new BigDecimal("30.00"), 3L),
+                List.of("SELL", 1L, new BigDecimal("10.00"), 1L)));
+        ColumnarResult b = ColumnarResult.of(cols, List.<List<Object>>of(
+                List.of("BUY", 2L, new BigDecimal("20.00"), 2L)));
+
+        ColumnarResult merged = plan.merge(List.of(a, b));
+
+        assertEquals(List.of("transaction_type", "cnt", "avg_amt"), merged.columns());
+        assertEquals(2, merged.rowCount());
+        assertEquals("BUY", merged.get(0, 0));
+        assertEquals(5L, merged.get(0, 1));
+        assertEquals(0, new BigDecimal("10").compareTo((BigDecimal) merged.get(0, 2)));
+        assertEquals(6, ((BigDecimal) merged.get(0, 2)).scale());
+        assertEquals("SELL", merged.get(1, 0));
+    }
+
+    @Test
+    void ungroupedCountOnEmptyPartitionsIsZero() {
+        ScatterGatherPlanner.Plan plan = ScatterGatherPlanner.plan(SqlDialect.POSTGRESQL,
+                "SELECT COUNT(*), MAX(trade_date) FROM transactions", Map.of(), COLUMNS);
+
+        assertNotNull(plan);
+        ColumnarResult merged = plan.merge(List.of());
+        assertEquals(List.of("count", "max"), merged.columns());
+        assertEquals(1, merged.rowCount());
+        assertEquals(0L, merged.get(0, 0));
+        assertNull(merged.get(0, 1));
+    }
+
+    @Test
+    void nonDecomposableQueriesAreNotSplit() {
+        assertNull(ScatterGatherPlanner.plan(SqlDialect.MYSQL,
+                "SELECT COUNT(DISTINCT client_id) FROM transactions", Map.of(), COLUMNS));
+        assertNull(ScatterGatherPlanner.plan(SqlDialect.MYSQL,
+                "SELECT transaction_type, COUNT(*) FROM transactions GROUP BY transaction_type HAVING COUNT(*) > 5",
+                Map.of(), COLUMNS));
+        assertNull(ScatterGatherPlanner.plan(SqlDialect.MYSQL,
+                "SELECT client_id, COUNT(*) FROM clients GROUP BY client_id", Map.of(), COLUMNS));
+    }
+}
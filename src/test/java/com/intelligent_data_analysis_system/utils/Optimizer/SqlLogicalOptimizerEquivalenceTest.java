@@ -0,0 +1,238 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 改写前后在同一份数据上结果相同（H2 的 MySQL / PostgreSQL 兼容模式各跑一遍，数据里故意放了 NULL、
+ * 一对多和没匹配上的外键）；前置条件不满足的写法，“直接改”会改变结果，优化器必须原样保留。
+ */
+class SqlLogicalOptimizerEquivalenceTest {
+
+    enum Mode {
+        MYSQL("MySQL", "`"), POSTGRESQL("PostgreSQL", "\"");
+
+        final String h2Mode;
+        final String quote;
+
+        Mode(String h2Mode, String quote) {
+            this.h2Mode = h2Mode;
+            this.quote = quote;
+        }
+
+        String q(String identifier) {
+            return quote + identifier + quote;
+        }
+    }
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE clients (client_id BIGINT PRIMARY KEY, client_name VARCHAR(50), client_type VARCHAR(20),"
+                    + " risk_level VARCHAR(10), status INT, total_assets DECIMAL(18, 2))",
+            "CREATE TABLE portfolios (portfolio_id BIGINT PRIMARY KEY, client_id BIGINT, portfolio_type VARCHAR(10),"
+                    + " inception_date DATE, current_value DECIMAL(18, 2))",
+            "CREATE TABLE products (product_id BIGINT PRIMARY KEY, product_name VARCHAR(50), is_active BOOLEAN)",
+            "CREATE TABLE transactions (transaction_id BIGINT PRIMARY KEY, product_id BIGINT, trade_date DATE, status INT)",
+
+            "INSERT INTO clients VALUES (1, 'A', 'P', 'R3', 1, 500000), (2, 'B', 'P', 'R3', 1, 2000000),"
+                    + " (3, 'C', 'O', 'R5', 0, 3000000), (4, 'D', 'O', 'R1', 1, 8000000), (5, 'E', 'P', 'R5', 1, 1500000)",
+            // 客户 1 有两个组合；组合 13 没有客户（client_id 为 NULL）
+            "INSERT INTO portfolios VALUES (10, 1, 'X', DATE '2023-01-01', 100), (11, 1, 'Y', DATE '2023-02-01', 200),"
+                    + " (12, 2, 'Y', DATE '2022-05-01', 300), (13, NULL, 'X', DATE '2021-01-01', 400),"
+                    + " (14, 3, 'Z', DATE '2024-01-01', 500)",
+            "INSERT INTO products VALUES (100, 'F1', TRUE), (101, 'F2', FALSE)",
+            // 交易 1002 的产品不存在，1003 没有产品
+            "INSERT INTO transactions VALUES (1000, 100, DATE '2024-01-02', 1), (1001, 101, DATE '2024-01-03', 1),"
+                    + " (1002, 999, DATE '2024-01-04', 1), (1003, NULL, DATE '2024-01-05', 0),"
+                    + " (1004, 100, DATE '2024-01-06', 1)"
+    };
+
+    private static final Map<Mode, Connection> CONNECTIONS = new EnumMap<>(Mode.class);
+
+    @BeforeAll
+    static void createDatabases() throws Exception {
+        for (Mode m : Mode.values()) {
+            Connection c = DriverManager.getConnection(
+                    "jdbc:h2:mem:optimizer_" + m.name().toLowerCase(Locale.ROOT) + ";MODE=" + m.h2Mode + ";DATABASE_TO_LOWER=TRUE");
+            try (Statement st = c.createStatement()) {
+                for (String ddl : SCHEMA) st.execute(ddl);
+            }
+            CONNECTIONS.put(m, c);
+        }
+    }
+
+    @AfterAll
+    static void closeDatabases() throws Exception {
+        for (Connection c : CONNECTIONS.values()) c.close();
+        CONNECTIONS.clear();
+    }
+
+    /** 结果行（不关心顺序时按文本排序） */
+    private static List<String> rows(Mode m, String sql) throws Exception {
+        List<String> out = new ArrayList<>();
+        try (Statement st = CONNECTIONS.get(m).createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            int n = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<Object> row = new ArrayList<>();
+                for (int i = 1; i <= n; i++) row.add(rs.getObject(i));
+                out.add(row.toString());
+            }
+        }
+        out.sort(Comparator.naturalOrder());
+        return out;
+    }
+
+    /** 规则触发，且改写前后结果相同 */
+    private static void assertEquivalent(Mode m, String rule, String sql) throws Exception {
+        SqlLogicalOptimizer.Result r = SqlLogicalOptimizer.optimizeWithReport("FINANCE", sql);
+        assertTrue(r.fired.contains(rule), rule + " 没触发: " + r.sql);
+        List<String> expected = rows(m, sql);
+        assertEquals(expected, rows(m, r.sql), r.sql);
+    }
+
+    /** 前置条件不满足：直接改写会改变结果，优化器不改 */
+    private static void assertKept(Mode m, String rule, String sql, String naive) throws Exception {
+        assertNotEquals(rows(m, sql), rows(m, naive), "数据要能区分两种写法");
+        SqlLogicalOptimizer.Result r = SqlLogicalOptimizer.optimizeWithReport("FINANCE", sql);
+        assertFalse(r.fired.contains(rule), r.sql);
+        assertEquals(rows(m, sql), rows(m, r.sql));
+    }
+
+    // ========== 改写后结果不变 ==========
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void distinctOverPrimaryKey(Mode m) throws Exception {
+        assertEquivalent(m, "distinct-over-pk", "SELECT DISTINCT " + m.q("client_id") + ", client_name FROM "
+                + m.q("clients") + " WHERE risk_level = 'R3'");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void countDistinctPrimaryKey(Mode m) throws Exception {
+        assertEquivalent(m, "count-distinct-pk", "SELECT COUNT(DISTINCT t." + m.q("transaction_id") + ") FROM "
+                + m.q("transactions") + " t WHERE t.status = 1");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void notInWithNullInSubqueryStaysEmpty(Mode m) throws Exception {
+        // 组合 13 的 client_id 为 NULL：NOT IN 一行都不返回，改写后也必须一行都不返回
+        String sql = "SELECT c.client_id FROM " + m.q("clients") + " c WHERE c.status = 1 AND c." + m.q("client_id")
+                + " NOT IN (SELECT p.client_id FROM portfolios p WHERE p.portfolio_type = 'X')";
+        assertEquivalent(m, "not-in-to-not-exists", sql);
+        assertTrue(rows(m, sql).isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void notInWithoutNullInSubquery(Mode m) throws Exception {
+        String sql = "SELECT c.client_id FROM clients c WHERE c." + m.q("client_id")
+                + " NOT IN (SELECT p.client_id FROM portfolios p WHERE p.portfolio_type = 'Y')";
+        assertEquivalent(m, "not-in-to-not-exists", sql);
+        assertEquals(3, rows(m, sql).size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void notInOverPrimaryKeySubquery(Mode m) throws Exception {
+        assertEquivalent(m, "not-in-to-not-exists", "SELECT c.client_id FROM clients c JOIN portfolios p"
+                + " ON p.client_id = c.client_id WHERE c.client_id NOT IN (SELECT x." + m.q("client_id")
+                + " FROM clients x WHERE x.risk_level = 'R5')");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void unusedLeftJoinOnPrimaryKey(Mode m) throws Exception {
+        assertEquivalent(m, "unused-left-join", "SELECT t.transaction_id, t.trade_date FROM " + m.q("transactions")
+                + " t LEFT JOIN " + m.q("products") + " p ON p." + m.q("product_id") + " = t.product_id WHERE t.status = 1");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void orderByInsideInSubquery(Mode m) throws Exception {
+        assertEquivalent(m, "subquery-order-by", "SELECT c.client_name FROM clients c WHERE c.client_id IN"
+                + " (SELECT p.client_id FROM " + m.q("portfolios") + " p ORDER BY p." + m.q("inception_date") + ")");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void cteUsedOnce(Mode m) throws Exception {
+        assertEquivalent(m, "inline-cte", "WITH " + m.q("big") + " AS (SELECT client_id, total_assets FROM clients"
+                + " WHERE total_assets > 1000000) SELECT b.client_id FROM " + m.q("big") + " b WHERE b.total_assets < 5000000");
+    }
+
+    // ========== 前置条件不满足，不改 ==========
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void notInOnNullableOuterColumn(Mode m) throws Exception {
+        // 组合 13 的 client_id 为 NULL：NOT IN 把它过滤掉，NOT EXISTS 会留下
+        assertKept(m, "not-in-to-not-exists",
+                "SELECT p.portfolio_id FROM portfolios p WHERE p." + m.q("client_id")
+                        + " NOT IN (SELECT c.client_id FROM clients c WHERE c.risk_level = 'R5')",
+                "SELECT p.portfolio_id FROM portfolios p WHERE NOT EXISTS"
+                        + " (SELECT 1 FROM clients c WHERE c.risk_level = 'R5' AND c.client_id = p.client_id)");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void notInOnLeftJoinedPrimaryKey(Mode m) throws Exception {
+        // 没匹配上产品的交易里 pr.product_id 是 NULL
+        assertKept(m, "not-in-to-not-exists",
+                "SELECT t.transaction_id FROM transactions t LEFT JOIN products pr ON pr.product_id = t.product_id"
+                        + " WHERE pr." + m.q("product_id") + " NOT IN (SELECT x.product_id FROM products x WHERE x.is_active = FALSE)",
+                "SELECT t.transaction_id FROM transactions t LEFT JOIN products pr ON pr.product_id = t.product_id"
+                        + " WHERE NOT EXISTS (SELECT 1 FROM products x WHERE x.is_active = FALSE AND x.product_id = pr.product_id)");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void distinctOnNonUniqueColumn(Mode m) throws Exception {
+        assertKept(m, "distinct-over-pk",
+                "SELECT DISTINCT " + m.q("client_type") + " FROM clients",
+                "SELECT client_type FROM clients");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void countDistinctAcrossJoin(Mode m) throws Exception {
+        assertKept(m, "count-distinct-pk",
+                "SELECT COUNT(DISTINCT c." + m.q("client_id") + ") FROM clients c JOIN portfolios p ON p.client_id = c.client_id",
+                "SELECT COUNT(c.client_id) FROM clients c JOIN portfolios p ON p.client_id = c.client_id");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void leftJoinNotOnPrimaryKey(Mode m) throws Exception {
+        // 客户 1 有两个组合：去掉 JOIN 会少一行
+        assertKept(m, "unused-left-join",
+                "SELECT c.client_id FROM clients c LEFT JOIN " + m.q("portfolios") + " p ON p." + m.q("client_id")
+                        + " = c.client_id",
+                "SELECT c.client_id FROM clients c");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Mode.class)
+    void cteUsedTwice(Mode m) throws Exception {
+        String sql = "WITH big AS (SELECT client_id FROM clients WHERE total_assets > 1000000)"
+                + " SELECT a.client_id FROM big a JOIN big b ON a.client_id = b.client_id";
+        SqlLogicalOptimizer.Result r = SqlLogicalOptimizer.optimizeWithReport("FINANCE", sql);
+        assertFalse(r.fired.contains("inline-cte"));
+        assertEquals(rows(m, sql), rows(m, r.sql));
+    }
+}
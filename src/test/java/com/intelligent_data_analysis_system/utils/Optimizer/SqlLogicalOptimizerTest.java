@@ -0,0 +1,326 @@
+package com.intelligent_data_analysis_system.utils.Optimizer;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 每条规则都用 MySQL / PostgreSQL 两种写法（引号、LIMIT/OFFSET 语法）各跑一遍：
+ * 规则该触发时触发、不该触发时不动，改写结果能被重新解析。
+ */
+class SqlLogicalOptimizerTest {
+
+    enum Dialect {
+        MYSQL("`"), PGSQL("\"");
+
+        final String quote;
+
+        Dialect(String quote) {
+            this.quote = quote;
+        }
+
+        String q(String identifier) {
+            return quote + identifier + quote;
+        }
+
+        String limitOffset(int limit, int offset) {
+            return this == MYSQL ? "LIMIT " + offset + ", " + limit : "LIMIT " + limit + " OFFSET " + offset;
+        }
+    }
+
+    private static SqlLogicalOptimizer.Result run(String domain, String sql) throws Exception {
+        SqlLogicalOptimizer.Result r = SqlLogicalOptimizer.optimizeWithReport(domain, sql);
+        CCJSqlParserUtil.parse(r.sql); // 改写结果必须仍是合法 SQL
+        return r;
+    }
+
+    private static String flat(String sql) {
+        return sql.replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    // ========== distinct-over-pk ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void distinctOverPrimaryKeyIsRemoved(Dialect d) throws Exception {
+        String sql = "SELECT DISTINCT " + d.q("client_id") + ", client_name FROM " + d.q("clients") + " WHERE risk_level = 'R3'";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("distinct-over-pk"));
+        assertFalse(flat(r.sql).contains("DISTINCT"));
+        assertTrue(r.sql.contains(d.q("client_id")));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void distinctWithoutPrimaryKeyIsKept(Dialect d) throws Exception {
+        String sql = "SELECT DISTINCT " + d.q("client_type") + " FROM " + d.q("clients");
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("distinct-over-pk"));
+        assertTrue(flat(r.sql).contains("DISTINCT"));
+    }
+
+    // ========== count-distinct-pk ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void countDistinctPrimaryKeyBecomesCount(Dialect d) throws Exception {
+        String sql = "SELECT COUNT(DISTINCT t." + d.q("transaction_id") + ") FROM " + d.q("transactions")
+                + " t WHERE t.status = 1";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("count-distinct-pk"));
+        assertFalse(flat(r.sql).contains("DISTINCT"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void countDistinctPrimaryKeyAcrossJoinIsKept(Dialect d) throws Exception {
+        String sql = "SELECT COUNT(DISTINCT c." + d.q("client_id") + ") FROM " + d.q("clients")
+                + " c JOIN portfolios p ON p.client_id = c.client_id";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("count-distinct-pk"));
+        assertTrue(flat(r.sql).contains("DISTINCT"));
+    }
+
+    // ========== not-in-to-not-exists ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOverNullableColumnKeepsNullSemantics(Dialect d) throws Exception {
+        String sql = "SELECT c.client_id FROM " + d.q("clients") + " c WHERE c.status = 1 AND c."
+                + d.q("client_id") + " NOT IN (SELECT p.client_id FROM portfolios p WHERE p.portfolio_type = 'X')";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("not-in-to-not-exists"));
+        String out = flat(r.sql);
+        assertTrue(out.contains("NOT EXISTS"));
+        assertFalse(out.contains("NOT IN"));
+        // portfolios.client_id 可能为 NULL：必须保留“子查询有 NULL 时 NOT IN 恒不成立”
+        assertTrue(out.contains("P.CLIENT_ID IS NULL"));
+        assertTrue(out.contains("P.PORTFOLIO_TYPE = 'X'"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOverPrimaryKeyNeedsNoNullGuard(Dialect d) throws Exception {
+        String sql = "SELECT c.client_id FROM clients c WHERE c.client_id NOT IN (SELECT x." + d.q("client_id")
+                + " FROM " + d.q("clients") + " x WHERE x.risk_level = 'R5')";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("not-in-to-not-exists"));
+        assertFalse(flat(r.sql).contains("IS NULL"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOnNullableOuterColumnIsKept(Dialect d) throws Exception {
+        String sql = "SELECT p.portfolio_id FROM " + d.q("portfolios") + " p WHERE p."
+                + d.q("client_id") + " NOT IN (SELECT c.client_id FROM clients c)";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("not-in-to-not-exists"));
+        assertTrue(flat(r.sql).contains("NOT IN"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOnInnerJoinedPrimaryKeyIsRewrittenExactly(Dialect d) throws Exception {
+        String sql = "SELECT c.client_id FROM clients c JOIN portfolios p ON p.client_id = c.client_id"
+                + " WHERE c.client_id NOT IN (SELECT x." + d.q("client_id") + " FROM clients x WHERE x.risk_level = 'R5')";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("not-in-to-not-exists"));
+        assertEquals(flat("SELECT c.client_id FROM clients c JOIN portfolios p ON p.client_id = c.client_id"
+                + " WHERE NOT EXISTS (SELECT 1 FROM clients x WHERE x.risk_level = 'R5' AND x." + d.q("client_id")
+                + " = c.client_id)"), flat(r.sql));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOnLeftJoinedPrimaryKeyIsKept(Dialect d) throws Exception {
+        // 没匹配上的行里 pr.product_id 是 NULL：NOT IN 把这些行过滤掉，NOT EXISTS 会留下
+        String sql = "SELECT t.transaction_id FROM transactions t LEFT JOIN products pr ON pr.product_id = t.product_id"
+                + " WHERE pr." + d.q("product_id") + " NOT IN (SELECT x.product_id FROM products x WHERE x.status = 0)";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("not-in-to-not-exists"));
+        assertEquals(flat(sql), flat(r.sql));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInOnLeftSideOfRightJoinIsKept(Dialect d) throws Exception {
+        String sql = "SELECT p.portfolio_id FROM clients c RIGHT JOIN portfolios p ON p.client_id = c.client_id"
+                + " WHERE c." + d.q("client_id") + " NOT IN (SELECT x.client_id FROM clients x WHERE x.risk_level = 'R5')";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("not-in-to-not-exists"));
+        assertEquals(flat(sql), flat(r.sql));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void notInUnderOrIsKept(Dialect d) throws Exception {
+        String sql = "SELECT c.client_id FROM clients c WHERE c.status = 1 OR c." + d.q("client_id")
+                + " NOT IN (SELECT p.client_id FROM portfolios p)";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("not-in-to-not-exists"));
+    }
+
+    // ========== unused-left-join ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void unreferencedLeftJoinOnPrimaryKeyIsRemoved(Dialect d) throws Exception {
+        String sql = "SELECT t.transaction_id, t.trade_date FROM " + d.q("transactions") + " t LEFT JOIN "
+                + d.q("products") + " p ON p." + d.q("product_id") + " = t.product_id WHERE t.status = 1";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("unused-left-join"));
+        assertFalse(flat(r.sql).contains("JOIN"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void referencedLeftJoinIsKept(Dialect d) throws Exception {
+        String sql = "SELECT t.transaction_id, p." + d.q("product_name") + " FROM transactions t LEFT JOIN products p"
+                + " ON p.product_id = t.product_id";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("unused-left-join"));
+        assertTrue(flat(r.sql).contains("LEFT JOIN"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void leftJoinNotOnPrimaryKeyIsKept(Dialect d) throws Exception {
+        // portfolios.client_id 不是主键：一个客户可能有多个组合，删掉会改变行数
+        String sql = "SELECT c.client_id FROM clients c LEFT JOIN " + d.q("portfolios") + " p ON p."
+                + d.q("client_id") + " = c.client_id";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("unused-left-join"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void innerJoinIsKept(Dialect d) throws Exception {
+        String sql = "SELECT t.transaction_id FROM transactions t JOIN " + d.q("products") + " p ON p.product_id = t.product_id";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("unused-left-join"));
+    }
+
+    // ========== subquery-order-by ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void orderByInsideInSubqueryIsRemoved(Dialect d) throws Exception {
+        String sql = "SELECT c.client_name FROM clients c WHERE c.client_id IN (SELECT p.client_id FROM "
+                + d.q("portfolios") + " p ORDER BY p." + d.q("inception_date") + ")";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("subquery-order-by"));
+        assertFalse(flat(r.sql).contains("ORDER BY"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void orderByWithLimitInsideSubqueryIsKept(Dialect d) throws Exception {
+        String sql = "SELECT c.client_name FROM clients c WHERE c.client_id IN (SELECT p.client_id FROM portfolios p ORDER BY p."
+                + d.q("current_value") + " DESC LIMIT 5)";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("subquery-order-by"));
+        assertTrue(flat(r.sql).contains("ORDER BY"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void orderByInDerivedTableVisibleToCallerIsKept(Dialect d) throws Exception {
+        // 外层没有自己的排序：派生表里的顺序就是最终输出顺序，不能删
+        String sql = "SELECT x." + d.q("client_id") + " FROM (SELECT client_id FROM clients ORDER BY total_assets DESC) x";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("subquery-order-by"));
+    }
+
+    // ========== inline-cte ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void cteUsedOnceIsInlined(Dialect d) throws Exception {
+        String sql = "WITH " + d.q("big") + " AS (SELECT client_id, total_assets FROM clients WHERE total_assets > 1000000) "
+                + "SELECT b.client_id FROM " + d.q("big") + " b WHERE b.total_assets < 5000000";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertTrue(r.fired.contains("inline-cte"));
+        String out = flat(r.sql);
+        assertFalse(out.startsWith("WITH"));
+        assertTrue(out.contains("TOTAL_ASSETS > 1000000"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void cteUsedTwiceIsKept(Dialect d) throws Exception {
+        String sql = "WITH " + d.q("big") + " AS (SELECT client_id FROM clients WHERE total_assets > 1000000) "
+                + "SELECT a.client_id FROM big a JOIN big b ON a.client_id = b.client_id";
+        SqlLogicalOptimizer.Result r = run("FINANCE", sql);
+
+        assertFalse(r.fired.contains("inline-cte"));
+        assertTrue(flat(r.sql).startsWith("WITH"));
+    }
+
+    // ========== limit pushdown ==========
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void limitIsPushedIntoUnionAllBranches(Dialect d) throws Exception {
+        String sql = "SELECT " + d.q("patient_id") + " FROM medical_encounters UNION ALL SELECT " + d.q("patient_id")
+                + " FROM billing_transactions " + d.limitOffset(10, 5);
+        SqlLogicalOptimizer.Result r = run("HEALTHCARE", sql);
+
+        assertTrue(r.fired.contains("limit-into-union"));
+        String out = flat(r.sql);
+        // 每个分支最多需要 LIMIT + OFFSET = 15 行
+        assertEquals(2, out.split("LIMIT 15", -1).length - 1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void limitIsNotPushedIntoDistinctUnion(Dialect d) throws Exception {
+        String sql = "SELECT " + d.q("patient_id") + " FROM medical_encounters UNION SELECT patient_id FROM billing_transactions LIMIT 10";
+        SqlLogicalOptimizer.Result r = run("HEALTHCARE", sql);
+
+        assertFalse(r.fired.contains("limit-into-union"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void limitIsPushedIntoCte(Dialect d) throws Exception {
+        String sql = "WITH " + d.q("recent") + " AS (SELECT encounter_id, patient_id FROM medical_encounters WHERE encounter_type = '住院') "
+                + "SELECT encounter_id, patient_id FROM " + d.q("recent") + " LIMIT 20";
+        SqlLogicalOptimizer.Result r = run("HEALTHCARE", sql);
+
+        assertTrue(r.fired.contains("limit-into-cte"));
+        assertEquals(2, flat(r.sql).split("LIMIT 20", -1).length - 1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Dialect.class)
+    void limitIsNotPushedThroughFilter(Dialect d) throws Exception {
+        String sql = "SELECT x.encounter_id FROM (SELECT encounter_id, patient_id FROM medical_encounters) x WHERE x."
+                + d.q("patient_id") + " = 7 LIMIT 20";
+        SqlLogicalOptimizer.Result r = run("HEALTHCARE", sql);
+
+        assertFalse(r.fired.contains("limit-into-derived"));
+    }
+}
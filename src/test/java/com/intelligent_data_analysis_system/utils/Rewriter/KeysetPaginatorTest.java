@@ -0,0 +1,115 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 首页补唯一键排序和隐藏键列，翻页用键值谓词而不是 OFFSET；改写结果必须能被重新解析。
+ */
+class KeysetPaginatorTest {
+
+    private static KeysetPaginator.Page page(SqlDialect dialect, String sql, List<Object> after) throws Exception {
+        KeysetPaginator.Page p = KeysetPaginator.paginate("FINANCE", dialect, sql, after, 51);
+        if (p.pageable) CCJSqlParserUtil.parse(p.sql);
+        return p;
+    }
+
+    private static String flat(String sql) {
+        return sql.replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    @Test
+    void firstPageOrdersByPrimaryKeyAndExposesHiddenKey() throws Exception {
+        KeysetPaginator.Page p = page(SqlDialect.MYSQL,
+                "SELECT trade_id, transaction_type FROM transactions WHERE transaction_type = 'BUY' LIMIT 500", null);
+
+        assertTrue(p.pageable);
+        assertEquals(1, p.keyCount);
+        assertEquals(500, p.originalLimit);
+        String s = flat(p.sql);
+        assertTrue(s.contains("ORDER BY TRANSACTION_ID"), s);
+        assertTrue(s.contains("TRANSACTION_ID AS __K0"), s);
+        assertTrue(s.endsWith("LIMIT 51"), s);
+        assertTrue(p.params.isEmpty());
+    }
+
+    @Test
+    void nextPageUsesKeyPredicateInsteadOfOffset() throws Exception {
+        KeysetPaginator.Page p = page(SqlDialect.MYSQL,
+                "SELECT trade_id FROM transactions WHERE transaction_type = 'BUY'", List.of(1200L));
+
+        String s = flat(p.sql);
+        assertTrue(s.contains("TRANSACTION_ID > :P_KEY_0"), s);
+        assertFalse(s.contains("OFFSET"), s);
+        assertEquals(1200L, p.params.get("p_key_0"));
+    }
+
+    @Test
+    void joinWithMixedDirectionsExpandsPredicateNullAware() throws Exception {
+        String sql = "SELECT c.client_name, t.trade_date FROM transactions t JOIN clients c ON t.client_id = c.client_id"
+                + " ORDER BY t.trade_date DESC";
+        KeysetPaginator.Page p = page(SqlDialect.POSTGRESQL, sql, Arrays.asList(Date.valueOf("2024-03-01"), 10L, 3L));
+
+        assertEquals(3, p.keyCount);
+        String s = flat(p.sql);
+        assertTrue(s.contains("ORDER BY T.TRADE_DATE DESC, T.TRANSACTION_ID, C.CLIENT_ID"), s);
+        assertTrue(s.contains("T.TRADE_DATE < :P_KEY_0"), s);
+        assertTrue(s.contains("T.TRADE_DATE = :P_KEY_0 AND T.TRANSACTION_ID > :P_KEY_1"), s);
+    }
+
+    @Test
+    void groupByPagesOnGroupKeys() throws Exception {
+        KeysetPaginator.Page p = page(SqlDialect.MYSQL,
+                "SELECT transaction_type, COUNT(*) AS cnt FROM transactions GROUP BY transaction_type", List.of("SELL"));
+
+        String s = flat(p.sql);
+        assertTrue(s.contains("ORDER BY TRANSACTION_TYPE"), s);
+        assertTrue(s.contains("TRANSACTION_TYPE AS __K0"), s);
+        // 分组键可空：MySQL 里 NULL 排在最前，SELL 之后只需要 > 比较
+        assertTrue(s.contains("TRANSACTION_TYPE > :P_KEY_0"), s);
+        assertFalse(s.contains("HAVING"), s);
+    }
+
+    @Test
+    void singleRowAggregateIsNotPaged() throws Exception {
+        KeysetPaginator.Page p = page(SqlDialect.MYSQL, "SELECT COUNT(*) FROM transactions", null);
+        assertFalse(p.pageable);
+    }
+
+    @Test
+    void offsetIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> page(SqlDialect.POSTGRESQL,
+                "SELECT trade_id FROM transactions LIMIT 10 OFFSET 20", null));
+    }
+
+    @Test
+    void registryDomainIsPageableOnceItsTablesAreRegistered() throws Exception {
+        String sql = "SELECT store_name FROM stores WHERE region = 'north'";
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.paginate("RETAIL_TEST", SqlDialect.MYSQL, sql, null, 51),
+                "没有表结构时不知道主键，不能分页");
+
+        Map<String, Class<?>> cols = new LinkedHashMap<>();
+        cols.put("store_id", Long.class);
+        cols.put("store_name", String.class);
+        cols.put("region", String.class);
+        SchemaCatalog.get().registerTables("retail_test",
+                List.of(new SchemaCatalog.TableInfo("stores", "store_id", cols)));
+
+        KeysetPaginator.Page p = KeysetPaginator.paginate("RETAIL_TEST", SqlDialect.MYSQL, sql, null, 51);
+        assertTrue(p.pageable);
+        assertTrue(flat(p.sql).contains("ORDER BY STORE_ID"), p.sql);
+        assertTrue(SchemaCatalog.get().table("FINANCE", "transactions").isPresent(), "登记新域不影响内置域");
+    }
+}
@@ -0,0 +1,146 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 函数包列的日期条件改成半开区间：跨月 / 跨年 / 闰年的边界算对，时间戳字面量只认零点；
+ * 识别不了或改了会变语义的写法原样保留。
+ */
+class SargableDateRewriterTest {
+
+    private static final String BASE = "SELECT trade_id FROM transactions WHERE ";
+
+    private static String where(String condition) throws Exception {
+        String out = SargableDateRewriter.rewrite(BASE + condition);
+        CCJSqlParserUtil.parse(out);
+        String flat = out.replaceAll("\\s+", " ");
+        return flat.substring(flat.toUpperCase(Locale.ROOT).indexOf(" WHERE ") + 7);
+    }
+
+    private static void assertKept(String condition) {
+        String sql = BASE + condition;
+        assertSame(sql, SargableDateRewriter.rewrite(sql), condition);
+    }
+
+    // ========== 边界 ==========
+
+    @Test
+    void yearBecomesYearRange() throws Exception {
+        assertEquals("trade_date >= '2024-01-01' AND trade_date < '2025-01-01'", where("YEAR(trade_date) = 2024"));
+        assertEquals("trade_date >= '2024-01-01' AND trade_date < '2025-01-01'",
+                where("EXTRACT(YEAR FROM trade_date) = '2024'"));
+    }
+
+    @Test
+    void decemberRollsOverIntoNextYear() throws Exception {
+        assertEquals("trade_date >= '2024-12-01' AND trade_date < '2025-01-01'",
+                where("YEAR(trade_date) = 2024 AND MONTH(trade_date) = 12"));
+        assertEquals("trade_date >= '2024-12-31' AND trade_date < '2025-01-01'",
+                where("DATE(trade_date) = '2024-12-31'"));
+    }
+
+    @Test
+    void leapYearFebruary() throws Exception {
+        assertEquals("trade_date >= '2024-02-01' AND trade_date < '2024-03-01'",
+                where("DATE_FORMAT(trade_date, '%Y-%m') = '2024-02'"));
+        assertEquals("trade_date >= '2024-02-29' AND trade_date < '2024-03-01'",
+                where("TO_CHAR(trade_date, 'YYYY-MM-DD') = '2024-02-29'"));
+        assertKept("DATE(trade_date) = '2023-02-29'");
+    }
+
+    @Test
+    void comparisonsUseTheRightEdgeOfTheBucket() throws Exception {
+        // 整天都算“<= 那天”，所以上界是第二天零点（时间戳列里 23:59:59.999 的行也要包含）
+        assertEquals("trade_date < '2025-01-01'", where("DATE(trade_date) <= '2024-12-31'"));
+        assertEquals("trade_date < '2024-12-31'", where("DATE(trade_date) < '2024-12-31'"));
+        assertEquals("trade_date >= '2025-01-01'", where("YEAR(trade_date) > 2024"));
+        assertEquals("trade_date >= '2024-01-01'", where("YEAR(trade_date) >= 2024"));
+        assertEquals("trade_date >= '2024-01-01'", where("2023 < YEAR(trade_date)"), "字面量在左边时方向反过来");
+    }
+
+    @Test
+    void betweenCoversTheWholeLastBucket() throws Exception {
+        assertEquals("trade_date >= '2022-01-01' AND trade_date < '2024-01-01'",
+                where("YEAR(trade_date) BETWEEN 2022 AND 2023"));
+        assertEquals("trade_date >= '2024-01-01' AND trade_date < '2024-04-01'",
+                where("DATE_TRUNC('month', trade_date) BETWEEN '2024-01-01' AND '2024-03-01'"));
+    }
+
+    @Test
+    void timestampLiteralsOnlyAtMidnight() throws Exception {
+        assertEquals("trade_time >= '2024-03-01' AND trade_time < '2024-03-02'",
+                where("CAST(trade_time AS DATE) = TIMESTAMP '2024-03-01 00:00:00'"));
+        assertEquals("trade_time >= '2024-03-01' AND trade_time < '2024-03-02'",
+                where("trade_time::date = DATE '2024-03-01'"));
+        assertKept("DATE(trade_time) = '2024-03-01 12:30:00'");
+    }
+
+    @Test
+    void truncLiteralMustBeAligned() throws Exception {
+        assertEquals("trade_date >= '2024-03-01' AND trade_date < '2024-04-01'",
+                where("DATE_TRUNC('month', trade_date) = '2024-03-01'"));
+        assertKept("DATE_TRUNC('month', trade_date) = '2024-03-15'");
+        assertKept("DATE_TRUNC('year', trade_date) = '2024-02-01'");
+    }
+
+    // ========== 其它位置 ==========
+
+    @Test
+    void qualifiedColumnsInOrJoinAndHaving() throws Exception {
+        String out = SargableDateRewriter.rewrite("SELECT t.portfolio_id, COUNT(*) FROM transactions t"
+                + " JOIN portfolios p ON p.portfolio_id = t.portfolio_id AND YEAR(p.inception_date) = 2020"
+                + " WHERE t.status = 1 AND (YEAR(t.trade_date) = 2023 OR DATE(t.settlement_date) = '2024-01-02')"
+                + " GROUP BY t.portfolio_id HAVING MAX(t.trade_date) > '2023-06-01'");
+        CCJSqlParserUtil.parse(out);
+
+        assertTrue(out.contains("p.inception_date >= '2020-01-01' AND p.inception_date < '2021-01-01'"), out);
+        assertTrue(out.contains("(t.trade_date >= '2023-01-01' AND t.trade_date < '2024-01-01')"
+                + " OR (t.settlement_date >= '2024-01-02' AND t.settlement_date < '2024-01-03')"), out);
+        assertTrue(out.contains("MAX(t.trade_date) > '2023-06-01'"));
+    }
+
+    // ========== 原样保留 ==========
+
+    @Test
+    void unrecognizedShapesAreKept() {
+        assertKept("YEAR(trade_date) <> 2024");
+        assertKept("YEAR(trade_date) IN (2023, 2024)");
+        assertKept("YEAR(trade_date) NOT BETWEEN 2022 AND 2023");
+        assertKept("YEAR(trade_date + 1) = 2024");
+        assertKept("YEAR(trade_date) = YEAR(settlement_date)");
+        assertKept("MONTH(trade_date) = 3");
+        assertKept("EXTRACT(MONTH FROM trade_date) = 3");
+        assertKept("YEAR(trade_date) = 24");
+    }
+
+    @Test
+    void formatsMustMatchExactly() {
+        assertKept("DATE_FORMAT(trade_date, '%m') = '03'");
+        assertKept("DATE_FORMAT(trade_date, '%Y-%m') = '2024-3'");
+        assertKept("TO_CHAR(trade_date, 'YYYY/MM') = '2024/03'");
+        assertKept("DATE_FORMAT(trade_date, '%Y-%m-%d') = '2024-3-1'");
+    }
+
+    @Test
+    void monthOnAnotherColumnIsNotMerged() throws Exception {
+        assertEquals("trade_date >= '2024-01-01' AND trade_date < '2025-01-01' AND MONTH(settlement_date) = 3",
+                where("YEAR(trade_date) = 2024 AND MONTH(settlement_date) = 3"));
+    }
+
+    @Test
+    void selectListAndNonSelectAreUntouched() {
+        String projection = "SELECT YEAR(trade_date) AS y FROM transactions";
+        assertSame(projection, SargableDateRewriter.rewrite(projection));
+        String update = "UPDATE transactions SET status = 1 WHERE YEAR(trade_date) = 2024";
+        assertSame(update, SargableDateRewriter.rewrite(update));
+        String broken = "SELECT FROM WHERE YEAR(";
+        assertSame(broken, SargableDateRewriter.rewrite(broken));
+        String noDates = "SELECT client_id FROM clients";
+        assertSame(noDates, SargableDateRewriter.rewrite(noDates));
+    }
+}
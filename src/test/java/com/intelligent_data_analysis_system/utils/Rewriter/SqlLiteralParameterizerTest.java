@@ -0,0 +1,127 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 字面量参数化：WHERE / HAVING / JOIN ON 里的字面量提成参数，同形状的 SQL 文本和指纹一致；
+ * 会影响语义或两种库转义规则不同的字面量原样保留；参数化后的 SQL 能重新解析。
+ */
+class SqlLiteralParameterizerTest {
+
+    private static SqlLiteralParameterizer.Parameterized run(String sql) throws Exception {
+        SqlLiteralParameterizer.Parameterized p = SqlLiteralParameterizer.parameterize(sql);
+        CCJSqlParserUtil.parse(p.sql);
+        return p;
+    }
+
+    @Test
+    void whereLiteralsBecomeParametersInOrder() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run(
+                "SELECT client_id FROM clients WHERE risk_level = 'R3' AND total_assets > 1000000 AND fee < 0.5");
+
+        assertEquals(List.of("p_lit_0", "p_lit_1", "p_lit_2"), List.copyOf(p.params.keySet()));
+        assertEquals("R3", p.params.get("p_lit_0"));
+        assertEquals(1000000L, p.params.get("p_lit_1"));
+        assertEquals(new BigDecimal("0.5"), p.params.get("p_lit_2"));
+        assertTrue(p.sql.contains("risk_level = :p_lit_0"), p.sql);
+        assertFalse(p.sql.contains("'R3'"));
+    }
+
+    @Test
+    void sameShapeSharesTextAndFingerprint() throws Exception {
+        SqlLiteralParameterizer.Parameterized a = run("SELECT * FROM transactions WHERE trade_date >= '2024-01-01' AND status = 1");
+        SqlLiteralParameterizer.Parameterized b = run("SELECT * FROM transactions WHERE trade_date >= '2025-06-30' AND status = 2");
+
+        assertEquals(a.sql, b.sql);
+        assertEquals(a.fingerprint, b.fingerprint);
+        assertNotEquals(a.params, b.params);
+    }
+
+    @Test
+    void joinOnHavingAndSubqueryLiteralsAreLifted() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT c.client_type, COUNT(*) FROM clients c"
+                + " JOIN portfolios p ON p.client_id = c.client_id AND p.portfolio_type = 'X'"
+                + " WHERE c.client_id IN (SELECT h.client_id FROM holdings h WHERE h.quantity > 10)"
+                + " GROUP BY c.client_type HAVING COUNT(*) > 5");
+
+        assertEquals(3, p.params.size());
+        assertTrue(p.params.containsValue("X"));
+        assertTrue(p.params.containsValue(10L));
+        assertTrue(p.params.containsValue(5L));
+    }
+
+    @Test
+    void projectionOrderingGroupingAndLimitAreKept() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT client_type, 'fixed' AS tag FROM clients"
+                + " GROUP BY 1 ORDER BY 1 LIMIT 10");
+
+        assertTrue(p.params.isEmpty());
+        assertEquals("SELECT client_type, 'fixed' AS tag FROM clients GROUP BY 1 ORDER BY 1 LIMIT 10", p.sql,
+                "没有可提的字面量时原样返回输入");
+    }
+
+    @Test
+    void functionAndCastArgumentsAreKept() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT * FROM transactions"
+                + " WHERE DATE_FORMAT(trade_date, '%Y-%m') = '2024-01' AND trade_date < CAST('2024-02-01' AS DATE)");
+
+        assertEquals(Map.of("p_lit_0", "2024-01"), p.params);
+        assertTrue(p.sql.contains("'%Y-%m'"), "格式串必须是常量");
+        assertTrue(p.sql.contains("CAST('2024-02-01' AS DATE)"));
+    }
+
+    @Test
+    void escapedPrefixedAndNullLiteralsAreKept() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT * FROM clients"
+                + " WHERE contact_info = 'a\\b' AND client_name = E'x' AND manager_id IS NULL AND status = 1");
+
+        assertEquals(Map.of("p_lit_0", 1L), p.params);
+        assertTrue(p.sql.contains("'a\\b'"), "反斜杠在 MySQL / PG 里含义不同，不提");
+    }
+
+    @Test
+    void doubledQuotesAreUnescaped() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT * FROM clients WHERE client_name = 'O''Brien'");
+        assertEquals("O'Brien", p.params.get("p_lit_0"));
+    }
+
+    @Test
+    void largeIntegersBecomeBigDecimal() throws Exception {
+        SqlLiteralParameterizer.Parameterized p = run("SELECT * FROM transactions WHERE trade_id = 99999999999999999999");
+        assertEquals(new BigDecimal("99999999999999999999"), p.params.get("p_lit_0"));
+    }
+
+    @Test
+    void existingPrefixedParametersAreLeftAlone() throws Exception {
+        String sql = "SELECT * FROM clients WHERE client_id = :p_lit_0 AND status = 1";
+        SqlLiteralParameterizer.Parameterized p = SqlLiteralParameterizer.parameterize(sql);
+        assertEquals(sql, p.sql);
+        assertTrue(p.params.isEmpty());
+    }
+
+    @Test
+    void trailingSemicolonAndUnparseableInput() {
+        SqlLiteralParameterizer.Parameterized p = SqlLiteralParameterizer.parameterize("SELECT 1 FROM clients WHERE status = 1;");
+        assertFalse(p.sql.endsWith(";"));
+        assertEquals(1, p.params.size());
+
+        SqlLiteralParameterizer.Parameterized bad = SqlLiteralParameterizer.parameterize("  SELECT FROM WHERE  ");
+        assertEquals("SELECT FROM WHERE", bad.sql);
+        assertTrue(bad.params.isEmpty());
+        assertEquals(SqlLiteralParameterizer.fingerprint("SELECT FROM WHERE"), bad.fingerprint);
+    }
+
+    @Test
+    void fingerprintDistinguishesKeptLiterals() {
+        assertNotEquals(SqlLiteralParameterizer.parameterize("SELECT 'a' AS x FROM clients").fingerprint,
+                SqlLiteralParameterizer.parameterize("SELECT 'b' AS x FROM clients").fingerprint);
+        assertEquals(32, SqlLiteralParameterizer.fingerprint("SELECT 1").length());
+    }
+}
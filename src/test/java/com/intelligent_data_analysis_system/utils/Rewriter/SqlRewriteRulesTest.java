@@ -0,0 +1,128 @@
+package com.intelligent_data_analysis_system.utils.Rewriter;
+
+import com.intelligent_data_analysis_system.mapping.MappingRegistry;
+import com.intelligent_data_analysis_system.mapping.SchemaCatalog;
+import com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 改写规则的数据：内置的默认投影要和表结构对得上；域可以在 mapping 的 rewrite 段里补数据、按方言关规则，
+ * 配错的默认投影不改写。
+ */
+class SqlRewriteRulesTest {
+
+    private static final SqlRewriteEngine ENGINE = SqlRewriteEngine.get();
+
+    /** 门店表：注册表里新增的域，内置规则数据里没有它 */
+    private static void registerStores(String domain, Map<String, Object> rewrite) {
+        Map<String, Class<?>> cols = new LinkedHashMap<>();
+        cols.put("store_id", Long.class);
+        cols.put("store_name", String.class);
+        cols.put("city", String.class);
+        cols.put("status", String.class);
+        cols.put("created_time", java.time.LocalDateTime.class);
+        SchemaCatalog.get().registerTables(domain, List.of(new SchemaCatalog.TableInfo("stores", "store_id", cols)));
+        assertTrue(MappingRegistry.get().registerDomain(domain, Map.of("rewrite", rewrite)));
+    }
+
+    private static String rewrite(String domain, SqlDialect dialect, String problem, String sql) {
+        return flat(ENGINE.rewrite(sql, new SqlRewriteContext(domain, dialect, problem)));
+    }
+
+    private static String flat(String sql) {
+        return sql.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Test
+    void builtInProjectionsExistInSchema() {
+        for (String domain : List.of("FINANCE", "HEALTHCARE")) {
+            Map<String, String> projections = SqlRewriteRules.data(domain).defaultProjections;
+            assertFalse(projections.isEmpty(), domain);
+            projections.forEach((table, columns) -> {
+                SchemaCatalog.TableInfo ti = SchemaCatalog.get().table(domain, table).orElse(null);
+                assertNotNull(ti, domain + "." + table + " 不在表结构里");
+                for (String c : columns.split(",\\s*")) {
+                    assertTrue(ti.hasColumn(c), domain + "." + table + "." + c + " 不存在");
+                }
+            });
+        }
+    }
+
+    @Test
+    void healthcareListingGetsDefaultProjection() {
+        assertEquals("select patient_id, patient_name, gender, age from patient_master_index",
+                rewrite("HEALTHCARE", SqlDialect.MYSQL, "列出所有患者", "SELECT * FROM patient_master_index"));
+        assertEquals("select * from patient_master_index",
+                rewrite("HEALTHCARE", SqlDialect.MYSQL, "患者一共多少人", "SELECT * FROM patient_master_index"),
+                "不是列表类问题不改");
+    }
+
+    @Test
+    void registryDomainUsesItsMappingRewriteSection() {
+        registerStores("rw_stores", Map.of(
+                "listing_objects", List.of("门店"),
+                "default_projection", Map.of("stores", "store_id, store_name, city"),
+                "english_values", Map.of("open", "营业中"),
+                "column_rename", Map.of("store_title", "store_name")));
+
+        assertEquals("select store_id, store_name, city from stores",
+                rewrite("rw_stores", SqlDialect.MYSQL, "列出所有门店", "SELECT * FROM stores"));
+        assertTrue(rewrite("rw_stores", SqlDialect.MYSQL, null,
+                "SELECT store_id FROM stores WHERE status = 'OPEN'").contains("status = '营业中'"));
+        assertEquals("select store_name from stores",
+                rewrite("rw_stores", SqlDialect.MYSQL, null, "SELECT store_title FROM stores"));
+        assertEquals("select created_time from stores",
+                rewrite("rw_stores", SqlDialect.MYSQL, null, "SELECT created_time FROM stores"),
+                "内置的列名纠错照样生效，表里有原列名时不改");
+    }
+
+    @Test
+    void rulesCanBeDisabledPerDialect() {
+        registerStores("rw_dialect", Map.of(
+                "english_values", Map.of("open", "营业中"),
+                "dialects", Map.of("POSTGRESQL", Map.of("disabled", List.of("finance-english-enum")))));
+        String sql = "SELECT store_id FROM stores WHERE status = 'open'";
+
+        assertTrue(rewrite("rw_dialect", SqlDialect.MYSQL, null, sql).contains("'营业中'"));
+        assertEquals(flat(sql), rewrite("rw_dialect", SqlDialect.POSTGRESQL, null, sql));
+    }
+
+    @Test
+    void rulesCanBeDisabledForTheWholeDomain() {
+        registerStores("rw_disabled", Map.of(
+                "listing_objects", List.of("门店"),
+                "default_projection", Map.of("stores", "store_id, store_name"),
+                "disabled", List.of("default-projection")));
+
+        assertEquals("select * from stores",
+                rewrite("rw_disabled", SqlDialect.MYSQL, "列出所有门店", "SELECT * FROM stores"));
+    }
+
+    @Test
+    void projectionNamingUnknownColumnsIsSkipped() {
+        registerStores("rw_bad", Map.of(
+                "listing_objects", List.of("门店"),
+                "default_projection", Map.of("stores", "store_id, store_label")));
+
+        assertEquals("select * from stores",
+                rewrite("rw_bad", SqlDialect.MYSQL, "列出所有门店", "SELECT * FROM stores"));
+    }
+
+    @Test
+    void reRegisteringTheDomainTakesEffect() {
+        registerStores("rw_reload", Map.of("english_values", Map.of("open", "营业中")));
+        String sql = "SELECT store_id FROM stores WHERE status = 'open'";
+        assertTrue(rewrite("rw_reload", SqlDialect.MYSQL, null, sql).contains("'营业中'"));
+
+        registerStores("rw_reload", Map.of("english_values", Map.of("open", "营业")));
+        assertTrue(rewrite("rw_reload", SqlDialect.MYSQL, null, sql).contains("'营业'"));
+        assertFalse(rewrite("rw_reload", SqlDialect.MYSQL, null, sql).contains("'营业中'"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.intelligent_data_analysis_system.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同键合并：并发的相同请求只执行一次、共享结果和异常；发起者离开不影响其它等待者，
+ * 所有等待者都离开时取消执行。
+ */
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>("test");
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        flight.shutdown();
+        callers.shutdownNow();
+    }
+
+    /** 在后台线程里调用；执行体等 release 放行，runs 记执行次数 */
+    private Future<String> call(String key, long maxWaitMs, CompletableFuture<?> abort, CountDownLatch release,
+                                AtomicInteger runs) {
+        return callers.submit(() -> flight.execute(key, maxWaitMs, abort, f -> {
+            runs.incrementAndGet();
+            await(release);
+            return "rows";
+        }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("latch not released");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void until(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > end) fail("等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<String> leader = call("k", 0, null, release, runs);
+        until(() -> runs.get() == 1);
+        Future<String> joiner = call("k", 0, null, release, runs);
+        until(() -> flight.shared() == 1);
+
+        // 结束后移出，下一次重新执行
+        release.countDown();
+        assertEquals("rows", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("rows", joiner.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(1, flight.executions());
+        until(() -> flight.inFlightCount() == 0);
+    }
+
+    @Test
+    void joinerOutlivesLeaderThatLeaves() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Void> leaderAbort = new CompletableFuture<>();
+        Future<String> leader = call("k", 0, leaderAbort, release, runs);
+        until(() -> runs.get() == 1);
+        Future<String> joiner = call("k", 0, null, release, runs);
+        until(() -> flight.shared() == 1);
+
+        // 发起者被取消：它自己离开，执行继续留给还在等的请求
+        leaderAbort.complete(null);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, failure.getCause());
+        release.countDown();
+        assertEquals("rows", joiner.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.abandoned());
+    }
+
+    @Test
+    void executionIsCancelledWhenAllWaitersLeave() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        Future<String> first = callers.submit(() -> flight.execute("k", 50, f -> {
+            f.onCancel(cancelled::countDown);
+            await(never);
+            return "rows";
+        }));
+        until(() -> flight.executions() == 1);
+        Future<String> second = callers.submit(() -> flight.execute("k", 100, f -> "unused"));
+
+        assertInstanceOf(TimeoutException.class,
+                assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(TimeoutException.class,
+                assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS), "最后一个等待者离开时执行取消钩子");
+        assertEquals(1, flight.abandoned());
+        assertEquals(0, flight.inFlightCount());
+        never.countDown();
+    }
+
+    @Test
+    void oneWaiterLeavingDoesNotCancel() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger hooks = new AtomicInteger();
+        Future<String> patient = callers.submit(() -> flight.execute("k", 0, f -> {
+            f.onCancel(hooks::incrementAndGet);
+            await(release);
+            return "rows";
+        }));
+        until(() -> flight.executions() == 1);
+        assertThrows(TimeoutException.class, () -> flight.execute("k", 20, f -> "unused"));
+
+        release.countDown();
+        assertEquals("rows", patient.get(5, TimeUnit.SECONDS));
+        assertEquals(0, hooks.get());
+    }
+
+    @Test
+    void failuresAreSharedByAllWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException boom = new IllegalStateException("boom");
+        Future<String> leader = callers.submit(() -> flight.execute("k", 0, f -> {
+            await(release);
+            throw boom;
+        }));
+        until(() -> flight.executions() == 1);
+        Future<String> joiner = callers.submit(() -> flight.execute("k", 0, f -> "unused"));
+        until(() -> flight.shared() == 1);
+
+        release.countDown();
+        assertSame(boom, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(boom, assertThrows(ExecutionException.class, () -> joiner.get(5, TimeUnit.SECONDS)).getCause(),
+                "RuntimeException 原样交给每个等待者");
+        // 失败也移出，下一次重新执行
+        until(() -> flight.inFlightCount() == 0);
+        assertEquals("again", flight.execute("k", 0, f -> "again"));
+    }
+
+    @Test
+    void checkedFailureIsWrapped() {
+        Exception checked = new Exception("io");
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> flight.execute("k", 0, f -> sneakyThrow(checked)));
+        assertSame(checked, e.getCause());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable, R> R sneakyThrow(Throwable t) throws T {
+        throw (T) t;
+    }
+}
@@ -0,0 +1,224 @@
+package com.intelligent_data_analysis_system.utils.Transpiler;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect.MYSQL;
+import static com.intelligent_data_analysis_system.utils.Transpiler.SqlDialect.POSTGRESQL;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 每类改写都给出 输入 -> 期望输出（忽略空白和大小写比较），输出必须能被重新解析：
+ * 分页、NULLS FIRST/LAST、GROUP_CONCAT / STRING_AGG、FILTER、LIKE / ILIKE、日期函数和格式串、|| / CONCAT、类型转换、引号、布尔列。
+ */
+class SqlDialectTranspilerTest {
+
+    private static void assertTranspiles(SqlDialect from, SqlDialect to, String in, String expected) throws Exception {
+        String out = SqlDialectTranspiler.transpile(in, from, to, "FINANCE");
+        assertEquals(flat(expected), flat(out), from + " -> " + to + ": " + in);
+        CCJSqlParserUtil.parse(out);
+    }
+
+    private static String flat(String sql) {
+        return sql.replaceAll("\\s+", " ").trim().toUpperCase(Locale.ROOT);
+    }
+
+    // ========== LIMIT / OFFSET ==========
+
+    @Test
+    void mysqlLimitOffsetBecomesLimitOffset() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT client_id FROM clients ORDER BY client_id LIMIT 20, 10",
+                "SELECT client_id FROM clients ORDER BY client_id LIMIT 10 OFFSET 20");
+    }
+
+    @Test
+    void fetchFirstBecomesLimit() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients ORDER BY client_id FETCH FIRST 5 ROWS ONLY",
+                "SELECT client_id FROM clients ORDER BY client_id LIMIT 5");
+    }
+
+    @Test
+    void bareOffsetGetsMaximalLimitOnMysql() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients ORDER BY client_id OFFSET 20",
+                "SELECT client_id FROM clients ORDER BY client_id LIMIT 18446744073709551615 OFFSET 20");
+    }
+
+    // ========== NULLS FIRST / LAST ==========
+
+    @Test
+    void nullsOrderingAgainstMysqlDefaultAddsIsNullKey() throws Exception {
+        // MySQL DESC 时 NULL 在后：要 NULLS FIRST 就在前面加 "IS NULL" 降序键
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients ORDER BY total_assets DESC NULLS FIRST",
+                "SELECT client_id FROM clients ORDER BY total_assets IS NULL DESC, total_assets DESC");
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients ORDER BY total_assets NULLS LAST",
+                "SELECT client_id FROM clients ORDER BY total_assets IS NULL, total_assets");
+    }
+
+    @Test
+    void nullsOrderingMatchingMysqlDefaultIsDropped() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients ORDER BY total_assets ASC NULLS FIRST",
+                "SELECT client_id FROM clients ORDER BY total_assets ASC");
+    }
+
+    @Test
+    void nullsOrderingIsKeptForPostgres() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT client_id FROM clients ORDER BY total_assets DESC NULLS LAST",
+                "SELECT client_id FROM clients ORDER BY total_assets DESC NULLS LAST");
+    }
+
+    // ========== GROUP_CONCAT <-> STRING_AGG ==========
+
+    @Test
+    void groupConcatBecomesStringAgg() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT GROUP_CONCAT(client_name SEPARATOR ';') FROM clients",
+                "SELECT STRING_AGG(CAST(client_name AS TEXT), ';') FROM clients");
+    }
+
+    @Test
+    void groupConcatWithoutSeparatorUsesComma() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT GROUP_CONCAT(DISTINCT client_name) FROM clients",
+                "SELECT STRING_AGG(DISTINCT CAST(client_name AS TEXT), ',') FROM clients");
+    }
+
+    @Test
+    void stringAggBecomesGroupConcat() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT STRING_AGG(client_name, ',') FROM clients",
+                "SELECT GROUP_CONCAT(client_name SEPARATOR ',') FROM clients");
+    }
+
+    // ========== FILTER -> CASE ==========
+
+    @Test
+    void countFilterBecomesCaseWhen() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT COUNT(*) FILTER (WHERE status = 1) FROM transactions",
+                "SELECT COUNT(CASE WHEN status = 1 THEN 1 END) FROM transactions");
+    }
+
+    @Test
+    void sumFilterBecomesCaseWhen() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT SUM(amount) FILTER (WHERE status = 1) FROM transactions",
+                "SELECT SUM(CASE WHEN status = 1 THEN amount END) FROM transactions");
+    }
+
+    // ========== LIKE / ILIKE ==========
+
+    @Test
+    void mysqlLikeBecomesIlike() throws Exception {
+        // MySQL 默认排序规则大小写不敏感
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT client_id FROM clients WHERE client_name LIKE 'abc%'",
+                "SELECT client_id FROM clients WHERE client_name ILIKE 'abc%'");
+    }
+
+    @Test
+    void ilikeBecomesLike() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_id FROM clients WHERE client_name NOT ILIKE 'abc%'",
+                "SELECT client_id FROM clients WHERE client_name NOT LIKE 'abc%'");
+    }
+
+    @Test
+    void likeFromUnknownDialectIsKept() throws Exception {
+        assertTranspiles(null, POSTGRESQL,
+                "SELECT client_id FROM clients WHERE client_name LIKE 'abc%'",
+                "SELECT client_id FROM clients WHERE client_name LIKE 'abc%'");
+    }
+
+    // ========== 日期函数 ==========
+
+    @Test
+    void mysqlDatePartFunctionsBecomeExtract() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT transaction_id FROM transactions WHERE YEAR(trade_date) = 2024 AND MONTH(trade_date) = 3",
+                "SELECT transaction_id FROM transactions"
+                        + " WHERE EXTRACT(YEAR FROM trade_date) = 2024 AND EXTRACT(MONTH FROM trade_date) = 3");
+    }
+
+    @Test
+    void dateFormatBecomesToChar() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT DATE_FORMAT(trade_date, '%Y-%m') FROM transactions",
+                "SELECT TO_CHAR(trade_date, 'YYYY-MM') FROM transactions");
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT TO_CHAR(trade_date, 'YYYY-MM-DD') FROM transactions",
+                "SELECT DATE_FORMAT(trade_date, '%Y-%m-%d') FROM transactions");
+    }
+
+    @Test
+    void dateArithmeticUsesPostgresIntervals() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT transaction_id FROM transactions WHERE trade_date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY)",
+                "SELECT transaction_id FROM transactions WHERE trade_date >= (CURRENT_DATE - INTERVAL '30 day')");
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT DATEDIFF(settle_date, trade_date) FROM transactions",
+                "SELECT (CAST(settle_date AS DATE) - CAST(trade_date AS DATE)) FROM transactions");
+    }
+
+    @Test
+    void dateTruncAndDatePartBecomeMysql() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT DATE_TRUNC('month', trade_date) FROM transactions",
+                "SELECT CAST(DATE_FORMAT(trade_date, '%Y-%m-01') AS DATE) FROM transactions");
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT DATE_PART('year', trade_date) FROM transactions",
+                "SELECT EXTRACT(YEAR FROM trade_date) FROM transactions");
+    }
+
+    @Test
+    void formatStringsMapBothWaysOrRefuse() {
+        assertEquals("YYYY-MM-DD HH24:MI:SS", SqlDialectTranspiler.mysqlFormatToPg("%Y-%m-%d %H:%i:%s"));
+        assertEquals("%Y-%m-%d %H:%i:%s", SqlDialectTranspiler.pgFormatToMysql("YYYY-MM-DD HH24:MI:SS"));
+        // PG 会把裸字母当模式、MySQL 没有对应占位符：都不转
+        assertNull(SqlDialectTranspiler.mysqlFormatToPg("%Y年%m月 Q"));
+        assertNull(SqlDialectTranspiler.mysqlFormatToPg("%U"));
+        assertNull(SqlDialectTranspiler.pgFormatToMysql("YYYY-Q"));
+    }
+
+    // ========== 其它 ==========
+
+    @Test
+    void pipesBecomeConcatOnMysql() throws Exception {
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT client_name || '-' || client_type FROM clients",
+                "SELECT CONCAT(client_name, '-', client_type) FROM clients");
+    }
+
+    @Test
+    void castTypesAndQuotesAreSwapped() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT CAST(`amount` AS SIGNED) FROM `transactions`",
+                "SELECT CAST(\"amount\" AS BIGINT) FROM \"transactions\"");
+        assertTranspiles(POSTGRESQL, MYSQL,
+                "SELECT amount::text FROM transactions",
+                "SELECT CAST(amount AS CHAR) FROM transactions");
+    }
+
+    @Test
+    void booleanColumnComparedToIntegerBecomesBooleanOnPostgres() throws Exception {
+        assertTranspiles(MYSQL, POSTGRESQL,
+                "SELECT product_id FROM products WHERE is_active = 1",
+                "SELECT product_id FROM products WHERE is_active = TRUE");
+    }
+
+    @Test
+    void sameDialectOrUnparsableInputIsReturnedAsIs() {
+        String sql = "SELECT GROUP_CONCAT(client_name) FROM clients";
+        assertSame(sql, SqlDialectTranspiler.transpile(sql, MYSQL, MYSQL));
+        String broken = "SELECT FROM WHERE";
+        assertSame(broken, SqlDialectTranspiler.transpile(broken, MYSQL, POSTGRESQL));
+    }
+}